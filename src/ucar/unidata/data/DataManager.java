@@ -117,6 +117,22 @@ public class DataManager {
         } */
     }
 
+    /** Size the VisAD data that gets put in the CacheManager */
+    static {
+        CacheManager.addSizeEstimator(new CacheManager.SizeEstimator() {
+            public long estimateSize(Object value) {
+                if ( !(value instanceof visad.Data)) {
+                    return -1;
+                }
+                try {
+                    return DataUtil.estimateSize((visad.Data) value);
+                } catch (Exception exc) {
+                    return -1;
+                }
+            }
+        });
+    }
+
     /** logging category */
     static ucar.unidata.util.LogUtil.LogCategory log_ =
         ucar.unidata.util.LogUtil.getLogInstance(DataManager.class.getName());
@@ -135,6 +135,16 @@ public class DataSourceImpl extends SharableImpl implements DataSource,
     /** Use this so this object is unique in the data cache */
     protected Object dataCacheKey = ucar.unidata.util.Misc.getUniqueId();
 
+    /** Use this to synchronize the one-time setup done in getData */
+    private Object GETDATA_MUTEX = new Object();
+
+    /** Use this to serialize getDataInner when we can't load concurrently */
+    private Object DATALOAD_MUTEX = new Object();
+
+    /** Maps cache key to the in-flight getData request for that key */
+    private Hashtable<Object, PendingGetData> pendingGetData =
+        new Hashtable<Object, PendingGetData>();
+
     /**
      *  The alias property.
      */
@@ -2346,10 +2356,9 @@ public class DataSourceImpl extends SharableImpl implements DataSource,
      * @throws RemoteException    Java RMI problem
      * @throws VisADException     VisAD problem
      */
-    public synchronized Data getData(DataChoice dataChoice,
-                                     DataCategory category,
-                                     DataSelection incomingDataSelection,
-                                     Hashtable requestProperties)
+    public Data getData(DataChoice dataChoice, DataCategory category,
+                        DataSelection incomingDataSelection,
+                        Hashtable requestProperties)
             throws VisADException, RemoteException {
 
 
@@ -2357,15 +2366,17 @@ public class DataSourceImpl extends SharableImpl implements DataSource,
             return null;
         }
 
-        //start up polling if we have not done so already.
-        initPolling();
+        synchronized (GETDATA_MUTEX) {
+            //start up polling if we have not done so already.
+            initPolling();
 
 
-        //Just call this in case it has not been called yet
-        //because it can trigger a failure in some of
-        //the derived DataSource classes.
-        getDataChoices();
-        getAllDateTimes();
+            //Just call this in case it has not been called yet
+            //because it can trigger a failure in some of
+            //the derived DataSource classes.
+            getDataChoices();
+            getAllDateTimes();
+        }
 
 
         log_.debug("data source data selection:" + getDataSelection());
@@ -2402,32 +2413,167 @@ public class DataSourceImpl extends SharableImpl implements DataSource,
          * first = false;
          */
 
+        if (cacheKey == null) {
+            return loadData(dataChoice, category, selection,
+                            requestProperties);
+        }
+
         // System.out.println(cacheKey.hashCode());
-        Data cachedData = ((cacheKey != null)
-                           ? (Data) getCache(cacheKey)
-                           : null);
-        if (cachedData == null) {
-            incrOutstandingGetDataCalls();
-            try {
-                LogUtil.message("Data: " + toStringTruncated() + ": "
-                                + dataChoice);
-                cachedData = getDataInner(dataChoice, category, selection,
-                                          requestProperties);
-
-                LogUtil.message("");
-            } finally {
-                decrOutstandingGetDataCalls();
+        Data cachedData = (Data) getCache(cacheKey);
+        if (cachedData != null) {
+            return cachedData;
+        }
+
+        //If someone else is already reading this key then wait on them
+        //rather than doing the same read twice
+        PendingGetData pending;
+        boolean        iAmLoading = false;
+        synchronized (pendingGetData) {
+            pending = pendingGetData.get(cacheKey);
+            if (pending == null) {
+                pending = new PendingGetData();
+                pendingGetData.put(cacheKey, pending);
+                iAmLoading = true;
+            }
+        }
+
+        if ( !iAmLoading) {
+            if (pending.waitForData()) {
+                return pending.data;
+            }
+            //The data was not cached so it is not ours to share.
+            return loadData(dataChoice, category, selection,
+                            requestProperties);
+        }
+
+        boolean shared = false;
+        try {
+            //Check again in case the loader before us put it in the cache
+            cachedData = (Data) getCache(cacheKey);
+            if (cachedData == null) {
+                cachedData = loadData(dataChoice, category, selection,
+                                      requestProperties);
+                if ((cachedData != null)
+                        && shouldCache(dataChoice, cachedData)) {
+                    // System.out.println(cacheKey.hashCode());
+                    putCache(cacheKey, cachedData);
+                    shared = true;
+                }
+            } else {
+                shared = true;
             }
-            if ((cacheKey != null) && (cachedData != null)
-                    && shouldCache(dataChoice, cachedData)) {
-                // System.out.println(cacheKey.hashCode());
-                putCache(cacheKey, cachedData);
+        } finally {
+            synchronized (pendingGetData) {
+                pendingGetData.remove(cacheKey);
             }
-        } else {}
+            pending.setData(cachedData, shared);
+        }
         return cachedData;
     }
 
 
+    /**
+     * Call getDataInner, keeping track of the outstanding calls. If this
+     * data source cannot load concurrently then the calls are serialized.
+     *
+     * @param dataChoice         choice that defines the data
+     * @param category           the data category
+     * @param selection          DataSelection for subsetting
+     * @param requestProperties  extra request properties
+     * @return  the data
+     *
+     * @throws RemoteException    Java RMI problem
+     * @throws VisADException     VisAD problem
+     */
+    private Data loadData(DataChoice dataChoice, DataCategory category,
+                          DataSelection selection,
+                          Hashtable requestProperties)
+            throws VisADException, RemoteException {
+        incrOutstandingGetDataCalls();
+        try {
+            LogUtil.message("Data: " + toStringTruncated() + ": "
+                            + dataChoice);
+            Data data;
+            if (canLoadDataConcurrently()) {
+                data = getDataInner(dataChoice, category, selection,
+                                    requestProperties);
+            } else {
+                synchronized (DATALOAD_MUTEX) {
+                    data = getDataInner(dataChoice, category, selection,
+                                        requestProperties);
+                }
+            }
+            LogUtil.message("");
+            return data;
+        } finally {
+            decrOutstandingGetDataCalls();
+        }
+    }
+
+
+    /**
+     * Can getDataInner be called concurrently from different threads for
+     * different requests. Requests for the same cache key are always
+     * shared regardless. Subclasses whose reads are thread safe can
+     * override this to return true.
+     *
+     * @return false by default
+     */
+    protected boolean canLoadDataConcurrently() {
+        return false;
+    }
+
+
+    /**
+     * Holds the result of a getData call that other threads asking for
+     * the same cache key are waiting on.
+     */
+    private static class PendingGetData {
+
+        /** Is the read done */
+        private boolean done = false;
+
+        /** Can the waiters use the data */
+        private boolean shared = false;
+
+        /** The data */
+        private Data data;
+
+        /**
+         * Set the result and wake up any waiters
+         *
+         * @param data the data. May be null if the read failed.
+         * @param shared Can the waiters use the data
+         */
+        public synchronized void setData(Data data, boolean shared) {
+            this.data   = data;
+            this.shared = shared;
+            this.done   = true;
+            notifyAll();
+        }
+
+        /**
+         * Wait for the read to finish
+         *
+         * @return true if the data can be used by the waiter
+         */
+        public synchronized boolean waitForData() {
+            boolean interrupted = false;
+            while ( !done) {
+                try {
+                    wait();
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return shared && (data != null);
+        }
+    }
+
+
     /**
      * Have this one around for other, non-unidata, datasource implementations.
      *
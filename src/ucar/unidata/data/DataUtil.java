@@ -48,6 +48,8 @@ import ucar.visad.data.CalendarDateTime;
 import ucar.visad.display.Animation;
 import visad.*;
 
+import visad.data.CachedFlatField;
+
 
 import java.io.FileOutputStream;
 import java.io.InputStream;
@@ -511,6 +513,56 @@ public class DataUtil {
         return getFlatField(((FieldImpl) field).getSample(0, false));
     }
 
+
+    /**
+     * Estimate the number of bytes of memory used by the given data.
+     * This is used by the {@link CacheManager} to size the objects it
+     * caches. The values of a CachedFlatField are managed by the
+     * VisAD data cache so they are not counted here.
+     *
+     * @param data the data
+     *
+     * @return estimated size in bytes
+     *
+     * @throws RemoteException on badness
+     * @throws VisADException on badness
+     */
+    public static long estimateSize(Data data)
+            throws VisADException, RemoteException {
+        if (data == null) {
+            return 0;
+        }
+        long size = 64;
+        if (data instanceof FlatField) {
+            FlatField ff  = (FlatField) data;
+            Set       set = ff.getDomainSet();
+            if ((set != null) && !(set instanceof LinearSet)) {
+                size += 4L * set.getDimension() * set.getLength();
+            }
+            if ( !(ff instanceof CachedFlatField)) {
+                size += 4L * ff.getLength()
+                        * ((FunctionType) ff.getType()).getFlatRange()
+                            .getDimension();
+            }
+            return size;
+        }
+        if (data instanceof FieldImpl) {
+            FieldImpl field = (FieldImpl) data;
+            for (int i = 0; i < field.getLength(); i++) {
+                size += estimateSize(field.getSample(i, false));
+            }
+            return size;
+        }
+        if (data instanceof Tuple) {
+            Tuple tuple = (Tuple) data;
+            for (int i = 0; i < tuple.getDimension(); i++) {
+                size += estimateSize(tuple.getComponent(i));
+            }
+            return size;
+        }
+        return size;
+    }
+
     /**
      * Write a csv file for a time series point data
      *
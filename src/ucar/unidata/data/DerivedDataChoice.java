@@ -31,6 +31,8 @@ import ucar.unidata.util.*;
 
 import visad.*;
 
+import visad.util.ThreadManager;
+
 
 
 import java.rmi.RemoteException;
@@ -57,6 +59,12 @@ public class DerivedDataChoice extends ListDataChoice {
      */
     public static String PROP_FROMDERIVED = "fromderived";
 
+    /**
+     * The CacheManager owner of the derived results. This is shared so
+     * derived choices in different displays can use each other's results.
+     */
+    private static final Object CACHE_OWNER = "DerivedDataChoice.results";
+
 
     /**
      *  Where we might have come from.
@@ -75,6 +83,25 @@ public class DerivedDataChoice extends ListDataChoice {
      */
     private Hashtable userSelectedChoices = new Hashtable();
 
+    /**
+     * The keys of the results we have put in the cache
+     */
+    private List cacheKeys = new ArrayList();
+
+    /**
+     * The operand data choices that we listen to for changes
+     */
+    private List cacheSources = new ArrayList();
+
+    /**
+     * Removes our results from the cache when the data of an operand changes
+     */
+    private DataChangeListener cacheListener = new DataChangeListener() {
+        public void dataChanged() {
+            flushResults();
+        }
+    };
+
 
     /**
      *  The java method name. May be null.
@@ -349,15 +376,17 @@ public class DerivedDataChoice extends ListDataChoice {
      * @param category       We ignore this.
      * @param dataSelection  We pass this through to the children getData calls.
      * @param requestProperties  extra request properties
+     * @param fetches  The {@link ObjectPair}s of DataChoice and DataOperand
+     *                 whose data still needs to be fetched are added to this
      *
-     * @return List of {@link DataOperand}s holding the data.
+     * @return List of {@link DataOperand}s, bound to their data or DataChoice.
      *
      * @throws RemoteException    Java RMI problem
      * @throws VisADException     VisAD problem
      */
     private List collectOperands(DataCategory category,
                                  DataSelection dataSelection,
-                                 Hashtable requestProperties)
+                                 Hashtable requestProperties, List fetches)
             throws VisADException, RemoteException {
 
 
@@ -493,8 +522,6 @@ public class DerivedDataChoice extends ListDataChoice {
         }
 
 
-        Hashtable dataChoiceToData = new Hashtable();
-
         //Go through the list of jython operands and put any that
         //we don't have in the list of DataOperands
         for (int i = 0; i < nonUserOperands.size(); i++) {
@@ -542,8 +569,7 @@ public class DerivedDataChoice extends ListDataChoice {
                     }
                 }
             }
-            setData(boundChoice, op, dataChoiceToData, dataSelection,
-                    requestProperties);
+            fetches.add(new ObjectPair(boundChoice, op));
         }
 
 
@@ -589,8 +615,7 @@ public class DerivedDataChoice extends ListDataChoice {
                 userSelectedChoices.put(op.getParamName(), selectedChoice);
                 //Do an .equals instead of an instanceof because DerivedDataChoice
                 //derived from ListDataChoice
-                setData(selectedChoice, op, dataChoiceToData, dataSelection,
-                        requestProperties);
+                fetches.add(new ObjectPair(selectedChoice, op));
             }
         }
 
@@ -599,9 +624,7 @@ public class DerivedDataChoice extends ListDataChoice {
             DataOperand op   = (DataOperand) operands.get(i);
             Object      data = op.getData();
             if (data instanceof DataChoice) {
-                DataChoice dataChoice = (DataChoice) data;
-                setData(dataChoice, op, dataChoiceToData, dataSelection,
-                        requestProperties);
+                fetches.add(new ObjectPair(data, op));
             }
         }
 
@@ -612,40 +635,249 @@ public class DerivedDataChoice extends ListDataChoice {
 
 
     /**
-     * get the data from the dataChoice and set it on the operand
+     * Make the key for caching the result. This holds the code, the
+     * operand data choices or values, the selection and the request
+     * properties other than the requester, so displays that ask for the
+     * same thing share the result.
+     *
+     * @param code The code with the operands in it
+     * @param ops The {@link DataOperand}s
+     * @param fetches The {@link ObjectPair}s of DataChoice and DataOperand
+     * @param dataSelection the selection
+     * @param requestProperties properties
+     *
+     * @return the key
+     */
+    static Object makeCacheKey(String code, List ops, List fetches,
+                               DataSelection dataSelection,
+                               Hashtable requestProperties) {
+        List key = new ArrayList();
+        key.add(code);
+        for (int i = 0; i < fetches.size(); i++) {
+            ObjectPair pair       = (ObjectPair) fetches.get(i);
+            DataChoice dataChoice = (DataChoice) pair.getObject1();
+            key.add(Misc.newList(((DataOperand) pair.getObject2()).getName(),
+                                 dataChoice, dataChoice.getDataSelection()));
+        }
+        for (int i = 0; i < ops.size(); i++) {
+            DataOperand op   = (DataOperand) ops.get(i);
+            Object      data = op.getData();
+            if ((data != null) && !(data instanceof DataChoice)) {
+                key.add(Misc.newList(op.getName(), data));
+            }
+        }
+        key.add(dataSelection.cloneMe());
+        key.add(Integer.valueOf(dataSelection.getTimesMode()));
+        key.add(dataSelection.getTimeDriverTimes());
+        Hashtable properties = new Hashtable(requestProperties);
+        properties.remove(DataChoice.PROP_REQUESTER);
+        key.add(properties);
+        return key;
+    }
+
+
+    /**
+     * Get a result from the cache
+     *
+     * @param cacheKey the key
+     *
+     * @return the result or null if it is not in the cache
+     */
+    static Data getCachedResult(Object cacheKey) {
+        return (Data) CacheManager.get(CACHE_OWNER, cacheKey);
+    }
+
+
+    /**
+     * Put the result in the cache and listen for changes to the data of
+     * the operands
+     *
+     * @param cacheKey the key
+     * @param result the result
+     * @param fetches The {@link ObjectPair}s of DataChoice and DataOperand
+     */
+    void cacheResult(Object cacheKey, Data result, List fetches) {
+        CacheManager.put(CACHE_OWNER, cacheKey, result);
+        synchronized (cacheKeys) {
+            cacheKeys.add(cacheKey);
+            for (int i = 0; i < fetches.size(); i++) {
+                DataChoice dataChoice =
+                    (DataChoice) ((ObjectPair) fetches.get(i)).getObject1();
+                if ( !cacheSources.contains(dataChoice)) {
+                    cacheSources.add(dataChoice);
+                    dataChoice.addDataChangeListener(cacheListener);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Remove the results we have put in the cache
+     */
+    private void flushResults() {
+        synchronized (cacheKeys) {
+            for (int i = 0; i < cacheKeys.size(); i++) {
+                CacheManager.remove(CACHE_OWNER, cacheKeys.get(i));
+            }
+            cacheKeys.clear();
+        }
+    }
+
+
+    /**
+     *  Remove any objects created by this choice from the cache.
+     */
+    protected void flushCache() {
+        super.flushCache();
+        flushResults();
+    }
+
+
+    /**
+     *  Remove the data change listener. This also stops listening
+     *  for changes to the operands of the cached results.
+     *
+     *  @param listener The listener to remove.
+     */
+    public void removeDataChangeListener(DataChangeListener listener) {
+        super.removeDataChangeListener(listener);
+        synchronized (cacheKeys) {
+            for (int i = 0; i < cacheSources.size(); i++) {
+                ((DataChoice) cacheSources.get(i)).removeDataChangeListener(
+                    cacheListener);
+            }
+            cacheSources.clear();
+        }
+    }
+
+
+    /**
+     * Get the data for the operands from their data choices. The operands
+     * are fetched at the same time if there is more than one.
+     *
+     * @param fetches The {@link ObjectPair}s of DataChoice and DataOperand
+     * @param dataSelection properties
+     * @param requestProperties properties
+     *
+     * @throws RemoteException On badness
+     * @throws VisADException On badness
+     */
+    private void fetchOperands(List fetches, DataSelection dataSelection,
+                               final Hashtable requestProperties)
+            throws VisADException, RemoteException {
+        //Operands with the same name share the data
+        final Hashtable dataChoiceToData = new Hashtable();
+        List            toFetch          = new ArrayList();
+        for (int i = 0; i < fetches.size(); i++) {
+            ObjectPair  pair = (ObjectPair) fetches.get(i);
+            DataOperand op   = (DataOperand) pair.getObject2();
+            if (dataChoiceToData.get(op.getName()) == null) {
+                dataChoiceToData.put(op.getName(), pair);
+                toFetch.add(pair);
+            }
+        }
+
+        int numThreads = ((dataContext == null)
+                          || (dataContext.getIdv() == null))
+                         ? 1
+                         : dataContext.getIdv().getMaxDataThreadCount();
+        if ((toFetch.size() <= 1) || (numThreads <= 1)) {
+            for (int i = 0; i < toFetch.size(); i++) {
+                ObjectPair  pair = (ObjectPair) toFetch.get(i);
+                DataOperand op   = (DataOperand) pair.getObject2();
+                Object data = fetchData((DataChoice) pair.getObject1(), op,
+                                        dataSelection, requestProperties);
+                if (data != null) {
+                    dataChoiceToData.put(op.getName(), data);
+                }
+            }
+        } else {
+            ThreadManager threadManager =
+                new ThreadManager("derived data operands");
+            final Exception[] error = { null };
+            for (int i = 0; i < toFetch.size(); i++) {
+                ObjectPair        pair       = (ObjectPair) toFetch.get(i);
+                final DataChoice  dataChoice = (DataChoice) pair.getObject1();
+                final DataOperand op = (DataOperand) pair.getObject2();
+                //Each fetch gets its own copy of the selection the way it
+                //would have been if the operands were fetched in order,
+                //since checkLevel changes the selection
+                if ( !dataChoice.getClass().equals(ListDataChoice.class)) {
+                    checkLevel(dataChoice, op, dataSelection);
+                }
+                final DataSelection opSelection = dataSelection.cloneMe();
+                threadManager.addRunnable(new ThreadManager.MyRunnable() {
+                    public void run() throws Exception {
+                        try {
+                            Object data = fetchData(dataChoice, op,
+                                              opSelection, requestProperties);
+                            if (data != null) {
+                                dataChoiceToData.put(op.getName(), data);
+                            }
+                        } catch (Exception exc) {
+                            synchronized (error) {
+                                if (error[0] == null) {
+                                    error[0] = exc;
+                                }
+                            }
+                        }
+                    }
+                });
+            }
+            threadManager.runInParallel(numThreads);
+            if (error[0] instanceof RuntimeException) {
+                throw (RuntimeException) error[0];
+            }
+            if (error[0] instanceof VisADException) {
+                throw (VisADException) error[0];
+            }
+            if (error[0] instanceof RemoteException) {
+                throw (RemoteException) error[0];
+            }
+            if (error[0] != null) {
+                throw new WrapperException(error[0]);
+            }
+        }
+
+        for (int i = 0; i < fetches.size(); i++) {
+            DataOperand op =
+                (DataOperand) ((ObjectPair) fetches.get(i)).getObject2();
+            Object data = dataChoiceToData.get(op.getName());
+            op.setData((data instanceof ObjectPair)
+                       ? null
+                       : data);
+        }
+    }
+
+
+    /**
+     * get the data from the dataChoice for the operand
      *
      * @param dataChoice the data choice
      * @param dataOperand the operand
-     * @param dataChoiceToData map of previously created data
      * @param dataSelection properties
      * @param requestProperties properties
      *
+     * @return the data
+     *
      * @throws RemoteException On badness
      * @throws VisADException On badness
      */
-    private void setData(DataChoice dataChoice, DataOperand dataOperand,
-                         Hashtable dataChoiceToData,
-                         DataSelection dataSelection,
-                         Hashtable requestProperties)
+    private Object fetchData(DataChoice dataChoice, DataOperand dataOperand,
+                             DataSelection dataSelection,
+                             Hashtable requestProperties)
             throws VisADException, RemoteException {
         //System.out.println("getting data for " + dataChoice.getName() + "," + dataOperand.getName());
-        Object data = dataChoiceToData.get(dataOperand.getName());
-
-        if (data == null) {
-            if (dataChoice.getClass().equals(ListDataChoice.class)) {
-                ListDataChoice ldc = (ListDataChoice) dataChoice;
-                data = ldc.getDataList(DataCategory.NULL, dataSelection,
-                                       requestProperties);
-            } else {
-                //                System.err.println("Calling checkLevel");
-                checkLevel(dataChoice, dataOperand, dataSelection);
-                data = dataChoice.getData(DataCategory.NULL, dataSelection,
-                                          requestProperties);
-            }
-            dataChoiceToData.put(dataOperand.getName(), data);
+        if (dataChoice.getClass().equals(ListDataChoice.class)) {
+            ListDataChoice ldc = (ListDataChoice) dataChoice;
+            return ldc.getDataList(DataCategory.NULL, dataSelection,
+                                   requestProperties);
         }
-        dataOperand.setData(data);
-        //        return data;
+        //                System.err.println("Calling checkLevel");
+        checkLevel(dataChoice, dataOperand, dataSelection);
+        return dataChoice.getData(DataCategory.NULL, dataSelection,
+                                  requestProperties);
     }
 
 
@@ -726,14 +958,6 @@ public class DerivedDataChoice extends ListDataChoice {
             DataSelection.merge(incomingDataSelection, myDataSelection);
 
 
-        /**
-         *  For now, don't do any caching here.
-         * Object cacheKey = Misc.newList (category, dataSelection);
-         * Data cachedData = (Data) CacheManager.get (this, cacheKey);
-         * if (cachedData != null) {
-         *   return cachedData;
-         * }
-         */
         if (requestProperties == null) {
             requestProperties = new Hashtable();
         }
@@ -741,14 +965,34 @@ public class DerivedDataChoice extends ListDataChoice {
         requestProperties.put(PROP_FROMDERIVED, Boolean.valueOf(true));
 
         Trace.call1("DerivedData.getData");
-        //First, collect the DataOperand-s. This also sets the "constructedCode" member
-        List ops = collectOperands(category, dataSelection,
-                                   requestProperties);
-
-        if (tmpProperty != null) {
-            requestProperties.put(PROP_FROMDERIVED, tmpProperty);
-        } else {
-            requestProperties.remove(PROP_FROMDERIVED);
+        List   fetches     = new ArrayList();
+        List   ops         = null;
+        Object cacheKey    = null;
+        String derivedCode = null;
+        try {
+            //First, collect the DataOperand-s. This also sets the "constructedCode" member
+            ops = collectOperands(category, dataSelection, requestProperties,
+                                  fetches);
+            if (ops != null) {
+                derivedCode = constructedCode;
+                //See if we, or another derived choice, have done this
+                //before. The key is made before the operands are fetched
+                //since that can change the selection.
+                cacheKey = makeCacheKey(derivedCode, ops, fetches,
+                                        dataSelection, requestProperties);
+                Data cachedData = getCachedResult(cacheKey);
+                if (cachedData != null) {
+                    Trace.call2("DerivedData.getData");
+                    return cachedData;
+                }
+                fetchOperands(fetches, dataSelection, requestProperties);
+            }
+        } finally {
+            if (tmpProperty != null) {
+                requestProperties.put(PROP_FROMDERIVED, tmpProperty);
+            } else {
+                requestProperties.remove(PROP_FROMDERIVED);
+            }
         }
 
         //Did the user cancel the selection of operands
@@ -758,125 +1002,117 @@ public class DerivedDataChoice extends ListDataChoice {
 
         Data result = null;
 
-        //Get the interpreter, synchronize so we don't have conflicts with the
+        //Get our own interpreter from the pool so we can run at the same
+        //time as other derived data and don't have conflicts with the
         //operand setting.
+        JythonManager jythonManager = dataContext.getJythonManager();
         PythonInterpreter interp =
-            dataContext.getJythonManager().getDerivedDataInterpreter(
-                methodName);
+            jythonManager.acquireDerivedDataInterpreter(methodName);
         //Jep jep = null;
 
        // try {
         //    jep = new Jep(false);
        // } catch (JepException e){}
 
-        synchronized (interp) {
-            //Bind the operand name to the appropriate values.
-            List<String> setVariables = new ArrayList<String>();
-            Hashtable setVariables1 = new Hashtable();
+        String     codeToEval   = derivedCode;
+        Object     resultObject = null;
+        //Bind the operand name to the appropriate values.
+        List<String> setVariables = new ArrayList<String>();
+        Hashtable setVariables1 = new Hashtable();
+        try {
+            for (int i = 0; i < ops.size(); i++) {
+                DataOperand op               = (DataOperand) ops.get(i);
+                String      cleanOperandName = op.makeLegalJython();
+                codeToEval = StringUtil.replace(codeToEval, op.getName(),
+                        cleanOperandName);
+                if(interp.get(cleanOperandName) == null ) {
+                    setVariables.add(cleanOperandName);
+                } else if(cleanOperandName.charAt(0)=='D' &&
+                        Character.isDigit(cleanOperandName.charAt(1))) {
+                    //this block is very unlikely to get in but just in case
+                    setVariables.add(cleanOperandName);
+                } else {
+                    setVariables1.put(cleanOperandName, interp.get(cleanOperandName));
+                }
+                interp.set(cleanOperandName, op.getData());
+            }
+            constructedCode = codeToEval;
+
+            //Check here because the hashCode/equals on this object
+            //that the cache manager uses to do lookups
+            //is set in the code above.
+            /*
+              for now don't do any caching
+              result = (Data) CacheManager.get (this, cacheKey);
+            */
+
+            interp.set("derivedDataChoice", this);
+            //Sometime we may want to do an exec here, instead of an eval.
+            //If we do the exec we need to have the contructed code
+            //have a "result=" in it and then we retrieve the
+            //value of "result" from the interpreter
+
+            PyObject pyResult     = interp.eval(codeToEval);
+
+            //try {
+            //    jep.getValue(constructedCode);
+            //} catch (JepException e){}
+
+            if (pyResult.getType().toString().contains("ArrayList")) {
+                resultObject = ((List) pyResult.__tojava__(List.class)).get(0);
+            } else {
+                resultObject = pyResult.__tojava__(visad.Data.class);
+                //Make sure we got the right kind of return value
+                if ((resultObject != null)
+                        && !(resultObject instanceof Data)) {
+                    resultObject = pyResult.__tojava__(DataChoice.class);
+                }
+            }
+        } finally {
+            //Now, go thru each arg that we just set and clear it so we don't leak
             try {
-                for (int i = 0; i < ops.size(); i++) {
-                    DataOperand op               = (DataOperand) ops.get(i);
-                    String      cleanOperandName = op.makeLegalJython();
-                    constructedCode = StringUtil.replace(constructedCode,
-                            op.getName(), cleanOperandName);
-                    if(interp.get(cleanOperandName) == null ) {
-                        setVariables.add(cleanOperandName);
-                    } else if(cleanOperandName.charAt(0)=='D' &&
-                            Character.isDigit(cleanOperandName.charAt(1))) {
-                        //this block is very unlikely to get in but just in case
-                        setVariables.add(cleanOperandName);
-                    } else {
-                        setVariables1.put(cleanOperandName, interp.get(cleanOperandName));
-                    }
-                    interp.set(cleanOperandName, op.getData());
+                interp.set("derivedDataChoice", null);
+            } catch (Exception ignore) {}
+            try {
+                for (String varName : setVariables) {
+                    interp.set(varName, null);
                 }
 
-                //Check here because the hashCode/equals on this object
-                //that the cache manager uses to do lookups
-                //is set in the code above.
-                /*
-                  for now don't do any caching
-                  result = (Data) CacheManager.get (this, cacheKey);
-                */
-
-                interp.set("derivedDataChoice", this);
-                if (result == null) {
-                    //Sometime we may want to do an exec here, instead of an eval.
-                    //If we do the exec we need to have the contructed code
-                    //have a "result=" in it and then we retrieve the
-                    //value of "result" from the interpreter
-
-                    PyObject pyResult     = interp.eval(constructedCode);
-
-                    //try {
-                    //    jep.getValue(constructedCode);
-                    //} catch (JepException e){}
-
-                    Object   resultObject = null;
-                    if (pyResult.getType().toString().contains("ArrayList")) {
-                        resultObject = pyResult.__tojava__(List.class);
-                    } else {
-                        resultObject = pyResult.__tojava__(visad.Data.class);
-                    }
-
-                    if (pyResult.getType().toString().contains("ArrayList")) {
-                        result = (Data) ((List) resultObject).get(0);
-                        //Make sure we got the right kind of return value
-                    } else if ((resultObject != null)
-                               && !(resultObject instanceof Data)) {
-                        resultObject = pyResult.__tojava__(DataChoice.class);
-                        //If we get back a data choice then we reset our expression to be
-                        //"bounddatachoice" and we add the data choice to our selves
-                        if (resultObject instanceof DataChoice) {
-                            DataChoice dataChoice = (DataChoice) resultObject;
-                            result =
-                                dataChoice.getData(incomingDataSelection);
-                            code                = "bounddatachoice";
-                            userSelectedChoices = new Hashtable();
-                            userSelectedChoices.put(code, dataChoice);
-                            childrenChoices = new ArrayList();
-                            childrenChoices.add(dataChoice);
-                        } else {
-                            throw new IllegalArgumentException(
-                                "Unknown return value type:"
-                                + resultObject.getClass().getName()
-                                + "\n Value=" + resultObject + "\nCode:"
-                                + constructedCode);
-                        }
-                    } else {
-                        result = (Data) resultObject;
-                    }
-                    //              System.err.println ("adding to cache:" + this);
-                    /*
-                      for now don't do any caching
-                      CacheManager.put (this, cacheKey, result);
-                    */
-
-                } else {
-                    //              System.err.println ("had data in cache:" + this);
+            } catch (Exception ignore) {}
+            if(setVariables1.size() > 0){
+                Enumeration keys = setVariables1.keys();
+                while (keys.hasMoreElements()) {
+                    Object key = keys.nextElement();
+                    String varName = (String)key;
+                    interp.set(varName, null);
+                    interp.set(varName, setVariables1.get(varName));
                 }
 
-            } finally {
-                //Now, go thru each arg that we just set and clear it so we don't leak
-                try {
-                    interp.set("derivedDataChoice", null);
-                } catch (Exception ignore) {}
-                try {
-                    for (String varName : setVariables) {
-                        interp.set(varName, null);
-                    }
-
-                } catch (Exception ignore) {}
-                if(setVariables1.size() > 0){
-                    Enumeration keys = setVariables1.keys();
-                    while (keys.hasMoreElements()) {
-                        Object key = keys.nextElement();
-                        String varName = (String)key;
-                        interp.set(varName, null);
-                        interp.set(varName, setVariables1.get(varName));
-                    }
+            }
+            jythonManager.releaseDerivedDataInterpreter(interp);
+        }
 
-                }
+        //If we get back a data choice then we reset our expression to be
+        //"bounddatachoice" and we add the data choice to our selves.
+        //This is done after we give back the interpreter since the data
+        //choice may need one.
+        if (resultObject instanceof DataChoice) {
+            DataChoice dataChoice = (DataChoice) resultObject;
+            result = dataChoice.getData(incomingDataSelection);
+            code                = "bounddatachoice";
+            userSelectedChoices = new Hashtable();
+            userSelectedChoices.put(code, dataChoice);
+            childrenChoices = new ArrayList();
+            childrenChoices.add(dataChoice);
+        } else if ((resultObject != null) && !(resultObject instanceof Data)) {
+            throw new IllegalArgumentException(
+                "Unknown return value type:"
+                + resultObject.getClass().getName() + "\n Value="
+                + resultObject + "\nCode:" + codeToEval);
+        } else {
+            result = (Data) resultObject;
+            if (result != null) {
+                cacheResult(cacheKey, result, fetches);
             }
         }
         Trace.call2("DerivedData.getData");
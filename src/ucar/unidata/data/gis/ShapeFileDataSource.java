@@ -371,27 +371,35 @@ public class ShapeFileDataSource extends FilesDataSource {
                 }
 
 
-                if (getProperty(PROP_CACHEABLE, false)) {
-                    bytes = CacheManager.getCachedFile("ShapeFileDataSource",
-                            filename);
-                }
+                ShapefileAdapter sfa;
+                if (new File(filename).isFile()
+                        && !getProperty(PROP_CACHEABLE, false)) {
+                    //Local files are memory mapped and decoded as needed
+                    sfa = new ShapefileAdapter(filename, box, coarseness);
+                } else {
+                    if (getProperty(PROP_CACHEABLE, false)) {
+                        bytes = CacheManager.getCachedFile(
+                            "ShapeFileDataSource", filename);
+                    }
 
-                if (bytes == null) {
-                    Object loadId =
-                        JobManager.getManager().startLoad("Map File");
-                    bytes = IOUtil.readBytes(IOUtil.getInputStream(filename,
-                            getClass()), loadId);
-                    JobManager.getManager().stopLoad(loadId);
-                }
+                    if (bytes == null) {
+                        Object loadId =
+                            JobManager.getManager().startLoad("Map File");
+                        bytes = IOUtil.readBytes(
+                            IOUtil.getInputStream(filename, getClass()),
+                            loadId);
+                        JobManager.getManager().stopLoad(loadId);
+                    }
 
-                if (bytes == null) {
-                    return null;
-                }
+                    if (bytes == null) {
+                        return null;
+                    }
 
-                InputStream inputStream = new ByteArrayInputStream(bytes, 0,
-                                              bytes.length);
-                ShapefileAdapter sfa = new ShapefileAdapter(inputStream,
-                                           filename, box, coarseness);
+                    InputStream inputStream =
+                        new ByteArrayInputStream(bytes, 0, bytes.length);
+                    sfa = new ShapefileAdapter(inputStream, filename, box,
+                            coarseness);
+                }
 
 
                 dbFile = sfa.getDbFile();
@@ -0,0 +1,562 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.data.grid;
+
+
+import ucar.unidata.util.WrapperException;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+
+/**
+ * Computes a set of statistics over the members of an ensemble at each
+ * grid point. The member values at a point are gathered once and all of
+ * the statistics are computed from them, so the members are only read
+ * once no matter how many statistics are asked for. The grid points are
+ * split up into tiles that are done in parallel on the shared pool.
+ * <p>
+ * The statistics are the same as the ones {@link GridMath} computed one
+ * function at a time. The mean, sum, standard deviation, min, max and
+ * range skip missing values but keep a missing value of the first member.
+ * The percentile, mode and probability count a missing value as 0.
+ */
+public class EnsembleStatistics {
+
+    /** mean of the members */
+    public static final int MEAN = 0;
+
+    /** sum of the members */
+    public static final int SUM = 1;
+
+    /** standard deviation of the members */
+    public static final int STDEV = 2;
+
+    /** min of the members */
+    public static final int MIN = 3;
+
+    /** max of the members */
+    public static final int MAX = 4;
+
+    /** max - min of the members */
+    public static final int RANGE = 5;
+
+    /** percentile of the members. The param is the percent, in (0,100] */
+    public static final int PERCENTILE = 6;
+
+    /** most common member value */
+    public static final int MODE = 7;
+
+    /**
+     * Univariate probability of the value being less than the param. Only
+     * the members within the bounds are used.
+     */
+    public static final int UPROB = 8;
+
+    /** value of the first member that is there */
+    public static final int FIRST = 9;
+
+    /** Number of grid points in a tile */
+    public static final int TILE_POINTS = 1 << 12;
+
+    /** the statistics */
+    private int[] stats;
+
+    /** the param of each statistic */
+    private float[] params;
+
+    /** lower bound of the member values used for UPROB */
+    private float loBound;
+
+    /** upper bound of the member values used for UPROB */
+    private float upBound;
+
+    /** do we need the sum, min and max */
+    private boolean needSums = false;
+
+    /** do we need the sorted member values */
+    private boolean needSorted = false;
+
+    /**
+     * Create the statistics
+     *
+     * @param stats the statistics, e.g., MEAN, PERCENTILE
+     * @param params the param of each statistic (percent for PERCENTILE,
+     *               threshold for UPROB). May be null.
+     * @param loBound lower bound of the member values used for UPROB
+     * @param upBound upper bound of the member values used for UPROB
+     */
+    public EnsembleStatistics(int[] stats, float[] params, float loBound,
+                              float upBound) {
+        this.stats   = stats;
+        this.params  = (params != null)
+                       ? params
+                       : new float[stats.length];
+        this.loBound = loBound;
+        this.upBound = upBound;
+        for (int s = 0; s < stats.length; s++) {
+            if (stats[s] <= RANGE) {
+                needSums = true;
+            } else if (stats[s] <= UPROB) {
+                needSorted = true;
+            } else if (stats[s] != FIRST) {
+                throw new IllegalArgumentException("Unknown statistic:"
+                        + stats[s]);
+            }
+            if ((stats[s] == PERCENTILE)
+                    && ((this.params[s] > 100) || (this.params[s] <= 0))) {
+                throw new IllegalArgumentException(
+                    "out of bounds percentile value:  must be in (0, 100)");
+            }
+        }
+    }
+
+    /**
+     * Compute the statistics
+     *
+     * @param members the values of each member. A member that is missing
+     *                is null.
+     *
+     * @return the values of each statistic
+     */
+    public float[][] compute(final float[][] members) {
+        int numPoints = -1;
+        for (int k = 0; k < members.length; k++) {
+            if (members[k] != null) {
+                numPoints = members[k].length;
+                break;
+            }
+        }
+        if (numPoints < 0) {
+            throw new IllegalArgumentException("No ensemble members");
+        }
+        final float[][] results  = new float[stats.length][numPoints];
+        int             numTiles = (numPoints + TILE_POINTS - 1)
+                                   / TILE_POINTS;
+        if (numTiles <= 1) {
+            computeTile(members, results, 0, numPoints);
+            return results;
+        }
+        List<Callable> tasks = new ArrayList<Callable>();
+        for (int tile = 0; tile < numTiles; tile++) {
+            final int from = tile * TILE_POINTS;
+            final int to   = Math.min(numPoints, from + TILE_POINTS);
+            tasks.add(new Callable() {
+                public Object call() {
+                    computeTile(members, results, from, to);
+                    return null;
+                }
+            });
+        }
+        try {
+            StencilEngine.runAll(tasks);
+        } catch (RuntimeException rte) {
+            throw rte;
+        } catch (Exception exc) {
+            throw new WrapperException(exc);
+        }
+        return results;
+    }
+
+    /**
+     * Compute the statistics for a range of grid points
+     *
+     * @param members the values of each member
+     * @param results the values of each statistic
+     * @param from first point
+     * @param to one past the last point
+     */
+    private void computeTile(float[][] members, float[][] results,
+                             int from, int to) {
+        int numMembers = members.length;
+        int first      = 0;
+        while (members[first] == null) {
+            first++;
+        }
+        float[] column  = new float[numMembers];
+        float[] ordered = new float[numMembers];
+        float[] sorted  = new float[numMembers];
+        float[] inRange = new float[numMembers];
+        for (int p = from; p < to; p++) {
+            for (int k = 0; k < numMembers; k++) {
+                column[k] = (members[k] == null)
+                            ? Float.NaN
+                            : members[k][p];
+            }
+            float sum = column[first];
+            float min = sum;
+            float max = sum;
+            if (needSums) {
+                for (int k = first + 1; k < numMembers; k++) {
+                    float value = column[k];
+                    if ((members[k] == null) || (value != value)) {
+                        continue;
+                    }
+                    sum += value;
+                    max = Math.max(max, value);
+                    min = Math.min(min, value);
+                }
+            }
+            if (needSorted && (numMembers > 1)) {
+                for (int k = 0; k < numMembers; k++) {
+                    float value = column[k];
+                    //Missing is 0. Adding 0 turns -0 into 0 so the sort
+                    //treats them as equal the way == does.
+                    ordered[k] = (value == value)
+                                 ? value + 0.0f
+                                 : 0.0f;
+                }
+                System.arraycopy(ordered, 0, sorted, 0, numMembers);
+                Arrays.sort(sorted);
+            }
+            for (int s = 0; s < stats.length; s++) {
+                float result;
+                if (numMembers <= 1) {
+                    result = column[first];
+                } else {
+                    switch (stats[s]) {
+
+                      case MEAN :
+                          result = sum / numMembers;
+                          break;
+
+                      case SUM :
+                          result = sum;
+                          break;
+
+                      case STDEV :
+                          float mean = sum / numMembers;
+                          float sumSquares = 0;
+                          for (int k = 0; k < numMembers; k++) {
+                              float value = column[k];
+                              if ((members[k] == null) || (value != value)) {
+                                  continue;
+                              }
+                              sumSquares += (mean - value) * (mean - value);
+                          }
+                          result = (float) Math.sqrt(sumSquares
+                                  / (numMembers - 1));
+                          break;
+
+                      case MIN :
+                          result = min;
+                          break;
+
+                      case MAX :
+                          result = max;
+                          break;
+
+                      case RANGE :
+                          result = max - min;
+                          break;
+
+                      case PERCENTILE :
+                          result = getPercentile(sorted, params[s]);
+                          break;
+
+                      case MODE :
+                          result = getMode(ordered, sorted);
+                          break;
+
+                      case FIRST :
+                          result = column[first];
+                          break;
+
+                      default :
+                          int numInRange = 0;
+                          for (int k = 0; k < numMembers; k++) {
+                              if ((sorted[k] >= loBound)
+                                      && (sorted[k] <= upBound)) {
+                                  inRange[numInRange++] = sorted[k];
+                              }
+                          }
+                          result = evaluateUProbability(
+                              Arrays.copyOf(inRange, numInRange), params[s],
+                              numMembers);
+                          break;
+                    }
+                }
+                results[s][p] = result;
+            }
+        }
+    }
+
+    /**
+     * Get the percentile of the sorted values the way
+     * GridMath.evaluatePercentile does
+     *
+     * @param sorted the sorted values
+     * @param percent the percent
+     *
+     * @return the percentile
+     */
+    private static float getPercentile(float[] sorted, double percent) {
+        int    n      = sorted.length;
+        double pos    = percent * (n + 1) / 100;
+        double fpos   = Math.floor(pos);
+        int    intPos = (int) fpos;
+        float  dif    = (float) (pos - fpos);
+        if (pos < 1) {
+            return sorted[0];
+        }
+        if (pos >= n) {
+            return sorted[n - 1];
+        }
+        float lower = sorted[intPos - 1];
+        float upper = sorted[intPos];
+        return lower + dif * (upper - lower);
+    }
+
+    /**
+     * Get the most common value. If more than one value is the most common
+     * then the one that comes first is used, the way
+     * GridMath.evaluateMode does.
+     *
+     * @param ordered the values in member order
+     * @param sorted the sorted values
+     *
+     * @return the mode
+     */
+    private static float getMode(float[] ordered, float[] sorted) {
+        int maxCount = 0;
+        int run      = 0;
+        for (int k = 0; k < sorted.length; k++) {
+            run = ((k > 0) && (sorted[k] == sorted[k - 1]))
+                  ? run + 1
+                  : 1;
+            maxCount = Math.max(maxCount, run);
+        }
+        for (int k = 0; k < ordered.length; k++) {
+            if (getCount(sorted, ordered[k]) == maxCount) {
+                return ordered[k];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Get how many times the value is in the sorted values
+     *
+     * @param sorted the sorted values
+     * @param value the value
+     *
+     * @return the count
+     */
+    private static int getCount(float[] sorted, float value) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int count = 0;
+        while ((lo < sorted.length) && (sorted[lo] == value)) {
+            lo++;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * evaluate univariate probability of "variable with n ensemble values" smaller than pValue
+     *
+     * code from $NAWIPS/gempak/source/diaglib/de/decprb.c used to make this function.
+     *
+     * @param values the values, within the userspecified range, at a given grid point
+     *        from an ensemble model run
+     * @param pValue the threshold used in the probability calculation - P(value smaller than pValue)
+     * @param length  number of ensemble members (might not be the same as values.length)
+     *
+     * @return prob the univariate probability that the value at the grid point is less than pValue
+     */
+    public static float evaluateUProbability(float[] values,
+                                             final float pValue,
+                                             final int length) {
+
+        // TODO: allow users the chance to set custom weights
+        double floatDiffTol = 0.000001D;  // tolerance for comparing if two floats are the same (used to replace G_DIFF calls from GEMPAK c code)
+        double[] weights = new double[values.length];  // holder for fake weights until ens. weights are passed into function
+        for (int ii = 0; ii < values.length; ii++) {
+            weights[ii] = 1.0d / (double) values.length;
+        }
+        /*
+         * Bubble sorting the grid values in emvalu with
+         * emvalue (1) lowest and emvalu (nummbr) highest.
+         */
+
+        int    iswflg = 1;
+        int    istop  = values.length - 1;
+        float  swpbuf;
+        double wtbuf;
+        while ((iswflg != 0) && (istop > 0)) {
+            iswflg = 0;
+            for (int kk = 0; kk < istop; kk++) {
+                if (values[kk] > values[kk + 1]) {
+                    iswflg          = 1;
+                    swpbuf          = values[kk];
+                    wtbuf           = weights[kk];
+                    values[kk]      = values[kk + 1];
+                    weights[kk]     = weights[kk + 1];
+                    values[kk + 1]  = swpbuf;
+                    weights[kk + 1] = wtbuf;
+                }
+            }
+            istop--;
+        }
+
+        /*
+         * Check for identical values and compute intrinsic weight
+         * frequency (zfreq).
+         */
+        int mm = values.length;
+        /*
+         * Initialize intrinsic weight frequency array.
+         */
+        double[] zfreq = new double[values.length];
+
+        for (int kk = 0; kk < mm; kk++) {
+            zfreq[kk] = 1.0D;
+        }
+        double tol = 0.001D * (values[mm - 1] - values[0]) / mm;
+        for (int kk = 0; kk < mm - 1; kk++) {
+            if (Math.abs(values[kk] - values[kk + 1]) <= tol) {
+                weights[kk] += weights[kk + 1];
+                zfreq[kk]   = zfreq[kk] + 1.0D;
+                mm--;
+                for (int jj = kk; jj < mm - 1; jj++) {
+                    values[jj]  = values[jj + 1];
+                    weights[jj] = weights[jj + 1];
+                }
+                kk--;
+            }
+        }
+        /*
+         * Fabricate order statistics if it has collapsed to a single value.
+         */
+        if (mm == 1) {
+            if (Math.abs(values[0] - 0.0D) < floatDiffTol) {
+                values[0] = -0.00001F;
+                values[1] = 0.00001F;
+            } else {
+                float delta = 0.00001F * Math.abs(values[0]);
+                values[1] = values[0] + delta;
+                values[0] -= delta;
+            }
+            weights[0] = 0.5D;
+            weights[1] = 0.5D;
+            mm         = 2;
+            zfreq[0]   = 1.0D;
+            zfreq[1]   = 1.0D;
+        }
+        /*
+         *Compute and sum intrinsic weights.
+         */
+        double[] zwts = new double[mm];
+        zwts[0] = zfreq[0] / (values[1] - values[0]);
+        double zsum = zwts[0];
+        for (int kk = 1; kk < mm - 1; kk++) {
+            zwts[kk] = (zfreq[kk] * 2.0F) / (values[kk + 1] - values[kk - 1]);
+            zsum     = zsum + zwts[kk];
+        }
+        zwts[mm - 1] = zfreq[mm - 1] / (values[mm - 1] - values[mm - 2]);
+        zsum         = zsum + zwts[mm - 1];
+        /*
+         * Scale external weights by normalized intrinsic weights and
+         * normalize.
+         */
+        double psum = 0.0D;
+        for (int kk = 0; kk < mm; kk++) {
+            weights[kk] = (zwts[kk] / zsum) * weights[kk];
+            psum        = psum + weights[kk];
+        }
+        for (int kk = 0; kk < mm; kk++) {
+            weights[kk] = weights[kk] / psum;
+        }
+        /*
+         * Compute Qun, the area; Vn, the normalized value;
+         * w(), normalized weight; and qlt, qrt.
+         */
+        double vn = 0.0D;
+        for (int kk = 1; kk < mm; kk++) {
+            vn += 0.5D * (weights[kk] + weights[kk - 1])
+                  * (values[kk] - values[kk - 1]);
+        }
+        vn = vn / (1.0D - 2.0D / ((double) length + 1));
+        for (int kk = 0; kk < mm; kk++) {
+            weights[kk] = weights[kk] / vn;
+        }
+        double qlt = values[0]
+                     - 2.0D / (weights[0] * ((double) length + 1.0D));
+        double qrt = values[mm - 1]
+                     + 2.0D / (weights[mm - 1] * ((double) length + 1.0D));
+
+        double[] newWeights = new double[mm + 2];
+        double[] newValues  = new double[mm + 2];
+
+        newWeights[0]      = 0.0D;
+        newWeights[mm + 1] = 0.0D;
+        newValues[0]       = qlt;
+        newValues[mm + 1]  = qrt;
+
+        for (int ii = 1; ii < mm + 1; ii++) {
+            newWeights[ii] = weights[ii - 1];
+            newValues[ii]  = values[ii - 1];
+        }
+        /*
+         * Start computing univariate probability output.
+         */
+        float prob = 0.0F;  // probability of value at grid point < pValue)
+
+        if (pValue < newValues[0]) {
+            prob = 0.0F;
+        } else if (pValue > newValues[mm + 1]) {
+            prob = 1.0F;
+        } else {
+            psum = 0.0D;
+            for (int kk = 1; kk < mm + 2; kk++) {
+                if (Math.abs(pValue - newValues[kk - 1]) < floatDiffTol) {
+                    prob = (float) psum;
+                    break;
+                } else if (pValue >= newValues[kk]) {
+                    psum += 0.5D * (newWeights[kk] + newWeights[kk - 1])
+                            * (newValues[kk] - newValues[kk - 1]);
+                } else if (pValue > newValues[kk - 1]) {
+                    double ww = newWeights[kk - 1]
+                                + (newWeights[kk] - newWeights[kk - 1])
+                                  * (pValue - newValues[kk - 1])
+                                  / (newValues[kk] - newValues[kk - 1]);
+                    double fta = 0.5D * (ww + newWeights[kk - 1])
+                                 * (pValue - newValues[kk - 1]);
+                    prob = (float) psum + (float) fta;
+                    break;
+                }
+            }
+        }
+        return prob;
+    }
+}
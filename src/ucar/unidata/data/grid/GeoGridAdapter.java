@@ -22,6 +22,7 @@ package ucar.unidata.data.grid;
 
 
 import ucar.ma2.Array;
+import ucar.ma2.DataType;
 
 import ucar.nc2.Attribute;
 import ucar.nc2.Dimension;
@@ -33,6 +34,7 @@ import ucar.nc2.dataset.CoordinateAxis1DTime;
 import ucar.nc2.dataset.CoordinateAxis2D;
 import ucar.nc2.dt.GridCoordSystem;
 import ucar.nc2.dt.grid.GeoGrid;
+import ucar.nc2.dt.grid.GridDataset;
 
 import ucar.unidata.data.DataContext;
 import ucar.unidata.data.DataUtil;
@@ -49,6 +51,7 @@ import ucar.unidata.util.WrapperException;
 import ucar.visad.ProjectionCoordinateSystem;
 import ucar.visad.RadarGridCoordinateSystem;
 import ucar.visad.data.CalendarDateTime;
+import ucar.visad.data.DatasetReadContext;
 import ucar.visad.data.GeoGridFlatField;
 import ucar.visad.quantities.CommonUnits;
 import ucar.visad.quantities.GeopotentialAltitude;
@@ -147,8 +150,23 @@ public class GeoGridAdapter {
     /** the parameter type */
     RealType paramType;
 
-    /** Used to synchronize read access on the data set */
-    private Object readLock;
+    /** The read lock and cached axis values of the data set */
+    private DatasetReadContext readContext;
+
+    /** If non-null, local reads go through this pool of dataset handles */
+    private GridReaderPool<GridDataset> readerPool;
+
+    /** The ensemble, level, y and x ranges used to subset the geogrid */
+    private ucar.ma2.Range[] subsetRanges;
+
+    /** If non-null, grid slices are cached to disk here */
+    private GridDiskCache diskCache;
+
+    /**
+     * The disk cache version of a source that has no modification time.
+     * 0 until it is made.
+     */
+    private long diskCacheVersion = 0;
 
     /** Default vertical transform */
     private String vertcs = DataUtil.STD_ATMOSPHERE;
@@ -247,7 +265,6 @@ public class GeoGridAdapter {
                 }
             }
         }
-        this.readLock = dataSource.readLock;
         if (geoGrid == null) {
             throw new IllegalArgumentException(
                 "GeoGridAdapter: geogrid cannot be null");
@@ -1333,8 +1350,10 @@ public class GeoGridAdapter {
             //        Trace.call2("toFloatArray", " length:" + fieldArray[0].length);
             retField = new CachedFlatField(ffType, domainSet, fieldArray);
         } else {
+            //Reads from a local file are serialized per dataset
+            DatasetReadContext context = getReadContext();
             Object readLockToUse = (dataSource.isLocalFile()
-                                    ? readLock
+                                    ? context.getLock()
                                     : new Object());
 
             GeoGridFlatField ggff = new GeoGridFlatField(geoGrid,
@@ -1342,7 +1361,19 @@ public class GeoGridAdapter {
                                         domainSet, ffType);
 
 
+            ggff.setReadContext(context);
             ggff.setReadLabel(readLabel);
+            GeoGridFlatField.SliceReader sliceReader = null;
+            if ((readerPool != null) && dataSource.isLocalFile()) {
+                sliceReader = new PooledSliceReader();
+            }
+            if ((diskCache != null) && (ncFile != null)) {
+                sliceReader = new DiskCacheSliceReader(sliceReader,
+                        readLockToUse);
+            }
+            if (sliceReader != null) {
+                ggff.setSliceReader(sliceReader);
+            }
             retField = ggff;
             //Not sure why we had this here since this forces a data read
             //            ggff.unpackFloats(false);
@@ -1356,6 +1387,55 @@ public class GeoGridAdapter {
 
     }
 
+    /**
+     * Get the read state of the dataset our geogrid is from. This is
+     * shared by all of the adapters on the dataset.
+     *
+     * @return the context
+     */
+    private DatasetReadContext getReadContext() {
+        if (readContext == null) {
+            readContext = DatasetReadContext.getContext((ncFile != null)
+                    ? (Object) ncFile
+                    : (Object) geoGrid);
+        }
+        return readContext;
+    }
+
+
+    /**
+     * Have the lazy grid fields read their data through the given pool of
+     * dataset handles so that different time steps can be read in parallel.
+     * The pooled handles are subset with the subset ranges so they match
+     * the geogrid this adapter was created with.
+     *
+     * @param readerPool the pool. May be null.
+     */
+    public void setReaderPool(GridReaderPool<GridDataset> readerPool) {
+        this.readerPool = readerPool;
+    }
+
+    /**
+     * Set the ranges that were used to subset the geogrid
+     *
+     * @param subsetRanges the ensemble, level, y and x ranges that were used
+     *                     to subset the geogrid, or null if not subset
+     */
+    public void setSubsetRanges(ucar.ma2.Range[] subsetRanges) {
+        this.subsetRanges = subsetRanges;
+    }
+
+    /**
+     * Have the lazy grid fields cache the slices they read in the given
+     * disk cache
+     *
+     * @param diskCache the cache. May be null.
+     */
+    public void setDiskCache(GridDiskCache diskCache) {
+        this.diskCache = diskCache;
+    }
+
+
     /**
      * Get a time ordered sequence of FlatFields
      *
@@ -1468,8 +1548,16 @@ public class GeoGridAdapter {
                 }
 
             }
-            if ((dataSource.getIdv() == null) || dataSource.isLocalFile()) {
+            if (dataSource.getIdv() == null) {
                 threadManager.runSequentially();
+            } else if (dataSource.isLocalFile()) {
+                //Only read local files in parallel when each thread can
+                //get its own file handle
+                if (readerPool != null) {
+                    threadManager.runInParallel(readerPool.getMaxReaders());
+                } else {
+                    threadManager.runSequentially();
+                }
             } else {
                 threadManager
                     .runInParallel(dataSource.getDataContext().getIdv()
@@ -1628,6 +1716,259 @@ public class GeoGridAdapter {
 
 
 
+    /**
+     * Reads grid slices through a handle borrowed from the reader pool
+     */
+    private class PooledSliceReader implements GeoGridFlatField.SliceReader {
+
+        /**
+         * Read the data for the time and ensemble member
+         *
+         * @param ensIndex the ensemble index
+         * @param timeIndex the time index
+         *
+         * @return the data
+         *
+         * @throws Exception on badness
+         */
+        public Array readDataSlice(int ensIndex, int timeIndex)
+                throws Exception {
+            GridDataset dataset = readerPool.acquire();
+            try {
+                return getPooledGrid(dataset).readDataSlice(0, ensIndex,
+                                     timeIndex, -1, -1, -1);
+            } finally {
+                readerPool.release(dataset);
+            }
+        }
+
+        /**
+         * Find the geogrid in the pooled dataset, subset the same way as
+         * our geogrid
+         *
+         * @param dataset the pooled dataset
+         *
+         * @return the grid
+         *
+         * @throws Exception on badness
+         */
+        private GeoGrid getPooledGrid(GridDataset dataset) throws Exception {
+            List key = Misc.newList(geoGrid.getName());
+            if (subsetRanges != null) {
+                key.addAll(java.util.Arrays.asList(subsetRanges));
+            }
+            GeoGrid grid = (GeoGrid) readerPool.getCachedObject(dataset,
+                               key);
+            if (grid == null) {
+                grid = dataset.findGridByName(geoGrid.getName());
+                if (grid == null) {
+                    throw new IllegalStateException("Could not find grid:"
+                            + geoGrid.getName());
+                }
+                if (subsetRanges != null) {
+                    grid = (GeoGrid) grid.makeSubset(null, subsetRanges[0],
+                            null, subsetRanges[1], subsetRanges[2],
+                            subsetRanges[3]);
+                }
+                readerPool.putCachedObject(dataset, key, grid);
+            }
+            return grid;
+        }
+    }
+
+
+    /**
+     * Reads grid slices from the disk cache, falling back to the
+     * geogrid (or a pooled reader) and writing what it read to the cache
+     */
+    private class DiskCacheSliceReader implements GeoGridFlatField
+        .SliceReader {
+
+        /** the reader to use on a cache miss. May be null. */
+        private GeoGridFlatField.SliceReader reader;
+
+        /** the lock to read the geogrid under when there is no reader */
+        private Object lock;
+
+        /**
+         * ctor
+         *
+         * @param reader the reader to use on a cache miss. May be null.
+         * @param lock the read lock
+         */
+        public DiskCacheSliceReader(GeoGridFlatField.SliceReader reader,
+                                    Object lock) {
+            this.reader = reader;
+            this.lock   = lock;
+        }
+
+        /**
+         * Read the data for the time and ensemble member
+         *
+         * @param ensIndex the ensemble index
+         * @param timeIndex the time index
+         *
+         * @return the data
+         *
+         * @throws Exception on badness
+         */
+        public Array readDataSlice(int ensIndex, int timeIndex)
+                throws Exception {
+            long   version = getSourceVersion();
+            String key     = makeDiskCacheKey(ensIndex, timeIndex);
+            GridDiskCache.Slice slice = diskCache.read(key, version);
+            if (slice != null) {
+                return Array.factory(DataType.FLOAT, slice.shape,
+                                     slice.values);
+            }
+            Array arr = readFromSource(ensIndex, timeIndex);
+            //Store floats with the missing values already set to NaN
+            float[] values    = DataUtil.toFloatArray(arr);
+            Class   dataClass = arr.getElementType();
+            if ( !(dataClass.equals(float.class)
+                    || dataClass.equals(double.class))) {
+                values = geoGrid.setMissingToNaN(values);
+            }
+            int[] shape = arr.getShape();
+            diskCache.write(key, version, shape, values);
+            return Array.factory(DataType.FLOAT, shape, values);
+        }
+
+        /**
+         * Read the slice from the reader or the geogrid
+         *
+         * @param ensIndex the ensemble index
+         * @param timeIndex the time index
+         *
+         * @return the data
+         *
+         * @throws Exception on badness
+         */
+        private Array readFromSource(int ensIndex, int timeIndex)
+                throws Exception {
+            if (reader != null) {
+                return reader.readDataSlice(ensIndex, timeIndex);
+            }
+            synchronized (lock) {
+                return geoGrid.readDataSlice(0, ensIndex, timeIndex, -1, -1,
+                                             -1);
+            }
+        }
+
+        /**
+         * Make the cache key. This is the dataset location, the grid, the
+         * time and ensemble member and the level, stride and spatial
+         * subset the geogrid was made with. The time is keyed on its
+         * value so a file that gains or loses times does not map an index
+         * onto the wrong slice.
+         *
+         * @param ensIndex the ensemble index
+         * @param timeIndex the time index
+         *
+         * @return the key
+         */
+        private String makeDiskCacheKey(int ensIndex, int timeIndex) {
+            StringBuffer sb = new StringBuffer();
+            sb.append(ncFile.getLocation());
+            sb.append("|");
+            sb.append(geoGrid.getName());
+            sb.append("|ens=");
+            sb.append(ensIndex);
+            sb.append("|time=");
+            sb.append(getTimeKey(timeIndex));
+            sb.append("|shape=");
+            sb.append(java.util.Arrays.toString(geoGrid.getShape()));
+            if (subsetRanges != null) {
+                for (int i = 0; i < subsetRanges.length; i++) {
+                    ucar.ma2.Range r = subsetRanges[i];
+                    sb.append("|");
+                    sb.append((r == null)
+                              ? "all"
+                              : r.first() + ":" + r.last() + ":"
+                                + r.stride());
+                }
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Get the time value for the index
+         *
+         * @param timeIndex the time index
+         *
+         * @return the time or the index if there is no time axis
+         */
+        private String getTimeKey(int timeIndex) {
+            if (timeIndex < 0) {
+                return "none";
+            }
+            GridCoordSystem      geoSys   = geoGrid.getCoordinateSystem();
+            CoordinateAxis1DTime timeAxis = geoSys.getTimeAxis1D();
+            if ((timeAxis == null) && (geoSys.getRunTimeAxis() != null)) {
+                timeAxis = geoSys.getRunTimeAxis();
+            }
+            if (timeAxis == null) {
+                return "index:" + timeIndex;
+            }
+            return timeAxis.getCalendarDate(timeIndex).toString();
+        }
+
+        /**
+         * Get the version of the source. This is the modification time of
+         * a local file. Other sources (e.g., OPeNDAP) don't have one so
+         * we use a hash of what we know of them.
+         *
+         * @return the version
+         *
+         * @throws IOException problem reading the time axes
+         */
+        private long getSourceVersion() throws IOException {
+            if (dataSource.isLocalFile()) {
+                long modified =
+                    new java.io.File(ncFile.getLocation()).lastModified();
+                if (modified > 0) {
+                    return modified;
+                }
+            }
+            return getDiskCacheVersion();
+        }
+    }
+
+
+    /**
+     * Get the disk cache version of a source that has no modification
+     * time. This is a hash of the location, the modification time the
+     * dataset reports, the shape of the grid and the values of its time
+     * axes, so it changes when times are added or dropped.
+     *
+     * @return the version
+     *
+     * @throws IOException problem reading the time axes
+     */
+    private synchronized long getDiskCacheVersion() throws IOException {
+        if (diskCacheVersion == 0) {
+            GridCoordSystem geoSys = geoGrid.getCoordinateSystem();
+            StringBuffer    sb     = new StringBuffer();
+            sb.append(ncFile.getLocation());
+            sb.append("|modified=");
+            sb.append(ncFile.getLastModified());
+            sb.append("|shape=");
+            sb.append(java.util.Arrays.toString(geoGrid.getShape()));
+            CoordinateAxis[] axes = { geoSys.getTimeAxis(),
+                                      geoSys.getRunTimeAxis() };
+            for (CoordinateAxis axis : axes) {
+                sb.append("|");
+                if (axis != null) {
+                    sb.append(java.util.Arrays.toString(
+                        DataUtil.toDoubleArray(axis.read())));
+                }
+            }
+            diskCacheVersion = GridDiskCache.makeVersion(sb.toString());
+        }
+        return diskCacheVersion;
+    }
+
+
     /**
      * make proper RealType from name and unit name.
      *
@@ -61,6 +61,7 @@ import ucar.unidata.geoloc.LatLonRect;
 import ucar.unidata.geoloc.ProjectionImpl;
 import ucar.unidata.idv.DisplayControl;
 import ucar.unidata.idv.IdvConstants;
+import ucar.unidata.idv.IdvObjectStore;
 import ucar.unidata.idv.ui.DataTreeDialog;
 import ucar.unidata.ui.TextSearcher;
 import ucar.unidata.util.CatalogUtil;
@@ -171,6 +172,12 @@ public class GeoGridDataSource extends GridDataSource {
     /** the dataset */
     private GridDataset dataset;
 
+    /** Use this to synchronize the lazy creation of the dataset */
+    private final Object DATASET_MUTEX = new Object();
+
+    /** Pool of dataset handles used for parallel reads of local files */
+    private GridReaderPool<GridDataset> readerPool;
+
     /** list of times for this dataset */
     private List myTimes = new ArrayList();
 
@@ -597,7 +604,10 @@ public class GeoGridDataSource extends GridDataSource {
      * The source has changed
      */
     protected void sourcesChanged() {
-        dataset   = null;
+        synchronized (DATASET_MUTEX) {
+            closeReaderPool();
+            dataset = null;
+        }
         gcsVsTime = new Hashtable();
         super.sourcesChanged();
     }
@@ -607,8 +617,11 @@ public class GeoGridDataSource extends GridDataSource {
      * Clear out the data set
      */
     public void reloadData() {
+        synchronized (DATASET_MUTEX) {
+            closeReaderPool();
+            dataset = null;
+        }
         myTimes   = null;
-        dataset   = null;
         gcsVsTime = new Hashtable();
         resolvePath();
         dataChoices = null;
@@ -633,6 +646,7 @@ public class GeoGridDataSource extends GridDataSource {
      */
     public void doRemove() {
         super.doRemove();
+        closeReaderPool();
         try {
             if (dataset != null) {
                 dataset.close();
@@ -1014,6 +1028,17 @@ public class GeoGridDataSource extends GridDataSource {
     }
 
 
+    /**
+     * Grid reads are guarded by the read lock of the grid fields so
+     * different data choices can be loaded at the same time.
+     *
+     * @return true
+     */
+    protected boolean canLoadDataConcurrently() {
+        return true;
+    }
+
+
     /**
      *  Overwrite setNewFiles so we clear out the resolverurl
      *
@@ -1258,14 +1283,87 @@ public class GeoGridDataSource extends GridDataSource {
      * @return dataset
      */
     public GridDataset getDataset() {
-        if (dataset == null) {
-            Trace.call1("GeoGridDataSource.getDataSet", " name = " + sources);
-            dataset = doMakeDataSet();
-            Trace.call2("GeoGridDataSource.getDataSet");
+        synchronized (DATASET_MUTEX) {
+            if (dataset == null) {
+                Trace.call1("GeoGridDataSource.getDataSet",
+                            " name = " + sources);
+                dataset = doMakeDataSet();
+                Trace.call2("GeoGridDataSource.getDataSet");
+            }
+            return dataset;
+        }
+    }
+
+
+
+    /**
+     * Get the pool of dataset handles used to read a local file from
+     * more than one thread. This is null if the file is remote, if we
+     * aggregate more than one file or if the user has not asked
+     * for more than one local reading thread.
+     *
+     * @return the reader pool or null
+     */
+    protected GridReaderPool<GridDataset> getReaderPool() {
+        synchronized (DATASET_MUTEX) {
+            if (readerPool != null) {
+                return readerPool;
+            }
+            if ((getIdv() == null) || ((sources != null)
+                    && (sources.size() > 1)) || !isLocalFile()) {
+                return null;
+            }
+            int threads = getIdv().getMaxLocalDataThreadCount();
+            if (threads <= 1) {
+                return null;
+            }
+            readerPool = new GridReaderPool<GridDataset>(threads) {
+                protected GridDataset openReader() throws Exception {
+                    return doMakeDataSet();
+                }
+
+                protected void closeReader(GridDataset reader)
+                        throws Exception {
+                    reader.close();
+                }
+            };
+            return readerPool;
         }
-        return dataset;
     }
 
+    /**
+     * Get the persistent disk cache of grid slices. This is non-null if
+     * the user has chosen to cache this data source to disk or has
+     * turned on the grid cache preference.
+     *
+     * @return the disk cache or null
+     */
+    protected GridDiskCache getGridDiskCache() {
+        if (getIdv() == null) {
+            return null;
+        }
+        IdvObjectStore store = getIdv().getStore();
+        if ( !getCacheDataToDisk()
+                && !store.get(IdvConstants.PREF_GRIDCACHE_ENABLED, false)) {
+            return null;
+        }
+        long maxBytes = store.get(IdvConstants.PREF_GRIDCACHE_SIZE,
+                                  2000) * 1000000L;
+        return GridDiskCache.getCache(new File(store.getUserDirectory(),
+                "gridcache"), maxBytes);
+    }
+
+    /**
+     * Close the reader pool if we have one
+     */
+    private void closeReaderPool() {
+        synchronized (DATASET_MUTEX) {
+            if (readerPool != null) {
+                readerPool.close();
+                readerPool = null;
+            }
+        }
+    }
 
 
     /**
@@ -1632,6 +1730,7 @@ public class GeoGridDataSource extends GridDataSource {
         Object  extraCacheKey = null;
         GeoGrid geoGrid       = findGridForDataChoice(myDataset, dataChoice);
         String  paramName     = dataChoice.getStringId();
+        Range[] subsetRanges  = null;
         if (geoGrid == null) {
             return null;
         }
@@ -1819,12 +1918,16 @@ public class GeoGridDataSource extends GridDataSource {
                 //                System.out.println("level range(1):  " + levelRange);
                 geoGrid = (GeoGrid) geoGrid.makeSubset(null, ensRange, null,
                         levelRange, yRange, xRange);
+                subsetRanges = new Range[] { ensRange, levelRange, yRange,
+                                             xRange };
             } else if (levelRange != null) {
                 extraCacheKey = levelRange;
                 //                System.out.println("level range(2):  " + levelRange);
                 //geoGrid = geoGrid.subset(null, levelRange, null, null);
                 geoGrid = (GeoGrid) geoGrid.makeSubset(null, ensRange, null,
                         levelRange, yRange, xRange);
+                subsetRanges = new Range[] { ensRange, levelRange, yRange,
+                                             xRange };
             }
         } catch (InvalidRangeException ire) {
             throw new IllegalArgumentException("Invalid range:" + ire);
@@ -1908,6 +2011,11 @@ public class GeoGridDataSource extends GridDataSource {
                                      dataChoice.getName(),
                                      dataset.getNetcdfDataset(),
                                      extraCacheKey);
+        if ( !forMetaData) {
+            adapter.setReaderPool(getReaderPool());
+            adapter.setDiskCache(getGridDiskCache());
+        }
+        adapter.setSubsetRanges(subsetRanges);
 
         adapter.cacheFile = filename.toString();
         return adapter;
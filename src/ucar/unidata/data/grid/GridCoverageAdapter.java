@@ -136,6 +136,8 @@ public class GridCoverageAdapter {
     private Object readLock;
     /** Default vertical transform */
     private String vertcs = DataUtil.STD_ATMOSPHERE;
+    /** Pool of coverage handles for parallel reads of a local file */
+    private GridReaderPool<FeatureDatasetCoverage> readerPool;
 
     /**
      * Construct a GeoGridAdapter that will take a GeoGrid and return
@@ -1260,6 +1262,9 @@ public class GridCoverageAdapter {
 
 
             ggff.setReadLabel(readLabel);
+            if ((readerPool != null) && dataSource.isLocalFile()) {
+                ggff.setCoverageReader(new PooledCoverageReader());
+            }
             retField = ggff;
             //Not sure why we had this here since this forces a data read
             //            ggff.unpackFloats(false);
@@ -1285,6 +1290,18 @@ public class GridCoverageAdapter {
         return makeSequence(timeIndices, null, null);
     }
 
+    /**
+     * Have the lazy grid fields read their data through the given pool of
+     * coverage handles so that different time steps can be read in
+     * parallel. Each read uses its own copy of the subset.
+     *
+     * @param readerPool the pool. May be null.
+     */
+    public void setReaderPool(
+            GridReaderPool<FeatureDatasetCoverage> readerPool) {
+        this.readerPool = readerPool;
+    }
+
     /**
      * Get a time ordered sequence of FlatFields
      *
@@ -1385,8 +1402,16 @@ public class GridCoverageAdapter {
                 }
 
             }
-            if ((dataSource.getIdv() == null) || dataSource.isLocalFile()) {
+            if (dataSource.getIdv() == null) {
                 threadManager.runSequentially();
+            } else if (dataSource.isLocalFile()) {
+                //Only read local files in parallel when each thread can
+                //get its own file handle
+                if (readerPool != null) {
+                    threadManager.runInParallel(readerPool.getMaxReaders());
+                } else {
+                    threadManager.runSequentially();
+                }
             } else {
                 threadManager
                         .runInParallel(dataSource.getDataContext().getIdv()
@@ -1809,4 +1834,54 @@ public class GridCoverageAdapter {
         return levels.indexOf(o);
     }
 
+
+
+    /**
+     * Reads the coverage through a handle borrowed from the reader pool
+     */
+    private class PooledCoverageReader implements GridCoverageFlatField
+        .CoverageReader {
+
+        /**
+         * Read the data for the subset
+         *
+         * @param params the subset
+         *
+         * @return the data
+         *
+         * @throws Exception on badness
+         */
+        public Array readData(SubsetParams params) throws Exception {
+            FeatureDatasetCoverage dataset = readerPool.acquire();
+            try {
+                return getPooledCoverage(dataset).readData(params).getData();
+            } finally {
+                readerPool.release(dataset);
+            }
+        }
+
+        /**
+         * Find our coverage in the pooled dataset
+         *
+         * @param dataset the pooled dataset
+         *
+         * @return the coverage
+         */
+        private Coverage getPooledCoverage(FeatureDatasetCoverage dataset) {
+            Coverage coverage =
+                (Coverage) readerPool.getCachedObject(dataset,
+                    geoGrid.getName());
+            if (coverage == null) {
+                coverage = dataset.getCoverageCollections().get(
+                    0).findCoverage(geoGrid.getName());
+                if (coverage == null) {
+                    throw new IllegalStateException("Could not find grid:"
+                            + geoGrid.getName());
+                }
+                readerPool.putCachedObject(dataset, geoGrid.getName(),
+                                           coverage);
+            }
+            return coverage;
+        }
+    }
 }
@@ -164,6 +164,10 @@ public class GridCoverageDataSource extends GridDataSource {
     protected final Object readLock = new Object();
     /** the dataset */
     private DtCoverageDataset dataset;
+    /** Use this to synchronize the lazy creation of the dataset */
+    private final Object DATASET_MUTEX = new Object();
+    /** Pool of coverage handles used for parallel reads of local files */
+    private GridReaderPool<FeatureDatasetCoverage> readerPool;
     /** list of times for this dataset */
     private List myTimes = new ArrayList();
     /** list of levels for this dataset */
@@ -650,7 +654,10 @@ public class GridCoverageDataSource extends GridDataSource {
      * The source has changed
      */
     protected void sourcesChanged() {
-        dataset   = null;
+        synchronized (DATASET_MUTEX) {
+            closeReaderPool();
+            dataset = null;
+        }
         gcsVsTime = new Hashtable();
         super.sourcesChanged();
     }
@@ -659,8 +666,11 @@ public class GridCoverageDataSource extends GridDataSource {
      * Clear out the data set
      */
     public void reloadData() {
+        synchronized (DATASET_MUTEX) {
+            closeReaderPool();
+            dataset = null;
+        }
         myTimes   = null;
-        dataset   = null;
         gcsVsTime = new Hashtable();
         resolvePath();
         dataChoices = null;
@@ -682,6 +692,7 @@ public class GridCoverageDataSource extends GridDataSource {
      */
     public void doRemove() {
         super.doRemove();
+        closeReaderPool();
         try {
             if (dataset != null) {
                 dataset.close();
@@ -1280,12 +1291,68 @@ public class GridCoverageDataSource extends GridDataSource {
      * @return dataset
      */
     public DtCoverageDataset getDataset() {
-        if (dataset == null) {
-            Trace.call1("GeoGridDataSource.getDataSet", " name = " + sources);
-            dataset = doMakeDataSet();
-            Trace.call2("GeoGridDataSource.getDataSet");
+        synchronized (DATASET_MUTEX) {
+            if (dataset == null) {
+                Trace.call1("GeoGridDataSource.getDataSet",
+                            " name = " + sources);
+                dataset = doMakeDataSet();
+                Trace.call2("GeoGridDataSource.getDataSet");
+            }
+            return dataset;
+        }
+    }
+
+    /**
+     * Get the pool of coverage handles used to read a local file from
+     * more than one thread. This is null if the file is remote, if we
+     * aggregate more than one file or if the user has not asked
+     * for more than one local reading thread.
+     *
+     * @return the reader pool or null
+     */
+    protected GridReaderPool<FeatureDatasetCoverage> getReaderPool() {
+        synchronized (DATASET_MUTEX) {
+            if (readerPool != null) {
+                return readerPool;
+            }
+            if ((getIdv() == null) || ((sources != null)
+                    && (sources.size() > 1)) || !isLocalFile()) {
+                return null;
+            }
+            int threads = getIdv().getMaxLocalDataThreadCount();
+            if (threads <= 1) {
+                return null;
+            }
+            readerPool = new GridReaderPool<FeatureDatasetCoverage>(threads) {
+                protected FeatureDatasetCoverage openReader()
+                        throws Exception {
+                    DtCoverageDataset gds = doMakeDataSet();
+                    if (gds == null) {
+                        throw new IllegalStateException(
+                            "Unable to open grid:" + getFilePath());
+                    }
+                    return DtCoverageAdapter.factory(gds, null);
+                }
+
+                protected void closeReader(FeatureDatasetCoverage reader)
+                        throws Exception {
+                    reader.close();
+                }
+            };
+            return readerPool;
+        }
+    }
+
+    /**
+     * Close the reader pool if we have one
+     */
+    private void closeReaderPool() {
+        synchronized (DATASET_MUTEX) {
+            if (readerPool != null) {
+                readerPool.close();
+                readerPool = null;
+            }
         }
-        return dataset;
     }
 
     /**
@@ -1930,6 +1997,9 @@ public class GridCoverageDataSource extends GridDataSource {
                 geiGridSubsetParams, dataChoice.getName(),
                 dataset.getNetcdfDataset(),
                 extraCacheKey);
+        if ( !forMetaData) {
+            adapter.setReaderPool(getReaderPool());
+        }
 
         adapter.cacheFile = filename.toString();
         return adapter;
@@ -0,0 +1,376 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.data.grid;
+
+
+import ucar.unidata.util.IOUtil;
+import ucar.unidata.util.LogUtil;
+import ucar.unidata.util.Misc;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.security.MessageDigest;
+
+import java.util.Hashtable;
+import java.util.List;
+
+
+/**
+ * A persistent, content addressed disk cache of grid slices. Each entry
+ * is stored in its own file named by the SHA-1 hash of its key. The file
+ * holds a small header (the key, the version of the source and the shape
+ * of the slice) followed by the values as raw little endian floats. The
+ * version is the modification time of a local file or, for a source that
+ * has none, a hash made with {@link #makeVersion}.
+ * <p>
+ * Files are read into memory rather than mapped so that they can be
+ * replaced or deleted right away, which Windows does not allow for a
+ * mapped file. New files are written to a temporary file and then moved
+ * into place so readers never see a partial file.
+ * <p>
+ * An entry is ignored if the version of the source has changed since it
+ * was written. When the total size of the cache goes over its limit the
+ * least recently used files are scoured.
+ *
+ * @author IDV development team
+ */
+public class GridDiskCache {
+
+    /** logging category */
+    static LogUtil.LogCategory log_ =
+        LogUtil.getLogInstance(GridDiskCache.class.getName());
+
+    /** Identifies our files */
+    private static final int MAGIC = 0x49445647;
+
+    /** File format version */
+    private static final int VERSION = 1;
+
+    /** file suffix */
+    private static final String SUFFIX = ".grd";
+
+    /** suffix of the temporary files we write to */
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /** How old (ms) a temporary file is before we scour it */
+    private static final long TMP_MAX_AGE = 60 * 60 * 1000L;
+
+    /** The caches, one per directory */
+    private static Hashtable<File, GridDiskCache> caches =
+        new Hashtable<File, GridDiskCache>();
+
+    /** The directory */
+    private File dir;
+
+    /** max size in bytes */
+    private long maxBytes;
+
+    /** bytes written since we last scoured */
+    private long bytesSinceScour = 0;
+
+    /** are we scouring now */
+    private boolean scouring = false;
+
+    /**
+     * Create the cache
+     *
+     * @param dir the directory
+     * @param maxBytes max size in bytes
+     */
+    private GridDiskCache(File dir, long maxBytes) {
+        this.dir      = dir;
+        this.maxBytes = maxBytes;
+        IOUtil.makeDirRecursive(dir);
+        //Scour at startup in case the limit changed
+        bytesSinceScour = maxBytes;
+    }
+
+    /**
+     * Get the cache for the given directory, creating it if needed
+     *
+     * @param dir the directory
+     * @param maxBytes max size in bytes
+     *
+     * @return the cache
+     */
+    public static GridDiskCache getCache(File dir, long maxBytes) {
+        synchronized (caches) {
+            GridDiskCache cache = caches.get(dir);
+            if (cache == null) {
+                cache = new GridDiskCache(dir, maxBytes);
+                caches.put(dir, cache);
+            }
+            cache.maxBytes = maxBytes;
+            return cache;
+        }
+    }
+
+    /**
+     * Holds the values of one cached slice
+     */
+    public static class Slice {
+
+        /** the shape */
+        public int[] shape;
+
+        /** the values */
+        public float[] values;
+
+        /**
+         * ctor
+         *
+         * @param shape the shape
+         * @param values the values
+         */
+        public Slice(int[] shape, float[] values) {
+            this.shape  = shape;
+            this.values = values;
+        }
+    }
+
+    /**
+     * Read the slice for the given key
+     *
+     * @param key the key
+     * @param sourceVersion the version of the source
+     *
+     * @return the slice or null if it is not in the cache or is out of date
+     */
+    public Slice read(String key, long sourceVersion) {
+        File f = getFile(key);
+        if ( !f.exists()) {
+            return null;
+        }
+        boolean stale = false;
+        try {
+            ByteBuffer       buffer;
+            RandomAccessFile raf = new RandomAccessFile(f, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                buffer = ByteBuffer.allocate((int) channel.size());
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        throw new IOException("Truncated grid cache file");
+                    }
+                }
+            } finally {
+                raf.close();
+            }
+            buffer.flip();
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if ((buffer.getInt() != MAGIC) || (buffer.getInt() != VERSION)) {
+                throw new IOException("Not a grid cache file");
+            }
+            byte[] keyBytes = new byte[buffer.getInt()];
+            buffer.get(keyBytes);
+            if ( !key.equals(new String(keyBytes, "UTF-8"))) {
+                return null;
+            }
+            if (buffer.getLong() != sourceVersion) {
+                //The source has changed. The file is closed so we can
+                //delete it.
+                stale = true;
+                return null;
+            }
+            int[] shape = new int[buffer.getInt()];
+            for (int i = 0; i < shape.length; i++) {
+                shape[i] = buffer.getInt();
+            }
+            float[] values = new float[buffer.getInt()];
+            buffer.asFloatBuffer().get(values);
+            //Touch it for the LRU scouring
+            f.setLastModified(System.currentTimeMillis());
+            return new Slice(shape, values);
+        } catch (Exception exc) {
+            log_.error("Error reading grid cache file:" + f + " " + exc);
+            stale = true;
+            return null;
+        } finally {
+            if (stale) {
+                f.delete();
+            }
+        }
+    }
+
+    /**
+     * Write the slice for the given key
+     *
+     * @param key the key
+     * @param sourceVersion the version of the source
+     * @param shape the shape of the slice
+     * @param values the values
+     */
+    public void write(String key, long sourceVersion, int[] shape,
+                      float[] values) {
+        File f   = getFile(key);
+        File tmp = new File(f.getPath() + "." + Misc.getUniqueId()
+                            + TMP_SUFFIX);
+        try {
+            IOUtil.makeDir(f.getParentFile());
+            byte[] keyBytes = key.getBytes("UTF-8");
+            int headerSize = 4 * 4 + keyBytes.length + 8 + 4 * shape.length
+                             + 4;
+            ByteBuffer header = ByteBuffer.allocate(headerSize);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(keyBytes.length);
+            header.put(keyBytes);
+            header.putLong(sourceVersion);
+            header.putInt(shape.length);
+            for (int i = 0; i < shape.length; i++) {
+                header.putInt(shape[i]);
+            }
+            header.putInt(values.length);
+            header.flip();
+
+            ByteBuffer data = ByteBuffer.allocate(4 * values.length);
+            data.order(ByteOrder.LITTLE_ENDIAN);
+            data.asFloatBuffer().put(values);
+
+            RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+            try {
+                FileChannel channel = raf.getChannel();
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            } finally {
+                raf.close();
+            }
+            //Replace any existing file in one step
+            Files.move(tmp.toPath(), f.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+            checkSize(headerSize + 4L * values.length);
+        } catch (Exception exc) {
+            log_.error("Error writing grid cache file:" + f + " " + exc);
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Scour the cache in a thread if we have written enough since the
+     * last time we scoured
+     *
+     * @param bytesWritten how much we just wrote
+     */
+    private void checkSize(long bytesWritten) {
+        synchronized (this) {
+            bytesSinceScour += bytesWritten;
+            //Scour when we have written 10% of the limit
+            if (scouring || (bytesSinceScour < maxBytes / 10)) {
+                return;
+            }
+            scouring        = true;
+            bytesSinceScour = 0;
+        }
+        Misc.run(new Runnable() {
+            public void run() {
+                try {
+                    scour();
+                } finally {
+                    synchronized (GridDiskCache.this) {
+                        scouring = false;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Delete the least recently used files until we are under the limit
+     */
+    public void scour() {
+        List<File> files = IOUtil.findFilesToScour(dir, 0, maxBytes);
+        long       now   = System.currentTimeMillis();
+        for (File f : files) {
+            //Leave the temporary files of the writes that are in flight.
+            //An old one was left by a write that died.
+            if (f.getName().endsWith(TMP_SUFFIX)
+                    && (now - f.lastModified() < TMP_MAX_AGE)) {
+                continue;
+            }
+            f.delete();
+        }
+    }
+
+    /**
+     * Make a version for a source that has no modification time from a
+     * description of it, e.g., its location and the values of its time
+     * axis.
+     *
+     * @param description describes the state of the source
+     *
+     * @return the version
+     */
+    public static long makeVersion(String description) {
+        String hash = makeHash(description);
+        //The first 64 bits of the hash
+        return Long.parseUnsignedLong(hash.substring(0, 16), 16);
+    }
+
+    /**
+     * Get the file for the key
+     *
+     * @param key the key
+     *
+     * @return the file
+     */
+    private File getFile(String key) {
+        String hash = makeHash(key);
+        return new File(IOUtil.joinDir(IOUtil.joinDir(dir,
+                hash.substring(0, 2)), hash + SUFFIX));
+    }
+
+    /**
+     * Make the SHA-1 hash of the key
+     *
+     * @param key the key
+     *
+     * @return hex string
+     */
+    private static String makeHash(String key) {
+        try {
+            MessageDigest md    = MessageDigest.getInstance("SHA-1");
+            byte[]        bytes = md.digest(key.getBytes("UTF-8"));
+            StringBuffer  sb    = new StringBuffer();
+            for (int i = 0; i < bytes.length; i++) {
+                sb.append(Integer.toHexString((bytes[i] & 0xff) | 0x100)
+                    .substring(1));
+            }
+            return sb.toString();
+        } catch (Exception exc) {
+            throw new IllegalStateException("Unable to hash key:" + exc);
+        }
+    }
+
+}
@@ -24,9 +24,13 @@ import ucar.unidata.data.DataUtil;
 import ucar.unidata.geoloc.LatLonPointImpl;
 import ucar.unidata.util.Misc;
 import ucar.unidata.util.Range;
+import ucar.unidata.util.StringUtil;
 import ucar.unidata.util.Trace;
+import ucar.unidata.util.WrapperException;
 
 import ucar.visad.Util;
+import ucar.visad.data.GeoGridFlatField;
+import ucar.visad.data.GridCoverageFlatField;
 
 import ucar.visad.quantities.AirPressure;
 import ucar.visad.quantities.CommonUnits;
@@ -602,6 +606,42 @@ public class GridMath {
         return applyFunctionOverMembers(grid, 0, 0, 0, FUNC_MODE);
     }
 
+    /**
+     * Compute several statistics over the ensemble members at once. The
+     * members are read once for all of them.
+     * The functions are a comma separated list of FUNC_ enums, e.g.,
+     * "average,standardDeviation,min,max". A function can have a param
+     * after a colon: the percent for ensemblePercentile (e.g.,
+     * "ensemblePercentile:90") or the threshold for
+     * ensembleUProbability.
+     *
+     * @param grid   ensemble grid
+     * @param functions the functions
+     *
+     * @return the new field for each function
+     *
+     * @throws VisADException  On badness
+     */
+    public static FieldImpl[] ensembleStatistics(FieldImpl grid,
+            String functions)
+            throws VisADException {
+        List      toks   = StringUtil.split(functions, ",", true, true);
+        String[]  funcs  = new String[toks.size()];
+        float[]   params = new float[toks.size()];
+        for (int i = 0; i < funcs.length; i++) {
+            String tok = (String) toks.get(i);
+            int    idx = tok.indexOf(":");
+            if (idx >= 0) {
+                params[i] =
+                    (float) Misc.parseNumber(tok.substring(idx + 1).trim());
+                tok = tok.substring(0, idx).trim();
+            }
+            funcs[i] = tok;
+        }
+        return applyFunctionsOverMembers(grid, funcs, params, -999999,
+                                         999999);
+    }
+
     /**
      * This creates a field where D(T) = D(T)-D(T+offset)
      * Any time steps up to the offset time are set to missing
@@ -1024,21 +1064,11 @@ public class GridMath {
                                     int opt, boolean skipMissing)
             throws VisADException {
 
-        float wsum = 0;
         if (wgts != null) {
             nave = wgts.length;
-            for (int i = 0; i < nave; i++) {
-                wsum += wgts[i];
-            }
         } else {
             wgts = new float[nave];
-            for (int i = 0; i < nave; i++) {
-                wgts[i] = 1.0f;
-                wsum    += 1f;
-            }
-        }
-        if (wsum > 1.0) {
-            wsum = 1f / wsum;
+            Arrays.fill(wgts, 1.0f);
         }
         try {
             if ( !GridUtil.isTimeSequence(grid) || (nave == 1)) {
@@ -1046,117 +1076,93 @@ public class GridMath {
             }
             Set timeDomain   = Util.getDomainSet(grid);
             int numTimeSteps = timeDomain.getLength();
-            int npts         = numTimeSteps;
             if (nave > numTimeSteps) {
                 throw new VisADException(
                     "Number of average steps is greater than number of times");
             }
-            FieldImpl newGrid = (FieldImpl) grid.clone();
-            int       nav2    = nave / 2;
-            int       noe     = (nave % 2 == 0)
-                                ? 1
-                                : 0;
-            //System.out.println("nave = "+nave+", nav2 = "+nav2+", noe= "+noe);
-            FlatField sample      = (FlatField) newGrid.getSample(0);
-            float[][] missingData = Misc.cloneArray(sample.getFloats(false));
-            Misc.fillArray(missingData, Float.NaN);
-            int         lwork       = numTimeSteps + 2 * nav2;
-            float[][]   values      = null;
-            float[][][] work        = new float[lwork][][];
-            float[][][] x           = new float[npts][][];
-            int[]       timeIndices = new int[lwork];
-            // Prefill with missing values (OPT_MISSING)
-            //System.out.println("new array has " + lwork + " elements");
-            for (int n = 0; n < lwork; n++) {
-                work[n]        = missingData;
-                timeIndices[n] = -1;
-            }
-            for (int n = 0; n < npts; n++) {
-                sample = (FlatField) newGrid.getSample(n);
-                float[][] timeStepValues =
-                    Misc.cloneArray(sample.getFloats(false));
-                //System.out.println("setting timestep " + n + " at position " + (nav2+n));
-                x[n]                  = timeStepValues;
-                work[nav2 + n]        = x[n];
-                timeIndices[nav2 + n] = n;
-            }
-            int lpts = npts - 1;
-            if (opt == OPT_SYMMETRIC) {
-                for (int n = 0; n < nav2; n++) {
-                    //System.out.println("setting work array " + (nav2-(n+1)) + " with time " + (n+1));
-                    work[nav2 - (n + 1)]        = x[n + 1];
-                    timeIndices[nav2 - (n + 1)] = n + 1;
-                    //System.out.println("setting work array " + (lpts+nav2+(n+1)) + " with time " + (lpts-(n+1)));
-                    work[lpts + nav2 + (n + 1)]        = x[lpts - (n + 1)];
-                    timeIndices[lpts + nav2 + (n + 1)] = lpts - (n + 1);
-                }
-            } else if (opt == OPT_CYCLIC) {
-                for (int n = 0; n < nav2; n++) {
-                    //System.out.println("setting work array " + (nav2-(n+1)) + " with time " + (lpts-n));
-                    work[nav2 - (n + 1)]        = x[lpts - n];
-                    timeIndices[nav2 - (n + 1)] = lpts - n;
-                    //System.out.println("setting work array " + (lpts+nav2+n+1) + " with time " + (n));
-                    work[lpts + nav2 + n + 1]        = x[n];
-                    timeIndices[lpts + nav2 + n + 1] = n;
-                }
-            }
-            //Misc.printArray("times", timeIndices);
-            for (int n = 0; n < npts; n++) {
-                int       nmid   = n + nav2 + noe;
-                int       mstart = nmid - nav2;
-                int       mlast  = mstart + nave;
-                float[][] sum    = Misc.cloneArray(missingData);
-                Misc.fillArray(sum, 0);
-                boolean   haveMissing = false;
-                boolean[] missData    = new boolean[nave];
-                int       idx         = 0;
-                for (int m = mstart; m < mlast; m++) {
-                    //System.out.println("for time " + n + ", adding time " + timeIndices[m]);
-                    values = work[m];
-                    if ( !Misc.isNaN(values)) {
-                        // TODO:  what if single timestep values are missing?
-                        for (int i = 0; i < values.length; i++) {
-                            for (int j = 0; j < values[i].length; j++) {
-                                sum[i][j] += values[i][j] * wgts[m - mstart];
-                            }
-                        }
-                    } else {
-                        haveMissing   = true;
-                        missData[idx] = true;
-                        continue;
-                    }
-                    idx++;
-                }
-                if (haveMissing) {  // recalculate wsum
-                    for (int i = 0; i < nave; i++) {
-                        if ( !missData[i]) {
-                            wsum += wgts[i];
-                        }
-                    }
-                    if (wsum > 1.0) {
-                        wsum = 1f / wsum;
-                    }
+            final FieldImpl oldGrid = grid;
+            final FieldImpl newGrid =
+                new FieldImpl((FunctionType) grid.getType(), timeDomain);
+            //Only the steps in the window are held on to
+            TemporalReducer.StepSink sink = new TemporalReducer.StepSink() {
+                public void setValues(int timeIndex, float[][] values)
+                        throws Exception {
+                    FlatField sample =
+                        (FlatField) oldGrid.getSample(timeIndex);
+                    FlatField average =
+                        new FlatField((FunctionType) sample.getType(),
+                                      sample.getDomainSet(),
+                                      sample.getRangeCoordinateSystem()[0],
+                                      sample.getRangeSets(),
+                                      Util.getRangeUnits(sample));
+                    average.setSamples(values, false);
+                    newGrid.setSample(timeIndex, average, false);
                 }
-                if ( !haveMissing || skipMissing) {
-                    for (int i = 0; i < values.length; i++) {
-                        for (int j = 0; j < values[i].length; j++) {
-                            sum[i][j] *= wsum;
-                        }
-                    }
-                } else {
-                    sum = missingData;
-                }
-                sample = (FlatField) newGrid.getSample(n);
-                sample.setSamples(sum, false);
+            };
+            try {
+                TemporalReducer.runningAverage(makeStepSource(grid),
+                        numTimeSteps, wgts, opt, skipMissing, true, sink);
+            } catch (Exception exc) {
+                throw rethrow(exc);
             }
             return newGrid;
-        } catch (CloneNotSupportedException cnse) {
-            throw new VisADException("Cannot clone field");
         } catch (RemoteException re) {
             throw new VisADException("RemoteException in timeStepFunc");
         }
     }
 
+    /**
+     * Make a source of the values of the time steps of the grid. The
+     * values are the samples' own, so they must not be changed. Steps that
+     * are read from a file and aren't in memory yet are read without
+     * putting them in the data cache, so each one can be let go of once it
+     * is used rather than filling up the cache.
+     *
+     * @param grid the time sequence
+     *
+     * @return the source
+     */
+    private static TemporalReducer.StepSource makeStepSource(
+            final FieldImpl grid) {
+        return new TemporalReducer.StepSource() {
+            public float[][] getValues(int timeIndex) throws Exception {
+                Data sample = grid.getSample(timeIndex);
+                if (sample instanceof GeoGridFlatField) {
+                    return ((GeoGridFlatField) sample).readValuesUncached();
+                }
+                if (sample instanceof GridCoverageFlatField) {
+                    return ((GridCoverageFlatField) sample)
+                        .readValuesUncached();
+                }
+                return ((FieldImpl) sample).getFloats(false);
+            }
+        };
+    }
+
+    /**
+     * Rethrow the exception from streaming over the time steps
+     *
+     * @param exc the exception
+     *
+     * @return never returns
+     *
+     * @throws VisADException  the VisADException
+     * @throws RemoteException the RemoteException
+     */
+    private static VisADException rethrow(Exception exc)
+            throws VisADException, RemoteException {
+        if (exc instanceof VisADException) {
+            throw (VisADException) exc;
+        }
+        if (exc instanceof RemoteException) {
+            throw (RemoteException) exc;
+        }
+        if (exc instanceof RuntimeException) {
+            throw (RuntimeException) exc;
+        }
+        throw new WrapperException(exc);
+    }
+
 
     /**
      * Sum each grid point
@@ -1250,85 +1256,35 @@ public class GridMath {
                 newGrid.setSamples(grid.getFloats(false), true);
                 return newGrid;
             }
-            final boolean doMax      = function.equals(FUNC_MAX);
-            final boolean doMin      = function.equals(FUNC_MIN);
-            final boolean doStd      = function.equals(FUNC_STDEV);
-            float[][]     values     = null;
-            float[][]     values2    = null;
-            int[][]       nums       = null;
-            final Set     timeDomain = Util.getDomainSet(grid);
+            final Set timeDomain = Util.getDomainSet(grid);
+            int       numTimes   = 0;
             for (int timeStepIdx = startIdx;
                     timeStepIdx < timeDomain.getLength();
                     timeStepIdx += idxStride) {
-                FieldImpl sample = (FieldImpl) grid.getSample(timeStepIdx);
-                float[][] timeStepValues = sample.getFloats(false);
-                if (values == null) {  // first pass through
-                    values = Misc.cloneArray(timeStepValues);
-                    nums   = new int[values.length][values[0].length];
-                    if (doStd) {
-                        values2 = new float[values.length][values[0].length];
-                    }
-                    for (int i = 0; i < timeStepValues.length; i++) {
-                        for (int j = 0; j < timeStepValues[i].length; j++) {
-                            float value = timeStepValues[i][j];
-                            if (value != value) {
-                                continue;
-                            }
-                            nums[i][j] = 1;
-                            if (doStd) {
-                                values2[i][j] = value * value;
-                            }
-                        }
-                    }
-                    newGrid = (FlatField) sample.clone();
-                    continue;
-                }
-                for (int i = 0; i < timeStepValues.length; i++) {
-                    for (int j = 0; j < timeStepValues[i].length; j++) {
-                        float value = timeStepValues[i][j];
-                        if (value != value) {
-                            continue;
-                        }
-                        if (doMax) {
-                            values[i][j] = Math.max(values[i][j], value);
-                        } else if (doMin) {
-                            values[i][j] = Math.min(values[i][j], value);
-                        } else if (doStd) {
-                            values[i][j]  += value;
-                            values2[i][j] += value * value;
-                        } else {
-                            values[i][j] += value;
-                        }
-                        nums[i][j]++;
-                    }
-                }
-            }
-            if (function.equals(FUNC_AVERAGE)) {
-                for (int i = 0; i < values.length; i++) {
-                    for (int j = 0; j < values[i].length; j++) {
-                        int num = nums[i][j];
-                        if (num > 0) {
-                            values[i][j] = values[i][j] / num;
-                        } else {
-                            values[i][j] = Float.NaN;
-                        }
-                    }
-                }
-            }
-            if (function.equals(FUNC_STDEV)) {
-                for (int i = 0; i < values.length; i++) {
-                    for (int j = 0; j < values[i].length; j++) {
-                        int num = nums[i][j];
-                        if (num > 0) {
-                            float mean = values[i][j] / num;
-                            float var  = values2[i][j] / num - mean * mean;
-                            values[i][j] = (float) Math.sqrt(var);
-                        } else {
-                            values[i][j] = Float.NaN;
-                        }
-                    }
-                }
-            }
+                numTimes++;
+            }
+            int[] timeIndices = new int[numTimes];
+            for (int n = 0; n < numTimes; n++) {
+                timeIndices[n] = startIdx + n * idxStride;
+            }
+            //Stream the steps, reading the next one while this one is used
+            float[][] values = null;
+            try {
+                values = TemporalReducer.reduce(makeStepSource(grid),
+                        timeIndices, getTemporalFunction(function), true);
+            } catch (Exception exc) {
+                throw rethrow(exc);
+            }
+            if (values == null) {
+                throw new VisADException("No time steps to apply "
+                                         + function + " over");
+            }
+            FlatField sample = (FlatField) grid.getSample(startIdx);
+            newGrid = new FlatField((FunctionType) sample.getType(),
+                                    sample.getDomainSet(),
+                                    sample.getRangeCoordinateSystem()[0],
+                                    sample.getRangeSets(),
+                                    Util.getRangeUnits(sample));
             newGrid.setSamples(values, false);
             if (makeTimes) {
                 return (FieldImpl) Util.makeTimeField(newGrid,
@@ -1344,6 +1300,29 @@ public class GridMath {
 
     }
 
+    /**
+     * Get the TemporalReducer function of the FUNC_ enum
+     *
+     * @param function One of the FUNC_ enums
+     *
+     * @return the TemporalReducer function. The default is the sum.
+     */
+    private static int getTemporalFunction(String function) {
+        if (function.equals(FUNC_MAX)) {
+            return TemporalReducer.MAX;
+        }
+        if (function.equals(FUNC_MIN)) {
+            return TemporalReducer.MIN;
+        }
+        if (function.equals(FUNC_AVERAGE)) {
+            return TemporalReducer.AVERAGE;
+        }
+        if (function.equals(FUNC_STDEV)) {
+            return TemporalReducer.STDEV;
+        }
+        return TemporalReducer.SUM;
+    }
+
     /**
      * Apply the function to the grids.  Grids must have the same domains
      * The function is one of the FUNC_ enums
@@ -1587,147 +1566,9 @@ public class GridMath {
             float statThreshold, float exptdLoBound, float exptdUpBound,
             String function)
             throws VisADException {
-
-        try {
-
-            FieldImpl newGrid = null;
-            if ( !GridUtil.isTimeSequence(grid)) {
-                newGrid = (FlatField) grid.clone();
-                //todo
-                return newGrid;
-            }
-
-
-            final Set   timeDomain   = Util.getDomainSet(grid);
-            int         numMembers   = 0;
-            TupleType   rangeType    = null;
-            TupleType   newRangeType = null;
-            float[][][] valuesAll    = null;
-
-            for (int timeStepIdx = 0; timeStepIdx < timeDomain.getLength();
-                    timeStepIdx++) {
-                FieldImpl sample = (FieldImpl) grid.getSample(timeStepIdx);
-                FlatField newField;
-                Set       ensDomain = sample.getDomainSet();
-                float[][] values    = null;
-                numMembers = ensDomain.getLength();
-                GriddedSet newDomain = null;
-
-                float[][]  stdevs    = null;
-                for (int k = 0; k < numMembers; k++) {
-                    FlatField innerField = (FlatField) sample.getSample(k,
-                                               false);
-                    if (innerField == null) {
-                        continue;
-                    }
-                    newDomain =
-                        (GriddedSet) GridUtil.getSpatialDomain(innerField);
-
-                    if (newRangeType == null) {
-                        newRangeType = GridUtil.makeNewParamType(
-                            GridUtil.getParamType(innerField),
-                            "_" + function);
-                    }
-
-                    float[][] ensStepValues = innerField.getFloats(false);
-                    if (values == null) {
-                        values    = Misc.cloneArray(ensStepValues);
-                        valuesAll =
-                            new float[values.length][values[0].length][numMembers];
-                    }
-                    for (int i = 0; i < ensStepValues.length; i++) {
-                        for (int j = 0; j < ensStepValues[i].length; j++) {
-                            float value = ensStepValues[i][j];
-                            if (value != value) {
-                                continue;
-                            }
-                            valuesAll[i][j][k] = value;
-                        }
-                    }
-
-                }
-                // do the math
-                if (function.equals(FUNC_PRCNTL) && (numMembers > 1)) {
-                    int percent = (int) statThreshold;
-                    for (int i = 0; i < values.length; i++) {
-                        for (int j = 0; j < values[i].length; j++) {
-                            values[i][j] =
-                                evaluatePercentile(valuesAll[i][j], 0,
-                                    numMembers, percent);
-                        }
-                    }
-                }
-
-                if (function.equals(FUNC_MODE) && (numMembers > 1)) {
-                    for (int i = 0; i < values.length; i++) {
-                        for (int j = 0; j < values[i].length; j++) {
-                            values[i][j] = evaluateMode(valuesAll[i][j]);
-                        }
-                    }
-                }
-
-                if (function.equals(FUNC_UPROB) && (numMembers > 1)) {
-                    for (int i = 0; i < values.length; i++) {
-                        for (int j = 0; j < values[i].length; j++) {
-                            // check if ens values are within bounds.
-                            int     numValidMembers = numMembers;
-
-                            float[] tmpValues       = new float[numMembers];
-
-                            for (int k = 0; k < numMembers; k++) {
-                                tmpValues[k] = valuesAll[i][j][k];
-                            }
-
-
-                            for (int k = 0; k < numMembers; k++) {
-                                if ((tmpValues[k] < exptdLoBound)
-                                        | (tmpValues[k] > exptdUpBound)) {
-                                    numValidMembers--;
-                                    for (int mm = k; mm < numValidMembers - 1;
-                                            mm++) {
-                                        tmpValues[mm] = tmpValues[mm + 1];
-                                    }
-                                    k--;
-                                }
-                            }
-
-                            float[] newValues = new float[numValidMembers];
-                            for (int k = 0; k < numValidMembers; k++) {
-                                newValues[k] = tmpValues[k];
-                            }
-                            values[i][j] = evaluateUProbability(newValues,
-                                    statThreshold, numMembers);
-                        }
-                    }
-                }
-
-                FunctionType newFT =
-                    new FunctionType(
-                        ((SetType) newDomain.getType()).getDomain(),
-                        newRangeType);
-                newField = new FlatField(newFT, newDomain);
-                newField.setSamples(values, false);
-
-                if (newGrid == null) {
-                    FunctionType newFieldType =
-                        new FunctionType(
-                            ((SetType) timeDomain.getType()).getDomain(),
-                            newField.getType());
-                    newGrid = new FieldImpl(newFieldType, timeDomain);
-                }
-
-                newGrid.setSample(timeStepIdx, newField, false);
-
-            }
-            return newGrid;
-        } catch (CloneNotSupportedException cnse) {
-            throw new VisADException("Cannot clone field");
-        } catch (RemoteException re) {
-            throw new VisADException(
-                "RemoteException in applyFunctionOverTime");
-        }
-
-
+        return applyFunctionsOverMembers(grid, new String[] { function },
+                                         new float[] { statThreshold },
+                                         exptdLoBound, exptdUpBound)[0];
     }
 
     /**
@@ -1744,34 +1585,101 @@ public class GridMath {
     public static FieldImpl applyFunctionOverMembers(FieldImpl grid,
             String function)
             throws VisADException {
+        //Any other function is the sum here
+        return applyFunctionsOverMembers(grid, new String[] { function },
+                                         null, 0, 0,
+                                         EnsembleStatistics.SUM)[0];
+    }
+
+    /**
+     * Apply the functions to the ens members of the given grid. The members
+     * are read once for all of the functions and the grid points are done
+     * in parallel.
+     * The functions are FUNC_ enums. Any other function gives the first
+     * member.
+     *
+     * @param grid   ensemble grid
+     * @param functions the FUNC_ enums
+     * @param statThresholds percent for FUNC_PRCNTL, probability threshold
+     *                       for FUNC_UPROB. May be null.
+     * @param exptdLoBound expected lo bound for FUNC_UPROB
+     * @param exptdUpBound expected hi bound for FUNC_UPROB
+     *
+     * @return the new field for each function
+     *
+     * @throws VisADException  On badness
+     */
+    public static FieldImpl[] applyFunctionsOverMembers(FieldImpl grid,
+            String[] functions, float[] statThresholds, float exptdLoBound,
+            float exptdUpBound)
+            throws VisADException {
+        return applyFunctionsOverMembers(grid, functions, statThresholds,
+                                         exptdLoBound, exptdUpBound,
+                                         EnsembleStatistics.FIRST);
+    }
+
+    /**
+     * Apply the functions to the ens members of the given grid.
+     *
+     * @param grid   ensemble grid
+     * @param functions the FUNC_ enums
+     * @param statThresholds percent for FUNC_PRCNTL, probability threshold
+     *                       for FUNC_UPROB. May be null.
+     * @param exptdLoBound expected lo bound for FUNC_UPROB
+     * @param exptdUpBound expected hi bound for FUNC_UPROB
+     * @param otherStatistic the EnsembleStatistics statistic to use for
+     *                       a function that isn't a FUNC_ enum
+     *
+     * @return the new field for each function
+     *
+     * @throws VisADException  On badness
+     */
+    private static FieldImpl[] applyFunctionsOverMembers(FieldImpl grid,
+            String[] functions, float[] statThresholds, float exptdLoBound,
+            float exptdUpBound, int otherStatistic)
+            throws VisADException {
 
         try {
 
-            FieldImpl newGrid = null;
+            FieldImpl[] newGrids = new FieldImpl[functions.length];
             if ( !GridUtil.isTimeSequence(grid)) {
-                newGrid = (FlatField) grid.clone();
+                for (int f = 0; f < functions.length; f++) {
+                    newGrids[f] = (FlatField) grid.clone();
+                }
                 //todo
-                return newGrid;
+                return newGrids;
             }
-            final boolean doMax        = function.equals(FUNC_MAX);
-            final boolean doMin        = function.equals(FUNC_MIN);
-            final boolean doRange      = function.equals(FUNC_RNG);
 
-            final Set     timeDomain   = Util.getDomainSet(grid);
-            int           numMembers   = 0;
-            TupleType     rangeType    = null;
-            TupleType     newRangeType = null;
+            int[]   stats  = new int[functions.length];
+            float[] params = new float[functions.length];
+            for (int f = 0; f < functions.length; f++) {
+                stats[f] = getEnsembleStatistic(functions[f],
+                        otherStatistic);
+                if (statThresholds != null) {
+                    params[f] = statThresholds[f];
+                }
+                if (stats[f] == EnsembleStatistics.PERCENTILE) {
+                    params[f] = (int) params[f];
+                    if ((params[f] > 100) || (params[f] <= 0)) {
+                        throw new VisADException(
+                            "out of bounds percentile value:  must be in (0, 100)");
+                    }
+                }
+            }
+            EnsembleStatistics statistics = new EnsembleStatistics(stats,
+                                                params, exptdLoBound,
+                                                exptdUpBound);
+
+            final Set   timeDomain    = Util.getDomainSet(grid);
+            TupleType[] newRangeTypes = null;
 
             for (int timeStepIdx = 0; timeStepIdx < timeDomain.getLength();
                     timeStepIdx++) {
                 FieldImpl sample = (FieldImpl) grid.getSample(timeStepIdx);
-                FlatField newField;
-                Set       ensDomain = sample.getDomainSet();
-                numMembers = ensDomain.getLength();
-                GriddedSet newDomain = null;
-                float[][]  values    = null;
-                float[][]  stdevs    = null;
-                float[][]  rangev    = null;
+                int         numMembers = sample.getDomainSet().getLength();
+                GriddedSet  newDomain    = null;
+                float[][][] memberValues = new float[numMembers][][];
+                int         numComps     = 0;
 
                 for (int k = 0; k < numMembers; k++) {
                     FlatField innerField = (FlatField) sample.getSample(k,
@@ -1782,126 +1690,94 @@ public class GridMath {
                     newDomain =
                         (GriddedSet) GridUtil.getSpatialDomain(innerField);
 
-                    if (newRangeType == null) {
-                        newRangeType = GridUtil.makeNewParamType(
-                            GridUtil.getParamType(innerField),
-                            "_" + function);
-                    }
-
-                    float[][] ensStepValues = innerField.getFloats(false);
-                    if (values == null) {
-                        values = Misc.cloneArray(ensStepValues);
-                        rangev = Misc.cloneArray(ensStepValues);
-                        continue;
-                    }
-                    for (int i = 0; i < ensStepValues.length; i++) {
-                        for (int j = 0; j < ensStepValues[i].length; j++) {
-                            float value = ensStepValues[i][j];
-                            if (value != value) {
-                                continue;
-                            }
-                            if (doMax) {
-                                values[i][j] = Math.max(values[i][j], value);
-                            } else if (doMin) {
-                                values[i][j] = Math.min(values[i][j], value);
-                            } else if (doRange) {
-                                values[i][j] = Math.max(values[i][j], value);
-                                rangev[i][j] = Math.min(rangev[i][j], value);
-                            } else {
-                                values[i][j] += value;
-                            }
+                    if (newRangeTypes == null) {
+                        newRangeTypes = new TupleType[functions.length];
+                        for (int f = 0; f < functions.length; f++) {
+                            newRangeTypes[f] = GridUtil.makeNewParamType(
+                                GridUtil.getParamType(innerField),
+                                "_" + functions[f]);
                         }
                     }
 
+                    memberValues[k] = innerField.getFloats(false);
+                    numComps        = memberValues[k].length;
                 }
-                // do the math
-                if (function.equals(FUNC_AVERAGE) && (numMembers > 1)) {
-                    for (int i = 0; i < values.length; i++) {
-                        for (int j = 0; j < values[i].length; j++) {
-                            values[i][j] = values[i][j] / numMembers;
-                        }
-                    }
+                if (newDomain == null) {
+                    throw new VisADException("No ensemble members at time "
+                                             + timeStepIdx);
                 }
 
-                if (function.equals(FUNC_RNG) && (numMembers > 1)) {
-                    for (int i = 0; i < values.length; i++) {
-                        for (int j = 0; j < values[i].length; j++) {
-                            values[i][j] = values[i][j] - rangev[i][j];
-                        }
-                    }
-                }
-
-                if (function.equals(FUNC_STDEV) && (numMembers > 1)) {
-                    //cal the average
-                    stdevs = new float[values.length][values[0].length];
-                    for (int i = 0; i < values.length; i++) {
-                        for (int j = 0; j < values[i].length; j++) {
-                            values[i][j] = values[i][j] / numMembers;
-                        }
-                    }
-                    // diff * diff
+                // do the math, a parameter at a time
+                float[][][] values = new float[functions.length][numComps][];
+                for (int i = 0; i < numComps; i++) {
+                    float[][] members = new float[numMembers][];
                     for (int k = 0; k < numMembers; k++) {
-                        FlatField innerField =
-                            (FlatField) sample.getSample(k, false);
-                        if (innerField == null) {
-                            continue;
-                        }
-
-                        float[][] ensStepValues = innerField.getFloats(false);
-                        for (int i = 0; i < ensStepValues.length; i++) {
-                            for (int j = 0; j < ensStepValues[i].length;
-                                    j++) {
-                                float value = ensStepValues[i][j];
-                                if (value != value) {
-                                    continue;
-                                }
-                                stdevs[i][j] += (values[i][j] - value)
-                                        * (values[i][j] - value);
-
-                            }
+                        if (memberValues[k] != null) {
+                            members[k] = memberValues[k][i];
                         }
                     }
-                    values = Misc.cloneArray(stdevs);
-                    // sqrt (v/n)
-                    for (int i = 0; i < values.length; i++) {
-                        for (int j = 0; j < values[i].length; j++) {
-                            values[i][j] = (float) Math.sqrt(values[i][j]
-                                    / (numMembers - 1));
-                        }
+                    float[][] results = statistics.compute(members);
+                    for (int f = 0; f < functions.length; f++) {
+                        values[f][i] = results[f];
                     }
                 }
 
-                FunctionType newFT =
-                    new FunctionType(
-                        ((SetType) newDomain.getType()).getDomain(),
-                        newRangeType);
-                newField = new FlatField(newFT, newDomain);
-                newField.setSamples(values, false);
-
-
-                if (newGrid == null) {
-                    FunctionType newFieldType =
+                for (int f = 0; f < functions.length; f++) {
+                    FunctionType newFT =
                         new FunctionType(
-                            ((SetType) timeDomain.getType()).getDomain(),
-                            newField.getType());
-                    newGrid = new FieldImpl(newFieldType, timeDomain);
-                }
+                            ((SetType) newDomain.getType()).getDomain(),
+                            newRangeTypes[f]);
+                    FlatField newField = new FlatField(newFT, newDomain);
+                    newField.setSamples(values[f], false);
 
-                newGrid.setSample(timeStepIdx, newField, false);
+                    if (newGrids[f] == null) {
+                        FunctionType newFieldType =
+                            new FunctionType(
+                                ((SetType) timeDomain.getType()).getDomain(),
+                                newField.getType());
+                        newGrids[f] = new FieldImpl(newFieldType, timeDomain);
+                    }
 
+                    newGrids[f].setSample(timeStepIdx, newField, false);
+                }
             }
-
-
-            return newGrid;
-
+            return newGrids;
         } catch (CloneNotSupportedException cnse) {
             throw new VisADException("Cannot clone field");
         } catch (RemoteException re) {
             throw new VisADException(
                 "RemoteException in applyFunctionOverTime");
         }
+    }
 
-
+    /**
+     * Get the EnsembleStatistics statistic of the function
+     *
+     * @param function One of the FUNC_ enums
+     * @param otherStatistic the statistic if the function isn't one of them
+     *
+     * @return the statistic
+     */
+    private static int getEnsembleStatistic(String function,
+                                            int otherStatistic) {
+        if (function.equals(FUNC_AVERAGE)) {
+            return EnsembleStatistics.MEAN;
+        } else if (function.equals(FUNC_STDEV)) {
+            return EnsembleStatistics.STDEV;
+        } else if (function.equals(FUNC_MIN)) {
+            return EnsembleStatistics.MIN;
+        } else if (function.equals(FUNC_MAX)) {
+            return EnsembleStatistics.MAX;
+        } else if (function.equals(FUNC_RNG)) {
+            return EnsembleStatistics.RANGE;
+        } else if (function.equals(FUNC_PRCNTL)) {
+            return EnsembleStatistics.PERCENTILE;
+        } else if (function.equals(FUNC_MODE)) {
+            return EnsembleStatistics.MODE;
+        } else if (function.equals(FUNC_UPROB)) {
+            return EnsembleStatistics.UPROB;
+        }
+        return otherStatistic;
     }
 
     /**
@@ -3271,168 +3147,8 @@ public class GridMath {
                                              final float pValue,
                                              final int length)
             throws VisADException {
-
-        // TODO: allow users the chance to set custom weights
-        double floatDiffTol = 0.000001D;  // tolerance for comparing if two floats are the same (used to replace G_DIFF calls from GEMPAK c code)
-        double[] weights = new double[values.length];  // holder for fake weights until ens. weights are passed into function
-        for (int ii = 0; ii < values.length; ii++) {
-            weights[ii] = 1.0d / (double) values.length;
-        }
-        /*
-         * Bubble sorting the grid values in emvalu with
-         * emvalue (1) lowest and emvalu (nummbr) highest.
-         */
-
-        int    iswflg = 1;
-        int    istop  = values.length - 1;
-        float  swpbuf;
-        double wtbuf;
-        while ((iswflg != 0) && (istop > 0)) {
-            iswflg = 0;
-            for (int kk = 0; kk < istop; kk++) {
-                if (values[kk] > values[kk + 1]) {
-                    iswflg          = 1;
-                    swpbuf          = values[kk];
-                    wtbuf           = weights[kk];
-                    values[kk]      = values[kk + 1];
-                    weights[kk]     = weights[kk + 1];
-                    values[kk + 1]  = swpbuf;
-                    weights[kk + 1] = wtbuf;
-                }
-            }
-            istop--;
-        }
-
-        /*
-         * Check for identical values and compute intrinsic weight
-         * frequency (zfreq).
-         */
-        int mm = values.length;
-        /*
-         * Initialize intrinsic weight frequency array.
-         */
-        double[] zfreq = new double[values.length];
-
-        for (int kk = 0; kk < mm; kk++) {
-            zfreq[kk] = 1.0D;
-        }
-        double tol = 0.001D * (values[mm - 1] - values[0]) / mm;
-        for (int kk = 0; kk < mm - 1; kk++) {
-            if (Math.abs(values[kk] - values[kk + 1]) <= tol) {
-                weights[kk] += weights[kk + 1];
-                zfreq[kk]   = zfreq[kk] + 1.0D;
-                mm--;
-                for (int jj = kk; jj < mm - 1; jj++) {
-                    values[jj]  = values[jj + 1];
-                    weights[jj] = weights[jj + 1];
-                }
-                kk--;
-            }
-        }
-        /*
-         * Fabricate order statistics if it has collapsed to a single value.
-         */
-        if (mm == 1) {
-            if (Math.abs(values[0] - 0.0D) < floatDiffTol) {
-                values[0] = -0.00001F;
-                values[1] = 0.00001F;
-            } else {
-                float delta = 0.00001F * Math.abs(values[0]);
-                values[1] = values[0] + delta;
-                values[0] -= delta;
-            }
-            weights[0] = 0.5D;
-            weights[1] = 0.5D;
-            mm         = 2;
-            zfreq[0]   = 1.0D;
-            zfreq[1]   = 1.0D;
-        }
-        /*
-         *Compute and sum intrinsic weights.
-         */
-        double[] zwts = new double[mm];
-        zwts[0] = zfreq[0] / (values[1] - values[0]);
-        double zsum = zwts[0];
-        for (int kk = 1; kk < mm - 1; kk++) {
-            zwts[kk] = (zfreq[kk] * 2.0F) / (values[kk + 1] - values[kk - 1]);
-            zsum     = zsum + zwts[kk];
-        }
-        zwts[mm - 1] = zfreq[mm - 1] / (values[mm - 1] - values[mm - 2]);
-        zsum         = zsum + zwts[mm - 1];
-        /*
-         * Scale external weights by normalized intrinsic weights and
-         * normalize.
-         */
-        double psum = 0.0D;
-        for (int kk = 0; kk < mm; kk++) {
-            weights[kk] = (zwts[kk] / zsum) * weights[kk];
-            psum        = psum + weights[kk];
-        }
-        for (int kk = 0; kk < mm; kk++) {
-            weights[kk] = weights[kk] / psum;
-        }
-        /*
-         * Compute Qun, the area; Vn, the normalized value;
-         * w(), normalized weight; and qlt, qrt.
-         */
-        double vn = 0.0D;
-        for (int kk = 1; kk < mm; kk++) {
-            vn += 0.5D * (weights[kk] + weights[kk - 1])
-                  * (values[kk] - values[kk - 1]);
-        }
-        vn = vn / (1.0D - 2.0D / ((double) length + 1));
-        for (int kk = 0; kk < mm; kk++) {
-            weights[kk] = weights[kk] / vn;
-        }
-        double qlt = values[0]
-                     - 2.0D / (weights[0] * ((double) length + 1.0D));
-        double qrt = values[mm - 1]
-                     + 2.0D / (weights[mm - 1] * ((double) length + 1.0D));
-
-        double[] newWeights = new double[mm + 2];
-        double[] newValues  = new double[mm + 2];
-
-        newWeights[0]      = 0.0D;
-        newWeights[mm + 1] = 0.0D;
-        newValues[0]       = qlt;
-        newValues[mm + 1]  = qrt;
-
-        for (int ii = 1; ii < mm + 1; ii++) {
-            newWeights[ii] = weights[ii - 1];
-            newValues[ii]  = values[ii - 1];
-        }
-        /*
-         * Start computing univariate probability output.
-         */
-        float prob = 0.0F;  // probability of value at grid point < pValue)
-
-        if (pValue < newValues[0]) {
-            prob = 0.0F;
-        } else if (pValue > newValues[mm + 1]) {
-            prob = 1.0F;
-        } else {
-            psum = 0.0D;
-            for (int kk = 1; kk < mm + 2; kk++) {
-                if (Math.abs(pValue - newValues[kk - 1]) < floatDiffTol) {
-                    prob = (float) psum;
-                    break;
-                } else if (pValue >= newValues[kk]) {
-                    psum += 0.5D * (newWeights[kk] + newWeights[kk - 1])
-                            * (newValues[kk] - newValues[kk - 1]);
-                } else if (pValue > newValues[kk - 1]) {
-                    double ww = newWeights[kk - 1]
-                                + (newWeights[kk] - newWeights[kk - 1])
-                                  * (pValue - newValues[kk - 1])
-                                  / (newValues[kk] - newValues[kk - 1]);
-                    double fta = 0.5D * (ww + newWeights[kk - 1])
-                                 * (pValue - newValues[kk - 1]);
-                    prob = (float) psum + (float) fta;
-                    break;
-                }
-            }
-        }
-        return prob;
-
+        return EnsembleStatistics.evaluateUProbability(values, pValue,
+                length);
     }
 
     public static FieldImpl applyFunctionOverGridsExt(FieldImpl field,  String function)  throws VisADException  {
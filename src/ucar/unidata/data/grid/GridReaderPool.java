@@ -0,0 +1,214 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.data.grid;
+
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+
+
+/**
+ * A bounded pool of open readers (e.g., GridDataset handles) on one file.
+ * The NetCDF-Java file handles are not thread safe so each thread that
+ * reads from a local file borrows its own handle. At most
+ * <code>maxReaders</code> handles are opened and callers block in
+ * {@link #acquire()} when all of them are in use, which bounds the read
+ * concurrency for the file.
+ *
+ * @param <T> the type of reader
+ */
+public abstract class GridReaderPool<T> {
+
+    /** max number of readers */
+    private int maxReaders;
+
+    /** number of readers we have opened */
+    private int numOpen = 0;
+
+    /** readers not in use */
+    private List<T> idle = new ArrayList<T>();
+
+    /** objects derived from a reader, e.g., a subsetted grid */
+    private Hashtable<T, Hashtable> readerCache = new Hashtable<T,
+                                                      Hashtable>();
+
+    /** have we been closed */
+    private boolean closed = false;
+
+    /**
+     * Create the pool
+     *
+     * @param maxReaders max number of readers to open
+     */
+    public GridReaderPool(int maxReaders) {
+        this.maxReaders = Math.max(1, maxReaders);
+    }
+
+    /**
+     * Open a new reader
+     *
+     * @return the reader
+     *
+     * @throws Exception on badness
+     */
+    protected abstract T openReader() throws Exception;
+
+    /**
+     * Close the reader
+     *
+     * @param reader the reader
+     *
+     * @throws Exception on badness
+     */
+    protected abstract void closeReader(T reader) throws Exception;
+
+    /**
+     * Get the max number of readers
+     *
+     * @return max number of readers
+     */
+    public int getMaxReaders() {
+        return maxReaders;
+    }
+
+    /**
+     * Get a reader, opening a new one if we are under the limit or waiting
+     * for one to be released. Each call must be paired with a call
+     * to {@link #release(Object)}.
+     *
+     * @return the reader
+     *
+     * @throws Exception on badness
+     */
+    public T acquire() throws Exception {
+        synchronized (this) {
+            while (true) {
+                if (closed) {
+                    throw new IllegalStateException("Reader pool is closed");
+                }
+                if (idle.size() > 0) {
+                    return idle.remove(idle.size() - 1);
+                }
+                if (numOpen < maxReaders) {
+                    numOpen++;
+                    break;
+                }
+                wait();
+            }
+        }
+        //Open outside of the lock since it can take a while
+        T reader = null;
+        try {
+            reader = openReader();
+            return reader;
+        } finally {
+            synchronized (this) {
+                if (reader == null) {
+                    numOpen--;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the reader to the pool
+     *
+     * @param reader the reader
+     */
+    public void release(T reader) {
+        boolean closeIt = false;
+        synchronized (this) {
+            if (closed) {
+                closeIt = true;
+            } else {
+                idle.add(reader);
+                notifyAll();
+            }
+        }
+        if (closeIt) {
+            close(reader);
+        }
+    }
+
+    /**
+     * Get an object that was cached for the given reader
+     *
+     * @param reader the reader
+     * @param key the key
+     *
+     * @return the cached object or null
+     */
+    public Object getCachedObject(T reader, Object key) {
+        Hashtable cache = readerCache.get(reader);
+        return (cache == null)
+               ? null
+               : cache.get(key);
+    }
+
+    /**
+     * Cache an object for the given reader
+     *
+     * @param reader the reader
+     * @param key the key
+     * @param value the value
+     */
+    public void putCachedObject(T reader, Object key, Object value) {
+        synchronized (readerCache) {
+            Hashtable cache = readerCache.get(reader);
+            if (cache == null) {
+                cache = new Hashtable();
+                readerCache.put(reader, cache);
+            }
+            cache.put(key, value);
+        }
+    }
+
+    /**
+     * Close all of the idle readers. Readers in use are closed when they
+     * are released.
+     */
+    public void close() {
+        List<T> toClose;
+        synchronized (this) {
+            closed  = true;
+            toClose = new ArrayList<T>(idle);
+            idle.clear();
+            notifyAll();
+        }
+        for (T reader : toClose) {
+            close(reader);
+        }
+    }
+
+    /**
+     * Close the reader, ignoring errors
+     *
+     * @param reader the reader
+     */
+    private void close(T reader) {
+        readerCache.remove(reader);
+        try {
+            closeReader(reader);
+        } catch (Exception exc) {}
+    }
+}
@@ -36,6 +36,7 @@ import visad.georef.LatLonPoint;
 import java.rmi.RemoteException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.*;
 
@@ -69,7 +70,7 @@ public class GridTrajectory {
             FieldImpl grid2, FieldImpl grid3, FieldImpl grid4)
             throws VisADException, RemoteException, Exception {
 
-        ExecutorService   executor = Executors.newFixedThreadPool(4);
+        ExecutorService   executor = TrajectoryEngine.getPool();
 
 
         Callable          pt       = new VarNClone(grid1);
@@ -116,7 +117,7 @@ public class GridTrajectory {
             FieldImpl grid2, FieldImpl grid3)
             throws VisADException, RemoteException, Exception {
 
-        ExecutorService   executor = Executors.newFixedThreadPool(4);
+        ExecutorService   executor = TrajectoryEngine.getPool();
 
 
         Callable          pt       = new VarNClone(grid1);
@@ -158,7 +159,7 @@ public class GridTrajectory {
             FieldImpl grid2)
             throws VisADException, RemoteException, Exception {
 
-        ExecutorService   executor = Executors.newFixedThreadPool(4);
+        ExecutorService   executor = TrajectoryEngine.getPool();
 
 
         Callable          pt       = new VarNClone(grid1);
@@ -281,7 +282,7 @@ public class GridTrajectory {
         }
 
         long              start    = System.currentTimeMillis();
-        ExecutorService   executor = Executors.newFixedThreadPool(4);
+        ExecutorService   executor = TrajectoryEngine.getPool();
 
 
         Callable          pt       = new Varbar(uFI0);
@@ -418,7 +419,7 @@ public class GridTrajectory {
 
         //System.out.println("Time Start...\n");
         long              start    = System.currentTimeMillis();
-        ExecutorService   executor = Executors.newFixedThreadPool(4);
+        ExecutorService   executor = TrajectoryEngine.getPool();
 
 
         Callable          pt       = new Varbar(uFI0);
@@ -678,8 +679,46 @@ public class GridTrajectory {
             final int lonIndex, final boolean haveAlt,
             final boolean normalizeLon, final Real clevel, boolean backward)
             throws Exception {
+        return calculateTrackPoints(uFI0, vFI0, wFI0, sFI0, ttts, geoVals,
+                                    numPoints, numTimes, latIndex, lonIndex,
+                                    haveAlt, normalizeLon, clevel, backward,
+                                    null);
+    }
+
+    /**
+     * _more_
+     *
+     * @param uFI0 _more_
+     * @param vFI0 _more_
+     * @param wFI0 _more_
+     * @param sFI0 _more_
+     * @param ttts _more_
+     * @param geoVals _more_
+     * @param numPoints _more_
+     * @param numTimes _more_
+     * @param latIndex _more_
+     * @param lonIndex _more_
+     * @param haveAlt _more_
+     * @param normalizeLon _more_
+     * @param clevel _more_
+     * @param backward _more_
+     * @param loadId the JobManager load id used to stop the calculation.
+     *               May be null.
+     *
+     * @return _more_
+     *
+     * @throws Exception _more_
+     */
+    public static List<TrajInfo> calculateTrackPoints(final FieldImpl uFI0,
+            final FieldImpl vFI0, final FieldImpl wFI0, final FieldImpl sFI0,
+            final double[] ttts, final float[][] geoVals,
+            final int numPoints, final int numTimes, final int latIndex,
+            final int lonIndex, final boolean haveAlt,
+            final boolean normalizeLon, final Real clevel, boolean backward,
+            Object loadId)
+            throws Exception {
 
-        ExecutorService   executor = Executors.newFixedThreadPool(8);
+        ExecutorService   executor = TrajectoryEngine.getPool();
 
         Callable          pt0      = new Varbar(uFI0);
         Future<FieldImpl> future0  = executor.submit(pt0);
@@ -727,143 +766,131 @@ public class GridTrajectory {
             sFI = GridUtil.make2DGridFromSlice(sFI, false);
         }
         LogUtil.message("Calculating grid trajectories...");
-        final List<TrajInfo> result   = new ArrayList<TrajInfo>();
-        List<Future>         pthreads = new ArrayList<Future>();
+        float[] lats = new float[numPoints];
+        float[] lons = new float[numPoints];
+        float[] alts = new float[numPoints];
         for (int i = 0; i < numPoints; i++) {
-            float lat = geoVals[latIndex][i];
-            float lon = geoVals[lonIndex][i];
+            lats[i] = geoVals[latIndex][i];
+            lons[i] = geoVals[lonIndex][i];
             if (normalizeLon) {
-                lon = (float) LatLonPointImpl.lonNormal(lon);
+                lons[i] = (float) LatLonPointImpl.lonNormal(lons[i]);
             }
-            float alt = haveAlt
-                        ? geoVals[2][i]
-                        : 0;
-            Callable pt = new pointsThredds(uFI, vFI, wFI, sFI, ttts, lat,
-                                            lon, alt, numTimes, backward);
-            Future<Object> future = executor.submit(pt);
-            pthreads.add(future);
+            alts[i] = haveAlt
+                      ? geoVals[2][i]
+                      : 0;
         }
-
-        for (Future<Object> o : pthreads) {
-            try {
-                result.add((TrajInfo) o.get());
-            } catch (InterruptedException e) {
-                e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
-            } catch (ExecutionException e) {
-                e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
-            }
-        }
-
-        return result;
+        double[] times = (ttts.length == numTimes)
+                         ? ttts
+                         : Arrays.copyOf(ttts, numTimes);
+        return TrajectoryEngine.advect(new FieldSampler(uFI, vFI, wFI,
+                sFI), times, lats, lons, alts, wFI != null, backward, loadId);
     }
 
     /**
-     * Class description
-     *
-     *
-     * @version
-     * @author
+     * Samples the u, v, w and parameter grids for the
+     * {@link TrajectoryEngine}. Without a w grid the 2D grids are sampled
+     * with nearest neighbor at the lat/lon.
      */
-    static class pointsThredds implements Callable<TrajInfo> {
+    static class FieldSampler implements TrajectoryEngine.WindSampler {
 
-        /** _more_ */
+        /** u grid */
         FieldImpl uFI;
 
-        /** _more_ */
+        /** v grid */
         FieldImpl vFI;
 
-        /** _more_ */
+        /** w grid. May be null. */
         FieldImpl wFI;
 
-        /** _more_ */
+        /** parameter grid */
         FieldImpl sFI;
 
-        /** _more_ */
-        double[] ttts;
-
-        /** _more_ */
-        float lat;
-
-        /** _more_ */
-        float lon;
-
-        /** _more_ */
-        float alt;
-
-        /** _more_ */
-        int numTimes;
-
-        /** _more_ */
-        int latIndex;
-
-        /** _more_ */
-        int lonIndex;
-
-        /** _more_ */
-        boolean haveAlt;
-
-        /** _more_ */
-        boolean normalizeLon;
-
-        /** _more_ */
-        boolean backward;
-
         /**
-         * _more_
-         *
-         * @param uFI _more_
-         * @param vFI _more_
-         * @param wFI _more_
-         * @param sFI _more_
-         * @param ttts _more_
-         * @param lat _more_
-         * @param lon _more_
-         * @param alt _more_
-         * @param numTimes _more_
-         * @param backward _more_
+         * ctor
          *
+         * @param uFI u grid
+         * @param vFI v grid
+         * @param wFI w grid. May be null.
+         * @param sFI parameter grid
          */
-        private pointsThredds(FieldImpl uFI, FieldImpl vFI, FieldImpl wFI,
-                              FieldImpl sFI, double[] ttts, float lat,
-                              float lon, float alt, int numTimes,
-                              boolean backward) {
-
-            this.uFI      = uFI;
-            this.vFI      = vFI;
-            this.wFI      = wFI;
-            this.sFI      = sFI;
-            this.ttts     = ttts;
-            this.lat      = lat;
-            this.lon      = lon;
-            this.alt      = alt;
-            this.numTimes = numTimes;
-            this.backward = backward;
-
+        FieldSampler(FieldImpl uFI, FieldImpl vFI, FieldImpl wFI,
+                     FieldImpl sFI) {
+            this.uFI = uFI;
+            this.vFI = vFI;
+            this.wFI = wFI;
+            this.sFI = sFI;
         }
 
         /**
-         * _more_
+         * Sample the grids
          *
-         * @return _more_
+         * @param timeIndex the time step
+         * @param lat latitude
+         * @param lon longitude
+         * @param alt altitude
+         * @param values the u, v, w and parameter values
+         *
+         * @return false if outside of the domain
+         *
+         * @throws Exception On badness
          */
-        public TrajInfo call() {
-            if ( !backward) {
-                if (wFI != null) {
-                    return calculateSingleTrackPoints(uFI, vFI, wFI, sFI,
-                            ttts, lat, lon, alt, numTimes);
-                } else {
-                    return calculateSingleTrackPoints(uFI, vFI, sFI, ttts,
-                            lat, lon, alt, numTimes);
-                }
+        public boolean sample(int timeIndex, float lat, float lon, float alt,
+                              float[] values)
+                throws Exception {
+            EarthLocation el = new EarthLocationLite(lat, lon, alt);
+            FieldImpl     usample;
+            FieldImpl     vsample;
+            FieldImpl     wsample = null;
+            FieldImpl     ssample;
+            if (wFI == null) {
+                LatLonPoint llp = el.getLatLonPoint();
+                usample = GridUtil.sample(uFI, llp, Data.NEAREST_NEIGHBOR);
+                vsample = GridUtil.sample(vFI, llp, Data.NEAREST_NEIGHBOR);
+                ssample = GridUtil.sample(sFI, llp, Data.NEAREST_NEIGHBOR);
             } else {
-                if (wFI != null) {
-                    return calculateSingleTrackPointsB(uFI, vFI, wFI, sFI,
-                            ttts, lat, lon, alt, numTimes);
-                } else {
-                    return calculateSingleTrackPointsB(uFI, vFI, sFI, ttts,
-                            lat, lon, alt, numTimes);
+                usample = GridUtil.sample(uFI, el);
+                vsample = GridUtil.sample(vFI, el);
+                wsample = GridUtil.sample(wFI, el);
+                ssample = GridUtil.sample(sFI, el);
+            }
+            if ((usample == null) && (vsample == null) && (wsample == null)
+                    && (ssample == null)) {
+                //outside the domain
+                return false;
+            }
+            values[TrajectoryEngine.INDEX_U] =
+                (float) getReal(usample, timeIndex).getValue();
+            values[TrajectoryEngine.INDEX_V] =
+                (float) getReal(vsample, timeIndex).getValue();
+            values[TrajectoryEngine.INDEX_S] =
+                (float) getReal(ssample, timeIndex).getValue();
+            values[TrajectoryEngine.INDEX_W] = 0;
+            if (wsample != null) {
+                Real wreal = getReal(wsample, timeIndex);
+                if ( !wreal.isMissing()) {
+                    values[TrajectoryEngine.INDEX_W] =
+                        (float) wreal.getValue();
                 }
             }
+            return true;
+        }
+
+        /**
+         * Get the first real of the sample at the time step
+         *
+         * @param sample the sampled field
+         * @param timeIndex the time step
+         *
+         * @return the real
+         *
+         * @throws Exception On badness
+         */
+        private Real getReal(FieldImpl sample, int timeIndex)
+                throws Exception {
+            Data d = sample.getSample(timeIndex);
+            return (d instanceof RealTuple)
+                   ? (Real) ((RealTuple) d).getComponent(0)
+                   : (Real) d;
         }
     }
 
@@ -1604,7 +1631,7 @@ public class GridTrajectory {
             final FunctionType ft, final Unit varUnit, final int num)
             throws Exception {
 
-        ExecutorService       executor = Executors.newFixedThreadPool(8);
+        ExecutorService       executor = TrajectoryEngine.getPool();
         final List<FlatField> result   = new ArrayList<FlatField>();
         List<Future>          pthreads = new ArrayList<Future>();
         for (int i = 0; i < num; i++) {
@@ -1646,7 +1673,7 @@ public class GridTrajectory {
             final FunctionType ft, final Unit varUnit, final int num)
             throws Exception {
 
-        ExecutorService           executor = Executors.newFixedThreadPool(4);
+        ExecutorService           executor = TrajectoryEngine.getPool();
         Callable<List<FlatField>> task     = new Callable<List<FlatField>>() {
             public List<FlatField> call() {
                 List<FlatField> result = new ArrayList<FlatField>();
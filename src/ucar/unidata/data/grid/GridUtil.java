@@ -124,9 +124,17 @@ import java.awt.geom.Rectangle2D;
 
 import java.io.*;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
 import java.rmi.RemoteException;
 
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
 import static ucar.unidata.util.LogUtil.logException;
 
@@ -6075,6 +6083,12 @@ public class GridUtil {
     }
 
 
+    /** Size of the buffer used when exporting grids */
+    private static final int EXPORT_BUFFER_SIZE = 1000000;
+
+    /** Number of values to read at once when exporting grids */
+    private static final int EXPORT_CHUNK_VALUES = 4 * 1024 * 1024;
+
     /**
      * Write grid out to an Excel spreadsheet
      *
@@ -6083,8 +6097,9 @@ public class GridUtil {
      * @throws Exception  problem writing grid
      */
     public static void writeGridToXls(FieldImpl grid) throws Exception {
-        String filename = FileManager.getWriteFile(FileManager.FILTER_XLS,
-                              null);
+        String filename =
+            FileManager.getWriteFile(Misc.newList(FileManager.FILTER_XLSX,
+                FileManager.FILTER_XLS), FileManager.SUFFIX_XLSX);
         if (filename == null) {
             return;
         }
@@ -6092,7 +6107,9 @@ public class GridUtil {
     }
 
     /**
-     * Write grid out to an Excel spreadsheet
+     * Write grid out to an Excel spreadsheet. If the filename ends with
+     * .xlsx the spreadsheet is streamed out, otherwise an xls workbook is
+     * built in memory.
      *
      * @param grid grid  to write
      * @param filename  filename
@@ -6102,6 +6119,11 @@ public class GridUtil {
     public static void writeGridToXls(FieldImpl grid, String filename)
             throws Exception {
 
+        if (filename.toLowerCase().endsWith(FileManager.SUFFIX_XLSX)) {
+            writeGridToXlsx(grid, filename);
+            return;
+        }
+
         Object loadId =
             JobManager.getManager().startLoad("Writing grid to xls", true);
         try {
@@ -6255,7 +6277,102 @@ public class GridUtil {
     }
 
     /**
-     * extract grid along polygon and write out to an Excel spreadsheet
+     * Write grid out to an xlsx spreadsheet. The rows are streamed out a
+     * chunk at a time and a new sheet is started when a sheet is full.
+     *
+     * @param grid grid  to write
+     * @param filename  filename
+     *
+     * @throws Exception  problem writing grid
+     */
+    private static void writeGridToXlsx(FieldImpl grid, String filename)
+            throws Exception {
+
+        Object loadId =
+            JobManager.getManager().startLoad("Writing grid to xlsx", true);
+        boolean       completed = false;
+        ExportColumns columns   = null;
+        try (XlsxWriter writer = new XlsxWriter(
+                new BufferedOutputStream(new FileOutputStream(filename),
+                                         EXPORT_BUFFER_SIZE))) {
+            List<DateTime> times       = new ArrayList<DateTime>();
+            int[]          timeIndices = getExportTimeIndices(grid, times,
+                                             loadId);
+            if ((timeIndices == null) || (timeIndices.length == 0)) {
+                System.err.println("Could not find any grid fields to write");
+                return;
+            }
+            SampledSet latLonSet = getExportDomain(getExportField(grid,
+                                       timeIndices[0]));
+            float[][] domainVals = latLonSet.getSamples(false);
+            boolean   latFirst   = isLatLonOrder(latLonSet);
+            int       numRows    = domainVals[0].length;
+            int       chunkRows  = getExportChunkRows(timeIndices.length);
+            float[][] chunk      = new float[timeIndices.length][];
+            columns = new ExportColumns(numRows);
+            if ( !columns.read(grid, timeIndices, chunkRows, loadId)) {
+                return;
+            }
+            for (int fromRow = 0; fromRow < numRows; fromRow += chunkRows) {
+                if ( !JobManager.getManager().canContinue(loadId)) {
+                    return;
+                }
+                int toRow = Math.min(numRows, fromRow + chunkRows);
+                JobManager.getManager().setDialogLabel1(loadId,
+                        "Writing data rows:" + toRow + "/" + numRows);
+                columns.readChunk(fromRow, toRow, chunk);
+                for (int rowIdx = fromRow; rowIdx < toRow; rowIdx++) {
+                    if ((rowIdx == 0)
+                            || (writer.getRowCount()
+                                >= XlsxWriter.MAX_ROWS)) {
+                        writer.startSheet(null);
+                        writer.startRow();
+                        writer.addCell(latFirst
+                                       ? "Latitude"
+                                       : "Longitude");
+                        writer.addCell(latFirst
+                                       ? "Longitude"
+                                       : "Latitude");
+                        if (domainVals.length > 2) {
+                            writer.addCell("Altitude");
+                        }
+                        for (DateTime dt : times) {
+                            writer.addCell(dt.toString());
+                        }
+                    }
+                    writer.startRow();
+                    writer.addCell(domainVals[0][rowIdx]);
+                    writer.addCell(domainVals[1][rowIdx]);
+                    if (domainVals.length > 2) {
+                        writer.addCell(domainVals[2][rowIdx]);
+                    }
+                    for (int timeIdx = 0; timeIdx < chunk.length;
+                            timeIdx++) {
+                        writer.addCell(chunk[timeIdx][rowIdx - fromRow]);
+                    }
+                }
+            }
+            completed = true;
+        } catch (Exception exc) {
+            //Closing the writer may have failed
+            completed = false;
+            LogUtil.logException("Writing grid to xlsx file: " + filename,
+                                 exc);
+        } finally {
+            if (columns != null) {
+                columns.close();
+            }
+            if ( !completed) {
+                //Don't leave a partial workbook around
+                new File(filename).delete();
+            }
+            JobManager.getManager().stopLoad(loadId);
+        }
+    }
+
+    /**
+     * extract grid along polygon and write out to an Excel spreadsheet.
+     * If the filename ends with .xlsx the spreadsheet is streamed out.
      *
      * @param grid grid  to write
      * @param filename  filename
@@ -6270,6 +6387,10 @@ public class GridUtil {
         PolyGlyph polyGlyph = (PolyGlyph)glyphList.get(0);
 
         List points = polyGlyph.getPoints();
+        if (filename.toLowerCase().endsWith(FileManager.SUFFIX_XLSX)) {
+            writeGridAtPolygonToXlsx(grid, filename, points);
+            return;
+        }
         Object loadId =
                 JobManager.getManager().startLoad("Writing grid to xls", true);
         try {
@@ -6405,7 +6526,90 @@ public class GridUtil {
 
     }
     /**
-     * Write grid out to a CSV ascii file
+     * extract grid along polygon and write out to an xlsx spreadsheet.
+     * Each point is sampled and written as its own row.
+     *
+     * @param grid grid  to write
+     * @param filename  filename
+     * @param points the polygon points
+     *
+     * @throws Exception  problem writing grid
+     */
+    private static void writeGridAtPolygonToXlsx(FieldImpl grid,
+            String filename, List points)
+            throws Exception {
+        Object loadId =
+            JobManager.getManager().startLoad("Writing grid to xlsx", true);
+        boolean completed = false;
+        try (XlsxWriter writer = new XlsxWriter(
+                new BufferedOutputStream(new FileOutputStream(filename),
+                                         EXPORT_BUFFER_SIZE))) {
+            if ( !isTimeSequence(grid)) {
+                System.err.println("Could not find any grid fields to write");
+                return;
+            }
+            SampledSet timeSet    = (SampledSet) getTimeSet(grid);
+            double[][] timeValues = timeSet.getDoubles(false);
+            int        numTimes   = timeSet.getLength();
+            writer.startSheet(null);
+            writer.startRow();
+            writer.addCell("Latitude");
+            writer.addCell("Longitude");
+            writer.addCell("Altitude");
+            if (numTimes > 1) {
+                CalendarDateTimeSet cdt = (CalendarDateTimeSet) timeSet;
+                for (int timeIdx = 0; timeIdx < numTimes; timeIdx++) {
+                    writer.addCell(
+                        new CalendarDateTime(
+                            timeValues[0][timeIdx],
+                            cdt.getCalendar()).toString());
+                }
+            } else {
+                RealTuple ss = ((SingletonSet) timeSet).getData();
+                writer.addCell((ss == null)
+                               ? null
+                               : ss.getComponents()[0].toString());
+            }
+            for (int j = 0; j < points.size(); j++) {
+                if ( !JobManager.getManager().canContinue(loadId)) {
+                    return;
+                }
+                JobManager.getManager().setDialogLabel1(loadId,
+                        "Writing point:" + (j + 1) + "/" + points.size());
+                EarthLocation el    = (EarthLocationTuple) points.get(j);
+                FieldImpl     gridf = sample(grid, el);
+                writer.startRow();
+                writer.addCell(el.getLatitude().getValue());
+                writer.addCell(el.getLongitude().getValue());
+                writer.addCell(el.getAltitude().getValue());
+                for (int timeIdx = 0; timeIdx < numTimes; timeIdx++) {
+                    Real r = (gridf == null)
+                             ? null
+                             : (Real) gridf.getSample(timeIdx);
+                    writer.addCell((r == null)
+                                   ? Double.NaN
+                                   : r.getValue());
+                }
+            }
+            completed = true;
+        } catch (Exception exc) {
+            //Closing the writer may have failed
+            completed = false;
+            LogUtil.logException("Writing grid to xlsx file: " + filename,
+                                 exc);
+        } finally {
+            if ( !completed) {
+                //Don't leave a partial workbook around
+                new File(filename).delete();
+            }
+            JobManager.getManager().stopLoad(loadId);
+        }
+    }
+
+    /**
+     * Write grid out to a CSV ascii file. The grid is written in chunks of
+     * rows so only a chunk of the values of all the times is held in
+     * memory at once.
      *
      * @param grid grid to write
      * @param filename  filename
@@ -6417,80 +6621,36 @@ public class GridUtil {
 
         Object loadId =
                 JobManager.getManager().startLoad("Writing grid to csv", true);
-
-        // Use try-with-resources for automatic closing of the writer
-        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(filename)))) {
-
-            // --- This entire data extraction block is identical to the XLS version ---
-            List<DateTime> times = new ArrayList<>();
-            List<FlatField> fields = new ArrayList<>();
-
-            if (isTimeSequence(grid)) {
-                SampledSet timeSet = (SampledSet) getTimeSet(grid);
-                double[][] timeValues = timeSet.getDoubles(false);
-                Unit timeUnit = timeSet.getSetUnits()[0];
-                int numTimes = timeSet.getLength();
-                CalendarDateTimeSet cdt = null;
-                if (numTimes > 1) {
-                    cdt = (CalendarDateTimeSet) timeSet;
-                    for (int timeIdx = 0; timeIdx < numTimes; timeIdx++) {
-                        CalendarDateTime cdti =
-                                new CalendarDateTime(timeValues[0][timeIdx], cdt.getCalendar());
-                        JobManager.getManager().setDialogLabel1(loadId,
-                                "Reading grid time:" + (timeIdx + 1) + "/" + numTimes);
-                        FlatField ff = (FlatField) grid.getSample(timeIdx);
-                        if (ff == null) {
-                            continue;
-                        }
-                        times.add(cdti);
-                        fields.add(ff);
-                    }
-                } else {
-                    RealTuple ss = ((SingletonSet) timeSet).getData();
-                    if (ss != null) {
-                        visad.Data[] vdata = ss.getComponents();
-                        JobManager.getManager().setDialogLabel1(loadId,
-                                "Reading grid time:" + 1 + "/" + numTimes);
-                        FlatField ff = (FlatField) grid.getSample(0);
-                        if (ff != null) {
-                            times.add((CalendarDateTime) vdata[0]);
-                            fields.add(ff);
-                        }
-                    }
-                }
-            } else if (grid instanceof FlatField) {
-                fields.add((FlatField) grid);
-            } else {
+        boolean       completed = false;
+        ExportColumns columns   = null;
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+                Writer writer = new BufferedWriter(Channels.newWriter(channel,
+                    "UTF-8"), EXPORT_BUFFER_SIZE)) {
+
+            List<DateTime> times       = new ArrayList<DateTime>();
+            int[]          timeIndices = getExportTimeIndices(grid, times,
+                                             loadId);
+            if (timeIndices == null) {
                 System.err.println("Could not find any grid fields to write");
-                // Return early if there's nothing to write
                 return;
             }
-
-            if (fields.isEmpty()) {
+            if (timeIndices.length == 0) {
                 System.err.println("No valid fields found to write to CSV.");
                 return;
             }
-            // --- End of data extraction block ---
-
-
-            // --- New CSV Writing Logic ---
-
-            // 1. Get spatial domain from the first field (assuming all fields share the same domain)
-            FlatField firstField = fields.get(0);
-            SampledSet ss = getSpatialDomain(firstField);
-            SampledSet latLonSet = null;
-            if (ss.getCoordinateSystem() != null) {
-                latLonSet = Util.convertDomain(ss, ss.getCoordinateSystem().getReference(), null);
-            } else {
-                latLonSet = ss;
-            }
 
+            // Get spatial domain from the first field (assuming all fields share the same domain)
+            SampledSet latLonSet = getExportDomain(getExportField(grid,
+                                       timeIndices[0]));
             float[][] domainVals = latLonSet.getSamples(false);
             boolean latFirst = isLatLonOrder(latLonSet);
             boolean hasAltitude = domainVals.length > 2;
             int numSpatialPoints = domainVals[0].length;
+            String lineSeparator = System.lineSeparator();
 
-            // 2. Build and write the header row
+            // Build and write the header row
             List<String> header = new ArrayList<>();
             header.add(latFirst ? "Latitude" : "Longitude");
             header.add(latFirst ? "Longitude" : "Latitude");
@@ -6505,40 +6665,312 @@ public class GridUtil {
             if (times.isEmpty()) {
                 header.add(grid.getType().toString());
             }
-            writer.println(toCsvRow(header));
+            writer.write(toCsvRow(header));
+            writer.write(lineSeparator);
 
-            // 3. Write data row by row
-            JobManager.getManager().setDialogLabel1(loadId, "Writing data rows...");
+            // Write the data a chunk of rows at a time
+            int           chunkRows = getExportChunkRows(timeIndices.length);
+            float[][]     chunk     = new float[timeIndices.length][];
+            StringBuilder sb        = new StringBuilder();
+            columns = new ExportColumns(numSpatialPoints);
+            if ( !columns.read(grid, timeIndices, chunkRows, loadId)) {
+                return;
+            }
+            for (int fromRow = 0; fromRow < numSpatialPoints;
+                    fromRow += chunkRows) {
+                if ( !JobManager.getManager().canContinue(loadId)) {
+                    return;
+                }
+                int toRow = Math.min(numSpatialPoints, fromRow + chunkRows);
+                JobManager.getManager().setDialogLabel1(loadId,
+                        "Writing data rows:" + toRow + "/"
+                        + numSpatialPoints);
+                columns.readChunk(fromRow, toRow, chunk);
+                for (int rowIdx = fromRow; rowIdx < toRow; rowIdx++) {
+                    sb.setLength(0);
+                    // Add coordinate values for the current row
+                    sb.append(domainVals[latFirst ? 0 : 1][rowIdx]);
+                    sb.append(',');
+                    sb.append(domainVals[latFirst ? 1 : 0][rowIdx]);
+                    if (hasAltitude) {
+                        sb.append(',');
+                        sb.append(domainVals[2][rowIdx]);
+                    }
+                    // Add the data value from each time step for the current spatial point
+                    for (int timeIdx = 0; timeIdx < chunk.length;
+                            timeIdx++) {
+                        sb.append(',');
+                        sb.append(chunk[timeIdx][rowIdx - fromRow]);
+                    }
+                    sb.append(lineSeparator);
+                    writer.append(sb);
+                }
+            }
+            completed = true;
 
-            // Get all the range data first to avoid repeated calls inside the loop
-            List<float[][]> allRangeVals = new ArrayList<>();
-            for (FlatField ff : fields) {
-                allRangeVals.add(ff.getFloats(false));
+        } catch (Exception exc) {
+            // closing the writer may have failed
+            completed = false;
+            LogUtil.logException("Writing grid to CSV file: " + filename, exc);
+            // re-throw the exception so the caller knows something went wrong
+            throw exc;
+        } finally {
+            if (columns != null) {
+                columns.close();
+            }
+            if ( !completed) {
+                // don't leave a partial file around
+                new File(filename).delete();
             }
+            JobManager.getManager().stopLoad(loadId);
+        }
+    }
 
-            for (int rowIdx = 0; rowIdx < numSpatialPoints; rowIdx++) {
-                List<String> dataRow = new ArrayList<>();
-                // Add coordinate values for the current row
-                dataRow.add(String.valueOf(domainVals[latFirst ? 0 : 1][rowIdx]));
-                dataRow.add(String.valueOf(domainVals[latFirst ? 1 : 0][rowIdx]));
-                if (hasAltitude) {
-                    dataRow.add(String.valueOf(domainVals[2][rowIdx]));
+    /**
+     * Find the times of the grid to export
+     *
+     * @param grid the grid
+     * @param times the times of the fields are added to this
+     * @param loadId the JobManager load id
+     *
+     * @return the time indices of the fields to export, -1 if the grid
+     *         itself is the field or null if there is nothing to export
+     *
+     * @throws VisADException  problem getting the samples
+     * @throws RemoteException  Java RMI problem
+     */
+    private static int[] getExportTimeIndices(FieldImpl grid,
+            List<DateTime> times, Object loadId)
+            throws VisADException, RemoteException {
+        if (isTimeSequence(grid)) {
+            SampledSet timeSet    = (SampledSet) getTimeSet(grid);
+            double[][] timeValues = timeSet.getDoubles(false);
+            int        numTimes   = timeSet.getLength();
+            List<Integer> indices = new ArrayList<Integer>();
+            if (numTimes > 1) {
+                CalendarDateTimeSet cdt = (CalendarDateTimeSet) timeSet;
+                for (int timeIdx = 0; timeIdx < numTimes; timeIdx++) {
+                    JobManager.getManager().setDialogLabel1(loadId,
+                            "Reading grid time:" + (timeIdx + 1) + "/"
+                            + numTimes);
+                    if (grid.getSample(timeIdx, false) == null) {
+                        continue;
+                    }
+                    times.add(new CalendarDateTime(timeValues[0][timeIdx],
+                            cdt.getCalendar()));
+                    indices.add(Integer.valueOf(timeIdx));
+                }
+            } else {
+                RealTuple ss = ((SingletonSet) timeSet).getData();
+                if ((ss != null) && (grid.getSample(0, false) != null)) {
+                    times.add((CalendarDateTime) ss.getComponents()[0]);
+                    indices.add(Integer.valueOf(0));
                 }
+            }
+            int[] result = new int[indices.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = indices.get(i).intValue();
+            }
+            return result;
+        } else if (grid instanceof FlatField) {
+            return new int[] { -1 };
+        }
+        return null;
+    }
+
+    /**
+     * Get the field to export
+     *
+     * @param grid the grid
+     * @param timeIdx the time index or -1 if the grid is the field
+     *
+     * @return the field
+     *
+     * @throws VisADException  problem getting the sample
+     * @throws RemoteException  Java RMI problem
+     */
+    private static FlatField getExportField(FieldImpl grid, int timeIdx)
+            throws VisADException, RemoteException {
+        return (timeIdx < 0)
+               ? (FlatField) grid
+               : (FlatField) grid.getSample(timeIdx, false);
+    }
+
+    /**
+     * Get the lat/lon(/alt) domain of the field to export
+     *
+     * @param ff the field
+     *
+     * @return the domain
+     *
+     * @throws VisADException  problem converting the domain
+     */
+    private static SampledSet getExportDomain(FlatField ff)
+            throws VisADException, RemoteException {
+        SampledSet ss        = getSpatialDomain(ff);
+        SampledSet latLonSet = null;
+        if (ss.getCoordinateSystem() != null) {
+            latLonSet = Util.convertDomain(ss,
+                                           ss.getCoordinateSystem()
+                                               .getReference(), null);
+        } else {
+            latLonSet = ss;
+        }
+        return latLonSet;
+    }
+
+    /**
+     * Get the number of rows to export at once so a chunk holds about
+     * EXPORT_CHUNK_VALUES values
+     *
+     * @param numTimes number of times
+     *
+     * @return number of rows in a chunk
+     */
+    private static int getExportChunkRows(int numTimes) {
+        return Math.max(1024, EXPORT_CHUNK_VALUES / Math.max(1, numTimes));
+    }
+
+    /**
+     * Holds the values of the first parameter of the time steps of a grid
+     * being exported so each time step is only read once. If all of the
+     * rows fit in one chunk the values are kept in memory. Otherwise each
+     * time step is spooled to a temporary file as it is read and the
+     * chunks of rows are read back from the file.
+     */
+    private static class ExportColumns implements Closeable {
+
+        /** number of rows */
+        private int numRows;
+
+        /** the values of each time when they are kept in memory */
+        private float[][] values;
+
+        /** the spool file */
+        private File spoolFile;
+
+        /** the channel of the spool file */
+        private FileChannel spool;
+
+        /** buffer for writing and reading the spool file */
+        private ByteBuffer buffer;
+
+        /**
+         * Create the columns
+         *
+         * @param numRows number of rows
+         */
+        ExportColumns(int numRows) {
+            this.numRows = numRows;
+        }
 
-                // Add the data value from each time step for the current spatial point
-                for (float[][] rangeVals : allRangeVals) {
-                    dataRow.add(String.valueOf(rangeVals[0][rowIdx]));
+        /**
+         * Read each of the time steps
+         *
+         * @param grid the grid
+         * @param timeIndices the time indices
+         * @param chunkRows number of rows in a chunk
+         * @param loadId the JobManager load id
+         *
+         * @return false if the user cancelled
+         *
+         * @throws VisADException  problem reading the data
+         * @throws IOException  problem writing the spool file
+         */
+        boolean read(FieldImpl grid, int[] timeIndices, int chunkRows,
+                     Object loadId)
+                throws VisADException, IOException {
+            if (numRows <= chunkRows) {
+                values = new float[timeIndices.length][];
+            } else {
+                spoolFile = File.createTempFile("gridexport", ".tmp");
+                spoolFile.deleteOnExit();
+                spool = FileChannel.open(spoolFile.toPath(),
+                                         StandardOpenOption.READ,
+                                         StandardOpenOption.WRITE);
+                buffer = ByteBuffer.allocate(4 * chunkRows);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+            }
+            for (int timeIdx = 0; timeIdx < timeIndices.length; timeIdx++) {
+                if ( !JobManager.getManager().canContinue(loadId)) {
+                    return false;
+                }
+                JobManager.getManager().setDialogLabel1(loadId,
+                        "Reading time step:" + (timeIdx + 1) + "/"
+                        + timeIndices.length);
+                float[] timeValues = getExportField(grid,
+                                         timeIndices[timeIdx]).getFloats(
+                                             false)[0];
+                if (values != null) {
+                    values[timeIdx] = timeValues;
+                    continue;
                 }
+                long position = 4L * timeIdx * numRows;
+                for (int fromRow = 0; fromRow < numRows;
+                        fromRow += chunkRows) {
+                    int rows = Math.min(chunkRows, numRows - fromRow);
+                    buffer.clear();
+                    buffer.asFloatBuffer().put(timeValues, fromRow, rows);
+                    buffer.limit(4 * rows);
+                    while (buffer.hasRemaining()) {
+                        position += spool.write(buffer, position);
+                    }
+                }
+            }
+            return true;
+        }
 
-                writer.println(toCsvRow(dataRow));
+        /**
+         * Get the values for a chunk of rows of all of the times
+         *
+         * @param fromRow first row
+         * @param toRow one past the last row
+         * @param chunk holds the values for each time. The arrays are
+         *              allocated if needed.
+         *
+         * @throws IOException  problem reading the spool file
+         */
+        void readChunk(int fromRow, int toRow, float[][] chunk)
+                throws IOException {
+            int rows = toRow - fromRow;
+            for (int timeIdx = 0; timeIdx < chunk.length; timeIdx++) {
+                if (values != null) {
+                    //Everything is in one chunk
+                    chunk[timeIdx] = values[timeIdx];
+                    continue;
+                }
+                if ((chunk[timeIdx] == null)
+                        || (chunk[timeIdx].length < rows)) {
+                    chunk[timeIdx] = new float[rows];
+                }
+                long position = 4L * ((long) timeIdx * numRows + fromRow);
+                buffer.clear();
+                buffer.limit(4 * rows);
+                while (buffer.hasRemaining()) {
+                    int read = spool.read(buffer, position);
+                    if (read < 0) {
+                        throw new IOException("Truncated grid export file");
+                    }
+                    position += read;
+                }
+                buffer.flip();
+                buffer.asFloatBuffer().get(chunk[timeIdx], 0, rows);
             }
+        }
 
-        } catch (Exception exc) {
-            LogUtil.logException("Writing grid to CSV file: " + filename, exc);
-            // re-throw the exception so the caller knows something went wrong
-            throw exc;
-        } finally {
-            JobManager.getManager().stopLoad(loadId);
+        /**
+         * Delete the spool file
+         */
+        public void close() {
+            try {
+                if (spool != null) {
+                    spool.close();
+                }
+            } catch (IOException ioe) {}
+            if (spoolFile != null) {
+                spoolFile.delete();
+            }
+            values = null;
         }
     }
 
@@ -6654,6 +7086,12 @@ public class GridUtil {
                 v.setDimensions(dims);
                 ncfile.addVariable(null, v);
             }
+            // use 64 bit offsets if the data won't fit in the classic format
+            long numValues = (long) domainSet.getLength()
+                             * Math.max(1, numTimes) * rTypes.length;
+            if (numValues * 4 >= Integer.MAX_VALUE) {
+                ncfile.setLargeFile(true);
+            }
             ncfile.addGlobalAttribute(new Attribute("Conventions", "CF-1.X"));
             ncfile.addGlobalAttribute(new Attribute("History",
                     "Translated from VisAD grid to CF-1.X Conventions by IDV\n"
@@ -6694,7 +7132,14 @@ public class GridUtil {
                 for (int k = 1; k < sizes.length; k++) {
                     origin[k] = 0;
                 }
+                // write a time step at a time so only one is referenced
                 for (int i = 0; i < timeSet.getLength(); i++) {
+                    if ( !JobManager.getManager().canContinue(loadId)) {
+                        break;
+                    }
+                    JobManager.getManager().setDialogLabel1(loadId,
+                            "Writing grid time:" + (i + 1) + "/"
+                            + numTimes);
                     origin[0] = i;
                     FlatField sample  = (FlatField) grid.getSample(i, false);
                     float[][] samples = sample.getFloats(false);
@@ -6712,7 +7157,7 @@ public class GridUtil {
                     }
                 }
             } else {
-                float[][] samples = ((FlatField) grid).getFloats();
+                float[][] samples = ((FlatField) grid).getFloats(false);
                 for (int j = 0; j < rTypes.length; j++) {
                     String vname = getVarName(rTypes[j]);
                    // if(vname.contains("/"))
@@ -7591,8 +8036,8 @@ public class GridUtil {
      *
      * @throws VisADException   VisAD Error
      */
-    public static FieldImpl smooth(FieldImpl slice, String type,
-                                   int filterLevel)
+    public static FieldImpl smooth(FieldImpl slice, final String type,
+                                   final int filterLevel)
             throws VisADException {
 
         //if (GridUtil.isVolume(slice)) {
@@ -7601,92 +8046,54 @@ public class GridUtil {
         if ( !isValidSmoother(type)) {
             return slice;
         }
-        FieldImpl smoothedFI        = null;
-        TupleType smoothedRangeType = null;
+        FieldImpl smoothedFI = null;
         try {
             if (GridUtil.isTimeSequence(slice)) {
 
-                // Implementation:  have to take the raw data FieldImpl
-                // apart, make direction FlatField by FlatField,
-                // and put all back together again into a new divergence FieldImpl
-
-                Set timeSet = slice.getDomainSet();
-
-                // compute each smoothed FlatField in turn; load in FieldImpl
-                for (int i = 0; i < timeSet.getLength(); i++) {
-                    FieldImpl smoothedFF = null;
-                    FieldImpl sample = (FieldImpl) slice.getSample(i, false);
+                // Smooth the time steps until we have the range type and
+                // then smooth the rest of them in parallel. Each time step
+                // is also split into tiles by the StencilEngine.
+                Set               timeSet   = slice.getDomainSet();
+                int               numTimes  = timeSet.getLength();
+                FieldImpl[]       smoothed  = new FieldImpl[numTimes];
+                final TupleType[] rangeType = { null };
+                int               timeIdx   = 0;
+                for (; (timeIdx < numTimes) && (rangeType[0] == null);
+                        timeIdx++) {
+                    FieldImpl sample = (FieldImpl) slice.getSample(timeIdx,
+                                           false);
+                    if (sample != null) {
+                        smoothed[timeIdx] = smoothSample(sample, type,
+                                filterLevel, rangeType);
+                    }
+                }
+                List<Callable> tasks   = new ArrayList<Callable>();
+                List<Integer>  indices = new ArrayList<Integer>();
+                for (; timeIdx < numTimes; timeIdx++) {
+                    final FieldImpl sample =
+                        (FieldImpl) slice.getSample(timeIdx, false);
                     if (sample == null) {
                         continue;
                     }
-                    if ( !isSequence(sample)) {
-                        if (type.equals(SMOOTH_5POINT)) {
-                            smoothedFF = smooth5Point((FlatField) sample,
-                                    smoothedRangeType);
-                        } else if (type.equals(SMOOTH_9POINT)) {
-                            smoothedFF = smooth9Point((FlatField) sample,
-                                    smoothedRangeType);
-                        } else if (type.equals(SMOOTH_GAUSSIAN)) {
-                            smoothedFF = smoothGaussian((FlatField) sample,
-                                    filterLevel, smoothedRangeType);
-                        } else {
-                            smoothedFF = smoothWeighted((FlatField) sample,
-                                    filterLevel, type, smoothedRangeType);
-                        }
-                        if (smoothedFF == null) {
-                            continue;
-                        }
-                        if (smoothedRangeType == null) {
-                            smoothedRangeType =
-                                GridUtil.getParamType(smoothedFF);
-                        }
-                    } else {  // ensembles & such
-                        Trace.call1("GridUtil smooth inner sequence");
-                        Set ensDomain = sample.getDomainSet();
-                        for (int j = 0; j < ensDomain.getLength(); j++) {
-                            FlatField innerField =
-                                (FlatField) sample.getSample(j, false);
-                            if (innerField == null) {
-                                continue;
-                            }
-                            FlatField innerSmoothedField = null;
-                            if (type.equals(SMOOTH_5POINT)) {
-                                innerSmoothedField = smooth5Point(innerField,
-                                        smoothedRangeType);
-                            } else if (type.equals(SMOOTH_9POINT)) {
-                                innerSmoothedField = smooth9Point(innerField,
-                                        smoothedRangeType);
-                            } else if (type.equals(SMOOTH_GAUSSIAN)) {
-                                innerSmoothedField =
-                                    smoothGaussian(innerField, filterLevel,
-                                        smoothedRangeType);
-                            } else {
-                                innerSmoothedField =
-                                    smoothWeighted(innerField, filterLevel,
-                                        type, smoothedRangeType);
-                            }
-                            if (innerSmoothedField == null) {
-                                continue;
-                            }
-                            if (smoothedRangeType == null) {
-                                smoothedRangeType =
-                                    GridUtil.getParamType(innerSmoothedField);
-                            }
-                            if (smoothedFF == null) {
-                                FunctionType innerType =
-                                    new FunctionType(
-                                        DataUtility.getDomainType(ensDomain),
-                                        innerSmoothedField.getType());
-                                smoothedFF = new FieldImpl(innerType,
-                                        ensDomain);
-                            }
-                            smoothedFF.setSample(j, innerSmoothedField,
-                                    false);
+                    indices.add(timeIdx);
+                    tasks.add(new Callable() {
+                        public Object call() throws Exception {
+                            return smoothSample(sample, type, filterLevel,
+                                    rangeType);
                         }
-                        Trace.call2("GridUtil smooth inner sequence");
-                    }
+                    });
+                }
+                List results = runInParallel(tasks);
+                for (int i = 0; i < results.size(); i++) {
+                    smoothed[indices.get(i)] = (FieldImpl) results.get(i);
+                }
 
-                    if ((smoothedFI == null) && (smoothedFF != null)) {
+                for (int i = 0; i < numTimes; i++) {
+                    FieldImpl smoothedFF = smoothed[i];
+                    if (smoothedFF == null) {
+                        continue;
+                    }
+                    if (smoothedFI == null) {
                         FunctionType smoothedFFType =
                             (FunctionType) smoothedFF.getType();
                         FunctionType smoothedFT =
@@ -7695,27 +8102,11 @@ public class GridUtil {
                                 smoothedFFType);
                         smoothedFI = new FieldImpl(smoothedFT, timeSet);
                     }
-                    if (smoothedFF != null) {
-                        smoothedFI.setSample(i, smoothedFF, false, false);
-                    }
+                    smoothedFI.setSample(i, smoothedFF, false, false);
                 }
             } else {
-                if (type.equals(SMOOTH_5POINT)) {
-                    smoothedFI = (FieldImpl) smooth5Point((FlatField) slice,
-                            smoothedRangeType);
-                } else if (type.equals(SMOOTH_9POINT)) {
-                    smoothedFI = (FieldImpl) smooth9Point((FlatField) slice,
-                            smoothedRangeType);
-                } else if (type.equals(SMOOTH_GAUSSIAN)) {
-                    smoothedFI =
-                        (FieldImpl) smoothGaussian((FlatField) slice,
-                            filterLevel, smoothedRangeType);
-                } else {
-                    smoothedFI =
-                        (FieldImpl) smoothWeighted((FlatField) slice,
-                            filterLevel, type, smoothedRangeType);
-                }
-
+                smoothedFI = smoothFlatField((FlatField) slice, type,
+                                             filterLevel, null);
             }
         } catch (RemoteException re) {
             throw new VisADException("RemoteException: " + re.getMessage());
@@ -7724,58 +8115,162 @@ public class GridUtil {
 
     }
 
-    private static float[] getLevelSlice(float[] values, int sizeX, int sizeY, int levelIndex) {
-         float[] levelValues = new float[sizeX*sizeY];
-         int k = 0;
-         for (int i = 0; i < sizeY; i++) {
-             for (int j = 0; j < sizeX; j++) {
-               int offset = levelIndex*sizeX*sizeY + i*sizeX + j;
-               levelValues[k] = values[offset];
-               k++;
-             }
-         }
-         return levelValues;
-    }
-        
-    private static void setLevelSlice(float[] values, float[] levelValues, int sizeX, int sizeY, int levelIndex) {
-         int k = 0;
-         for (int i = 0; i < sizeY; i++) {
-             for (int j = 0; j < sizeX; j++) {
-                 int offset = levelIndex*sizeX*sizeY + i*sizeX + j;
-                 values[offset] = levelValues[k];
-                 k++;
-             }
-         }
-    }
-        
-
     /**
-     * Apply a 5 point smoothing function to the grid.  Adapted from
-     * GEMPAK dfsm5s.c
+     * Smooth one time step of a grid
      *
-     * @param slice grid to smooth
-     * @param rangeType  type for the range.  May be null;
+     * @param sample the time step, a FlatField or a sequence of them
+     *               (e.g., ensembles)
+     * @param type  the type of smoothing (SMOOTH_5POINT, etc)
+     * @param filterLevel level of filtering
+     * @param rangeType holds the type for the range. If it holds null it
+     *                  is set from the first smoothed field.
      *
-     * @return  the smoothed grid or null
+     * @return  the smoothed time step or null
      *
      * @throws RemoteException  Java RMI error
      * @throws VisADException   VisAD Error
      */
-    private static FlatField smooth5Point(FlatField slice,
-                                          TupleType rangeType)
+    private static FieldImpl smoothSample(FieldImpl sample, String type,
+                                          int filterLevel,
+                                          TupleType[] rangeType)
             throws VisADException, RemoteException {
+        if ( !isSequence(sample)) {
+            FlatField smoothedFF = smoothFlatField((FlatField) sample, type,
+                                       filterLevel, rangeType[0]);
+            if ((smoothedFF != null) && (rangeType[0] == null)) {
+                rangeType[0] = GridUtil.getParamType(smoothedFF);
+            }
+            return smoothedFF;
+        }
+        // ensembles & such
+        Trace.call1("GridUtil smooth inner sequence");
+        FieldImpl smoothedFF = null;
+        Set       ensDomain  = sample.getDomainSet();
+        for (int j = 0; j < ensDomain.getLength(); j++) {
+            FlatField innerField = (FlatField) sample.getSample(j, false);
+            if (innerField == null) {
+                continue;
+            }
+            FlatField innerSmoothedField = smoothFlatField(innerField, type,
+                                               filterLevel, rangeType[0]);
+            if (innerSmoothedField == null) {
+                continue;
+            }
+            if (rangeType[0] == null) {
+                rangeType[0] = GridUtil.getParamType(innerSmoothedField);
+            }
+            if (smoothedFF == null) {
+                FunctionType innerType =
+                    new FunctionType(DataUtility.getDomainType(ensDomain),
+                                     innerSmoothedField.getType());
+                smoothedFF = new FieldImpl(innerType, ensDomain);
+            }
+            smoothedFF.setSample(j, innerSmoothedField, false);
+        }
+        Trace.call2("GridUtil smooth inner sequence");
+        return smoothedFF;
+    }
+
+    /**
+     * Smooth a FlatField
+     *
+     * @param field the field
+     * @param type  the type of smoothing (SMOOTH_5POINT, etc)
+     * @param filterLevel level of filtering
+     * @param rangeType  type for the range.  May be null;
+     *
+     * @return  the smoothed field or null
+     *
+     * @throws RemoteException  Java RMI error
+     * @throws VisADException   VisAD Error
+     */
+    private static FlatField smoothFlatField(FlatField field, String type,
+                                             int filterLevel,
+                                             TupleType rangeType)
+            throws VisADException, RemoteException {
+        if (type.equals(SMOOTH_5POINT)) {
+            return smooth5Point(field, rangeType);
+        } else if (type.equals(SMOOTH_9POINT)) {
+            return smooth9Point(field, rangeType);
+        } else if (type.equals(SMOOTH_GAUSSIAN)) {
+            return smoothGaussian(field, filterLevel, rangeType);
+        }
+        return smoothWeighted(field, filterLevel, type, rangeType);
+    }
 
-        int   jgymin, jgymax, jgxmin, jgxmax, kxd;
-        int   ii, ip1, im1, jp1, jm1, ier, zero;
-        float wt, wt4, dip1, dim1, djp1, djm1, dsum, wsum;
-        int sizeX, sizeY, sizeZ;
-
-        /*
-         * Set filter weight.
-         */
-        wt  = .125f;
-        wt4 = 4.f * wt;
-
+    /**
+     * Run the tasks in parallel on the StencilEngine's pool
+     *
+     * @param tasks the tasks
+     *
+     * @return the results, in the order of the tasks
+     *
+     * @throws RemoteException  Java RMI error
+     * @throws VisADException   VisAD Error
+     */
+    private static List runInParallel(List<Callable> tasks)
+            throws VisADException, RemoteException {
+        try {
+            return StencilEngine.runAll(tasks);
+        } catch (VisADException ve) {
+            throw ve;
+        } catch (RemoteException re) {
+            throw re;
+        } catch (Exception exc) {
+            throw new WrapperException(exc);
+        }
+    }
+
+    /**
+     * Is the grid cyclic in x, i.e., is its last column the same as its
+     * first
+     *
+     * @param domain the domain of the grid
+     *
+     * @return true if cyclic
+     */
+    private static boolean isCyclic(GriddedSet domain) {
+        float[] highs = domain.getHi();
+        float[] lows  = domain.getLow();
+        return lows[0] == highs[0] % 360.f;
+    }
+
+    /**
+     * Get the number of levels of the grid
+     *
+     * @param lengths the lengths of the domain
+     *
+     * @return the number of levels
+     */
+    private static int getNumLevels(int[] lengths) {
+        return (lengths.length > 2)
+               ? lengths[2]
+               : 1;
+    }
+
+
+    /**
+     * Apply a 5 point smoothing function to the grid.  Adapted from
+     * GEMPAK dfsm5s.c
+     *
+     * @param slice grid to smooth
+     * @param rangeType  type for the range.  May be null;
+     *
+     * @return  the smoothed grid or null
+     *
+     * @throws RemoteException  Java RMI error
+     * @throws VisADException   VisAD Error
+     */
+    private static FlatField smooth5Point(FlatField slice,
+                                          TupleType rangeType)
+            throws VisADException, RemoteException {
+
+        GriddedSet domain = null;
+        if (GridUtil.getSpatialDomain(slice) instanceof GriddedSet) {
+            domain = (GriddedSet) GridUtil.getSpatialDomain(slice);
+        } else {
+            return null;
+        }
         if (rangeType == null) {
             rangeType =
                 GridUtil.makeNewParamType(GridUtil.getParamType(slice),
@@ -7783,127 +8278,14 @@ public class GridUtil {
         }
         FlatField newField = (FlatField) GridUtil.setParamType(slice,
                                  rangeType, true);
-        float[][]  samples = slice.getFloats(false);
-        GriddedSet domain  = null;
-
-        if(GridUtil.getSpatialDomain(slice) instanceof GriddedSet)
-            domain = (GriddedSet)GridUtil.getSpatialDomain(slice);
-        else
-            return null;
-
-        int[]      lengths = domain.getLengths();
-        jgxmin = 1;
-        jgxmax = lengths[0];
-        kxd    = jgxmax;
-        jgymin = 1;
-        jgymax = lengths[1];
-        sizeX = jgxmax;
-        sizeY = jgymax;
-        sizeZ = 1;
-        if (lengths.length > 2) {
-            sizeZ = lengths[2];
-        }
-        int       kyd       = jgymax;
-        int       numParams = samples.length;
-        float[]   highs     = domain.getHi();
-        float[]   lows      = domain.getLow();
-        boolean   isCyclic  = lows[0] == highs[0] % 360.f;
-        float[][] newVals   = newField.getFloats(false);
-        int       nr        = 5;
-
-        for (int np = 0; np < numParams; np++) {
-            //float[] gni = samples[np];
-            //float[] gno = newVals[np];
-          for (int z = 0; z < sizeZ; z++) {
-            float[] gni;
-            float[] gno;
-            //float[] gnii = samples[np];
-            //float[] gnoi = newVals[np];
-            float[] gnii = getLevelSlice(samples[np], sizeX, sizeY, z);
-            float[] gnoi = getLevelSlice(newVals[np], sizeX, sizeY, z);
-            // reset jgxmax for each level
-            jgxmax = sizeX;
-            if (isCyclic) {
-                gni    = extendGrid(gnii, nr, jgxmax, jgymax);
-                gno    = new float[gni.length];
-                jgxmax += 2 * nr;
-                kxd    = jgxmax;
-            } else {
-                gni = gnii;
-                gno = gnoi;
-            }
-
-
-            /*
-             * Apply five-point binomial smoother over subset grid.
-             */
-            for (int j = jgymin; j <= jgymax; j++) {
-                for (int i = jgxmin; i <= jgxmax; i++) {
-                    ii = (j - 1) * kxd + i;
-                    if (Float.isNaN(gni[ii - 1])) {
-                        /*
-                         * Check for missing data.
-                         */
-                        gno[ii - 1] = Float.NaN;
-                    } else {
-                        ip1 = ii + 1;
-                        if (i + 1 > jgxmax) {
-                            dip1 = Float.NaN;
-                        } else {
-                            dip1 = gni[ip1 - 1];
-                        }
-                        im1 = ii - 1;
-                        if (i - 1 < jgxmin) {
-                            dim1 = Float.NaN;
-                        } else {
-                            dim1 = gni[im1 - 1];
-                        }
-                        jp1 = ii + kxd;
-                        if (j + 1 > jgymax) {
-                            djp1 = Float.NaN;
-                        } else {
-                            djp1 = gni[jp1 - 1];
-                        }
-                        jm1 = ii - kxd;
-                        if (j - 1 < jgymin) {
-                            djm1 = Float.NaN;
-                        } else {
-                            djm1 = gni[jm1 - 1];
-                        }
-                        dsum = gni[ii - 1] * wt4;
-                        wsum = wt4;
-                        if ( !Float.isNaN(dip1)) {
-                            dsum += dip1 * wt;
-                            wsum += wt;
-                        }
-                        if ( !Float.isNaN(dim1)) {
-                            dsum += dim1 * wt;
-                            wsum += wt;
-                        }
-                        if ( !Float.isNaN(djp1)) {
-                            dsum += djp1 * wt;
-                            wsum += wt;
-                        }
-                        if ( !Float.isNaN(djm1)) {
-                            dsum += djm1 * wt;
-                            wsum += wt;
-                        }
-                        gno[ii - 1] = dsum / wsum;
-                    }
-                }
-            }
-            if (isCyclic) {
-                int kxdi = kxd - 2 * nr;
-                int m    = 0;
-                for (int i = 0; i < kyd; i++) {
-                    for (int j = 0; j < kxdi; j++) {
-                        int index = nr + j + i * kxd;
-                        gnoi[m++] = gno[index];
-                    }
-                }
-            }
-            setLevelSlice(newVals[np], gnoi, sizeX, sizeY, z);
-          }
+        float[][] samples  = slice.getFloats(false);
+        float[][] newVals  = newField.getFloats(false);
+        int[]     lengths  = domain.getLengths();
+        boolean   isCyclic = isCyclic(domain);
+        for (int np = 0; np < samples.length; np++) {
+            StencilEngine.smooth5Point(samples[np], newVals[np], lengths[0],
+                                       lengths[1], getNumLevels(lengths),
+                                       isCyclic);
         }
         newField.setSamples(newVals, false);
 
@@ -7927,27 +8309,12 @@ public class GridUtil {
                                           TupleType rangeType)
             throws VisADException, RemoteException {
 
-        int   ni, no, jgymin, jgymax, jgxmin, jgxmax, kxd, kyd, ksub1, ksub2;
-        int   i, j, ii, ip1, im1, jp1, jm1, imjm, ipjm, imjp, ipjp, ier, zero;
-        float dsum, wsum, wt, wtc, wt4;
-        float dip1, dim1, djp1, djm1, dimjm, dipjm, dimjp, dipjp;
-        int sizeX, sizeY, sizeZ;
-
-        /*
-         * Set filter weight for Diamond points weight
-         */
-        wt = 2.0f;
-
-        /*
-         * Corner points weight
-         */
-        wtc = 1.0f;
-
-        /*
-         * Center point weight
-         */
-        wt4 = 4.0f;
-
+        GriddedSet domain = null;
+        if (GridUtil.getSpatialDomain(slice) instanceof GriddedSet) {
+            domain = (GriddedSet) GridUtil.getSpatialDomain(slice);
+        } else {
+            return null;
+        }
         if (rangeType == null) {
             rangeType =
                 GridUtil.makeNewParamType(GridUtil.getParamType(slice),
@@ -7955,200 +8322,14 @@ public class GridUtil {
         }
         FlatField newField = (FlatField) GridUtil.setParamType(slice,
                                  rangeType, true);
-        float[][]  samples = slice.getFloats(false);
-        GriddedSet domain  = null;
-
-        if(GridUtil.getSpatialDomain(slice) instanceof GriddedSet)
-            domain = (GriddedSet)GridUtil.getSpatialDomain(slice);
-        else
-            return null;
-        int[]      lengths = domain.getLengths();
-        jgxmin = 1;
-        jgxmax = lengths[0];
-        kxd    = jgxmax;
-        jgymin = 1;
-        jgymax = lengths[1];
-        kyd    = jgymax;
-        sizeX = jgxmax;
-        sizeY = jgymax;
-        sizeZ = 1;
-        if (lengths.length > 2) {
-            sizeZ = lengths[2];
-        }
-        int       numParams = samples.length;
-        float[]   highs     = domain.getHi();
-        float[]   lows      = domain.getLow();
-        boolean   isCyclic  = lows[0] == highs[0] % 360.f;
-        float[][] newVals   = newField.getFloats(false);
-        int       nr        = 9;
-
-        for (int np = 0; np < numParams; np++) {
-          for (int z = 0; z < sizeZ; z++) {
-            float[] gni;
-            float[] gno;
-            //float[] gnii = samples[np];
-            //float[] gnoi = newVals[np];
-            float[] gnii = getLevelSlice(samples[np], sizeX, sizeY, z);
-            float[] gnoi = getLevelSlice(newVals[np], sizeX, sizeY, z);
-            // reset jgxmax for each level
-            jgxmax = sizeX;
-            if (isCyclic) {
-                gni    = extendGrid(gnii, nr, jgxmax, jgymax);
-                gno    = new float[gni.length];
-                jgxmax += 2 * nr;
-                kxd    = jgxmax;
-            } else {
-                gni = gnii;
-                gno = gnoi;
-            }
-
-            for (j = jgymin; j <= jgymax; j++) {
-                for (i = jgxmin; i <= jgxmax; i++) {
-                    ii = (j - 1) * kxd + i;
-                    if (Float.isNaN(gni[ii - 1])) {
-                        //
-                        // Check for missing data.
-                        //
-                        gno[ii - 1] = Float.NaN;
-                    } else {
-                        ip1 = ii + 1;
-                        if (i + 1 > jgxmax) {
-                            dip1 = Float.NaN;
-                        } else {
-                            dip1 = gni[ip1 - 1];
-                        }
-
-                        im1 = ii - 1;
-                        if (i - 1 < jgxmin) {
-                            dim1 = Float.NaN;
-                        } else {
-                            dim1 = gni[im1 - 1];
-                        }
-
-                        jp1 = ii + kxd;
-                        if (j + 1 > jgymax) {
-                            djp1 = Float.NaN;
-                        } else {
-                            djp1 = gni[jp1 - 1];
-                        }
-
-                        jm1 = ii - kxd;
-                        if (j - 1 < jgymin) {
-                            djm1 = Float.NaN;
-                        } else {
-                            djm1 = gni[jm1 - 1];
-                        }
-
-                        imjm = jm1 - 1;
-                        if ((j - 1 < jgymin) || (i - 1 < jgxmin)) {
-                            dimjm = Float.NaN;
-                        } else {
-                            dimjm = gni[imjm - 1];
-                        }
-
-                        ipjm = jm1 + 1;
-                        if ((j - 1 < jgymin) || (i + 1 > jgxmax)) {
-                            dipjm = Float.NaN;
-                        } else {
-                            dipjm = gni[ipjm - 1];
-                        }
-
-                        imjp = jp1 - 1;
-                        if ((j + 1 > jgymax) || (i - 1 < jgxmin)) {
-                            dimjp = Float.NaN;
-                        } else {
-                            dimjp = gni[imjp - 1];
-                        }
-
-                        ipjp = jp1 + 1;
-                        if ((j + 1 > jgymax) || (i + 1 > jgxmax)) {
-                            dipjp = Float.NaN;
-                        } else {
-                            dipjp = gni[ipjp - 1];
-                        }
-
-                        dsum = gni[ii - 1] * wt4;
-                        wsum = wt4;
-                        if ( !Float.isNaN(dip1)) {
-                            dsum += dip1 * wt;
-                            wsum += wt;
-                        } else {
-                            dsum += gni[ii - 1] * wt;
-                            wsum += wt;
-                        }
-
-                        if ( !Float.isNaN(dim1)) {
-                            dsum += dim1 * wt;
-                            wsum += wt;
-                        } else {
-                            dsum += gni[ii - 1] * wt;
-                            wsum += wt;
-                        }
-
-                        if ( !Float.isNaN(djp1)) {
-                            dsum += djp1 * wt;
-                            wsum += wt;
-                        } else {
-                            dsum += gni[ii - 1] * wt;
-                            wsum += wt;
-                        }
-
-                        if ( !Float.isNaN(djm1)) {
-                            dsum += djm1 * wt;
-                            wsum += wt;
-                        } else {
-                            dsum += gni[ii - 1] * wt;
-                            wsum += wt;
-                        }
-
-                        if ( !Float.isNaN(dimjm)) {
-                            dsum += dimjm * wtc;
-                            wsum += wtc;
-                        } else {
-                            dsum += gni[ii - 1] * wtc;
-                            wsum += wtc;
-                        }
-
-                        if ( !Float.isNaN(dipjm)) {
-                            dsum += dipjm * wtc;
-                            wsum += wtc;
-                        } else {
-                            dsum += gni[ii - 1] * wtc;
-                            wsum += wtc;
-                        }
-
-                        if ( !Float.isNaN(dimjp)) {
-                            dsum += dimjp * wtc;
-                            wsum += wtc;
-                        } else {
-                            dsum += gni[ii - 1] * wtc;
-                            wsum += wtc;
-                        }
-
-                        if ( !Float.isNaN(dipjp)) {
-                            dsum += dipjp * wtc;
-                            wsum += wtc;
-                        } else {
-                            dsum += gni[ii - 1] * wtc;
-                            wsum += wtc;
-                        }
-
-                        gno[ii - 1] = dsum / wsum;
-                    }
-                }
-            }
-            if (isCyclic) {
-                int kxdi = kxd - 2 * nr;
-                int m    = 0;
-                for (i = 0; i < kyd; i++) {
-                    for (j = 0; j < kxdi; j++) {
-                        int index = nr + j + i * kxd;
-                        gnoi[m++] = gno[index];
-                    }
-                }
-            }
-            setLevelSlice(newVals[np], gnoi, sizeX, sizeY, z);
-          }
+        float[][] samples  = slice.getFloats(false);
+        float[][] newVals  = newField.getFloats(false);
+        int[]     lengths  = domain.getLengths();
+        boolean   isCyclic = isCyclic(domain);
+        for (int np = 0; np < samples.length; np++) {
+            StencilEngine.smooth9Point(samples[np], newVals[np], lengths[0],
+                                       lengths[1], getNumLevels(lengths),
+                                       isCyclic);
         }
         newField.setSamples(newVals, false);
 
@@ -8176,35 +8357,12 @@ public class GridUtil {
                                             TupleType rangeType)
             throws VisADException, RemoteException {
 
-
-        int       ni, no, nnw, kxd, kyd, ksub1, ksub2, zero, ier;
-        int       nwl, nr, jw, iw, jj, ii, is, ie, js, je, j, i, indx;
-        float[]   gnnw, gnist, gnost;
-        float     sgma, sumw, sumf, sig2, aa, x, y;
-        float[][] w = new float[MAXWTS][MAXWTS];
-        int sizeX, sizeY, sizeZ;
-
-        nwl = filterLevel;
-
-        if (nwl <= 1) {
-            nwl = 2;
-        }
-
-        /*
-         * Compute the array of weights.
-         *
-         * The range of the filter is twice the standard deviation of the
-         * required Gaussian distribution.
-         */
-        sgma = (float) (nwl / (Math.PI * Math.sqrt(2.0)));
-        nr   = (int) (2. * sgma);
-        if (nr < 1) {
-            nr = 1;
-        }
-        if (nr >= MAXWTS) {
-            nr = MAXWTS - 1;
+        GriddedSet domain = null;
+        if (GridUtil.getSpatialDomain(slice) instanceof GriddedSet) {
+            domain = (GriddedSet) GridUtil.getSpatialDomain(slice);
+        } else {
+            return null;
         }
-
         if (rangeType == null) {
             rangeType =
                 GridUtil.makeNewParamType(GridUtil.getParamType(slice),
@@ -8212,119 +8370,15 @@ public class GridUtil {
         }
         FlatField newField = (FlatField) GridUtil.setParamType(slice,
                                  rangeType, true);
-        float[][]  samples = slice.getFloats(false);
-        GriddedSet domain  = null;
-
-        if(GridUtil.getSpatialDomain(slice) instanceof GriddedSet)
-            domain = (GriddedSet)GridUtil.getSpatialDomain(slice);
-        else
-            return null;
-        int[]      lengths = domain.getLengths();
-        kxd = lengths[0];
-        kyd = lengths[1];
-        sizeX = kxd;
-        sizeY = kyd;
-        sizeZ = 1;
-        if (lengths.length > 2) {
-            sizeZ = lengths[2];
-        }
-        float[]   highs     = domain.getHi();
-        float[]   lows      = domain.getLow();
-        boolean   isCyclic  = lows[0] == highs[0] % 360.f;
-        int       numParams = samples.length;
-        float[][] newVals   = newField.getFloats(false);
-
-        for (int np = 0; np < numParams; np++) {
-          for (int z = 0; z < sizeZ; z++) {
-            //float[] gnisti = samples[np];
-            //float[] gnosti = newVals[np];
-            float[] gnisti = getLevelSlice(samples[np], sizeX, sizeY, z);
-            float[] gnosti = getLevelSlice(newVals[np], sizeX, sizeY, z);
-            kxd = sizeX;
-            if (isCyclic) {
-                gnist = extendGrid(gnisti, nr, kxd, kyd);
-                gnost = new float[gnist.length];
-                kxd   += 2 * nr;
-            } else {
-                gnist = gnisti;
-                gnost = gnosti;
-            }
-
-
-            /*
-             * Compute the matrix of weights for one quadrant using symmetry
-             * of two dimensional Gaussian surface.
-             */
-            sumw = 0.0f;
-            sig2 = sgma * sgma;
-            aa   = (float) (1.f / (sig2 * Math.PI));
-            for (jw = 1; jw <= nr + 1; jw++) {
-                if (jw == 1) {
-                    is = 2;
-                } else {
-                    is = jw;
-                }
-                for (iw = is; iw <= nr + 1; iw++) {
-                    x = iw - 1;
-                    y = jw - 1;
-                    w[iw - 1][jw - 1] = (float) (aa
-                            * Math.exp(-(x * x + y * y) / sig2));
-                    w[jw - 1][iw - 1] = w[iw - 1][jw - 1];
-                    if ((jw == 1) || (jw == iw)) {
-                        sumw += w[iw - 1][jw - 1];
-                    } else {
-                        sumw += 2. * w[iw - 1][jw - 1];
-                    }
-                }
-            }
-            sumw    *= 4.f;
-            w[0][0] = 1.f - sumw;
-
-            for (jj = 1; jj <= kyd; jj++) {
-                for (ii = 1; ii <= kxd; ii++) {
-                    is   = ii - nr;
-                    ie   = ii + nr;
-                    js   = jj - nr;
-                    je   = jj + nr;
-                    sumw = 0.0f;
-                    sumf = 0.0f;
-                    for (j = js; j <= je; j++) {
-                        if ((j >= 1) && (j <= kyd)) {
-                            for (i = is; i <= ie; i++) {
-                                if ((i >= 1) && (i <= kxd)) {
-                                    iw   = Math.abs(i - ii) + 1;
-                                    jw   = Math.abs(j - jj) + 1;
-                                    indx = (j - 1) * kxd + i;
-                                    if ( !Float.isNaN(gnist[indx - 1])) {
-                                        sumw += w[iw - 1][jw - 1];
-                                        sumf += gnist[indx - 1]
-                                                * w[iw - 1][jw - 1];
-                                    }
-                                }
-                            }
-                        }
-                    }
-                    indx = (jj - 1) * kxd + ii;
-                    if ( !G_DIFFT(sumw, 0.0F, GDIFFD)
-                            && !Float.isNaN(gnist[indx - 1])) {
-                        gnost[indx - 1] = sumf / sumw;
-                    } else {
-                        gnost[indx - 1] = Float.NaN;
-                    }
-                }
-            }
-            if (isCyclic) {
-                int kxdi = kxd - 2 * nr;
-                int m    = 0;
-                for (i = 0; i < kyd; i++) {
-                    for (j = 0; j < kxdi; j++) {
-                        int index = nr + j + i * kxd;
-                        gnosti[m++] = gnost[index];
-                    }
-                }
-            }
-            setLevelSlice(newVals[np], gnosti, sizeX, sizeY ,z);
-          }
+        float[][] samples  = slice.getFloats(false);
+        float[][] newVals  = newField.getFloats(false);
+        int[]     lengths  = domain.getLengths();
+        boolean   isCyclic = isCyclic(domain);
+        for (int np = 0; np < samples.length; np++) {
+            StencilEngine.smoothGaussian(samples[np], newVals[np],
+                                         lengths[0], lengths[1],
+                                         getNumLevels(lengths), isCyclic,
+                                         filterLevel);
         }
         newField.setSamples(newVals, false);
 
@@ -8374,152 +8428,80 @@ public class GridUtil {
 
         float beszero = 3.8317f;
 
-        int   idist, nfp, npsq, njx, niy;
-        int   is, ie, js, je, ifp, jfp;
-        float dist, distsq, xfac, yfac, tot, totwt, xdist, ydist;
-        //float[][] fprint = new float[MAXWTS][MAXWTS];
-        float[] pslab, work;
-        int     index, psindex;
-        int sizeX, sizeY, sizeZ;
+        int   idist, nfp, npsq;
+        float dist, distsq, xfac, yfac, xdist, ydist;
 
         idist = radius;
         if (idist == 0) {
             return slice;
         }
+        GriddedSet domain = null;
+        if (GridUtil.getSpatialDomain(slice) instanceof GriddedSet) {
+            domain = (GriddedSet) GridUtil.getSpatialDomain(slice);
+        } else {
+            return null;
+        }
         nfp = Math.min(MAXWTS, 2 * idist);
         float[][] fprint = new float[nfp][nfp];
         npsq = idist * idist;
-        if (rangeType == null) {
-            rangeType =
-                GridUtil.makeNewParamType(GridUtil.getParamType(slice),
-                                          "_" + type);
-        }
-        FlatField newField = (FlatField) GridUtil.setParamType(slice,
-                                 rangeType, true);
-        float[][]  samples = slice.getFloats(false);
-        GriddedSet domain  = null;
-
-        if(GridUtil.getSpatialDomain(slice) instanceof GriddedSet)
-            domain = (GriddedSet)GridUtil.getSpatialDomain(slice);
-        else
-            return null;
-        int[]      lengths = domain.getLengths();
-        njx = lengths[0];
-        niy = lengths[1];
-        sizeX = njx;
-        sizeY = niy;
-        sizeZ = 1;
-        if (lengths.length > 2) {
-            sizeZ = lengths[2];
-        }
-        float[]   highs     = domain.getHi();
-        float[]   lows      = domain.getLow();
-        boolean   isCyclic  = lows[0] == highs[0] % 360.f;
-        int       numParams = samples.length;
-        float[][] newValues = newField.getFloats(false);
-
-        for (int np = 0; np < numParams; np++) {
-          for (int z = 0; z < sizeZ; z++)  {
-            //float[] pslabi = samples[np];
-            //float[] worki  = newValues[np];
-            float[] pslabi = getLevelSlice(samples[np], sizeX, sizeY, z);
-            float[] worki  = getLevelSlice(newValues[np], sizeX, sizeY, z);
-
-            if (type.equals(SMOOTH_CRESSMAN)) {  // Cressman function
-                for (int i = 0; i < nfp; i++) {
-                    for (int j = 0; j < nfp; j++) {
-                        distsq = (float) (Math.pow((i - idist), 2)
-                                          + Math.pow((j - idist), 2));
-                        fprint[j][i] = (float) Math.max((npsq - distsq)
-                                / (npsq + distsq), 0.f);
-                    }
-                }
-            } else if (type.equals(SMOOTH_CIRCULAR)) {  // Circular diffraction function
-                for (int i = 0; i < nfp; i++) {
-                    for (int j = 0; j < nfp; j++) {
-                        dist = (float) (beszero / idist
-                                        * Math.sqrt(Math.pow((i - idist),
-                                                2) + Math.pow((j
-                                                - idist), 2)));
-                        if ((i == idist) && (j == idist)) {
-                            fprint[j][i] = .5f;
-                        } else {
-                            fprint[j][i] = (float) Math.max(0.,
-                                    bes(dist) / dist);
-                        }
-                    }
-                }
-            } else if (type.equals(SMOOTH_RECTANGULAR)) {  // Rect. diffraction function
-                for (int i = 0; i < nfp; i++) {
-                    for (int j = 0; j < nfp; j++) {
-                        if (j == idist) {
-                            xfac = 1.f;
-                        } else {
-                            xdist = (float) Math.PI / idist * (j - idist);
-                            xfac  = (float) Math.sin(xdist) / xdist;
-                        }
-                        if (i == idist) {
-                            yfac = 1.f;
-                        } else {
-                            ydist = (float) Math.PI / idist * (i - idist);
-                            yfac  = (float) Math.sin(ydist) / ydist;
-                        }
-                        fprint[j][i] = xfac * yfac;
+        if (type.equals(SMOOTH_CRESSMAN)) {  // Cressman function
+            for (int i = 0; i < nfp; i++) {
+                for (int j = 0; j < nfp; j++) {
+                    distsq = (float) (Math.pow((i - idist), 2)
+                                      + Math.pow((j - idist), 2));
+                    fprint[j][i] = (float) Math.max((npsq - distsq)
+                            / (npsq + distsq), 0.f);
+                }
+            }
+        } else if (type.equals(SMOOTH_CIRCULAR)) {  // Circular diffraction function
+            for (int i = 0; i < nfp; i++) {
+                for (int j = 0; j < nfp; j++) {
+                    dist = (float) (beszero / idist
+                                    * Math.sqrt(Math.pow((i - idist),
+                                            2) + Math.pow((j - idist), 2)));
+                    if ((i == idist) && (j == idist)) {
+                        fprint[j][i] = .5f;
+                    } else {
+                        fprint[j][i] = (float) Math.max(0.,
+                                bes(dist) / dist);
                     }
                 }
             }
-            njx = sizeX;
-            if (isCyclic) {  // pad each side with idist the values
-                pslab = extendGrid(pslabi, idist, njx, niy);
-                work  = new float[pslab.length];
-                njx   += 2 * idist;
-            } else {
-                pslab = pslabi;
-                work  = worki;
-            }
-            // now do the work of smoothing
-            for (int i = 0; i < niy; i++) {
-                for (int j = 0; j < njx; j++) {
-                    index = j + i * njx;
-                    if ( !Float.isNaN(pslab[index])) {
-                        tot   = 0.f;
-                        totwt = 0.f;
-                        is    = Math.max(0, i - idist);
-                        ie    = Math.min(niy - 1, i + idist);
-                        js    = Math.max(0, j - idist);
-                        je    = Math.min(njx - 1, j + idist);
-                        for (int ireg = is; ireg < ie; ireg++) {
-                            ifp = ireg - i + idist;
-                            for (int jreg = js; jreg < je; jreg++) {
-                                jfp     = jreg - j + idist;
-                                psindex = ireg * njx + jreg;
-                                if ( !Float.isNaN(pslab[psindex])) {
-                                    totwt = totwt + fprint[jfp][ifp];
-                                    tot = tot
-                                          + fprint[jfp][ifp] * pslab[psindex];
-                                }
-                            }
-                        }
-                        work[index] = tot / totwt;
+        } else if (type.equals(SMOOTH_RECTANGULAR)) {  // Rect. diffraction function
+            for (int i = 0; i < nfp; i++) {
+                for (int j = 0; j < nfp; j++) {
+                    if (j == idist) {
+                        xfac = 1.f;
                     } else {
-                        work[index] = Float.NaN;
+                        xdist = (float) Math.PI / idist * (j - idist);
+                        xfac  = (float) Math.sin(xdist) / xdist;
                     }
-                }
-            }
-            if (isCyclic) {
-                int njxi = njx - 2 * idist;
-                int m    = 0;
-                for (int i = 0; i < niy; i++) {
-                    for (int j = 0; j < njxi; j++) {
-                        index      = idist + j + i * njx;
-                        worki[m++] = work[index];
+                    if (i == idist) {
+                        yfac = 1.f;
+                    } else {
+                        ydist = (float) Math.PI / idist * (i - idist);
+                        yfac  = (float) Math.sin(ydist) / ydist;
                     }
+                    fprint[j][i] = xfac * yfac;
                 }
-            } else {
-                
             }
-            setLevelSlice(newValues[np], worki, sizeX, sizeY, z );
-          }
+        }
+        if (rangeType == null) {
+            rangeType =
+                GridUtil.makeNewParamType(GridUtil.getParamType(slice),
+                                          "_" + type);
+        }
+        FlatField newField = (FlatField) GridUtil.setParamType(slice,
+                                 rangeType, true);
+        float[][] samples   = slice.getFloats(false);
+        float[][] newValues = newField.getFloats(false);
+        int[]     lengths   = domain.getLengths();
+        boolean   isCyclic  = isCyclic(domain);
+        for (int np = 0; np < samples.length; np++) {
+            StencilEngine.smoothWeighted(samples[np], newValues[np],
+                                         lengths[0], lengths[1],
+                                         getNumLevels(lengths), isCyclic,
+                                         idist, fprint);
         }
         newField.setSamples(newValues, false);
 
@@ -8527,36 +8509,6 @@ public class GridUtil {
 
     }
 
-    /**
-     * Pad the cyclical grid on each edge by ncols
-     * @param data  the data to pad
-     * @param ncols  the number of columns
-     * @param nx  number of x points
-     * @param ny  number of y points
-     * @return  extended grid
-     */
-    private static float[] extendGrid(float[] data, int ncols, int nx,
-                                      int ny) {
-        float[] newData = new float[data.length + ny * ncols * 2];
-        int     index   = 0;
-        int     l       = 0;
-        for (int i = 0; i < ny; i++) {
-            for (int j = ncols; j > 0; j--) {
-                index        = nx - j - 1 + i * nx;
-                newData[l++] = data[index];
-            }
-            for (int j = 0; j < nx; j++) {
-                index        = j + i * nx;
-                newData[l++] = data[index];
-            }
-            for (int j = 0; j < ncols; j++) {
-                index        = j + 1 + i * nx;
-                newData[l++] = data[index];
-            }
-        }
-        return newData;
-    }
-
     /**
      * Bessel function.  (copied from RIP)
      *
@@ -9115,7 +9067,7 @@ public class GridUtil {
      * @throws CloneNotSupportedException for bad
      * @return the filtered field
      */
-    public static FieldImpl medianFilter(FieldImpl field, int window_lenx, int window_leny) throws VisADException, RemoteException, CloneNotSupportedException  {
+    public static FieldImpl medianFilter(FieldImpl field, final int window_lenx, final int window_leny) throws VisADException, RemoteException, CloneNotSupportedException  {
         Set dSet = field.getDomainSet();
        // if (dSet.getManifoldDimension() != 1) {
          //   throw new VisADException("medianFilter: outer field domain must have manifoldDimension = 1");
@@ -9124,16 +9076,27 @@ public class GridUtil {
 
         FieldImpl filtField = (FieldImpl)field.clone();
 
+        //Filter the time steps in parallel
+        List<Callable> tasks = new ArrayList<Callable>();
+        for (int t=0; t<outerLen; t++) {
+            final FlatField ff = (FlatField) filtField.getSample(t, false);
+            tasks.add(new Callable() {
+                public Object call() throws Exception {
+                    return medianFilter(ff, window_lenx, window_leny);
+                }
+            });
+        }
+        List results = runInParallel(tasks);
         for (int t=0; t<outerLen; t++) {
-            FlatField ff = (FlatField) filtField.getSample(t, false);
-            medianFilter(ff, window_lenx, window_leny);
+            filtField.setSample(t, (FlatField) results.get(t), false);
         }
 
         return filtField;
     }
 
     /**
-     * Process medianFilter
+     * Process medianFilter. Each level of a 3D field is filtered in place
+     * in the arrays of the fields.
      *
      * @param fltFld input ff
      * @param window_lenx default value is 10
@@ -9154,25 +9117,11 @@ public class GridUtil {
         int rngTupleDim = rngVals.length;
         float[][] filtVals = new float[rngTupleDim][];
 
-        if (manifoldDimension == 2) {
+        if (manifoldDimension == 2 || manifoldDimension == 3) {
+            int numLevels = (manifoldDimension == 3) ? lens[2] : 1;
             for (int t=0; t<rngTupleDim; t++) {
-                filtVals[t] = medianFilter(rngVals[t], lens[0], lens[1], window_lenx, window_leny);
-            }
-        }
-        else if (manifoldDimension == 3) {
-            int outerDimLen = lens[0];
-            filtVals = new float[rngTupleDim][lens[0]*lens[1]*lens[2]];
-            float[] rngVals2D = new float[lens[1]*lens[2]];
-
-            for (int k = 0; k<outerDimLen; k++) {
-                int idx = k*lens[1]*lens[2];
-                for (int t=0; t<rngTupleDim; t++) {
-                    System.arraycopy(rngVals[t], idx, rngVals2D, 0, lens[1]*lens[2]);
-
-                    float[] fltA = medianFilter(rngVals2D, lens[1], lens[2], window_lenx, window_leny);
-
-                    System.arraycopy(fltA, 0, filtVals[t], idx, lens[1]*lens[2]);
-                }
+                filtVals[t] = new float[rngVals[t].length];
+                StencilEngine.medianFilter(rngVals[t], filtVals[t], lens[0], lens[1], numLevels, window_lenx, window_leny);
             }
         }
 
@@ -9196,235 +9145,7 @@ public class GridUtil {
     public static float[] medianFilter(float[] A, int lenx, int leny, int window_lenx, int window_leny)
             throws  VisADException {
         float[] result =  new float[A.length];
-        float[] window =  new float[window_lenx*window_leny];
-        float[] sortedWindow =  new float[window_lenx*window_leny];
-        int[] sort_indexes = new int[window_lenx*window_leny];
-        int[] indexes = new int[window_lenx*window_leny];
-        int[] indexesB = new int[window_lenx*window_leny];
-
-        int[] numToInsertAt = new int[window_lenx*window_leny];
-        float[][] valsToInsert = new float[window_lenx*window_leny][window_lenx*window_leny];
-        int[][] idxsToInsert = new int[window_lenx*window_leny][window_lenx*window_leny];
-
-        int[] numBefore = new int[window_lenx*window_leny];
-        float[][] valsBefore = new float[window_lenx*window_leny][window_lenx*window_leny];
-        int[][] idxsBefore = new int[window_lenx*window_leny][window_lenx*window_leny];
-
-        int[] numAfter = new int[window_lenx*window_leny];
-        float[][] valsAfter = new float[window_lenx*window_leny][window_lenx*window_leny];
-        int[][] idxsAfter = new int[window_lenx*window_leny][window_lenx*window_leny];
-
-        float[] sortedArray = new float[window_lenx*window_leny];
-
-        int a_idx;
-        int w_idx;
-
-        int w_lenx = window_lenx/2;
-        int w_leny = window_leny/2;
-
-        int lo;
-        int hi;
-        int ww_jj;
-        int ww_ii;
-        int cnt=0;
-        int ncnt;
-        int midx;
-        float median;
-
-        int lenA = A.length;
-
-        for (int i=0; i<lenx; i++) { // zig-zag better? Maybe, but more complicated
-            for (int j=0; j<leny; j++) {
-                a_idx = j*lenx + i;
-
-                if (j > 0) {
-                    ncnt = 0;
-                    for (int t=0; t<cnt; t++) {
-                        // last window index in data coords: A[lenx,leny]
-                        int k = indexes[sort_indexes[t]];
-                        ww_jj = k/lenx;
-                        ww_ii = k % lenx;
-
-                        // current window bounds in data coords
-                        int ww_jj_lo = j - w_leny;
-                        int ww_jj_hi = j + w_leny;
-                        int ww_ii_lo = i - w_lenx;
-                        int ww_ii_hi = i + w_lenx;
-
-                        if (ww_jj_lo < 0) ww_jj_lo = 0;
-                        if (ww_ii_lo < 0) ww_ii_lo = 0;
-                        if (ww_jj_hi > leny-1) ww_jj_hi = leny-1;
-                        if (ww_ii_hi > lenx-1) ww_ii_hi = lenx-1;
-
-
-                        // These are the points which overlap between the last and current window
-                        if ((ww_jj >= ww_jj_lo && ww_jj < ww_jj_hi) && (ww_ii >= ww_ii_lo && ww_ii < ww_ii_hi)) {
-                            window[ncnt] = sortedWindow[t];
-                            indexesB[ncnt] = k;
-                            ncnt++;
-                        }
-                    }
-
-
-                    // Add the new points from sliding the window to the overlap points above
-                    java.util.Arrays.fill(numToInsertAt, 0);
-                    java.util.Arrays.fill(numBefore, 0);
-                    java.util.Arrays.fill(numAfter, 0);
-
-                    ww_jj = w_leny-1 + j;
-                    for (int w_i=-w_lenx; w_i<w_lenx; w_i++) {
-                        ww_ii = w_i + i;
-                        int k = ww_jj*lenx+ww_ii;
-                        if (k >= 0 && k < lenA) {
-                            float val = A[k];
-                            if (ncnt > 0) {
-                                int t = 0;
-                                if (val < window[t]) {
-                                    valsBefore[0][numBefore[0]] = val;
-                                    idxsBefore[0][numBefore[0]] = k;
-                                    numBefore[0]++;
-                                    continue;
-                                }
-                                t = ncnt-1;
-                                if (val >= window[t]) {
-                                    valsAfter[0][numAfter[0]] = val;
-                                    idxsAfter[0][numAfter[0]] = k;
-                                    numAfter[0]++;
-                                    continue;
-                                }
-
-                                for (t=0; t<ncnt-1; t++) {
-                                    if (val >= window[t] && val < window[t+1]) {
-                                        valsToInsert[t][numToInsertAt[t]] = val;
-                                        idxsToInsert[t][numToInsertAt[t]] = k;
-                                        numToInsertAt[t]++;
-                                        break;
-                                    }
-                                }
-                            }
-                            else if (!Float.isNaN(val)) {
-                                valsBefore[0][numBefore[0]] = val;
-                                idxsBefore[0][numBefore[0]] = k;
-                                numBefore[0]++;
-                                continue;
-                            }
-                        }
-                    }
-
-                    // insert new unsorted values into the already sorted overlap window region
-                    int tcnt = 0;
-
-                    for (int it=0; it<numBefore[0]; it++) {
-                        sortedArray[tcnt] = valsBefore[0][it];
-                        indexes[tcnt] = idxsBefore[0][it];
-                        tcnt++;
-                    }
-
-                    for (int t=0; t<ncnt; t++) {
-                        sortedArray[tcnt] = window[t];
-                        indexes[tcnt] = indexesB[t];
-                        tcnt++;
-                        if (numToInsertAt[t] > 0) {
-                            if (numToInsertAt[t] == 2) { // two item sort here to save work for QuickSort
-                                float val0 = valsToInsert[t][0];
-                                float val1 = valsToInsert[t][1];
-
-                                if (val0 <= val1) {
-                                    sortedArray[tcnt] = val0;
-                                    indexes[tcnt] = idxsToInsert[t][0];
-                                    tcnt++;
-
-                                    sortedArray[tcnt] = val1;
-                                    indexes[tcnt] = idxsToInsert[t][1];
-                                    tcnt++;
-                                }
-                                else {
-                                    sortedArray[tcnt] = val1;
-                                    indexes[tcnt] = idxsToInsert[t][1];
-                                    tcnt++;
-
-                                    sortedArray[tcnt] = val0;
-                                    indexes[tcnt] = idxsToInsert[t][0];
-                                    tcnt++;
-                                }
-                            }
-                            else if (numToInsertAt[t] == 1) {
-                                sortedArray[tcnt] = valsToInsert[t][0];
-                                indexes[tcnt] = idxsToInsert[t][0];
-                                tcnt++;
-                            }
-                            else {
-                                for (int it=0; it<numToInsertAt[t]; it++) {
-                                    sortedArray[tcnt] = valsToInsert[t][it];
-                                    indexes[tcnt] = idxsToInsert[t][it];
-                                    tcnt++;
-                                }
-                            }
-                        }
-                    }
-
-                    for (int it=0; it<numAfter[0]; it++) {
-                        sortedArray[tcnt] = valsAfter[0][it];
-                        indexes[tcnt] = idxsAfter[0][it];
-                        tcnt++;
-                    }
-
-                    // Now sort the new unsorted and overlap sorted points together to get the new window median
-
-                    System.arraycopy(sortedArray, 0, sortedWindow, 0, tcnt);
-                    if (tcnt > 0) {
-                        sort_indexes = QuickSort.sort(sortedWindow, 0, tcnt-1);
-                        median = sortedWindow[tcnt/2];
-                    }
-                    else {
-                        median = Float.NaN;
-                    }
-                    cnt = tcnt;
-
-                }
-                else { // full sort done once for each row (see note on zigzag above)
-
-                    cnt = 0;
-                    for (int w_j=-w_leny; w_j<w_leny; w_j++) {
-                        for (int w_i=-w_lenx; w_i<w_lenx; w_i++) {
-                            ww_jj = w_j + j;
-                            ww_ii = w_i + i;
-                            w_idx = (w_j+w_leny)*window_lenx + (w_i+w_lenx);
-                            if ((ww_jj >= 0) && (ww_ii >=0) && (ww_jj < leny) && (ww_ii < lenx)) {
-                                int k = ww_jj*lenx+ww_ii;
-                                float val = A[k];
-                                if (!Float.isNaN(val)) {
-                                    window[cnt] = val;
-                                    indexes[cnt] = k;
-                                    cnt++;
-                                }
-                            }
-                        }
-                    }
-
-
-                    System.arraycopy(window, 0, sortedWindow, 0, cnt);
-                    if (cnt > 0) {
-                        sort_indexes = QuickSort.sort(sortedWindow, 0, cnt-1);
-                        midx = cnt/2;
-                        median = sortedWindow[midx];
-                    }
-                    else {
-                        median = Float.NaN;
-                    }
-
-                }
-
-                if (Float.isNaN(A[a_idx])) {
-                    result[a_idx] = Float.NaN;
-                }
-                else {
-                    result[a_idx] = median;
-                }
-
-            }
-        }
-
+        StencilEngine.medianFilter(A, result, lenx, leny, 1, window_lenx, window_leny);
         return result;
     }
 
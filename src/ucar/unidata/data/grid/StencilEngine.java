@@ -0,0 +1,743 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.data.grid;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Runs the {@link GridUtil} smoothers and median filter over the values
+ * of a grid. The values are those of one parameter of a FlatField, with
+ * x varying fastest, then y, then the levels. The input and output
+ * arrays are used in place, without copying each level out.
+ * <p>
+ * The levels of a grid are split into tiles (blocks of rows, or blocks of
+ * columns for the median filter) that run on the shared fork/join pool of
+ * the {@link TrajectoryEngine}. A cyclic grid (one whose last column is
+ * its first) is wrapped in x by index instead of padding a copy of each
+ * level.
+ * <p>
+ * The median filter keeps a sorted window that it slides down each
+ * column, removing the row that leaves the window and adding the row that
+ * enters it, rather than sorting every window.
+ */
+public class StencilEngine {
+
+    /** Number of points in a tile */
+    public static final int TILE_POINTS = 1 << 15;
+
+    /** Max number of weights in x or y */
+    private static final int MAXWTS = 100;
+
+    /** Sums of weights smaller than this are treated as zero */
+    private static final float GDIFFD = 0.000001f;
+
+    /** Scratch arrays for the median filter of each thread */
+    private static final ThreadLocal<float[][]> scratch =
+        new ThreadLocal<float[][]>();
+
+    /**
+     * A kernel over a block of rows or columns of one level
+     */
+    private abstract static class Kernel {
+
+        /**
+         * Do we tile by columns instead of by rows
+         *
+         * @return true to tile by columns
+         */
+        boolean byColumns() {
+            return false;
+        }
+
+        /**
+         * Apply the kernel
+         *
+         * @param base offset of the level
+         * @param from first row (or column)
+         * @param to one past the last row (or column)
+         */
+        abstract void apply(int base, int from, int to);
+    }
+
+    /**
+     * Apply the GEMPAK five point smoother (dfsm5s.c). Missing neighbors
+     * are left out.
+     *
+     * @param in the values
+     * @param out the smoothed values
+     * @param nx number of x points
+     * @param ny number of y points
+     * @param nz number of levels
+     * @param cyclic is the grid cyclic in x
+     */
+    public static void smooth5Point(final float[] in, final float[] out,
+                                    final int nx, final int ny, int nz,
+                                    final boolean cyclic) {
+        final float wt  = .125f;
+        final float wt4 = 4.f * wt;
+        run(new Kernel() {
+            void apply(int base, int from, int to) {
+                for (int j = from; j < to; j++) {
+                    int row = base + j * nx;
+                    for (int i = 0; i < nx; i++) {
+                        float c = in[row + i];
+                        if (Float.isNaN(c)) {
+                            out[row + i] = Float.NaN;
+                            continue;
+                        }
+                        float dip1 = get(in, row, i + 1, nx, cyclic);
+                        float dim1 = get(in, row, i - 1, nx, cyclic);
+                        float djp1 = (j + 1 < ny)
+                                     ? in[row + nx + i]
+                                     : Float.NaN;
+                        float djm1 = (j > 0)
+                                     ? in[row - nx + i]
+                                     : Float.NaN;
+                        float dsum = c * wt4;
+                        float wsum = wt4;
+                        if ( !Float.isNaN(dip1)) {
+                            dsum += dip1 * wt;
+                            wsum += wt;
+                        }
+                        if ( !Float.isNaN(dim1)) {
+                            dsum += dim1 * wt;
+                            wsum += wt;
+                        }
+                        if ( !Float.isNaN(djp1)) {
+                            dsum += djp1 * wt;
+                            wsum += wt;
+                        }
+                        if ( !Float.isNaN(djm1)) {
+                            dsum += djm1 * wt;
+                            wsum += wt;
+                        }
+                        out[row + i] = dsum / wsum;
+                    }
+                }
+            }
+        }, nx, ny, nz);
+    }
+
+    /**
+     * Apply the GEMPAK nine point smoother (dfsm9s.c). Missing neighbors
+     * are replaced by the center point.
+     *
+     * @param in the values
+     * @param out the smoothed values
+     * @param nx number of x points
+     * @param ny number of y points
+     * @param nz number of levels
+     * @param cyclic is the grid cyclic in x
+     */
+    public static void smooth9Point(final float[] in, final float[] out,
+                                    final int nx, final int ny, int nz,
+                                    final boolean cyclic) {
+        //Diamond, corner and center point weights
+        final float wt  = 2.0f;
+        final float wtc = 1.0f;
+        final float wt4 = 4.0f;
+        run(new Kernel() {
+            void apply(int base, int from, int to) {
+                float[] n = new float[8];
+                for (int j = from; j < to; j++) {
+                    int     row    = base + j * nx;
+                    boolean hasUp  = j + 1 < ny;
+                    boolean hasDown = j > 0;
+                    for (int i = 0; i < nx; i++) {
+                        float c = in[row + i];
+                        if (Float.isNaN(c)) {
+                            out[row + i] = Float.NaN;
+                            continue;
+                        }
+                        n[0] = get(in, row, i + 1, nx, cyclic);
+                        n[1] = get(in, row, i - 1, nx, cyclic);
+                        n[2] = hasUp
+                               ? in[row + nx + i]
+                               : Float.NaN;
+                        n[3] = hasDown
+                               ? in[row - nx + i]
+                               : Float.NaN;
+                        n[4] = hasDown
+                               ? get(in, row - nx, i - 1, nx, cyclic)
+                               : Float.NaN;
+                        n[5] = hasDown
+                               ? get(in, row - nx, i + 1, nx, cyclic)
+                               : Float.NaN;
+                        n[6] = hasUp
+                               ? get(in, row + nx, i - 1, nx, cyclic)
+                               : Float.NaN;
+                        n[7] = hasUp
+                               ? get(in, row + nx, i + 1, nx, cyclic)
+                               : Float.NaN;
+                        float dsum = c * wt4;
+                        float wsum = wt4;
+                        for (int k = 0; k < 8; k++) {
+                            float w = (k < 4)
+                                      ? wt
+                                      : wtc;
+                            dsum += (Float.isNaN(n[k])
+                                     ? c
+                                     : n[k]) * w;
+                            wsum += w;
+                        }
+                        out[row + i] = dsum / wsum;
+                    }
+                }
+            }
+        }, nx, ny, nz);
+    }
+
+    /**
+     * Make the weights of the GEMPAK Gaussian weighted smoother
+     * (dfgwfs.c) for one quadrant
+     *
+     * @param filterLevel level of filtering
+     *
+     * @return the weights, indexed by the x and y distances
+     */
+    public static float[][] makeGaussianWeights(int filterLevel) {
+        int nwl = Math.max(2, filterLevel);
+        // The range of the filter is twice the standard deviation of the
+        // required Gaussian distribution.
+        float sgma = (float) (nwl / (Math.PI * Math.sqrt(2.0)));
+        int   nr   = Math.max(1, (int) (2. * sgma));
+        nr = Math.min(nr, MAXWTS - 1);
+        float[][] w    = new float[nr + 1][nr + 1];
+        float     sumw = 0.0f;
+        float     sig2 = sgma * sgma;
+        float     aa   = (float) (1.f / (sig2 * Math.PI));
+        for (int jw = 1; jw <= nr + 1; jw++) {
+            int is = (jw == 1)
+                     ? 2
+                     : jw;
+            for (int iw = is; iw <= nr + 1; iw++) {
+                float x = iw - 1;
+                float y = jw - 1;
+                w[iw - 1][jw - 1] = (float) (aa
+                                             * Math.exp(-(x * x + y * y)
+                                                 / sig2));
+                w[jw - 1][iw - 1] = w[iw - 1][jw - 1];
+                if ((jw == 1) || (jw == iw)) {
+                    sumw += w[iw - 1][jw - 1];
+                } else {
+                    sumw += 2. * w[iw - 1][jw - 1];
+                }
+            }
+        }
+        sumw    *= 4.f;
+        w[0][0] = 1.f - sumw;
+        return w;
+    }
+
+    /**
+     * Apply the GEMPAK Gaussian weighted smoother (dfgwfs.c)
+     *
+     * @param in the values
+     * @param out the smoothed values
+     * @param nx number of x points
+     * @param ny number of y points
+     * @param nz number of levels
+     * @param cyclic is the grid cyclic in x
+     * @param filterLevel level of filtering
+     */
+    public static void smoothGaussian(final float[] in, final float[] out,
+                                      final int nx, final int ny, int nz,
+                                      final boolean cyclic,
+                                      int filterLevel) {
+        final float[][] w  = makeGaussianWeights(filterLevel);
+        final int       nr = w.length - 1;
+        run(new Kernel() {
+            void apply(int base, int from, int to) {
+                for (int jj = from; jj < to; jj++) {
+                    int js = Math.max(0, jj - nr);
+                    int je = Math.min(ny - 1, jj + nr);
+                    for (int ii = 0; ii < nx; ii++) {
+                        float sumw = 0.0f;
+                        float sumf = 0.0f;
+                        int   is   = ii - nr;
+                        int   ie   = ii + nr;
+                        if ( !cyclic) {
+                            is = Math.max(0, is);
+                            ie = Math.min(nx - 1, ie);
+                        }
+                        for (int j = js; j <= je; j++) {
+                            int     row = base + j * nx;
+                            int     jw  = Math.abs(j - jj);
+                            for (int i = is; i <= ie; i++) {
+                                float v = in[row + wrap(i, nx)];
+                                if ( !Float.isNaN(v)) {
+                                    float wt = w[Math.abs(i - ii)][jw];
+                                    sumw += wt;
+                                    sumf += v * wt;
+                                }
+                            }
+                        }
+                        int indx = base + jj * nx + ii;
+                        if ( !(Math.abs(sumw) < GDIFFD)
+                                && !Float.isNaN(in[indx])) {
+                            out[indx] = sumf / sumw;
+                        } else {
+                            out[indx] = Float.NaN;
+                        }
+                    }
+                }
+            }
+        }, nx, ny, nz);
+    }
+
+    /**
+     * Apply a weighted smoother with the given footprint (Cressman,
+     * circular or rectangular aperture) as adapted from RIP smooth.f. The
+     * window of a point runs from radius before it up to, but not
+     * including, radius after it.
+     *
+     * @param in the values
+     * @param out the smoothed values
+     * @param nx number of x points
+     * @param ny number of y points
+     * @param nz number of levels
+     * @param cyclic is the grid cyclic in x
+     * @param radius the radius of the window in grid points
+     * @param fprint the weights, indexed by x offset + radius and y
+     *               offset + radius
+     */
+    public static void smoothWeighted(final float[] in, final float[] out,
+                                      final int nx, final int ny, int nz,
+                                      final boolean cyclic,
+                                      final int radius,
+                                      final float[][] fprint) {
+        run(new Kernel() {
+            void apply(int base, int from, int to) {
+                for (int i = from; i < to; i++) {
+                    int is = Math.max(0, i - radius);
+                    int ie = Math.min(ny - 1, i + radius);
+                    for (int j = 0; j < nx; j++) {
+                        int index = base + i * nx + j;
+                        if (Float.isNaN(in[index])) {
+                            out[index] = Float.NaN;
+                            continue;
+                        }
+                        int js = j - radius;
+                        int je = j + radius;
+                        if ( !cyclic) {
+                            js = Math.max(0, js);
+                            je = Math.min(nx - 1, je);
+                        }
+                        float tot   = 0.f;
+                        float totwt = 0.f;
+                        for (int ireg = is; ireg < ie; ireg++) {
+                            int ifp = ireg - i + radius;
+                            int row = base + ireg * nx;
+                            for (int jreg = js; jreg < je; jreg++) {
+                                float v = in[row + wrap(jreg, nx)];
+                                if ( !Float.isNaN(v)) {
+                                    float wt = fprint[jreg - j + radius][ifp];
+                                    totwt = totwt + wt;
+                                    tot   = tot + wt * v;
+                                }
+                            }
+                        }
+                        out[index] = tot / totwt;
+                    }
+                }
+            }
+        }, nx, ny, nz);
+    }
+
+    /**
+     * Apply a median filter. The window of a point covers the columns
+     * from i-windowX/2 up to, but not including, i+windowX/2 and likewise
+     * for the rows. Missing values are left out of the window and a
+     * missing point stays missing.
+     *
+     * @param in the values
+     * @param out the filtered values
+     * @param nx number of x points
+     * @param ny number of y points
+     * @param nz number of levels
+     * @param windowX length of the window in x
+     * @param windowY length of the window in y
+     */
+    public static void medianFilter(final float[] in, final float[] out,
+                                    final int nx, final int ny, int nz,
+                                    int windowX, int windowY) {
+        final int wx = windowX / 2;
+        final int wy = windowY / 2;
+        run(new Kernel() {
+            boolean byColumns() {
+                return true;
+            }
+
+            void apply(int base, int from, int to) {
+                float[][] buffers = getScratch(4 * wx * wy, 2 * wx);
+                float[]   window  = buffers[0];
+                float[]   next    = buffers[1];
+                float[]   leaving = buffers[2];
+                float[]   entering = buffers[3];
+                for (int i = from; i < to; i++) {
+                    int lo  = Math.max(0, i - wx);
+                    int hi  = Math.min(nx, i + wx);
+                    int cnt = 0;
+                    for (int j = 0; j < ny; j++) {
+                        if (j == 0) {
+                            for (int r = 0; r < Math.min(ny, wy); r++) {
+                                cnt = getRow(in, base + r * nx, lo, hi,
+                                             window, cnt);
+                            }
+                            Arrays.sort(window, 0, cnt);
+                        } else if (wy > 0) {
+                            //Slide the window down a row
+                            int numLeaving  = 0;
+                            int numEntering = 0;
+                            int leavingRow  = j - 1 - wy;
+                            int enteringRow = j + wy - 1;
+                            if (leavingRow >= 0) {
+                                numLeaving = getRow(in,
+                                        base + leavingRow * nx, lo, hi,
+                                        leaving, 0);
+                                Arrays.sort(leaving, 0, numLeaving);
+                            }
+                            if (enteringRow < ny) {
+                                numEntering = getRow(in,
+                                        base + enteringRow * nx, lo, hi,
+                                        entering, 0);
+                                Arrays.sort(entering, 0, numEntering);
+                            }
+                            if ((numLeaving > 0) || (numEntering > 0)) {
+                                cnt = slide(window, cnt, leaving,
+                                            numLeaving, entering,
+                                            numEntering, next);
+                                float[] tmp = window;
+                                window = next;
+                                next   = tmp;
+                            }
+                        }
+                        int index = base + j * nx + i;
+                        if (Float.isNaN(in[index]) || (cnt == 0)) {
+                            out[index] = Float.NaN;
+                        } else {
+                            out[index] = window[cnt / 2];
+                        }
+                    }
+                }
+            }
+        }, nx, ny, nz);
+    }
+
+    /**
+     * Copy the values of part of a row that are not missing
+     *
+     * @param in the values
+     * @param row offset of the row
+     * @param lo first column
+     * @param hi one past the last column
+     * @param values where to put them
+     * @param cnt number of values already there
+     *
+     * @return the new number of values
+     */
+    private static int getRow(float[] in, int row, int lo, int hi,
+                              float[] values, int cnt) {
+        for (int i = lo; i < hi; i++) {
+            float v = in[row + i];
+            if ( !Float.isNaN(v)) {
+                values[cnt++] = v;
+            }
+        }
+        return cnt;
+    }
+
+    /**
+     * Take the leaving values out of the sorted window and merge in the
+     * entering ones, in one pass. All of the arrays are sorted.
+     *
+     * @param window the window
+     * @param cnt number of values in the window
+     * @param leaving values to take out
+     * @param numLeaving number of values to take out
+     * @param entering values to put in
+     * @param numEntering number of values to put in
+     * @param next the new window
+     *
+     * @return the number of values in the new window
+     */
+    private static int slide(float[] window, int cnt, float[] leaving,
+                             int numLeaving, float[] entering,
+                             int numEntering, float[] next) {
+        int w = 0;
+        int l = 0;
+        int e = 0;
+        int n = 0;
+        while (w < cnt) {
+            float v = window[w];
+            //Skip the leaving values that are not in the window
+            while ((l < numLeaving) && (leaving[l] < v)) {
+                l++;
+            }
+            if ((l < numLeaving) && (leaving[l] == v)) {
+                l++;
+                w++;
+                continue;
+            }
+            while ((e < numEntering) && (entering[e] < v)) {
+                next[n++] = entering[e++];
+            }
+            next[n++] = v;
+            w++;
+        }
+        while (e < numEntering) {
+            next[n++] = entering[e++];
+        }
+        return n;
+    }
+
+    /**
+     * Get this thread's scratch arrays for the median filter
+     *
+     * @param windowSize the size of a window
+     * @param rowSize the size of a row of a window
+     *
+     * @return two window arrays and two row arrays
+     */
+    private static float[][] getScratch(int windowSize, int rowSize) {
+        float[][] buffers = scratch.get();
+        if ((buffers == null) || (buffers[0].length < windowSize)
+                || (buffers[2].length < rowSize)) {
+            windowSize = Math.max(1, windowSize);
+            rowSize    = Math.max(1, rowSize);
+            buffers    = new float[][] {
+                new float[windowSize], new float[windowSize],
+                new float[rowSize], new float[rowSize]
+            };
+            scratch.set(buffers);
+        }
+        return buffers;
+    }
+
+    /**
+     * Get the value at column i of the row. In a cyclic grid the last
+     * column is the first one so the columns wrap with a period of nx-1.
+     *
+     * @param in the values
+     * @param row offset of the row
+     * @param i the column
+     * @param nx number of x points
+     * @param cyclic is the grid cyclic in x
+     *
+     * @return the value or NaN if off of the grid
+     */
+    private static float get(float[] in, int row, int i, int nx,
+                             boolean cyclic) {
+        if ((i >= 0) && (i < nx)) {
+            return in[row + i];
+        }
+        if ( !cyclic) {
+            return Float.NaN;
+        }
+        return in[row + wrap(i, nx)];
+    }
+
+    /**
+     * Wrap the column of a cyclic grid
+     *
+     * @param i the column
+     * @param nx number of x points
+     *
+     * @return the column on the grid
+     */
+    private static int wrap(int i, int nx) {
+        if (nx < 2) {
+            return 0;
+        }
+        while (i < 0) {
+            i += nx - 1;
+        }
+        while (i >= nx) {
+            i -= nx - 1;
+        }
+        return i;
+    }
+
+    /**
+     * Run the kernel over the tiles of all of the levels
+     *
+     * @param kernel the kernel
+     * @param nx number of x points
+     * @param ny number of y points
+     * @param nz number of levels
+     */
+    private static void run(final Kernel kernel, int nx, int ny, int nz) {
+        if ((nx <= 0) || (ny <= 0)) {
+            return;
+        }
+        final int levelSize   = nx * ny;
+        final int splitLength = kernel.byColumns()
+                                ? nx
+                                : ny;
+        final int tileLength  = Math.max(1, TILE_POINTS * splitLength
+                                            / levelSize);
+        final int tilesPerLevel = (splitLength + tileLength - 1)
+                                  / tileLength;
+        int numTiles = tilesPerLevel * Math.max(1, nz);
+        TileTask task = new TileTask(0, numTiles) {
+            void doTile(int tile) {
+                int level = tile / tilesPerLevel;
+                int from  = (tile % tilesPerLevel) * tileLength;
+                kernel.apply(level * levelSize, from,
+                             Math.min(splitLength, from + tileLength));
+            }
+        };
+        if (numTiles == 1) {
+            task.doTile(0);
+        } else if (ForkJoinTask.inForkJoinPool()) {
+            task.invoke();
+        } else {
+            TrajectoryEngine.getPool().invoke(task);
+        }
+    }
+
+    /**
+     * Run the tasks on the shared pool and wait for them. This is used to
+     * work on the time steps of a grid in parallel.
+     *
+     * @param tasks the tasks
+     *
+     * @return the results, in the order of the tasks
+     *
+     * @throws Exception the first exception thrown by a task
+     */
+    public static List runAll(List<Callable> tasks) throws Exception {
+        final List<CallTask> calls = new ArrayList<CallTask>();
+        for (Callable task : tasks) {
+            calls.add(new CallTask(task));
+        }
+        if (ForkJoinTask.inForkJoinPool()) {
+            ForkJoinTask.invokeAll(calls);
+        } else {
+            TrajectoryEngine.getPool().invoke(new RecursiveAction() {
+                protected void compute() {
+                    invokeAll(calls);
+                }
+            });
+        }
+        List results = new ArrayList();
+        for (CallTask call : calls) {
+            if (call.exception != null) {
+                throw call.exception;
+            }
+            results.add(call.result);
+        }
+        return results;
+    }
+
+    /**
+     * Calls a Callable and holds on to its result or exception
+     */
+    private static class CallTask extends RecursiveAction {
+
+        /** the task */
+        private Callable task;
+
+        /** the result */
+        private Object result;
+
+        /** the exception, if any */
+        private Exception exception;
+
+        /**
+         * ctor
+         *
+         * @param task the task
+         */
+        CallTask(Callable task) {
+            this.task = task;
+        }
+
+        /**
+         * Call the task
+         */
+        protected void compute() {
+            try {
+                result = task.call();
+            } catch (Exception exc) {
+                exception = exc;
+            }
+        }
+    }
+
+    /**
+     * Does a range of tiles, splitting it in half until it is one tile
+     */
+    private abstract static class TileTask extends RecursiveAction {
+
+        /** first tile */
+        private int from;
+
+        /** one past the last tile */
+        private int to;
+
+        /**
+         * ctor
+         *
+         * @param from first tile
+         * @param to one past the last tile
+         */
+        TileTask(int from, int to) {
+            this.from = from;
+            this.to   = to;
+        }
+
+        /**
+         * Do the tile
+         *
+         * @param tile the tile
+         */
+        abstract void doTile(int tile);
+
+        /**
+         * Split or do the tiles
+         */
+        protected void compute() {
+            if (to - from <= 1) {
+                doTile(from);
+                return;
+            }
+            int            mid   = (from + to) / 2;
+            final TileTask outer = this;
+            invokeAll(new TileTask(from, mid) {
+                void doTile(int tile) {
+                    outer.doTile(tile);
+                }
+            }, new TileTask(mid, to) {
+                void doTile(int tile) {
+                    outer.doTile(tile);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,496 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.data.grid;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * Reduces the time steps of a grid by streaming them, one step at a time,
+ * rather than holding on to all of them. The values of each step are only
+ * referenced while they are used so a lazily read step (e.g., a
+ * CachedFlatField) can be let go of once it is added in. The next step can
+ * be read in the background while the current one is added in.
+ * <p>
+ * The reductions keep accumulators the size of one step. A running
+ * average only holds the steps in its window.
+ */
+public class TemporalReducer {
+
+    /** sum over time */
+    public static final int SUM = 0;
+
+    /** min over time */
+    public static final int MIN = 1;
+
+    /** max over time */
+    public static final int MAX = 2;
+
+    /** average over time */
+    public static final int AVERAGE = 3;
+
+    /** standard deviation over time */
+    public static final int STDEV = 4;
+
+    /** running average end points are cyclic. Same as GridMath.OPT_CYCLIC */
+    public static final int OPT_CYCLIC = -1;
+
+    /**
+     * running average end points are reflected. Same as
+     * GridMath.OPT_SYMMETRIC
+     */
+    public static final int OPT_SYMMETRIC = 1;
+
+    /** Reads the steps ahead */
+    private static ExecutorService prefetcher;
+
+    /**
+     * Reads the values of a time step
+     */
+    public interface StepSource {
+
+        /**
+         * Get the values of the time step. They are not changed.
+         *
+         * @param timeIndex the time index
+         *
+         * @return the values
+         *
+         * @throws Exception On badness
+         */
+        public float[][] getValues(int timeIndex) throws Exception;
+    }
+
+    /**
+     * Takes the values made for a time step
+     */
+    public interface StepSink {
+
+        /**
+         * Set the values of the time step
+         *
+         * @param timeIndex the time index
+         * @param values the values
+         *
+         * @throws Exception On badness
+         */
+        public void setValues(int timeIndex, float[][] values)
+         throws Exception;
+    }
+
+    /**
+     * Get the executor that reads ahead
+     *
+     * @return the executor
+     */
+    private static synchronized ExecutorService getPrefetcher() {
+        if (prefetcher == null) {
+            prefetcher = Executors.newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Time step prefetch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return prefetcher;
+    }
+
+    /**
+     * Reduce the time steps. Missing values are skipped, except that a
+     * missing value in the first step stays missing for the sum, min, max,
+     * average and standard deviation. The standard deviation is the
+     * population standard deviation, computed with Welford's method. It
+     * can differ in the last bits from the sum of squares GridMath used.
+     *
+     * @param source reads the steps
+     * @param timeIndices the steps to use
+     * @param function one of SUM, MIN, MAX, AVERAGE or STDEV
+     * @param prefetch if true then read the next step in the background
+     *
+     * @return the reduced values or null if there are no steps
+     *
+     * @throws Exception On badness
+     */
+    public static float[][] reduce(StepSource source, int[] timeIndices,
+                                   int function, boolean prefetch)
+            throws Exception {
+        StepReader reader = new StepReader(source, timeIndices, prefetch);
+        float[][]  values = null;
+        float[][]  m2     = null;
+        int[][]    nums   = null;
+        try {
+            while (reader.hasNext()) {
+                float[][] step = reader.next();
+                if (values == null) {  // first pass through
+                    values = new float[step.length][];
+                    nums   = new int[step.length][];
+                    if (function == STDEV) {
+                        m2 = new float[step.length][];
+                    }
+                    for (int i = 0; i < step.length; i++) {
+                        values[i] = (float[]) step[i].clone();
+                        nums[i]   = new int[step[i].length];
+                        if (m2 != null) {
+                            m2[i] = new float[step[i].length];
+                        }
+                        for (int j = 0; j < step[i].length; j++) {
+                            if (step[i][j] == step[i][j]) {
+                                nums[i][j] = 1;
+                            }
+                        }
+                    }
+                    continue;
+                }
+                for (int i = 0; i < step.length; i++) {
+                    float[] stepValues = step[i];
+                    float[] accum      = values[i];
+                    int[]   num        = nums[i];
+                    for (int j = 0; j < stepValues.length; j++) {
+                        float value = stepValues[j];
+                        if (value != value) {
+                            continue;
+                        }
+                        if (function == MAX) {
+                            accum[j] = Math.max(accum[j], value);
+                        } else if (function == MIN) {
+                            accum[j] = Math.min(accum[j], value);
+                        } else if (function == STDEV) {
+                            //Welford. accum holds the mean.
+                            int   n     = ++num[j];
+                            float delta = value - accum[j];
+                            accum[j] += delta / n;
+                            m2[i][j] += delta * (value - accum[j]);
+                            continue;
+                        } else {
+                            accum[j] += value;
+                        }
+                        num[j]++;
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        if (values == null) {
+            return null;
+        }
+        if ((function == AVERAGE) || (function == STDEV)) {
+            for (int i = 0; i < values.length; i++) {
+                for (int j = 0; j < values[i].length; j++) {
+                    int num = nums[i][j];
+                    if (num == 0) {
+                        values[i][j] = Float.NaN;
+                    } else if (function == AVERAGE) {
+                        values[i][j] = values[i][j] / num;
+                    } else {
+                        values[i][j] = (float) Math.sqrt(m2[i][j] / num);
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Make a weighted running average across the time steps. See
+     * GridMath.timeWeightedRunningAverage for the end point options. Only
+     * the steps in the window of the current step are held on to.
+     *
+     * @param source reads the steps
+     * @param numTimes number of time steps
+     * @param wgts weights per step
+     * @param opt options for end points (OPT_CYCLIC, OPT_SYMMETRIC or
+     *            missing otherwise)
+     * @param skipMissing if true then missing time steps are left out of
+     *                    the average, otherwise the average is missing
+     * @param prefetch if true then read the next step in the background
+     * @param sink takes the average of each step. A missing average is
+     *             all NaN.
+     *
+     * @throws Exception On badness
+     */
+    public static void runningAverage(StepSource source, int numTimes,
+                                      float[] wgts, int opt,
+                                      boolean skipMissing, boolean prefetch,
+                                      StepSink sink)
+            throws Exception {
+        int   nave = wgts.length;
+        float wsum = getWeightFactor(wgts);
+        int   nav2 = nave / 2;
+        int   noe  = (nave % 2 == 0)
+                     ? 1
+                     : 0;
+        int   lpts = numTimes - 1;
+        int[] timeIndices = new int[numTimes + 2 * nav2];
+        Arrays.fill(timeIndices, -1);
+        for (int n = 0; n < numTimes; n++) {
+            timeIndices[nav2 + n] = n;
+        }
+        for (int n = 0; n < nav2; n++) {
+            if (opt == OPT_SYMMETRIC) {
+                timeIndices[nav2 - (n + 1)]        = n + 1;
+                timeIndices[lpts + nav2 + (n + 1)] = lpts - (n + 1);
+            } else if (opt == OPT_CYCLIC) {
+                timeIndices[nav2 - (n + 1)]    = lpts - n;
+                timeIndices[lpts + nav2 + n + 1] = n;
+            }
+        }
+
+        //Figure out the order the steps are needed in, reading a step
+        //again if it has dropped out of the window
+        List<Integer> loads  = new ArrayList<Integer>();
+        Set<Integer>  window = new HashSet<Integer>();
+        for (int n = 0; n < numTimes; n++) {
+            int          mstart = n + noe;
+            Set<Integer> needed = new HashSet<Integer>();
+            for (int m = mstart; m < mstart + nave; m++) {
+                if ((timeIndices[m] >= 0) && needed.add(timeIndices[m])
+                        && !window.contains(timeIndices[m])) {
+                    loads.add(timeIndices[m]);
+                }
+            }
+            window = needed;
+        }
+        int[] loadOrder = new int[loads.size()];
+        for (int i = 0; i < loadOrder.length; i++) {
+            loadOrder[i] = loads.get(i);
+        }
+
+        StepReader reader = new StepReader(source, loadOrder, prefetch);
+        Map<Integer, float[][]> steps = new HashMap<Integer, float[][]>();
+        boolean[]               missing = new boolean[nave];
+        try {
+            for (int n = 0; n < numTimes; n++) {
+                int                     mstart = n + noe;
+                Map<Integer, float[][]> inWindow =
+                    new HashMap<Integer, float[][]>();
+                float[][]               sum         = null;
+                float[][]               template    = null;
+                boolean                 haveMissing = false;
+                for (int m = mstart; m < mstart + nave; m++) {
+                    int       timeIndex = timeIndices[m];
+                    float[][] values    = null;
+                    if (timeIndex >= 0) {
+                        values = inWindow.get(timeIndex);
+                        if (values == null) {
+                            values = steps.get(timeIndex);
+                        }
+                        if (values == null) {
+                            values = reader.next();
+                        }
+                        inWindow.put(timeIndex, values);
+                        template = values;
+                    }
+                    missing[m - mstart] = (values == null)
+                                          || isMissing(values);
+                    if (missing[m - mstart]) {
+                        haveMissing = true;
+                        continue;
+                    }
+                    if (sum == null) {
+                        sum = new float[values.length][];
+                        for (int i = 0; i < values.length; i++) {
+                            sum[i] = new float[values[i].length];
+                        }
+                    }
+                    float wgt = wgts[m - mstart];
+                    for (int i = 0; i < values.length; i++) {
+                        float[] sumValues  = sum[i];
+                        float[] stepValues = values[i];
+                        for (int j = 0; j < stepValues.length; j++) {
+                            sumValues[j] += stepValues[j] * wgt;
+                        }
+                    }
+                }
+                //Let go of the steps that are no longer in the window
+                steps = inWindow;
+                if ((sum != null) && ( !haveMissing || skipMissing)) {
+                    float factor = wsum;
+                    if (haveMissing) {
+                        //Scale the weights that are left up to the total
+                        float total   = 0;
+                        float present = 0;
+                        for (int m = 0; m < nave; m++) {
+                            total += wgts[m];
+                            if ( !missing[m]) {
+                                present += wgts[m];
+                            }
+                        }
+                        factor = factor * total / present;
+                    }
+                    for (int i = 0; i < sum.length; i++) {
+                        for (int j = 0; j < sum[i].length; j++) {
+                            sum[i][j] *= factor;
+                        }
+                    }
+                } else {
+                    sum = new float[template.length][];
+                    for (int i = 0; i < template.length; i++) {
+                        sum[i] = new float[template[i].length];
+                        Arrays.fill(sum[i], Float.NaN);
+                    }
+                }
+                sink.setValues(n, sum);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Get what to multiply the weighted sum by. If the weights add up to
+     * more than 1 then it is 1 over their sum, otherwise it is their sum.
+     *
+     * @param wgts the weights
+     *
+     * @return the factor
+     */
+    private static float getWeightFactor(float[] wgts) {
+        float wsum = 0;
+        for (int i = 0; i < wgts.length; i++) {
+            wsum += wgts[i];
+        }
+        if (wsum > 1.0) {
+            wsum = 1f / wsum;
+        }
+        return wsum;
+    }
+
+    /**
+     * Are all of the values missing
+     *
+     * @param values the values
+     *
+     * @return true if all are NaN
+     */
+    private static boolean isMissing(float[][] values) {
+        for (int i = 0; i < values.length; i++) {
+            for (int j = 0; j < values[i].length; j++) {
+                if (values[i][j] == values[i][j]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the steps in order, reading the next one in the background
+     */
+    public static class StepReader {
+
+        /** reads the steps */
+        private StepSource source;
+
+        /** the steps to read */
+        private int[] timeIndices;
+
+        /** read ahead */
+        private boolean prefetch;
+
+        /** index of the next step */
+        private int next = 0;
+
+        /** the read of the next step */
+        private Future<float[][]> pending;
+
+        /**
+         * Create the reader
+         *
+         * @param source reads the steps
+         * @param timeIndices the steps to read
+         * @param prefetch if true then read the next step in the background
+         */
+        public StepReader(StepSource source, int[] timeIndices,
+                          boolean prefetch) {
+            this.source      = source;
+            this.timeIndices = timeIndices;
+            this.prefetch    = prefetch;
+        }
+
+        /**
+         * Are there more steps
+         *
+         * @return true if there are more steps
+         */
+        public boolean hasNext() {
+            return next < timeIndices.length;
+        }
+
+        /**
+         * Get the next step and start reading the one after it
+         *
+         * @return the values of the step
+         *
+         * @throws Exception On badness
+         */
+        public float[][] next() throws Exception {
+            float[][] values;
+            if (pending != null) {
+                try {
+                    values = pending.get();
+                } catch (ExecutionException ee) {
+                    Throwable cause = ee.getCause();
+                    throw (cause instanceof Exception)
+                          ? (Exception) cause
+                          : ee;
+                }
+                pending = null;
+            } else {
+                values = source.getValues(timeIndices[next]);
+            }
+            next++;
+            if (prefetch && hasNext()) {
+                final int timeIndex = timeIndices[next];
+                pending = getPrefetcher().submit(new Callable<float[][]>() {
+                    public float[][] call() throws Exception {
+                        return source.getValues(timeIndex);
+                    }
+                });
+            }
+            return values;
+        }
+
+        /**
+         * Stop reading ahead
+         */
+        public void close() {
+            if (pending != null) {
+                pending.cancel(false);
+                pending = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.data.grid;
+
+
+import ucar.unidata.util.JobManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Advects a set of parcels through a wind field for the
+ * {@link GridTrajectory} code. All of the trajectory work runs on one
+ * shared fork/join pool that is sized to the number of cores instead of
+ * on a new fixed thread pool for each call.
+ * <p>
+ * The parcels are stepped together one time step at a time. The
+ * positions and winds of all of the parcels are held in flat primitive
+ * arrays that are reused for every step and each step is split into
+ * batches of parcels that the pool's workers steal from each other.
+ */
+public class TrajectoryEngine {
+
+    /** Earth radius (m) */
+    public static final float RADIUS = 6371000.0f;
+
+    /** Radians to degrees */
+    public static final float RAD2DEG = 180.0f / 3.1415926f;
+
+    /** Index of the u component in the sampled values */
+    public static final int INDEX_U = 0;
+
+    /** Index of the v component in the sampled values */
+    public static final int INDEX_V = 1;
+
+    /** Index of the w component in the sampled values */
+    public static final int INDEX_W = 2;
+
+    /** Index of the parameter in the sampled values */
+    public static final int INDEX_S = 3;
+
+    /** Default number of parcels in a batch */
+    public static final int DEFAULT_BATCHSIZE = 16;
+
+    /** The shared pool */
+    private static ForkJoinPool pool;
+
+    /** Number of threads in the shared pool. 0 means the number of cores. */
+    private static int parallelism = 0;
+
+    /** Mutex for the pool */
+    private static final Object MUTEX = new Object();
+
+    /**
+     * Samples the wind and the parameter at a point
+     */
+    public interface WindSampler {
+
+        /**
+         * Sample the fields at the location and time step. Implementations
+         * are called from many threads at once.
+         *
+         * @param timeIndex the time step
+         * @param lat latitude
+         * @param lon longitude
+         * @param alt altitude (m)
+         * @param values Put the u, v, w and parameter values in here
+         *
+         * @return false if the point is outside of the domain
+         *
+         * @throws Exception On badness
+         */
+        public boolean sample(int timeIndex, float lat, float lon, float alt,
+                              float[] values)
+         throws Exception;
+    }
+
+    /**
+     * Get the shared pool, creating it if needed
+     *
+     * @return the pool
+     */
+    public static ForkJoinPool getPool() {
+        synchronized (MUTEX) {
+            if (pool == null) {
+                pool = new ForkJoinPool((parallelism > 0)
+                                        ? parallelism
+                                        : Runtime.getRuntime()
+                                            .availableProcessors());
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * Set the number of threads in the shared pool. The current pool, if
+     * any, is shut down once its tasks are done.
+     *
+     * @param threads number of threads. 0 means the number of cores.
+     */
+    public static void setParallelism(int threads) {
+        synchronized (MUTEX) {
+            if (threads == parallelism) {
+                return;
+            }
+            parallelism = threads;
+            if (pool != null) {
+                pool.shutdown();
+                pool = null;
+            }
+        }
+    }
+
+    /**
+     * Get the number of threads in the shared pool
+     *
+     * @return number of threads
+     */
+    public static int getParallelism() {
+        return getPool().getParallelism();
+    }
+
+    /**
+     * Advect the parcels with the default batch size
+     *
+     * @param sampler samples the fields
+     * @param times the times (seconds)
+     * @param lats initial latitudes
+     * @param lons initial longitudes
+     * @param alts initial altitudes (m). May be null.
+     * @param useW if true advect the altitude with the w component
+     * @param backward if true go back in time from the last time step
+     * @param loadId the JobManager load id. May be null.
+     *
+     * @return a TrajInfo for each parcel
+     */
+    public static List<GridTrajectory.TrajInfo> advect(WindSampler sampler,
+            double[] times, float[] lats, float[] lons, float[] alts,
+            boolean useW, boolean backward, Object loadId) {
+        return advect(getPool(), DEFAULT_BATCHSIZE, sampler, times, lats,
+                      lons, alts, useW, backward, loadId);
+    }
+
+    /**
+     * Advect the parcels. Each parcel is moved with a simple Euler step
+     * using the winds at its last position. A parcel that moves outside of
+     * the domain stays where it was and stops. If the sampler throws an
+     * exception for a parcel the rest of its track is left empty.
+     *
+     * @param forkJoinPool the pool to run on
+     * @param batchSize max number of parcels in a batch
+     * @param sampler samples the fields
+     * @param times the times (seconds)
+     * @param lats initial latitudes
+     * @param lons initial longitudes
+     * @param alts initial altitudes (m). May be null.
+     * @param useW if true advect the altitude with the w component
+     * @param backward if true go back in time from the last time step
+     * @param loadId the JobManager load id. May be null. If the load
+     *               is stopped the remaining time steps are skipped.
+     *
+     * @return a TrajInfo for each parcel
+     */
+    public static List<GridTrajectory.TrajInfo> advect(
+            ForkJoinPool forkJoinPool, int batchSize,
+            final WindSampler sampler, final double[] times,
+            final float[] lats, final float[] lons, final float[] alts,
+            final boolean useW, final boolean backward, Object loadId) {
+
+        final int numTimes   = times.length;
+        final int numParcels = lats.length;
+        final GridTrajectory.TrajInfo[] infos =
+            new GridTrajectory.TrajInfo[numParcels];
+        for (int i = 0; i < numParcels; i++) {
+            infos[i] = new GridTrajectory.TrajInfo(numTimes);
+        }
+        //The state of each parcel at the last step
+        final float[]   lat   = new float[numParcels];
+        final float[]   lon   = new float[numParcels];
+        final float[]   alt   = new float[numParcels];
+        final float[]   u     = new float[numParcels];
+        final float[]   v     = new float[numParcels];
+        final float[]   w     = new float[numParcels];
+        final boolean[] alive = new boolean[numParcels];
+        System.arraycopy(lats, 0, lat, 0, numParcels);
+        System.arraycopy(lons, 0, lon, 0, numParcels);
+        if (alts != null) {
+            System.arraycopy(alts, 0, alt, 0, numParcels);
+        }
+
+        final int firstStep = backward
+                              ? numTimes - 1
+                              : 0;
+        final int dir       = backward
+                              ? -1
+                              : 1;
+        JobManager jobManager = JobManager.getManager();
+        for (int cnt = 0; cnt < numTimes; cnt++) {
+            if ((loadId != null) && !jobManager.canContinue(loadId)) {
+                break;
+            }
+            final int     timeStepIdx = firstStep + cnt * dir;
+            final boolean first       = cnt == 0;
+            final double  delt        = first
+                                        ? 0
+                                        : times[timeStepIdx]
+                                          - times[timeStepIdx - dir];
+            forkJoinPool.invoke(new StepTask(0, numParcels, batchSize) {
+                protected void doParcels(int from, int to, float[] values) {
+                    for (int i = from; i < to; i++) {
+                        GridTrajectory.TrajInfo info = infos[i];
+                        if (first) {
+                            info.lats[timeStepIdx] = lat[i];
+                            info.lons[timeStepIdx] = lon[i];
+                            info.alts[timeStepIdx] = alt[i];
+                            try {
+                                alive[i] = sampler.sample(timeStepIdx,
+                                        lat[i], lon[i], alt[i], values);
+                            } catch (Exception exc) {
+                                alive[i] = false;
+                            }
+                            if (alive[i]) {
+                                setState(i, info, timeStepIdx, values);
+                            }
+                            continue;
+                        }
+                        if ( !alive[i]) {
+                            continue;
+                        }
+                        float lat1 = (float) (lat[i]
+                                              + RAD2DEG * (v[i] * delt)
+                                                / (RADIUS + alt[i]));
+                        float lon1 = (float) (lon[i]
+                                              + RAD2DEG * (u[i] * delt)
+                                                / (RADIUS + alt[i]));
+                        float alt1 = alt[i];
+                        if (useW) {
+                            alt1 = (float) (alt[i] + (w[i] * delt));
+                            if (alt1 < 0) {
+                                alt1 = 0;
+                            }
+                        }
+                        boolean inside;
+                        try {
+                            inside = sampler.sample(timeStepIdx, lat1, lon1,
+                                    alt1, values);
+                        } catch (Exception exc) {
+                            alive[i] = false;
+                            continue;
+                        }
+                        if ( !inside) {
+                            //Outside the domain. Hold the last position
+                            //and stop moving
+                            info.lats[timeStepIdx] = lat[i];
+                            info.lons[timeStepIdx] = lon[i];
+                            info.alts[timeStepIdx] = alt[i];
+                            info.parcels[timeStepIdx] =
+                                info.parcels[timeStepIdx - dir];
+                            u[i] = 0;
+                            v[i] = 0;
+                            w[i] = 0;
+                            continue;
+                        }
+                        lat[i]                 = lat1;
+                        lon[i]                 = lon1;
+                        alt[i]                 = alt1;
+                        info.lats[timeStepIdx] = lat1;
+                        info.lons[timeStepIdx] = lon1;
+                        info.alts[timeStepIdx] = alt1;
+                        setState(i, info, timeStepIdx, values);
+                    }
+                }
+
+                private void setState(int i, GridTrajectory.TrajInfo info,
+                                      int timeStepIdx, float[] values) {
+                    u[i] = values[INDEX_U];
+                    v[i] = values[INDEX_V];
+                    w[i] = useW
+                           ? values[INDEX_W]
+                           : 0;
+                    info.parcels[timeStepIdx] = values[INDEX_S];
+                }
+            });
+        }
+
+        List<GridTrajectory.TrajInfo> result =
+            new ArrayList<GridTrajectory.TrajInfo>(numParcels);
+        for (int i = 0; i < numParcels; i++) {
+            result.add(infos[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Steps a range of parcels, splitting it into batches
+     */
+    private abstract static class StepTask extends RecursiveAction {
+
+        /** first parcel */
+        private int from;
+
+        /** one past the last parcel */
+        private int to;
+
+        /** max parcels in a batch */
+        private int batchSize;
+
+        /**
+         * ctor
+         *
+         * @param from first parcel
+         * @param to one past the last parcel
+         * @param batchSize max parcels in a batch
+         */
+        StepTask(int from, int to, int batchSize) {
+            this.from      = from;
+            this.to        = to;
+            this.batchSize = Math.max(1, batchSize);
+        }
+
+        /**
+         * Step the parcels
+         *
+         * @param from first parcel
+         * @param to one past the last parcel
+         * @param values scratch array for the sampled values
+         */
+        protected abstract void doParcels(int from, int to, float[] values);
+
+        /**
+         * Split or do the parcels
+         */
+        protected void compute() {
+            if (to - from <= batchSize) {
+                doParcels(from, to, new float[4]);
+                return;
+            }
+            int            mid   = (from + to) / 2;
+            final StepTask outer = this;
+            invokeAll(new StepTask(from, mid, batchSize) {
+                protected void doParcels(int from, int to, float[] values) {
+                    outer.doParcels(from, to, values);
+                }
+            }, new StepTask(mid, to, batchSize) {
+                protected void doParcels(int from, int to, float[] values) {
+                    outer.doParcels(from, to, values);
+                }
+            });
+        }
+    }
+}
@@ -79,6 +79,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.TimeZone;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 
 
 /**
@@ -134,6 +135,9 @@ public abstract class ImageDataSource extends DataSourceImpl {
     List descriptorsToUse;
 
     private boolean isZidv = false;
+
+    /** Owns the images we prefetch in the {@link ImageFetcher} */
+    private final Object fetchOwner = new Object();
     /**
      *  The parameterless constructor for unpersisting.
      */
@@ -1142,10 +1146,10 @@ public abstract class ImageDataSource extends DataSourceImpl {
      * @throws RemoteException    Java RMI problem
      * @throws VisADException     VisAD problem
      */
-    protected SingleBandedImage makeImage(AddeImageDescriptor aid,
-                                        MathType rangeType,
-                                        boolean fromSequence,
-                                        String readLabel)
+    protected SingleBandedImage makeImage(final AddeImageDescriptor aid,
+                                        final MathType rangeType,
+                                        final boolean fromSequence,
+                                        final String readLabel)
             throws VisADException, RemoteException {
 
         if (aid == null) {
@@ -1158,6 +1162,48 @@ public abstract class ImageDataSource extends DataSourceImpl {
             return result;
         }
 
+        //If another thread is making this image then wait for it rather
+        //than making the same request again
+        try {
+            result = (SingleBandedImage) ImageFetcher.getFetcher().fetch(
+                Misc.newList(this, source), new Callable() {
+                public Object call() throws Exception {
+                    return makeImageInner(aid, rangeType, fromSequence,
+                                          readLabel);
+                }
+            });
+        } catch (VisADException ve) {
+            throw ve;
+        } catch (RemoteException re) {
+            throw re;
+        } catch (Exception exc) {
+            throw new ucar.unidata.util.WrapperException(exc);
+        }
+        if (result != null) {
+            putCache(source, result);
+        }
+        return result;
+    }
+
+    /**
+     * Make the image. This does the work for makeImage.
+     *
+     * @param aid AddeImageDescriptor
+     * @param rangeType The sample rangeType or null to read the data now
+     * @param fromSequence from a sequence
+     * @param readLabel  the label
+     *
+     * @return The data.
+     *
+     * @throws RemoteException    Java RMI problem
+     * @throws VisADException     VisAD problem
+     */
+    private SingleBandedImage makeImageInner(AddeImageDescriptor aid,
+                                             MathType rangeType,
+                                             boolean fromSequence,
+                                             String readLabel)
+            throws VisADException, RemoteException {
+        SingleBandedImage result = null;
         try {
             AddeImageInfo aii     = aid.getImageInfo();
             AreaDirectory areaDir = null;
@@ -1230,7 +1276,6 @@ public abstract class ImageDataSource extends DataSourceImpl {
                 result = aa.getImage();
                 aa     = null;
             }
-            putCache(source, result);
             return result;
         } catch (java.io.IOException ioe) {
             throw new VisADException("Creating AreaAdapter - " + ioe);
@@ -1247,6 +1292,17 @@ public abstract class ImageDataSource extends DataSourceImpl {
     }
 
 
+    /**
+     * Flush the data cache and the images we prefetched. The same request
+     * can give a different image after a reload (e.g., the most recent
+     * images) so the prefetched ones can't be used again.
+     */
+    protected void flushCache() {
+        super.flushCache();
+        ImageFetcher.getFetcher().flush(fetchOwner);
+    }
+
+
     /**
      * Get whether we should cache to disk
      *
@@ -1500,6 +1556,15 @@ public abstract class ImageDataSource extends DataSourceImpl {
                         aiff.setDomainIfNeeded(domainSet);
                     }
                 }
+
+                //Start reading the images in the background in the order
+                //they will be animated. Displaying one that is still being
+                //read waits for that read.
+                ImageFetcher.getFetcher().setMaxPrefetchThreads(
+                    getDataContext().getIdv().getMaxDataThreadCount());
+                for (SingleBandedImage sbi : sortedImages) {
+                    ((AreaImageFlatField) sbi).prefetch(fetchOwner);
+                }
             }
 
             SingleBandedImage[] imageArray =
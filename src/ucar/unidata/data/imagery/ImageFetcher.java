@@ -0,0 +1,449 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.data.imagery;
+
+
+import ucar.unidata.util.CacheManager;
+import ucar.unidata.util.LogUtil;
+
+
+import java.util.Hashtable;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Schedules the reads of images. The key of a read is what identifies the
+ * image, e.g., the ADDE url, which holds the source, band, time,
+ * magnification and bounding box.
+ * <p>
+ * A read of a key that is already being read waits for that read rather
+ * than making the same request again. Images can also be prefetched in
+ * the background, in the order they are given (e.g., the animation order
+ * of a loop), by a small pool of threads.
+ * <p>
+ * A prefetched image is held in the {@link CacheManager} under the owner
+ * it was prefetched for (e.g., a data source) until it is taken with
+ * {@link #take(Object, Object, Callable)}, which removes it. The same key
+ * can give a different image later (e.g., an ADDE request for the most
+ * recent image), so the owner should {@link #flush(Object)} its images
+ * when it reloads its data or is removed.
+ */
+public class ImageFetcher {
+
+    /** The shared fetcher */
+    private static ImageFetcher fetcher;
+
+    /** Maps key to the read of it that is in progress */
+    private Hashtable<Object, PendingRead> pendingReads =
+        new Hashtable<Object, PendingRead>();
+
+    /**
+     * Maps owner to the number of times it has been flushed, so a
+     * prefetch that finishes after a flush isn't cached
+     */
+    private WeakHashMap<Object, Integer> flushCounts = new WeakHashMap<Object,
+                                                          Integer>();
+
+    /** Runs the prefetches in the order they were added */
+    private ThreadPoolExecutor prefetcher;
+
+    /** number of reads that were made */
+    private int readCount = 0;
+
+    /** number of reads that waited on another one */
+    private int sharedCount = 0;
+
+    /**
+     * Create the fetcher
+     *
+     * @param maxPrefetchThreads number of threads to prefetch with
+     */
+    public ImageFetcher(int maxPrefetchThreads) {
+        maxPrefetchThreads = Math.max(1, maxPrefetchThreads);
+        prefetcher = new ThreadPoolExecutor(maxPrefetchThreads,
+                                            maxPrefetchThreads, 30,
+                                            TimeUnit.SECONDS,
+                                            new LinkedBlockingQueue<Runnable>(),
+                                            new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Image prefetch");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        prefetcher.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Get the shared fetcher
+     *
+     * @return the fetcher
+     */
+    public static synchronized ImageFetcher getFetcher() {
+        if (fetcher == null) {
+            fetcher = new ImageFetcher(2);
+        }
+        return fetcher;
+    }
+
+    /**
+     * Set the number of threads to prefetch with
+     *
+     * @param count number of threads
+     */
+    public synchronized void setMaxPrefetchThreads(int count) {
+        count = Math.max(1, count);
+        if (count == prefetcher.getMaximumPoolSize()) {
+            return;
+        }
+        if (count > prefetcher.getMaximumPoolSize()) {
+            prefetcher.setMaximumPoolSize(count);
+            prefetcher.setCorePoolSize(count);
+        } else {
+            prefetcher.setCorePoolSize(count);
+            prefetcher.setMaximumPoolSize(count);
+        }
+    }
+
+    /**
+     * Get the image that was prefetched for the owner
+     *
+     * @param owner the owner
+     * @param key the key
+     *
+     * @return the image or null if it isn't cached
+     */
+    public Object getCached(Object owner, Object key) {
+        return CacheManager.get(owner, key);
+    }
+
+    /**
+     * Read the image for the key. If the key is being read by another
+     * thread then wait for that read. Nothing is cached.
+     *
+     * @param key the key
+     * @param loader reads the image
+     *
+     * @return the image
+     *
+     * @throws Exception On badness
+     */
+    public Object fetch(Object key, Callable loader) throws Exception {
+        return read(null, key, loader, null);
+    }
+
+    /**
+     * Get the image that was prefetched for the owner and remove it from
+     * the cache. If it isn't there then read it, or wait for the read of
+     * it that is in progress.
+     *
+     * @param owner the owner
+     * @param key the key
+     * @param loader reads the image
+     *
+     * @return the image
+     *
+     * @throws Exception On badness
+     */
+    public Object take(Object owner, Object key, Callable loader)
+            throws Exception {
+        //Don't let a prefetch that hasn't started read it again
+        removeQueued(owner, key);
+        return read(owner, key, loader, null);
+    }
+
+    /**
+     * Read the image. If the key is being read by another thread then
+     * wait for that read. If that read fails then the image is read here.
+     *
+     * @param owner the owner of the cached image. If null the cache isn't
+     *              used.
+     * @param key the key
+     * @param loader reads the image
+     * @param prefetch If non-null then this is a prefetch and the image
+     *                 is cached rather than taken
+     *
+     * @return the image
+     *
+     * @throws Exception On badness
+     */
+    private Object read(Object owner, Object key, Callable loader,
+                        Prefetch prefetch)
+            throws Exception {
+        Object      value = null;
+        PendingRead pending;
+        boolean     iAmLoading = false;
+        synchronized (pendingReads) {
+            pending = pendingReads.get(key);
+            if (pending == null) {
+                if (owner != null) {
+                    value = CacheManager.get(owner, key);
+                    if (value != null) {
+                        if (prefetch == null) {
+                            CacheManager.remove(owner, key);
+                        }
+                        return value;
+                    }
+                }
+                pending = new PendingRead();
+                pendingReads.put(key, pending);
+                iAmLoading = true;
+            }
+        }
+
+        if ( !iAmLoading) {
+            value = pending.waitForValue();
+            if (value == null) {
+                //The other read failed so read it here
+                return loader.call();
+            }
+            synchronized (this) {
+                sharedCount++;
+            }
+            if ((owner != null) && (prefetch == null)) {
+                //We may have waited on a prefetch that cached the image
+                CacheManager.remove(owner, key);
+            }
+            return value;
+        }
+
+        try {
+            synchronized (this) {
+                readCount++;
+            }
+            value = loader.call();
+            return value;
+        } finally {
+            synchronized (pendingReads) {
+                pendingReads.remove(key);
+                if ((prefetch != null) && (value != null)
+                        && prefetch.isCurrent()) {
+                    CacheManager.put(owner, key, value);
+                }
+            }
+            pending.setValue(value);
+        }
+    }
+
+    /**
+     * Is the image for the key being read or is it cached for the owner
+     *
+     * @param owner the owner
+     * @param key the key
+     *
+     * @return true if the image is being read or is cached
+     */
+    public boolean isReadOrPending(Object owner, Object key) {
+        return pendingReads.containsKey(key)
+               || (getCached(owner, key) != null);
+    }
+
+    /**
+     * Read the image in the background and cache it for the owner until
+     * it is taken. This does nothing if the image is already cached or
+     * being read when its turn comes.
+     *
+     * @param owner the owner
+     * @param key the key
+     * @param loader reads the image
+     */
+    public void prefetch(Object owner, Object key, Callable loader) {
+        if (isReadOrPending(owner, key)) {
+            return;
+        }
+        prefetcher.execute(new Prefetch(owner, key, loader));
+    }
+
+    /**
+     * Remove the prefetches of the owner that have not started and the
+     * images that were prefetched for it. Prefetches that are running
+     * when this is called are not cached.
+     *
+     * @param owner the owner
+     */
+    public void flush(Object owner) {
+        removeQueued(owner, null);
+        synchronized (pendingReads) {
+            flushCounts.put(owner, Integer.valueOf(getFlushCount(owner) + 1));
+            CacheManager.remove(owner);
+        }
+    }
+
+    /**
+     * Remove the prefetches of the owner that have not started
+     *
+     * @param owner the owner
+     * @param key the key of the prefetch to remove. If null remove all of
+     *            the prefetches of the owner.
+     */
+    private void removeQueued(Object owner, Object key) {
+        Object[] queued = prefetcher.getQueue().toArray();
+        for (int i = 0; i < queued.length; i++) {
+            Prefetch prefetch = (Prefetch) queued[i];
+            if ((prefetch.owner == owner)
+                    && ((key == null) || key.equals(prefetch.key))) {
+                prefetcher.remove(prefetch);
+            }
+        }
+    }
+
+    /**
+     * Get the number of times the owner has been flushed
+     *
+     * @param owner the owner
+     *
+     * @return the count
+     */
+    private int getFlushCount(Object owner) {
+        synchronized (pendingReads) {
+            Integer count = flushCounts.get(owner);
+            return (count == null)
+                   ? 0
+                   : count.intValue();
+        }
+    }
+
+    /**
+     * Get the number of reads that were made
+     *
+     * @return number of reads
+     */
+    public synchronized int getReadCount() {
+        return readCount;
+    }
+
+    /**
+     * Get the number of reads that used the result of another read
+     *
+     * @return number of shared reads
+     */
+    public synchronized int getSharedCount() {
+        return sharedCount;
+    }
+
+
+    /**
+     * A prefetch of an image for an owner
+     */
+    private class Prefetch implements Runnable {
+
+        /** the owner */
+        private Object owner;
+
+        /** the key */
+        private Object key;
+
+        /** reads the image */
+        private Callable loader;
+
+        /** the flush count of the owner when we were made */
+        private int flushCount;
+
+        /**
+         * ctor
+         *
+         * @param owner the owner
+         * @param key the key
+         * @param loader reads the image
+         */
+        Prefetch(Object owner, Object key, Callable loader) {
+            this.owner      = owner;
+            this.key        = key;
+            this.loader     = loader;
+            this.flushCount = getFlushCount(owner);
+        }
+
+        /**
+         * Has the owner been flushed since we were made
+         *
+         * @return true if not
+         */
+        boolean isCurrent() {
+            return flushCount == getFlushCount(owner);
+        }
+
+        /**
+         * Read and cache the image
+         */
+        public void run() {
+            if ( !isCurrent() || isReadOrPending(owner, key)) {
+                return;
+            }
+            try {
+                read(owner, key, loader, this);
+            } catch (Exception exc) {
+                LogUtil.consoleMessage("Error prefetching image:" + key
+                                       + " " + exc);
+            }
+        }
+    }
+
+
+    /**
+     * Holds a read that is in progress so other reads of the same key can
+     * wait on it
+     */
+    private static class PendingRead {
+
+        /** Is the read done */
+        private boolean done = false;
+
+        /** The image */
+        private Object value;
+
+        /**
+         * Set the result and wake up any waiters
+         *
+         * @param value the image. May be null if the read failed.
+         */
+        public synchronized void setValue(Object value) {
+            this.value = value;
+            this.done  = true;
+            notifyAll();
+        }
+
+        /**
+         * Wait for the read to finish
+         *
+         * @return the image or null if the read failed
+         */
+        public synchronized Object waitForValue() {
+            boolean interrupted = false;
+            while ( !done) {
+                try {
+                    wait();
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return value;
+        }
+    }
+}
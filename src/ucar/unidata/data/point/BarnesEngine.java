@@ -0,0 +1,510 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.data.point;
+
+
+import au.gov.bom.aifs.osa.analysis.Barnes;
+
+import ucar.unidata.data.grid.StencilEngine;
+import ucar.unidata.data.grid.TrajectoryEngine;
+import ucar.unidata.util.WrapperException;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+
+/**
+ * Does the Barnes objective analysis of {@link Barnes#point2grid} on the
+ * shared fork/join pool.
+ * <p>
+ * The obs are put into a bucket index of square cells (in grid units) once
+ * so each grid point only looks at the obs in the cells within the radius
+ * of influence rather than at every ob. Obs further away than that weigh
+ * less than {@link #EPSILON} and are skipped by Barnes too, so the result
+ * is the same up to the order the weights are summed in. Each pass is
+ * split up over the columns of the grid.
+ */
+public class BarnesEngine {
+
+    /** Obs that weigh less than this are ignored. Same as in Barnes */
+    public static final float EPSILON = 1.0E-11f;
+
+    /** Max number of cells per ob in the index */
+    private static final int CELLS_PER_OB = 4;
+
+    /** number of grid points in x */
+    private int numX;
+
+    /** number of grid points in y */
+    private int numY;
+
+    /** ob x (grid units), in cell order */
+    private float[] xs;
+
+    /** ob y (grid units), in cell order */
+    private float[] ys;
+
+    /** ob values, in cell order */
+    private float[] values;
+
+    /** x of the corner of the first cell */
+    private float minX;
+
+    /** y of the corner of the first cell */
+    private float minY;
+
+    /** size of a cell (grid units) */
+    private float cellSize;
+
+    /** number of cells in x */
+    private int numCellsX;
+
+    /** number of cells in y */
+    private int numCellsY;
+
+    /** index of the first ob of each cell. Has one extra entry at the end */
+    private int[] cellStart;
+
+    /**
+     * Create the engine and index the obs
+     *
+     * @param lon the longitudes of the grid
+     * @param lat the latitudes of the grid
+     * @param data3D the ob longitudes, latitudes and values
+     * @param scaleLength the scale length of the first pass (grid units)
+     */
+    private BarnesEngine(float[] lon, float[] lat, float[][] data3D,
+                         float scaleLength) {
+        numX = lon.length;
+        numY = lat.length;
+        //Same as Barnes
+        float minLon     = min(lon);
+        float minLat     = min(lat);
+        float gridSpaceX = Math.abs(lon[1] - lon[0]);
+        float gridSpaceY = Math.abs(lat[1] - lat[0]);
+        int   numObs     = data3D[0].length;
+        float[] obX      = new float[numObs];
+        float[] obY      = new float[numObs];
+        for (int k = 0; k < numObs; k++) {
+            obX[k] = (data3D[0][k] - minLon) / gridSpaceX;
+            obY[k] = (data3D[1][k] - minLat) / gridSpaceY;
+        }
+        index(obX, obY, data3D[2],
+              (float) Math.sqrt(getRadiusOfInfluence2(scaleLength)));
+    }
+
+    /**
+     * Do the analysis
+     *
+     * @param lon the longitudes on the grid (degrees)
+     * @param lat the latitudes on the grid (degrees)
+     * @param data3D data3D[0] = ob longitudes, data3D[1] = ob latitudes,
+     *               data3D[2] = ob values
+     * @param scaleLength the Gaussian scale length (grid units)
+     * @param gain factor by which the scale length is reduced after the
+     *             first pass
+     * @param numPasses number of passes
+     *
+     * @return the grid, float[numLon][numLat]
+     */
+    public static float[][] point2grid(float[] lon, float[] lat,
+                                       float[][] data3D, float scaleLength,
+                                       float gain, int numPasses) {
+        BarnesEngine engine = new BarnesEngine(lon, lat, data3D,
+                                               scaleLength);
+        float[][] grid = new float[engine.numX][engine.numY];
+        engine.passOne(grid, scaleLength);
+        float[] differences = new float[engine.values.length];
+        engine.setDifferences(grid, differences, false);
+        engine.passes(grid, differences, scaleLength * gain, numPasses);
+        return grid;
+    }
+
+    /**
+     * Do the analysis starting from a first guess rather than from a first
+     * pass over the obs
+     *
+     * @param lon the longitudes on the grid (degrees)
+     * @param lat the latitudes on the grid (degrees)
+     * @param data3D data3D[0] = ob longitudes, data3D[1] = ob latitudes,
+     *               data3D[2] = ob values
+     * @param firstGuess the first guess, float[numLon][numLat]. Missing
+     *                   values are set to the mean of the obs.
+     * @param scaleLength the Gaussian scale length (grid units)
+     * @param gain factor by which the scale length is reduced after the
+     *             first pass
+     * @param numPasses number of passes
+     *
+     * @return the grid, float[numLon][numLat]
+     */
+    public static float[][] point2grid(float[] lon, float[] lat,
+                                       float[][] data3D,
+                                       float[][] firstGuess,
+                                       float scaleLength, float gain,
+                                       int numPasses) {
+        float scale = Math.max(scaleLength, scaleLength * gain);
+        BarnesEngine engine = new BarnesEngine(lon, lat, data3D, scale);
+        float[]      obValues = data3D[2];
+        float        mean     = 0;
+        for (int k = 0; k < obValues.length; k++) {
+            mean += obValues[k];
+        }
+        mean = (obValues.length == 0)
+               ? Float.NaN
+               : mean / obValues.length;
+        float[][] grid = new float[engine.numX][];
+        for (int i = 0; i < engine.numX; i++) {
+            grid[i] = (float[]) firstGuess[i].clone();
+            for (int j = 0; j < engine.numY; j++) {
+                if (Float.isNaN(grid[i][j])) {
+                    grid[i][j] = mean;
+                }
+            }
+        }
+        float[] differences = new float[engine.values.length];
+        engine.setDifferences(grid, differences, false);
+        //The first guess stands in for the first pass so do one
+        //correction pass with the full scale length and then the rest
+        engine.passes(grid, differences, scaleLength, 2);
+        engine.passes(grid, differences, scaleLength * gain, numPasses);
+        return grid;
+    }
+
+    /**
+     * Put the obs into the index. Obs with no location (e.g., outside of
+     * the projection of a first guess) are left out since they are never
+     * close enough to a grid point.
+     *
+     * @param obX ob x (grid units)
+     * @param obY ob y (grid units)
+     * @param obValues ob values
+     * @param radius the radius of influence (grid units)
+     */
+    private void index(float[] obX, float[] obY, float[] obValues,
+                       float radius) {
+        int   numObs = 0;
+        float maxX   = 0;
+        float maxY   = 0;
+        for (int k = 0; k < obX.length; k++) {
+            if (Float.isNaN(obX[k] + obY[k])
+                    || Float.isInfinite(obX[k] + obY[k])) {
+                continue;
+            }
+            if ((numObs == 0) || (obX[k] < minX)) {
+                minX = obX[k];
+            }
+            if ((numObs == 0) || (obX[k] > maxX)) {
+                maxX = obX[k];
+            }
+            if ((numObs == 0) || (obY[k] < minY)) {
+                minY = obY[k];
+            }
+            if ((numObs == 0) || (obY[k] > maxY)) {
+                maxY = obY[k];
+            }
+            numObs++;
+        }
+        xs     = new float[numObs];
+        ys     = new float[numObs];
+        values = new float[numObs];
+        float spanX = maxX - minX;
+        float spanY = maxY - minY;
+        cellSize = ((radius > 1) && !Float.isInfinite(radius))
+                   ? radius
+                   : 1;
+        //Don't make many more cells than obs when the radius is small
+        while (true) {
+            numCellsX = (int) (spanX / cellSize) + 1;
+            numCellsY = (int) (spanY / cellSize) + 1;
+            if ((long) numCellsX * numCellsY
+                    <= (long) CELLS_PER_OB * numObs + 1) {
+                break;
+            }
+            cellSize *= 2;
+        }
+        int[] cells = new int[obX.length];
+        cellStart = new int[numCellsX * numCellsY + 1];
+        for (int k = 0; k < obX.length; k++) {
+            if (Float.isNaN(obX[k] + obY[k])
+                    || Float.isInfinite(obX[k] + obY[k])) {
+                cells[k] = -1;
+                continue;
+            }
+            cells[k] = getCellY(obY[k]) * numCellsX + getCellX(obX[k]);
+            cellStart[cells[k] + 1]++;
+        }
+        for (int c = 0; c < numCellsX * numCellsY; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] next = (int[]) cellStart.clone();
+        for (int k = 0; k < obX.length; k++) {
+            if (cells[k] < 0) {
+                continue;
+            }
+            int to = next[cells[k]]++;
+            xs[to]     = obX[k];
+            ys[to]     = obY[k];
+            values[to] = obValues[k];
+        }
+    }
+
+    /**
+     * Get the column of cells that holds the x
+     *
+     * @param x the x (grid units)
+     *
+     * @return the cell column, clipped to the index
+     */
+    private int getCellX(float x) {
+        return clip((int) Math.floor((x - minX) / cellSize), numCellsX);
+    }
+
+    /**
+     * Get the row of cells that holds the y
+     *
+     * @param y the y (grid units)
+     *
+     * @return the cell row, clipped to the index
+     */
+    private int getCellY(float y) {
+        return clip((int) Math.floor((y - minY) / cellSize), numCellsY);
+    }
+
+    /**
+     * Clip the index to 0 - size-1
+     *
+     * @param index the index
+     * @param size the size
+     *
+     * @return the clipped index
+     */
+    private static int clip(int index, int size) {
+        return (index < 0)
+               ? 0
+               : (index >= size)
+                 ? size - 1
+                 : index;
+    }
+
+    /**
+     * Get the square of the distance past which an ob weighs less than
+     * EPSILON
+     *
+     * @param scaleLength the scale length
+     *
+     * @return the radius of influence squared
+     */
+    private static float getRadiusOfInfluence2(float scaleLength) {
+        return -(scaleLength * scaleLength) * (float) Math.log(EPSILON);
+    }
+
+    /**
+     * Do the first pass, the weighted average of the ob values at each
+     * grid point. Grid points with no obs close enough are missing.
+     *
+     * @param grid the grid
+     * @param scaleLength the scale length
+     */
+    private void passOne(final float[][] grid, float scaleLength) {
+        final float scaleLength2 = scaleLength * scaleLength;
+        final float radius2      = getRadiusOfInfluence2(scaleLength);
+        final float radius       = (float) Math.sqrt(radius2);
+        forRanges(numX, new Range() {
+            void apply(int from, int to) {
+                float[] sums = new float[2];
+                for (int i = from; i < to; i++) {
+                    for (int j = 0; j < numY; j++) {
+                        sum(i, j, values, scaleLength2, radius2, radius,
+                            sums);
+                        grid[i][j] = (sums[0] > EPSILON)
+                                     ? sums[1] / sums[0]
+                                     : Float.NaN;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Do passes 2 to numPasses. Each pass adds the weighted average of the
+     * differences between the obs and the grid to the grid.
+     *
+     * @param grid the grid
+     * @param differences the differences at the obs. These are updated
+     *                    after each pass but the last.
+     * @param scaleLength the scale length
+     * @param numPasses the number of passes
+     */
+    private void passes(final float[][] grid, final float[] differences,
+                        float scaleLength, int numPasses) {
+        final float scaleLength2 = scaleLength * scaleLength;
+        final float radius2      = getRadiusOfInfluence2(scaleLength);
+        final float radius       = (float) Math.sqrt(radius2);
+        for (int pass = 2; pass <= numPasses; pass++) {
+            forRanges(numX, new Range() {
+                void apply(int from, int to) {
+                    float[] sums = new float[2];
+                    for (int i = from; i < to; i++) {
+                        for (int j = 0; j < numY; j++) {
+                            sum(i, j, differences, scaleLength2, radius2,
+                                radius, sums);
+                            if (sums[0] > EPSILON) {
+                                grid[i][j] += sums[1] / sums[0];
+                            }
+                        }
+                    }
+                }
+            });
+            //The last pass isn't followed by a correction
+            if (pass < numPasses) {
+                setDifferences(grid, differences, true);
+            }
+        }
+    }
+
+    /**
+     * Sum the weights and the weighted values of the obs around the grid
+     * point. Missing values are skipped.
+     *
+     * @param i grid x
+     * @param j grid y
+     * @param obValues the values, in cell order
+     * @param scaleLength2 the scale length squared
+     * @param radius2 the radius of influence squared
+     * @param radius the radius of influence
+     * @param sums holds the sum of the weights and of the weighted values
+     */
+    private void sum(int i, int j, float[] obValues, float scaleLength2,
+                     float radius2, float radius, float[] sums) {
+        float sumWeights = 0.0f;
+        float sumValues  = 0.0f;
+        int   cellX1     = getCellX(i - radius);
+        int   cellX2     = getCellX(i + radius);
+        int   cellY2     = getCellY(j + radius);
+        for (int cellY = getCellY(j - radius); cellY <= cellY2; cellY++) {
+            //The cells of a row are next to each other
+            int end = cellStart[cellY * numCellsX + cellX2 + 1];
+            for (int k = cellStart[cellY * numCellsX + cellX1]; k < end;
+                    k++) {
+                float dx = xs[k] - (float) i;
+                float dy = ys[k] - (float) j;
+                float r2 = dx * dx + dy * dy;
+                if ((r2 < radius2) && !Float.isNaN(obValues[k])) {
+                    float weight = (float) Math.exp(-r2 / scaleLength2);
+                    sumWeights += weight;
+                    sumValues  += obValues[k] * weight;
+                }
+            }
+        }
+        sums[0] = sumWeights;
+        sums[1] = sumValues;
+    }
+
+    /**
+     * Set the differences between the obs and the grid interpolated to them
+     *
+     * @param grid the grid
+     * @param differences the differences
+     * @param skipMissing if true then leave the difference as it was when
+     *                    the interpolated value is missing
+     */
+    private void setDifferences(final float[][] grid,
+                                final float[] differences,
+                                final boolean skipMissing) {
+        forRanges(values.length, new Range() {
+            void apply(int from, int to) {
+                for (int k = from; k < to; k++) {
+                    //scinex indexes from 1
+                    float interpolated = Barnes.scinex(xs[k] + 1, ys[k] + 1,
+                                             grid);
+                    if ( !skipMissing || !Float.isNaN(interpolated)) {
+                        differences[k] = values[k] - interpolated;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Split 0 - n-1 into ranges and apply the range to them in parallel
+     *
+     * @param n the number of items
+     * @param range what to do
+     */
+    private static void forRanges(final int n, final Range range) {
+        int numRanges = Math.min(n, 4 * TrajectoryEngine.getParallelism());
+        if (numRanges <= 1) {
+            range.apply(0, n);
+            return;
+        }
+        List<Callable> tasks = new ArrayList<Callable>();
+        for (int r = 0; r < numRanges; r++) {
+            final int from = (int) ((long) n * r / numRanges);
+            final int to   = (int) ((long) n * (r + 1) / numRanges);
+            tasks.add(new Callable() {
+                public Object call() {
+                    range.apply(from, to);
+                    return null;
+                }
+            });
+        }
+        try {
+            StencilEngine.runAll(tasks);
+        } catch (RuntimeException rte) {
+            throw rte;
+        } catch (Exception exc) {
+            throw new WrapperException(exc);
+        }
+    }
+
+    /**
+     * Get the min value
+     *
+     * @param values the values
+     *
+     * @return the min
+     */
+    private static float min(float[] values) {
+        float min = values[0];
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] < min) {
+                min = values[i];
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Work on a range of items
+     */
+    private abstract static class Range {
+
+        /**
+         * Do the items
+         *
+         * @param from first item
+         * @param to one past the last item
+         */
+        abstract void apply(int from, int to);
+    }
+}
@@ -58,6 +58,7 @@ import ucar.nc2.util.IOIterator;
 import ucar.unidata.data.DataChoice;
 import ucar.unidata.data.DataUtil;
 import ucar.unidata.data.grid.GridUtil;
+import ucar.unidata.data.grid.StencilEngine;
 import ucar.unidata.data.sounding.CDMProfileFeatureTypeInfo;
 import ucar.unidata.data.sounding.CDMTrajectoryFeatureTypeInfo;
 import ucar.unidata.geoloc.LatLonPointImpl;
@@ -121,6 +122,7 @@ import java.io.*;
 import java.rmi.RemoteException;
 
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 
 
@@ -3918,7 +3920,8 @@ public class PointObFactory {
     }
 
     /**
-     * Perform an object analysis on a set of point obs
+     * Perform an object analysis on a set of point obs. The times are
+     * analyzed in parallel.
      *
      * @param pointObs        Observations to analyze
      * @param type            RealTypes of parameter
@@ -3933,10 +3936,11 @@ public class PointObFactory {
      * @throws RemoteException Java RMI error
      * @throws VisADException  problem getting the data
      */
-    public static FieldImpl barnes(FieldImpl pointObs, RealType type,
-                                   float xSpacing, float ySpacing,
-                                   int numPasses, float gain,
-                                   float scaleLength,
+    public static FieldImpl barnes(FieldImpl pointObs, final RealType type,
+                                   final float xSpacing,
+                                   final float ySpacing,
+                                   final int numPasses, final float gain,
+                                   final float scaleLength,
                                    Barnes.AnalysisParameters params,
                                    FieldImpl firstGuessField)
             throws VisADException, RemoteException {
@@ -3955,6 +3959,9 @@ public class PointObFactory {
         if (GridUtil.isTimeSequence(pointObs)) {
             Set timeSet = GridUtil.getTimeSet(pointObs);
             int errorCount = 0;
+            List<Callable> tasks = new ArrayList<Callable>();
+            final Barnes.AnalysisParameters[] timeParams =
+                    new Barnes.AnalysisParameters[timeSet.getLength()];
             for (int i = 0; i < timeSet.getLength(); i++) {
                 if (haveGuess) {
                     if (guessIsTime) {
@@ -3973,10 +3980,24 @@ public class PointObFactory {
                         errorCount++;
                     }
                 }
-                FieldImpl oneTime =
-                        barnesOneTime((FieldImpl) pointObs.getSample(i), type,
-                                xSpacing, ySpacing, numPasses, gain,
-                                scaleLength, params, guessField);
+                // each time gets its own params so they don't step on each other
+                if (params != null) {
+                    timeParams[i] = new Barnes.AnalysisParameters(0, 0, 0, 0);
+                }
+                final Barnes.AnalysisParameters oneParams = timeParams[i];
+                final FieldImpl oneObs = (FieldImpl) pointObs.getSample(i);
+                final FlatField oneGuess = guessField;
+                tasks.add(new Callable() {
+                    public Object call() throws Exception {
+                        return barnesOneTime(oneObs, type, xSpacing,
+                                ySpacing, numPasses, gain, scaleLength,
+                                oneParams, oneGuess);
+                    }
+                });
+            }
+            List results = runInParallel(tasks);
+            for (int i = 0; i < results.size(); i++) {
+                FieldImpl oneTime = (FieldImpl) results.get(i);
                 if ((retFI == null) && (oneTime != null)) {
                     FunctionType ft =
                             new FunctionType(
@@ -3986,6 +4007,15 @@ public class PointObFactory {
                 }
                 if (oneTime != null) {
                     retFI.setSample(i, oneTime, false);
+                    // pass back the values of the last time, as before
+                    if (params != null) {
+                        params.setGridXArray(
+                                timeParams[i].getGridXArray());
+                        params.setGridYArray(
+                                timeParams[i].getGridYArray());
+                        params.setScaleLengthGU(
+                                timeParams[i].getScaleLengthGU());
+                    }
                 }
             }
         } else {
@@ -4004,6 +4034,27 @@ public class PointObFactory {
         return retFI;
     }
 
+    /**
+     * Run the tasks on the shared pool
+     *
+     * @param tasks the tasks
+     * @return the results, in the order of the tasks
+     * @throws RemoteException Java RMI error
+     * @throws VisADException  problem running a task
+     */
+    private static List runInParallel(List<Callable> tasks)
+            throws VisADException, RemoteException {
+        try {
+            return StencilEngine.runAll(tasks);
+        } catch (VisADException ve) {
+            throw ve;
+        } catch (RemoteException re) {
+            throw re;
+        } catch (Exception exc) {
+            throw new WrapperException(exc);
+        }
+    }
+
     /**
      * Do the analysis on the single time.  Should be of the structure:
      * (index -> PointOb)
@@ -4101,7 +4152,7 @@ public class PointObFactory {
             Tuple obData = (Tuple) po.getData();
             Real val = (Real) obData.getComponent(typeIndex);
             //if (i == 0) System.out.println("val["+i+"] ="+ val.toValueString() + ">"+val.getUnit()+"<");
-            double obVal = val.getValue(type.getDefaultUnit());
+            double obVal = val.getValue(outputUnits);
             if (Double.isNaN(obVal)) {
                 numMissing++;
                 continue;
@@ -4253,11 +4304,11 @@ public class PointObFactory {
         if (firstGuess != null) {
             float[][] gridVals =
                     GridUtil.makeGrid2D(firstGuess).getvalues()[0];
-            griddedData = Barnes.point2grid(faGridX, faGridY, obVals,
+            griddedData = BarnesEngine.point2grid(faGridX, faGridY, obVals,
                     gridVals, scaleLength, gain,
                     numPasses);
         } else {
-            griddedData = Barnes.point2grid(faGridX, faGridY, obVals,
+            griddedData = BarnesEngine.point2grid(faGridX, faGridY, obVals,
                     scaleLength, gain, numPasses);
         }
 
@@ -53,6 +53,11 @@ import java.awt.event.*;
 
 import java.io.*;
 
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+
 
 import java.rmi.RemoteException;
 
@@ -482,17 +487,157 @@ public class TextPointDataSource extends PointDataSource {
             source = source.replace("%maxcount%", "1000000");
         }
 
-        //        System.out.println("URL:"+source);
-        String contents = getContents(source, sampleIt);
-        //      System.out.println(contents);
         String delim = (delimiter != null)
                        ? delimiter
                        : getDelimiter(source);
+        if ( !sampleIt && (trackParam == null) && canReadColumns(source)) {
+            TextPointParser parser = readColumns(source, delim);
+            if (parser != null) {
+                List tlist = null;
+                if (subset != null) {
+                    tlist = subset.getTimeDriverTimes();
+                }
+                FieldImpl obs = makePointObs(parser, tlist);
+                if ((fieldsDescription == null) && (obs != null)) {
+                    makeFieldDescription(obs);
+                }
+                if (bbox != null) {
+                    obs = PointObFactory.subSet(obs, bbox);
+                }
+                metaDataOk = true;
+                return obs;
+            }
+        }
+
+        //        System.out.println("URL:"+source);
+        String contents = getContents(source, sampleIt);
+        //      System.out.println(contents);
         return makeObs(contents, delim, subset, bbox, trackParam, sampleIt,
                        showAttributeGuiIfNeeded);
     }
 
 
+    /**
+     * Can the given source be read straight into columns with the
+     * {@link TextPointParser}. Derived classes that change the text in
+     * getContents or make the obs themselves, xls files and any
+     * StreamProcessor or data properties all go through the TextAdapter.
+     *
+     * @param source the file or url
+     *
+     * @return true if we can try to read it into columns
+     */
+    protected boolean canReadColumns(String source) {
+        if (source.endsWith(".xls") || (streamProcessor != null)
+                || ((dataProperties != null) && (dataProperties.size() > 0))) {
+            return false;
+        }
+        for (Class c = getClass(); !c.equals(TextPointDataSource.class);
+                c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod("getContents", String.class,
+                                    Boolean.TYPE);
+                return false;
+            } catch (NoSuchMethodException nsme) {}
+            try {
+                c.getDeclaredMethod("makeObs", String.class, String.class,
+                                    DataSelection.class, LatLonRect.class,
+                                    String.class, Boolean.TYPE,
+                                    Boolean.TYPE);
+                return false;
+            } catch (NoSuchMethodException nsme) {}
+        }
+        return true;
+    }
+
+
+    /**
+     * Read the source into columns with the {@link TextPointParser}.
+     * Local files are read through a FileChannel and urls through a
+     * channel on the url's input stream.
+     *
+     * @param source the file or url
+     * @param delimiter the delimiter
+     *
+     * @return the parser holding the columns or null if the header is one
+     * the parser does not handle
+     *
+     * @throws Exception On badness
+     */
+    private TextPointParser readColumns(String source, String delimiter)
+            throws Exception {
+        initHeaderProperties(delimiter);
+        if ((dataProperties != null) && (dataProperties.size() > 0)) {
+            return null;
+        }
+        TextPointParser parser = new TextPointParser(delimiter, skipRows,
+                                     skipPattern);
+        File                file    = new File(source);
+        ReadableByteChannel channel = (file.exists()
+                                       ? FileChannel.open(file.toPath(),
+                                           StandardOpenOption.READ)
+                                       : Channels.newChannel(
+                                           IOUtil.getInputStream(source,
+                                               getClass())));
+        try {
+            if ( !parser.readHeader(channel, map, params)) {
+                return null;
+            }
+            //Leave any units we can't parse to the TextAdapter
+            for (TextPointParser.Column column : parser.getColumns()) {
+                if ((column.getUnit() != null)
+                        && (DataUtil.parseUnit(column.getUnit()) == null)) {
+                    return null;
+                }
+            }
+            parser.readData();
+        } finally {
+            channel.close();
+        }
+        return parser;
+    }
+
+
+    /**
+     * Initialize the map, params, skip rows and skip pattern from the
+     * properties if they have not been set
+     *
+     * @param delimiter The delimiter
+     *
+     * @throws Exception On badness
+     */
+    private void initHeaderProperties(String delimiter) throws Exception {
+        if ((params == null) || (params.length() == 0)) {
+            params = getProperty(PROP_HEADER_PARAMS, (String) null);
+        }
+        if ((map == null) || (map.length() == 0)) {
+            map = getProperty(PROP_HEADER_MAP, (String) null);
+        }
+        if (skipRows == 0) {
+            skipRows = getProperty(PROP_HEADER_SKIP, skipRows);
+        }
+
+        if (skipPattern == null) {
+            skipPattern = getProperty(PROP_HEADER_SKIPPATTERN, (String) null);
+            if ((skipPattern != null) && (skipPattern.length() == 0)) {
+                skipPattern = null;
+            }
+        }
+
+
+        String blob = getProperty(PROP_HEADER_BLOB, (String) null);
+        if ((blob != null) && (metaDataFields.size() == 0)) {
+            Object object = getDataContext().getIdv().decodeObject(blob);
+            if (object instanceof List) {
+                object = new Metadata(-1, delimiter, null, (List) object);
+            }
+            Metadata metadata = (Metadata) object;
+            metaDataFields = metadata.getItems();
+            applySavedMetaData(metadata);
+        }
+    }
+
+
 
     /**
      * Get the delimiter to use for the given file. If its xls then use ','
@@ -588,38 +733,7 @@ public class TextPointDataSource extends PointDataSource {
             TextAdapter ta = null;
             try {
                 String extra = getProperty(PROP_HEADER_EXTRA, (String) null);
-                if ((params == null) || (params.length() == 0)) {
-                    params = getProperty(PROP_HEADER_PARAMS, (String) null);
-                }
-                if ((map == null) || (map.length() == 0)) {
-                    map = getProperty(PROP_HEADER_MAP, (String) null);
-                }
-                if (skipRows == 0) {
-                    skipRows = getProperty(PROP_HEADER_SKIP, skipRows);
-                }
-
-                if (skipPattern == null) {
-                    skipPattern = getProperty(PROP_HEADER_SKIPPATTERN,
-                            (String) null);
-                    if ((skipPattern != null)
-                            && (skipPattern.length() == 0)) {
-                        skipPattern = null;
-                    }
-                }
-
-
-                String blob = getProperty(PROP_HEADER_BLOB, (String) null);
-                if ((blob != null) && (metaDataFields.size() == 0)) {
-                    Object object =
-                        getDataContext().getIdv().decodeObject(blob);
-                    if (object instanceof List) {
-                        object = new Metadata(-1, delimiter, null,
-                                (List) object);
-                    }
-                    Metadata metadata = (Metadata) object;
-                    metaDataFields = metadata.getItems();
-                    applySavedMetaData(metadata);
-                }
+                initHeaderProperties(delimiter);
 
                 InputStream inputStream = getInputStream(contents);
                 long        t1          = System.currentTimeMillis();
@@ -2154,7 +2268,6 @@ public class TextPointDataSource extends PointDataSource {
             Real      dfltReal         = getDefaultValue();
 
 
-            TupleType finalTT          = null;
             TupleType dataTupleType    = null;
             Unit[]    dataUnits        = null;
 
@@ -2188,39 +2301,12 @@ public class TextPointDataSource extends PointDataSource {
               //  throw new IllegalArgumentException("can't find lat/lon");
             //}
 
-            int numVars        = type.getDimension();
-            int numNotRequired = numVars - ((altIndex != -1)
-                                            ? 4
-                                            : 3);
-            if((latIndex == -1) && (lonIndex == -1))
-                numNotRequired = numNotRequired + 2;
-            if (timeIndex == -1) {
-                numNotRequired++;
-            }
-            //System.out.println("Of " + numVars + " vars, " + numNotRequired + 
-            //                   " are not required");
-
-            int[] notReqIndices = new int[numNotRequired];
-
-            int   l             = 0;
-            if((latIndex != -1) && (lonIndex != -1)) {
-                for (int i = 0; i < numVars; i++) {
-                    if ((i != timeIndex) && (i != latIndex) && (i != lonIndex)
-                            && (i != altIndex)) {
-                        notReqIndices[l++] = i;
-                    }
-                }
-            } else {
-                this.hasLatLon = false;
-                for (int i = 0; i < numVars; i++) {
-                    if ((i != timeIndex)) {
-                        notReqIndices[l++] = i;
-                    }
-                }
-            }
+            int[] notReqIndices  = getNotRequiredIndices(type.getDimension(),
+                                       timeIndex, latIndex, lonIndex,
+                                       altIndex);
+            int   numNotRequired = notReqIndices.length;
 
             int            numObs       = pointData.size();
-            PointOb[]      obs          = new PointObTuple[numObs];
             List           times        = new ArrayList();
             List           locations    = new ArrayList();
             List           tuples       = new ArrayList();
@@ -2460,87 +2546,375 @@ public class TextPointDataSource extends PointDataSource {
 
 
 
-            times = PointObFactory.binTimes(times, getBinRoundTo(),
-                                            getBinWidth());
+            retField = makePointObField(times, tuples, locations, dTimes);
 
+        } catch (RemoteException re) {
+            throw new VisADException("got RemoteException " + re);
+        }
+        //System.out.println("Making point obs took " + (System.currentTimeMillis() - millis));
+        return retField;
+    }
 
-            if(dTimes != null){
-                int jj = 0;
-                PointOb[]      obs0          = new PointObTuple[numObs];
-                List<DateTime> matches = null;
-                try {
-                    matches = DataUtil.selectTimesFromList(times, dTimes);
-                } catch (Exception e){}
 
-                if(matches == null || matches.size() == 0) {
-                    throw new IllegalStateException(
-                            "Could not match the driver times");
-                }
 
-                for (int i = 0; i < numObs; i++) {
-                    DateTime sDate = (DateTime)times.get(i);
 
-                    if (matches.contains(sDate)) {
-                        Data rest = (Data) tuples.get(i);
-                        EarthLocationLite location =
-                                (EarthLocationLite) locations.get(i);
-                        if (finalTT == null) {
-                            PointObTuple pot = new PointObTuple(location, sDate,
-                                    rest);
-                            obs0[jj] = pot;
-                            finalTT = Tuple.buildTupleType(pot.getComponents());
+    /**
+     * Make point obs from the columns read by a {@link TextPointParser}.
+     * This makes the same obs as makePointObs does from the list of
+     * tuples but goes straight from the column arrays to the DoubleTuple-s
+     * without making a Real or Text for each value.
+     *
+     * @param parser  the parser that has read the data
+     * @param dTimes  the driver times. May be null.
+     *
+     * @return a field of point obs
+     *
+     * @throws VisADException  problem making VisAD Data
+     */
+    private FieldImpl makePointObs(TextPointParser parser,
+                                   List<DateTime> dTimes)
+            throws VisADException {
+
+        int numObs = parser.getNumRows();
+        if (numObs == 0) {
+            return null;
+        }
+        varNames = new ArrayList<String>();
+        List<TextPointParser.Column> columns = parser.getColumns();
+        int                          numVars = columns.size();
+        ScalarType[]                 columnTypes    =
+            new ScalarType[numVars];
+        Unit[]                       columnUnits    = new Unit[numVars];
+        boolean                      allColumnsReal = true;
+        for (int i = 0; i < numVars; i++) {
+            TextPointParser.Column column = columns.get(i);
+            if (column.isText()) {
+                columnTypes[i]  = TextType.getTextType(column.getName());
+                allColumnsReal = false;
+                continue;
+            }
+            Unit unit = null;
+            if (column.getFormat() != null) {
+                unit = CommonUnit.secondsSinceTheEpoch;
+            } else if (column.getUnit() != null) {
+                unit = DataUtil.parseUnit(column.getUnit());
+            }
+            RealType realType = ((unit == null)
+                                 ? RealType.getRealType(column.getName())
+                                 : RealType.getRealType(column.getName(),
+                                     unit));
+            if (realType == null) {
+                realType = DataUtil.makeRealType(column.getName(), unit);
+            }
+            columnTypes[i] = realType;
+            columnUnits[i] = ((unit != null)
+                              ? unit
+                              : realType.getDefaultUnit());
+        }
+        TupleType type = (allColumnsReal
+                          ? new RealTupleType(Arrays.copyOf(columnTypes,
+                              numVars, RealType[].class))
+                          : new TupleType(columnTypes));
+
+        int timeIndex = -1;
+        for (int i = 0; i < timeVars.length; i++) {
+            timeIndex = type.getIndex(timeVars[i]);
+            if (timeIndex > -1) {
+                break;
+            }
+        }
+        int[] latLonAltIndices = findLatLonAltIndices(type);
+        int   latIndex         = latLonAltIndices[0];
+        int   lonIndex         = latLonAltIndices[1];
+        int   altIndex         = latLonAltIndices[2];
+        if (altIndex >= 0) {
+            varNames.add("Altitude");
+        }
+        int[] notReqIndices  = getNotRequiredIndices(numVars, timeIndex,
+                                   latIndex, lonIndex, altIndex);
+        int   numNotRequired = notReqIndices.length;
+
+        Real  dfltReal       = getDefaultValue();
+        List  numericTypes   = new ArrayList();
+        List  numericUnits   = new ArrayList();
+        List  stringTypes    = new ArrayList();
+        if (numNotRequired > 0) {
+            for (int varIdx = 0; varIdx < numNotRequired; varIdx++) {
+                int idx = notReqIndices[varIdx];
+                if (columns.get(idx).isText()) {
+                    stringTypes.add(columnTypes[idx]);
+                } else {
+                    numericTypes.add(columnTypes[idx]);
+                    numericUnits.add(columnUnits[idx]);
+                    varNames.add(((RealType) columnTypes[idx]).getName());
+                }
+            }
+        } else {
+            varNames.add(((RealType) dfltReal.getType()).getName());
+            numericTypes.add(dfltReal.getType());
+            numericUnits.add(dfltReal.getUnit());
+        }
+        int       numReals     = numericTypes.size();
+        int       numStrings   = stringTypes.size();
+        boolean   allReals     = numStrings == 0;
+        TupleType allTupleType = allReals
+                                 ? new RealTupleType(
+                                     (RealType[]) numericTypes.toArray(
+                                         new RealType[numReals]))
+                                 : DoubleStringTuple.makeTupleType(
+                                     numericTypes, stringTypes);
+        Unit[] allUnits = (Unit[]) numericUnits.toArray(new Unit[numReals]);
+
+        //Put the locations into the default units and the times into
+        //seconds since the epoch
+        double[] lats  = getDefaultValues(columns, columnUnits, latIndex,
+                                          RealType.Latitude);
+        double[] lons  = getDefaultValues(columns, columnUnits, lonIndex,
+                                          RealType.Longitude);
+        double[] alts  = getDefaultValues(columns, columnUnits, altIndex,
+                                          RealType.Altitude);
+        double[] secs  = getDefaultValues(columns, columnUnits, timeIndex,
+                                          RealType.Time);
+        Real     dfltAlt  = new Real(RealType.Altitude, 1);
+        DateTime dfltTime = new DateTime(new java.util.Date());
+
+        List times     = new ArrayList(numObs);
+        List locations = new ArrayList(numObs);
+        List tuples    = new ArrayList(numObs);
+        try {
+            Data[]   prototype = null;
+            DateTime lastTime  = dfltTime;
+            for (int i = 0; i < numObs; i++) {
+                double[] realArray   = new double[numReals];
+                String[] stringArray = ((numStrings == 0)
+                                        ? null
+                                        : new String[numStrings]);
+                if (numNotRequired > 0) {
+                    int realCnt   = 0;
+                    int stringCnt = 0;
+                    for (int varIdx = 0; varIdx < numNotRequired; varIdx++) {
+                        TextPointParser.Column column =
+                            columns.get(notReqIndices[varIdx]);
+                        if (column.isText()) {
+                            stringArray[stringCnt++] =
+                                column.getStrings()[i];
                         } else {
-                            obs0[jj] = new PointObTuple(location, sDate, rest,
-                                    finalTT, false);
+                            realArray[realCnt++] = column.getValues()[i];
                         }
-                        jj++;
                     }
+                } else {
+                    realArray[0] = (alts != null)
+                                   ? alts[i]
+                                   : dfltAlt.getValue(CommonUnit.meter);
                 }
-                PointOb[]      obs1          = new PointObTuple[jj];
-                System.arraycopy(obs0, 0, obs1, 0, jj);
-                Integer1DSet indexSet =
-                        new Integer1DSet(RealType.getRealType("index"), jj);
-                retField = new FieldImpl(
-                        new FunctionType(
-                                ((SetType) indexSet.getType()).getDomain(),
-                                obs1[0].getType()), indexSet);
-                retField.setSamples(obs1, false, false);
 
-            } else {
-                for (int i = 0; i < numObs; i++) {
-                    DateTime dateTime = (DateTime) times.get(i);
+                Tuple tuple = (allReals
+                               ? (Tuple) new DoubleTuple(
+                                   (RealTupleType) allTupleType, prototype,
+                                   realArray, allUnits)
+                               : new DoubleStringTuple(allTupleType,
+                                   prototype, realArray, stringArray,
+                                   allUnits));
+                if (prototype == null) {
+                    prototype = tuple.getComponents();
+                }
+                tuples.add(tuple);
+
+                locations.add(new EarthLocationLite((lats != null)
+                        ? lats[i]
+                        : 1, (lons != null)
+                             ? lons[i]
+                             : 1, (alts != null)
+                                  ? alts[i]
+                                  : 1));
+                //Obs are usually grouped by time so reuse the last one
+                if ((secs != null)
+                        && ((lastTime == dfltTime)
+                            || (lastTime.getValue() != secs[i]))) {
+                    lastTime = new DateTime(secs[i]);
+                }
+                times.add(lastTime);
+            }
+            return makePointObField(times, tuples, locations, dTimes);
+        } catch (RemoteException re) {
+            throw new VisADException("got RemoteException " + re);
+        }
+    }
+
+
+    /**
+     * Get the values of the column in the default unit of the type
+     *
+     * @param columns the columns
+     * @param units the unit of each column
+     * @param index the column index. May be -1.
+     * @param type the type whose default unit we want
+     *
+     * @return the values or null if index is -1
+     *
+     * @throws VisADException  units are not convertible
+     */
+    private static double[] getDefaultValues(
+            List<TextPointParser.Column> columns, Unit[] units, int index,
+            RealType type)
+            throws VisADException {
+        if (index == -1) {
+            return null;
+        }
+        double[] values      = columns.get(index).getValues();
+        Unit     defaultUnit = type.getDefaultUnit();
+        if ((units[index] == null) || (defaultUnit == null)
+                || units[index].equals(defaultUnit)) {
+            return values;
+        }
+        return defaultUnit.toThis(values, units[index]);
+    }
+
+
+    /**
+     * Figure out which tuple components are not the time or location
+     *
+     * @param numVars number of components
+     * @param timeIndex index of time. May be -1.
+     * @param latIndex index of latitude. May be -1.
+     * @param lonIndex index of longitude. May be -1.
+     * @param altIndex index of altitude. May be -1.
+     *
+     * @return the indices of the other components
+     */
+    private int[] getNotRequiredIndices(int numVars, int timeIndex,
+                                        int latIndex, int lonIndex,
+                                        int altIndex) {
+        int numNotRequired = numVars - ((altIndex != -1)
+                                        ? 4
+                                        : 3);
+        if ((latIndex == -1) && (lonIndex == -1)) {
+            numNotRequired = numNotRequired + 2;
+        }
+        if (timeIndex == -1) {
+            numNotRequired++;
+        }
+        //System.out.println("Of " + numVars + " vars, " + numNotRequired + 
+        //                   " are not required");
+
+        int[] notReqIndices = new int[numNotRequired];
+
+        int   l             = 0;
+        if ((latIndex != -1) && (lonIndex != -1)) {
+            for (int i = 0; i < numVars; i++) {
+                if ((i != timeIndex) && (i != latIndex) && (i != lonIndex)
+                        && (i != altIndex)) {
+                    notReqIndices[l++] = i;
+                }
+            }
+        } else {
+            this.hasLatLon = false;
+            for (int i = 0; i < numVars; i++) {
+                if ((i != timeIndex)) {
+                    notReqIndices[l++] = i;
+                }
+            }
+        }
+        return notReqIndices;
+    }
+
+
+    /**
+     * Bin the times, pick out the obs that match the driver times
+     * and make the field of point obs
+     *
+     * @param times the DateTime of each ob
+     * @param tuples the data of each ob
+     * @param locations the EarthLocationLite of each ob
+     * @param dTimes the driver times. May be null.
+     *
+     * @return the field of point obs
+     *
+     * @throws RemoteException  Java RMI problem
+     * @throws VisADException  problem making VisAD Data
+     */
+    private FieldImpl makePointObField(List times, List tuples,
+                                       List locations, List<DateTime> dTimes)
+            throws VisADException, RemoteException {
+        int       numObs   = times.size();
+        TupleType finalTT  = null;
+        FieldImpl retField = null;
+        times = PointObFactory.binTimes(times, getBinRoundTo(),
+                                        getBinWidth());
+
+
+        if(dTimes != null){
+            int jj = 0;
+            PointOb[]      obs0          = new PointObTuple[numObs];
+            List<DateTime> matches = null;
+            try {
+                matches = DataUtil.selectTimesFromList(times, dTimes);
+            } catch (Exception e){}
+
+            if(matches == null || matches.size() == 0) {
+                throw new IllegalStateException(
+                        "Could not match the driver times");
+            }
+
+            for (int i = 0; i < numObs; i++) {
+                DateTime sDate = (DateTime)times.get(i);
+
+                if (matches.contains(sDate)) {
                     Data rest = (Data) tuples.get(i);
                     EarthLocationLite location =
                             (EarthLocationLite) locations.get(i);
                     if (finalTT == null) {
-                        PointObTuple pot = new PointObTuple(location, dateTime,
+                        PointObTuple pot = new PointObTuple(location, sDate,
                                 rest);
-                        obs[i] = pot;
+                        obs0[jj] = pot;
                         finalTT = Tuple.buildTupleType(pot.getComponents());
                     } else {
-                        obs[i] = new PointObTuple(location, dateTime, rest,
+                        obs0[jj] = new PointObTuple(location, sDate, rest,
                                 finalTT, false);
-
                     }
+                    jj++;
                 }
-                Integer1DSet indexSet =
-                        new Integer1DSet(RealType.getRealType("index"), obs.length);
-                retField = new FieldImpl(
-                        new FunctionType(
-                                ((SetType) indexSet.getType()).getDomain(),
-                                obs[0].getType()), indexSet);
-                retField.setSamples(obs, false, false);
             }
+            PointOb[]      obs1          = new PointObTuple[jj];
+            System.arraycopy(obs0, 0, obs1, 0, jj);
+            Integer1DSet indexSet =
+                    new Integer1DSet(RealType.getRealType("index"), jj);
+            retField = new FieldImpl(
+                    new FunctionType(
+                            ((SetType) indexSet.getType()).getDomain(),
+                            obs1[0].getType()), indexSet);
+            retField.setSamples(obs1, false, false);
 
-        } catch (RemoteException re) {
-            throw new VisADException("got RemoteException " + re);
+        } else {
+            PointOb[] obs = new PointObTuple[numObs];
+            for (int i = 0; i < numObs; i++) {
+                DateTime dateTime = (DateTime) times.get(i);
+                Data rest = (Data) tuples.get(i);
+                EarthLocationLite location =
+                        (EarthLocationLite) locations.get(i);
+                if (finalTT == null) {
+                    PointObTuple pot = new PointObTuple(location, dateTime,
+                            rest);
+                    obs[i] = pot;
+                    finalTT = Tuple.buildTupleType(pot.getComponents());
+                } else {
+                    obs[i] = new PointObTuple(location, dateTime, rest,
+                            finalTT, false);
+
+                }
+            }
+            Integer1DSet indexSet =
+                    new Integer1DSet(RealType.getRealType("index"), obs.length);
+            retField = new FieldImpl(
+                    new FunctionType(
+                            ((SetType) indexSet.getType()).getDomain(),
+                            obs[0].getType()), indexSet);
+            retField.setSamples(obs, false, false);
         }
-        //System.out.println("Making point obs took " + (System.currentTimeMillis() - millis));
         return retField;
     }
 
 
-
     /**
      * Find the lat/lon/alt indicides
      *
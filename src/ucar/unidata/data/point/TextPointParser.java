@@ -0,0 +1,1188 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.data.point;
+
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * Reads delimited point text into columns. The text is read through a
+ * channel a large chunk at a time and each chunk is split at line breaks
+ * and parsed in parallel. Numeric columns go straight into double arrays
+ * and text columns into String arrays so no per row visad Data is made.
+ * <p>
+ * This handles the common subset of the TextAdapter header: a flat map of
+ * names, params with unit, missing and (for Time) fmt attributes and skip
+ * columns. {@link #readHeader(ReadableByteChannel, String, String)} returns
+ * false for anything else and the caller should use the TextAdapter.
+ * <pre>
+ * TextPointParser parser = new TextPointParser(",", 0, null);
+ * if (parser.readHeader(channel, map, params)) {
+ *     parser.readData();
+ *     double[] lats = parser.getColumn("Latitude").getValues();
+ * }
+ * </pre>
+ */
+public class TextPointParser {
+
+    /** The name used in the params for columns that are skipped */
+    public static final String NAME_SKIP = "skip";
+
+    /** The name of the time column that can have a fmt */
+    public static final String NAME_TIME = "Time";
+
+    /** Default number of bytes to read at a time */
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    /** Don't split a full size chunk into pieces smaller than this */
+    private static final int MIN_TASK_SIZE = 256 * 1024;
+
+    /** Powers of ten that are exact as doubles */
+    private static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+        1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /** Matches the name=value attributes in a param */
+    private static final Pattern ATTR_PATTERN =
+        Pattern.compile("(\\w+)\\s*=\\s*(\"([^\"]*)\"|'([^']*)'|([^\\s\\]]+))");
+
+    /**
+     * Holds the values of one column
+     */
+    public static class Column {
+
+        /** name */
+        private String name;
+
+        /** is it text */
+        private boolean text = false;
+
+        /** unit spec. May be null */
+        private String unit;
+
+        /** date format for the Time column. May be null */
+        private String format;
+
+        /** The missing value */
+        private double missing = Double.NaN;
+
+        /** Do we have a missing value */
+        private boolean hasMissing = false;
+
+        /** The numeric values */
+        private double[] values;
+
+        /** The text values */
+        private String[] strings;
+
+        /**
+         * ctor
+         *
+         * @param name name
+         * @param text is it text
+         */
+        Column(String name, boolean text) {
+            this.name = name;
+            this.text = text;
+        }
+
+        /**
+         * Get the name
+         *
+         * @return the name without any (Text)
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Is this a text column
+         *
+         * @return is text
+         */
+        public boolean isText() {
+            return text;
+        }
+
+        /**
+         * Get the unit spec from the params
+         *
+         * @return the unit or null
+         */
+        public String getUnit() {
+            return unit;
+        }
+
+        /**
+         * Get the date format. If non-null the values are seconds since
+         * the epoch
+         *
+         * @return the date format or null
+         */
+        public String getFormat() {
+            return format;
+        }
+
+        /**
+         * Get the numeric values. Missing values are NaN.
+         *
+         * @return the values or null for a text column
+         */
+        public double[] getValues() {
+            return values;
+        }
+
+        /**
+         * Get the text values
+         *
+         * @return the values or null for a numeric column
+         */
+        public String[] getStrings() {
+            return strings;
+        }
+
+        /**
+         * to string
+         *
+         * @return to string
+         */
+        public String toString() {
+            return name + (text
+                           ? "(Text)"
+                           : "");
+        }
+    }
+
+    /**
+     * The values of one piece of a chunk
+     */
+    private static class Block {
+
+        /** start offset */
+        int from;
+
+        /** end offset */
+        int to;
+
+        /** numeric values for each column */
+        double[][] values;
+
+        /** text values for each column */
+        String[][] strings;
+
+        /** number of rows */
+        int numRows = 0;
+
+        /**
+         * ctor
+         *
+         * @param from start offset
+         * @param to end offset
+         */
+        Block(int from, int to) {
+            this.from = from;
+            this.to   = to;
+        }
+    }
+
+    /** the delimiter or 0 for white space */
+    private char delimiter;
+
+    /** Do we handle the delimiter */
+    private boolean delimiterOk = true;
+
+    /** number of lines to skip */
+    private int skipRows;
+
+    /** lines that match this are skipped */
+    private Pattern skipPattern;
+
+    /** The columns, in map order */
+    private List<Column> columns = new ArrayList<Column>();
+
+    /** The column for each field in a line. -1 to skip the field */
+    private int[] fieldColumns;
+
+    /** The number of rows read */
+    private int numRows = 0;
+
+    /** The channel to read from */
+    private ReadableByteChannel channel;
+
+    /** the bytes read */
+    private byte[] buffer;
+
+    /** The start of the bytes we haven't used in the buffer */
+    private int start = 0;
+
+    /** The end of the bytes in the buffer */
+    private int end = 0;
+
+    /** Have we read all of the channel */
+    private boolean eof = false;
+
+    /** Don't split a chunk into pieces smaller than this */
+    private int minTaskSize;
+
+    /** The pool to parse in */
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    /**
+     * Create the parser
+     *
+     * @param delimiter The field delimiter. A blank means runs of white
+     * space.
+     * @param skipRows number of lines to skip at the start
+     * @param skipPattern lines that match this regular expression are
+     * skipped. May be null.
+     */
+    public TextPointParser(String delimiter, int skipRows,
+                           String skipPattern) {
+        this(delimiter, skipRows, skipPattern, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Create the parser
+     *
+     * @param delimiter The field delimiter. A blank means runs of white
+     * space.
+     * @param skipRows number of lines to skip at the start
+     * @param skipPattern lines that match this regular expression are
+     * skipped. May be null.
+     * @param chunkSize number of bytes to read at a time
+     */
+    public TextPointParser(String delimiter, int skipRows,
+                           String skipPattern, int chunkSize) {
+        if ((delimiter == null) || (delimiter.trim().length() == 0)) {
+            this.delimiter = 0;
+        } else if (delimiter.length() == 1) {
+            this.delimiter = delimiter.charAt(0);
+        } else if (delimiter.equals("\\t")) {
+            this.delimiter = '\t';
+        } else {
+            delimiterOk = false;
+        }
+        this.skipRows    = skipRows;
+        this.skipPattern = ((skipPattern == null)
+                            || (skipPattern.length() == 0))
+                           ? null
+                           : Pattern.compile(skipPattern);
+        buffer      = new byte[Math.max(1024, chunkSize)];
+        minTaskSize = Math.min(MIN_TASK_SIZE, buffer.length / 16);
+    }
+
+    /**
+     * Set the pool to parse in. The default is the common pool.
+     *
+     * @param pool the pool
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Skip the rows and read the header. If the map or params are null
+     * they are read from the first lines of the text.
+     *
+     * @param channel what to read
+     * @param map the map, e.g., (index)-&gt;(Time,Latitude,Longitude,ST(Text))
+     * @param params the params
+     *
+     * @return false if the header is not one that can be handled here
+     *
+     * @throws IOException On badness
+     */
+    public boolean readHeader(ReadableByteChannel channel, String map,
+                              String params)
+            throws IOException {
+        this.channel = channel;
+        if ( !delimiterOk) {
+            return false;
+        }
+        fill();
+        //Lines that end with just a \r are left to the TextAdapter
+        if (indexOf((byte) '\n', start, end) < 0) {
+            if (indexOf((byte) '\r', start, end) >= 0) {
+                return false;
+            }
+        }
+        for (int i = 0; i < skipRows; i++) {
+            if (nextLine() == null) {
+                break;
+            }
+        }
+        if (map == null) {
+            map = nextHeaderLine();
+        }
+        if (params == null) {
+            params = nextHeaderLine();
+        }
+        if ((map == null) || (params == null)) {
+            return false;
+        }
+        return parseHeader(map, params);
+    }
+
+    /**
+     * Read the rest of the text into the columns
+     *
+     * @throws IOException On badness
+     */
+    public void readData() throws IOException {
+        int numColumns = columns.size();
+        for (int i = 0; i < numColumns; i++) {
+            Column column = columns.get(i);
+            if (column.text) {
+                column.strings = new String[1024];
+            } else {
+                column.values = new double[1024];
+            }
+        }
+        while (true) {
+            fill();
+            if (start >= end) {
+                break;
+            }
+            int parseEnd = end;
+            if ( !eof) {
+                int lastNewline = lastIndexOf((byte) '\n', start, end);
+                if (lastNewline < 0) {
+                    //A line longer than the buffer
+                    grow();
+                    continue;
+                }
+                parseEnd = lastNewline + 1;
+            }
+            parseChunk(start, parseEnd);
+            start = parseEnd;
+        }
+        for (int i = 0; i < numColumns; i++) {
+            Column column = columns.get(i);
+            if (column.text) {
+                String[] tmp = new String[numRows];
+                System.arraycopy(column.strings, 0, tmp, 0, numRows);
+                column.strings = tmp;
+            } else {
+                double[] tmp = new double[numRows];
+                System.arraycopy(column.values, 0, tmp, 0, numRows);
+                column.values = tmp;
+            }
+        }
+        buffer = null;
+    }
+
+    /**
+     * Get the columns in map order
+     *
+     * @return the columns
+     */
+    public List<Column> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Find the column
+     *
+     * @param name column name
+     *
+     * @return the column or null
+     */
+    public Column getColumn(String name) {
+        for (Column column : columns) {
+            if (column.name.equals(name)) {
+                return column;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the number of rows read
+     *
+     * @return number of rows
+     */
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * Parse the map and params
+     *
+     * @param map the map
+     * @param params the params
+     *
+     * @return false if it is not one we handle
+     */
+    private boolean parseHeader(String map, String params) {
+        map = map.trim();
+        int arrow = map.indexOf("->");
+        if (arrow < 0) {
+            return false;
+        }
+        String domain = map.substring(0, arrow).trim();
+        String range  = map.substring(arrow + 2).trim();
+        if ( !domain.startsWith("(") || !domain.endsWith(")")
+                || !range.startsWith("(") || !range.endsWith(")")) {
+            return false;
+        }
+        domain = domain.substring(1, domain.length() - 1).trim();
+        range  = range.substring(1, range.length() - 1);
+        if ((domain.length() == 0) || (domain.indexOf(',') >= 0)
+                || (domain.indexOf('(') >= 0)) {
+            return false;
+        }
+        HashSet<String> seen = new HashSet<String>();
+        for (String name : range.split(",")) {
+            name = name.trim();
+            boolean text = false;
+            if (name.endsWith("(Text)")) {
+                text = true;
+                name = name.substring(0, name.length() - 6).trim();
+            }
+            if ((name.length() == 0) || (name.indexOf('(') >= 0)
+                    || (name.indexOf(')') >= 0) || name.equals(domain)
+                    || name.equals(NAME_SKIP) || !seen.add(name)) {
+                return false;
+            }
+            columns.add(new Column(name, text));
+        }
+
+        List<String> tokens = splitParams(params, delimiter);
+        if ((tokens == null) || (countFields(tokens) != columns.size())) {
+            tokens = splitParams(params, ',');
+        }
+        if ((tokens == null) || (countFields(tokens) != columns.size())) {
+            return false;
+        }
+
+        fieldColumns = new int[tokens.size()];
+        int columnIdx = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i).trim();
+            String attrs = "";
+            int    idx   = token.indexOf('[');
+            if (idx >= 0) {
+                if ( !token.endsWith("]")) {
+                    return false;
+                }
+                attrs = token.substring(idx + 1, token.length() - 1);
+                token = token.substring(0, idx).trim();
+            }
+            boolean text = false;
+            if (token.endsWith("(Text)")) {
+                text  = true;
+                token = token.substring(0, token.length() - 6).trim();
+            }
+            if (token.equals(NAME_SKIP)) {
+                //A colspan would make this more than one field
+                if (attrs.indexOf("colspan") >= 0) {
+                    return false;
+                }
+                fieldColumns[i] = -1;
+                continue;
+            }
+            Column column = columns.get(columnIdx);
+            if ( !column.name.equals(token)) {
+                return false;
+            }
+            column.text     |= text;
+            fieldColumns[i] = columnIdx++;
+            if ( !parseAttributes(column, attrs)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse the attributes of a param
+     *
+     * @param column the column
+     * @param attrs the attributes
+     *
+     * @return false if there are attributes we don't handle
+     */
+    private boolean parseAttributes(Column column, String attrs) {
+        Matcher matcher = ATTR_PATTERN.matcher(attrs);
+        int     idx     = 0;
+        while (matcher.find()) {
+            if (attrs.substring(idx, matcher.start()).trim().length() > 0) {
+                return false;
+            }
+            idx = matcher.end();
+            String key   = matcher.group(1);
+            String value = (matcher.group(3) != null)
+                           ? matcher.group(3)
+                           : (matcher.group(4) != null)
+                             ? matcher.group(4)
+                             : matcher.group(5);
+            if (key.equals("unit")) {
+                if (column.text
+                        || (value.toLowerCase().indexOf("west") >= 0)) {
+                    return false;
+                }
+                column.unit = value;
+            } else if (key.equals("fmt")) {
+                if (column.text || !column.name.equals(NAME_TIME)) {
+                    return false;
+                }
+                column.format = value;
+            } else if (key.equals("missing")) {
+                if (column.text) {
+                    return false;
+                }
+                try {
+                    column.missing = Double.parseDouble(value.trim());
+                } catch (NumberFormatException nfe) {
+                    return false;
+                }
+                column.hasMissing = true;
+            } else {
+                return false;
+            }
+        }
+        if (attrs.substring(idx).trim().length() > 0) {
+            return false;
+        }
+        return (column.format == null) || (column.unit == null);
+    }
+
+    /**
+     * Count the non-skip params
+     *
+     * @param tokens the params
+     *
+     * @return count
+     */
+    private static int countFields(List<String> tokens) {
+        int cnt = 0;
+        for (String token : tokens) {
+            token = token.trim();
+            if ( !token.equals(NAME_SKIP) && !token.startsWith(NAME_SKIP + "[")
+                    && !token.startsWith(NAME_SKIP + " ")) {
+                cnt++;
+            }
+        }
+        return cnt;
+    }
+
+    /**
+     * Split the params on the delimiter, leaving what is in the brackets
+     * and quotes alone
+     *
+     * @param params the params
+     * @param delimiter the delimiter. 0 is white space
+     *
+     * @return the params or null if the brackets don't match
+     */
+    private static List<String> splitParams(String params, char delimiter) {
+        List<String>  tokens   = new ArrayList<String>();
+        StringBuilder sb       = new StringBuilder();
+        int           brackets = 0;
+        char          quote    = 0;
+        params = params.trim();
+        for (int i = 0; i < params.length(); i++) {
+            char c = params.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if ((c == '"') && (brackets > 0)) {
+                quote = c;
+            } else if (c == '[') {
+                brackets++;
+            } else if (c == ']') {
+                brackets--;
+            } else if ((brackets == 0)
+                       && ((delimiter == 0)
+                           ? Character.isWhitespace(c)
+                           : (c == delimiter))) {
+                if ((delimiter != 0) || (sb.toString().trim().length() > 0)) {
+                    tokens.add(sb.toString());
+                }
+                sb.setLength(0);
+                continue;
+            }
+            sb.append(c);
+        }
+        if ((brackets != 0) || (quote != 0)) {
+            return null;
+        }
+        if ((delimiter != 0) || (sb.toString().trim().length() > 0)) {
+            tokens.add(sb.toString());
+        }
+        return tokens;
+    }
+
+    /**
+     * Read more into the buffer, moving what is left to the start
+     *
+     * @throws IOException On badness
+     */
+    private void fill() throws IOException {
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end   -= start;
+            start = 0;
+        }
+        ByteBuffer bb = ByteBuffer.wrap(buffer);
+        bb.position(end);
+        while ( !eof && bb.hasRemaining()) {
+            if (channel.read(bb) < 0) {
+                eof = true;
+            }
+        }
+        end = bb.position();
+    }
+
+    /**
+     * Double the buffer size
+     */
+    private void grow() {
+        byte[] tmp = new byte[buffer.length * 2];
+        System.arraycopy(buffer, start, tmp, 0, end - start);
+        end    -= start;
+        start  = 0;
+        buffer = tmp;
+    }
+
+    /**
+     * Read the next line
+     *
+     * @return the line or null if at the end
+     *
+     * @throws IOException On badness
+     */
+    private String nextLine() throws IOException {
+        while (true) {
+            int idx = indexOf((byte) '\n', start, end);
+            if ((idx < 0) && !eof) {
+                if (start > 0) {
+                    fill();
+                } else {
+                    grow();
+                    fill();
+                }
+                continue;
+            }
+            if (start >= end) {
+                return null;
+            }
+            int lineEnd = (idx < 0)
+                          ? end
+                          : idx;
+            int next    = (idx < 0)
+                          ? end
+                          : idx + 1;
+            if ((lineEnd > start) && (buffer[lineEnd - 1] == '\r')) {
+                lineEnd--;
+            }
+            String line = new String(buffer, start, lineEnd - start,
+                                     StandardCharsets.UTF_8);
+            start = next;
+            return line;
+        }
+    }
+
+    /**
+     * Read the next line that is not a comment
+     *
+     * @return the line or null if at the end
+     *
+     * @throws IOException On badness
+     */
+    private String nextHeaderLine() throws IOException {
+        String line;
+        while ((line = nextLine()) != null) {
+            if (line.trim().length() == 0) {
+                continue;
+            }
+            char c = line.charAt(0);
+            if ((c == '#') || (c == '!') || (c == '%')) {
+                continue;
+            }
+            if ((skipPattern != null) && skipPattern.matcher(line).find()) {
+                continue;
+            }
+            return line;
+        }
+        return null;
+    }
+
+    /**
+     * Parse the lines between the offsets in parallel and add them
+     * to the columns
+     *
+     * @param from start offset
+     * @param to end offset
+     */
+    private void parseChunk(int from, int to) {
+        int numBlocks = Math.max(1,
+                                 Math.min(pool.getParallelism() * 4,
+                                          (to - from) / minTaskSize));
+        List<Block> blocks    = new ArrayList<Block>();
+        int         blockSize = (to - from) / numBlocks;
+        int         s         = from;
+        while (s < to) {
+            int e = (blocks.size() == numBlocks - 1)
+                    ? to
+                    : Math.min(to, s + blockSize);
+            if (e < to) {
+                int idx = indexOf((byte) '\n', e, to);
+                e = (idx < 0)
+                    ? to
+                    : idx + 1;
+            }
+            blocks.add(new Block(s, e));
+            s = e;
+        }
+        if (blocks.size() == 1) {
+            parseBlock(blocks.get(0));
+        } else {
+            pool.invoke(new BlockTask(blocks, 0, blocks.size()));
+        }
+        for (Block block : blocks) {
+            append(block);
+        }
+    }
+
+    /**
+     * Parses a range of the blocks, splitting in half until there is one
+     */
+    private class BlockTask extends RecursiveAction {
+
+        /** the blocks */
+        List<Block> blocks;
+
+        /** first block */
+        int from;
+
+        /** last block, exclusive */
+        int to;
+
+        /**
+         * ctor
+         *
+         * @param blocks the blocks
+         * @param from first block
+         * @param to last block, exclusive
+         */
+        BlockTask(List<Block> blocks, int from, int to) {
+            this.blocks = blocks;
+            this.from   = from;
+            this.to     = to;
+        }
+
+        /**
+         * Parse the blocks
+         */
+        protected void compute() {
+            if (to - from == 1) {
+                parseBlock(blocks.get(from));
+                return;
+            }
+            int mid = (from + to) / 2;
+            invokeAll(new BlockTask(blocks, from, mid),
+                      new BlockTask(blocks, mid, to));
+        }
+    }
+
+    /**
+     * Add the values of the block to the columns
+     *
+     * @param block the block
+     */
+    private void append(Block block) {
+        int newSize = numRows + block.numRows;
+        for (int c = 0; c < columns.size(); c++) {
+            Column column = columns.get(c);
+            if (column.text) {
+                if (newSize > column.strings.length) {
+                    String[] tmp = new String[Math.max(newSize,
+                                       column.strings.length * 2)];
+                    System.arraycopy(column.strings, 0, tmp, 0, numRows);
+                    column.strings = tmp;
+                }
+                System.arraycopy(block.strings[c], 0, column.strings,
+                                 numRows, block.numRows);
+            } else {
+                if (newSize > column.values.length) {
+                    double[] tmp = new double[Math.max(newSize,
+                                       column.values.length * 2)];
+                    System.arraycopy(column.values, 0, tmp, 0, numRows);
+                    column.values = tmp;
+                }
+                System.arraycopy(block.values[c], 0, column.values, numRows,
+                                 block.numRows);
+            }
+        }
+        numRows = newSize;
+    }
+
+    /**
+     * Parse the lines of the block
+     *
+     * @param block the block
+     */
+    private void parseBlock(Block block) {
+        byte[] buf        = buffer;
+        int    numColumns = columns.size();
+        int    maxRows    = 1;
+        for (int i = block.from; i < block.to; i++) {
+            if (buf[i] == '\n') {
+                maxRows++;
+            }
+        }
+        block.values  = new double[numColumns][];
+        block.strings = new String[numColumns][];
+        SimpleDateFormat[] formats = new SimpleDateFormat[numColumns];
+        for (int c = 0; c < numColumns; c++) {
+            Column column = columns.get(c);
+            if (column.text) {
+                block.strings[c] = new String[maxRows];
+            } else {
+                block.values[c] = new double[maxRows];
+                if (column.format != null) {
+                    formats[c] = new SimpleDateFormat(column.format);
+                    formats[c].setTimeZone(TimeZone.getTimeZone("GMT"));
+                }
+            }
+        }
+        ParsePosition pos       = new ParsePosition(0);
+        int[]         fieldCols = fieldColumns;
+        boolean       blank     = delimiter == 0;
+        int           lineStart = block.from;
+        while (lineStart < block.to) {
+            int idx     = indexOf((byte) '\n', lineStart, block.to);
+            int lineEnd = (idx < 0)
+                          ? block.to
+                          : idx;
+            int next    = (idx < 0)
+                          ? block.to
+                          : idx + 1;
+            if ((lineEnd > lineStart) && (buf[lineEnd - 1] == '\r')) {
+                lineEnd--;
+            }
+            int s = lineStart;
+            lineStart = next;
+            if (isBlank(buf, s, lineEnd)) {
+                continue;
+            }
+            byte first = buf[s];
+            if ((first == '#') || (first == '!') || (first == '%')) {
+                continue;
+            }
+            if ((skipPattern != null)
+                    && skipPattern.matcher(new String(buf, s, lineEnd - s,
+                        StandardCharsets.UTF_8)).find()) {
+                continue;
+            }
+
+            int row = block.numRows++;
+            for (int c = 0; c < numColumns; c++) {
+                if (block.values[c] != null) {
+                    block.values[c][row] = Double.NaN;
+                }
+            }
+            int field = 0;
+            int p     = s;
+            while ((p <= lineEnd) && (field < fieldCols.length)) {
+                if (blank) {
+                    while ((p < lineEnd) && isWhite(buf[p])) {
+                        p++;
+                    }
+                    if (p >= lineEnd) {
+                        break;
+                    }
+                }
+                //Find the end of the field
+                int     fs     = p;
+                boolean quoted = false;
+                int     fe;
+                while ((fs < lineEnd) && isSpace(buf[fs], blank)) {
+                    fs++;
+                }
+                if ((fs < lineEnd) && (buf[fs] == '"')) {
+                    quoted = true;
+                    int q = fs + 1;
+                    while ((q < lineEnd) && (buf[q] != '"')) {
+                        q++;
+                    }
+                    fe = q;
+                    fs++;
+                    p = Math.min(lineEnd, q + 1);
+                    while ((p < lineEnd) && !isDelimiter(buf[p], blank)) {
+                        p++;
+                    }
+                } else {
+                    p = fs;
+                    while ((p < lineEnd) && !isDelimiter(buf[p], blank)) {
+                        p++;
+                    }
+                    fe = p;
+                }
+                if ( !quoted) {
+                    while ((fe > fs) && isSpace(buf[fe - 1], blank)) {
+                        fe--;
+                    }
+                }
+                int col = fieldCols[field++];
+                p++;
+                if (col < 0) {
+                    continue;
+                }
+                if (block.strings[col] != null) {
+                    block.strings[col][row] = new String(buf, fs, fe - fs,
+                            StandardCharsets.UTF_8);
+                } else if (formats[col] != null) {
+                    pos.setIndex(0);
+                    pos.setErrorIndex(-1);
+                    Date date = formats[col].parse(new String(buf, fs,
+                                    fe - fs, StandardCharsets.UTF_8), pos);
+                    if (date != null) {
+                        block.values[col][row] = date.getTime() / 1000.0;
+                    }
+                } else {
+                    double value   = parseDouble(buf, fs, fe);
+                    Column column = columns.get(col);
+                    if (column.hasMissing && (value == column.missing)) {
+                        value = Double.NaN;
+                    }
+                    block.values[col][row] = value;
+                }
+            }
+            for (int c = 0; c < numColumns; c++) {
+                if ((block.strings[c] != null)
+                        && (block.strings[c][row] == null)) {
+                    block.strings[c][row] = "";
+                }
+            }
+        }
+    }
+
+    /**
+     * Is the byte a field delimiter
+     *
+     * @param b the byte
+     * @param blank are fields delimited by white space
+     *
+     * @return is delimiter
+     */
+    private boolean isDelimiter(byte b, boolean blank) {
+        return blank
+               ? isWhite(b)
+               : (b == delimiter);
+    }
+
+    /**
+     * Is the byte white space that can be trimmed from a field
+     *
+     * @param b the byte
+     * @param blank are fields delimited by white space
+     *
+     * @return is space
+     */
+    private boolean isSpace(byte b, boolean blank) {
+        return (b == ' ') || ((b == '\t') && (blank || (delimiter != '\t')));
+    }
+
+    /**
+     * Is the byte a space or tab
+     *
+     * @param b the byte
+     *
+     * @return is white
+     */
+    private static boolean isWhite(byte b) {
+        return (b == ' ') || (b == '\t');
+    }
+
+    /**
+     * Is the range all white space
+     *
+     * @param buf the bytes
+     * @param from start
+     * @param to end
+     *
+     * @return is blank
+     */
+    private static boolean isBlank(byte[] buf, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if ( !isWhite(buf[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the byte in the buffer
+     *
+     * @param b the byte
+     * @param from start
+     * @param to end
+     *
+     * @return index or -1
+     */
+    private int indexOf(byte b, int from, int to) {
+        byte[] buf = buffer;
+        for (int i = from; i < to; i++) {
+            if (buf[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the last of the byte in the buffer
+     *
+     * @param b the byte
+     * @param from start
+     * @param to end
+     *
+     * @return index or -1
+     */
+    private int lastIndexOf(byte b, int from, int to) {
+        byte[] buf = buffer;
+        for (int i = to - 1; i >= from; i--) {
+            if (buf[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parse a number. Plain decimal numbers that can be converted exactly
+     * are done here and everything else goes to Double.parseDouble so the
+     * result is always the same as Double.parseDouble.
+     *
+     * @param buf the bytes
+     * @param from start
+     * @param to end
+     *
+     * @return the value or NaN if it is not a number
+     */
+    static double parseDouble(byte[] buf, int from, int to) {
+        if (from >= to) {
+            return Double.NaN;
+        }
+        int     i        = from;
+        boolean negative = false;
+        if ((buf[i] == '-') || (buf[i] == '+')) {
+            negative = buf[i] == '-';
+            i++;
+        }
+        long    mantissa  = 0;
+        int     numDigits = 0;
+        int     exponent  = 0;
+        boolean anyDigits = false;
+        boolean simple    = true;
+        for (; i < to; i++) {
+            int d = buf[i] - '0';
+            if ((d < 0) || (d > 9)) {
+                break;
+            }
+            anyDigits = true;
+            if ((mantissa != 0) || (d != 0)) {
+                numDigits++;
+            }
+            mantissa = mantissa * 10 + d;
+        }
+        if ((i < to) && (buf[i] == '.')) {
+            i++;
+            for (; i < to; i++) {
+                int d = buf[i] - '0';
+                if ((d < 0) || (d > 9)) {
+                    break;
+                }
+                anyDigits = true;
+                if ((mantissa != 0) || (d != 0)) {
+                    numDigits++;
+                }
+                mantissa = mantissa * 10 + d;
+                exponent--;
+            }
+        }
+        if ((i < to) && ((buf[i] == 'e') || (buf[i] == 'E'))) {
+            i++;
+            boolean negExp = false;
+            if ((i < to) && ((buf[i] == '-') || (buf[i] == '+'))) {
+                negExp = buf[i] == '-';
+                i++;
+            }
+            int     exp       = 0;
+            boolean expDigits = false;
+            for (; (i < to) && (exp < 10000); i++) {
+                int d = buf[i] - '0';
+                if ((d < 0) || (d > 9)) {
+                    break;
+                }
+                expDigits = true;
+                exp       = exp * 10 + d;
+            }
+            if ( !expDigits) {
+                simple = false;
+            }
+            exponent += negExp
+                        ? -exp
+                        : exp;
+        }
+        if ((i != to) || !anyDigits || (numDigits > 15)
+                || (exponent < -22) || (exponent > 22)) {
+            simple = false;
+        }
+        if ( !simple) {
+            try {
+                return Double.parseDouble(new String(buf, from, to - from,
+                        StandardCharsets.ISO_8859_1));
+            } catch (NumberFormatException nfe) {
+                return Double.NaN;
+            }
+        }
+        double value = (exponent < 0)
+                       ? mantissa / POW10[-exponent]
+                       : mantissa * POW10[exponent];
+        return negative
+               ? -value
+               : value;
+    }
+}
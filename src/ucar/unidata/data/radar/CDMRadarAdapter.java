@@ -74,7 +74,6 @@ import java.io.IOException;
 import java.rmi.RemoteException;
 
 import java.util.*;
-import java.util.concurrent.*;
 
 import static ucar.unidata.idv.IdvConstants.PREF_SAMPLINGMODE;
 
@@ -4290,7 +4289,24 @@ public class CDMRadarAdapter implements RadarAdapter {
             levels[zi] =  1000.0f * zi + 500.0f;
         }
 
-        GridLoc [][][] gridLocs = computeGridRow(numCols, numRows, numLevels, lats, lons, levels );
+        //The radial coordinates of the grid cells only depend on where
+        //the radar is so they are shared by all of its volumes
+        List cellsKey = Misc.newList(
+                            Double.valueOf(
+                                radarLocation.getLatitude().getValue()),
+                            Double.valueOf(
+                                radarLocation.getLongitude().getValue()),
+                            Integer.valueOf(numCols),
+                            Integer.valueOf(numRows),
+                            Integer.valueOf(numLevels));
+        RadarGridInterpolator.GridCells cells =
+            (RadarGridInterpolator.GridCells) CacheManager.get(
+                RadarGridInterpolator.class, cellsKey);
+        if (cells == null) {
+            cells = computeGridCells(numCols, numRows, numLevels, lats,
+                                     lons, levels);
+            CacheManager.put(RadarGridInterpolator.class, cellsKey, cells);
+        }
 
         RadialDatasetSweep.RadialVariable sweepVar =
                 getRadialVariable(varName);
@@ -4302,57 +4318,15 @@ public class CDMRadarAdapter implements RadarAdapter {
         RadialDatasetSweep.Sweep s0 = sweepVar.getSweep(numberOfSweeps - 1);
         range_to_first_gate = s0.getRangeToFirstGate() / 1000.0;
         range_step          = s0.getGateSize() / 1000.0;
-        float beamWidth           = s0.getBeamWidth();
-        double halfBeamWidth;
-
-        halfBeamWidth = beamWidth / 2;
-        double[][] myAziArray  = new double[numberOfSweeps][numberOfRay];
-        int[][]   aziArrayIdx = new int[numberOfSweeps][numberOfRay];
-        double[] elevs = new double[numberOfSweeps];
-        double [][][] allData = new double[numLevels][numRows][numCols];
-
-        Ray[][] allRays = getRays(sweepVar, numberOfRay, elevs, myAziArray);
-
-        for (int b = 0; b < numberOfSweeps; b++) {
-            aziArrayIdx[b] =sortFloatArrayWithNaNAndIndices(myAziArray[b]);
-            myAziArray[b] = removeNaNfromSortedArray(myAziArray[b]);
-        }
-        //long              start    = System.currentTimeMillis();
-        //System.out.println("Time used to grid interpolate = "
-        //        + start);
-        /*
-        for (int iz = 0; iz < numLevels; iz++) {
-            for (int iy = 0; iy < numRows; iy++) {
-                double[] rowData = interpGridRow(iz, iy, gridLocs, allRays, elevs, myAziArray, aziArrayIdx);
-                allData[iz][iy] = rowData;
-            } // iy
-        } //
-
-        */
 
-        ExecutorService executor = Executors.newFixedThreadPool(8);
-        final List<double[][]> result   = new ArrayList<double[][]>();
-        List<Future>          pthreads = new ArrayList<Future>();
-        for (int iz = 0; iz < numLevels; iz++) {
-            Callable pt = new levelThredds(iz, numCols, numRows, gridLocs, allRays, elevs, myAziArray, aziArrayIdx);
-            Future<Object> future = executor.submit(pt);
-            pthreads.add(iz, future);
-        }
-
-        for (Future<Object> o : pthreads) {
-            try {
-                int z = pthreads.indexOf(o);
-                allData[z] = (double[][]) o.get();
-                //result.add((double[][]) o.get());
-            } catch (InterruptedException e) {
-                e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
-            } catch (ExecutionException e) {
-                e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
-            }
-        }
-
-        //System.out.println("Time used to grid interpolate = "
-        //        + (System.currentTimeMillis() - start) / 1000.0);
+        float[][] sweepData = new float[numberOfSweeps][];
+        int[]     numGates  = new int[numberOfSweeps];
+        RadarGridInterpolator.SweepGeometry geometry =
+            getSweepGeometry(sweepVar, numberOfRay, sweepData, numGates,
+                             range_to_first_gate, range_step);
+        RadarGridInterpolator interpolator =
+            RadarGridInterpolator.getInterpolator(cellsKey, cells,
+                geometry);
 
         FlatField                retField;
 
@@ -4372,18 +4346,8 @@ public class CDMRadarAdapter implements RadarAdapter {
             }
         }
 
-        int k = 0;
-
-        for (int zi = 0; zi < zDim; zi++) {
-            double[][] _data2      = allData[zi];
-            for (int yi = 0; yi < xyDim; yi++) {
-                double[] __data2   = _data2[yi];
-                for (int xi = 0; xi < xyDim; xi++) {
-                    signalVals[0][k] = (float)__data2[xi];
-                    k++;
-                }
-            }
-        }
+        interpolator.interpolate(geometry, sweepData, numGates,
+                                 signalVals[0]);
 
 
         RealTupleType tt = new RealTupleType(RealType.Latitude,
@@ -5049,7 +5013,9 @@ public class CDMRadarAdapter implements RadarAdapter {
     }
 
     /**
-     * computeGridRow calculate gridloc for each grid point
+     * Calculate the radial coordinates (elevation, azimuth and slant
+     * range) of each grid point.
+     *
      * @param numCols column
      * @param numRows row
      * @param numLevels level
@@ -5057,49 +5023,39 @@ public class CDMRadarAdapter implements RadarAdapter {
      * @param lonCols longitude
      * @param altLevels altitude
      *
-     * @return grid location
+     * @return the grid cells
      */
-    public GridLoc [][][] computeGridRow(int numCols, int numRows, int numLevels, float[] latRows, float[] lonCols, float[] altLevels)
-
-    {
+    public RadarGridInterpolator.GridCells computeGridCells(int numCols,
+            int numRows, int numLevels, float[] latRows, float[] lonCols,
+            float[] altLevels) {
         float _radarLat = (float) radarLocation.getLatitude().getValue();
         float _radarLon = (float) radarLocation.getLongitude().getValue();
-
-
-        GridLoc [][][] gridLocs = new GridLoc[numLevels][numRows][numCols];
-
+        RadarGridInterpolator.GridCells cells =
+            new RadarGridInterpolator.GridCells(numCols, numRows, numLevels);
+        double[] gndRange = new double[1];
+        double[] azimuth  = new double[1];
+        int      cell     = 0;
         for (int iz = 0; iz < numLevels; iz++) {
-            double zz = altLevels[iz]/1000.0;
+            double zz = altLevels[iz] / 1000.0;
             for (int iy = 0; iy < numRows; iy++) {
                 double gridLat = latRows[iy];
-
                 for (int ix = 0; ix < numCols; ix++) {
-                    // get the latlon of the (x,y) point in the output grid
                     double gridLon = lonCols[ix];
-                    // get the azimuth and distance from the radar
-
-                    double[] gndRange = new double[1];
-                    double[] azimuth = new double[1];
-                    latLon2RTheta(_radarLat, _radarLon,
-                            gridLat, gridLon,
-                            gndRange, azimuth);
+                    latLon2RTheta(_radarLat, _radarLon, gridLat, gridLon,
+                                  gndRange, azimuth);
                     if (azimuth[0] < 0) {
                         azimuth[0] += 360.0;
                     }
-                    double distt = Math.sqrt(zz*zz + gndRange[0]*gndRange[0]);
-                    // compute elevation
+                    double distt = Math.sqrt(zz * zz
+                                             + gndRange[0] * gndRange[0]);
                     double elevDeg = computeElevationDeg(zz, gndRange[0]);
-                    gridLocs[iz][iy][ix] = new GridLoc(elevDeg, azimuth[0], distt, gridLat, gridLon, zz);
-
-                } // ix
+                    cells.setCell(cell++, elevDeg, azimuth[0], distt);
+                }
             }
         }
-
-
-
-        return gridLocs;
-
+        return cells;
     }
+
     /**
      * @param htKm _more_
      * @param gndRangeKm _more_
@@ -5552,263 +5508,61 @@ public class CDMRadarAdapter implements RadarAdapter {
     }
 
     /**
-     * @param sweepVar _more_
-     * @param numberOfRay _more_
-     * @param elevs _more_
-     * @param azims _more_
+     * Read the whole volume into one flat array per sweep and get the
+     * sweep geometry. The data of the rays is not copied.
      *
-     * @return rays
-     * getRays return the whole volume data as 2d rays structure
+     * @param sweepVar the variable
+     * @param numberOfRay max number of rays in a sweep
+     * @param sweepData filled in with the data of each sweep
+     * @param numGates filled in with the number of gates of each sweep
+     * @param rangeToFirstGate range (km) to the first gate
+     * @param rangeStep gate size (km)
+     *
+     * @return the sweep geometry
      *
+     * @throws IOException problem reading the data
      */
-    Ray[][] getRays(RadialDatasetSweep.RadialVariable sweepVar,
-                           int numberOfRay, double[] elevs, double[][] azims)
+    RadarGridInterpolator.SweepGeometry getSweepGeometry(
+            RadialDatasetSweep.RadialVariable sweepVar, int numberOfRay,
+            float[][] sweepData, int[] numGates, double rangeToFirstGate,
+            double rangeStep)
             throws IOException {
 
-        Object[] cut            = getCutIdx(sweepVar);
-        int      numberOfSweeps = cut.length;
-
-        Ray[][] rays = new Ray[numberOfSweeps][numberOfRay];
+        Object[]   cut            = getCutIdx(sweepVar);
+        int        numberOfSweeps = cut.length;
+        double[]   elevs          = new double[numberOfSweeps];
+        double[][] azims          = new double[numberOfSweeps][];
+        int[][]    azimIndices    = new int[numberOfSweeps][];
+        double[][] rayAzims       = new double[numberOfSweeps][numberOfRay];
+        double[][] rayElevs       = new double[numberOfSweeps][numberOfRay];
 
         for (int sweepIdx = 0; sweepIdx < numberOfSweeps; sweepIdx++) {
-            //float[][]                _data2 = data2[sweepIdx];
             int sb = Integer.parseInt(cut[sweepIdx].toString());
-            RadialDatasetSweep.Sweep s1     = sweepVar.getSweep(sb);
+            RadialDatasetSweep.Sweep s1 = sweepVar.getSweep(sb);
             int rnumber = s1.getRadialNumber();
-            elevs[sweepIdx] = s1.getMeanElevation();
-            float[] s1data = s1.readData();
-            int gnum = s1.getGateNumber();
-            float[] azimuths = s1.getAzimuth();
+            elevs[sweepIdx]     = s1.getMeanElevation();
+            sweepData[sweepIdx] = s1.readData();
+            numGates[sweepIdx]  = s1.getGateNumber();
+            float[] azimuths   = s1.getAzimuth();
             float[] elevations = s1.getElevation();
             for (int rayIdx = 0; rayIdx < numberOfRay; rayIdx++) {
-                //int si = rayIndex[sweepIdx][rayIdx];
-                float[] data2 = new float[gnum];
                 if (rayIdx < rnumber) {
-                    double az = azimuths[rayIdx];
-                    double el = elevations[rayIdx];
-                    azims[sweepIdx][rayIdx] = az;
-                    int     srcPos = rayIdx * gnum;
-                    System.arraycopy(s1data, srcPos, data2, 0, gnum);
-
-                    rays[sweepIdx][rayIdx] = new Ray(sweepIdx, rayIdx, gnum, el, az, data2);
+                    rayAzims[sweepIdx][rayIdx] = azimuths[rayIdx];
+                    rayElevs[sweepIdx][rayIdx] = elevations[rayIdx];
                 } else {
-                    //data2 = getFloatNaN(numBin);
-                    azims[sweepIdx][rayIdx] = Float.NaN;
-                    rays[sweepIdx][rayIdx] = null;
+                    rayAzims[sweepIdx][rayIdx] = Float.NaN;
+                    rayElevs[sweepIdx][rayIdx] = Float.NaN;
                 }
-
-                //rays[sweepIdx][rayIdx] = new Ray(sweepIdx, rayIdx, numBin, el, az, data2);
             }
-
-        }
-
-        return rays;
-
-    }
-
-    public static class levelThredds implements Callable<double [][]> {
-        /** _more_ */
-        int[][] azidx;
-        /** _more_ */
-        double[][] azims;
-        /** _more_ */
-        double[] elevs;
-        /** _more_ */
-        Ray[][] rays;
-        /** _more_ */
-        GridLoc [][][] loc;
-        /** _more_ */
-        int iz;
-        /** _more_ */
-        int numCols;
-        /** _more_ */
-        int numRows;
-
-        /**
-         * @param numCols _more_
-         * @param numRows _more_
-         * @param iz _more_
-         * @param loc _more_
-         * @param rays _more_
-         * @param elevs _more_
-         * @param azidx _more_
-         * @param azims _more_
-         *
-         *
-         */
-        public levelThredds(int iz, int numCols, int numRows, GridLoc [][][]loc, Ray[][] rays, double[] elevs, double[][] azims, int[][] azidx) {
-            this.iz           = iz;
-            this.numCols      = numCols;
-            this.numRows      = numRows;
-            this.loc          = loc;
-            this.rays         = rays;
-            this.elevs        = elevs;
-            this.azims        = azims;
-            this.azidx        = azidx;
-        }
-
-        /**
-         * _more_
-         *
-         * @return _more_
-         */
-        public double [][]  call() {
-            double [][]  ff = interpGridLevel(iz, numCols, numRows, loc, rays, elevs, azims, azidx);
-            //System.out.println("Thredds = " + i);
-            return ff;
-        }
-
-        public int iz(){
-            return iz;
+            double[] sorted = (double[]) rayAzims[sweepIdx].clone();
+            azimIndices[sweepIdx] = sortFloatArrayWithNaNAndIndices(sorted);
+            azims[sweepIdx]       = removeNaNfromSortedArray(sorted);
         }
+        return new RadarGridInterpolator.SweepGeometry(elevs, azims,
+                azimIndices, rayAzims, rayElevs, rangeToFirstGate,
+                rangeStep);
     }
 
-    /**
-     * @param numCols _more_
-     * @param numRows _more_
-     * @param iz _more_
-     * @param loc _more_
-     * @param rays _more_
-     * @param elevs _more_
-     * @param azidx _more_
-     * @param azims _more_
-     *
-     * @return interprow
-     *
-     * interpRow return each row data
-     * For each grid point use radial coordinate information in the gridloc to find the
-     * neighbour rays, calculate the neighbour values, and finally calculate the value
-     * of the grid point.
-     *
-     */
-    static double [][] interpGridLevel(int iz, int numCols, int numRows, GridLoc [][][]loc, Ray[][] rays,
-                                       double[] elevs, double[][] azims, int[][] azidx)
-    {
-        double [][] levelData = new double[numRows][numCols];
-        for (int iy = 0; iy < numRows; iy++) {
-            double[] rowData = interpGridRow(iz, iy, loc, rays, elevs, azims, azidx);
-            levelData[iy] = rowData;
-        } // iy
-        return levelData;
-    }
-    /**
-     * @param iy _more_
-     * @param iz _more_
-     * @param loc _more_
-     * @param rays _more_
-     * @param elevs _more_
-     * @param azidx _more_
-     * @param azims _more_
-     *
-     * @return interprow
-     *
-     * interpRow return each row data
-     * For each grid point use radial coordinate information in the gridloc to find the
-     * neighbour rays, calculate the neighbour values, and finally calculate the value
-     * of the grid point.
-     *
-     */
-    public static double [] interpGridRow(int iz, int iy, GridLoc [][][]loc, Ray[][] rays, double[] elevs, double[][] azims, int[][] azidx)
-    {
-        int Nx = 100;
-        double [] rowVals = new double[Nx];
-
-        for (int ix = 0; ix < Nx; ix++) {
-            GridLoc lloc = loc[iz][iy][ix];
-
-            double elevation = lloc.elev;
-            double azimuth = lloc.az;
-            double alt = lloc.alt;
-
-            int [][] nears = getNeighborRays(azimuth, elevation, elevs, azims, azidx);
-            // SearchPoint(int level, int elDist, int azDist, double rayEl,
-            //           double rayAz, double interpAz, double interpEl, Ray ray)
-            SearchPoint ll ;
-            SearchPoint ul ;
-            SearchPoint lr ;
-            SearchPoint ur ;
-            int nAvail = 0;
-
-            if(nears[0][0] == -999)
-                ll = null;
-            else {
-                nAvail++;
-                Ray ray = rays[nears[0][0]][nears[0][1]];
-                ll = new SearchPoint(0, 0, 0, elevation, azimuth,ray.az, ray.el, ray);
-            }
-
-            if(nears[1][0] == -999)
-                lr = null;
-            else {
-                nAvail++;
-                Ray ray = rays[nears[1][0]][nears[1][1]];
-                lr = new SearchPoint(0, 0, 0, elevation, azimuth,ray.az, ray.el, ray);
-            }
-
-            if(nears[2][0] == -999)
-                ul = null;
-            else {
-                nAvail++;
-                Ray ray = rays[nears[2][0]][nears[2][1]];
-                ul = new SearchPoint(0, 0, 0, elevation, azimuth,ray.az, ray.el, ray);
-            }
-
-            if(nears[3][0] == -999)
-                ur = null;
-            else {
-                nAvail++;
-                Ray ray = rays[nears[3][0]][nears[3][1]];
-                ur = new SearchPoint(0, 0, 0, elevation, azimuth,ray.az, ray.el, ray);
-            }
-            // get gate indices, compute weights based on range
-            double rangeKm = lloc.dist;
-            double dgate = (rangeKm - range_to_first_gate) / range_step;
-            int igateInner = (int) Math.floor(dgate);
-            int igateOuter = igateInner + 1;
-            double wtOuter = dgate - igateInner;
-            double wtInner = 1.0 - wtOuter;
-            Neighbors wts = null;
-
-            if(nAvail == 2){
-                wts = getWtsFor2ValidRays(lloc, ll, ul, lr, ur, wtInner, wtOuter);
-            } else {
-                wts = getWtsFor3Or4ValidRays(lloc, ll, ul, lr, ur, wtInner, wtOuter);
-            }
-
-// normalize weights
-
-            double sumWt = 0.0;
-            sumWt += wts.ll_inner;
-            sumWt += wts.ll_outer;
-            sumWt += wts.ul_inner;
-            sumWt += wts.ul_outer;
-            sumWt += wts.lr_inner;
-            sumWt += wts.lr_outer;
-            sumWt += wts.ur_inner;
-            sumWt += wts.ur_outer;
-            if (sumWt == 0) {
-                sumWt = 1.0;
-            }
-
-            wts.ll_inner /= sumWt;
-            wts.ll_outer /= sumWt;
-            wts.ul_inner /= sumWt;
-            wts.ul_outer /= sumWt;
-            wts.lr_inner /= sumWt;
-            wts.lr_outer /= sumWt;
-            wts.ur_inner /= sumWt;
-            wts.ur_outer /= sumWt;
-
-
-            // interpolate fields
-            if(false){
-                rowVals[ix] = loadNearestGridPt(igateInner, igateOuter, ll, ul, lr, ur, wts);
-            } else {
-                rowVals[ix] = loadInterpGridPt( igateInner, igateOuter, ll, ul, lr, ur, wts);
-            }
-        }
-        return rowVals;
-    }
     /**
      *
      * @param az _more_
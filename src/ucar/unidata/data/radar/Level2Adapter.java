@@ -52,6 +52,8 @@ import visad.georef.EarthLocationTuple;
 
 import java.io.*;
 
+import java.nio.ByteBuffer;
+
 import java.rmi.RemoteException;
 
 import java.util.Arrays;
@@ -350,6 +352,23 @@ public class Level2Adapter implements RadarAdapter {
     }
 
 
+    /**
+     * Get the index of the data file to read the records with
+     *
+     * @return the index
+     *
+     * @throws VisADException  problem reading the file
+     */
+    private Level2Index getIndex() throws VisADException {
+        try {
+            return data.getIndex();
+        } catch (IOException ioe) {
+            throw new VisADException("Error reading " + data.getFilename()
+                                     + ": " + ioe);
+        }
+    }
+
+
     /**
      * Get a 2D sweep of a particular moment at the specified elevation
      * angle.
@@ -421,14 +440,16 @@ public class Level2Adapter implements RadarAdapter {
                 local_cut = local_cut + 3;
             }
         }
+        Level2Index  index         = getIndex();
+        ByteBuffer   buffer        = index.getBuffer();
         Level2Record record        = new Level2Record();
         int          record_number = data.getCutStart(local_cut);
-        record.readHeader(data.getDataInput(), record_number);
+        record.readHeader(buffer, record_number);
         int bins = record.getBinNum(moment);
         if (bins == 0) {
             return null;
         }
-        int num_radials = record.readCut(data.getDataInput(), record_number);
+        int num_radials = record.readCut(index, buffer, record_number);
         double[] range  = new double[bins];
         double   range_step;
         double   range_to_first_gate;
@@ -446,8 +467,7 @@ public class Level2Adapter implements RadarAdapter {
         float   azimuth;
         float[] azimuths      = new float[num_radials];
         float[] values        = new float[num_radials * bins];
-        int     vc            = 0,
-                azimuth_num   = 0;
+        int     azimuth_num   = 0;
         int     value_counter = 0;
         for (int azi = 0; azi < num_radials; azi++) {
             azimuth = data.getAzimuth(record_number);
@@ -456,27 +476,9 @@ public class Level2Adapter implements RadarAdapter {
                 azimuth = data.getAzimuth(record_number);
             }
             azimuths[azimuth_num++] = azimuth;
-            for (int j = 0; j < bins; j++) {
-                vc         = value_counter;
-                values[vc] = record.getBinValue(moment, azi, j);
-
-
-                /*  TEST ONLY, PART 1 of 2 parts
-                //  demo of how straight the beams' plots are;
-                //  i.e. how correct in azimuth angles on plot.
-                //  Combine a plot of this data with the radar range rings and radial grid.
-                //  Note that the ranges as plotted are not uniform either.
-                float azt = (int)(azimuth + 0.5);
-                // set all azimuths to integers
-                azimuths[azimuth_num-1] = azt;
-                // set flag color or value on selected beams , to stand out
-                if ((int)(azimuth + 0.5)%30 == 0) {
-                    values[vc]=100.0f;
-                }  // END TEST */
-
-
-                value_counter++;
-            }
+            record.getBinValues(moment, azi, 0, bins, values,
+                                value_counter);
+            value_counter += bins;
             record_number++;
         }
         int[]     sortToOld  = QuickSort.sort(azimuths);
@@ -578,6 +580,8 @@ public class Level2Adapter implements RadarAdapter {
                      record_number = 0;
         double       elevation     = 19.5;
         Level2Record record        = null;
+        Level2Index  index         = getIndex();
+        ByteBuffer   buffer        = index.getBuffer();
         while (bins == 0) {
             int ii = numbTilts - dec;
             if (ii < 0) {
@@ -606,12 +610,12 @@ public class Level2Adapter implements RadarAdapter {
             }
             record        = new Level2Record();
             record_number = data.getCutStart(local_cut);
-            record.readHeader(data.getDataInput(), record_number);
+            record.readHeader(buffer, record_number);
             bins = record.getBinNum(moment);
             dec++;
         }
         int      numbVel           = bins / 4;
-        int num_radials = record.readCut(data.getDataInput(), record_number);
+        int num_radials = record.readCut(index, buffer, record_number);
         double[] range             = new double[bins];
         double[] altitude          = new double[bins];
         double   range_step        = record.dopl_size / 1000.0;  // 0.25 km
@@ -646,10 +650,9 @@ public class Level2Adapter implements RadarAdapter {
                 azimuth = data.getAzimuth(record_number);
             }
             azimuths[azimuth_num++] = azimuth;
-            for (int bin = 0; bin < limitIndex; bin++) {
-                windspeed[value_counter++] = record.getBinValue(moment, ac,
-                        bin);
-            }
+            record.getBinValues(moment, ac, 0, limitIndex, windspeed,
+                                value_counter);
+            value_counter += limitIndex;
             record_number++;
         }
         int[] shiftedIndices = QuickSort.sort(azimuths);
@@ -792,6 +795,7 @@ public class Level2Adapter implements RadarAdapter {
         double[][]   ranges   = new double[numbTilts][bincounter];
         DateTime     beamtime = new DateTime();
         Level2Record record;
+        ByteBuffer   buffer      = getIndex().getBuffer();
         int          tiltcounter = 0;
         for (int ti = 0; ti < numbTilts; ti++) {
             found = false;
@@ -822,7 +826,7 @@ public class Level2Adapter implements RadarAdapter {
                 if (Math.abs(azi - rhiAz) <= halfBeamWidth) {
                     found  = true;
                     record = new Level2Record();
-                    record.readRecord(data.getDataInput(), j);
+                    record.readRecord(buffer, j);
                     range_to_first_gate = (float) (record.first_bin / 1000.0);
                     if (moment == REFLECTIVITY) {
                         range_step = 1.0;
@@ -982,8 +986,10 @@ public class Level2Adapter implements RadarAdapter {
         } else {
             record_number = data.getCutStart(1);
         }
+        Level2Index  index  = getIndex();
+        ByteBuffer   buffer = index.getBuffer();
         Level2Record record = new Level2Record();
-        record.readHeader(data.getDataInput(), record_number);
+        record.readHeader(buffer, record_number);
         int low_bins = record.getBinNum(moment);
         range_to_first_gate = (float) (record.first_bin / 1000.0);
         binCount            = low_bins;
@@ -1039,7 +1045,7 @@ public class Level2Adapter implements RadarAdapter {
             }
 
             record_number = data.getCutStart(local_cut);
-            record.readHeader(data.getDataInput(), record_number);
+            record.readHeader(buffer, record_number);
             /* keep for future demands for times of each sweep
             int seconds = (int) (record.milliseconds/1000);
             int hour   = (int) (seconds/3600);
@@ -1094,7 +1100,7 @@ public class Level2Adapter implements RadarAdapter {
                 }
             }
             record_number = data.getCutStart(local_cut);
-            record.readHeader(data.getDataInput(), record_number);
+            record.readHeader(buffer, record_number);
             numberOfBins = record.getBinNum(moment);
 
             if (numberOfBins == 0) {
@@ -1108,7 +1114,7 @@ public class Level2Adapter implements RadarAdapter {
             //System.out.println("bininner = " + bininner);
             //System.out.println("ringcounter = " + ringcounter);
 
-            int num_radials = record.readCut(data.getDataInput(),
+            int num_radials = record.readCut(index, buffer,
                                              record_number);
             int bc = 0;
             for (int ac = 0; ac < numAz; ac++) {
@@ -1353,6 +1359,8 @@ public class Level2Adapter implements RadarAdapter {
         double       range_step;
         double       range_to_first_gate;
         int          value_counter = 0;
+        Level2Index  index         = getIndex();
+        ByteBuffer   buffer        = index.getBuffer();
         Level2Record record        = new Level2Record();
         int          tiltcounter   = 0;
         for (int ti = 0; ti < numberOfSweeps; ti++) {
@@ -1378,7 +1386,7 @@ public class Level2Adapter implements RadarAdapter {
                 }
             }
             int record_number = data.getCutStart(local_cut);
-            record.readHeader(data.getDataInput(), record_number);
+            record.readHeader(buffer, record_number);
             int numberOfBins = record.getBinNum(moment);
             if (numberOfBins <= 0) {
                 continue;
@@ -1395,7 +1403,7 @@ public class Level2Adapter implements RadarAdapter {
             for (int i = 1; i < bincounter; i++) {
                 ranges[ti][i] = (double) (ranges[ti][i - 1] + range_step);
             }
-            int num_radials = record.readCut(data.getDataInput(),
+            int num_radials = record.readCut(index, buffer,
                                              record_number);
             int nbi = 370;
             if (num_radials < 370) {
@@ -1410,11 +1418,9 @@ public class Level2Adapter implements RadarAdapter {
                 int si = (int) (azimuth + 0.5);
                 azimuths[ti][si]   = azimuth;
                 elevations[ti][si] = record.getElevation();
-                for (int binj = 0; binj < numberOfBins; binj++) {
-                    values[ti][si][binj] = record.getBinValue(moment, bi,
-                            binj);
-                    value_counter++;
-                }
+                record.getBinValues(moment, bi, 0, numberOfBins,
+                                    values[ti][si], 0);
+                value_counter += numberOfBins;
                 record_number++;
             }
             tiltcounter++;
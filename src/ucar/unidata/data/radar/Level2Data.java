@@ -45,6 +45,8 @@ import java.io.IOException;
 
 import java.net.URL;
 
+import java.nio.ByteBuffer;
+
 
 /**
  * This class reads a NEXRAD level II data  file and keeps track
@@ -131,6 +133,9 @@ public class Level2Data {
     /** Data file */
     private RandomAccessFile din;
 
+    /** The index of the uncompressed file */
+    private Level2Index index;
+
     /** filename */
     private String filename = null;
 
@@ -286,6 +291,10 @@ public class Level2Data {
                                    + dout.getFilePointer());
                     }
                 } catch (EOFException eof) {}  // ignore
+                //Flush what we wrote so the file can be indexed
+                dout.close();
+                dout = new RandomAccessFile(tmpfile.toString(), "r",
+                                            DEFAULT_FILE_BUFFER);
             } else {
                 dout = new RandomAccessFile(tmpfile.toString(), "r",
                                             DEFAULT_FILE_BUFFER);
@@ -343,51 +352,42 @@ public class Level2Data {
 
     /**
      * Method to read the file.
-     * If * <code>onlyVCP</code>, only read enough data to get the
-     * levels.
+     * The cut lookup tables are made from the {@link Level2Index} of the
+     * file, which reads the record headers in one pass over the file
+     * contents, so this always reads the whole file.
      *
      * @param startFlag  starting record number (unused)
-     * @param onlyVCP    if true, only read until we get the VCP info
+     * @param onlyVCP    unused since the index has all of the records
      */
     public void read(int startFlag, boolean onlyVCP) {
 
-        /*  Read the file until we get an I/O exception (i.e., EOF)
-            or until we get the VCP if onlyVCP == true */
-
-        float        azi;
-        float        ele;
-        int          i;
-
-        byte[]       bins         = new byte[2332];
-
-        Level2Record level2record = new Level2Record();
-
-        // Read the entire file and return when we get an end-of-file
-        // exception.
-        for (record = number_of_records; record < 10000; record++) {
-
-            if (onlyVCP && (vcp != 0)) {
-                log_.debug("vcp = " + vcp);
-                return;
-            }
-            level2record.readHeader(din, record);
-
-            if (level2record.eof() != 0) {
-
-                cut_start[old_cut + 1] = record;
-                log_.debug(" did read all");
-                readAll = true;
-                return;
+        if (readAll) {
+            return;
+        }
+        readAll = true;
+        Level2Index index;
+        try {
+            index = getIndex();
+        } catch (IOException ioe) {
+            LogUtil.logException("Error indexing " + filename, ioe);
+            return;
+        }
+        int numRecords = index.getNumRecords();
+        if (azimuth.length <= numRecords) {
+            azimuth   = new float[numRecords + 1];
+            elevation = new float[numRecords + 1];
+        }
 
-            }
+        for (record = 0; record < numRecords; record++) {
 
             // Check to see if this is the last radial in the volume.  If 
             // so, set the end of volume flag to 1.
-            if (level2record.radial_status != 1) {
-                log_.debug("Radial status [" + level2record.radial_status
+            int radialStatus = index.getRadialStatus(record);
+            if (radialStatus != 1) {
+                log_.debug("Radial status [" + radialStatus
                            + "] for record " + record);
             }
-            if (level2record.radial_status == 4) {
+            if (radialStatus == 4) {
                 end_of_volume = 1;
             } else {
                 end_of_volume = 0;
@@ -395,7 +395,7 @@ public class Level2Data {
 
             // Only process digital radar data messages.  Ignore the 
             // rest for  now. 
-            if (level2record.getMessageType() == 1) {
+            if (index.getMessageType(record) == 1) {
 
                 // If the vcp has yet to be initialized set it.  Right now 
                 // we assume that the VCP is one of the following: 
@@ -403,31 +403,27 @@ public class Level2Data {
 
                 if (vcp == 0) {
 
-                    vcp = level2record.vcp;
+                    vcp = index.getVCP(record);
                 }
 
                 // Extract the azimuth and elevation angles of the radial.
 
-                azimuth[record]   = level2record.getAzimuth();
-                elevation[record] = level2record.getElevation();
+                azimuth[record]   = index.getAzimuth(record);
+                elevation[record] = index.getElevation(record);
 
                 // If a new elevation cut has started, update the cut LUT
 
-                if (old_cut != level2record.getElevationNum()) {
+                int elevationNum = index.getElevationNum(record);
+                if (old_cut != elevationNum) {
 
-                    log_.debug("message_size [" + level2record.message_size
-                               + "]");
+                    if (elevationNum > 0) {
 
-                    if (level2record.getElevationNum() > 0) {
-
-                        log_.debug("New cut --> "
-                                   + level2record.getElevationNum()
-                                   + " angle[" + level2record.getElevation()
-                                   + "] at record " + record);
-                        old_cut = level2record.getElevationNum();
-                        cut_start[level2record.getElevationNum() - 1] =
-                            record;
-                        cutElevation[numberOfCuts] = elevation[record];
+                        log_.debug("New cut --> " + elevationNum + " angle["
+                                   + elevation[record] + "] at record "
+                                   + record);
+                        old_cut                     = elevationNum;
+                        cut_start[elevationNum - 1] = record;
+                        cutElevation[numberOfCuts]  = elevation[record];
                         deltaElevation = Math.abs(elevation[record]
                                 - oldElevation);
                         if ((double) deltaElevation > 0.10) {
@@ -439,15 +435,6 @@ public class Level2Data {
                         cutIndex[numberOfCuts] = numberOfTrueCuts;
                         numberOfCuts++;
 
-                        log_.debug(
-                            "dBZ bins ["
-                            + level2record.getBinNum(
-                                level2record.REFLECTIVITY) + "]");
-                        log_.debug(
-                            "Vel bins ["
-                            + level2record.getBinNum(level2record.VELOCITY)
-                            + "]");
-
                     } else {
 
                         return;
@@ -463,19 +450,43 @@ public class Level2Data {
                 // azimuth/elevation LUT table entries to -1 to indicate 
                 // this record doesn't contain radar data.
 
-                log_.debug("Message type " + level2record.getMessageType()
+                log_.debug("Message type " + index.getMessageType(record)
                            + " detected");
                 azimuth[record]   = -1;
                 elevation[record] = -1;
 
             }
         }
-        readAll = true;  // end of file reached?
+        cut_start[old_cut + 1] = record;
+        log_.debug(" did read all");
 
+    }
 
-        /* System.out.println ("  hit eof"); */
-        /* System.out.println (" vvv readall is "+readAll); */
+    /**
+     * Get the index of the uncompressed file
+     *
+     * @return the index
+     *
+     * @throws IOException problem reading the file
+     */
+    public synchronized Level2Index getIndex() throws IOException {
+        if (index == null) {
+            index = Level2Index.getIndex(new File(filename));
+        }
+        return index;
+    }
 
+    /**
+     * Get a view of the file contents for reading records with
+     * {@link Level2Record#readCut(Level2Index, ByteBuffer, int)}. Each
+     * caller gets its own view.
+     *
+     * @return the view
+     *
+     * @throws IOException problem reading the file
+     */
+    public ByteBuffer getDataBuffer() throws IOException {
+        return getIndex().getBuffer();
     }
 
     /**
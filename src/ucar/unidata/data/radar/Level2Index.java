@@ -0,0 +1,335 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.data.radar;
+
+
+import ucar.unidata.util.CacheManager;
+import ucar.unidata.util.Misc;
+
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * A one pass index of an uncompressed NEXRAD Level II file. The file is
+ * read into a heap buffer and the header of each record is read once into
+ * primitive arrays (message type, radial status, azimuth, elevation,
+ * elevation number and VCP). The cut lookup tables in {@link Level2Data}
+ * are made from these arrays and the moment data of a cut is read from
+ * the buffer with bulk gets.
+ * <p>
+ * The indexes are held in the {@link CacheManager}, keyed by the file,
+ * its length and its modification time, so looping over the same volumes
+ * doesn't reparse them. The file contents are counted in the size of the
+ * index so the cache releases them along with it. The file is not kept
+ * open or mapped so it can be deleted while the index is cached.
+ * <p>
+ * The record layout is the same as the one {@link Level2Record} reads.
+ */
+public class Level2Index {
+
+    /** Size of the file header */
+    public static final int FILE_HEADER_SIZE = 24;
+
+    /** Size of the record header */
+    public static final int RECORD_HEADER_SIZE = 12;
+
+    /** Size of a record */
+    public static final int RADAR_DATA_SIZE = 2432;
+
+    /**
+     * Number of message bytes that must be there for a record's header
+     * to be read
+     */
+    private static final int MESSAGE_HEADER_SIZE = 84;
+
+    /** Offset of the moment data from the start of the message */
+    public static final int DATA_OFFSET = 116;
+
+    /** Number of bytes of moment data in a record */
+    public static final int DATA_SIZE = 2304;
+
+    static {
+        CacheManager.addSizeEstimator(new CacheManager.SizeEstimator() {
+            public long estimateSize(Object value) {
+                if (value instanceof Level2Index) {
+                    return ((Level2Index) value).getSize();
+                }
+                return -1;
+            }
+        });
+    }
+
+    /** The file contents */
+    private ByteBuffer buffer;
+
+    /** number of records */
+    private int numRecords;
+
+    /** message type of each record */
+    private byte[] messageTypes;
+
+    /** radial status of each record */
+    private short[] radialStatus;
+
+    /** raw azimuth angle of each record */
+    private short[] azimuths;
+
+    /** raw elevation angle of each record */
+    private short[] elevations;
+
+    /** elevation number of each record */
+    private short[] elevationNums;
+
+    /** volume coverage pattern of each record */
+    private short[] vcps;
+
+    /**
+     * Index the buffer
+     *
+     * @param buffer the file contents
+     */
+    public Level2Index(ByteBuffer buffer) {
+        this.buffer = buffer;
+        int length = buffer.limit();
+        numRecords = Math.max(0,
+                              (length - FILE_HEADER_SIZE - RECORD_HEADER_SIZE
+                               - MESSAGE_HEADER_SIZE) / RADAR_DATA_SIZE + 1);
+        messageTypes  = new byte[numRecords];
+        radialStatus  = new short[numRecords];
+        azimuths      = new short[numRecords];
+        elevations    = new short[numRecords];
+        elevationNums = new short[numRecords];
+        vcps          = new short[numRecords];
+        for (int record = 0; record < numRecords; record++) {
+            int message = getMessageOffset(record);
+            messageTypes[record]  = buffer.get(message + 3);
+            azimuths[record]      = buffer.getShort(message + 24);
+            radialStatus[record]  = buffer.getShort(message + 28);
+            elevations[record]    = buffer.getShort(message + 30);
+            elevationNums[record] = buffer.getShort(message + 32);
+            vcps[record]          = buffer.getShort(message + 60);
+        }
+    }
+
+    /**
+     * Get the index of the file, from the cache or by reading and
+     * indexing it
+     *
+     * @param file the uncompressed file
+     *
+     * @return the index
+     *
+     * @throws IOException On badness
+     */
+    public static Level2Index getIndex(File file) throws IOException {
+        Object key = Misc.newList(file.getAbsolutePath(),
+                                  Long.valueOf(file.length()),
+                                  Long.valueOf(file.lastModified()));
+        Level2Index index = (Level2Index) CacheManager.get(Level2Index.class,
+                                key);
+        if (index == null) {
+            index = new Level2Index(read(file));
+            CacheManager.put(Level2Index.class, key, index);
+        }
+        return index;
+    }
+
+    /**
+     * Read the file into a heap buffer
+     *
+     * @param file the file
+     *
+     * @return the buffer, with its limit at the number of bytes read
+     *
+     * @throws IOException On badness
+     */
+    public static ByteBuffer read(File file) throws IOException {
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            FileChannel channel = fis.getChannel();
+            ByteBuffer  buffer  = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            return buffer;
+        } finally {
+            fis.close();
+        }
+    }
+
+    /**
+     * Get the offset of the message in the given record
+     *
+     * @param record the record
+     *
+     * @return the offset
+     */
+    public static int getMessageOffset(int record) {
+        return record * RADAR_DATA_SIZE + FILE_HEADER_SIZE
+               + RECORD_HEADER_SIZE;
+    }
+
+    /**
+     * Get a view of the file. Each caller gets its own view so reads from
+     * different threads don't interfere.
+     *
+     * @return a read only view of the file
+     */
+    public ByteBuffer getBuffer() {
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Copy the moment data of the records into the rows of bins, the same
+     * way {@link Level2Record#readCut} does. Row i holds record + i. Rows
+     * of records that are not radar data (message type 1) are skipped.
+     * This stops at the end of the file, at the first record with an
+     * elevation number that is greater than the one before it, or when
+     * the rows are filled.
+     *
+     * @param buffer the view of the file to read from
+     * @param record the first record
+     * @param bins the rows of bins to fill
+     *
+     * @return the number of rows read through
+     */
+    public int readCut(ByteBuffer buffer, int record, byte[][] bins) {
+        short oldNum = 999;
+        int   i      = 0;
+        for (; i < bins.length; i++) {
+            int r = record + i;
+            if (r >= numRecords) {
+                break;
+            }
+            if (messageTypes[r] != 1) {
+                continue;
+            }
+            if (elevationNums[r] > oldNum) {
+                break;
+            }
+            oldNum = elevationNums[r];
+            int start = getMessageOffset(r) + DATA_OFFSET;
+            if (start + DATA_SIZE > buffer.limit()) {
+                break;
+            }
+            buffer.position(start);
+            buffer.get(bins[i], 0, DATA_SIZE);
+        }
+        return i;
+    }
+
+    /**
+     * Get the number of records
+     *
+     * @return number of records
+     */
+    public int getNumRecords() {
+        return numRecords;
+    }
+
+    /**
+     * Get the message type of the record
+     *
+     * @param record the record
+     *
+     * @return the message type
+     */
+    public int getMessageType(int record) {
+        return messageTypes[record];
+    }
+
+    /**
+     * Get the radial status of the record
+     *
+     * @param record the record
+     *
+     * @return the radial status
+     */
+    public int getRadialStatus(int record) {
+        return radialStatus[record];
+    }
+
+    /**
+     * Get the azimuth of the record
+     *
+     * @param record the record
+     *
+     * @return the azimuth or -1 if the record is not radar data
+     */
+    public float getAzimuth(int record) {
+        if (messageTypes[record] != 1) {
+            return -1;
+        }
+        return 180.0f * (azimuths[record] & 0xffff) / 32768.0f;
+    }
+
+    /**
+     * Get the elevation angle of the record
+     *
+     * @param record the record
+     *
+     * @return the elevation angle
+     */
+    public float getElevation(int record) {
+        return 180.0f * elevations[record] / 32768.0f;
+    }
+
+    /**
+     * Get the elevation number of the record
+     *
+     * @param record the record
+     *
+     * @return the elevation number
+     */
+    public int getElevationNum(int record) {
+        return elevationNums[record];
+    }
+
+    /**
+     * Get the volume coverage pattern of the record
+     *
+     * @param record the record
+     *
+     * @return the VCP
+     */
+    public int getVCP(int record) {
+        return vcps[record];
+    }
+
+    /**
+     * Get the estimated size of the index and the file contents on
+     * the heap
+     *
+     * @return the size in bytes
+     */
+    public long getSize() {
+        return buffer.capacity() + 11L * numRecords;
+    }
+}
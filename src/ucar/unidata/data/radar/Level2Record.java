@@ -26,6 +26,10 @@ import ucar.netcdf.RandomAccessFile;
 import java.io.EOFException;
 import java.io.IOException;
 
+import java.nio.ByteBuffer;
+
+import java.util.Arrays;
+
 
 /**
  * This class reads a specified record a NEXRAD level II file
@@ -336,6 +340,87 @@ public class Level2Record {
     }
 
 
+    /**
+     * Read the header of the record from a view of a level II file
+     *
+     * @param buffer     the view of the file to read from
+     * @param record     record to read
+     */
+    public void readHeader(ByteBuffer buffer, int record) {
+        int offset = Level2Index.getMessageOffset(record);
+        if (offset + 84 > buffer.limit()) {
+            eof_flag = 1;
+            return;
+        }
+        message_size  = buffer.getShort(offset);
+        channel       = buffer.get(offset + 2);
+        message_type  = buffer.get(offset + 3);
+        id_sequence   = buffer.getShort(offset + 4);
+        julian_date   = buffer.getShort(offset + 6);
+        milliseconds  = buffer.getInt(offset + 8);
+        number_segs   = buffer.getShort(offset + 12);
+        seg_number    = buffer.getShort(offset + 14);
+        time          = buffer.getInt(offset + 16);
+        julian        = buffer.getShort(offset + 20);
+        unamb_range   = buffer.getShort(offset + 22);
+        azimuth_ang   = buffer.getShort(offset + 24) & 0xffff;
+        azimuth_num   = buffer.getShort(offset + 26);
+        radial_status = buffer.getShort(offset + 28);
+        elevation_ang = buffer.getShort(offset + 30);
+        elevation_num = buffer.getShort(offset + 32);
+        first_bin     = buffer.getShort(offset + 34);
+        doppler_range = buffer.getShort(offset + 36);
+        surv_size     = buffer.getShort(offset + 38);
+        dopl_size     = buffer.getShort(offset + 40);
+        surv_bins     = buffer.getShort(offset + 42);
+        dopl_bins     = buffer.getShort(offset + 44);
+        cut           = buffer.getShort(offset + 46);
+        calibration   = buffer.getFloat(offset + 48);
+        surv_pointer  = buffer.getShort(offset + 52);
+        vel_pointer   = buffer.getShort(offset + 54);
+        spw_pointer   = buffer.getShort(offset + 56);
+        resolution    = buffer.getShort(offset + 58);
+        vcp           = buffer.getShort(offset + 60);
+    }
+
+
+    /**
+     * Read the header and the bins of the record from a view of a
+     * level II file
+     *
+     * @param buffer     the view of the file to read from
+     * @param record     record to read
+     */
+    public void readRecord(ByteBuffer buffer, int record) {
+        readHeader(buffer, record);
+        int start = Level2Index.getMessageOffset(record)
+                    + Level2Index.DATA_OFFSET;
+        if (start + Level2Index.DATA_SIZE > buffer.limit()) {
+            eof_flag = 1;
+            return;
+        }
+        buffer.position(start);
+        buffer.get(bins[0], 0, Level2Index.DATA_SIZE);
+    }
+
+
+    /**
+     * Read the cut that starts at the record from a view of a
+     * level II file. This reads the header of the first record and then
+     * the bins of each radial with one bulk get.
+     *
+     * @param index        the index of the file
+     * @param buffer       the view of the file to read from
+     * @param record       first record of the cut
+     *
+     * @return  number of radials in the cut
+     */
+    public int readCut(Level2Index index, ByteBuffer buffer, int record) {
+        readHeader(buffer, record);
+        return index.readCut(buffer, record, bins);
+    }
+
+
     /**
      * Method to read a selected record from a specified level II file.
      *
@@ -720,4 +805,49 @@ public class Level2Record {
 
         return Float.NaN;
     }
+
+    /**
+     * Decode a run of bins of a radial into values. This does the same
+     * thing as {@link #getBinValue(int, int, int)} for each bin.
+     *
+     * @param moment   moment ID
+     * @param radial   radial index
+     * @param firstBin index of the first bin
+     * @param numBins  number of bins
+     * @param values   the values to fill
+     * @param offset   where to start in values
+     */
+    public void getBinValues(int moment, int radial, int firstBin,
+                             int numBins, float[] values, int offset) {
+        int     pointer;
+        float[] lut;
+        switch (moment) {
+
+          case REFLECTIVITY :
+              pointer = surv_pointer;
+              lut     = Reflectivity_LUT;
+              break;
+
+          case VELOCITY :
+              pointer = vel_pointer;
+              lut     = (resolution == DOPPLER_RESOLUTION_LOW)
+                        ? Velocity_1km_LUT
+                        : Velocity_hkm_LUT;
+              break;
+
+          case SPECTRUM_WIDTH :
+              pointer = spw_pointer;
+              lut     = Velocity_hkm_LUT;
+              break;
+
+          default :
+              Arrays.fill(values, offset, offset + numBins, Float.NaN);
+              return;
+        }
+        byte[] row   = bins[radial];
+        int    start = pointer - 100 + firstBin;
+        for (int i = 0; i < numBins; i++) {
+            values[offset + i] = lut[row[start + i] & 0xff];
+        }
+    }
 }
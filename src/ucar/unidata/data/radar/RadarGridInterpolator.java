@@ -0,0 +1,770 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.data.radar;
+
+
+import ucar.unidata.util.CacheManager;
+import ucar.unidata.util.Misc;
+
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Interpolates a radar volume onto a lat/lon/alt grid. This finds the
+ * neighboring rays with {@link CDMRadarAdapter#getNeighborRays} and
+ * weights the gates like {@link CDMRadarAdapter#getWtsFor2ValidRays},
+ * {@link CDMRadarAdapter#getWtsFor3Or4ValidRays} and
+ * {@link CDMRadarAdapter#loadInterpGridPt} but splits the work in two:
+ * <ul>
+ * <li>A lookup table that holds, for each grid cell, the (up to) four
+ * neighboring rays, the inner gate index and the range weight. This only
+ * depends on the grid and the nominal sweep geometry so it is built once
+ * and cached.</li>
+ * <li>The interpolation itself, which computes the angular weights from
+ * the exact ray angles of the volume and gathers the gate values with the
+ * table. This works on flat primitive arrays and runs in parallel over
+ * (level, row) tiles.</li>
+ * </ul>
+ *
+ * The tables are held in the {@link CacheManager} so they are shared by
+ * all of the volumes from a radar that have the same nominal sweep
+ * geometry and are evicted with the rest of the memory cache. The exact
+ * ray angles change from one volume to the next, so the neighbors are
+ * found with the elevations rounded to {@link #ELEVATION_RESOLUTION} and
+ * the azimuths rounded to {@link #AZIMUTH_RESOLUTION}. The table refers to
+ * the rays by their position in azimuth order, which is mapped to the ray
+ * index of each volume when it is interpolated. A cell that is within the
+ * rounding of a sweep elevation or a ray azimuth can have other neighbors
+ * in another volume, so its neighbors are found again from the exact
+ * angles of each volume. This gives the same neighbors and weights as
+ * working from the exact angles throughout.
+ */
+public class RadarGridInterpolator {
+
+    /** Number of neighboring rays for each grid cell */
+    private static final int NUM_NEIGHBORS = 4;
+
+    /** Number of rows each fork/join task does without splitting */
+    private static final int ROWS_PER_TASK = 4;
+
+    /** Marks a missing neighbor */
+    private static final int NONE = -1;
+
+    /** Index of the lower left neighbor */
+    private static final int LL = 0;
+
+    /** Index of the upper left neighbor */
+    private static final int UL = 1;
+
+    /** Index of the lower right neighbor */
+    private static final int LR = 2;
+
+    /** Index of the upper right neighbor */
+    private static final int UR = 3;
+
+    /** Elevations (degrees) are rounded to this for the nominal geometry */
+    public static final double ELEVATION_RESOLUTION = 0.1;
+
+    /** Azimuths (degrees) are rounded to this for the nominal geometry */
+    public static final double AZIMUTH_RESOLUTION = 0.25;
+
+    /** Slack (degrees) for the floating point error of the rounding */
+    private static final double ROUNDING_SLOP = 1.0e-6;
+
+    /** The order we keep the neighbors in: ll, ul, lr, ur */
+    private static final int[] NEIGHBOR_ORDER = { 0, 2, 1, 3 };
+
+    static {
+        CacheManager.addSizeEstimator(new CacheManager.SizeEstimator() {
+            public long estimateSize(Object value) {
+                if (value instanceof RadarGridInterpolator) {
+                    return ((RadarGridInterpolator) value).getSize();
+                }
+                if (value instanceof GridCells) {
+                    return ((GridCells) value).getSize();
+                }
+                return -1;
+            }
+        });
+    }
+
+    /** number of columns */
+    private int numCols;
+
+    /** number of rows */
+    private int numRows;
+
+    /** number of levels */
+    private int numLevels;
+
+    /** elevation angle (degrees) of each cell */
+    private double[] cellElevs;
+
+    /** azimuth (degrees) of each cell */
+    private double[] cellAzims;
+
+    /**
+     * The sweep index of the ll, ul, lr and ur neighbor of each cell,
+     * or NONE
+     */
+    private int[] neighborSweeps;
+
+    /**
+     * The azimuth order position of the ll, ul, lr and ur neighbor of
+     * each cell
+     */
+    private int[] neighborRays;
+
+    /** The inner gate index of each cell */
+    private int[] gates;
+
+    /** The range weight of the outer gate of each cell */
+    private double[] outerWeights;
+
+    /**
+     * Are the neighbors of the cell found from the exact angles of each
+     * volume
+     */
+    private boolean[] findNeighbors;
+
+
+    /**
+     * Holds the radial coordinates (elevation, azimuth and slant range) of
+     * each cell of the grid. The cells are ordered by level, row and
+     * column.
+     */
+    public static class GridCells {
+
+        /** number of columns */
+        int numCols;
+
+        /** number of rows */
+        int numRows;
+
+        /** number of levels */
+        int numLevels;
+
+        /** elevation angle (degrees) of each cell */
+        double[] elevs;
+
+        /** azimuth (degrees) of each cell */
+        double[] azims;
+
+        /** distance (km) from the radar to each cell */
+        double[] dists;
+
+        /**
+         * ctor
+         *
+         * @param numCols number of columns
+         * @param numRows number of rows
+         * @param numLevels number of levels
+         */
+        public GridCells(int numCols, int numRows, int numLevels) {
+            this.numCols   = numCols;
+            this.numRows   = numRows;
+            this.numLevels = numLevels;
+            int numCells = numCols * numRows * numLevels;
+            elevs = new double[numCells];
+            azims = new double[numCells];
+            dists = new double[numCells];
+        }
+
+        /**
+         * Set the radial coordinates of a cell
+         *
+         * @param cell cell index
+         * @param elev elevation angle
+         * @param azim azimuth
+         * @param dist distance
+         */
+        public void setCell(int cell, double elev, double azim,
+                            double dist) {
+            elevs[cell] = elev;
+            azims[cell] = azim;
+            dists[cell] = dist;
+        }
+
+        /**
+         * Get the number of cells
+         *
+         * @return number of cells
+         */
+        public int getNumCells() {
+            return elevs.length;
+        }
+
+        /**
+         * Estimate the memory size
+         *
+         * @return size in bytes
+         */
+        long getSize() {
+            return 3L * 8 * elevs.length;
+        }
+    }
+
+
+    /**
+     * Holds the geometry of the sweeps in a volume: the mean elevation
+     * of each sweep, the sorted azimuths and their original ray indices,
+     * the actual azimuth and elevation of each ray and the gate spacing.
+     */
+    public static class SweepGeometry {
+
+        /** mean elevation of each sweep */
+        double[] elevs;
+
+        /** sorted azimuths of each sweep */
+        double[][] azims;
+
+        /** original ray index of each sorted azimuth */
+        int[][] azimIndices;
+
+        /** azimuth of each ray */
+        double[][] rayAzims;
+
+        /** elevation of each ray */
+        double[][] rayElevs;
+
+        /** range (km) to the first gate */
+        double rangeToFirstGate;
+
+        /** gate size (km) */
+        double rangeStep;
+
+        /** is this the nominal geometry */
+        private boolean nominal = false;
+
+        /**
+         * ctor
+         *
+         * @param elevs mean elevation of each sweep
+         * @param azims sorted azimuths of each sweep
+         * @param azimIndices original ray index of each sorted azimuth
+         * @param rayAzims azimuth of each ray
+         * @param rayElevs elevation of each ray
+         * @param rangeToFirstGate range (km) to the first gate
+         * @param rangeStep gate size (km)
+         */
+        public SweepGeometry(double[] elevs, double[][] azims,
+                             int[][] azimIndices, double[][] rayAzims,
+                             double[][] rayElevs, double rangeToFirstGate,
+                             double rangeStep) {
+            this.elevs            = elevs;
+            this.azims            = azims;
+            this.azimIndices      = azimIndices;
+            this.rayAzims         = rayAzims;
+            this.rayElevs         = rayElevs;
+            this.rangeToFirstGate = rangeToFirstGate;
+            this.rangeStep        = rangeStep;
+        }
+
+        /**
+         * Get the nominal geometry. The angles are rounded and the rays
+         * are in azimuth order, so ray i of a sweep is its i'th sorted
+         * azimuth. Volumes from the same scan strategy that only differ
+         * by the jitter of the antenna have the same nominal geometry.
+         * It has no ray elevations since the weights are computed from
+         * the exact angles of each volume.
+         *
+         * @return the nominal geometry
+         */
+        public SweepGeometry getNominal() {
+            if (nominal) {
+                return this;
+            }
+            int        numSweeps  = elevs.length;
+            double[]   nomElevs   = new double[numSweeps];
+            double[][] nomAzims   = new double[numSweeps][];
+            int[][]    nomIndices = new int[numSweeps][];
+            for (int s = 0; s < numSweeps; s++) {
+                nomElevs[s] = round(elevs[s], ELEVATION_RESOLUTION);
+                int numRays = azims[s].length;
+                nomAzims[s]   = new double[numRays];
+                nomIndices[s] = new int[numRays];
+                for (int i = 0; i < numRays; i++) {
+                    nomAzims[s][i]   = round(azims[s][i],
+                            AZIMUTH_RESOLUTION);
+                    nomIndices[s][i] = i;
+                }
+            }
+            SweepGeometry geometry = new SweepGeometry(nomElevs, nomAzims,
+                                         nomIndices, nomAzims, null,
+                                         rangeToFirstGate, rangeStep);
+            geometry.nominal = true;
+            return geometry;
+        }
+
+        /**
+         * Round the angle
+         *
+         * @param angle the angle
+         * @param resolution what to round to
+         *
+         * @return the rounded angle
+         */
+        private static double round(double angle, double resolution) {
+            return Math.round(angle / resolution) * resolution;
+        }
+
+        /**
+         * Override equals. The ray azimuths follow from the sorted
+         * azimuths and their ray indices so they are not compared.
+         *
+         * @param o object
+         *
+         * @return is equals
+         */
+        public boolean equals(Object o) {
+            if ( !(o instanceof SweepGeometry)) {
+                return false;
+            }
+            SweepGeometry that = (SweepGeometry) o;
+            return (rangeToFirstGate == that.rangeToFirstGate)
+                   && (rangeStep == that.rangeStep)
+                   && Arrays.equals(elevs, that.elevs)
+                   && Arrays.deepEquals(azims, that.azims)
+                   && Arrays.deepEquals(azimIndices, that.azimIndices)
+                   && Arrays.deepEquals(rayElevs, that.rayElevs);
+        }
+
+        /**
+         * Override hashCode. Just use the sweep elevations and gates
+         * since hashing every ray costs as much as comparing them.
+         *
+         * @return hash code
+         */
+        public int hashCode() {
+            return Arrays.hashCode(elevs)
+                   ^ Double.valueOf(rangeToFirstGate).hashCode()
+                   ^ Double.valueOf(rangeStep).hashCode();
+        }
+    }
+
+
+    /**
+     * Find the cached interpolator for the grid and the nominal sweep
+     * geometry, making one if needed.
+     *
+     * @param cellsKey identifies the grid, e.g., the radar location and
+     *                 grid dimensions
+     * @param cells the grid cells
+     * @param geometry the sweep geometry
+     *
+     * @return the interpolator
+     */
+    public static RadarGridInterpolator getInterpolator(Object cellsKey,
+            GridCells cells, SweepGeometry geometry) {
+        SweepGeometry nominal = geometry.getNominal();
+        List          key     = Misc.newList(cellsKey, nominal);
+        RadarGridInterpolator interpolator =
+            (RadarGridInterpolator) CacheManager.get(
+                RadarGridInterpolator.class, key);
+        if (interpolator == null) {
+            interpolator = new RadarGridInterpolator(cells, nominal);
+            CacheManager.put(RadarGridInterpolator.class, key,
+                             interpolator);
+        }
+        return interpolator;
+    }
+
+    /**
+     * Build the lookup table for the grid and the nominal sweep geometry
+     *
+     * @param cells the grid cells
+     * @param sweepGeometry the sweep geometry
+     */
+    public RadarGridInterpolator(final GridCells cells,
+                                 SweepGeometry sweepGeometry) {
+        final SweepGeometry geometry = sweepGeometry.getNominal();
+        this.numCols   = cells.numCols;
+        this.numRows   = cells.numRows;
+        this.numLevels = cells.numLevels;
+        int numCells = cells.getNumCells();
+        cellElevs      = cells.elevs;
+        cellAzims      = cells.azims;
+        neighborSweeps = new int[NUM_NEIGHBORS * numCells];
+        neighborRays   = new int[NUM_NEIGHBORS * numCells];
+        gates          = new int[numCells];
+        outerWeights   = new double[numCells];
+        findNeighbors  = new boolean[numCells];
+        ForkJoinPool.commonPool().invoke(new RowTask(0,
+                numLevels * numRows) {
+            protected void doRows(int fromRow, int toRow) {
+                for (int cell = fromRow * numCols; cell < toRow * numCols;
+                        cell++) {
+                    initCell(cell, cells, geometry);
+                }
+            }
+        });
+    }
+
+    /**
+     * Fill in the table entries for one cell
+     *
+     * @param cell the cell index
+     * @param cells the grid cells
+     * @param geometry the nominal sweep geometry
+     */
+    private void initCell(int cell, GridCells cells,
+                          SweepGeometry geometry) {
+        double elev  = cells.elevs[cell];
+        double az    = cells.azims[cell];
+        double dgate = (cells.dists[cell] - geometry.rangeToFirstGate)
+                       / geometry.rangeStep;
+        gates[cell]        = (int) Math.floor(dgate);
+        outerWeights[cell] = dgate - gates[cell];
+        //If the cell is not within the rounding of a nominal angle then
+        //it is on the same side of every exact angle as it is of the
+        //nominal one, so getNeighborRays picks the same neighbors for
+        //every volume with this nominal geometry
+        double elevSlop = ELEVATION_RESOLUTION / 2 + ROUNDING_SLOP;
+        for (int s = 0; s < geometry.elevs.length; s++) {
+            if (Math.abs(elev - geometry.elevs[s]) <= elevSlop) {
+                findNeighbors[cell] = true;
+                return;
+            }
+        }
+        int[][] nears = CDMRadarAdapter.getNeighborRays(az, elev,
+                            geometry.elevs, geometry.azims,
+                            geometry.azimIndices);
+        //Above the top sweep and past its last azimuth getNeighborRays
+        //gives sweep 0 with a ray of the top sweep, which does not map
+        //to the same ray in every volume
+        int numSweeps = geometry.elevs.length;
+        if ((numSweeps > 1) && (elev > geometry.elevs[numSweeps - 1])
+                && (nears[0][0] == 0)) {
+            findNeighbors[cell] = true;
+            return;
+        }
+        //It only compares the azimuth with the sweeps it picks from
+        for (int[] near : nears) {
+            if ((near[0] != -999)
+                    && isNearAzimuth(az, geometry.azims[near[0]])) {
+                findNeighbors[cell] = true;
+                return;
+            }
+        }
+        setNeighbors(nears, neighborSweeps, neighborRays,
+                     cell * NUM_NEIGHBORS);
+    }
+
+    /**
+     * Is the azimuth within the rounding of one of the nominal azimuths
+     *
+     * @param az the azimuth of the cell
+     * @param azims the sorted nominal azimuths of a sweep
+     *
+     * @return is near
+     */
+    private static boolean isNearAzimuth(double az, double[] azims) {
+        double azSlop = AZIMUTH_RESOLUTION / 2 + ROUNDING_SLOP;
+        int    idx    = CDMRadarAdapter.findInsertIndex(azims, az);
+        if ((idx < azims.length) && (azims[idx] - az <= azSlop)) {
+            return true;
+        }
+        return (idx > 0) && (az - azims[idx - 1] <= azSlop);
+    }
+
+    /**
+     * Copy the neighbors from getNeighborRays in the order we keep them
+     *
+     * @param nears the ll, lr, ul and ur sweep and ray from
+     *              getNeighborRays
+     * @param sweeps filled in with the sweep of each neighbor or NONE
+     * @param rays filled in with the ray of each neighbor or NONE
+     * @param offset where to put them
+     */
+    private static void setNeighbors(int[][] nears, int[] sweeps,
+                                     int[] rays, int offset) {
+        for (int k = 0; k < NUM_NEIGHBORS; k++) {
+            int[] near = nears[NEIGHBOR_ORDER[k]];
+            if (near[0] == -999) {
+                sweeps[offset + k] = NONE;
+                rays[offset + k]   = NONE;
+            } else {
+                sweeps[offset + k] = near[0];
+                rays[offset + k]   = near[1];
+            }
+        }
+    }
+
+    /**
+     * Compute the angular weights of the neighbors of a cell from the
+     * exact ray angles. This follows getWtsFor2ValidRays and
+     * getWtsFor3Or4ValidRays.
+     *
+     * @param elev the elevation of the cell
+     * @param az the azimuth of the cell
+     * @param geometry the sweep geometry of the volume
+     * @param sweeps the sweep of each neighbor or NONE
+     * @param rays the ray index of each neighbor
+     * @param wtAng filled in with the weights
+     *
+     * @return false if the cell can't be interpolated
+     */
+    private static boolean getAngularWeights(double elev, double az,
+            SweepGeometry geometry, int[] sweeps, int[] rays,
+            double[] wtAng) {
+        int nAvail = 0;
+        for (int k = 0; k < NUM_NEIGHBORS; k++) {
+            if (sweeps[k] != NONE) {
+                nAvail++;
+            }
+        }
+        if (nAvail == 2) {
+            //The search points in the old interpolation carried the grid
+            //point's own elevation and azimuth so each ray gets the same
+            //weight
+            double wtDist = 1.0 / CDMRadarAdapter.angDist(0, 0);
+            for (int k = 0; k < NUM_NEIGHBORS; k++) {
+                wtAng[k] = (sweeps[k] == NONE)
+                           ? 0.0
+                           : wtDist;
+            }
+            return true;
+        }
+        if (nAvail != NUM_NEIGHBORS) {
+            //The original code fails on this so just treat it as missing
+            return false;
+        }
+        double[][] rayAzims  = geometry.rayAzims;
+        double[][] rayElevs  = geometry.rayElevs;
+        double     azLl      = rayAzims[sweeps[LL]][rays[LL]];
+        double     azUl      = rayAzims[sweeps[UL]][rays[UL]];
+        double     azLr      = rayAzims[sweeps[LR]][rays[LR]];
+        double     azUr      = rayAzims[sweeps[UR]][rays[UR]];
+
+        double     dazLower  = azLr - azLl;
+        double     wtAzLr    = 0.5;
+        if (dazLower != 0.0) {
+            wtAzLr = (az - azLl) / dazLower;
+        }
+        double wtAzLl = 1.0 - wtAzLr;
+        double elLowerInterp = rayElevs[sweeps[LL]][rays[LL]] * wtAzLl
+                               + rayElevs[sweeps[LR]][rays[LR]] * wtAzLr;
+
+        double dazUpper = azUr - azUl;
+        double wtAzUr   = 0.5;
+        if (dazUpper != 0.0) {
+            wtAzUr = (az - azUl) / dazUpper;
+        }
+        double wtAzUl = 1.0 - wtAzUr;
+        double elUpperInterp = rayElevs[sweeps[UL]][rays[UL]] * wtAzUl
+                               + rayElevs[sweeps[UR]][rays[UR]] * wtAzUr;
+
+        double dEl       = elUpperInterp - elLowerInterp;
+        double wtElUpper = 0.5;
+        if (dEl != 0) {
+            wtElUpper = (elev - elLowerInterp) / dEl;
+        }
+        double wtElLower = 1.0 - wtElUpper;
+        wtAng[LL] = wtAzLl * wtElLower;
+        wtAng[UL] = wtAzUl * wtElUpper;
+        wtAng[LR] = wtAzLr * wtElLower;
+        wtAng[UR] = wtAzUr * wtElUpper;
+        return true;
+    }
+
+    /**
+     * Interpolate the volume onto the grid
+     *
+     * @param geometry the sweep geometry of the volume. The weights are
+     *                 computed from its angles. This must have the same
+     *                 nominal geometry the table was built with.
+     * @param sweepData the gate values of each sweep, ray by ray
+     * @param numGates the number of gates in each ray of each sweep
+     * @param result holds the grid values, ordered by level, row and
+     *               column
+     */
+    public void interpolate(final SweepGeometry geometry,
+                            final float[][] sweepData, final int[] numGates,
+                            final float[] result) {
+        ForkJoinPool.commonPool().invoke(new RowTask(0,
+                numLevels * numRows) {
+            protected void doRows(int fromRow, int toRow) {
+                interpolate(geometry, sweepData, numGates, result,
+                            fromRow * numCols, toRow * numCols);
+            }
+        });
+    }
+
+    /**
+     * Interpolate a range of cells. Like loadInterpGridPt, a cell needs at
+     * least two contributing gates.
+     *
+     * @param geometry the sweep geometry of the volume
+     * @param sweepData the gate values of each sweep, ray by ray
+     * @param numGates the number of gates in each ray of each sweep
+     * @param result holds the grid values
+     * @param fromCell first cell
+     * @param toCell one past the last cell
+     */
+    private void interpolate(SweepGeometry geometry, float[][] sweepData,
+                             int[] numGates, float[] result, int fromCell,
+                             int toCell) {
+        //The table holds the azimuth order of the rays
+        int[][]  order  = geometry.azimIndices;
+        int[]    sweeps = new int[NUM_NEIGHBORS];
+        int[]    rays   = new int[NUM_NEIGHBORS];
+        double[] wtAng  = new double[NUM_NEIGHBORS];
+        double[] wts    = new double[2 * NUM_NEIGHBORS];
+        for (int cell = fromCell; cell < toCell; cell++) {
+            double elev = cellElevs[cell];
+            double az   = cellAzims[cell];
+            if (findNeighbors[cell]) {
+                setNeighbors(CDMRadarAdapter.getNeighborRays(az, elev,
+                        geometry.elevs, geometry.azims,
+                        geometry.azimIndices), sweeps, rays, 0);
+            } else {
+                int base = cell * NUM_NEIGHBORS;
+                for (int k = 0; k < NUM_NEIGHBORS; k++) {
+                    sweeps[k] = neighborSweeps[base + k];
+                    rays[k]   = (sweeps[k] == NONE)
+                                ? NONE
+                                : order[sweeps[k]][neighborRays[base + k]];
+                }
+            }
+            if ( !getAngularWeights(elev, az, geometry, sweeps, rays,
+                                    wtAng)) {
+                result[cell] = Float.NaN;
+                continue;
+            }
+
+            //Normalize the weights
+            double wtOuter = outerWeights[cell];
+            double wtInner = 1.0 - wtOuter;
+            double sumWt   = 0.0;
+            for (int k = 0; k < NUM_NEIGHBORS; k++) {
+                wts[2 * k]     = wtAng[k] * wtInner;
+                wts[2 * k + 1] = wtAng[k] * wtOuter;
+                sumWt          += wts[2 * k];
+                sumWt          += wts[2 * k + 1];
+            }
+            if (sumWt == 0) {
+                sumWt = 1.0;
+            }
+            for (int i = 0; i < 2 * NUM_NEIGHBORS; i++) {
+                wts[i] /= sumWt;
+            }
+
+            int    igateInner = gates[cell];
+            int    igateOuter = igateInner + 1;
+            double sumVals    = 0;
+            double sumWts     = 0;
+            int    nContrib   = 0;
+            for (int k = 0; k < NUM_NEIGHBORS; k++) {
+                int sweep = sweeps[k];
+                if (sweep == NONE) {
+                    continue;
+                }
+                float[] data   = sweepData[sweep];
+                int     nGates = numGates[sweep];
+                int     offset = rays[k] * nGates;
+                if ((igateInner >= 0) && (igateInner < nGates)) {
+                    sumVals += data[offset + igateInner] * wts[2 * k];
+                    sumWts  += wts[2 * k];
+                    nContrib++;
+                }
+                if ((igateOuter >= 0) && (igateOuter < nGates)) {
+                    sumVals += data[offset + igateOuter] * wts[2 * k + 1];
+                    sumWts  += wts[2 * k + 1];
+                    nContrib++;
+                }
+            }
+            if ((nContrib >= 2) && (sumWts > 0)) {
+                result[cell] = (float) (sumVals / sumWts);
+            } else {
+                result[cell] = Float.NaN;
+            }
+        }
+    }
+
+    /**
+     * Estimate the memory size
+     *
+     * @return size in bytes
+     */
+    long getSize() {
+        return 4L * (neighborSweeps.length + neighborRays.length
+                     + gates.length) + 8L
+                         * (outerWeights.length + cellElevs.length
+                            + cellAzims.length) + findNeighbors.length;
+    }
+
+    /**
+     * Splits a range of (level, row) rows in half until it is small
+     * enough to do directly
+     */
+    private abstract static class RowTask extends RecursiveAction {
+
+        /** first row */
+        private int fromRow;
+
+        /** one past the last row */
+        private int toRow;
+
+        /**
+         * ctor
+         *
+         * @param fromRow first row
+         * @param toRow one past the last row
+         */
+        RowTask(int fromRow, int toRow) {
+            this.fromRow = fromRow;
+            this.toRow   = toRow;
+        }
+
+        /**
+         * Do the rows
+         *
+         * @param fromRow first row
+         * @param toRow one past the last row
+         */
+        protected abstract void doRows(int fromRow, int toRow);
+
+        /**
+         * Split or do the rows
+         */
+        protected void compute() {
+            if (toRow - fromRow <= ROWS_PER_TASK) {
+                doRows(fromRow, toRow);
+                return;
+            }
+            int           mid   = (fromRow + toRow) / 2;
+            final RowTask outer = this;
+            invokeAll(new RowTask(fromRow, mid) {
+                protected void doRows(int from, int to) {
+                    outer.doRows(from, to);
+                }
+            }, new RowTask(mid, toRow) {
+                protected void doRows(int from, int to) {
+                    outer.doRows(from, to);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,537 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.gis;
+
+
+import java.awt.geom.Rectangle2D;
+
+import java.util.Arrays;
+
+
+/**
+ * A multi-scale declutter index for a set of points. The points are
+ * thinned greedily, in priority order, at a series of separations that
+ * shrink by {@link #LEVEL_RATIO} from one level to the next. A point kept
+ * at one level is kept at all of the finer levels, so the points to show
+ * for any glyph size are a prefix of the points sorted by level and
+ * declutter doesn't need to redo the thinning when the display is zoomed.
+ * The points are also bucketed by location, with each bucket sorted by
+ * level, so finding the points in a view only looks at the buckets in
+ * the view.
+ * <p>
+ * Like the {@link SpatialGrid}, two points clash when glyphs of the
+ * given size drawn at them would overlap. Scales are in glyph units,
+ * so a scale of 1 is a glyph of the width and height the index was made
+ * with.
+ *
+ * @author IDV Development Team
+ */
+public class DeclutterIndex {
+
+    /** The ratio of the separations of two neighboring levels */
+    public static final double LEVEL_RATIO = 1.25;
+
+    /** The most levels we make */
+    public static final int MAX_LEVELS = 64;
+
+    /** About how many points go in a location bucket */
+    private static final int POINTS_PER_BUCKET = 16;
+
+    /** Most buckets on a side */
+    private static final int MAX_BUCKETS = 256;
+
+    /** x of the points */
+    private double[] xs;
+
+    /** y of the points */
+    private double[] ys;
+
+    /** glyph width */
+    private double width;
+
+    /** glyph height */
+    private double height;
+
+    /** The separation, in glyph units, of each level */
+    private double[] separations;
+
+    /** The level each point is first shown at. numLevels if never */
+    private int[] levels;
+
+    /** The points sorted by level and then priority */
+    private int[] order;
+
+    /** levelEnds[k] is the number of points shown at level k */
+    private int[] levelEnds;
+
+    /** bounds of the points */
+    private double minX, minY, maxX, maxY;
+
+    /** number of buckets on a side */
+    private int numBuckets;
+
+    /** Where each bucket starts in bucketPoints */
+    private int[] bucketStarts;
+
+    /** The points by bucket, sorted by level within a bucket */
+    private int[] bucketPoints;
+
+    /** Open addressing hash of the cells used when thinning */
+    private long[] cellKeys;
+
+    /** first point in each hash slot. -1 if empty */
+    private int[] cellHeads;
+
+    /** Next point in the same cell */
+    private int[] cellNext;
+
+    /**
+     * Make the index
+     *
+     * @param xs x of the points, in priority order. NaNs are never shown.
+     * @param ys y of the points
+     * @param width glyph width in the same units as the xs
+     * @param height glyph height in the same units as the ys
+     */
+    public DeclutterIndex(double[] xs, double[] ys, double width,
+                          double height) {
+        if (xs.length != ys.length) {
+            throw new IllegalArgumentException("Different x and y lengths:"
+                    + xs.length + " " + ys.length);
+        }
+        if ( !(width > 0) || !(height > 0)) {
+            throw new IllegalArgumentException("Bad glyph size:" + width
+                    + "x" + height);
+        }
+        this.xs     = xs;
+        this.ys     = ys;
+        this.width  = width;
+        this.height = height;
+        makeLevels();
+        makeBuckets();
+    }
+
+    /**
+     * Thin the points at each level
+     */
+    private void makeLevels() {
+        int      numPoints = xs.length;
+        double[] us        = new double[numPoints];
+        double[] vs        = new double[numPoints];
+        int[]    valid     = new int[numPoints];
+        int      numValid  = 0;
+        minX = Double.POSITIVE_INFINITY;
+        maxX = Double.NEGATIVE_INFINITY;
+        minY = Double.POSITIVE_INFINITY;
+        maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < numPoints; i++) {
+            us[i] = xs[i] / width;
+            vs[i] = ys[i] / height;
+            if ( !isValid(us[i], vs[i])) {
+                continue;
+            }
+            valid[numValid++] = i;
+            minX              = Math.min(minX, xs[i]);
+            maxX              = Math.max(maxX, xs[i]);
+            minY              = Math.min(minY, ys[i]);
+            maxY              = Math.max(maxY, ys[i]);
+        }
+        double   minU      = minX / width;
+        double   minV      = minY / height;
+
+        double[] seps      = new double[MAX_LEVELS];
+        int      numLevels = 0;
+        levels = new int[numPoints];
+        Arrays.fill(levels, -1);
+        int[] kept    = new int[numValid];
+        int   numKept = 0;
+        if (numValid > 0) {
+            int slots = Integer.highestOneBit(Math.max(2, 2 * numValid)) * 2;
+            cellKeys  = new long[slots];
+            cellHeads = new int[slots];
+            cellNext  = new int[numPoints];
+            double extent     = Math.max((maxX - minX) / width,
+                                         (maxY - minY) / height);
+            double separation = (extent > 0)
+                                ? extent
+                                : 1;
+            while ((numLevels < MAX_LEVELS) && (numKept < numValid)) {
+                Arrays.fill(cellHeads, -1);
+                for (int k = 0; k < numKept; k++) {
+                    int i = kept[k];
+                    addToCell(cell(us[i], minU, separation),
+                              cell(vs[i], minV, separation), i);
+                }
+                for (int n = 0; n < numValid; n++) {
+                    int i = valid[n];
+                    if (levels[i] >= 0) {
+                        continue;
+                    }
+                    long cx = cell(us[i], minU, separation);
+                    long cy = cell(vs[i], minV, separation);
+                    if (isClear(cx, cy, us, vs, i, separation)) {
+                        levels[i]       = numLevels;
+                        kept[numKept++] = i;
+                        addToCell(cx, cy, i);
+                    }
+                }
+                seps[numLevels++] = separation;
+                separation        /= LEVEL_RATIO;
+            }
+            cellKeys  = null;
+            cellHeads = null;
+            cellNext  = null;
+        }
+        separations = Arrays.copyOf(seps, numLevels);
+        for (int i = 0; i < numPoints; i++) {
+            if (levels[i] < 0) {
+                levels[i] = numLevels;
+            }
+        }
+
+        //Sort by level. The points within a level stay in priority order.
+        levelEnds = new int[numLevels + 1];
+        for (int n = 0; n < numValid; n++) {
+            levelEnds[levels[valid[n]]]++;
+        }
+        for (int k = 1; k <= numLevels; k++) {
+            levelEnds[k] += levelEnds[k - 1];
+        }
+        order = new int[numValid];
+        int[] next = new int[numLevels + 1];
+        for (int k = 1; k <= numLevels; k++) {
+            next[k] = levelEnds[k - 1];
+        }
+        for (int n = 0; n < numValid; n++) {
+            order[next[levels[valid[n]]]++] = valid[n];
+        }
+    }
+
+    /**
+     * Put the points into location buckets, keeping the level order
+     */
+    private void makeBuckets() {
+        int numValid = order.length;
+        numBuckets = Math.max(1,
+                              Math.min(MAX_BUCKETS,
+                                       (int) Math.ceil(Math.sqrt(numValid
+                                           / (double) POINTS_PER_BUCKET))));
+        bucketStarts = new int[numBuckets * numBuckets + 1];
+        bucketPoints = new int[numValid];
+        int[] buckets = new int[numValid];
+        for (int n = 0; n < numValid; n++) {
+            int point = order[n];
+            buckets[n] = bucketY(ys[point]) * numBuckets + bucketX(xs[point]);
+            bucketStarts[buckets[n] + 1]++;
+        }
+        for (int b = 1; b < bucketStarts.length; b++) {
+            bucketStarts[b] += bucketStarts[b - 1];
+        }
+        int[] next = Arrays.copyOf(bucketStarts, bucketStarts.length - 1);
+        for (int n = 0; n < numValid; n++) {
+            bucketPoints[next[buckets[n]]++] = order[n];
+        }
+    }
+
+    /**
+     * Get the bucket column of the x
+     *
+     * @param x x
+     *
+     * @return bucket column, clipped to the buckets
+     */
+    private int bucketX(double x) {
+        double w = maxX - minX;
+        if ( !(w > 0)) {
+            return 0;
+        }
+        return (int) Math.max(0,
+                              Math.min(numBuckets - 1,
+                                       Math.floor((x - minX) / w
+                                           * numBuckets)));
+    }
+
+    /**
+     * Get the bucket row of the y
+     *
+     * @param y y
+     *
+     * @return bucket row, clipped to the buckets
+     */
+    private int bucketY(double y) {
+        double h = maxY - minY;
+        if ( !(h > 0)) {
+            return 0;
+        }
+        return (int) Math.max(0,
+                              Math.min(numBuckets - 1,
+                                       Math.floor((y - minY) / h
+                                           * numBuckets)));
+    }
+
+    /**
+     * Is the point a real number
+     *
+     * @param u u
+     * @param v v
+     *
+     * @return true if not NaN or infinite
+     */
+    private static boolean isValid(double u, double v) {
+        return !Double.isNaN(u) && !Double.isNaN(v) && !Double.isInfinite(u)
+               && !Double.isInfinite(v);
+    }
+
+    /**
+     * Get the cell index of the value
+     *
+     * @param value value
+     * @param min the minimum value
+     * @param separation the cell size
+     *
+     * @return cell index
+     */
+    private static long cell(double value, double min, double separation) {
+        return (long) Math.floor((value - min) / separation);
+    }
+
+    /**
+     * Find the hash slot for the cell
+     *
+     * @param cx cell x
+     * @param cy cell y
+     *
+     * @return the slot with the cell or the empty slot for it
+     */
+    private int findSlot(long cx, long cy) {
+        long key  = (cx << 32) ^ (cy & 0xffffffffL);
+        int  mask = cellKeys.length - 1;
+        int  slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+        while ((cellHeads[slot] >= 0) && (cellKeys[slot] != key)) {
+            slot = (slot + 1) & mask;
+        }
+        cellKeys[slot] = key;
+        return slot;
+    }
+
+    /**
+     * Add the point to the cell
+     *
+     * @param cx cell x
+     * @param cy cell y
+     * @param point the point
+     */
+    private void addToCell(long cx, long cy, int point) {
+        int slot = findSlot(cx, cy);
+        cellNext[point] = cellHeads[slot];
+        cellHeads[slot] = point;
+    }
+
+    /**
+     * Is there no kept point that clashes with the point
+     *
+     * @param cx cell x of the point
+     * @param cy cell y of the point
+     * @param us u of the points
+     * @param vs v of the points
+     * @param point the point
+     * @param separation the separation
+     *
+     * @return true if the point can be kept
+     */
+    private boolean isClear(long cx, long cy, double[] us, double[] vs,
+                            int point, double separation) {
+        for (long y = cy - 1; y <= cy + 1; y++) {
+            for (long x = cx - 1; x <= cx + 1; x++) {
+                for (int other = cellHeads[findSlot(x, y)]; other >= 0;
+                        other = cellNext[other]) {
+                    if ((Math.abs(us[other] - us[point]) < separation)
+                            && (Math.abs(vs[other] - vs[point])
+                                < separation)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the number of points
+     *
+     * @return number of points
+     */
+    public int size() {
+        return xs.length;
+    }
+
+    /**
+     * Get the x of the point
+     *
+     * @param point the point
+     *
+     * @return x
+     */
+    public double getX(int point) {
+        return xs[point];
+    }
+
+    /**
+     * Get the y of the point
+     *
+     * @param point the point
+     *
+     * @return y
+     */
+    public double getY(int point) {
+        return ys[point];
+    }
+
+    /**
+     * Get the number of levels
+     *
+     * @return number of levels
+     */
+    public int getNumLevels() {
+        return separations.length;
+    }
+
+    /**
+     * Get the separation of the level in glyph units
+     *
+     * @param level the level
+     *
+     * @return separation
+     */
+    public double getSeparation(int level) {
+        return separations[level];
+    }
+
+    /**
+     * Get the level the point is first shown at
+     *
+     * @param point the point
+     *
+     * @return the level. This is the number of levels for points
+     * that are never kept and for NaN points.
+     */
+    public int getLevel(int point) {
+        return levels[point];
+    }
+
+    /**
+     * Find the level to use for glyphs of the given scale. This is the
+     * finest level whose separation is at least the scale.
+     *
+     * @param scale the glyph scale
+     *
+     * @return the level. This is the number of levels when the glyphs
+     * are smaller than the finest level, i.e., everything can be shown.
+     */
+    public int findLevel(double scale) {
+        int level = 0;
+        while ((level < separations.length)
+                && (separations[level] >= scale)) {
+            level++;
+        }
+        if (level == separations.length) {
+            //The glyphs are smaller than the finest level so show them all
+            return separations.length;
+        }
+        return Math.max(0, level - 1);
+    }
+
+    /**
+     * Get the number of points shown at the level. These are the first
+     * points from {@link #getPoint(int)}.
+     *
+     * @param level the level
+     *
+     * @return number of points
+     */
+    public int getCount(int level) {
+        return levelEnds[Math.min(level, separations.length)];
+    }
+
+    /**
+     * Get the point at the given position in the level order
+     *
+     * @param n the position
+     *
+     * @return the point
+     */
+    public int getPoint(int n) {
+        return order[n];
+    }
+
+    /**
+     * Find the points to show for glyphs of the given scale whose glyphs
+     * are centered in the bounds. Like the SpatialGrid the glyph is
+     * drawn with its corner at the point.
+     *
+     * @param scale the glyph scale
+     * @param bounds the bounds. May be null.
+     *
+     * @return the points in priority order
+     */
+    public int[] select(double scale, Rectangle2D bounds) {
+        int level = findLevel(scale);
+        if (bounds == null) {
+            int[] points = Arrays.copyOf(order, getCount(level));
+            Arrays.sort(points);
+            return points;
+        }
+        //Bounds of the points whose glyphs are centered in the bounds
+        double left   = bounds.getX() - width * scale / 2;
+        double bottom = bounds.getY() - height * scale / 2;
+        double right  = left + bounds.getWidth();
+        double top    = bottom + bounds.getHeight();
+        int[]  points = new int[Math.min(order.length, 64)];
+        int    num    = 0;
+        if ((order.length > 0) && (right >= minX) && (left <= maxX)
+                && (top >= minY) && (bottom <= maxY)) {
+            for (int by = bucketY(bottom); by <= bucketY(top); by++) {
+                for (int bx = bucketX(left); bx <= bucketX(right); bx++) {
+                    int bucket = by * numBuckets + bx;
+                    for (int n = bucketStarts[bucket];
+                            n < bucketStarts[bucket + 1]; n++) {
+                        int point = bucketPoints[n];
+                        if (levels[point] > level) {
+                            break;
+                        }
+                        if ((xs[point] < left) || (xs[point] >= right)
+                                || (ys[point] < bottom)
+                                || (ys[point] >= top)) {
+                            continue;
+                        }
+                        if (num == points.length) {
+                            points = Arrays.copyOf(points, num * 2);
+                        }
+                        points[num++] = point;
+                    }
+                }
+            }
+        }
+        points = Arrays.copyOf(points, num);
+        Arrays.sort(points);
+        return points;
+    }
+}
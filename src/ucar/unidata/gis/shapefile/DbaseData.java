@@ -31,6 +31,8 @@ package ucar.unidata.gis.shapefile;
 
 import java.io.DataInputStream;
 
+import java.nio.ByteBuffer;
+
 import ucar.unidata.io.Swap;
 
 import java.text.*;
@@ -155,6 +157,37 @@ public class DbaseData {
         } catch (java.io.IOException e) {
             return -1;
         }
+        return parseRowN(n);
+    }
+
+    /**
+     *  Method to read an entry from a buffer holding the dbase file.
+     *  The buffer is assumed to be positioned at the start of this field
+     *  in the record.
+     *  @see DbaseFile
+     *
+     * @param buffer the buffer
+     * @param n the record
+     * @return 0 for success, -1 for failure
+     */
+    int readRowN(ByteBuffer buffer, int n) {
+        if (n > nrec) {
+            return -1;
+        }
+        if (buffer.remaining() < desc.FieldLength) {
+            return -1;
+        }
+        buffer.get(field, 0, desc.FieldLength);
+        return parseRowN(n);
+    }
+
+    /**
+     *  Convert the bytes that were read into the field buffer
+     *
+     * @param n the record
+     * @return 0 for success, -1 for failure
+     */
+    private int parseRowN(int n) {
         char switchValue = (char) desc.Type;
         switch (switchValue) {
 
@@ -26,6 +26,7 @@ import ucar.unidata.io.Swap;
 
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -35,9 +36,12 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 
+import java.nio.ByteBuffer;
+
 
 /**
- * Class to read a dbase file in its entirety.
+ * Class to read a dbase file in its entirety. A local file is memory
+ * mapped and each column is only decoded the first time it is asked for.
  *
  * @author  Kirk Waters, NOAA Coastal Services Center, 1997.
  * @author  Russ Rew, modified to restrict access to read-only
@@ -104,6 +108,15 @@ public class DbaseFile extends Object {
     /** _more_ */
     DataInputStream ds = null;
 
+    /** The memory mapped file. null if we are reading from a stream */
+    private ByteBuffer buffer;
+
+    /** Offset in the buffer of each (non deleted) record */
+    private int[] rowOffsets;
+
+    /** Has the column been read from the buffer */
+    private boolean[] columnLoaded;
+
     /**
      * Instantiates a new dbase file.
      *
@@ -123,6 +136,11 @@ public class DbaseFile extends Object {
      * @throws IOException Signals that an I/O exception has occurred.
      */
     public DbaseFile(String spec) throws IOException {
+        File file = new File(spec);
+        if (file.isFile()) {
+            buffer = EsriShapefile.mapFile(file);
+            return;
+        }
         try {
             url    = new URL(spec);
             stream = url.openStream();
@@ -142,8 +160,8 @@ public class DbaseFile extends Object {
      */
     public DbaseFile(File file) {
         try {
-            stream = new FileInputStream(file);
-        } catch (java.io.FileNotFoundException e) {
+            buffer = EsriShapefile.mapFile(file);
+        } catch (java.io.IOException e) {
             System.out.println("Failed to open file " + file);
             stream = null;
         }
@@ -167,6 +185,18 @@ public class DbaseFile extends Object {
             return 0;
         }
         InputStream s = stream;
+        if (buffer != null) {
+            if (buffer.capacity() < 32) {
+                return -1;
+            }
+            //Just read the header bytes from the mapped file
+            int headerSize = (buffer.get(8) & 0xff)
+                             | ((buffer.get(9) & 0xff) << 8);
+            byte[] headerBytes = new byte[Math.min(Math.max(headerSize, 32),
+                                     buffer.capacity())];
+            buffer.duplicate().get(headerBytes);
+            s = new ByteArrayInputStream(headerBytes);
+        }
         if (s == null) {
             return -1;
         }
@@ -232,6 +262,9 @@ public class DbaseFile extends Object {
         if (dataLoaded) {
             return 0;
         }
+        if (buffer != null) {
+            return indexRows();
+        }
         InputStream s = stream;
         if (s == null) {
             return -1;
@@ -276,6 +309,69 @@ public class DbaseFile extends Object {
         return 0;
     }
 
+    /**
+     * Find the offsets of the records in the mapped file. The fields are
+     * read later on, a column at a time, in {@link #getField(int)}.
+     *
+     * @return 0 for success, -1 for failure
+     */
+    private int indexRows() {
+        int recordSize = nbytesrecord & 0xffff;
+        int dataStart  = nbytesheader & 0xffff;
+        if (recordSize == 0) {
+            return -1;
+        }
+        int   maxRecords = Math.max(0, (buffer.capacity() - dataStart)
+                                       / recordSize);
+        int[] offsets    = new int[Math.min(nrecords, maxRecords)];
+        int   cnt        = 0;
+        for (int i = 0; i < offsets.length; i++) {
+            int offset = dataStart + i * recordSize;
+            //a 0x20 means the record is there, anything else is deleted
+            if (buffer.get(offset) == 0x20) {
+                offsets[cnt++] = offset;
+            }
+        }
+        if (cnt < offsets.length) {
+            int[] tmp = new int[cnt];
+            System.arraycopy(offsets, 0, tmp, 0, cnt);
+            offsets = tmp;
+        }
+        rowOffsets   = offsets;
+        nrecords     = cnt;
+        columnLoaded = new boolean[nfields];
+        dataLoaded   = true;
+        return 0;
+    }
+
+    /**
+     * Read the column from the mapped file if we haven't yet
+     *
+     * @param index column index
+     */
+    private synchronized void loadColumn(int index) {
+        if (columnLoaded[index]) {
+            return;
+        }
+        //The fields follow the one byte deleted flag
+        int fieldOffset = 1;
+        for (int i = 0; i < index; i++) {
+            fieldOffset += FieldDesc[i].FieldLength;
+        }
+        ByteBuffer b = buffer.duplicate();
+        for (int row = 0; row < rowOffsets.length; row++) {
+            b.position(rowOffsets[row] + fieldOffset);
+            try {
+                data[index].readRowN(b, row);
+            } catch (NumberFormatException nfe) {
+                System.err.println("nfe field=" + index + " row=" + row);
+                System.err.println("data:" + data[index].getType());
+                throw nfe;
+            }
+        }
+        columnLoaded[index] = true;
+    }
+
     /**
      * Close.
      *
@@ -304,6 +400,9 @@ public class DbaseFile extends Object {
         if ((index < 0) || (index >= nfields)) {
             return null;
         }
+        if (rowOffsets != null) {
+            loadColumn(index);
+        }
         return data[index];
     }
 
@@ -315,7 +414,7 @@ public class DbaseFile extends Object {
     public DbaseData getField(String Name) {
         for (int i = 0; i < nfields; i++) {
             if (FieldDesc[i].Name.equals(Name)) {
-                return data[i];
+                return getField(i);
             }
         }
         return null;
@@ -25,20 +25,29 @@ import ucar.unidata.gis.AbstractGisFeature;
 import ucar.unidata.gis.GisFeature;
 import ucar.unidata.gis.GisPart;
 import ucar.unidata.io.BeLeDataInputStream;
-import ucar.unidata.util.IOUtil;
+import ucar.unidata.util.WrapperException;
 
 
 import java.awt.geom.Rectangle2D;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+import java.lang.ref.SoftReference;
+
 import java.net.URL;
 
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -52,6 +61,14 @@ import java.util.zip.ZipInputStream;
  *
  * Encapsulates details of ESRI Shapefile format, documented at
  * http://www.esri.com/library/whitepapers/pdfs/shapefile.pdf
+ * <p>
+ * A local (or zipped) shapefile is memory mapped. The record offsets come
+ * from the .shx file, if there is one, and the features are only decoded
+ * when they are asked for. {@link #getFeatures(Rectangle2D)} uses a
+ * spatial index, either the quad tree in a .qix file or a packed R-tree
+ * built from the record bounds, so only the features in the box are
+ * decoded. The .dbf and .prj files next to the .shp file are read too.
+ * Shapefiles read from other streams are read completely, as before.
  *
  * @author Russ Rew
  */
@@ -143,6 +160,24 @@ public class EsriShapefile {
     /** the Dbase file */
     private DbaseFile dbFile;
 
+    /** the memory mapped shapefile. null if we read from a stream */
+    private ByteBuffer shpBuffer;
+
+    /** byte offset of each record in the mapped file */
+    private int[] recordOffsets;
+
+    /** the record of each feature, null if all records are used */
+    private int[] featureRecords;
+
+    /** the features that have been decoded from the mapped file */
+    private SoftReference<EsriFeature>[] featureCache;
+
+    /** the spatial index of the features */
+    private ShapefileIndex index;
+
+    /** mutex for reading from the mapped file */
+    private final Object MUTEX = new Object();
+
     /** the projection file */
     private ProjFile prjFile;
 
@@ -243,7 +278,33 @@ public class EsriShapefile {
      */
     public EsriShapefile(String filename, Rectangle2D bBox, double coarseness)
             throws IOException {
-        this(new FileInputStream(filename), bBox, coarseness);
+        this(new File(filename), bBox, coarseness);
+    }
+
+    /**
+     * Read a local ESRI shapefile. The file is memory mapped and the
+     * features are decoded as they are needed.
+     *
+     * @param file the .shp file or a zip file holding one
+     * @param bBox bounding box specifying which features to select,
+     * namely those whose bounding boxes intersect this one. If null,
+     * bounding box of whole shapefile is used
+     * @param coarseness the coarseness
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public EsriShapefile(File file, Rectangle2D bBox, double coarseness)
+            throws IOException {
+        setCoarseness(coarseness);
+        InputStream is = new BufferedInputStream(new FileInputStream(file));
+        try {
+            if (isZipStream(is)) {
+                readZip(is, bBox);
+                return;
+            }
+        } finally {
+            is.close();
+        }
+        initMapped(file, bBox);
     }
 
     /**
@@ -273,7 +334,7 @@ public class EsriShapefile {
      */
     public EsriShapefile(String filename, Rectangle2D bBox)
             throws IOException {
-        this(new FileInputStream(filename), bBox, 0.0f);
+        this(new File(filename), bBox, 0.0f);
     }
 
 
@@ -294,67 +355,79 @@ public class EsriShapefile {
             throws IOException {
 
         BufferedInputStream bin = new BufferedInputStream(iStream);
+        setCoarseness(coarseness);
+        if (isZipStream(bin)) {
+            readZip(bin, bBox);
+        } else {
+            bdis = new BeLeDataInputStream(bin);
+            Init(bBox);
+        }
+    }
 
+    /**
+     * Set the coarseness
+     *
+     * @param coarseness the coarseness. Less than 0 means the default.
+     */
+    private void setCoarseness(double coarseness) {
         if (coarseness < 0.0f) {
             this.coarseness = defaultCoarseness;
         } else {
             this.coarseness = coarseness;
         }
-        if (isZipStream(bin)) {
-            BeLeDataInputStream dbInputStream = null;
-            byte[]              shapeBytes    = null;
-            ZipInputStream      zin           = new ZipInputStream(bin);
-            ZipEntry            ze            = null;
-            while ((ze = zin.getNextEntry()) != null) {
-                String name = ze.getName().toLowerCase();
-                if (name.endsWith(".shp")) {
-                    // hold bytes until we've read the other stuff
-                    shapeBytes = IOUtil.readBytes(zin, null, false);
-                    /*
-                    bdis = new BeLeDataInputStream(zin);
-                    Init(bBox);
-                    if ((dbFile != null) && (prjFile != null)) {
-                        return;
-                    }
-                    */
-                } else if (name.endsWith(".dbf")) {
-                    dbFile = new DbaseFile(new BeLeDataInputStream(zin));
-                    dbFile.loadHeader();
-                    dbFile.loadData();
-                    if ((shapeBytes != null) && (prjFile != null)) {
-                        break;
-                    }
-                } else if (name.endsWith(".prj")) {
-                    try {
-                        prjFile = new ProjFile(zin);
-                        if (debug) {
-                            System.err.println("Make prj file: " + prjFile);
-                        }
-                    } catch (Exception e) {
-                        prjFile = null;
-                        break;
-                    }
-                    if ((shapeBytes != null) && (dbFile != null)) {
-                        break;
-                    }
-                } else {
-                    zin.closeEntry();
+    }
+
+    /**
+     * Read a zipped shapefile. The .shp file and its sidecar files are
+     * written to a temporary directory and mapped from there rather than
+     * being held in memory.
+     *
+     * @param is the zip stream
+     * @param bBox bounding box specifying which features to select
+     *
+     * @throws IOException On badness
+     */
+    private void readZip(InputStream is, Rectangle2D bBox)
+            throws IOException {
+        File           dir     = null;
+        File           shpFile = null;
+        ZipInputStream zin     = new ZipInputStream(is);
+        ZipEntry       ze      = null;
+        while ((ze = zin.getNextEntry()) != null) {
+            String name = ze.getName().toLowerCase();
+            String suffix = null;
+            for (String sidecar : new String[] { ".shp", ".shx", ".dbf",
+                    ".prj", ".qix" }) {
+                if (name.endsWith(sidecar)) {
+                    suffix = sidecar;
                 }
             }
-            if (shapeBytes == null) {
-                throw new IOException("no .shp entry found in zipped input");
-            } else {
-                bdis = new BeLeDataInputStream(
-                    new ByteArrayInputStream(shapeBytes));
-                Init(bBox);
+            if (suffix == null) {
+                zin.closeEntry();
+                continue;
             }
-        } else {
-            bdis = new BeLeDataInputStream(bin);
-            Init(bBox);
+            if (dir == null) {
+                dir = Files.createTempDirectory("shapefile").toFile();
+                dir.deleteOnExit();
+            }
+            File file = new File(dir, "shapefile" + suffix);
+            if (file.exists()) {
+                //Only use the first one
+                zin.closeEntry();
+                continue;
+            }
+            file.deleteOnExit();
+            Files.copy(zin, file.toPath());
+            if (suffix.equals(".shp")) {
+                shpFile = file;
+            }
+        }
+        if (shpFile == null) {
+            throw new IOException("no .shp entry found in zipped input");
         }
+        initMapped(shpFile, bBox);
     }
 
-
     /**
      * Get the Dbase file object
      *
@@ -401,6 +474,38 @@ public class EsriShapefile {
      * @throws IOException  problem reading from the file
      */
     private void Init(Rectangle2D bBox) throws IOException {
+        readHeader();
+        //      bBox = null;
+        // if no bounds specified, use shapefile bounds
+        if (bBox == null) {
+            bBox = listBounds;
+        }
+
+        /* Read through file, filtering out features that don't
+           intersect bounding box. */
+        features = new ArrayList<GisFeature>();
+
+
+        while (bytesSeen < fileBytes) {
+            GisFeature  gf       = nextFeature();
+            Rectangle2D gfBounds = gf.getBounds2D();
+            if ((gfBounds == null) || (gfBounds.getWidth() == 0)
+                    || (gfBounds.getHeight() == 0)
+                    || gfBounds.intersects(bBox)) {
+                features.add(gf);
+                //              if(features.size()>10) break;
+            }
+        }
+        //System.err.println("features:" + features.size() + " num points:"
+        //                   + NUMPOINTS);
+    }
+
+    /**
+     * Read the file header and figure out the resolution
+     *
+     * @throws IOException  problem reading from the file
+     */
+    private void readHeader() throws IOException {
         int fileCode = readInt();
         if (fileCode != SHAPEFILE_CODE) {
             throw (new IOException("Not a shapefile"));
@@ -410,11 +515,6 @@ public class EsriShapefile {
         version       = readLEInt();
         fileShapeType = readLEInt();
         listBounds    = readBoundingBox();
-        //      bBox = null;
-        // if no bounds specified, use shapefile bounds
-        if (bBox == null) {
-            bBox = listBounds;
-        }
 
         double xu = listBounds.getMaxX();
         double yu = listBounds.getMaxY();
@@ -430,24 +530,311 @@ public class EsriShapefile {
         //      System.err.println("coarseness:" + coarseness +" resolution:" + resolution);
 
         skipBytes(32);  // skip to start of first record header
+    }
 
-        /* Read through file, filtering out features that don't
-           intersect bounding box. */
-        features = new ArrayList<GisFeature>();
+    /**
+     * Initialize from a local file. The file is memory mapped and only
+     * the record offsets are found here.
+     *
+     * @param file the .shp file
+     * @param bBox  bounding box in shape coordinates
+     *
+     * @throws IOException  problem reading from the file
+     */
+    private void initMapped(File file, Rectangle2D bBox) throws IOException {
+        shpBuffer = mapFile(file);
+        try {
+            readHeader();
+        } catch (BufferUnderflowException bue) {
+            throw new IOException("Not a shapefile");
+        }
+        fileBytes   = Math.min(fileBytes, shpBuffer.capacity());
+        featureType = fileShapeType;
 
+        File shxFile = findSidecar(file, ".shx");
+        if (shxFile != null) {
+            recordOffsets = readShx(shxFile);
+        }
+        if (recordOffsets == null) {
+            recordOffsets = scanRecords();
+        }
 
-        while (bytesSeen < fileBytes) {
-            GisFeature  gf       = nextFeature();
-            Rectangle2D gfBounds = gf.getBounds2D();
-            if ((gfBounds == null) || (gfBounds.getWidth() == 0)
-                    || (gfBounds.getHeight() == 0)
-                    || gfBounds.intersects(bBox)) {
-                features.add(gf);
-                //              if(features.size()>10) break;
+        if (bBox != null) {
+            /* Only use the features that intersect the bounding box */
+            int[]    records = new int[recordOffsets.length];
+            int      cnt     = 0;
+            double[] b       = new double[4];
+            for (int i = 0; i < recordOffsets.length; i++) {
+                readRecordBounds(i, b);
+                if (Double.isNaN(b[0]) || (b[0] == b[2]) || (b[1] == b[3])
+                        || intersects(b, bBox)) {
+                    records[cnt++] = i;
+                }
+            }
+            if (cnt < records.length) {
+                featureRecords = new int[cnt];
+                System.arraycopy(records, 0, featureRecords, 0, cnt);
+            }
+        }
+        featureCache = new SoftReference[getNumFeatures()];
+
+        File qixFile = findSidecar(file, ".qix");
+        if ((qixFile != null) && (featureRecords == null)) {
+            try {
+                index = ShapefileIndex.readQix(qixFile);
+            } catch (IOException exc) {
+                //We'll build our own
+                index = null;
+            }
+        }
+
+        File dbfFile = findSidecar(file, ".dbf");
+        if (dbfFile != null) {
+            dbFile = new DbaseFile(dbfFile);
+            if ((dbFile.loadHeader() != 0) || (dbFile.loadData() != 0)) {
+                dbFile = null;
+            }
+        }
+        File prjFile = findSidecar(file, ".prj");
+        if (prjFile != null) {
+            try {
+                this.prjFile = new ProjFile(prjFile);
+            } catch (Exception e) {
+                this.prjFile = null;
             }
         }
-        //System.err.println("features:" + features.size() + " num points:"
-        //                   + NUMPOINTS);
+    }
+
+    /**
+     * Memory map the file
+     *
+     * @param file the file
+     *
+     * @return the read only buffer, in little endian order
+     *
+     * @throws IOException On badness
+     */
+    static ByteBuffer mapFile(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(),
+                                  StandardOpenOption.READ);
+        try {
+            //The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               channel.size()).order(
+                                   ByteOrder.LITTLE_ENDIAN);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Find the file with the same name as the .shp file but with the
+     * given suffix
+     *
+     * @param shpFile the .shp file
+     * @param suffix the suffix, e.g., .shx
+     *
+     * @return the file or null if there isn't one
+     */
+    private static File findSidecar(File shpFile, String suffix) {
+        String name = shpFile.getPath();
+        int    idx  = name.lastIndexOf('.');
+        if (idx > name.lastIndexOf(File.separatorChar)) {
+            name = name.substring(0, idx);
+        }
+        File file = new File(name + suffix);
+        if (file.isFile()) {
+            return file;
+        }
+        file = new File(name + suffix.toUpperCase());
+        if (file.isFile()) {
+            return file;
+        }
+        return null;
+    }
+
+    /**
+     * Read the record offsets from the .shx file
+     *
+     * @param shxFile the .shx file
+     *
+     * @return the offsets or null if the file doesn't match the .shp file
+     */
+    private int[] readShx(File shxFile) {
+        try {
+            ByteBuffer shx = mapFile(shxFile).order(ByteOrder.BIG_ENDIAN);
+            if ((shx.capacity() < 100) || (shx.getInt(0) != SHAPEFILE_CODE)) {
+                return null;
+            }
+            int[] offsets = new int[(shx.capacity() - 100) / 8];
+            for (int i = 0; i < offsets.length; i++) {
+                //offsets are in 16 bit words
+                offsets[i] = 2 * shx.getInt(100 + 8 * i);
+                if ((offsets[i] < 100) || (offsets[i] + 12 > fileBytes)) {
+                    return null;
+                }
+            }
+            return offsets;
+        } catch (IOException exc) {
+            return null;
+        }
+    }
+
+    /**
+     * Find the record offsets by stepping through the record headers
+     *
+     * @return the offsets
+     */
+    private int[] scanRecords() {
+        int[] offsets = new int[1000];
+        int   cnt     = 0;
+        int   pos     = 100;
+        while (pos + 12 <= fileBytes) {
+            if (cnt == offsets.length) {
+                int[] tmp = new int[2 * cnt];
+                System.arraycopy(offsets, 0, tmp, 0, cnt);
+                offsets = tmp;
+            }
+            offsets[cnt++] = pos;
+            //content length is big endian in 16 bit words
+            int contentLength = Integer.reverseBytes(shpBuffer.getInt(pos
+                                    + 4));
+            if (contentLength < 0) {
+                break;
+            }
+            pos += 8 + 2 * contentLength;
+        }
+        int[] result = new int[cnt];
+        System.arraycopy(offsets, 0, result, 0, cnt);
+        return result;
+    }
+
+    /**
+     * Read the bounds of the record from the mapped file without
+     * decoding it
+     *
+     * @param record the record
+     * @param b holds minX, minY, maxX, maxY. NaN for null shapes.
+     */
+    private void readRecordBounds(int record, double[] b) {
+        int pos = recordOffsets[record] + 8;
+        try {
+            int type = shpBuffer.getInt(pos);
+            switch (type) {
+
+              case NULL :
+                  b[0] = b[1] = b[2] = b[3] = Double.NaN;
+                  break;
+
+              case POINT :
+              case POINTZ :
+              case POINTM :
+                  b[0] = b[2] = shpBuffer.getDouble(pos + 4);
+                  b[1] = b[3] = shpBuffer.getDouble(pos + 12);
+                  break;
+
+              default :
+                  for (int i = 0; i < 4; i++) {
+                      b[i] = shpBuffer.getDouble(pos + 4 + 8 * i);
+                  }
+            }
+        } catch (IndexOutOfBoundsException exc) {
+            b[0] = b[1] = b[2] = b[3] = Double.NaN;
+        }
+    }
+
+    /**
+     * Does the box intersect the rectangle. Unlike Rectangle2D this
+     * counts touching edges and boxes with no width or height.
+     *
+     * @param b minX, minY, maxX, maxY
+     * @param r the rectangle
+     *
+     * @return true if they intersect
+     */
+    private static boolean intersects(double[] b, Rectangle2D r) {
+        return !Double.isNaN(b[0]) && (b[0] <= r.getMaxX())
+               && (b[2] >= r.getMinX()) && (b[1] <= r.getMaxY())
+               && (b[3] >= r.getMinY());
+    }
+
+    /**
+     * Get the feature, decoding it from the mapped file if needed
+     *
+     * @param i the feature index
+     *
+     * @return the feature
+     *
+     * @throws IOException On badness
+     */
+    private EsriFeature getFeature(int i) throws IOException {
+        if (features != null) {
+            return (EsriFeature) features.get(i);
+        }
+        synchronized (MUTEX) {
+            EsriFeature feature = (featureCache[i] != null)
+                                  ? featureCache[i].get()
+                                  : null;
+            if (feature == null) {
+                int record = (featureRecords != null)
+                             ? featureRecords[i]
+                             : i;
+                shpBuffer.position(recordOffsets[record]);
+                try {
+                    feature = nextFeature();
+                } catch (BufferUnderflowException bue) {
+                    throw new IOException("Truncated shapefile record:"
+                                          + record);
+                }
+                featureCache[i] = new SoftReference<EsriFeature>(feature);
+            }
+            return feature;
+        }
+    }
+
+    /**
+     * Get the bounds of the feature
+     *
+     * @param i the feature index
+     * @param b holds minX, minY, maxX, maxY. NaN for null shapes.
+     */
+    private void getFeatureBounds(int i, double[] b) {
+        if (features == null) {
+            readRecordBounds((featureRecords != null)
+                             ? featureRecords[i]
+                             : i, b);
+            return;
+        }
+        Rectangle2D r = ((GisFeature) features.get(i)).getBounds2D();
+        if (r == null) {
+            b[0] = b[1] = b[2] = b[3] = Double.NaN;
+        } else {
+            b[0] = r.getMinX();
+            b[1] = r.getMinY();
+            b[2] = r.getMaxX();
+            b[3] = r.getMaxY();
+        }
+    }
+
+    /**
+     * Get the spatial index, building it if needed
+     *
+     * @return the index
+     */
+    private ShapefileIndex getIndex() {
+        synchronized (MUTEX) {
+            if (index == null) {
+                int      n      = getNumFeatures();
+                double[] bounds = new double[4 * n];
+                double[] b      = new double[4];
+                for (int i = 0; i < n; i++) {
+                    getFeatureBounds(i, b);
+                    System.arraycopy(b, 0, bounds, 4 * i, 4);
+                }
+                index = ShapefileIndex.build(bounds);
+            }
+            return index;
+        }
     }
 
 
@@ -458,6 +845,9 @@ public class EsriShapefile {
      * @return percent of file read, so far.
      */
     public double percentRead() {
+        if (shpBuffer != null) {
+            return 1.0;
+        }
         return (double) bytesSeen / (double) fileBytes;
     }
 
@@ -465,7 +855,12 @@ public class EsriShapefile {
      * @return number of features in shapefile
      */
     public int getNumFeatures() {
-        return features.size();
+        if (features != null) {
+            return features.size();
+        }
+        return (featureRecords != null)
+               ? featureRecords.length
+               : recordOffsets.length;
     }
 
     /**
@@ -473,7 +868,7 @@ public class EsriShapefile {
      * deprecated
      */
     public int numShapes() {
-        return features.size();
+        return getNumFeatures();
     }
 
     /**
@@ -506,11 +901,14 @@ public class EsriShapefile {
 
         int recordNumber  = readInt();  // starts at 1, not 0
         int contentLength = readInt();  // in 16-bit words
-        featureType = readLEInt();
+        int type          = readLEInt();
+        if (type != NULL) {
+            featureType = type;
+        }
 
         //        System.err.println("type:" + featureType);
 
-        switch (featureType) {
+        switch (type) {
 
           case EsriShapefile.NULL :   // placeholder
               return new EsriNull();
@@ -545,7 +943,7 @@ public class EsriShapefile {
 
           default :
               throw new IOException("can't handle shapefile shape type "
-                                    + featureType);
+                                    + type);
         }
     }
 
@@ -557,6 +955,9 @@ public class EsriShapefile {
      */
     private int readLEInt() throws IOException {
         bytesSeen += 4;
+        if (shpBuffer != null) {
+            return shpBuffer.getInt();
+        }
         return bdis.readLEInt();
     }
 
@@ -568,6 +969,9 @@ public class EsriShapefile {
      */
     private int readInt() throws IOException {
         bytesSeen += 4;
+        if (shpBuffer != null) {
+            return Integer.reverseBytes(shpBuffer.getInt());
+        }
         return bdis.readInt();
     }
 
@@ -579,6 +983,9 @@ public class EsriShapefile {
      */
     private double readLEDouble() throws IOException {
         bytesSeen += 8;
+        if (shpBuffer != null) {
+            return shpBuffer.getDouble();
+        }
         return bdis.readLEDouble();
     }
 
@@ -590,7 +997,12 @@ public class EsriShapefile {
      * @throws IOException Signals that an I/O exception has occurred.
      */
     private void readLEDoubles(double[] d, int n) throws IOException {
-        bdis.readLEDoubles(d, n);
+        if (shpBuffer != null) {
+            shpBuffer.asDoubleBuffer().get(d, 0, n);
+            shpBuffer.position(shpBuffer.position() + 8 * n);
+        } else {
+            bdis.readLEDoubles(d, n);
+        }
         bytesSeen += 8 * n;
     }
 
@@ -601,7 +1013,11 @@ public class EsriShapefile {
      * @throws IOException Signals that an I/O exception has occurred.
      */
     private void skipBytes(int n) throws IOException {
-        bdis.skip(n);
+        if (shpBuffer != null) {
+            shpBuffer.position(shpBuffer.position() + n);
+        } else {
+            bdis.skip(n);
+        }
         bytesSeen += n;
     }
 
@@ -624,22 +1040,38 @@ public class EsriShapefile {
     }
 
     /**
-     * Get a List of all the GisFeatures in the shapefile.  This is
-     * very fast after the constructor has been called, since it is
-     * created during construction.
+     * Get a List of all the GisFeatures in the shapefile.  For a
+     * shapefile read from a stream this is very fast after the
+     * constructor has been called, since it is created during
+     * construction. For a mapped file this decodes all of the features
+     * the first time it is called.
      *
      * @return a List of features
      */
     public List getFeatures() {
-        return features;
+        synchronized (MUTEX) {
+            if (features == null) {
+                int                   n    = getNumFeatures();
+                ArrayList<GisFeature> list = new ArrayList<GisFeature>(n);
+                try {
+                    for (int i = 0; i < n; i++) {
+                        list.add(getFeature(i));
+                    }
+                } catch (IOException exc) {
+                    throw new WrapperException("Reading shapefile", exc);
+                }
+                features     = list;
+                featureCache = null;
+            }
+            return features;
+        }
     }
 
     /**
      * Get a List of all the features in the shapefile that intersect
-     * the specified bounding box.  This requires testing every
-     * feature in the List created at construction, so it's faster to
-     * just give a bounding box o the constructor if you will only do
-     * this once.
+     * the specified bounding box.  This uses the spatial index, which is
+     * built the first time this is called if there isn't a .qix file,
+     * and for a mapped file only the features in the box are decoded.
      *
      * @param bBox specifying the bounding box with which all
      * the returned features bounding boxes have a non-empty
@@ -650,14 +1082,27 @@ public class EsriShapefile {
      */
     public List getFeatures(Rectangle2D bBox) {
         if (bBox == null) {
-            return features;
+            return getFeatures();
         }
-        List list = new ArrayList();
-        for (Iterator i = features.iterator(); i.hasNext(); ) {
-            EsriFeature gf = (EsriFeature) i.next();
-            if (gf.getBounds2D().intersects(bBox)) {
-                list.add(gf);
+        int[] ids = getIndex().query(bBox.getMinX(), bBox.getMinY(),
+                                     bBox.getMaxX(), bBox.getMaxY());
+        List     list = new ArrayList(ids.length);
+        double[] b    = new double[4];
+        try {
+            synchronized (MUTEX) {
+                for (int i = 0; i < ids.length; i++) {
+                    if ((ids[i] < 0) || (ids[i] >= getNumFeatures())) {
+                        continue;
+                    }
+                    //The quad tree only gives us candidates
+                    getFeatureBounds(ids[i], b);
+                    if (intersects(b, bBox)) {
+                        list.add(getFeature(ids[i]));
+                    }
+                }
             }
+        } catch (IOException exc) {
+            throw new WrapperException("Reading shapefile", exc);
         }
         return list;
     }
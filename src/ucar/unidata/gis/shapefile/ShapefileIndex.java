@@ -0,0 +1,442 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.gis.shapefile;
+
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import java.util.Arrays;
+
+
+/**
+ * A spatial index of the features in a shapefile. The index is either a
+ * packed R-tree built from the feature bounds, with the features sorted
+ * along a Hilbert curve so that nearby features end up in the same
+ * nodes, or the quad tree read from a .qix file written by MapServer's
+ * shptree or GDAL.
+ * <p>
+ * The tree is held in flat arrays. Each node has a bounding box, a range
+ * of items and a list of children. For the packed R-tree a query returns
+ * exactly the items whose bounds intersect the query box. A quad tree
+ * only knows the bounds of its nodes so its query returns all of the
+ * items in the nodes that intersect the box and these should be checked
+ * against the feature bounds.
+ */
+public class ShapefileIndex {
+
+    /** Max number of items or children in an R-tree node */
+    public static final int NODE_SIZE = 16;
+
+    /** Signature at the start of a .qix file */
+    private static final String QIX_SIGNATURE = "SQT";
+
+    /** Order of the Hilbert curve */
+    private static final int HILBERT_ORDER = 15;
+
+    /** Node bounds, 4 values (minX, minY, maxX, maxY) per node */
+    private double[] nodeBounds;
+
+    /** First child of each node, -1 if none */
+    private int[] firstChild;
+
+    /** Next sibling of each node, -1 if none */
+    private int[] nextSibling;
+
+    /** Index into items of the first item of each node */
+    private int[] itemStart;
+
+    /** Number of items in each node */
+    private int[] itemCount;
+
+    /** The item ids */
+    private int[] items;
+
+    /** Bounds of the items, in the same order as items. null for a qix. */
+    private double[] itemBounds;
+
+    /** Number of nodes */
+    private int numNodes = 0;
+
+    /** Number of items */
+    private int numItems = 0;
+
+    /** The root node, -1 if the index is empty */
+    private int root = -1;
+
+    /**
+     * Create an empty index
+     *
+     * @param nodeCapacity initial number of nodes
+     * @param itemCapacity initial number of items
+     */
+    private ShapefileIndex(int nodeCapacity, int itemCapacity) {
+        nodeCapacity = Math.max(nodeCapacity, 1);
+        nodeBounds   = new double[4 * nodeCapacity];
+        firstChild   = new int[nodeCapacity];
+        nextSibling  = new int[nodeCapacity];
+        itemStart    = new int[nodeCapacity];
+        itemCount    = new int[nodeCapacity];
+        items        = new int[Math.max(itemCapacity, 1)];
+    }
+
+    /**
+     * Build a packed R-tree from the bounds of the items. The id of an
+     * item is its index in the bounds array. Items with NaN bounds, e.g.,
+     * null shapes, are left out.
+     *
+     * @param bounds 4 values (minX, minY, maxX, maxY) for each item
+     *
+     * @return the index
+     */
+    public static ShapefileIndex build(double[] bounds) {
+        int    n    = bounds.length / 4;
+        long[] keys = new long[n];
+        int    cnt  = 0;
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            if (Double.isNaN(bounds[4 * i]) || Double.isNaN(bounds[4 * i + 1])
+                    || Double.isNaN(bounds[4 * i + 2])
+                    || Double.isNaN(bounds[4 * i + 3])) {
+                continue;
+            }
+            minX = Math.min(minX, bounds[4 * i]);
+            minY = Math.min(minY, bounds[4 * i + 1]);
+            maxX = Math.max(maxX, bounds[4 * i + 2]);
+            maxY = Math.max(maxY, bounds[4 * i + 3]);
+            keys[cnt++] = i;
+        }
+
+        //Sort the items by the Hilbert value of their centers
+        int    side   = (1 << HILBERT_ORDER) - 1;
+        double width  = maxX - minX;
+        double height = maxY - minY;
+        for (int k = 0; k < cnt; k++) {
+            int    i  = (int) keys[k];
+            double cx = (bounds[4 * i] + bounds[4 * i + 2]) / 2;
+            double cy = (bounds[4 * i + 1] + bounds[4 * i + 3]) / 2;
+            int    hx = (width > 0)
+                        ? (int) (side * (cx - minX) / width)
+                        : 0;
+            int    hy = (height > 0)
+                        ? (int) (side * (cy - minY) / height)
+                        : 0;
+            keys[k] = ((long) hilbert(hx, hy) << 32) | i;
+        }
+        Arrays.sort(keys, 0, cnt);
+
+        int numLeaves = (cnt + NODE_SIZE - 1) / NODE_SIZE;
+        ShapefileIndex index = new ShapefileIndex(2 * numLeaves + 1, cnt);
+        if (cnt == 0) {
+            return index;
+        }
+        index.itemBounds = new double[4 * cnt];
+        for (int k = 0; k < cnt; k++) {
+            index.items[k] = (int) keys[k];
+            System.arraycopy(bounds, 4 * index.items[k], index.itemBounds,
+                             4 * k, 4);
+        }
+        index.numItems = cnt;
+
+        //The leaves
+        for (int k = 0; k < cnt; k += NODE_SIZE) {
+            int node = index.addNode();
+            int end  = Math.min(cnt, k + NODE_SIZE);
+            index.itemStart[node] = k;
+            index.itemCount[node] = end - k;
+            for (int j = k; j < end; j++) {
+                index.include(node, index.itemBounds, 4 * j);
+            }
+        }
+
+        //Now group each level of nodes into parents until we have one
+        int levelStart = 0;
+        int levelEnd   = index.numNodes;
+        while (levelEnd - levelStart > 1) {
+            for (int k = levelStart; k < levelEnd; k += NODE_SIZE) {
+                int parent = index.addNode();
+                int end    = Math.min(levelEnd, k + NODE_SIZE);
+                index.firstChild[parent] = k;
+                for (int child = k; child < end; child++) {
+                    index.nextSibling[child] = (child < end - 1)
+                                               ? child + 1
+                                               : -1;
+                    index.include(parent, index.nodeBounds, 4 * child);
+                }
+            }
+            levelStart = levelEnd;
+            levelEnd   = index.numNodes;
+        }
+        index.root = levelStart;
+        return index;
+    }
+
+    /**
+     * Read the quad tree from a .qix file. The ids in the file are the
+     * 0 based shape record numbers.
+     *
+     * @param file the .qix file
+     *
+     * @return the index
+     *
+     * @throws IOException if the file could not be read or is not a
+     *                     .qix file that we know how to read
+     */
+    public static ShapefileIndex readQix(File file) throws IOException {
+        return readQix(EsriShapefile.mapFile(file));
+    }
+
+    /**
+     * Read the quad tree from the contents of a .qix file. Only the
+     * current (version 1, "SQT") layout is handled.
+     *
+     * @param buffer the file contents
+     *
+     * @return the index
+     *
+     * @throws IOException if this is not a .qix file we can read
+     */
+    public static ShapefileIndex readQix(ByteBuffer buffer)
+            throws IOException {
+        buffer = buffer.duplicate();
+        if (buffer.remaining() < 16) {
+            throw new IOException("Not a qix file");
+        }
+        byte[] signature = new byte[3];
+        buffer.get(signature);
+        if ( !QIX_SIGNATURE.equals(new String(signature, "US-ASCII"))) {
+            throw new IOException("Unknown qix file format");
+        }
+        //1 is LSB first, 2 is MSB first, 0 is the order of the machine
+        //that wrote it, which is almost always LSB first
+        byte byteOrder = buffer.get();
+        buffer.order((byteOrder == 2)
+                     ? ByteOrder.BIG_ENDIAN
+                     : ByteOrder.LITTLE_ENDIAN);
+        int version = buffer.get();
+        if (version != 1) {
+            throw new IOException("Unknown qix version:" + version);
+        }
+        buffer.position(8);
+        int numShapes = buffer.getInt();
+        buffer.getInt();  // max depth
+        ShapefileIndex index = new ShapefileIndex(64, numShapes);
+        try {
+            index.root = index.readQixNode(buffer, 0);
+        } catch (BufferUnderflowException bue) {
+            throw new IOException("Truncated qix file");
+        }
+        return index;
+    }
+
+    /**
+     * Read a quad tree node and its children
+     *
+     * @param buffer the buffer, positioned at the node
+     * @param depth depth of the node
+     *
+     * @return the node
+     *
+     * @throws IOException On badness
+     */
+    private int readQixNode(ByteBuffer buffer, int depth) throws IOException {
+        if (depth > 64) {
+            throw new IOException("Bad qix file");
+        }
+        int node = addNode();
+        buffer.getInt();  // offset to the next sibling
+        for (int i = 0; i < 4; i++) {
+            nodeBounds[4 * node + i] = buffer.getDouble();
+        }
+        int cnt = buffer.getInt();
+        if ((cnt < 0) || (cnt > buffer.remaining() / 4)) {
+            throw new IOException("Bad qix file");
+        }
+        itemStart[node] = numItems;
+        itemCount[node] = cnt;
+        if (items.length < numItems + cnt) {
+            items = Arrays.copyOf(items,
+                                  Math.max(2 * items.length, numItems + cnt));
+        }
+        for (int i = 0; i < cnt; i++) {
+            items[numItems++] = buffer.getInt();
+        }
+        int numChildren = buffer.getInt();
+        int last        = -1;
+        for (int i = 0; i < numChildren; i++) {
+            int child = readQixNode(buffer, depth + 1);
+            if (last < 0) {
+                firstChild[node] = child;
+            } else {
+                nextSibling[last] = child;
+            }
+            last = child;
+        }
+        return node;
+    }
+
+    /**
+     * Add a new node with empty bounds
+     *
+     * @return the node
+     */
+    private int addNode() {
+        if (numNodes == firstChild.length) {
+            int size = 2 * numNodes;
+            nodeBounds  = Arrays.copyOf(nodeBounds, 4 * size);
+            firstChild  = Arrays.copyOf(firstChild, size);
+            nextSibling = Arrays.copyOf(nextSibling, size);
+            itemStart   = Arrays.copyOf(itemStart, size);
+            itemCount   = Arrays.copyOf(itemCount, size);
+        }
+        int node = numNodes++;
+        nodeBounds[4 * node]     = Double.POSITIVE_INFINITY;
+        nodeBounds[4 * node + 1] = Double.POSITIVE_INFINITY;
+        nodeBounds[4 * node + 2] = Double.NEGATIVE_INFINITY;
+        nodeBounds[4 * node + 3] = Double.NEGATIVE_INFINITY;
+        firstChild[node]         = -1;
+        nextSibling[node]        = -1;
+        return node;
+    }
+
+    /**
+     * Grow the bounds of the node to include the given bounds
+     *
+     * @param node the node
+     * @param bounds array of bounds
+     * @param offset offset of the bounds in the array
+     */
+    private void include(int node, double[] bounds, int offset) {
+        int i = 4 * node;
+        nodeBounds[i]     = Math.min(nodeBounds[i], bounds[offset]);
+        nodeBounds[i + 1] = Math.min(nodeBounds[i + 1], bounds[offset + 1]);
+        nodeBounds[i + 2] = Math.max(nodeBounds[i + 2], bounds[offset + 2]);
+        nodeBounds[i + 3] = Math.max(nodeBounds[i + 3], bounds[offset + 3]);
+    }
+
+    /**
+     * Find the ids of the items that intersect the box or, for a quad
+     * tree, the ids of the items in the nodes that intersect the box.
+     * Edges that touch count as intersecting so points and horizontal or
+     * vertical lines are found.
+     *
+     * @param minX min x of the box
+     * @param minY min y of the box
+     * @param maxX max x of the box
+     * @param maxY max y of the box
+     *
+     * @return the sorted ids
+     */
+    public int[] query(double minX, double minY, double maxX, double maxY) {
+        int[] result = new int[16];
+        int   cnt    = 0;
+        if (root < 0) {
+            return new int[0];
+        }
+        int[] stack = new int[64];
+        int   top   = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            int i    = 4 * node;
+            if ((nodeBounds[i] > maxX) || (nodeBounds[i + 2] < minX)
+                    || (nodeBounds[i + 1] > maxY)
+                    || (nodeBounds[i + 3] < minY)) {
+                continue;
+            }
+            int start = itemStart[node];
+            int end   = start + itemCount[node];
+            if (cnt + end - start > result.length) {
+                result = Arrays.copyOf(result,
+                                       Math.max(2 * result.length,
+                                           cnt + end - start));
+            }
+            for (int k = start; k < end; k++) {
+                if ((itemBounds != null)
+                        && ((itemBounds[4 * k] > maxX)
+                            || (itemBounds[4 * k + 2] < minX)
+                            || (itemBounds[4 * k + 1] > maxY)
+                            || (itemBounds[4 * k + 3] < minY))) {
+                    continue;
+                }
+                result[cnt++] = items[k];
+            }
+            for (int child = firstChild[node]; child >= 0;
+                    child = nextSibling[child]) {
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, 2 * stack.length);
+                }
+                stack[top++] = child;
+            }
+        }
+        result = Arrays.copyOf(result, cnt);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Get the number of items in the index
+     *
+     * @return number of items
+     */
+    public int getNumItems() {
+        return numItems;
+    }
+
+    /**
+     * Map the point onto the Hilbert curve
+     *
+     * @param x x, 0 to 2^HILBERT_ORDER-1
+     * @param y y, 0 to 2^HILBERT_ORDER-1
+     *
+     * @return distance along the curve
+     */
+    static int hilbert(int x, int y) {
+        int d = 0;
+        for (int s = 1 << (HILBERT_ORDER - 1); s > 0; s >>= 1) {
+            int rx = ((x & s) > 0)
+                     ? 1
+                     : 0;
+            int ry = ((y & s) > 0)
+                     ? 1
+                     : 0;
+            d += s * s * ((3 * rx) ^ ry);
+            //rotate the quadrant
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = s - 1 - x;
+                    y = s - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+}
@@ -348,6 +348,10 @@ public interface IdvConstants {
     /** The id for the maximum number of data reading threads preference */
     public static final String PREF_THREADS_DATA = "idv.threads.render.data";
 
+    /** The id for the number of threads used to read one local grid file */
+    public static final String PREF_THREADS_LOCALDATA =
+        "idv.threads.render.localdata";
+
     /** look and feel preference */
     public static final String PREF_EVENT_MOUSEMAP = "idv.event.mousemap";
 
@@ -497,6 +501,17 @@ public interface IdvConstants {
     /** The preference id for the size of the file cache */
     public static final String PREF_CACHESIZE = "idv.cachesize";
 
+    /** The preference id for the percent of memory used by the data cache */
+    public static final String PREF_MEMORYCACHEPERCENT =
+        "idv.memorycachepercent";
+
+    /** The preference id for always caching grid slices to disk */
+    public static final String PREF_GRIDCACHE_ENABLED =
+        "idv.gridcache.enabled";
+
+    /** The preference id for the size (MB) of the grid slice disk cache */
+    public static final String PREF_GRIDCACHE_SIZE = "idv.gridcache.size";
+
 
     /** The preference id for the size of the field cache */
     public static final String PREF_FIELD_CACHETHRESHOLD =
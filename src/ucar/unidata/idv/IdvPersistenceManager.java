@@ -54,9 +54,11 @@ import ucar.unidata.util.ResourceCollection;
 import ucar.unidata.util.StringUtil;
 import ucar.unidata.util.Trace;
 import ucar.unidata.util.TwoFacedObject;
+import ucar.unidata.xml.XmlArrayStore;
 import ucar.unidata.xml.XmlEncoder;
 import ucar.unidata.xml.XmlResourceCollection;
 import ucar.unidata.xml.XmlUtil;
+import ucar.unidata.xml.ZipArrayStore;
 
 import visad.util.ThreadManager;
 
@@ -71,6 +73,9 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
 import java.util.*;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -111,6 +116,14 @@ public class IdvPersistenceManager extends IdvManager implements PrototypeManage
     /** The macro for the zidv path in data paths */
     public static final String PROP_ZIDVPATH = "idv.zidvpath";
 
+    /**
+     * Property for writing the large primitive arrays of zidv bundles as
+     * their own zip entries. Older versions of the IDV can't read these
+     * bundles so this is off by default.
+     */
+    public static final String PROP_ZIDV_ARRAYENTRIES =
+        "idv.zidv.arrayentries";
+
 
     /** property id */
     public static final String PROP_TIMESLIST = "idv.timeslist";
@@ -1357,6 +1370,10 @@ public class IdvPersistenceManager extends IdvManager implements PrototypeManage
      */
     public boolean doSave(String filename, boolean usePersistenceManager, boolean fromIsl) {
 
+        //zidv files are written to a temp file that is moved into place
+        //when it is done. This is non-null until then.
+        ZipOutputStream zos         = null;
+        File            zidvTmpFile = null;
         try {
             boolean doJnlp = filename.endsWith(SUFFIX_JNLP)
                              || filename.endsWith(SUFFIX_SH)
@@ -1377,8 +1394,20 @@ public class IdvPersistenceManager extends IdvManager implements PrototypeManage
                 }
             }
 
+            //If asked for, the large primitive arrays of zidv files are
+            //written as their own entries in the zip file as the bundle is
+            //encoded
+            XmlArrayStore arrayStore = null;
+            if (doZidv
+                    && getIdv().getProperty(PROP_ZIDV_ARRAYENTRIES, false)) {
+                zidvTmpFile = new File(filename + ".tmp");
+                zos = new ZipOutputStream(new FileOutputStream(zidvTmpFile));
+                arrayStore = new ZipArrayStore(zos);
+            }
+
             //The !doJnlp says to create the xml without the extra spacing, etc.
-            String xml = getBundleXml( !doJnlp, usePersistenceManager);
+            String xml = getBundleXml( !doJnlp, usePersistenceManager,
+                                       arrayStore);
             if (xml == null) {
                 clearDataSourcesState();
                 return false;
@@ -1466,10 +1495,13 @@ public class IdvPersistenceManager extends IdvManager implements PrototypeManage
                 dialog.setText("Writing " + filename);
                 String tail =
                     IOUtil.stripExtension(IOUtil.getFileTail(filename));
-                ZipOutputStream zos =
-                    new ZipOutputStream(new FileOutputStream(filename));
                 String fileSuffix =
                     getArgsManager().getXidvFileFilter().getPreferredSuffix();
+                if (zos == null) {
+                    zidvTmpFile = new File(filename + ".tmp");
+                    zos = new ZipOutputStream(
+                        new FileOutputStream(zidvTmpFile));
+                }
                 zos.putNextEntry(new ZipEntry(tail + fileSuffix));
                 byte[] bytes = xml.getBytes();
                 zos.write(bytes, 0, bytes.length);
@@ -1486,12 +1518,14 @@ public class IdvPersistenceManager extends IdvManager implements PrototypeManage
                     zos.closeEntry();
                     if (dialog.isCancelled()) {
                         dialog.dispose();
-                        zos.close();
                         return false;
                     }
                 }
                 dialog.dispose();
                 zos.close();
+                zos = null;
+                Files.move(zidvTmpFile.toPath(), new File(filename).toPath(),
+                           StandardCopyOption.REPLACE_EXISTING);
                 return true;
             }
 
@@ -1506,6 +1540,16 @@ public class IdvPersistenceManager extends IdvManager implements PrototypeManage
         } catch (Throwable e) {
             logException("doSave", e);
             return false;
+        } finally {
+            //Don't leave a partial zidv file around
+            if (zos != null) {
+                try {
+                    zos.close();
+                } catch (IOException ignore) {}
+            }
+            if ((zidvTmpFile != null) && zidvTmpFile.exists()) {
+                zidvTmpFile.delete();
+            }
         }
         return true;
 
@@ -1562,7 +1606,26 @@ public class IdvPersistenceManager extends IdvManager implements PrototypeManage
     public String getBundleXml(boolean formatXml,
                                boolean usePersistenceManager)
             throws Exception {
+        return getBundleXml(formatXml, usePersistenceManager, null);
+    }
+
+    /**
+     * This creates an xml encoded hashtable that contains the application state.
+     *
+     * @param formatXml Should the result be formatted (i.e., new lines and indents
+     * for easy reading).
+     * @param usePersistenceManager If true then use the persistence manager to decide what is saved
+     * @param arrayStore If non-null then large primitive arrays are written here
+     *                   instead of being inlined in the xml
+     * @return The xml encoded application state
+     * @throws Exception the exception
+     */
+    public String getBundleXml(boolean formatXml,
+                               boolean usePersistenceManager,
+                               XmlArrayStore arrayStore)
+            throws Exception {
         XmlEncoder encoder = getIdv().getEncoderForWrite();
+        encoder.setArrayStore(arrayStore);
         Hashtable  data    = new Hashtable();
         if ( !addToBundle(data, usePersistenceManager,
                           getIdv().getDisplayControls())) {
@@ -3271,7 +3334,14 @@ public class IdvPersistenceManager extends IdvManager implements PrototypeManage
             sur = null;
             Trace.call2("Remapping URLs");
             Trace.call1("Decode.toObject");
-            Object data = getIdv().getEncoderForRead().toObject(bundleRoot);
+            XmlEncoder encoder = getIdv().getEncoderForRead();
+            //Large arrays in zidv bundles are unpacked along with the data
+            String zidvPath =
+                (String) getStateManager().getProperty(PROP_ZIDVPATH);
+            if ((zidvPath != null) && (zidvPath.length() > 0)) {
+                encoder.setArrayStore(new ZipArrayStore(new File(zidvPath)));
+            }
+            Object data = encoder.toObject(bundleRoot);
             Trace.call2("Decode.toObject");
 
             if (data != null) {
@@ -3297,6 +3367,11 @@ public class IdvPersistenceManager extends IdvManager implements PrototypeManage
                         + data.getClass().getName());
                 }
                 if ( !fromCollab && getIdv().haveCollabManager()) {
+                    //The other side does not have our unpacked zidv files
+                    if (encoder.getArrayStore() != null) {
+                        encoder.inlineArrays(bundleRoot);
+                        xml = XmlUtil.toString(bundleRoot);
+                    }
                     getCollabManager().write(getCollabManager().MSG_BUNDLE,
                                              xml);
                 }
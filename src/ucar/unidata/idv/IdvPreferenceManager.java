@@ -381,7 +381,8 @@ public class IdvPreferenceManager extends IdvManager implements ActionListener {
                 continue;
             }
 
-            if (key.equals(PREF_THREADS_DATA)) {
+            if (key.equals(PREF_THREADS_DATA)
+                    || key.equals(PREF_THREADS_LOCALDATA)) {
                 int value =
                     ((Integer) ((JComboBox) widget).getSelectedItem())
                         .intValue();
@@ -701,6 +702,14 @@ public class IdvPreferenceManager extends IdvManager implements ActionListener {
         maxDataThreadsFld.setSelectedItem(
             Integer.valueOf(getIdv().getMaxDataThreadCount()));
         systemWidgets.put(PREF_THREADS_DATA, maxDataThreadsFld);
+
+        JComboBox maxLocalDataThreadsFld = new JComboBox(threadCnt);
+
+        maxLocalDataThreadsFld.setSelectedItem(
+            Integer.valueOf(getIdv().getMaxLocalDataThreadCount()));
+        maxLocalDataThreadsFld.setToolTipText(
+            "Number of threads used to read the times of a local grid file");
+        systemWidgets.put(PREF_THREADS_LOCALDATA, maxLocalDataThreadsFld);
         systemComps.add(GuiUtils.left(cacheCbx));
         systemComps.add(GuiUtils.filler());
         systemComps.add(GuiUtils.left(GuiUtils.hbox(cacheComps)));
@@ -709,9 +718,11 @@ public class IdvPreferenceManager extends IdvManager implements ActionListener {
         systemComps.add(GuiUtils.rLabel("Thread Count:"));
         systemComps.add(
             GuiUtils.left(
-                GuiUtils.hbox(
+                GuiUtils.hbox(new Component[] {
                     new JLabel("Rendering: "), maxRenderThreadsFld,
-                    new JLabel("   Data Reading: "), maxDataThreadsFld)));
+                    new JLabel("   Data Reading: "), maxDataThreadsFld,
+                    new JLabel("   Local Files: "),
+                    maxLocalDataThreadsFld })));
         systemComps.add(GuiUtils.rLabel("Data Cache Memory Percent:"));
 
         JTextField cacheSizeFld = new JTextField(
@@ -45,6 +45,9 @@ public class IdvServer {
     /** _more_          */
     private File userDir;
 
+    /** Do we clear the CacheManager when we clean up the idv */
+    private boolean clearCache = true;
+
 
     /**
      * _more_
@@ -63,6 +66,13 @@ public class IdvServer {
     }
 
 
+    /**
+     * Create a server without an idv. This is for subclasses that
+     * override {@link #nextIdv()} and {@link #cleanup()}.
+     */
+    protected IdvServer() {}
+
+
     /**
      * _more_
      *
@@ -86,9 +96,26 @@ public class IdvServer {
     public void evaluateIsl(StringBuffer isl, Hashtable properties)
             throws Exception {
         synchronized (MUTEX) {
-            //Make a new one every 100 calls
+            nextIdv().getImageGenerator().processScriptFile("xml:" + isl,
+                    properties);
+            idv.cleanup(clearCache);
+        }
+
+    }
+
+
+    /**
+     * Get the idv to use for the next call. We make a new one every
+     * 100 calls.
+     *
+     * @return The idv
+     *
+     * @throws Exception On badness
+     */
+    public MyIdv nextIdv() throws Exception {
+        synchronized (MUTEX) {
             if (callCnt++ > 100) {
-                idv.cleanup();
+                idv.cleanup(clearCache);
                 idv = new MyIdv(((userDir == null)
                                  ? null
                                  : userDir.toString()));
@@ -96,11 +123,30 @@ public class IdvServer {
                     IdvConstants.PROP_MAP_MAP_LEVEL, "0");
                 callCnt = 0;
             }
-            idv.getImageGenerator().processScriptFile("xml:" + isl,
-                    properties);
-            idv.cleanup();
+            return idv;
+        }
+    }
+
+
+    /**
+     * Remove the displays, data sources, etc., from the idv
+     */
+    public void cleanup() {
+        synchronized (MUTEX) {
+            idv.cleanup(clearCache);
         }
+    }
+
 
+    /**
+     * Set whether we clear the CacheManager when we clean up the idv.
+     * When more than one IdvServer is running in the vm this should be
+     * false as the cache is shared.
+     *
+     * @param value clear the cache
+     */
+    public void setClearCache(boolean value) {
+        clearCache = value;
     }
 
 
@@ -0,0 +1,629 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.idv;
+
+
+import ucar.unidata.util.LogUtil;
+import ucar.unidata.util.Misc;
+
+
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.List;
+
+
+/**
+ * A pool of warm, offscreen {@link IdvServer}s that run rendering
+ * requests concurrently. Each server has its own idv and so its own
+ * ImageGenerator.
+ * <p>
+ * Requests are queued by priority (first in, first out within a
+ * priority). If the queue is full a new request is rejected with a
+ * {@link PoolFullException}. A request can have a warm key (e.g., the
+ * bundle file and its modification time). A server that has run a
+ * request with the same key within the warm time keeps its displays and
+ * data sources and is handed the request in preference to the other
+ * servers so it does not have to load the bundle again. Requests with
+ * no warm key always load their state and a warm time of 0 turns the
+ * reuse off.
+ * <p>
+ * The servers run in one vm so they share the static state of the IDV
+ * and VisAD. Each idv has its own ImageGenerator, displays and jython
+ * interpreter. The {@link ucar.unidata.util.CacheManager} is shared; it
+ * is synchronized and size bounded and the servers do not clear it (see
+ * {@link IdvServer#setClearCache}). The pool assumes that the rest of the
+ * static state (e.g., the VisAD type registry) is safe to use from more
+ * than one idv at a time. This has not been shown for every display
+ * control, so the pool is off by default and a pool.size of 1 runs the
+ * requests one at a time.
+ *
+ * @author IDV development team
+ */
+public class IdvServerPool {
+
+    /** logging category */
+    static LogUtil.LogCategory log_ =
+        LogUtil.getLogInstance(IdvServerPool.class.getName());
+
+    /** Low priority */
+    public static final int PRIORITY_LOW = 0;
+
+    /** Normal priority */
+    public static final int PRIORITY_NORMAL = 5;
+
+    /** High priority */
+    public static final int PRIORITY_HIGH = 10;
+
+    /** How many of the latest latencies we keep for the percentiles */
+    private static final int NUM_LATENCIES = 1000;
+
+    /** Guards the queue, the workers and the metrics */
+    private Object MUTEX = new Object();
+
+    /** The user directory for the idvs */
+    private File userDir;
+
+    /** Max number of queued requests */
+    private int maxQueueSize;
+
+    /** How long (ms) a server stays warm for a key */
+    private long warmTime;
+
+    /** The queued requests, highest priority first */
+    private List<Job> queue = new ArrayList<Job>();
+
+    /** The workers */
+    private List<Worker> workers = new ArrayList<Worker>();
+
+    /** Are we running */
+    private boolean running = true;
+
+    /** Number of requests submitted */
+    private int submittedCnt = 0;
+
+    /** Number of requests rejected because the queue was full */
+    private int rejectedCnt = 0;
+
+    /** Number of requests that completed */
+    private int completedCnt = 0;
+
+    /** Number of requests that failed */
+    private int failedCnt = 0;
+
+    /** Number of requests run on a warm server */
+    private int warmCnt = 0;
+
+    /** The largest queue depth */
+    private int maxQueueDepth = 0;
+
+    /** Total time requests have waited in the queue */
+    private long totalWaitTime = 0;
+
+    /** Total time requests have run */
+    private long totalRunTime = 0;
+
+    /** Longest time a request waited in the queue */
+    private long maxWaitTime = 0;
+
+    /** Longest time a request ran */
+    private long maxRunTime = 0;
+
+    /** Ring buffer of the latest request latencies */
+    private long[] latencies = new long[NUM_LATENCIES];
+
+    /** Number of latencies we have recorded */
+    private int latencyCnt = 0;
+
+
+    /**
+     * Create the pool and start the servers
+     *
+     * @param userDir The user directory for the idvs. May be null.
+     * @param size Number of servers
+     * @param maxQueueSize Max number of queued requests
+     * @param warmTime How long (ms) a server stays warm for a key
+     *
+     * @throws Exception On badness
+     */
+    public IdvServerPool(File userDir, int size, int maxQueueSize,
+                         long warmTime)
+            throws Exception {
+        this.userDir      = userDir;
+        this.maxQueueSize = maxQueueSize;
+        this.warmTime     = warmTime;
+        for (int i = 0; i < size; i++) {
+            workers.add(new Worker(makeServer()));
+        }
+        for (Worker worker : workers) {
+            Misc.run(worker);
+        }
+    }
+
+
+    /**
+     * Factory method to make a server
+     *
+     * @return The server
+     *
+     * @throws Exception On badness
+     */
+    protected IdvServer makeServer() throws Exception {
+        IdvServer server = new IdvServer(userDir);
+        //The CacheManager is shared by all of the servers
+        server.setClearCache(false);
+        return server;
+    }
+
+
+    /**
+     * Evaluate the isl on one of the servers and wait until it is done
+     *
+     * @param isl The isl
+     * @param properties Properties to pass to the isl
+     * @param priority The priority
+     *
+     * @throws Exception On badness
+     */
+    public void evaluateIsl(final StringBuffer isl,
+                            final Hashtable properties, int priority)
+            throws Exception {
+        execute(new Job(priority, null) {
+            public void run(IdvServer server, boolean warm)
+                    throws Exception {
+                server.getIdv().getImageGenerator().processScriptFile(
+                    "xml:" + isl, properties);
+                server.cleanup();
+            }
+        });
+    }
+
+
+    /**
+     * Queue the job and wait until it has been run
+     *
+     * @param job The job
+     *
+     * @throws Exception Any error from running the job
+     * @throws PoolFullException If the queue is full
+     */
+    public void execute(Job job) throws Exception {
+        submit(job);
+        job.waitUntilDone();
+        if (job.error instanceof Exception) {
+            throw (Exception) job.error;
+        } else if (job.error != null) {
+            throw new RuntimeException(job.error);
+        }
+    }
+
+
+    /**
+     * Queue the job
+     *
+     * @param job The job
+     *
+     * @throws PoolFullException If the queue is full
+     */
+    public void submit(Job job) {
+        synchronized (MUTEX) {
+            if ( !running) {
+                throw new IllegalStateException("Server pool is shut down");
+            }
+            if (queue.size() >= maxQueueSize) {
+                rejectedCnt++;
+                throw new PoolFullException("Server is busy. "
+                                            + queue.size()
+                                            + " requests are queued");
+            }
+            submittedCnt++;
+            job.submitTime = System.currentTimeMillis();
+            //Insert after the jobs with the same or higher priority
+            int idx = 0;
+            while ((idx < queue.size())
+                    && (queue.get(idx).priority >= job.priority)) {
+                idx++;
+            }
+            queue.add(idx, job);
+            maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+            MUTEX.notifyAll();
+        }
+    }
+
+
+    /**
+     * Stop the workers. Any queued jobs fail.
+     */
+    public void shutdown() {
+        synchronized (MUTEX) {
+            running = false;
+            for (Job job : queue) {
+                job.finish(new IllegalStateException(
+                    "Server pool is shut down"));
+            }
+            queue.clear();
+            MUTEX.notifyAll();
+        }
+    }
+
+
+    /**
+     * Get the number of servers
+     *
+     * @return number of servers
+     */
+    public int getSize() {
+        return workers.size();
+    }
+
+
+    /**
+     * Get the number of queued requests
+     *
+     * @return queue depth
+     */
+    public int getQueueDepth() {
+        synchronized (MUTEX) {
+            return queue.size();
+        }
+    }
+
+
+    /**
+     * Get the request metrics. Times are in milliseconds.
+     *
+     * @return name to value
+     */
+    public Hashtable getMetrics() {
+        synchronized (MUTEX) {
+            Hashtable metrics = new Hashtable();
+            int       busy    = 0;
+            for (Worker worker : workers) {
+                if (worker.busy) {
+                    busy++;
+                }
+            }
+            int done = completedCnt + failedCnt;
+            metrics.put("servers", Integer.valueOf(workers.size()));
+            metrics.put("busy", Integer.valueOf(busy));
+            metrics.put("queuedepth", Integer.valueOf(queue.size()));
+            metrics.put("maxqueuedepth", Integer.valueOf(maxQueueDepth));
+            metrics.put("submitted", Integer.valueOf(submittedCnt));
+            metrics.put("rejected", Integer.valueOf(rejectedCnt));
+            metrics.put("completed", Integer.valueOf(completedCnt));
+            metrics.put("failed", Integer.valueOf(failedCnt));
+            metrics.put("warm", Integer.valueOf(warmCnt));
+            metrics.put("avgwait", Long.valueOf((done == 0)
+                    ? 0
+                    : totalWaitTime / done));
+            metrics.put("maxwait", Long.valueOf(maxWaitTime));
+            metrics.put("avgrun", Long.valueOf((done == 0)
+                    ? 0
+                    : totalRunTime / done));
+            metrics.put("maxrun", Long.valueOf(maxRunTime));
+            int    cnt    = Math.min(latencyCnt, NUM_LATENCIES);
+            long[] sorted = Arrays.copyOf(latencies, cnt);
+            Arrays.sort(sorted);
+            metrics.put("latency50", Long.valueOf((cnt == 0)
+                    ? 0
+                    : sorted[cnt / 2]));
+            metrics.put("latency95", Long.valueOf((cnt == 0)
+                    ? 0
+                    : sorted[Math.min(cnt - 1, (cnt * 95) / 100)]));
+            return metrics;
+        }
+    }
+
+
+    /**
+     * Get the next job for the worker. This waits until there is one.
+     * A job whose warm key matches an idle worker is left for that worker.
+     *
+     * @param worker The worker
+     *
+     * @return The job or null if we have been shut down
+     */
+    private Job takeJob(Worker worker) {
+        synchronized (MUTEX) {
+            while (running) {
+                for (int i = 0; i < queue.size(); i++) {
+                    Job job = queue.get(i);
+                    if (worker.isWarm(job) || !isWarmElsewhere(job, worker)) {
+                        queue.remove(i);
+                        worker.busy = true;
+                        //Let the other workers look at the queue again
+                        MUTEX.notifyAll();
+                        return job;
+                    }
+                }
+                try {
+                    MUTEX.wait();
+                } catch (InterruptedException exc) {
+                    return null;
+                }
+            }
+            return null;
+        }
+    }
+
+
+    /**
+     * Is there another idle worker that is warm for the job
+     *
+     * @param job The job
+     * @param worker The worker that is asking
+     *
+     * @return is warm elsewhere
+     */
+    private boolean isWarmElsewhere(Job job, Worker worker) {
+        for (Worker other : workers) {
+            if ((other != worker) && !other.busy && other.isWarm(job)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Record the times of a job that is done
+     *
+     * @param job The job
+     * @param warm Did it run on a warm server
+     * @param error Any error from running the job
+     */
+    private void jobDone(Job job, boolean warm, Throwable error) {
+        synchronized (MUTEX) {
+            long waitTime = job.startTime - job.submitTime;
+            long runTime  = job.endTime - job.startTime;
+            if (error == null) {
+                completedCnt++;
+            } else {
+                failedCnt++;
+            }
+            if (warm) {
+                warmCnt++;
+            }
+            totalWaitTime += waitTime;
+            totalRunTime  += runTime;
+            maxWaitTime   = Math.max(maxWaitTime, waitTime);
+            maxRunTime    = Math.max(maxRunTime, runTime);
+            latencies[latencyCnt++ % NUM_LATENCIES] = waitTime + runTime;
+        }
+    }
+
+
+    /**
+     * A request to run on one of the servers
+     */
+    public abstract static class Job {
+
+        /** The priority */
+        private int priority;
+
+        /** The warm key. May be null. */
+        private String warmKey;
+
+        /** When it was queued */
+        private long submitTime;
+
+        /** When it started running */
+        private long startTime;
+
+        /** When it finished */
+        private long endTime;
+
+        /** Is it done */
+        private boolean done = false;
+
+        /** Any error */
+        private Throwable error;
+
+        /**
+         * ctor
+         *
+         * @param priority The priority
+         * @param warmKey The warm key. Jobs with the same key can reuse
+         * the displays and data sources of the last one. May be null.
+         */
+        public Job(int priority, String warmKey) {
+            this.priority = priority;
+            this.warmKey  = warmKey;
+        }
+
+        /**
+         * Run the job
+         *
+         * @param server The server to run on
+         * @param warm If true then the server has just run a job with the
+         * same warm key and has not been cleaned up
+         *
+         * @throws Exception On badness
+         */
+        public abstract void run(IdvServer server, boolean warm)
+         throws Exception;
+
+        /**
+         * Get the warm key
+         *
+         * @return The warm key
+         */
+        public String getWarmKey() {
+            return warmKey;
+        }
+
+        /**
+         * Get the time the job waited in the queue
+         *
+         * @return wait time (ms)
+         */
+        public long getWaitTime() {
+            return startTime - submitTime;
+        }
+
+        /**
+         * Get the time the job ran
+         *
+         * @return run time (ms)
+         */
+        public long getRunTime() {
+            return endTime - startTime;
+        }
+
+        /**
+         * Mark the job as done
+         *
+         * @param error Any error
+         */
+        private synchronized void finish(Throwable error) {
+            this.error = error;
+            done       = true;
+            notifyAll();
+        }
+
+        /**
+         * Wait until the job is done
+         *
+         * @throws InterruptedException If interrupted
+         */
+        private synchronized void waitUntilDone()
+                throws InterruptedException {
+            while ( !done) {
+                wait();
+            }
+        }
+    }
+
+
+    /**
+     * Thrown when a job is submitted and the queue is full
+     */
+    public static class PoolFullException extends RuntimeException {
+
+        /**
+         * ctor
+         *
+         * @param msg The message
+         */
+        public PoolFullException(String msg) {
+            super(msg);
+        }
+    }
+
+
+    /**
+     * Runs the jobs on one server
+     */
+    private class Worker implements Runnable {
+
+        /** The server */
+        private IdvServer server;
+
+        /** Are we running a job */
+        private boolean busy = false;
+
+        /** The key of the job whose state the server holds */
+        private String warmKey;
+
+        /** The idv that holds the state */
+        private Object warmIdv;
+
+        /** When the warm state expires */
+        private long warmUntil;
+
+        /** Has a job run on the server since it was last cleaned up */
+        private boolean dirty = false;
+
+        /**
+         * ctor
+         *
+         * @param server The server
+         */
+        public Worker(IdvServer server) {
+            this.server = server;
+        }
+
+        /**
+         * Can we run the job without loading its state again
+         *
+         * @param job The job
+         *
+         * @return is warm
+         */
+        private boolean isWarm(Job job) {
+            return (job.warmKey != null) && job.warmKey.equals(warmKey)
+                   && (System.currentTimeMillis() < warmUntil);
+        }
+
+        /**
+         * Run the jobs
+         */
+        public void run() {
+            Job job;
+            while ((job = takeJob(this)) != null) {
+                boolean warm;
+                synchronized (MUTEX) {
+                    warm = isWarm(job);
+                }
+                Throwable error = null;
+                job.startTime = System.currentTimeMillis();
+                try {
+                    Object idv = ((server != null)
+                                  ? server.nextIdv()
+                                  : null);
+                    //The server may have made a new idv
+                    warm = warm && (idv == warmIdv);
+                    //Any job, even one without a key or one that failed,
+                    //can leave displays and data sources behind
+                    if ( !warm && dirty && (server != null)) {
+                        server.cleanup();
+                    }
+                    synchronized (MUTEX) {
+                        warmKey = null;
+                    }
+                    dirty = true;
+                    job.run(server, warm);
+                    synchronized (MUTEX) {
+                        if ((job.warmKey != null) && !warm) {
+                            warmIdv = idv;
+                            warmUntil = System.currentTimeMillis()
+                                        + warmTime;
+                        }
+                        warmKey = job.warmKey;
+                    }
+                } catch (Throwable exc) {
+                    log_.error("Error running request:" + exc);
+                    error = exc;
+                }
+                job.endTime = System.currentTimeMillis();
+                jobDone(job, warm, error);
+                synchronized (MUTEX) {
+                    busy = false;
+                    MUTEX.notifyAll();
+                }
+                job.finish(error);
+            }
+        }
+    }
+
+}
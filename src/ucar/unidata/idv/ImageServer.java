@@ -28,6 +28,7 @@ import ucar.unidata.util.HttpServer;
 import ucar.unidata.util.IOUtil;
 import ucar.unidata.util.LogUtil;
 import ucar.unidata.util.Misc;
+import ucar.unidata.xml.XmlUtil;
 
 import java.awt.*;
 
@@ -39,7 +40,7 @@ import java.net.Socket;
 import java.net.URL;
 
 import java.util.Date;
-
+import java.util.Enumeration;
 import java.util.Hashtable;
 
 
@@ -86,9 +87,56 @@ public class ImageServer extends HttpServer {
     /** http image arg */
     public static final String REQ_EXIT = "exit";
 
+    /**
+     * http request to evaluate isl. The isl can run jython so this is
+     * only allowed if the isl.enable server property is true and the
+     * request comes from the local host.
+     */
+    public static final String REQ_ISL = "isl";
+
+    /** http request for the server pool metrics */
+    public static final String REQ_STATS = "stats";
+
+    /** http isl arg. If not given the isl is the posted content */
+    public static final String ARG_ISL = "isl";
+
+    /** http request priority arg */
+    public static final String ARG_PRIORITY = "priority";
+
+    /**
+     * http arg. If false then the request does not reuse, and is not
+     * reused by, the displays of other requests, e.g., for real-time
+     * bundles whose data changes while the bundle does not.
+     */
+    public static final String ARG_WARM = "warm";
+
+    /** server property for allowing isl requests from the local host */
+    public static final String PROP_ISL_ENABLE = "isl.enable";
+
+    /** server property for the number of idvs in the pool */
+    public static final String PROP_POOL_SIZE = "pool.size";
+
+    /** server property for the max number of queued requests */
+    public static final String PROP_POOL_QUEUE = "pool.queue";
+
+    /**
+     * server property for how long (seconds) an idv keeps a bundle
+     * loaded. 0 turns off the reuse.
+     */
+    public static final String PROP_POOL_WARMTIME = "pool.warmtime";
+
+    /** server property for the user directory of the idvs in the pool */
+    public static final String PROP_POOL_USERDIR = "pool.userdir";
+
     /** The idv */
     IntegratedDataViewer idv;
 
+    /** The pool of idvs. Null if we just use the idv. */
+    private IdvServerPool pool;
+
+    /** Have we checked for the pool */
+    private boolean checkedPool = false;
+
     /**
      * ctor
      *
@@ -127,6 +175,60 @@ public class ImageServer extends HttpServer {
     }
 
 
+    /**
+     * Get the pool of idvs. This is created the first time through if
+     * the pool.size server property is greater than 0.
+     *
+     * @return The pool or null
+     *
+     * @throws Exception On badness
+     */
+    public synchronized IdvServerPool getPool() throws Exception {
+        if ( !checkedPool) {
+            checkedPool = true;
+            int size = Misc.getProperty(serverProperties, PROP_POOL_SIZE,
+                                        0);
+            if (size > 0) {
+                String userDir =
+                    (String) serverProperties.get(PROP_POOL_USERDIR);
+                pool = new IdvServerPool(((userDir == null)
+                                          ? null
+                                          : new File(userDir)), size,
+                                          Misc.getProperty(serverProperties,
+                                              PROP_POOL_QUEUE,
+                                                  50), 1000L
+                                                  * Misc.getProperty(
+                                                      serverProperties,
+                                                          PROP_POOL_WARMTIME,
+                                                              300));
+            }
+        }
+        return pool;
+    }
+
+
+    /**
+     * Get the pool metrics as xml
+     *
+     * @return The xml
+     *
+     * @throws Exception On badness
+     */
+    public String getStatsXml() throws Exception {
+        IdvServerPool pool = getPool();
+        if (pool == null) {
+            return XmlUtil.tag("stats", XmlUtil.attr("servers", "0"));
+        }
+        Hashtable    metrics = pool.getMetrics();
+        StringBuffer attrs   = new StringBuffer();
+        for (Enumeration keys = metrics.keys(); keys.hasMoreElements(); ) {
+            String key = (String) keys.nextElement();
+            attrs.append(XmlUtil.attr(key, metrics.get(key).toString()));
+        }
+        return XmlUtil.tag("stats", attrs.toString());
+    }
+
+
     /**
      * Class ImageRequestHandler handles image server requests
      *
@@ -171,6 +273,11 @@ public class ImageServer extends HttpServer {
                 throws Exception {
             try {
                 handleRequestInner(path, formArgs, httpArgs, content);
+            } catch (IdvServerPool.PoolFullException exc) {
+                log("Rejected request:" + exc.getMessage());
+                writeResult(RESPONSE_UNAVAILABLE,
+                            "<html>" + exc.getMessage() + "</html>",
+                            "text/html");
             } catch (Throwable exc) {
                 System.err.println("error:" + exc);
                 exc.printStackTrace();
@@ -186,6 +293,23 @@ public class ImageServer extends HttpServer {
 
 
 
+        /**
+         * Don't parse posted isl as form args
+         *
+         * @param path url path
+         * @param contentString the posted content
+         * @param httpArgs the args
+         *
+         * @return ok to parse
+         */
+        protected boolean okToParseContent(String path,
+                                           String contentString,
+                                           Hashtable httpArgs) {
+            return (contentString == null)
+                   || !contentString.trim().startsWith("<");
+        }
+
+
         /**
          * Really handle the request
          *
@@ -208,10 +332,8 @@ public class ImageServer extends HttpServer {
 
             int    width          = Misc.getProperty(formArgs, "width", -1);
             int    height         = Misc.getProperty(formArgs, "height", -1);
-            if ((width > 0) && (height > 0)) {
-                idv.getStateManager().setViewSize(new Dimension(width,
-                        height));
-            }
+            int priority = Misc.getProperty(formArgs, ARG_PRIORITY,
+                                            IdvServerPool.PRIORITY_NORMAL);
 
             if (request == null) {
                 request = REQ_MAKEIMAGE;
@@ -220,15 +342,55 @@ public class ImageServer extends HttpServer {
                 writeResult(true, "<response>ok</response>", "text/xml");
                 System.exit(0);
             }
+            ImageServer   imageServer = (ImageServer) server;
+            IdvServerPool pool        = imageServer.getPool();
+            if (request.equals(REQ_STATS)) {
+                writeResult(true, imageServer.getStatsXml(), "text/xml");
+                return;
+            }
+
+            long t1 = System.currentTimeMillis();
+            if (request.equals(REQ_ISL)) {
+                if ( !Misc.getProperty(server.getProperties(),
+                                       PROP_ISL_ENABLE, false)) {
+                    throw new IllegalArgumentException(
+                        "isl requests are not enabled");
+                }
+                if ( !getSocket().getInetAddress().isLoopbackAddress()) {
+                    throw new IllegalArgumentException(
+                        "isl requests are only allowed from the local host");
+                }
+                String isl = (String) formArgs.get(ARG_ISL);
+                if (isl == null) {
+                    isl = content;
+                }
+                if ((isl == null) || (isl.trim().length() == 0)) {
+                    throw new IllegalArgumentException("No isl specified");
+                }
+                if (pool != null) {
+                    pool.evaluateIsl(new StringBuffer(isl), new Hashtable(),
+                                     priority);
+                } else {
+                    idv.getImageGenerator().processScriptFile("xml:"
+                            + isl, new Hashtable());
+                    idv.cleanup();
+                }
+                writeResult(true, "<response>ok</response>", "text/xml");
+                log("Total Time:" + (System.currentTimeMillis() - t1));
+                return;
+            }
+
             boolean doMovie  = request.equals(REQ_MAKEMOVIE);
             String  mimeType = (doMovie
                                 ? "video/quicktime"
                                 : "image/png");
+            boolean isTmpFile = false;
             if (imageFile == null) {
                 String uid = "image_" + Misc.getUniqueId() + (doMovie
                         ? ".mov"
                         : ".png");
                 imageFile = idv.getObjectStore().getTmpFile(uid);
+                isTmpFile = true;
             }
 
             System.err.println("image:" + imageFile);
@@ -237,51 +399,53 @@ public class ImageServer extends HttpServer {
                 bundle = (String) formArgs.get(ARG_BUNDLE);
             }
 
-
-            long t1 = System.currentTimeMillis();
+            String warmKey;
             if (bundle != null) {
                 if ( !(new File(bundle)).exists()) {
                     throw new IllegalArgumentException("Bad bundle file:"
                             + bundle);
                 }
-                log("Loading bundle:" + bundle);
-                String xml = IOUtil.readContents(bundle, getClass());
-                idv.getPersistenceManager().decodeXmlInner(xml, false,
-                        bundle, "", false);
-                log("Done loading bundle");
-
+                warmKey = "bundle:" + bundle + ":"
+                          + new File(bundle).lastModified();
             } else if ((dataSourceName != null) && (paramName != null)
                        && (displayName != null)) {
-                idv.createDisplay(dataSourceName, paramName, displayName,
-                                  properties, false);
+                warmKey = "data:" + dataSourceName + ":" + paramName + ":"
+                          + displayName + ":" + properties;
             } else {
                 throw new IllegalStateException(
                     "No bundle or data specified");
             }
-            long t2 = System.currentTimeMillis();
-
-
-
-            log("Waiting until displays are done");
-            IdvManager.waitUntilDisplaysAreDone(idv.getIdvUIManager());
-            Misc.sleep(2000);
-            log("Done waiting");
-            long t3 = System.currentTimeMillis();
+            warmKey = warmKey + ":" + width + "x" + height;
+            if ( !Misc.getProperty(formArgs, ARG_WARM, true)) {
+                warmKey = null;
+            }
 
-            if (doMovie) {
-                idv.getImageGenerator().captureMovie(imageFile);
+            RenderJob job = new RenderJob(priority, warmKey, bundle,
+                                          dataSourceName, paramName,
+                                          displayName, properties, width,
+                                          height, imageFile, doMovie);
+            if (pool != null) {
+                pool.execute(job);
             } else {
-                log("Capturing image");
-                idv.getImageGenerator().captureImage(imageFile);
-                log("Done capturing image");
+                job.render(idv, false);
             }
+
             File f = new File(imageFile);
             writeBytes(new FileInputStream(f), mimeType, f.length());
             long t4 = System.currentTimeMillis();
-            log("Total Time:" + (t4 - t1) + " Load bundle:" + (t2 - t1)
-                + " Wait: " + (t3 - t2) + " Capture:" + (t4 - t3));
-
-            idv.cleanup();
+            log("Total Time:" + (t4 - t1) + " Queue:" + ((pool != null)
+                    ? job.getWaitTime()
+                    : 0) + " Load bundle:" + job.loadTime + " Wait: "
+                         + job.displayWaitTime + " Capture:"
+                         + job.captureTime + (job.warm
+                    ? " (warm)"
+                    : ""));
+
+            if (pool == null) {
+                idv.cleanup();
+            } else if (isTmpFile) {
+                f.delete();
+            }
         }
 
 
@@ -298,4 +462,137 @@ public class ImageServer extends HttpServer {
 
     }
 
+
+
+    /**
+     * Loads a bundle, or creates a display, and captures an image or movie
+     */
+    private static class RenderJob extends IdvServerPool.Job {
+
+        /** The bundle. May be null. */
+        private String bundle;
+
+        /** The data source */
+        private String dataSourceName;
+
+        /** The parameter */
+        private String paramName;
+
+        /** The display */
+        private String displayName;
+
+        /** The display properties */
+        private String properties;
+
+        /** view width */
+        private int width;
+
+        /** view height */
+        private int height;
+
+        /** Where to write the image */
+        private String imageFile;
+
+        /** Capture a movie */
+        private boolean doMovie;
+
+        /** Did we reuse the displays from the last request */
+        private boolean warm = false;
+
+        /** Time to load the bundle */
+        private long loadTime;
+
+        /** Time waiting for the displays */
+        private long displayWaitTime;
+
+        /** Time to capture */
+        private long captureTime;
+
+        /**
+         * ctor
+         *
+         * @param priority The priority
+         * @param warmKey The warm key
+         * @param bundle The bundle. May be null.
+         * @param dataSourceName The data source
+         * @param paramName The parameter
+         * @param displayName The display
+         * @param properties The display properties
+         * @param width view width
+         * @param height view height
+         * @param imageFile Where to write the image
+         * @param doMovie Capture a movie
+         */
+        public RenderJob(int priority, String warmKey, String bundle,
+                         String dataSourceName, String paramName,
+                         String displayName, String properties, int width,
+                         int height, String imageFile, boolean doMovie) {
+            super(priority, warmKey);
+            this.bundle         = bundle;
+            this.dataSourceName = dataSourceName;
+            this.paramName      = paramName;
+            this.displayName    = displayName;
+            this.properties     = properties;
+            this.width          = width;
+            this.height         = height;
+            this.imageFile      = imageFile;
+            this.doMovie        = doMovie;
+        }
+
+        /**
+         * Run on the pooled server
+         *
+         * @param server The server
+         * @param warm Are the displays already loaded
+         *
+         * @throws Exception On badness
+         */
+        public void run(IdvServer server, boolean warm) throws Exception {
+            render(server.getIdv(), warm);
+        }
+
+        /**
+         * Load the displays (unless they are already loaded) and capture
+         *
+         * @param idv The idv
+         * @param warm Are the displays already loaded
+         *
+         * @throws Exception On badness
+         */
+        public void render(IntegratedDataViewer idv, boolean warm)
+                throws Exception {
+            this.warm = warm;
+            long t1 = System.currentTimeMillis();
+            if ( !warm) {
+                if ((width > 0) && (height > 0)) {
+                    idv.getStateManager().setViewSize(new Dimension(width,
+                            height));
+                }
+                if (bundle != null) {
+                    String xml = IOUtil.readContents(bundle, getClass());
+                    idv.getPersistenceManager().decodeXmlInner(xml, false,
+                            bundle, "", false);
+                } else {
+                    idv.createDisplay(dataSourceName, paramName,
+                                      displayName, properties, false);
+                }
+            }
+            long t2 = System.currentTimeMillis();
+            if ( !warm) {
+                IdvManager.waitUntilDisplaysAreDone(idv.getIdvUIManager());
+                Misc.sleep(2000);
+            }
+            long t3 = System.currentTimeMillis();
+            if (doMovie) {
+                idv.getImageGenerator().captureMovie(imageFile);
+            } else {
+                idv.getImageGenerator().captureImage(imageFile);
+            }
+            long t4 = System.currentTimeMillis();
+            loadTime        = t2 - t1;
+            displayWaitTime = t3 - t2;
+            captureTime     = t4 - t3;
+        }
+    }
+
 }
@@ -788,6 +788,11 @@ Misc.run(new Runnable() {
         //We save off megabytes
         double size = getStore().get(PREF_CACHESIZE, 20.0);
         CacheManager.setMaxFileCacheSize((int) (size * 1000000));
+        //The in-memory cache gets a percentage of the max heap
+        double memoryPercent = getStore().get(PREF_MEMORYCACHEPERCENT,
+                                   25.0);
+        CacheManager.setMaxMemoryCacheSize(
+            (long) (Runtime.getRuntime().maxMemory() * memoryPercent / 100));
         CacheManager.addCacheListener(new ActionListener() {
             public void actionPerformed(ActionEvent ae) {
                 clearCachedData();
@@ -2157,6 +2162,17 @@ Misc.run(new Runnable() {
         return getStore().get(PREF_THREADS_DATA, 4);
     }
 
+    /**
+     * Get the number of threads used to read the time steps of a local
+     * grid file. Each thread uses its own handle on the file.
+     * A value of 1 reads local files sequentially.
+     *
+     * @return number of threads for reading a local file
+     */
+    public int getMaxLocalDataThreadCount() {
+        return getStore().get(PREF_THREADS_LOCALDATA, 1);
+    }
+
     /**
      * Get whether we are using the time driver facility
      *
@@ -3149,13 +3165,26 @@ Misc.run(new Runnable() {
      * Remove all state, etc.
      */
     public void cleanup() {
+        cleanup(true);
+    }
+
+    /**
+     * Remove all state, etc.
+     *
+     * @param clearCache If true then also clear the CacheManager. This is
+     * shared by all of the idvs in the vm so a server that runs more than
+     * one idv can leave it alone.
+     */
+    public void cleanup(boolean clearCache) {
         getStore().cleanupTmpFiles();
         removeAllDisplays();
         idv.removeAllDataSources();
         getVMManager().removeAllViewManagers();
         getIdvUIManager().disposeAllWindows();
         getIdvUIManager().clearWaitCursor();
-        CacheManager.clearCache();
+        if (clearCache) {
+            CacheManager.clearCache();
+        }
     }
 
     /**
@@ -0,0 +1,245 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.idv;
+
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+
+
+/**
+ * A bounded pool of initialized interpreters (e.g., the Jython
+ * interpreters used to evaluate derived data). Each caller borrows its
+ * own interpreter so independent evaluations run concurrently and their
+ * variable bindings don't collide. At most <code>maxSize</code>
+ * interpreters are created and callers block in {@link #acquire()} when
+ * all of them are in use.
+ * <p>
+ * Code that all of the interpreters need to run (e.g., an edited jython
+ * library or a new import) is added with {@link #addUpdate(String)}. An
+ * interpreter runs the updates it has not seen when it is next acquired,
+ * so interpreters in use are never touched by another thread.
+ * <p>
+ * A thread that acquires an interpreter while it already holds one gets
+ * the same interpreter back. This keeps nested evaluations (e.g., a
+ * formula that loads another derived field) from waiting on themselves.
+ *
+ * @param <T> the type of interpreter
+ */
+public abstract class InterpreterPool<T> {
+
+    /** max number of interpreters */
+    private int maxSize;
+
+    /** number of interpreters we have created */
+    private int numCreated = 0;
+
+    /** interpreters not in use */
+    private List<T> idle = new ArrayList<T>();
+
+    /** code to run in each interpreter */
+    private List<String> updates = new ArrayList<String>();
+
+    /** number of updates each interpreter has run */
+    private Hashtable<T, Integer> applied = new Hashtable<T, Integer>();
+
+    /** the interpreter held by the thread */
+    private ThreadLocal<T> held = new ThreadLocal<T>();
+
+    /** how many times the thread has acquired the held interpreter */
+    private ThreadLocal<int[]> depth = new ThreadLocal<int[]>() {
+        protected int[] initialValue() {
+            return new int[] { 0 };
+        }
+    };
+
+    /**
+     * Create the pool
+     *
+     * @param maxSize max number of interpreters to create
+     */
+    public InterpreterPool(int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    /**
+     * Create and initialize a new interpreter. The interpreter should
+     * reflect all of the updates that were added before this is called.
+     *
+     * @return the interpreter
+     *
+     * @throws Exception on badness
+     */
+    protected abstract T createInterpreter() throws Exception;
+
+    /**
+     * Have the interpreter run the code
+     *
+     * @param interpreter the interpreter
+     * @param code the code
+     *
+     * @throws Exception on badness
+     */
+    protected abstract void exec(T interpreter, String code)
+     throws Exception;
+
+    /**
+     * Called when an update failed in an interpreter. The interpreter is
+     * still used.
+     *
+     * @param code the code
+     * @param exc the error
+     */
+    protected void updateFailed(String code, Exception exc) {}
+
+    /**
+     * Get the max number of interpreters
+     *
+     * @return max number of interpreters
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Get the number of interpreters created
+     *
+     * @return number of interpreters
+     */
+    public synchronized int getSize() {
+        return numCreated;
+    }
+
+    /**
+     * Is the interpreter one of ours
+     *
+     * @param interpreter the interpreter
+     *
+     * @return true if it was created by this pool
+     */
+    public boolean contains(T interpreter) {
+        return applied.get(interpreter) != null;
+    }
+
+    /**
+     * Add code for all of the interpreters to run
+     *
+     * @param code the code
+     */
+    public synchronized void addUpdate(String code) {
+        updates.add(code);
+    }
+
+    /**
+     * Get an interpreter, creating a new one if we are under the limit or
+     * waiting for one to be released. Each call must be paired with a call
+     * to {@link #release(Object)}.
+     *
+     * @return the interpreter
+     *
+     * @throws Exception on badness
+     */
+    public T acquire() throws Exception {
+        T interpreter = held.get();
+        if (interpreter != null) {
+            depth.get()[0]++;
+            return interpreter;
+        }
+        int start;
+        synchronized (this) {
+            while (true) {
+                if (idle.size() > 0) {
+                    interpreter = idle.remove(idle.size() - 1);
+                    break;
+                }
+                if (numCreated < maxSize) {
+                    numCreated++;
+                    break;
+                }
+                wait();
+            }
+            start = updates.size();
+        }
+        if (interpreter == null) {
+            //Create outside of the lock since it can take a while
+            try {
+                interpreter = createInterpreter();
+            } finally {
+                if (interpreter == null) {
+                    synchronized (this) {
+                        numCreated--;
+                        notifyAll();
+                    }
+                }
+            }
+            applied.put(interpreter, Integer.valueOf(start));
+        }
+        held.set(interpreter);
+        depth.get()[0] = 1;
+        runUpdates(interpreter);
+        return interpreter;
+    }
+
+    /**
+     * Have the interpreter run the updates it has not seen
+     *
+     * @param interpreter the interpreter
+     */
+    private void runUpdates(T interpreter) {
+        while (true) {
+            String code;
+            synchronized (this) {
+                int cnt = applied.get(interpreter).intValue();
+                if (cnt >= updates.size()) {
+                    return;
+                }
+                code = updates.get(cnt);
+                applied.put(interpreter, Integer.valueOf(cnt + 1));
+            }
+            try {
+                exec(interpreter, code);
+            } catch (Exception exc) {
+                updateFailed(code, exc);
+            }
+        }
+    }
+
+    /**
+     * Return the interpreter to the pool
+     *
+     * @param interpreter the interpreter
+     */
+    public void release(T interpreter) {
+        if (held.get() != interpreter) {
+            throw new IllegalStateException(
+                "Interpreter is not held by this thread");
+        }
+        if (--depth.get()[0] > 0) {
+            return;
+        }
+        held.remove();
+        synchronized (this) {
+            idle.add(interpreter);
+            notifyAll();
+        }
+    }
+}
@@ -54,6 +54,7 @@ import ucar.unidata.util.PatternFileFilter;
 import ucar.unidata.util.ResourceCollection;
 import ucar.unidata.util.StringUtil;
 import ucar.unidata.util.TwoFacedObject;
+import ucar.unidata.util.WrapperException;
 import ucar.unidata.xml.XmlUtil;
 
 import visad.VisADException;
@@ -132,6 +133,13 @@ public class JythonManager extends IdvManager implements ActionListener {
     /** The path to the editor executable */
     public static final String PROP_JYTHON_EDITOR = "idv.jython.editor";
 
+    /** The max number of interpreters used to evaluate derived data */
+    public static final String PROP_JYTHON_INTERPRETERS =
+        "idv.jython.interpreters";
+
+    /** Default max number of derived data interpreters */
+    private static final int DEFAULT_INTERPRETERS = 8;
+
     /** color to use for diabled editors */
     private static final Color COLOR_DISABLED = new Color(210, 210, 210);
 
@@ -181,6 +189,16 @@ public class JythonManager extends IdvManager implements ActionListener {
      */
     private PythonInterpreter derivedDataInterpreter;
 
+    /**
+     *  The interpreters that derived data choices are evaluated in
+     */
+    private InterpreterPool<PythonInterpreter> derivedDataPool;
+
+    /**
+     *  The imports we have done for the derived data methods
+     */
+    private List<String> derivedDataImports = new ArrayList<String>();
+
 
     /** The jython editor */
     private LibHolder mainHolder;
@@ -1371,7 +1389,9 @@ public class JythonManager extends IdvManager implements ActionListener {
         boolean ok   = false;
         String  what = "";
         try {
-            if (interpreters.size() == 0) {
+            //Make sure we have an interpreter, other than the pooled ones,
+            //to check the code in
+            if (derivedDataInterpreter == null) {
                 getDerivedDataInterpreter();
             }
             List holders = Misc.newList(holderToWrite);
@@ -1383,8 +1403,18 @@ public class JythonManager extends IdvManager implements ActionListener {
                 String jython = holder.getText();
                 for (int interpIdx = 0; interpIdx < interpreters.size();
                         interpIdx++) {
-                    ((PythonInterpreter) interpreters.get(interpIdx)).exec(
-                        jython);
+                    PythonInterpreter interp =
+                        (PythonInterpreter) interpreters.get(interpIdx);
+                    //The pooled interpreters may be in use so they pick
+                    //up the code when they are next acquired
+                    if ((derivedDataPool != null)
+                            && derivedDataPool.contains(interp)) {
+                        continue;
+                    }
+                    interp.exec(jython);
+                }
+                if (derivedDataPool != null) {
+                    derivedDataPool.addUpdate(jython);
                 }
             }
             ok = true;
@@ -2197,32 +2227,133 @@ public class JythonManager extends IdvManager implements ActionListener {
     public PythonInterpreter getDerivedDataInterpreter(String methodName) {
         synchronized (MUTEX) {
             if (derivedDataInterpreter == null) {
-                derivedDataInterpreter = createInterpreter();
-            }
-
-            if ((methodName != null)
-                    && (seenMethods.get(methodName) == null)) {
-                seenMethods.put(methodName, methodName);
-                int i1 = methodName.lastIndexOf(".");
-                int i2 = methodName.indexOf(".");
-                if ((i1 >= 0) && (i2 >= 0)) {
-                    String fullPath = methodName.substring(0, i1);
-                    if ((i1 != i2) && (seenPaths.get(fullPath) == null)) {
-                        i1 = fullPath.lastIndexOf(".");
-                        String pkg       = fullPath.substring(0, i1);
-                        String className = fullPath.substring(i1 + 1);
-                        derivedDataInterpreter.exec("sys.add_package('" + pkg
-                                + "')");
-                        derivedDataInterpreter.exec("from " + pkg
-                                + " import " + className);
-                    }
-                }
+                derivedDataInterpreter = createDerivedDataInterpreter();
             }
+            addDerivedDataImport(methodName);
         }
         return derivedDataInterpreter;
     }
 
 
+    /**
+     *  Get an interpreter from the pool of derived data interpreters,
+     *  initialized with the class path represented by the methodName
+     *  argument (if non-null). Different threads get different
+     *  interpreters so the evaluations can run concurrently. The
+     *  interpreter must be returned with
+     *  {@link #releaseDerivedDataInterpreter(PythonInterpreter)}.
+     *
+     *  @param methodName Used to initialize the interpreter (if non -null)
+     * @return The interpreter
+     */
+    public PythonInterpreter acquireDerivedDataInterpreter(
+            String methodName) {
+        synchronized (MUTEX) {
+            if (derivedDataPool == null) {
+                int size =
+                    getProperty(PROP_JYTHON_INTERPRETERS,
+                                Math.min(DEFAULT_INTERPRETERS,
+                                         Runtime.getRuntime()
+                                             .availableProcessors()));
+                derivedDataPool =
+                    new InterpreterPool<PythonInterpreter>(size) {
+                    protected PythonInterpreter createInterpreter() {
+                        return createDerivedDataInterpreter();
+                    }
+
+                    protected void exec(PythonInterpreter interp,
+                                        String code) {
+                        interp.exec(code);
+                    }
+
+                    protected void updateFailed(String code, Exception exc) {
+                        logException("Updating derived data interpreter",
+                                     exc);
+                    }
+                };
+            }
+            addDerivedDataImport(methodName);
+        }
+        try {
+            return derivedDataPool.acquire();
+        } catch (InterruptedException ie) {
+            throw new IllegalStateException(
+                "Interrupted waiting for a derived data interpreter");
+        } catch (RuntimeException rte) {
+            throw rte;
+        } catch (Exception exc) {
+            throw new WrapperException(exc);
+        }
+    }
+
+
+    /**
+     *  Return the interpreter to the pool of derived data interpreters
+     *
+     * @param interp The interpreter from
+     * {@link #acquireDerivedDataInterpreter(String)}
+     */
+    public void releaseDerivedDataInterpreter(PythonInterpreter interp) {
+        derivedDataPool.release(interp);
+    }
+
+
+    /**
+     *  Create an interpreter for evaluating derived data with the imports
+     *  done so far
+     *
+     * @return The interpreter
+     */
+    private PythonInterpreter createDerivedDataInterpreter() {
+        PythonInterpreter interp = createInterpreter();
+        List<String>      imports;
+        synchronized (derivedDataImports) {
+            imports = new ArrayList<String>(derivedDataImports);
+        }
+        for (String code : imports) {
+            interp.exec(code);
+        }
+        return interp;
+    }
+
+
+    /**
+     *  If we have not seen the method before then import its class into
+     *  the derived data interpreters. This is called within the MUTEX.
+     *
+     *  @param methodName The method name (may be null)
+     */
+    private void addDerivedDataImport(String methodName) {
+        if ((methodName == null) || (seenMethods.get(methodName) != null)) {
+            return;
+        }
+        seenMethods.put(methodName, methodName);
+        int i1 = methodName.lastIndexOf(".");
+        int i2 = methodName.indexOf(".");
+        if ((i1 < 0) || (i2 < 0)) {
+            return;
+        }
+        String fullPath = methodName.substring(0, i1);
+        if ((i1 == i2) || (seenPaths.get(fullPath) != null)) {
+            return;
+        }
+        i1 = fullPath.lastIndexOf(".");
+        String pkg       = fullPath.substring(0, i1);
+        String className = fullPath.substring(i1 + 1);
+        String code      = "sys.add_package('" + pkg + "')\nfrom " + pkg
+                           + " import " + className;
+        synchronized (derivedDataImports) {
+            derivedDataImports.add(code);
+        }
+        if (derivedDataInterpreter != null) {
+            derivedDataInterpreter.exec(code);
+        }
+        if (derivedDataPool != null) {
+            derivedDataPool.addUpdate(code);
+        }
+    }
+
+
 
 
     /**
@@ -75,6 +75,8 @@ import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.regex.Matcher;
@@ -205,6 +207,17 @@ public class PluginManager extends IdvManager {
     /** List of plugin class loaders */
     private List pluginClassLoaders = new ArrayList();
 
+    /** Mapping from jar file path to the (Future) read of its index */
+    private Hashtable jarIndices = new Hashtable();
+
+    /**
+     * The java platform types that plugin classes extend. A class that
+     * extends one of these or one of their subtypes is loaded, and
+     * checked, when its jar is.
+     */
+    private static final Class[] PLATFORM_EXTENSION_TYPES = {
+        java.text.DateFormat.class };
+
     /** Where are the local plugins kept */
     private File localPluginDir;
 
@@ -1496,20 +1509,40 @@ public class PluginManager extends IdvManager {
             scourPlugins(f);
             File[] files = f.listFiles();
             files = IOUtil.sortFilesOnAge(files, false);
+            //Open and index the jars in parallel while they are loaded
+            List jarFiles = new ArrayList();
             for (int jarFileIdx = 0; jarFileIdx < files.length;
                     jarFileIdx++) {
-                if ( !pluginFileOK(files[jarFileIdx])) {
-                    continue;
-                }
                 String filename = files[jarFileIdx].toString();
-                //                if (filename.endsWith(".jar")) {
-                String decodedFilename = decode(filename);
-                if (IOUtil.getFileTail(decodedFilename).endsWith(".jar")) {
-                    loadJar(filename);
-                } else {
-                    loadPlugin(filename, true);
+                if (pluginFileOK(files[jarFileIdx])
+                        && IOUtil.getFileTail(decode(filename)).endsWith(
+                            ".jar")) {
+                    jarFiles.add(filename);
                 }
-                checkForErrors(filename);
+            }
+            List futures = PluginClassLoader.readIndices(jarFiles);
+            for (int i = 0; i < jarFiles.size(); i++) {
+                jarIndices.put(jarFiles.get(i), futures.get(i));
+            }
+            try {
+                for (int jarFileIdx = 0; jarFileIdx < files.length;
+                        jarFileIdx++) {
+                    if ( !pluginFileOK(files[jarFileIdx])) {
+                        continue;
+                    }
+                    String filename = files[jarFileIdx].toString();
+                    //                if (filename.endsWith(".jar")) {
+                    String decodedFilename = decode(filename);
+                    if (IOUtil.getFileTail(decodedFilename).endsWith(
+                            ".jar")) {
+                        loadJar(filename);
+                    } else {
+                        loadPlugin(filename, true);
+                    }
+                    checkForErrors(filename);
+                }
+            } finally {
+                closeUnusedJarIndices();
             }
         } else {
             loadPlugin(f.toString(), true);
@@ -1733,13 +1766,20 @@ public class PluginManager extends IdvManager {
             }
             String jarLabel          = IOUtil.getFileTail(decode(jarFilePath));
             String            prefix = jarFilePath + "!/";
-            PluginClassLoader cl     = new PluginClassLoader(jarFilePath,
-                                       getClass().getClassLoader()) {
+            PluginClassLoader cl =
+                new PluginClassLoader(getJarIndex(jarFilePath),
+                                      getClass().getClassLoader()) {
 
                 protected void handleError(String msg, Throwable exc) {
                     PluginManager.this.addError(msg, exc);
                 }
 
+                protected boolean isExtensionType(String className) {
+                    return super.isExtensionType(className)
+                           || isPlatformSubtype(className,
+                               PLATFORM_EXTENSION_TYPES);
+                }
+
                 protected void checkClass(Class c) throws Exception {
                     //                    System.out.println ("loaded class:" + c.getName() + " from:" + toString());
                     IdvBase.addPluginClass(c);
@@ -1809,6 +1849,48 @@ public class PluginManager extends IdvManager {
 
 
 
+    /**
+     * Close the jar files of the indices that were read but not used,
+     * e.g., because loading the jar failed before its loader was made
+     */
+    private void closeUnusedJarIndices() {
+        List futures = new ArrayList(jarIndices.values());
+        jarIndices.clear();
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                ((PluginClassLoader.JarIndex) ((Future) futures.get(i))
+                    .get()).close();
+            } catch (Exception exc) {
+                //The read failed so there is nothing to close
+            }
+        }
+    }
+
+    /**
+     * Get the index of the jar file, waiting on it if it is being read
+     *
+     * @param jarFilePath The jar file
+     *
+     * @return The index
+     *
+     * @throws Exception On badness
+     */
+    private PluginClassLoader.JarIndex getJarIndex(String jarFilePath)
+            throws Exception {
+        Future future = (Future) jarIndices.remove(jarFilePath);
+        if (future == null) {
+            return new PluginClassLoader.JarIndex(jarFilePath);
+        }
+        try {
+            return (PluginClassLoader.JarIndex) future.get();
+        } catch (ExecutionException exc) {
+            if (exc.getCause() instanceof Exception) {
+                throw (Exception) exc.getCause();
+            }
+            throw exc;
+        }
+    }
+
     /**
      * Show a dialog that lists the loaded plugins
      *
@@ -239,6 +239,9 @@ public class GridTrajectoryControl extends DrawingControl {
     /** _more_ */
     private boolean backwardTrajectory = false;
 
+    /** The JobManager load id of the current trajectory calculation */
+    private Object loadId;
+
     /** _more_ */
     protected DataSelection dataSelection1;
 
@@ -1057,19 +1060,23 @@ public class GridTrajectoryControl extends DrawingControl {
     public void createTrajectory() {
         Misc.run(new Runnable() {
             public void run() {
-
+                //Stop any calculation that is still running
+                Object myLoadId = loadId =
+                    JobManager.getManager().stopAndRestart(loadId,
+                        "GridTrajectoryControl");
                 try {
                     synchronized (MUTEX) {
                         showWaitCursor();
                         if (!is2DTraj) {
-                            createTrajectoryControl();
+                            createTrajectoryControl(myLoadId);
                         } else {
-                            create2DTrajectoryControl();
+                            create2DTrajectoryControl(myLoadId);
                         }
                     }
                 } catch (Exception exc) {
                     logException("Calculationing the grid trajectory", exc);
                 } finally {
+                    JobManager.getManager().stopLoad(myLoadId);
                     showNormalCursor();
                 }
 
@@ -1243,6 +1250,7 @@ public class GridTrajectoryControl extends DrawingControl {
      * @throws VisADException When bad things happen
      */
     public void doRemove() throws VisADException, RemoteException {
+        JobManager.getManager().stopLoad(loadId);
         clearCursor();
         if (glyphs != null) {
             for (int i = 0; i < glyphs.size(); i++) {
@@ -1302,11 +1310,13 @@ public class GridTrajectoryControl extends DrawingControl {
     /**
      * _more_
      *
+     * @param loadId the JobManager load id
+     *
      * @throws Exception _more_
      * @throws RemoteException _more_
      * @throws VisADException _more_
      */
-    void createTrajectoryControl()
+    void createTrajectoryControl(Object loadId)
             throws VisADException, RemoteException, Exception {
 
         Unit dUnit = ((FlatField) s.getSample(0)).getRangeUnits()[0][0];
@@ -1369,7 +1379,10 @@ public class GridTrajectoryControl extends DrawingControl {
         List<GridTrajectory.TrajInfo> tj =
             GridTrajectory.calculateTrackPoints(u, v, w, s, ttts, geoVals,
                 numPoints, numTimes, latIndex, lonIndex, true, normalizeLon,
-                null, backwardTrajectory);
+                null, backwardTrajectory, loadId);
+        if ( !JobManager.getManager().canContinue(loadId)) {
+            return;
+        }
 
         int numParcels = numPoints;  //10;
         final FunctionType ft = new FunctionType(
@@ -1440,11 +1453,13 @@ public class GridTrajectoryControl extends DrawingControl {
     /**
      * _more_
      *
+     * @param loadId the JobManager load id
+     *
      * @throws Exception _more_
      * @throws RemoteException _more_
      * @throws VisADException _more_
      */
-    void create2DTrajectoryControl()
+    void create2DTrajectoryControl(Object loadId)
             throws VisADException, RemoteException, Exception {
 
         Unit dUnit = ((FlatField) s.getSample(0)).getRangeUnits()[0][0];
@@ -1518,7 +1533,10 @@ public class GridTrajectoryControl extends DrawingControl {
         List<GridTrajectory.TrajInfo> tj =
             GridTrajectory.calculateTrackPoints(u, v, null, s, ttts, geoVals,
                 numPoints, numTimes, latIndex, lonIndex, haveAlt,
-                normalizeLon, clevel, backwardTrajectory);
+                normalizeLon, clevel, backwardTrajectory, loadId);
+        if ( !JobManager.getManager().canContinue(loadId)) {
+            return;
+        }
 
         int numParcels = numPoints;  //10;
         final FunctionType ft = new FunctionType(
@@ -26,7 +26,7 @@ import ucar.unidata.data.DataTimeRange;
 import ucar.unidata.data.grid.GridUtil;
 import ucar.unidata.data.point.*;
 import ucar.unidata.geoloc.Bearing;
-import ucar.unidata.gis.SpatialGrid;
+import ucar.unidata.gis.DeclutterIndex;
 import ucar.unidata.idv.ControlContext;
 import ucar.unidata.idv.control.chart.LineState;
 import ucar.unidata.idv.control.chart.PointParam;
@@ -107,6 +107,7 @@ import java.rmi.RemoteException;
 
 import java.util.ArrayList;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Vector;
@@ -259,8 +260,16 @@ public class StationModelControl extends ObsDisplayControl {
     String modelName;
 
 
-    /** grid for decluttering */
-    private SpatialGrid stationGrid;
+    /** declutter indexes for the obs we have seen */
+    private IdentityHashMap<PointOb, DeclutterEntry> declutterIndexes =
+        new IdentityHashMap<PointOb, DeclutterEntry>();
+
+    /** the declutter index entries */
+    private List<DeclutterEntry> declutterEntries =
+        new ArrayList<DeclutterEntry>();
+
+    /** the display, coordinate system and glyph size of the indexes */
+    private List declutterKey;
 
     /** flag for decluttering */
     private boolean declutter = true;
@@ -3250,6 +3259,11 @@ public class StationModelControl extends ObsDisplayControl {
         long      millis           = System.currentTimeMillis();
         boolean   isTimeSequence   = GridUtil.isTimeSequence(obs);
         FieldImpl declutteredField = null;
+        synchronized (declutterIndexes) {
+            for (DeclutterEntry entry : declutterEntries) {
+                entry.used = false;
+            }
+        }
         if (isTimeSequence) {
             Set timeSet = obs.getDomainSet();
             declutteredField = new FieldImpl((FunctionType) obs.getType(),
@@ -3269,6 +3283,9 @@ public class StationModelControl extends ObsDisplayControl {
         } else {
             declutteredField = doTheActualDecluttering(obs, timestamp);
         }
+        if (declutteredField != null) {
+            pruneDeclutterIndexes();
+        }
         //System.out.println("Subsetting took : " +
         //    (System.currentTimeMillis() - millis) + " ms");
         return declutteredField;
@@ -3301,52 +3318,44 @@ public class StationModelControl extends ObsDisplayControl {
 
         float       myScale = getScale() * .0025f * getDeclutterFilter();
 
-        Rectangle2D scaledGlyphBounds =
-            new Rectangle2D.Double(glyphBounds.getX() * myScale,
-                                   glyphBounds.getY() * myScale,
-                                   glyphBounds.getWidth() * myScale,
-                                   glyphBounds.getHeight() * myScale);
-        NavigatedDisplay   navDisplay = getNavigatedDisplay();
-
-        Rectangle2D.Double obBounds   = new Rectangle2D.Double();
-        obBounds.width  = scaledGlyphBounds.getWidth();
-        obBounds.height = scaledGlyphBounds.getHeight();
-
         Rectangle2D bounds = getBounds();
         //        System.out.println("my bounds: x:" + bounds.getX()+"-" +(bounds.getX()+bounds.getWidth())+" y:" +
         //                           bounds.getY()+"-" +(bounds.getY()+bounds.getHeight()));
 
-
-        if (stationGrid == null) {
-            stationGrid = new SpatialGrid(200, 200);
+        DeclutterEntry entry = getDeclutterEntry(pointObs, glyphBounds);
+        if (entry == null) {
+            return pointObs;
         }
-        stationGrid.clear();
-        stationGrid.setGrid(bounds, scaledGlyphBounds);
-        if (getDeclutterFilter() < 0.3f) {
-            //      stationGrid.setOverlap((int)((1.0-getDeclutterFilter())*100));
-            //      stationGrid.setOverlap(          (int)((.5f-getDeclutterFilter())*100));
-        } else {
-            //      stationGrid.setOverlap(0);
+        if (timestamp != loadDataTimestamp) {
+            return null;
         }
-
-        double[] xyz = new double[3];
-        //TODO: The repeated getSpatialCoords is a bit expensive
-        for (int i = 0; i < numObs; i++) {
-            if (timestamp != loadDataTimestamp) {
-                return null;
+        //The index was built once for these obs so a zoom is just a lookup
+        //of the obs that are clear at this scale and in the bounds
+        int[]     shown    = entry.index.select(myScale, bounds);
+        boolean[] selected = null;
+        if ((selectedObId != null) || (selectedObLocation != null)) {
+            selected = new boolean[numObs];
+            for (int i = 0; i < numObs; i++) {
+                if (timestamp != loadDataTimestamp) {
+                    return null;
+                }
+                selected[i] = isSelected(entry.obs[i]);
             }
-            PointOb ob = (PointOb) pointObs.getSample(i);
-            xyz = navDisplay.getSpatialCoordinates(ob.getEarthLocation(),
-                    xyz, 0);
-            obBounds.x = xyz[0];
-            obBounds.y = xyz[1];
-            //            if(i<30)
-            //                System.err.println("\tel:" + ob.getEarthLocation() +" obBounds:" + obBounds.x +"/" + obBounds.y);
-            if (stationGrid.markIfClear(obBounds, "") || isSelected(ob)) {
-                v.add(ob);  // is in the bounds
+            for (int i : shown) {
+                selected[i] = true;
+            }
+        }
+        if (selected == null) {
+            for (int i : shown) {
+                v.add(entry.obs[i]);  // is in the bounds
+            }
+        } else {
+            for (int i = 0; i < numObs; i++) {
+                if (selected[i]) {
+                    v.add(entry.obs[i]);
+                }
             }
         }
-        //      stationGrid.print();
         long t2 = System.currentTimeMillis();
 
 
@@ -3374,6 +3383,113 @@ public class StationModelControl extends ObsDisplayControl {
         return retField;
     }
 
+    /**
+     * Get the declutter index for the obs. This is built once for the obs
+     * and reused until the projection or the station model glyph size
+     * changes.
+     *
+     * @param pointObs  point observations for one timestep.
+     * @param glyphBounds the station model bounds
+     *
+     * @return the index entry or null if there are no obs
+     *
+     * @throws RemoteException  Java RMI error
+     * @throws VisADException   VisAD Error
+     */
+    private DeclutterEntry getDeclutterEntry(FieldImpl pointObs,
+                                             Rectangle glyphBounds)
+            throws VisADException, RemoteException {
+        int numObs = pointObs.getDomainSet().getLength();
+        if (numObs == 0) {
+            return null;
+        }
+        NavigatedDisplay navDisplay = getNavigatedDisplay();
+        List key = Misc.newList(navDisplay,
+                                navDisplay.getDisplayCoordinateSystem(),
+                                new Double(glyphBounds.getWidth()),
+                                new Double(glyphBounds.getHeight()));
+        PointOb[] obs = new PointOb[numObs];
+        for (int i = 0; i < numObs; i++) {
+            obs[i] = (PointOb) pointObs.getSample(i);
+        }
+        synchronized (declutterIndexes) {
+            if ( !Misc.equals(key, declutterKey)) {
+                declutterIndexes.clear();
+                declutterEntries.clear();
+                declutterKey = key;
+            }
+            DeclutterEntry entry = declutterIndexes.get(obs[0]);
+            if ((entry != null) && (entry.obs.length == numObs)) {
+                for (int i = 0; (entry != null) && (i < numObs); i++) {
+                    if (entry.obs[i] != obs[i]) {
+                        entry = null;
+                    }
+                }
+                if (entry != null) {
+                    entry.used = true;
+                    return entry;
+                }
+            }
+        }
+
+        EarthLocation[] els = new EarthLocation[numObs];
+        for (int i = 0; i < numObs; i++) {
+            els[i] = obs[i].getEarthLocation();
+        }
+        double[][]     xy    = navDisplay.getSpatialCoordinates(els, 0);
+        DeclutterEntry entry = new DeclutterEntry();
+        entry.obs   = obs;
+        entry.index = new DeclutterIndex(xy[0], xy[1],
+                                         glyphBounds.getWidth(),
+                                         glyphBounds.getHeight());
+        entry.used  = true;
+        synchronized (declutterIndexes) {
+            if (key.equals(declutterKey)) {
+                declutterEntries.add(entry);
+                for (int i = 0; i < numObs; i++) {
+                    declutterIndexes.put(obs[i], entry);
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Remove the declutter indexes that were not used in the last
+     * declutter.
+     */
+    private void pruneDeclutterIndexes() {
+        synchronized (declutterIndexes) {
+            for (int i = declutterEntries.size() - 1; i >= 0; i--) {
+                DeclutterEntry entry = declutterEntries.get(i);
+                if (entry.used) {
+                    continue;
+                }
+                declutterEntries.remove(i);
+                for (PointOb ob : entry.obs) {
+                    if (declutterIndexes.get(ob) == entry) {
+                        declutterIndexes.remove(ob);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Holds a declutter index and the obs it was built from
+     */
+    private static class DeclutterEntry {
+
+        /** the index */
+        DeclutterIndex index;
+
+        /** the obs */
+        PointOb[] obs;
+
+        /** was this used in the last declutter */
+        boolean used;
+    }
+
 
     /**
      * Set whether this DisplayControl should be decluttered or not.
@@ -16,6 +16,12 @@ def ens_smin(grid):
    """ min value of all member """
    return GridMath.ensembleLowestValues(grid)
 
+def ens_stats(grid, functions='average,standardDeviation,min,max'):
+   """ several statistics at once, reading the members once, e.g.
+       mean, sprd = ens_stats(grid, 'average,standardDeviation')
+       A percentile is given as ensemblePercentile:90 """
+   return list(GridMath.ensembleStatistics(grid, functions))
+
 def ens_prcntl(grid, percent):
    """ percentile value """
    return GridMath.ensemblePercentileValues(grid, percent)
@@ -91,6 +91,10 @@ import java.io.IOException;
 import java.text.DecimalFormat;
 
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -232,6 +236,10 @@ public class ImageSequenceGrabber implements Runnable, ActionListener {
     /** How much we pause between animation captures */
     private static int SLEEP_TIME = 500;
 
+    /** How many captured frames can be waiting to be written */
+    private static final int MAX_PENDING_WRITES = 8;
+
+
     /** Filter for HTML files */
     public static final PatternFileFilter FILTER_ANIS =
         new PatternFileFilter(".+\\.html|.+\\.htm",
@@ -467,6 +475,23 @@ public class ImageSequenceGrabber implements Runnable, ActionListener {
      */
     private ViewManager viewManager;
 
+    /**
+     * Writes the captured frames to disk. When the queue is full the
+     * capturing thread writes the frame itself. This is shut down when
+     * we are closed.
+     */
+    private ThreadPoolExecutor frameWriter;
+
+    /** The frames that are being written, keyed by file path */
+    private Hashtable<String, Future> pendingWrites = new Hashtable<String,
+                                                          Future>();
+
+    /**
+     * Have we shut down the frame writer. Guarded by pendingWrites.
+     * Frames captured after this are written on the capturing thread.
+     */
+    private boolean frameWriterClosed = false;
+
     /**
      * Create me with the given {@link ucar.unidata.idv.ViewManager}
      *
@@ -958,6 +983,7 @@ public class ImageSequenceGrabber implements Runnable, ActionListener {
                 String current = images.get(previewIndex).getPath();
 
                 if ( !Misc.equals(current, lastPreview)) {
+                    waitForWrite(current);
                     previewPanel.loadFile(current);
 
                     /*
@@ -1277,6 +1303,7 @@ public class ImageSequenceGrabber implements Runnable, ActionListener {
      * @param andWrite write movie
      */
     private void stopAnimationCapture(boolean andWrite) {
+        waitForWrites();
         if (viewManager != null) {
             viewManager.useImages(ImageWrapper.makeFileList(images),
                                   justCaptureAnimation);
@@ -1433,6 +1460,8 @@ public class ImageSequenceGrabber implements Runnable, ActionListener {
                     && (previewIndex < images.size())) {
                 String filename = images.get(previewIndex).getPath();
 
+                //Don't delete the file out from under its writer
+                waitForWrite(filename);
                 images.remove(previewIndex);
                 previewIndex--;
                 imagesChanged();
@@ -1517,12 +1546,21 @@ public class ImageSequenceGrabber implements Runnable, ActionListener {
         } catch (Exception exc) {
             LogUtil.logException("Disposing of tmp directory", exc);
         }
+        waitForWrites();
+        synchronized (pendingWrites) {
+            frameWriterClosed = true;
+            if (frameWriter != null) {
+                frameWriter.shutdown();
+                frameWriter = null;
+            }
+        }
     }
 
     /**
      *  Get rid of generated files
      */
     private void deleteFiles() {
+        waitForWrites();
         for (int i = 0; i < images.size(); i++) {
             images.get(i).deleteFile();
         }
@@ -1920,7 +1958,7 @@ public class ImageSequenceGrabber implements Runnable, ActionListener {
                                     viewManager.getBackground());
                         }
 
-                        ImageUtils.writeImageToFile(image, path,
+                        writeImageInBackground(image, path,
                                 getImageQuality());
                     }
                 }
@@ -1945,6 +1983,76 @@ public class ImageSequenceGrabber implements Runnable, ActionListener {
 
     }
 
+    /**
+     * Write the captured image on the frame writer thread pool so the
+     * capture can move on to the next frame. If we have been closed
+     * the image is written here.
+     *
+     * @param image the image
+     * @param path where to write it
+     * @param quality the image quality
+     */
+    private void writeImageInBackground(final Image image,
+                                        final String path,
+                                        final float quality) {
+        Runnable writer = new Runnable() {
+            public void run() {
+                try {
+                    ImageUtils.writeImageToFile(image, path, quality);
+                } catch (Exception exc) {
+                    LogUtil.logException("Error writing image:" + path, exc);
+                }
+            }
+        };
+        //Submit while holding the lock so close() can't shut down the
+        //pool between our check and the submit
+        synchronized (pendingWrites) {
+            if ((frameWriter == null) && !frameWriterClosed) {
+                int threads = Math.max(1,
+                                       Math.min(4,
+                                           Runtime.getRuntime()
+                                               .availableProcessors() - 1));
+                frameWriter = new ThreadPoolExecutor(threads, threads, 60,
+                        TimeUnit.SECONDS,
+                        new ArrayBlockingQueue<Runnable>(MAX_PENDING_WRITES),
+                        new ThreadPoolExecutor.CallerRunsPolicy());
+                frameWriter.allowCoreThreadTimeOut(true);
+            }
+            if ((frameWriter != null) && !frameWriter.isShutdown()) {
+                pendingWrites.put(path, frameWriter.submit(writer));
+                return;
+            }
+        }
+        writer.run();
+    }
+
+    /**
+     * Wait until the given image file has been written
+     *
+     * @param path the image file
+     */
+    private void waitForWrite(String path) {
+        Future future = pendingWrites.get(path);
+        if (future == null) {
+            return;
+        }
+        try {
+            future.get();
+        } catch (Exception exc) {
+            LogUtil.logException("Error writing image:" + path, exc);
+        }
+        pendingWrites.remove(path);
+    }
+
+    /**
+     * Wait until all of the captured images have been written
+     */
+    private void waitForWrites() {
+        for (String path : new ArrayList<String>(pendingWrites.keySet())) {
+            waitForWrite(path);
+        }
+    }
+
     /**
      * Capture images.
      *
@@ -2214,6 +2322,7 @@ public class ImageSequenceGrabber implements Runnable, ActionListener {
                              double displayRate, Element scriptingNode,
                              double endPause) {
 
+        waitForWrites();
         List fileToks = StringUtil.split(commaSeparatedFiles, ",", true,
                                          true);
         boolean doingPanel = false;
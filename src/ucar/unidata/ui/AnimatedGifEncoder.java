@@ -40,11 +40,20 @@ import java.awt.image.ColorModel;
 import java.awt.image.IndexColorModel;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 /**
@@ -254,8 +263,11 @@ public class AnimatedGifEncoder {
      *
      * @param filename  output file name
      * @param images    list of images
+     *
+     * @throws IOException if the file could not be written
      */
-    public static void createGif(String filename, List images) {
+    public static void createGif(String filename, List images)
+            throws IOException {
         createGif(filename, images, REPEAT_FOREVER, 500);
     }
 
@@ -266,9 +278,12 @@ public class AnimatedGifEncoder {
      * @param images    list of images
      * @param repeat    number of times to repeat
      * @param delay     delay between images
+     *
+     * @throws IOException if the file could not be written
      */
     public static void createGif(String filename, List images, int repeat,
-                                 int delay) {
+                                 int delay)
+            throws IOException {
         createGif(filename, images, repeat, delay, -1);
     }
 
@@ -281,9 +296,12 @@ public class AnimatedGifEncoder {
      * @param repeat    number of times to repeat
      * @param delay     delay between images
      * @param endDelay  delay on last image
+     *
+     * @throws IOException if the file could not be written
      */
     public static void createGif(String filename, List images, int repeat,
-                                 int delay, int endDelay) {
+                                 int delay, int endDelay)
+            throws IOException {
         createGif(filename, images, repeat, delay, endDelay, false);
     }
 
@@ -296,10 +314,118 @@ public class AnimatedGifEncoder {
      * @param delay     delay between images
      * @param endDelay  delay on last image
      * @param useGlobalTable true to use a global color table
+     *
+     * @throws IOException if the file could not be written
      */
     public static void createGif(String filename, List images, int repeat,
                                  int delay, int endDelay,
-                                 boolean useGlobalTable) {
+                                 boolean useGlobalTable)
+            throws IOException {
+        createGif(filename, images, repeat, delay, endDelay, useGlobalTable,
+                  Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create an animated GIF. The first frame is encoded first (this
+     * writes the header and, if we are using a global color table,
+     * creates the table that all of the frames share). The rest of the
+     * frames are read, quantized and compressed by numThreads threads
+     * and are written out in order, so the file is the same as if the
+     * frames were encoded one at a time. If a frame can't be encoded
+     * the partial file is deleted.
+     *
+     * @param filename  output file name
+     * @param images    list of images
+     * @param repeat    number of times to repeat
+     * @param delay     delay between images
+     * @param endDelay  delay on last image
+     * @param useGlobalTable true to use a global color table
+     * @param numThreads number of threads to encode the frames with
+     *
+     * @throws IOException if the file could not be written
+     */
+    public static void createGif(String filename, List images, int repeat,
+                                 int delay, int endDelay,
+                                 boolean useGlobalTable, int numThreads)
+            throws IOException {
+        if ((numThreads <= 1) || (images.size() <= 1)) {
+            createGifSerial(filename, images, repeat, delay, endDelay,
+                            useGlobalTable);
+            return;
+        }
+        AnimatedGifEncoder e = new AnimatedGifEncoder();
+        e.setGCT(useGlobalTable);
+        e.setRepeat(repeat);
+        e.setDelay(delay);
+        if ( !e.start(filename)) {
+            throw new IOException("Unable to write gif:" + filename);
+        }
+        e.addFrame(new ImagePlus(images.get(0).toString()));
+        int endPause = ((endDelay != -1)
+                        ? endDelay - delay
+                        : 0);
+        //Only keep a few frames in memory at once
+        int window = 2 * numThreads;
+        ExecutorService            executor =
+            Executors.newFixedThreadPool(numThreads);
+        ArrayDeque<Future<byte[]>> pending  =
+            new ArrayDeque<Future<byte[]>>();
+        try {
+            int next = 1;
+            while ((next < images.size()) || !pending.isEmpty()) {
+                while ((next < images.size()) && (pending.size() < window)) {
+                    pending.add(
+                        executor.submit(
+                            e.makeFrameTask(
+                                images.get(next).toString(), e.delay)));
+                    next++;
+                }
+                e.out.write(pending.removeFirst().get());
+            }
+            if (endPause > 0) {
+                e.setDelay(endPause);
+                e.out.write(e.makeFrameTask(images.get(images.size()
+                        - 1).toString(), e.delay).call());
+            }
+        } catch (Exception exc) {
+            try {
+                e.out.close();
+            } catch (IOException ignore) {}
+            new File(filename).delete();
+            if (exc instanceof ExecutionException) {
+                Throwable cause = exc.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                exc = (cause instanceof Exception)
+                      ? (Exception) cause
+                      : exc;
+            }
+            if (exc instanceof IOException) {
+                throw (IOException) exc;
+            }
+            throw new IOException("Error writing gif:" + exc, exc);
+        } finally {
+            executor.shutdownNow();
+        }
+        if ( !e.finish()) {
+            throw new IOException("Unable to write gif:" + filename);
+        }
+    }
+
+    /**
+     * Create an animated GIF, encoding one frame at a time
+     *
+     * @param filename  output file name
+     * @param images    list of images
+     * @param repeat    number of times to repeat
+     * @param delay     delay between images
+     * @param endDelay  delay on last image
+     * @param useGlobalTable true to use a global color table
+     */
+    private static void createGifSerial(String filename, List images,
+                                        int repeat, int delay, int endDelay,
+                                        boolean useGlobalTable) {
         AnimatedGifEncoder e = new AnimatedGifEncoder();
         e.setGCT(useGlobalTable);
         e.setRepeat(repeat);
@@ -413,6 +539,57 @@ public class AnimatedGifEncoder {
         return ok;
     }
 
+    /**
+     * Make a task that reads and encodes the given frame into a byte array
+     * that can be appended to our output. This is called after the first
+     * frame has been added so the header and any global color table
+     * have already been written.
+     *
+     * @param path the image file
+     * @param theDelay the frame delay (hundredths of a second)
+     *
+     * @return the task
+     */
+    private Callable<byte[]> makeFrameTask(final String path,
+                                           final int theDelay) {
+        //Each task gets its own encoder with a copy of our state
+        final AnimatedGifEncoder frameEncoder = new AnimatedGifEncoder();
+        frameEncoder.width             = width;
+        frameEncoder.height            = height;
+        frameEncoder.sizeSet           = true;
+        frameEncoder.started           = true;
+        frameEncoder.firstFrame        = false;
+        frameEncoder.repeat            = repeat;
+        frameEncoder.dispose           = dispose;
+        frameEncoder.transparent       = transparent;
+        frameEncoder.transIndex        = transIndex;
+        frameEncoder.sample            = sample;
+        frameEncoder.gctused           = gctused;
+        frameEncoder.gct               = ((gct != null)
+                                          ? (byte[]) gct.clone()
+                                          : null);
+        frameEncoder.autotransparent   = autotransparent;
+        frameEncoder.GCTextracted      = GCTextracted;
+        frameEncoder.GCTloadedExternal = GCTloadedExternal;
+        frameEncoder.GCTred            = GCTred;
+        frameEncoder.GCTgrn            = GCTgrn;
+        frameEncoder.GCTbl             = GCTbl;
+        frameEncoder.GCTcindex         = GCTcindex;
+        frameEncoder.GCTsetTransparent = GCTsetTransparent;
+        frameEncoder.GCToverideIndex   = GCToverideIndex;
+        frameEncoder.GCToverideColor   = GCToverideColor;
+        return new Callable<byte[]>() {
+            public byte[] call() throws Exception {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                frameEncoder.out = bos;
+                if ( !frameEncoder.addFrame(new ImagePlus(path), theDelay)) {
+                    throw new IOException("Error encoding frame:" + path);
+                }
+                return bos.toByteArray();
+            }
+        };
+    }
+
     /**
      * Handles transparency color Index
      * Assumes colors and index are already checked for validity
@@ -1108,13 +1285,24 @@ public class AnimatedGifEncoder {
         }
         if (gctused) {
             // find closest match for all pixels This routine is not optimized real slow linear search.
+            // Neighboring pixels are mostly the same colors so we remember
+            // the last matches in a small hash table
             colorTab = gct;
-            int k = 0;
-            int minpos;
+            int   k         = 0;
+            int   minpos;
+            int[] cachedRgb = new int[4096];
+            int[] cachedIdx = new int[4096];
+            Arrays.fill(cachedRgb, -1);
             for (int j = 0; j < nPix; j++) {
                 int b = pixels[k++] & 0xff;
                 int g = pixels[k++] & 0xff;
                 int r = pixels[k++] & 0xff;
+                int rgb  = (r << 16) | (g << 8) | b;
+                int slot = (rgb ^ (rgb >>> 12)) & 4095;
+                if (cachedRgb[slot] == rgb) {
+                    indexedPixels[j] = (byte) cachedIdx[slot];
+                    continue;
+                }
                 minpos = 0;
                 int dmin  = 256 * 256 * 256;
                 int lenct = colorTab.length;
@@ -1130,6 +1318,8 @@ public class AnimatedGifEncoder {
                     i++;
                 }  //end inside for
                 indexedPixels[j] = (byte) minpos;
+                cachedRgb[slot]  = rgb;
+                cachedIdx[slot]  = minpos;
             }      //end for
             pixels     = null;
             colorDepth = 8;
@@ -351,10 +351,14 @@ public class TextSymbol extends MetSymbol {
      * @see #setNumberFormatString(String)
      */
     public String formatNumber(double d) {
-        if (numberFormat == null) {
-            numberFormat = new DecimalFormat(numberFormatString);
+        NumberFormat format = numberFormat;
+        if (format == null) {
+            format = numberFormat = new DecimalFormat(numberFormatString);
+        }
+        //The station model display formats on more than one thread
+        synchronized (format) {
+            return format.format(d);
         }
-        return numberFormat.format(d);
     }
 
     /**
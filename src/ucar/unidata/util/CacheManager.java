@@ -31,21 +31,33 @@ import java.awt.event.*;
 
 import java.io.*;
 
+import java.lang.reflect.Array;
+
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
  * A static class to manage a set of data caches.  Each object
  * could have a cache of data for specific
  * data objects associated with it.  This class is a central
- * manager for all the caches.  Effectively, it is a Hashtable of
- * Hashtables.  The key for the managed cache is the owner
- * of the cached data.  The value for the owner key is a Hashtable
- * of cached Data objects.
+ * manager for all the caches.  The key for the managed cache is the owner
+ * of the cached data.  Each owner has its own least recently used
+ * table of cached objects with its own lock.
+ * <p>
+ * The in-memory cache is bounded by an estimated byte size
+ * (see {@link #setMaxMemoryCacheSize(long)}). The size of each cached
+ * object is estimated by the registered {@link SizeEstimator}s. When the
+ * total goes past the limit the least recently used entries, across all
+ * owners, are evicted.
  *
  * @author IDV development team
  * @version $Revision: 1.15 $
@@ -70,8 +82,38 @@ public class CacheManager {
     /** mutex */
     private static Object MUTEX = new Object();
 
+    /** mutex used when evicting entries */
+    private static Object EVICT_MUTEX = new Object();
+
     /** cache of owned caches */
-    private static Hashtable caches = new Hashtable();
+    private static Hashtable<Object, OwnerCache> caches =
+        new Hashtable<Object, OwnerCache>();
+
+    /** The default size we use for objects we don't know how to size */
+    private static final long DEFAULT_OBJECT_SIZE = 64;
+
+    /** The max in-memory cache size in bytes */
+    private static long maxMemoryCacheSize = Runtime.getRuntime().maxMemory()
+                                             / 4;
+
+    /** The current estimated in-memory cache size in bytes */
+    private static AtomicLong currentMemoryCacheSize = new AtomicLong(0);
+
+    /** Used to order entries by access time across all owners */
+    private static AtomicLong accessCounter = new AtomicLong(0);
+
+    /** number of cache hits */
+    private static AtomicLong hitCount = new AtomicLong(0);
+
+    /** number of cache misses */
+    private static AtomicLong missCount = new AtomicLong(0);
+
+    /** number of entries evicted because of the size limit */
+    private static AtomicLong evictionCount = new AtomicLong(0);
+
+    /** The estimators used to size cached objects */
+    private static List<SizeEstimator> sizeEstimators =
+        new ArrayList<SizeEstimator>();
 
     /** initialization flag */
     private static boolean haveInitialized = false;
@@ -376,12 +418,21 @@ public class CacheManager {
      */
     public static void put(Object owner, Object key, Object value,
                            boolean force) {
-        synchronized (MUTEX) {
-            if (doCache || force) {
-                Hashtable ht = findOrCreate(owner);
-                ht.put(key, value);
-            }
+        if ( !(doCache || force)) {
+            return;
+        }
+        long size = estimateSize(value);
+        if (size > maxMemoryCacheSize) {
+            //Don't bother. It would just push everything else out
+            log_.warn("Not caching object of " + size
+                      + " bytes. The memory cache limit is "
+                      + maxMemoryCacheSize + " bytes. owner:" + owner
+                      + " key:" + key);
+            remove(owner, key);
+            return;
         }
+        findOrCreateCache(owner).put(key, value, size);
+        checkMemoryCacheSize();
     }
 
     /**
@@ -390,14 +441,40 @@ public class CacheManager {
     public static void clearCache() {
         synchronized (MUTEX) {
             //      System.err.println ("clear cache");
-            caches = new Hashtable();
+            Hashtable<Object, OwnerCache> oldCaches = caches;
+            caches = new Hashtable<Object, OwnerCache>();
+            //Retire the old caches under their own locks so the size
+            //stays right for threads that still hold one of them
+            for (OwnerCache cache : oldCaches.values()) {
+                cache.retire();
+            }
+            notifyCacheListeners();
+        }
+    }
+
+    /**
+     * Evict the least recently used entries until the in-memory cache is
+     * at or below the given fraction of its current size and then tell
+     * the cache listeners to release their data.
+     *
+     * @param fraction fraction (0-1) of the current size to keep
+     */
+    public static void trimCache(double fraction) {
+        evict((long) (currentMemoryCacheSize.get() * fraction));
+        synchronized (MUTEX) {
+            notifyCacheListeners();
+        }
+    }
 
-            for (int i = 0; i < cacheListeners.size(); i++) {
-                ActionListener al = (ActionListener) cacheListeners.get(i);
-                al.actionPerformed(new ActionEvent("CacheManager", 0,
-                        "cacheclear"));
+    /**
+     * Tell the cache listeners that the cache has been cleared
+     */
+    private static void notifyCacheListeners() {
+        for (int i = 0; i < cacheListeners.size(); i++) {
+            ActionListener al = (ActionListener) cacheListeners.get(i);
+            al.actionPerformed(new ActionEvent("CacheManager", 0,
+                    "cacheclear"));
 
-            }
         }
     }
 
@@ -413,12 +490,24 @@ public class CacheManager {
 
     /**
      * Find the cache associated with <code>owner</code> and if not there,
-     * create a new cache
+     * create a new cache. This returns a copy of the owner's cached
+     * objects; changing the returned table does not change the cache.
      *
      * @param owner   owner to search for
      * @return  caching table
      */
     public static Hashtable findOrCreate(Object owner) {
+        return findOrCreateCache(owner).toHashtable();
+    }
+
+    /**
+     * Find the cache associated with <code>owner</code> and if not there,
+     * create a new cache
+     *
+     * @param owner   owner to search for
+     * @return  the owner's cache
+     */
+    private static OwnerCache findOrCreateCache(Object owner) {
         synchronized (MUTEX) {
             return find(owner, true);
         }
@@ -431,7 +520,7 @@ public class CacheManager {
      * @param owner    owner for cache
      * @return  associated cache  or <code>null</code>
      */
-    private static Hashtable find(Object owner) {
+    private static OwnerCache find(Object owner) {
         return find(owner, false);
     }
 
@@ -444,15 +533,15 @@ public class CacheManager {
      * @param orCreate  true to create one if one does not exist.
      * @return  a data cache for the owner
      */
-    private static Hashtable find(Object owner, boolean orCreate) {
+    private static OwnerCache find(Object owner, boolean orCreate) {
         init();
-        Hashtable ht = (Hashtable) caches.get(owner);
-        if ((ht == null) && orCreate) {
+        OwnerCache cache = caches.get(owner);
+        if ((cache == null) && orCreate) {
             //      System.err.println ("Creating new ht:" + owner);
-            ht = new Hashtable();
-            caches.put(owner, ht);
+            cache = new OwnerCache(owner);
+            caches.put(owner, cache);
         }
-        return ht;
+        return cache;
     }
 
     /**
@@ -475,17 +564,19 @@ public class CacheManager {
      * @return  the cached object
      */
     public static Object get(Object owner, Object key, boolean force) {
-        synchronized (MUTEX) {
-            if (doCache || force) {
-                Hashtable ht = find(owner);
-                if (ht == null) {
-                    return null;
-                }
-                return ht.get(key);
-            } else {
-                return null;
-            }
+        if ( !(doCache || force)) {
+            return null;
+        }
+        OwnerCache cache = find(owner);
+        Object     value = ((cache == null)
+                            ? null
+                            : cache.get(key));
+        if (value == null) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
         }
+        return value;
     }
 
 
@@ -495,8 +586,12 @@ public class CacheManager {
      * @param owner    owner of the cache
      */
     public static void remove(Object owner) {
+        OwnerCache cache;
         synchronized (MUTEX) {
-            caches.remove(owner);
+            cache = caches.remove(owner);
+        }
+        if (cache != null) {
+            cache.retire();
         }
     }
 
@@ -507,23 +602,411 @@ public class CacheManager {
      * @param key     key for object to remove
      */
     public static void remove(Object owner, Object key) {
-        synchronized (MUTEX) {
-            Hashtable ht = find(owner);
-            if (ht != null) {
-                ht.remove(key);
+        OwnerCache cache = find(owner);
+        if (cache != null) {
+            cache.remove(key);
+        }
+    }
+
+
+    /**
+     * Set the max estimated size, in bytes, of the in-memory cache
+     *
+     * @param maxSize max size in bytes
+     */
+    public static void setMaxMemoryCacheSize(long maxSize) {
+        maxMemoryCacheSize = maxSize;
+        checkMemoryCacheSize();
+    }
+
+    /**
+     * Get the max estimated size, in bytes, of the in-memory cache
+     *
+     * @return max size in bytes
+     */
+    public static long getMaxMemoryCacheSize() {
+        return maxMemoryCacheSize;
+    }
+
+    /**
+     * Get the current estimated size, in bytes, of the in-memory cache
+     *
+     * @return current size in bytes
+     */
+    public static long getMemoryCacheSize() {
+        return currentMemoryCacheSize.get();
+    }
+
+    /**
+     * Get the number of cache lookups that found an object
+     *
+     * @return hit count
+     */
+    public static long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Get the number of cache lookups that did not find an object
+     *
+     * @return miss count
+     */
+    public static long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Get the number of entries evicted because of the size limit
+     *
+     * @return eviction count
+     */
+    public static long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Reset the hit, miss and eviction counts
+     */
+    public static void resetStats() {
+        hitCount.set(0);
+        missCount.set(0);
+        evictionCount.set(0);
+    }
+
+
+    /**
+     * Add an estimator used to size cached objects. The estimators are
+     * consulted, most recently added first, before the built in sizing
+     * of arrays, strings and collections.
+     *
+     * @param estimator the estimator
+     */
+    public static void addSizeEstimator(SizeEstimator estimator) {
+        synchronized (sizeEstimators) {
+            sizeEstimators.add(0, estimator);
+        }
+    }
+
+    /**
+     * Estimate the size in bytes of the given object
+     *
+     * @param value object to size
+     *
+     * @return estimated size in bytes
+     */
+    public static long estimateSize(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        synchronized (sizeEstimators) {
+            for (SizeEstimator estimator : sizeEstimators) {
+                long size = estimator.estimateSize(value);
+                if (size >= 0) {
+                    return size;
+                }
+            }
+        }
+        if (value instanceof String) {
+            return DEFAULT_OBJECT_SIZE + 2 * ((String) value).length();
+        }
+        Class c = value.getClass();
+        if (c.isArray()) {
+            int                length = Array.getLength(value);
+            Class              type   = c.getComponentType();
+            if ( !type.isPrimitive()) {
+                long size = DEFAULT_OBJECT_SIZE + 8L * length;
+                for (int i = 0; i < length; i++) {
+                    size += estimateSize(Array.get(value, i));
+                }
+                return size;
+            }
+            int elementSize;
+            if ((type == Byte.TYPE) || (type == Boolean.TYPE)) {
+                elementSize = 1;
+            } else if ((type == Short.TYPE) || (type == Character.TYPE)) {
+                elementSize = 2;
+            } else if ((type == Integer.TYPE) || (type == Float.TYPE)) {
+                elementSize = 4;
+            } else {
+                elementSize = 8;
+            }
+            return DEFAULT_OBJECT_SIZE + (long) elementSize * length;
+        }
+        if (value instanceof Collection) {
+            long size = DEFAULT_OBJECT_SIZE;
+            for (Object o : (Collection) value) {
+                size += 8 + estimateSize(o);
+            }
+            return size;
+        }
+        return DEFAULT_OBJECT_SIZE;
+    }
+
+
+    /**
+     * Evict entries if we are over our size limit
+     */
+    private static void checkMemoryCacheSize() {
+        if (currentMemoryCacheSize.get() > maxMemoryCacheSize) {
+            //Go a bit below the limit so we don't thrash
+            evict((long) (maxMemoryCacheSize * 0.9));
+        }
+    }
+
+    /**
+     * Evict the least recently used entries, across all owners, until
+     * the cache size is at or below the limit
+     *
+     * @param limit size limit in bytes
+     */
+    private static void evict(long limit) {
+        synchronized (EVICT_MUTEX) {
+            while (currentMemoryCacheSize.get() > limit) {
+                OwnerCache oldestCache = null;
+                long       oldestTime  = Long.MAX_VALUE;
+                List<OwnerCache> owners;
+                synchronized (MUTEX) {
+                    owners = new ArrayList<OwnerCache>(caches.values());
+                }
+                for (OwnerCache cache : owners) {
+                    long time = cache.getEldestAccessTime();
+                    if (time < oldestTime) {
+                        oldestTime  = time;
+                        oldestCache = cache;
+                    }
+                }
+                if ((oldestCache == null) || !oldestCache.evictEldest()) {
+                    break;
+                }
+                evictionCount.incrementAndGet();
             }
         }
     }
 
+
     /**
      * Print the statistics for this cache.  Glorified toString().
      */
     public static void printStats() {
-        System.err.println("\tCacheManager: #caches:" + caches.size());
-        for (Enumeration keys = caches.keys(); keys.hasMoreElements(); ) {
-            Object    key   = keys.nextElement();
-            Hashtable cache = (Hashtable) caches.get(key);
-            System.err.println("\tKey:" + key + " size:" + cache.size());
+        List<OwnerCache> owners;
+        synchronized (MUTEX) {
+            owners = new ArrayList<OwnerCache>(caches.values());
+        }
+        long hits   = hitCount.get();
+        long misses = missCount.get();
+        System.err.println("\tCacheManager: #caches:" + owners.size()
+                           + " size:" + currentMemoryCacheSize.get()
+                           + " max:" + maxMemoryCacheSize);
+        System.err.println("\thits:" + hits + " misses:" + misses
+                           + " hit ratio:" + (((hits + misses) == 0)
+                ? 0
+                : (100 * hits / (hits + misses))) + "% evictions:"
+                    + evictionCount.get());
+        for (OwnerCache cache : owners) {
+            System.err.println("\tKey:" + cache.owner + " size:"
+                               + cache.size() + " bytes:"
+                               + cache.getBytes());
+        }
+    }
+
+
+    /**
+     * Estimates the size, in bytes, of objects put in the cache
+     */
+    public interface SizeEstimator {
+
+        /**
+         * Estimate the size of the given object
+         *
+         * @param value the object
+         *
+         * @return the size in bytes or -1 if this estimator does not
+         * handle the object
+         */
+        public long estimateSize(Object value);
+    }
+
+
+    /**
+     * A cached object along with its size and last access time
+     */
+    private static class CacheEntry {
+
+        /** the value */
+        Object value;
+
+        /** estimated size */
+        long size;
+
+        /** last access time */
+        long accessTime;
+
+        /**
+         * ctor
+         *
+         * @param value the value
+         * @param size estimated size
+         */
+        CacheEntry(Object value, long size) {
+            this.value      = value;
+            this.size       = size;
+            this.accessTime = accessCounter.incrementAndGet();
+        }
+    }
+
+
+    /**
+     * The cache for one owner. The entries are kept in access order so the
+     * first one is the least recently used.
+     */
+    private static class OwnerCache {
+
+        /** the owner */
+        Object owner;
+
+        /** The entries in access order */
+        LinkedHashMap<Object, CacheEntry> entries =
+            new LinkedHashMap<Object, CacheEntry>(16, 0.75f, true);
+
+        /** total size of this owner's entries */
+        long bytes = 0;
+
+        /** true if this cache has been removed from the manager */
+        boolean retired = false;
+
+        /**
+         * ctor
+         *
+         * @param owner the owner
+         */
+        OwnerCache(Object owner) {
+            this.owner = owner;
+        }
+
+        /**
+         * Get the value
+         *
+         * @param key key
+         *
+         * @return value or null
+         */
+        synchronized Object get(Object key) {
+            CacheEntry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            entry.accessTime = accessCounter.incrementAndGet();
+            return entry.value;
+        }
+
+        /**
+         * Put the value
+         *
+         * @param key key
+         * @param value value
+         * @param size estimated size of the value
+         */
+        synchronized void put(Object key, Object value, long size) {
+            if (retired) {
+                return;
+            }
+            CacheEntry old = entries.put(key, new CacheEntry(value, size));
+            if (old != null) {
+                changeSize(-old.size);
+            }
+            changeSize(size);
+        }
+
+        /**
+         * Remove the value
+         *
+         * @param key key
+         */
+        synchronized void remove(Object key) {
+            CacheEntry old = entries.remove(key);
+            if (old != null) {
+                changeSize(-old.size);
+            }
+        }
+
+        /**
+         * Remove all entries and stop taking new ones. This is done when
+         * the cache is removed from the manager. Threads that still hold
+         * on to it can no longer change the total size.
+         */
+        synchronized void retire() {
+            entries.clear();
+            changeSize(-bytes);
+            retired = true;
+        }
+
+        /**
+         * Get the access time of the least recently used entry
+         *
+         * @return access time or Long.MAX_VALUE if empty
+         */
+        synchronized long getEldestAccessTime() {
+            Iterator<CacheEntry> iter = entries.values().iterator();
+            return iter.hasNext()
+                   ? iter.next().accessTime
+                   : Long.MAX_VALUE;
+        }
+
+        /**
+         * Remove the least recently used entry
+         *
+         * @return true if there was one to remove
+         */
+        synchronized boolean evictEldest() {
+            Iterator<CacheEntry> iter = entries.values().iterator();
+            if ( !iter.hasNext()) {
+                return false;
+            }
+            CacheEntry entry = iter.next();
+            iter.remove();
+            changeSize(-entry.size);
+            return true;
+        }
+
+        /**
+         * Update the size of this cache and the total
+         *
+         * @param delta change in bytes
+         */
+        private void changeSize(long delta) {
+            bytes += delta;
+            currentMemoryCacheSize.addAndGet(delta);
+        }
+
+        /**
+         * Number of entries
+         *
+         * @return number of entries
+         */
+        synchronized int size() {
+            return entries.size();
+        }
+
+        /**
+         * Total size in bytes
+         *
+         * @return size
+         */
+        synchronized long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Make a copy of the cached values
+         *
+         * @return key to value table
+         */
+        synchronized Hashtable toHashtable() {
+            Hashtable ht = new Hashtable();
+            for (Map.Entry<Object, CacheEntry> entry : entries.entrySet()) {
+                ht.put(entry.getKey(), entry.getValue().value);
+            }
+            return ht;
         }
     }
 
@@ -0,0 +1,675 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.util;
+
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Watches directories for new and changed files for any number of
+ * subscribers (e.g., the {@link FilePoller}s of polling data sources).
+ * <p>
+ * One thread takes the events from a <code>java.nio.file.WatchService</code>
+ * and one thread does the bookkeeping. A directory that several
+ * subscribers watch is only listed once. Its files are kept in a hash
+ * table so a change only costs a lookup. If the watch service is not
+ * available, or a directory cannot be registered with it (e.g., some
+ * network file systems), the directory is listed at the smallest interval
+ * of its subscribers instead.
+ * <p>
+ * Changes are coalesced per subscriber and a subscriber is told at most
+ * once per its interval. A file is only passed on once its size has not
+ * changed for the settle time, or it has been waited on for
+ * {@link #MAX_SETTLE_FACTOR} times that. The listeners are called with an
+ * ActionEvent whose source is the list of changed Files, the same as
+ * the old per directory poller, on their own thread.
+ */
+public class DirectoryWatcher {
+
+    /** Default time a file's size needs to be unchanged (ms) */
+    public static final long SETTLE_TIME = 1000;
+
+    /** How many settle times we wait at most on a file that keeps changing */
+    public static final int MAX_SETTLE_FACTOR = 5;
+
+    /** Smallest scan interval (ms) */
+    private static final long MIN_INTERVAL = 1000;
+
+    /** The shared watcher */
+    private static DirectoryWatcher watcher;
+
+    /** The watch service. Null if we only scan */
+    private WatchService watchService;
+
+    /** Does the bookkeeping. All of the state is changed on this thread */
+    private ScheduledExecutorService executor;
+
+    /** Directory to its state */
+    private Hashtable<File, Watched> directories = new Hashtable<File,
+                                                       Watched>();
+
+    /** Watch key to the directory state */
+    private Hashtable<WatchKey, Watched> watchKeys = new Hashtable<WatchKey,
+                                                         Watched>();
+
+    /** Time a file's size needs to be unchanged */
+    private long settleTime;
+
+    /** Have we been closed */
+    private volatile boolean closed = false;
+
+    /**
+     * Get the shared watcher
+     *
+     * @return the watcher
+     */
+    public static synchronized DirectoryWatcher getWatcher() {
+        if (watcher == null) {
+            watcher = new DirectoryWatcher(true, SETTLE_TIME);
+        }
+        return watcher;
+    }
+
+    /**
+     * Create a watcher
+     *
+     * @param useWatchService If false then always scan the directories
+     * @param settleTime time (ms) a file's size needs to be unchanged
+     */
+    public DirectoryWatcher(boolean useWatchService, long settleTime) {
+        this.settleTime = settleTime;
+        executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "DirectoryWatcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        if (useWatchService) {
+            try {
+                watchService = FileSystems.getDefault().newWatchService();
+            } catch (Exception exc) {
+                LogUtil.consoleMessage(
+                    "No file system watch service. Scanning directories:"
+                    + exc);
+            }
+        }
+        if (watchService != null) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    takeEvents();
+                }
+            }, "DirectoryWatcher events");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Start watching a directory
+     *
+     * @param directory the directory
+     * @param filter the files to tell about. May be null for all
+     * @param interval the most often (ms) the listener is told
+     * @param listener the listener
+     *
+     * @return the subscription to pass to {@link #unsubscribe(Subscription)}
+     */
+    public Subscription subscribe(final File directory, FileFilter filter,
+                                  long interval, ActionListener listener) {
+        final Subscription sub = new Subscription(directory.getAbsoluteFile(),
+                                     filter, interval, listener);
+        submit(new Runnable() {
+            public void run() {
+                addSubscription(sub);
+            }
+        });
+        return sub;
+    }
+
+    /**
+     * Stop watching
+     *
+     * @param sub the subscription
+     */
+    public void unsubscribe(final Subscription sub) {
+        sub.active = false;
+        submit(new Runnable() {
+            public void run() {
+                removeSubscription(sub);
+            }
+        });
+    }
+
+    /**
+     * Stop the threads
+     */
+    public void close() {
+        closed = true;
+        executor.shutdownNow();
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignore) {}
+        }
+    }
+
+    /**
+     * Are we using the watch service
+     *
+     * @return true if we get events from the file system
+     */
+    public boolean getUseWatchService() {
+        return watchService != null;
+    }
+
+    /**
+     * Run the task on the bookkeeping thread
+     *
+     * @param r the task
+     */
+    private void submit(Runnable r) {
+        if ( !closed) {
+            executor.execute(guard(r));
+        }
+    }
+
+    /**
+     * Run the task on the bookkeeping thread after a delay
+     *
+     * @param r the task
+     * @param delay the delay (ms)
+     *
+     * @return the future
+     */
+    private ScheduledFuture schedule(Runnable r, long delay) {
+        return executor.schedule(guard(r), Math.max(0, delay),
+                                 TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Wrap the task so an error does not stop the thread
+     *
+     * @param r the task
+     *
+     * @return the wrapped task
+     */
+    private Runnable guard(final Runnable r) {
+        return new Runnable() {
+            public void run() {
+                try {
+                    r.run();
+                } catch (Exception exc) {
+                    LogUtil.logException("Watching directories", exc);
+                }
+            }
+        };
+    }
+
+    /**
+     * Take the events from the watch service and pass them to the
+     * bookkeeping thread
+     */
+    private void takeEvents() {
+        while ( !closed) {
+            final WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException ie) {
+                return;
+            } catch (ClosedWatchServiceException cwse) {
+                return;
+            }
+            final List<WatchEvent<?>> events = key.pollEvents();
+            key.reset();
+            submit(new Runnable() {
+                public void run() {
+                    handleEvents(key, events);
+                }
+            });
+        }
+    }
+
+    /**
+     * Handle the events for a directory
+     *
+     * @param key the watch key
+     * @param events the events
+     */
+    private void handleEvents(WatchKey key, List<WatchEvent<?>> events) {
+        Watched watched = watchKeys.get(key);
+        if (watched == null) {
+            return;
+        }
+        if ( !key.isValid()) {
+            //The directory went away. Fall back to scanning it.
+            watchKeys.remove(key);
+            watched.key = null;
+            startScanning(watched);
+            return;
+        }
+        for (WatchEvent<?> event : events) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                scan(watched);
+                return;
+            }
+        }
+        long now = System.currentTimeMillis();
+        for (WatchEvent<?> event : events) {
+            String name = event.context().toString();
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                watched.files.remove(name);
+                continue;
+            }
+            checkFile(watched, name, new File(watched.directory, name), now);
+        }
+    }
+
+    /**
+     * Add the subscription, registering or scanning the directory if this
+     * is the first subscriber
+     *
+     * @param sub the subscription
+     */
+    private void addSubscription(Subscription sub) {
+        if ( !sub.active) {
+            return;
+        }
+        sub.lastFire = System.currentTimeMillis();
+        Watched watched = directories.get(sub.directory);
+        if (watched == null) {
+            watched = new Watched(sub.directory);
+            directories.put(sub.directory, watched);
+            if (watchService != null) {
+                try {
+                    //Register before we list so we don't miss anything
+                    watched.key = sub.directory.toPath().register(
+                        watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+                    watchKeys.put(watched.key, watched);
+                } catch (Exception exc) {
+                    watched.key = null;
+                }
+            }
+            //The initial listing sets the state but nothing has changed
+            scan(watched);
+            watched.initialized = true;
+            watched.subscriptions.add(sub);
+        } else {
+            watched.subscriptions.add(sub);
+        }
+        if (watched.key == null) {
+            startScanning(watched);
+        }
+    }
+
+    /**
+     * Remove the subscription and stop watching the directory if it was
+     * the last one
+     *
+     * @param sub the subscription
+     */
+    private void removeSubscription(Subscription sub) {
+        if (sub.fireTask != null) {
+            sub.fireTask.cancel(false);
+            sub.fireTask = null;
+        }
+        sub.pending.clear();
+        Watched watched = directories.get(sub.directory);
+        if (watched == null) {
+            return;
+        }
+        watched.subscriptions.remove(sub);
+        if (watched.subscriptions.size() > 0) {
+            if (watched.key == null) {
+                startScanning(watched);
+            }
+            return;
+        }
+        directories.remove(sub.directory);
+        if (watched.key != null) {
+            watched.key.cancel();
+            watchKeys.remove(watched.key);
+        }
+        if (watched.scanTask != null) {
+            watched.scanTask.cancel(false);
+        }
+    }
+
+    /**
+     * Start, or restart, listing the directory at the smallest interval
+     * of its subscribers
+     *
+     * @param watched the directory
+     */
+    private void startScanning(final Watched watched) {
+        long interval = Long.MAX_VALUE;
+        for (Subscription sub : watched.subscriptions) {
+            interval = Math.min(interval, sub.interval);
+        }
+        interval = Math.max(MIN_INTERVAL, interval);
+        if ((watched.scanTask != null) && (watched.scanInterval == interval)) {
+            return;
+        }
+        if (watched.scanTask != null) {
+            watched.scanTask.cancel(false);
+        }
+        watched.scanInterval = interval;
+        watched.scanTask     = executor.scheduleWithFixedDelay(guard(
+            new Runnable() {
+            public void run() {
+                scan(watched);
+            }
+        }), interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * List the directory and check each of the files against what we have
+     *
+     * @param watched the directory
+     */
+    private void scan(Watched watched) {
+        String[] names = watched.directory.list();
+        if (names == null) {
+            watched.files.clear();
+            return;
+        }
+        long now = System.currentTimeMillis();
+        //Anything not in the listing was deleted
+        watched.files.keySet().retainAll(
+            new HashSet<String>(Arrays.asList(names)));
+        for (String name : names) {
+            checkFile(watched, name, new File(watched.directory, name), now);
+        }
+    }
+
+    /**
+     * See if the file is new or has changed and if so tell the subscribers
+     *
+     * @param watched the directory
+     * @param name the file name
+     * @param file the file
+     * @param now the time
+     */
+    private void checkFile(Watched watched, String name, File file,
+                           long now) {
+        long time = file.lastModified();
+        if (time == 0) {
+            //Gone
+            watched.files.remove(name);
+            return;
+        }
+        long      size  = file.length();
+        FileState state = watched.files.get(name);
+        if (state == null) {
+            state = new FileState();
+            watched.files.put(name, state);
+            state.time = time;
+            state.size = size;
+            if ( !watched.initialized) {
+                return;
+            }
+        } else if ((state.time == time) && (state.size == size)) {
+            return;
+        }
+        state.time       = time;
+        state.size       = size;
+        state.lastChange = now;
+        for (Subscription sub : watched.subscriptions) {
+            if ((sub.filter != null) && !sub.filter.accept(file)) {
+                continue;
+            }
+            if ( !sub.pending.containsKey(name)) {
+                sub.pending.put(name, Long.valueOf(now));
+            }
+            scheduleFire(sub, 0);
+        }
+    }
+
+    /**
+     * Schedule telling the subscriber if we have not already
+     *
+     * @param sub the subscription
+     * @param minDelay the smallest delay (ms)
+     */
+    private void scheduleFire(final Subscription sub, long minDelay) {
+        if (sub.fireTask != null) {
+            return;
+        }
+        long delay = Math.max(minDelay,
+                              Math.max(settleTime,
+                                       sub.lastFire + sub.interval
+                                       - System.currentTimeMillis()));
+        sub.fireTask = schedule(new Runnable() {
+            public void run() {
+                fire(sub);
+            }
+        }, delay);
+    }
+
+    /**
+     * Tell the subscriber about the files that have settled
+     *
+     * @param sub the subscription
+     */
+    private void fire(final Subscription sub) {
+        sub.fireTask = null;
+        if ( !sub.active || sub.pending.isEmpty()) {
+            return;
+        }
+        if (sub.busy) {
+            //The listener is still working on the last ones
+            scheduleFire(sub, settleTime);
+            return;
+        }
+        Watched    watched = directories.get(sub.directory);
+        long       now     = System.currentTimeMillis();
+        final List files   = new ArrayList();
+        for (Iterator<Map.Entry<String, Long>> iter =
+                sub.pending.entrySet().iterator(); iter.hasNext(); ) {
+            Map.Entry<String, Long> entry = iter.next();
+            String                  name  = entry.getKey();
+            File      file  = new File(sub.directory, name);
+            FileState state = (watched == null)
+                              ? null
+                              : watched.files.get(name);
+            if (state == null) {
+                //Deleted
+                iter.remove();
+                continue;
+            }
+            //Check the size since a scanned directory does not tell us
+            long size = file.length();
+            if (size != state.size) {
+                state.size       = size;
+                state.time       = file.lastModified();
+                state.lastChange = now;
+            }
+            boolean settled = now - state.lastChange >= settleTime;
+            boolean waited  = now - entry.getValue().longValue()
+                              >= settleTime * MAX_SETTLE_FACTOR;
+            if (settled || waited) {
+                files.add(file);
+                iter.remove();
+            }
+        }
+        if ( !sub.pending.isEmpty()) {
+            scheduleFire(sub, settleTime);
+        }
+        if (files.isEmpty()) {
+            return;
+        }
+        sub.lastFire = now;
+        sub.busy     = true;
+        Misc.run(new Runnable() {
+            public void run() {
+                try {
+                    if (sub.active) {
+                        sub.listener.actionPerformed(new ActionEvent(files,
+                                1, "FILECHANGED"));
+                    }
+                } finally {
+                    sub.busy = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * The state of a file
+     */
+    private static class FileState {
+
+        /** last modified */
+        long time;
+
+        /** length */
+        long size;
+
+        /** when we last saw it change */
+        long lastChange;
+    }
+
+    /**
+     * A watched directory
+     */
+    private static class Watched {
+
+        /** the directory */
+        File directory;
+
+        /** file name to its state */
+        Map<String, FileState> files = new HashMap<String, FileState>();
+
+        /** the subscribers */
+        List<Subscription> subscriptions = new ArrayList<Subscription>();
+
+        /** the watch key. null if we scan */
+        WatchKey key;
+
+        /** the scan task */
+        ScheduledFuture scanTask;
+
+        /** the scan interval */
+        long scanInterval;
+
+        /** have we done the initial listing */
+        boolean initialized = false;
+
+        /**
+         * Create the state
+         *
+         * @param directory the directory
+         */
+        Watched(File directory) {
+            this.directory = directory;
+        }
+    }
+
+    /**
+     * A subscription to a directory
+     */
+    public static class Subscription {
+
+        /** the directory */
+        private File directory;
+
+        /** the filter */
+        private FileFilter filter;
+
+        /** the interval */
+        private long interval;
+
+        /** the listener */
+        private ActionListener listener;
+
+        /** file name to when it first changed */
+        private Map<String, Long> pending = new LinkedHashMap<String,
+                                                Long>();
+
+        /** the scheduled fire */
+        private ScheduledFuture fireTask;
+
+        /** when we last told the listener */
+        private long lastFire;
+
+        /** is the listener running */
+        private volatile boolean busy = false;
+
+        /** are we still subscribed */
+        private volatile boolean active = true;
+
+        /**
+         * Create the subscription
+         *
+         * @param directory the directory
+         * @param filter the filter
+         * @param interval the interval
+         * @param listener the listener
+         */
+        private Subscription(File directory, FileFilter filter,
+                             long interval, ActionListener listener) {
+            this.directory = directory;
+            this.filter    = filter;
+            this.interval  = interval;
+            this.listener  = listener;
+        }
+
+        /**
+         * Get the directory
+         *
+         * @return the directory
+         */
+        public File getDirectory() {
+            return directory;
+        }
+    }
+}
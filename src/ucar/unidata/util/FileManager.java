@@ -918,6 +918,9 @@ public class FileManager {
     /** Suffix for CSV files */
     public static final String SUFFIX_XLS = ".xls";
 
+    /** Suffix for xlsx files */
+    public static final String SUFFIX_XLSX = ".xlsx";
+
     /** Suffix for CSV files */
     public static final String SUFFIX_KML = ".kml";
 
@@ -992,6 +995,11 @@ public class FileManager {
         new PatternFileFilter(".+\\.xls", "Microsoft Excel files",
                               SUFFIX_XLS);
 
+    /** Filter for xlsx files */
+    public static final PatternFileFilter FILTER_XLSX =
+        new PatternFileFilter(".+\\.xlsx", "Microsoft Excel 2007+ files",
+                              SUFFIX_XLSX);
+
     /** Filter for xls files */
     public static final PatternFileFilter FILTER_KML =
         new PatternFileFilter(".+\\.kml", "Google Earth files", SUFFIX_KML);
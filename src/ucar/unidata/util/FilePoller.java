@@ -39,7 +39,8 @@ import javax.swing.filechooser.FileFilter;
 
 
 /**
- * Class for handling polling of files
+ * Class for handling polling of files. A directory is watched with the
+ * shared {@link DirectoryWatcher} rather than polled by its own thread.
  *
  * @author IDV development team
  *
@@ -63,6 +64,9 @@ public class FilePoller extends Poller {
     /** _more_ */
     boolean haveInitialized = false;
 
+    /** The subscription to the directory watcher when polling a directory */
+    DirectoryWatcher.Subscription subscription;
+
     /**
      * Create a new file poller
      *
@@ -94,85 +98,53 @@ public class FilePoller extends Poller {
         if ((fileInfos.size() == 1)
                 && ((FileInfo) fileInfos.get(0)).getFile().isDirectory()) {
             directory = ((FileInfo) fileInfos.get(0)).getFile();
-            fileInfos = getFileInfos();
+            fileInfos = new ArrayList();
+            subscription = DirectoryWatcher.getWatcher().subscribe(directory,
+                    fileFilter, getInterval(), new ActionListener() {
+                public void actionPerformed(ActionEvent e) {
+                    if (running) {
+                        Trace.msg("FilePoller: changed files="
+                                  + e.getSource());
+                        fireChange((List) e.getSource());
+                    }
+                }
+            });
+            return;
         }
         super.init();
     }
 
 
-
-
     /**
-     * Poll
+     * Stop polling
      */
-    protected void doPoll() {
-        if (directory != null) {
-            Trace.msg("FilePoller: Polling directory:" + directory);
-            doDirectory();
-            return;
+    public void stopRunning() {
+        super.stopRunning();
+        if (subscription != null) {
+            DirectoryWatcher.getWatcher().unsubscribe(subscription);
+            subscription = null;
         }
-
-        Trace.msg("FilePoller: Polling file:" + fileInfos);
-        doFile();
     }
 
 
-    /**
-     * _more_
-     *
-     * @return _more_
-     */
-    private List getFileInfos() {
-        File[] list  = directory.listFiles((java.io.FileFilter) fileFilter);
-        List   files = new ArrayList();
-        if (list == null) {
-            return files;
-        }
-        for (int i = 0; i < list.length; i++) {
-            files.add(new FileInfo(list[i]));
-        }
-        return files;
-    }
 
 
     /**
-     * Poll a directory
+     * Poll
      */
-    private void doDirectory() {
-        Trace.call1("FilePoller.doDirectory");
-        List newFileInfos = getFileInfos();
-        List changedFiles = new ArrayList();
-        for (int i = 0; i < newFileInfos.size(); i++) {
-            FileInfo newFileInfo = (FileInfo) newFileInfos.get(i);
-            int      index       = fileInfos.indexOf(newFileInfo);
-            FileInfo oldFileInfo = null;
-            if (index >= 0) {
-                oldFileInfo = (FileInfo) fileInfos.get(index);
-                if ((oldFileInfo.size != newFileInfo.size)
-                        || (oldFileInfo.time != newFileInfo.time)) {
-                    changedFiles.add(newFileInfo.getFile());
-                }
-            } else {
-                changedFiles.add(newFileInfo.getFile());
-            }
-        }
-
-        fileInfos = newFileInfos;
-        Trace.call2("FilePoller.doDirectory",
-                    " changed files=" + changedFiles);
-        if (changedFiles.size() == 0) {
-            return;
-        }
-        waitOnFiles(changedFiles);
-        fireChange(changedFiles);
+    protected void doPoll() {
+        Trace.msg("FilePoller: Polling file:" + fileInfos);
+        doFile();
     }
 
+
     /**
      * _more_
      *
      * @param files _more_
      */
     private void fireChange(List files) {
+        ActionListener listener = this.listener;
         if (listener != null) {
             listener.actionPerformed(new ActionEvent(files, 1,
                     "FILECHANGED"));
@@ -67,6 +67,9 @@ public class HttpServer {
     /** _more_          */
     public static final int RESPONSE_INTERNALERROR = 500;
 
+    /** The server is too busy */
+    public static final int RESPONSE_UNAVAILABLE = 503;
+
 
 
     /** get type */
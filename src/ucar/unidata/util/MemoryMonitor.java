@@ -360,7 +360,9 @@ public class MemoryMonitor extends JPanel implements Runnable, Removable {
                 if (timesAboveThreshold > 5) {
                     //Only run the GC every 5 seconds
                     if (now - lastTimeClearCache > 5000) {
-                        CacheManager.clearCache();
+                        //Drop the oldest half of the cache and have the
+                        //cache listeners release their data
+                        CacheManager.trimCache(0.5);
                         lastTimeClearCache = now;
                     }
                     if ( !inTheRed) {
@@ -39,10 +39,15 @@ import java.net.*;
 import java.security.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.jar.*;
 import java.util.regex.*;
 
@@ -50,7 +55,13 @@ import java.util.regex.*;
 
 /**
  * Class PluginClassLoader. Loads plugin classes
- *
+ * <p>
+ * The jar is indexed up front but its classes are only defined when they
+ * are asked for. The exception are the classes that extend or implement
+ * a type from outside of the jar that is not a java platform type (see
+ * {@link #isExtensionType(String)}). These are the classes a plugin
+ * provides to the application so they are defined, and handed to
+ * {@link #checkClass(Class)}, when the loader is made.
  *
  * @author IDV Development Team
  * @version $Revision: 1.54 $
@@ -69,7 +80,10 @@ public class PluginClassLoader extends ClassLoader {
     /** path to jar file */
     private String jarFilePath;
 
-    /** Mapping of resource name to jar entry */
+    /** The index of the jar */
+    private JarIndex index;
+
+    /** Mapping of resource name (without the leading /) to jar entry */
     Hashtable canonicalNames = new Hashtable();
 
     /** For handling getResource */
@@ -95,38 +109,175 @@ public class PluginClassLoader extends ClassLoader {
     public PluginClassLoader(String jarFilePath,
                              ClassLoader parent)
         throws IOException {
+        this(new JarIndex(jarFilePath), parent);
+    }
+
+    /**
+     * ctor
+     *
+     *
+     * @param index The index of the jar file. See {@link #readIndices(List)}
+     * @param parent  parent
+     *
+     * @throws IOException On badness
+     */
+    public PluginClassLoader(JarIndex index,
+                             ClassLoader parent)
+        throws IOException {
         super(parent);
-        this.jarFilePath = jarFilePath;
+        this.index       = index;
+        this.jarFilePath = index.jarFilePath;
         this.parent      = parent;
 
-        myJarFile        = new JarFile(jarFilePath);
+        myJarFile        = index.jarFile;
         urlStreamHandler = new URLStreamHandler() {
                 protected URLConnection openConnection(URL u)
                     throws IOException {
                     return openURLConnection(u);
                 }
             };
-        List entries = Misc.toList(myJarFile.entries());
-        //First load in the class files
-        for (int i = 0; i < entries.size(); i++) {
-            JarEntry entry = (JarEntry) entries.get(i);
-            if (entry.isDirectory()) {
+        for (int i = 0; i < index.resourceEntries.size(); i++) {
+            JarEntry entry = (JarEntry) index.resourceEntries.get(i);
+            defineResource(entry);
+            entryNames.add(entry.getName());
+        }
+        //Only load in the classes that extend the application
+        Hashtable extensions = new Hashtable();
+        for (int i = 0; i < index.classNames.size(); i++) {
+            String className = (String) index.classNames.get(i);
+            if ( !isExtension(className, extensions)) {
                 continue;
             }
-            String name = entry.getName();
-            if (name.endsWith(".class")) {
-                //System.err.println ("class:"+entry.getName());
-                try {
-                    Class c = loadClassFromJar(entry.getName());
-                } catch (java.lang.LinkageError jlle) {
-                    handleError("Error loading plugin class:"
-                             + entry.getName(), jlle);
+            //System.err.println ("class:"+className);
+            try {
+                Class c = loadClassFromJar(index.getEntryName(className));
+            } catch (java.lang.LinkageError jlle) {
+                handleError("Error loading plugin class:"
+                            + index.getEntryName(className), jlle);
+            }
+        }
+    }
+
+    /**
+     * Read the indices of the jar files in parallel
+     *
+     * @param jarFilePaths The jar files
+     *
+     * @return The (Future) reads of the indices, in the same order
+     */
+    public static List readIndices(List jarFilePaths) {
+        List futures = new ArrayList();
+        if (jarFilePaths.size() == 0) {
+            return futures;
+        }
+        ExecutorService reader = Executors.newFixedThreadPool(
+                                     Math.min(jarFilePaths.size(), 4),
+                                     new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Plugin jar reader");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        for (int i = 0; i < jarFilePaths.size(); i++) {
+            final String jarFilePath = jarFilePaths.get(i).toString();
+            futures.add(reader.submit(new Callable<JarIndex>() {
+                public JarIndex call() throws IOException {
+                    return new JarIndex(jarFilePath);
                 }
-            } else {
-                defineResource(entry);
-                entryNames.add(entry.getName());
+            }));
+        }
+        reader.shutdown();
+        return futures;
+    }
+
+    /**
+     * Does the class extend or implement an extension type
+     *
+     * @param className The class name
+     * @param checked Cache of the classes that have been checked
+     *
+     * @return true if the class extends the application
+     */
+    private boolean isExtension(String className, Hashtable checked) {
+        Boolean result = (Boolean) checked.get(className);
+        if (result != null) {
+            return result.booleanValue();
+        }
+        String[] superTypes = (String[]) index.superTypes.get(className);
+        if (superTypes == null) {
+            //Not one of ours or we could not read it
+            result = Boolean.valueOf(index.hasClass(className)
+                                     || isExtensionType(className));
+        } else {
+            checked.put(className, Boolean.FALSE);
+            result = Boolean.FALSE;
+            for (int i = 0; i < superTypes.length; i++) {
+                if (isExtension(superTypes[i], checked)) {
+                    result = Boolean.TRUE;
+                    break;
+                }
+            }
+        }
+        checked.put(className, result);
+        return result.booleanValue();
+    }
+
+    /**
+     * Is the type, from outside of the jar, one that plugins extend.
+     * Classes that extend or implement one are loaded when the jar is.
+     * This returns true for everything but the java platform types.
+     *
+     * @param className The type
+     *
+     * @return true if it is an extension type
+     */
+    protected boolean isExtensionType(String className) {
+        return !isPlatformType(className);
+    }
+
+    /**
+     * Is the type a java platform type
+     *
+     * @param className The type
+     *
+     * @return true if it is in java or javax
+     */
+    private static boolean isPlatformType(String className) {
+        return className.startsWith("java.")
+               || className.startsWith("javax.");
+    }
+
+    /**
+     * Is the java platform type one of, or does it extend or implement one
+     * of, the given types. The type is loaded with the parent loader. This
+     * lets a loader treat e.g. java.text.SimpleDateFormat as an extension
+     * type when plugins provide DateFormats.
+     *
+     * @param className The java platform type
+     * @param baseTypes The types
+     *
+     * @return true if it is a java platform subtype of one of them
+     */
+    protected boolean isPlatformSubtype(String className,
+                                        Class[] baseTypes) {
+        if ( !isPlatformType(className)) {
+            return false;
+        }
+        Class c;
+        try {
+            c = Class.forName(className, false, parent);
+        } catch (ClassNotFoundException cnfe) {
+            return false;
+        } catch (LinkageError le) {
+            return false;
+        }
+        for (int i = 0; i < baseTypes.length; i++) {
+            if (baseTypes[i].isAssignableFrom(c)) {
+                return true;
             }
         }
+        return false;
     }
 
     public String toString() {
@@ -204,7 +355,7 @@ public class PluginClassLoader extends ClassLoader {
      *
      * @return The class.
      */
-    private Class loadClassFromJar(String entryName) {
+    private synchronized Class loadClassFromJar(String entryName) {
         try {
             JarEntry jarEntry = getJarFile().getJarEntry(entryName);
             Class    c = (Class) loadedClasses.get(jarEntry.getName());
@@ -245,11 +396,8 @@ public class PluginClassLoader extends ClassLoader {
         if(c!=null) {
             return c;
         }
-        String fileName = StringUtil.replace(name, ".", "/");
-        fileName += ".class";
-        JarEntry jarEntry = getJarFile().getJarEntry(fileName);
-        if (jarEntry != null) {
-            return loadClassFromJar(jarEntry.getName());
+        if (index.hasClass(name)) {
+            return loadClassFromJar(index.getEntryName(name));
         } else {
             return super.loadClass(name);
         }
@@ -257,12 +405,17 @@ public class PluginClassLoader extends ClassLoader {
 
 
     /**
-     * Check if this class is one we loaded from a plugin
+     * Check if this class is one from the plugin. It is loaded if it
+     * has not been yet.
      *
      * @return the class or null
      */
     public Class getClassFromPlugin(String name) {
-        return (Class)  loadedClasses.get(name);
+        Class c = (Class)  loadedClasses.get(name);
+        if ((c == null) && index.hasClass(name)) {
+            c = loadClassFromJar(index.getEntryName(name));
+        }
+        return c;
     }
 
 
@@ -273,30 +426,58 @@ public class PluginClassLoader extends ClassLoader {
      * @param jarEntry THe entry
      */
     protected String defineResource(JarEntry jarEntry) {
-        String entryName = jarEntry.getName();
-        String name      = jarEntry.getName();
-        canonicalNames.put("/" + name, entryName);
-        canonicalNames.put(jarFilePath + "!" + name, entryName);
-        name = "/" + name;
-        canonicalNames.put(jarFilePath + "!" + name, entryName);
-        String path;
-        canonicalNames.put(path=PLUGIN_PROTOCOL + ":" + jarFilePath + "!"
-                           + name, entryName);
-        canonicalNames.put(PLUGIN_PROTOCOL + ":" + name, entryName);
-        return path;
+        canonicalNames.put(jarEntry.getName(), jarEntry);
+        return PLUGIN_PROTOCOL + ":" + jarFilePath + "!/"
+               + jarEntry.getName();
     }
 
 
     /**
      * Get the actual name that is used in the jar file
      * The resource might have teh PLUGIN_PROTOCOL prepended to it, etc.
+     * The forms are /name, jarFilePath!name, jarFilePath!/name,
+     * PLUGIN_PROTOCOL:jarFilePath!/name and PLUGIN_PROTOCOL:/name
      *
      * @param resource the resource
      *
      * @return jar name
      */
     private String getCanonicalName(String resource) {
-        return (String) canonicalNames.get(resource);
+        String  name     = resource;
+        boolean protocol = name.startsWith(PLUGIN_PROTOCOL + ":");
+        if (protocol) {
+            name = name.substring(PLUGIN_PROTOCOL.length() + 1);
+        }
+        if (name.startsWith(jarFilePath + "!")) {
+            String inJar = name.substring(jarFilePath.length() + 1);
+            if ( !protocol || inJar.startsWith("/")) {
+                JarEntry entry = getEntry(inJar);
+                if (entry != null) {
+                    return entry.getName();
+                }
+            }
+        }
+        if ( !name.startsWith("/")) {
+            return null;
+        }
+        JarEntry entry = getEntry(name);
+        return (entry == null)
+               ? null
+               : entry.getName();
+    }
+
+    /**
+     * Find the jar entry of the resource
+     *
+     * @param name Name in the jar, with or without the leading /
+     *
+     * @return The entry or null
+     */
+    private JarEntry getEntry(String name) {
+        if (name.startsWith("/")) {
+            name = name.substring(1);
+        }
+        return (JarEntry) canonicalNames.get(name);
     }
 
     /**
@@ -360,5 +541,223 @@ public class PluginClassLoader extends ClassLoader {
         ProtectionDomain pd = new ProtectionDomain(codeSource, pc);
         return defineClass((String) null, bytes, 0, bytes.length, pd);
     }
-}
 
+
+    /**
+     * The index of a plugin jar file: its entries and, for each class,
+     * the names of the types it extends and implements. Reading it does
+     * not define any classes so jars can be indexed in parallel.
+     */
+    public static class JarIndex {
+
+        /** path to jar file */
+        private String jarFilePath;
+
+        /** The open jar file */
+        private JarFile jarFile;
+
+        /** The class names, in jar order */
+        private List classNames = new ArrayList();
+
+        /** Mapping from class name to jar entry name */
+        private Hashtable classEntries = new Hashtable();
+
+        /** Mapping from class name to its super class and interfaces */
+        private Hashtable superTypes = new Hashtable();
+
+        /** The non class jar entries, in jar order */
+        private List resourceEntries = new ArrayList();
+
+        /**
+         * Open and index the jar file
+         *
+         * @param jarFilePath Where the jar file is
+         *
+         * @throws IOException On badness
+         */
+        public JarIndex(String jarFilePath) throws IOException {
+            this.jarFilePath = jarFilePath;
+            jarFile          = new JarFile(jarFilePath);
+            List entries = Misc.toList(jarFile.entries());
+            for (int i = 0; i < entries.size(); i++) {
+                JarEntry entry = (JarEntry) entries.get(i);
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                String name = entry.getName();
+                if ( !name.endsWith(".class")) {
+                    resourceEntries.add(entry);
+                    continue;
+                }
+                InputStream is = jarFile.getInputStream(entry);
+                try {
+                    String[] names = readClassHeader(is);
+                    if (hasClass(names[0])) {
+                        continue;
+                    }
+                    classNames.add(names[0]);
+                    classEntries.put(names[0], name);
+                    superTypes.put(names[0],
+                                   Arrays.copyOfRange(names, 1,
+                                       names.length));
+                } catch (IOException exc) {
+                    //Index it by its entry name. It will be loaded up front
+                    String className =
+                        StringUtil.replace(name.substring(0,
+                            name.length() - 6), "/", ".");
+                    classNames.add(className);
+                    classEntries.put(className, name);
+                } finally {
+                    is.close();
+                }
+            }
+        }
+
+        /**
+         * Close the jar file. This is for an index that no loader was made
+         * with. A loader closes the jar with {@link #closeJar()}.
+         */
+        public void close() {
+            try {
+                jarFile.close();
+            } catch (IOException exc) {}
+        }
+
+        /**
+         * Is the class in the jar
+         *
+         * @param className The class name
+         *
+         * @return true if it is in the jar
+         */
+        public boolean hasClass(String className) {
+            return classEntries.get(className) != null;
+        }
+
+        /**
+         * Get the jar entry name of the class
+         *
+         * @param className The class name
+         *
+         * @return The entry name or null
+         */
+        public String getEntryName(String className) {
+            return (String) classEntries.get(className);
+        }
+
+        /**
+         * Get the names of the classes in the jar
+         *
+         * @return List of class names
+         */
+        public List getClassNames() {
+            return classNames;
+        }
+
+        /**
+         * Read the names of the class, its super class and its interfaces
+         * from the start of the class file
+         *
+         * @param is The class file
+         *
+         * @return The class name, then the super class (if any) and
+         * interface names
+         *
+         * @throws IOException On a bad class file
+         */
+        static String[] readClassHeader(InputStream is) throws IOException {
+            DataInputStream in = new DataInputStream(
+                                     new BufferedInputStream(is));
+            if (in.readInt() != 0xCAFEBABE) {
+                throw new IOException("Not a class file");
+            }
+            in.readUnsignedShort();
+            in.readUnsignedShort();
+            int      count   = in.readUnsignedShort();
+            String[] strings = new String[count];
+            int[]    classes = new int[count];
+            for (int i = 1; i < count; i++) {
+                int tag = in.readUnsignedByte();
+                switch (tag) {
+
+                  case 1 :
+                      strings[i] = in.readUTF();
+                      break;
+
+                  case 7 :
+                      classes[i] = in.readUnsignedShort();
+                      break;
+
+                  case 8 :
+                  case 16 :
+                  case 19 :
+                  case 20 :
+                      in.skipBytes(2);
+                      break;
+
+                  case 15 :
+                      in.skipBytes(3);
+                      break;
+
+                  case 3 :
+                  case 4 :
+                  case 9 :
+                  case 10 :
+                  case 11 :
+                  case 12 :
+                  case 17 :
+                  case 18 :
+                      in.skipBytes(4);
+                      break;
+
+                  case 5 :
+                  case 6 :
+                      in.skipBytes(8);
+                      i++;
+                      break;
+
+                  default :
+                      throw new IOException("Unknown constant:" + tag);
+                }
+            }
+            in.readUnsignedShort();
+            int      thisClass     = in.readUnsignedShort();
+            int      superClass    = in.readUnsignedShort();
+            int      numInterfaces = in.readUnsignedShort();
+            String[] names         = new String[((superClass == 0)
+                    ? 1
+                    : 2) + numInterfaces];
+            int      cnt           = 0;
+            names[cnt++] = getClassName(strings, classes, thisClass);
+            if (superClass != 0) {
+                names[cnt++] = getClassName(strings, classes, superClass);
+            }
+            for (int i = 0; i < numInterfaces; i++) {
+                names[cnt++] = getClassName(strings, classes,
+                                            in.readUnsignedShort());
+            }
+            return names;
+        }
+
+        /**
+         * Get the class name from the constant pool
+         *
+         * @param strings The utf8 constants
+         * @param classes The class constants
+         * @param idx Index of the class constant
+         *
+         * @return The class name
+         *
+         * @throws IOException On a bad class file
+         */
+        private static String getClassName(String[] strings, int[] classes,
+                                           int idx)
+                throws IOException {
+            if ((idx <= 0) || (idx >= classes.length)
+                    || (strings[classes[idx]] == null)) {
+                throw new IOException("Bad class constant:" + idx);
+            }
+            return strings[classes[idx]].replace('/', '.');
+        }
+    }
+}
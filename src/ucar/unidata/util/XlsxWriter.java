@@ -0,0 +1,383 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.util;
+
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+
+/**
+ * Writes an Excel xlsx spreadsheet a row at a time. Unlike a POI workbook
+ * nothing is kept in memory: each sheet is written as its own zip entry
+ * as the rows come in, so the sheets have to be written one after the
+ * other.
+ * <pre>
+ * XlsxWriter writer = new XlsxWriter(outputStream);
+ * writer.startSheet("Sheet1");
+ * writer.startRow();
+ * writer.addCell("Latitude");
+ * writer.addCell(40.0);
+ * writer.endRow();
+ * writer.close();
+ * </pre>
+ */
+public class XlsxWriter implements Closeable {
+
+    /** Max number of rows in an xlsx sheet */
+    public static final int MAX_ROWS = 1048576;
+
+    /** Max number of columns in an xlsx sheet */
+    public static final int MAX_COLUMNS = 16384;
+
+    /** The xml header */
+    private static final String XML_HEADER =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+
+    /** spreadsheetml namespace */
+    private static final String NS_MAIN =
+        "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+
+    /** relationships namespace */
+    private static final String NS_RELS =
+        "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+    /** package relationships namespace */
+    private static final String NS_PKG_RELS =
+        "http://schemas.openxmlformats.org/package/2006/relationships";
+
+    /** The zip file */
+    private ZipOutputStream zos;
+
+    /** Writes the current entry */
+    private Writer writer;
+
+    /** Sheet names */
+    private List<String> sheetNames = new ArrayList<String>();
+
+    /** Are we in a sheet */
+    private boolean inSheet = false;
+
+    /** Are we in a row */
+    private boolean inRow = false;
+
+    /** Current row number, 1 based */
+    private int rowNum = 0;
+
+    /** Current column, 0 based */
+    private int colNum = 0;
+
+    /** Reused to build the cells */
+    private StringBuilder sb = new StringBuilder();
+
+    /**
+     * Create the writer
+     *
+     * @param os Where to write to. This is closed by {@link #close()}.
+     */
+    public XlsxWriter(OutputStream os) {
+        zos    = new ZipOutputStream(os);
+        writer = new BufferedWriter(new OutputStreamWriter(zos,
+                StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    /**
+     * Start a new sheet. This ends the current sheet.
+     *
+     * @param name Sheet name. May be null.
+     *
+     * @throws IOException On badness
+     */
+    public void startSheet(String name) throws IOException {
+        endSheet();
+        if (name == null) {
+            name = "Sheet" + (sheetNames.size() + 1);
+        }
+        sheetNames.add(name);
+        zos.putNextEntry(new ZipEntry("xl/worksheets/sheet"
+                                      + sheetNames.size() + ".xml"));
+        writer.write(XML_HEADER);
+        writer.write("<worksheet xmlns=\"" + NS_MAIN + "\"><sheetData>\n");
+        inSheet = true;
+        rowNum  = 0;
+    }
+
+    /**
+     * End the current sheet, if any
+     *
+     * @throws IOException On badness
+     */
+    public void endSheet() throws IOException {
+        if ( !inSheet) {
+            return;
+        }
+        endRow();
+        writer.write("</sheetData></worksheet>\n");
+        writer.flush();
+        zos.closeEntry();
+        inSheet = false;
+    }
+
+    /**
+     * Get the number of rows written to the current sheet
+     *
+     * @return number of rows
+     */
+    public int getRowCount() {
+        return rowNum;
+    }
+
+    /**
+     * Start a new row. This ends the current row.
+     *
+     * @throws IOException On badness
+     */
+    public void startRow() throws IOException {
+        if ( !inSheet) {
+            startSheet(null);
+        }
+        endRow();
+        if (rowNum >= MAX_ROWS) {
+            throw new IllegalStateException("Too many rows in sheet");
+        }
+        rowNum++;
+        colNum = 0;
+        writer.write("<row r=\"" + rowNum + "\">");
+        inRow = true;
+    }
+
+    /**
+     * End the current row, if any
+     *
+     * @throws IOException On badness
+     */
+    public void endRow() throws IOException {
+        if ( !inRow) {
+            return;
+        }
+        writer.write("</row>\n");
+        inRow = false;
+    }
+
+    /**
+     * Add a number cell to the current row. NaN values are written as
+     * an empty cell.
+     *
+     * @param value the value
+     *
+     * @throws IOException On badness
+     */
+    public void addCell(double value) throws IOException {
+        String ref = nextCellRef();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return;
+        }
+        sb.setLength(0);
+        sb.append("<c r=\"").append(ref).append("\"><v>");
+        if ((value == Math.rint(value)) && (Math.abs(value) < 1.0e15)) {
+            sb.append((long) value);
+        } else {
+            sb.append(value);
+        }
+        sb.append("</v></c>");
+        writer.append(sb);
+    }
+
+    /**
+     * Add a number cell to the current row. This writes the float the
+     * way Float.toString does so the values are not widened.
+     *
+     * @param value the value
+     *
+     * @throws IOException On badness
+     */
+    public void addCell(float value) throws IOException {
+        String ref = nextCellRef();
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            return;
+        }
+        sb.setLength(0);
+        sb.append("<c r=\"").append(ref).append("\"><v>").append(value)
+            .append("</v></c>");
+        writer.append(sb);
+    }
+
+    /**
+     * Add a string cell to the current row
+     *
+     * @param value the value. null is written as an empty cell.
+     *
+     * @throws IOException On badness
+     */
+    public void addCell(String value) throws IOException {
+        String ref = nextCellRef();
+        if (value == null) {
+            return;
+        }
+        sb.setLength(0);
+        sb.append("<c r=\"").append(ref).append(
+            "\" t=\"inlineStr\"><is><t>");
+        escape(value, sb);
+        sb.append("</t></is></c>");
+        writer.append(sb);
+    }
+
+    /**
+     * Get the reference of the next cell and move to the next column
+     *
+     * @return cell reference, e.g., B12
+     *
+     * @throws IOException On badness
+     */
+    private String nextCellRef() throws IOException {
+        if ( !inRow) {
+            startRow();
+        }
+        if (colNum >= MAX_COLUMNS) {
+            throw new IllegalStateException("Too many columns in row");
+        }
+        return getColumnName(colNum++) + rowNum;
+    }
+
+    /**
+     * Get the spreadsheet name of the column, e.g., 0-&gt;A, 26-&gt;AA
+     *
+     * @param col 0 based column
+     *
+     * @return column name
+     */
+    public static String getColumnName(int col) {
+        StringBuilder name = new StringBuilder();
+        col++;
+        while (col > 0) {
+            int rem = (col - 1) % 26;
+            name.insert(0, (char) ('A' + rem));
+            col = (col - 1) / 26;
+        }
+        return name.toString();
+    }
+
+    /**
+     * Escape the xml special characters
+     *
+     * @param s string
+     * @param sb Append to this
+     */
+    private static void escape(String s, StringBuilder sb) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '<') {
+                sb.append("&lt;");
+            } else if (c == '>') {
+                sb.append("&gt;");
+            } else if (c == '&') {
+                sb.append("&amp;");
+            } else if (c == '"') {
+                sb.append("&quot;");
+            } else if ((c < 0x20) && (c != '\t') && (c != '\n')
+                       && (c != '\r')) {
+                //Not allowed in xml
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+
+    /**
+     * Write a small zip entry
+     *
+     * @param name entry name
+     * @param contents contents
+     *
+     * @throws IOException On badness
+     */
+    private void writeEntry(String name, String contents)
+            throws IOException {
+        zos.putNextEntry(new ZipEntry(name));
+        writer.write(contents);
+        writer.flush();
+        zos.closeEntry();
+    }
+
+    /**
+     * End the current sheet, write the workbook and close the file
+     *
+     * @throws IOException On badness
+     */
+    public void close() throws IOException {
+        if (sheetNames.size() == 0) {
+            startSheet(null);
+        }
+        endSheet();
+        StringBuilder types = new StringBuilder(XML_HEADER);
+        types.append(
+            "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">");
+        types.append(
+            "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>");
+        types.append(
+            "<Default Extension=\"xml\" ContentType=\"application/xml\"/>");
+        types.append(
+            "<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>");
+        StringBuilder sheets = new StringBuilder();
+        StringBuilder rels   = new StringBuilder();
+        for (int i = 1; i <= sheetNames.size(); i++) {
+            types.append("<Override PartName=\"/xl/worksheets/sheet" + i
+                         + ".xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+            sheets.append("<sheet name=\"");
+            //Sheet names are limited to 31 characters
+            String name = sheetNames.get(i - 1);
+            escape((name.length() > 31)
+                   ? name.substring(0, 31)
+                   : name, sheets);
+            sheets.append("\" sheetId=\"" + i + "\" r:id=\"rId" + i
+                          + "\"/>");
+            rels.append("<Relationship Id=\"rId" + i + "\" Type=\"" + NS_RELS
+                        + "/worksheet\" Target=\"worksheets/sheet" + i
+                        + ".xml\"/>");
+        }
+        types.append("</Types>");
+        writeEntry("[Content_Types].xml", types.toString());
+        writeEntry("_rels/.rels",
+                   XML_HEADER + "<Relationships xmlns=\"" + NS_PKG_RELS
+                   + "\"><Relationship Id=\"rId1\" Type=\"" + NS_RELS
+                   + "/officeDocument\" Target=\"xl/workbook.xml\"/>"
+                   + "</Relationships>");
+        writeEntry("xl/workbook.xml",
+                   XML_HEADER + "<workbook xmlns=\"" + NS_MAIN
+                   + "\" xmlns:r=\"" + NS_RELS + "\"><sheets>" + sheets
+                   + "</sheets></workbook>");
+        writeEntry("xl/_rels/workbook.xml.rels",
+                   XML_HEADER + "<Relationships xmlns=\"" + NS_PKG_RELS
+                   + "\">" + rels + "</Relationships>");
+        writer.close();
+    }
+}
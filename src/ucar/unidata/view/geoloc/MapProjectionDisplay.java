@@ -2261,6 +2261,45 @@ public abstract class MapProjectionDisplay extends NavigatedDisplay {
         return xyz;
     }
 
+    /**
+     * Returns the spatial (XY) coordinates of the EarthLocations at the
+     * given altitude, transformed in one call to the coordinate system
+     *
+     * @param els    earth locations to transform
+     * @param altitude altitude value
+     *
+     * @return  the x and y of each location
+     *
+     * @throws RemoteException    Java RMI problem
+     * @throws VisADException     VisAD problem
+     */
+    public double[][] getSpatialCoordinates(EarthLocation[] els,
+                                            double altitude)
+            throws VisADException, RemoteException {
+        double[] lats = new double[els.length];
+        double[] lons = new double[els.length];
+        for (int i = 0; i < els.length; i++) {
+            lats[i] = els[i].getLatitude().getValue(CommonUnit.degree);
+            lons[i] = els[i].getLongitude().getValue(CommonUnit.degree);
+        }
+        float[] altValues = new float[els.length];
+        if ((altitudeMap != null) && !(Double.isNaN(altitude))) {
+            Arrays.fill(altValues, altitudeMap.scaleValues(new double[] {
+                altitude })[0]);
+        }
+
+        float[][] temp = coordinateSystem.toReference(new float[][] {
+            latitudeMap.scaleValues(lats),
+            longitudeMap.scaleValues(lons), altValues
+        });
+        double[][] xy = new double[2][els.length];
+        for (int i = 0; i < els.length; i++) {
+            xy[0][i] = temp[0][i];
+            xy[1][i] = temp[1][i];
+        }
+        return xy;
+    }
+
 
     /**
      * Method called to reset all the map parameters after a change.
@@ -997,6 +997,33 @@ public abstract class NavigatedDisplay extends DisplayMaster {
             double[] xyz, double altitude)
      throws VisADException, RemoteException;
 
+    /**
+     * Returns the spatial (XY) coordinates of the EarthLocations at the
+     * given altitude. Subclasses can override this to transform all of
+     * the locations at once.
+     *
+     * @param els   earth locations to translate
+     * @param altitude the altitude
+     *
+     * @return  the x and y of each location
+     *
+     * @throws  RemoteException   If there was a problem making this
+     *                            change in a remote collaborative display.
+     * @throws  VisADException    Couldn't create the necessary VisAD object
+     */
+    public double[][] getSpatialCoordinates(EarthLocation[] els,
+                                            double altitude)
+            throws VisADException, RemoteException {
+        double[][] xy  = new double[2][els.length];
+        double[]   xyz = new double[3];
+        for (int i = 0; i < els.length; i++) {
+            getSpatialCoordinates(els[i], xyz, altitude);
+            xy[0][i] = xyz[0];
+            xy[1][i] = xyz[1];
+        }
+        return xy;
+    }
+
     /**
      * Return the real altitude from a ZAxis (or displayAltitudeType) value
      *
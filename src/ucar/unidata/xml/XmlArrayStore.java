@@ -0,0 +1,54 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.xml;
+
+
+/**
+ * An interface for an object that holds the contents of large primitive
+ * arrays outside of the xml. When the {@link XmlEncoder} has an array
+ * store it writes large primitive arrays to the store and only
+ * references them by name in the xml.
+ */
+public interface XmlArrayStore {
+
+    /**
+     *  Write the array to the store
+     *
+     *  @param primitiveArray The array of primitives.
+     *  @return The name of the entry the array was written to
+     *
+     *  @throws Exception On badness
+     */
+    public String writeArray(Object primitiveArray) throws Exception;
+
+    /**
+     *  Read the array from the store
+     *
+     *  @param entry The entry name
+     *  @param componentType The type of the array elements
+     *  @param length The length of the array
+     *  @return The array
+     *
+     *  @throws Exception On badness
+     */
+    public Object readArray(String entry, Class componentType, int length)
+     throws Exception;
+}
@@ -319,6 +319,18 @@ public class XmlEncoder extends XmlUtil {
      */
     public static final String ATTR_LENGTH = "length";
 
+    /**
+     *  The name for the entry attribute. This is the name of the
+     *  {@link XmlArrayStore} entry that holds a primitive array.
+     */
+    public static final String ATTR_ENTRY = "entry";
+
+    /**
+     *  Primitive arrays at least this long are written to the array store
+     *  if we have one.
+     */
+    public static final int ARRAYSTORE_MINLENGTH = 1000;
+
 
     /**
      *  The name for the value attribute.
@@ -332,6 +344,12 @@ public class XmlEncoder extends XmlUtil {
      */
     protected Document document;
 
+    /**
+     *  If non-null then large primitive arrays are written to and read
+     *  from this store.
+     */
+    private XmlArrayStore arrayStore;
+
     /**
      *  List of classes that we have corresponding {@link XmlDelegate}s for.
      */
@@ -881,6 +899,25 @@ public class XmlEncoder extends XmlUtil {
         this.document = document;
     }
 
+    /**
+     *  Set the store that large primitive arrays are written to and read
+     *  from. If null (the default) they are inlined in the xml.
+     *
+     *  @param arrayStore The array store
+     */
+    public void setArrayStore(XmlArrayStore arrayStore) {
+        this.arrayStore = arrayStore;
+    }
+
+    /**
+     *  Get the array store
+     *
+     *  @return The array store. May be null.
+     */
+    public XmlArrayStore getArrayStore() {
+        return arrayStore;
+    }
+
 
     /**
      *  Utility method to return a unique (during a particular encoding) String id.
@@ -1375,9 +1412,66 @@ public class XmlEncoder extends XmlUtil {
         Class   theClass     = primitiveArray.getClass();
         int     length       = Array.getLength(primitiveArray);
         Element arrayElement = newElement(TAG_PARRAY);
-        String  contents;
         arrayElement.setAttribute(ATTR_CLASS,
                                   getClassName(theClass.getComponentType()));
+        if ((arrayStore != null) && (length >= ARRAYSTORE_MINLENGTH)) {
+            try {
+                String entry = arrayStore.writeArray(primitiveArray);
+                arrayElement.setAttribute(ATTR_LENGTH, "" + length);
+                arrayElement.setAttribute(ATTR_ENTRY, entry);
+                return arrayElement;
+            } catch (Exception exc) {
+                //Fall through and inline the array
+                logException("Error writing array to the array store", exc);
+            }
+        }
+        setArrayContents(arrayElement, primitiveArray);
+        return arrayElement;
+    }
+
+    /**
+     *  Inline the contents of the primitive arrays that are held in the
+     *  array store, e.g., to pass the xml on to something that
+     *  does not have the store.
+     *
+     *  @param root The root of the xml
+     *
+     *  @throws Exception On badness
+     */
+    public void inlineArrays(Element root) throws Exception {
+        List arrayElements = XmlUtil.findDescendants(root, TAG_PARRAY);
+        for (int i = 0; i < arrayElements.size(); i++) {
+            Element arrayElement = (Element) arrayElements.get(i);
+            String  entry        = arrayElement.getAttribute(ATTR_ENTRY);
+            if ((entry == null) || (entry.length() == 0)) {
+                continue;
+            }
+            if (arrayStore == null) {
+                throw new IllegalStateException(
+                    "No array store to read array entry:" + entry);
+            }
+            Class  arrayType      =
+                getClass(arrayElement.getAttribute(ATTR_CLASS));
+            int    length         =
+                Integer.parseInt(arrayElement.getAttribute(ATTR_LENGTH));
+            Object primitiveArray = arrayStore.readArray(entry, arrayType,
+                                        length);
+            arrayElement.removeAttribute(ATTR_ENTRY);
+            arrayElement.removeAttribute(ATTR_LENGTH);
+            setArrayContents(arrayElement, primitiveArray);
+        }
+    }
+
+    /**
+     *  Add the contents of the primitive array to its element
+     *
+     *  @param arrayElement The element
+     *  @param primitiveArray The array of primitives.
+     */
+    private void setArrayContents(Element arrayElement,
+                                  Object primitiveArray) {
+        int    length = Array.getLength(primitiveArray);
+        String contents;
         if (length < 20) {
             StringBuffer buff = new StringBuffer();
             arrayElement.setAttribute(ATTR_LENGTH, "" + length);
@@ -1398,8 +1492,8 @@ public class XmlEncoder extends XmlUtil {
                 contents = null;
             }
         }
-        arrayElement.appendChild(getDocument().createTextNode(contents));
-        return arrayElement;
+        arrayElement.appendChild(
+            arrayElement.getOwnerDocument().createTextNode(contents));
     }
 
 
@@ -1856,6 +1950,15 @@ public class XmlEncoder extends XmlUtil {
             Class  arrayType = getClass(element.getAttribute(ATTR_CLASS));
             String lengthStr = element.getAttribute(ATTR_LENGTH);
             Object array;
+            String entry     = element.getAttribute(ATTR_ENTRY);
+            if ((entry != null) && (entry.length() > 0)) {
+                if (arrayStore == null) {
+                    throw new IllegalStateException(
+                        "No array store to read array entry:" + entry);
+                }
+                return new ObjectClass(arrayStore.readArray(entry,
+                        arrayType, Integer.parseInt(lengthStr)));
+            }
             String value = getTextFromChild(element);
 
             if ((lengthStr == null) || (lengthStr.length() == 0)) {
@@ -0,0 +1,240 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.xml;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+
+/**
+ * An {@link XmlArrayStore} that writes each array as an entry of raw,
+ * little endian values in a zip file (e.g., a zidv bundle). When the
+ * zip file is opened the entries are unpacked into a directory and
+ * this store reads them back from the files. The files are read rather
+ * than memory mapped so the directory can be deleted right away.
+ * <p>
+ * This avoids the Java serialization and Base64 encoding of the array,
+ * and keeping the whole encoded array in the xml document.
+ */
+public class ZipArrayStore implements XmlArrayStore {
+
+    /** Prefix for the entry names */
+    public static final String ENTRY_PREFIX = "xmlarray_";
+
+    /** Suffix for the entry names */
+    public static final String ENTRY_SUFFIX = ".bin";
+
+    /** Size of the buffer we write through */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The zip file to write to */
+    private ZipOutputStream zos;
+
+    /** The directory to read from */
+    private File dir;
+
+    /** Counts the entries we have written */
+    private int entryCnt = 0;
+
+    /**
+     * Create a store that writes to the zip file
+     *
+     * @param zos The zip file
+     */
+    public ZipArrayStore(ZipOutputStream zos) {
+        this.zos = zos;
+    }
+
+    /**
+     * Create a store that reads from the directory the zip file was
+     * unpacked into
+     *
+     * @param dir The directory
+     */
+    public ZipArrayStore(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     *  Write the array as a new zip entry
+     *
+     *  @param primitiveArray The array of primitives.
+     *  @return The entry name
+     *
+     *  @throws Exception On badness
+     */
+    public String writeArray(Object primitiveArray) throws Exception {
+        if (zos == null) {
+            throw new IllegalStateException("Array store is not writable");
+        }
+        String entry = ENTRY_PREFIX + (entryCnt++) + ENTRY_SUFFIX;
+        zos.putNextEntry(new ZipEntry(entry));
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        Class type   = primitiveArray.getClass().getComponentType();
+        int   length = java.lang.reflect.Array.getLength(primitiveArray);
+        int   offset = 0;
+        //Fill the buffer a chunk at a time using the typed views
+        while (offset < length) {
+            int n;
+            if (type == Float.TYPE) {
+                n = Math.min(length - offset, buffer.remaining() / 4);
+                buffer.asFloatBuffer().put((float[]) primitiveArray, offset,
+                                           n);
+                buffer.position(buffer.position() + 4 * n);
+            } else if (type == Double.TYPE) {
+                n = Math.min(length - offset, buffer.remaining() / 8);
+                buffer.asDoubleBuffer().put((double[]) primitiveArray,
+                                            offset, n);
+                buffer.position(buffer.position() + 8 * n);
+            } else if (type == Integer.TYPE) {
+                n = Math.min(length - offset, buffer.remaining() / 4);
+                buffer.asIntBuffer().put((int[]) primitiveArray, offset, n);
+                buffer.position(buffer.position() + 4 * n);
+            } else if (type == Long.TYPE) {
+                n = Math.min(length - offset, buffer.remaining() / 8);
+                buffer.asLongBuffer().put((long[]) primitiveArray, offset,
+                                          n);
+                buffer.position(buffer.position() + 8 * n);
+            } else if (type == Short.TYPE) {
+                n = Math.min(length - offset, buffer.remaining() / 2);
+                buffer.asShortBuffer().put((short[]) primitiveArray, offset,
+                                           n);
+                buffer.position(buffer.position() + 2 * n);
+            } else if (type == Character.TYPE) {
+                n = Math.min(length - offset, buffer.remaining() / 2);
+                buffer.asCharBuffer().put((char[]) primitiveArray, offset,
+                                          n);
+                buffer.position(buffer.position() + 2 * n);
+            } else if (type == Byte.TYPE) {
+                n = Math.min(length - offset, buffer.remaining());
+                buffer.put((byte[]) primitiveArray, offset, n);
+            } else if (type == Boolean.TYPE) {
+                n = Math.min(length - offset, buffer.remaining());
+                boolean[] values = (boolean[]) primitiveArray;
+                for (int i = 0; i < n; i++) {
+                    buffer.put(values[offset + i]
+                               ? (byte) 1
+                               : (byte) 0);
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown array type:"
+                        + type);
+            }
+            offset += n;
+            flush(buffer);
+        }
+        zos.closeEntry();
+        return entry;
+    }
+
+    /**
+     * Write out what is in the buffer and clear it
+     *
+     * @param buffer The buffer
+     *
+     * @throws IOException On badness
+     */
+    private void flush(ByteBuffer buffer) throws IOException {
+        zos.write(buffer.array(), 0, buffer.position());
+        buffer.clear();
+    }
+
+    /**
+     *  Read the array from the unpacked entry
+     *
+     *  @param entry The entry name
+     *  @param type The type of the array elements
+     *  @param length The length of the array
+     *  @return The array
+     *
+     *  @throws Exception On badness
+     */
+    public Object readArray(String entry, Class type, int length)
+            throws Exception {
+        if (dir == null) {
+            throw new IllegalStateException("Array store is not readable");
+        }
+        File f = new File(dir, entry);
+        if ( !f.exists()) {
+            throw new IOException("Could not find array file:" + f);
+        }
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer  buffer  = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Truncated array file:" + f);
+                }
+            }
+            buffer.flip();
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (type == Float.TYPE) {
+                float[] array = new float[length];
+                buffer.asFloatBuffer().get(array);
+                return array;
+            } else if (type == Double.TYPE) {
+                double[] array = new double[length];
+                buffer.asDoubleBuffer().get(array);
+                return array;
+            } else if (type == Integer.TYPE) {
+                int[] array = new int[length];
+                buffer.asIntBuffer().get(array);
+                return array;
+            } else if (type == Long.TYPE) {
+                long[] array = new long[length];
+                buffer.asLongBuffer().get(array);
+                return array;
+            } else if (type == Short.TYPE) {
+                short[] array = new short[length];
+                buffer.asShortBuffer().get(array);
+                return array;
+            } else if (type == Character.TYPE) {
+                char[] array = new char[length];
+                buffer.asCharBuffer().get(array);
+                return array;
+            } else if (type == Byte.TYPE) {
+                byte[] array = new byte[length];
+                buffer.get(array);
+                return array;
+            } else if (type == Boolean.TYPE) {
+                boolean[] array = new boolean[length];
+                for (int i = 0; i < length; i++) {
+                    array[i] = buffer.get() != 0;
+                }
+                return array;
+            }
+            throw new IllegalArgumentException("Unknown array type:" + type);
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -358,6 +358,10 @@ public class ShapefileAdapter {
                 sets = doReadXml(name, iStream);
             } else if (name.endsWith(".xgrf")) {
                 sets = doReadXml(name, iStream);
+            } else if ((iStream == null) && new File(name).isFile()) {
+                //Map local files rather than reading them all in
+                sets = doRead(new EsriShapefile(new File(name), null,
+                        coarseness), bBox);
             } else {
                 try {
                     if (iStream == null) {
@@ -611,7 +615,12 @@ public class ShapefileAdapter {
 
 
         this.shapefile = shapefile;
-        List               features = shapefile.getFeatures();
+        //If the shapes are in lat/lon then we can just decode the ones
+        //in the box
+        List               features = ((bbox != null)
+                                       && (shapefile.getProjFile() == null))
+                                      ? shapefile.getFeatures(bbox)
+                                      : shapefile.getFeatures();
         java.util.Iterator si       = features.iterator();
         dbFile = shapefile.getDbFile();
         List s0       = new ArrayList();
@@ -35,6 +35,8 @@ import ucar.unidata.data.imagery.AddeImageDescriptor;
 
 
 import ucar.unidata.data.imagery.AddeImageInfo;
+import ucar.unidata.data.imagery.ImageFetcher;
+import ucar.unidata.util.CacheManager;
 import ucar.unidata.util.IOUtil;
 
 
@@ -65,6 +67,8 @@ import java.io.*;
 
 import java.rmi.RemoteException;
 
+import java.util.concurrent.Callable;
+
 
 
 /**
@@ -75,6 +79,16 @@ import java.rmi.RemoteException;
  */
 public class AreaImageFlatField extends CachedFlatField implements SingleBandedImage {
 
+    static {
+        CacheManager.addSizeEstimator(new CacheManager.SizeEstimator() {
+            public long estimateSize(Object value) {
+                if (value instanceof ImageData) {
+                    return ((ImageData) value).getSize();
+                }
+                return -1;
+            }
+        });
+    }
 
     /** _more_ */
     private Object READMUTEX = new Object();
@@ -83,6 +97,12 @@ public class AreaImageFlatField extends CachedFlatField implements SingleBandedI
     /** _more_ */
     private String readLabel = "";
 
+    /**
+     * The owner of the prefetched image in the {@link ImageFetcher} cache.
+     * Null if the image wasn't prefetched.
+     */
+    private Object fetchOwner;
+
     /** _more_ */
     private Set domainSet;
 
@@ -122,8 +142,9 @@ public class AreaImageFlatField extends CachedFlatField implements SingleBandedI
             throws VisADException {
         super(that, copy, type, domainSet, rangeCoordSys, rangeCoordSysArray,
               rangeSets, units);
-        this.aid       = that.aid;
-        this.readLabel = readLabel;
+        this.aid        = that.aid;
+        this.readLabel  = readLabel;
+        this.fetchOwner = that.fetchOwner;
         if (that.haveData()) {
             setDomain(that.getDomainSet());
         }
@@ -600,20 +621,25 @@ public class AreaImageFlatField extends CachedFlatField implements SingleBandedI
         try {
             msg("readDataNewWay");
             //        Misc.printStack(mycnt +"  readData time: " + getStartTime(),15);
-            String url = (aid.getImageInfo() != null)
-                         ? aid.getImageInfo().makeAddeUrl()
-                         : aid.getSource();
-            AreaAdapter aa = new AreaAdapter(url, false);
-            visad.meteorology.SingleBandedImageImpl ff =
-                (visad.meteorology.SingleBandedImageImpl) aa.getImage();
-            float[][]        samples       = ff.getImageData();
-            FunctionType     type          = (FunctionType) ff.getType();
-            Set              domainSet     = ff.getDomainSet();
-            CoordinateSystem rangeCoordSys = ff.getRangeCoordinateSystem()[0];
-            Set[]            rangeSets     = ff.getRangeSets();
-            Unit[]           units         = ff.getRangeUnits()[0];
-            setDomain(domainSet);
-            return samples;
+            final String url    = getReadUrl();
+            Callable     loader = new Callable() {
+                public Object call() throws Exception {
+                    return readImageData(url);
+                }
+            };
+            ImageFetcher fetcher = ImageFetcher.getFetcher();
+            //Take the prefetched image out of the cache so only this field
+            //holds its samples
+            ImageData data = (ImageData) ((fetchOwner != null)
+                                          ? fetcher.take(fetchOwner, url,
+                                              loader)
+                                          : fetcher.fetch(url, loader));
+            setDomain(data.domainSet);
+            //If another field read the same image then it has the samples
+            //so give this field its own copy
+            return data.claim()
+                   ? data.samples
+                   : data.copySamples();
         } catch (Exception exc) {
             readDataFailed = true;
             String message = exc.toString();
@@ -637,6 +663,56 @@ public class AreaImageFlatField extends CachedFlatField implements SingleBandedI
     }
 
 
+    /**
+     * Get the url the data is read from. For ADDE this holds the source,
+     * band, time, magnification and bounding box of the image.
+     *
+     * @return the url
+     */
+    private String getReadUrl() {
+        return (aid.getImageInfo() != null)
+               ? aid.getImageInfo().makeAddeUrl()
+               : aid.getSource();
+    }
+
+    /**
+     * Read the image
+     *
+     * @param url the url
+     *
+     * @return the decoded samples and domain
+     *
+     * @throws Exception On badness
+     */
+    private static ImageData readImageData(String url) throws Exception {
+        AreaAdapter aa = new AreaAdapter(url, false);
+        visad.meteorology.SingleBandedImageImpl ff =
+            (visad.meteorology.SingleBandedImageImpl) aa.getImage();
+        return new ImageData(ff.getImageData(), ff.getDomainSet());
+    }
+
+    /**
+     * Read the data of this field in the background so it is in the
+     * {@link ImageFetcher} cache when the field is read. This does
+     * nothing if the field has its data.
+     *
+     * @param owner the owner of the cached image, e.g., the data source.
+     *              The owner should flush the image from the fetcher when
+     *              it reloads its data.
+     */
+    public void prefetch(Object owner) {
+        if ((aid == null) || haveData()) {
+            return;
+        }
+        fetchOwner = owner;
+        final String url = getReadUrl();
+        ImageFetcher.getFetcher().prefetch(owner, url, new Callable() {
+            public Object call() throws Exception {
+                return readImageData(url);
+            }
+        });
+    }
+
     /**
      * _more_
      *
@@ -792,6 +868,74 @@ public class AreaImageFlatField extends CachedFlatField implements SingleBandedI
 
 
 
+    /**
+     * The decoded samples and domain of an image, as held in the
+     * {@link ImageFetcher} cache
+     */
+    private static class ImageData {
+
+        /** the samples */
+        private float[][] samples;
+
+        /** the domain */
+        private Set domainSet;
+
+        /** Has a field taken the samples */
+        private boolean claimed = false;
+
+        /**
+         * ctor
+         *
+         * @param samples the samples
+         * @param domainSet the domain
+         */
+        public ImageData(float[][] samples, Set domainSet) {
+            this.samples   = samples;
+            this.domainSet = domainSet;
+        }
+
+        /**
+         * Claim the samples for a field. Only the first field to read the
+         * image gets them. The others have to copy them.
+         *
+         * @return true if the caller can use the samples
+         */
+        public synchronized boolean claim() {
+            if (claimed) {
+                return false;
+            }
+            claimed = true;
+            return true;
+        }
+
+        /**
+         * Copy the samples
+         *
+         * @return the copy
+         */
+        public float[][] copySamples() {
+            float[][] copy = new float[samples.length][];
+            for (int i = 0; i < samples.length; i++) {
+                copy[i] = (float[]) samples[i].clone();
+            }
+            return copy;
+        }
+
+        /**
+         * Get the estimated size
+         *
+         * @return the size in bytes
+         */
+        public long getSize() {
+            long size = 0;
+            for (int i = 0; i < samples.length; i++) {
+                size += 4L * samples[i].length;
+            }
+            return size;
+        }
+    }
+
+
     /**
      * Class MyAREACoordinateSystem _more_
      *
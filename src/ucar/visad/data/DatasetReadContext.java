@@ -0,0 +1,119 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.visad.data;
+
+
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+
+
+/**
+ * The read state shared by the lazy fields that read from one dataset
+ * (e.g., a NetcdfDataset). Reads that go through the dataset's shared
+ * file handle are serialized on the dataset's lock, so fields from
+ * different datasets read in parallel.
+ * <p>
+ * This also caches objects derived from the dataset (e.g., the list of
+ * run times made from a time axis) so they are made once rather than on
+ * every slice read. The contexts and the cached objects are weakly keyed
+ * so they go away with their dataset. A cached value must not hold a
+ * reference to its owner.
+ */
+public class DatasetReadContext {
+
+    /** The contexts, keyed by dataset */
+    private static final Map<Object, DatasetReadContext> contexts =
+        new WeakHashMap<Object, DatasetReadContext>();
+
+    /** The lock to read the dataset under */
+    private final Object lock = new Object();
+
+    /** Maps an owner (e.g., an axis) to a Hashtable of name to object */
+    private final Map<Object, Hashtable> cache = new WeakHashMap<Object,
+                                                     Hashtable>();
+
+    /**
+     * Use getContext
+     */
+    private DatasetReadContext() {}
+
+    /**
+     * Get the context for the given dataset, creating it if needed
+     *
+     * @param dataset the dataset
+     *
+     * @return the context
+     */
+    public static DatasetReadContext getContext(Object dataset) {
+        synchronized (contexts) {
+            DatasetReadContext context = contexts.get(dataset);
+            if (context == null) {
+                context = new DatasetReadContext();
+                contexts.put(dataset, context);
+            }
+            return context;
+        }
+    }
+
+    /**
+     * Get the lock to synchronize reads through the dataset's shared
+     * handle on
+     *
+     * @return the lock
+     */
+    public Object getLock() {
+        return lock;
+    }
+
+    /**
+     * Get the object cached for the owner and name, making it with the
+     * maker if it is not cached. The lookups are not made under the read
+     * lock so they don't wait on slice reads.
+     *
+     * @param owner what the object is derived from, e.g., an axis
+     * @param name the name of the object
+     * @param maker makes the object
+     *
+     * @return the object
+     *
+     * @throws Exception On badness
+     */
+    public Object getCachedObject(Object owner, String name, Callable maker)
+            throws Exception {
+        synchronized (cache) {
+            Hashtable values = cache.get(owner);
+            if (values == null) {
+                values = new Hashtable();
+                cache.put(owner, values);
+            }
+            Object value = values.get(name);
+            if (value == null) {
+                value = maker.call();
+                if (value != null) {
+                    values.put(name, value);
+                }
+            }
+            return value;
+        }
+    }
+}
@@ -49,7 +49,9 @@ import visad.util.DataUtility;
 import java.io.*;
 
 import java.rmi.RemoteException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 
 /**
@@ -78,6 +80,15 @@ public class GeoGridFlatField extends CachedFlatField {
     /** a read lock  */
     transient private Object readLock;
 
+    /** the read state of the dataset the geogrid is from */
+    transient private DatasetReadContext readContext;
+
+    /** If non-null this is used to read the data instead of the geogrid */
+    transient private SliceReader sliceReader;
+
+    /** Is this a copy of another field */
+    private boolean isCopy = false;
+
     /** the run time  */
     CalendarDateTime runTime;
 
@@ -147,11 +158,14 @@ public class GeoGridFlatField extends CachedFlatField {
             throws VisADException {
         super(that, copy, type, domainSet, rangeCoordSys, rangeCoordSysArray,
               rangeSets, units);
-        this.readLock  = that.readLock;
-        this.geoGrid   = that.geoGrid;
-        this.domainSet = that.domainSet;
-        this.timeIndex = that.timeIndex;
-        this.ensIndex = that.ensIndex;
+        this.readLock    = that.readLock;
+        this.readContext = that.readContext;
+        this.geoGrid     = that.geoGrid;
+        this.sliceReader = that.sliceReader;
+        this.domainSet   = that.domainSet;
+        this.timeIndex   = that.timeIndex;
+        this.ensIndex    = that.ensIndex;
+        this.isCopy      = true;
     }
 
     /**
@@ -207,10 +221,72 @@ public class GeoGridFlatField extends CachedFlatField {
     }
 
 
-    /** a mutex */
+    /**
+     * a mutex
+     * @deprecated Reads are serialized per dataset. See
+     * {@link #setReadContext(DatasetReadContext)}
+     */
     public static Object ALLMUTEX = new Object();
 
 
+    /**
+     * Reads a slice of the grid on behalf of this field. This allows the
+     * data to be read through a pool of file handles, outside of the read
+     * lock.
+     */
+    public interface SliceReader {
+
+        /**
+         * Read the data for the time and ensemble member
+         *
+         * @param ensIndex the ensemble index
+         * @param timeIndex the time index
+         *
+         * @return the data
+         *
+         * @throws Exception on badness
+         */
+        public Array readDataSlice(int ensIndex, int timeIndex)
+         throws Exception;
+    }
+
+
+    /**
+     * Set the reader used to read the data. If null then the data is read
+     * from the GeoGrid while holding the read lock.
+     *
+     * @param sliceReader the reader
+     */
+    public void setSliceReader(SliceReader sliceReader) {
+        this.sliceReader = sliceReader;
+    }
+
+
+    /**
+     * Set the read state of the dataset the geogrid is from. If there is
+     * no read lock the dataset's lock is used.
+     *
+     * @param readContext the context
+     */
+    public void setReadContext(DatasetReadContext readContext) {
+        this.readContext = readContext;
+    }
+
+
+    /**
+     * Get the read state of the dataset the geogrid is from. If it was not
+     * set we use one for the geogrid, which is shared by its copies.
+     *
+     * @return the context
+     */
+    private DatasetReadContext getReadContext() {
+        if (readContext == null) {
+            readContext = DatasetReadContext.getContext(geoGrid);
+        }
+        return readContext;
+    }
+
+
     /**
      * Get the read lock
      *
@@ -218,11 +294,57 @@ public class GeoGridFlatField extends CachedFlatField {
      */
     private Object getReadLock() {
         if (readLock == null) {
-            readLock = ALLMUTEX;
+            readLock = getReadContext().getLock();
         }
         return readLock;
     }
 
+
+    /**
+     * Find the run time and the time bounds for our time index. The run
+     * times and bounds are made from the axes once per dataset.
+     *
+     * @throws Exception on badness
+     */
+    private void setTimeInfo() throws Exception {
+        DatasetReadContext   context = getReadContext();
+        final CoordinateAxis1DTime ccar =
+            geoGrid.getCoordinateSystem().getRunTimeAxis();
+        final CoordinateAxis1DTime cca =
+            geoGrid.getCoordinateSystem().getTimeAxis1D();
+        if (cca != null) {
+            List bounds = (List) context.getCachedObject(cca, "bounds",
+                              new Callable() {
+                public Object call() {
+                    List bounds = new ArrayList();
+                    for (int i = 0; i < cca.getSize(); i++) {
+                        bounds.add(cca.getCoordBounds(i));
+                    }
+                    return bounds;
+                }
+            });
+            if ((timeIndex < bounds.size())
+                    && (bounds.get(timeIndex) != null)) {
+                coordinateBounds = (double[]) bounds.get(timeIndex);
+            }
+        }
+
+        if (ccar != null) {
+            List timesR = (List) context.getCachedObject(ccar, "times",
+                              new Callable() {
+                public Object call() throws Exception {
+                    return DataUtil.makeDateTimes(ccar);
+                }
+            });
+            if (timesR.size() == 1)
+                runTime = (CalendarDateTime) timesR.get(0);
+            else if (timeIndex > timesR.size())
+                runTime = (CalendarDateTime) timesR.get(timesR.size() - 1);
+            else
+                runTime = (CalendarDateTime) timesR.get(timeIndex);
+        }
+    }
+
     /**
      * Get the read lock
      *
@@ -241,6 +363,24 @@ public class GeoGridFlatField extends CachedFlatField {
         return coordinateBounds;
     }
 
+    /**
+     * Get the values without keeping them in the data cache. This lets a
+     * caller that goes through the time steps of a grid (e.g., a reduction
+     * over time) let go of each step once it is used. If the values are
+     * already cached, or this field is a copy of another one, then the
+     * cached values are used.
+     *
+     * @return the values. They must not be changed.
+     *
+     * @throws VisADException On badness
+     */
+    public float[][] readValuesUncached() throws VisADException {
+        if (isCopy || (geoGrid == null) || haveData()) {
+            return getFloats(false);
+        }
+        return readData();
+    }
+
     /**
      * Used to provide a hook to derived classes to dynamically read in the data
      *
@@ -255,52 +395,44 @@ public class GeoGridFlatField extends CachedFlatField {
         //            return getParent().readData();
         //        }
         //        Misc.printStack("GeoGridFlatField.readData",15,null);
-        Array arr;
+        Array arr = null;
         try {
             //            System.err.println (myid +" GeoGridFlatField readData");
             msg("readData");
             Trace.call1("GeoGridFlatField.geogrid.readVolumeData");
 
-            synchronized (getReadLock()) {
-                LogUtil.message(readLabel);
-                ucar.unidata.data.DataSourceImpl
-                    .incrOutstandingGetDataCalls();
-                try {
-                    CoordinateAxis1DTime ccar = geoGrid.getCoordinateSystem().getRunTimeAxis();
-                    CoordinateAxis1DTime cca = geoGrid.getCoordinateSystem().getTimeAxis1D();
-                    if(cca != null && cca.getCoordBounds(timeIndex) != null)
-                        coordinateBounds = cca.getCoordBounds(timeIndex);
-
-                    if(ccar != null) {
-                        List timesR = DataUtil.makeDateTimes(ccar);
-                        //List times = DataUtil.makeDateTimes(cca);
-
-                        if (timesR.size() == 1)
-                            runTime = (CalendarDateTime) timesR.get(0);
-                        else if (timeIndex > timesR.size())
-                            runTime = (CalendarDateTime) timesR.get(timesR.size() - 1);
-                        else
-                            runTime = (CalendarDateTime) timesR.get(timeIndex);
-                    }
-                    //System.out.println("Index = " + timeIndex + " Run hour = " + runTime + " " + coordinateBounds[1]  + " "  + coordinateBounds[0]  + "\n");
-                    //arr = geoGrid.readVolumeData(timeIndex);
-                    arr = geoGrid.readDataSlice(0, ensIndex, timeIndex, -1, -1,
-                            -1);
-                    /*if(geoGrid.getDataType().equals(DataType.BYTE)){
-                        Attribute att = geoGrid.findAttributeIgnoreCase("_unsigned");
-                        if(att != null && att.getStringValue().equals("true")){
-                            arr.setUnsigned(true);
-                        }
-                    } */
-                } catch(Exception exc) {
-                    if(exc.toString().indexOf("Inconsistent array length read")>=0) {
-                        throw new ucar.unidata.data.BadDataException("Error reading data from server");
-                    } else {
-                        throw new RuntimeException(exc);
+            ucar.unidata.data.DataSourceImpl.incrOutstandingGetDataCalls();
+            LogUtil.message(readLabel);
+            try {
+                setTimeInfo();
+            } catch (Exception exc) {
+                throw makeReadException(exc);
+            }
+            if (sliceReader == null) {
+                synchronized (getReadLock()) {
+                    try {
+                        //arr = geoGrid.readVolumeData(timeIndex);
+                        arr = geoGrid.readDataSlice(0, ensIndex, timeIndex,
+                                -1, -1, -1);
+                        /*if(geoGrid.getDataType().equals(DataType.BYTE)){
+                            Attribute att = geoGrid.findAttributeIgnoreCase("_unsigned");
+                            if(att != null && att.getStringValue().equals("true")){
+                                arr.setUnsigned(true);
+                            }
+                        } */
+                    } catch(Exception exc) {
+                        throw makeReadException(exc);
                     }
                 }
-                LogUtil.message("");
+            } else {
+                //The slice reader handles its own concurrency
+                try {
+                    arr = sliceReader.readDataSlice(ensIndex, timeIndex);
+                } catch (Exception exc) {
+                    throw makeReadException(exc);
+                }
             }
+            LogUtil.message("");
             Trace.call2("GeoGridFlatField.geogrid.readVolumeData");
             // 3D grid with one level - slice to 2D grid
             if ((arr.getRank() > 2) && (domainSet.getDimension() == 2)) {
@@ -392,6 +524,22 @@ public class GeoGridFlatField extends CachedFlatField {
     }
 
 
+    /**
+     * Wrap the exception thrown when reading the data
+     *
+     * @param exc the exception
+     *
+     * @return the exception to throw
+     */
+    private RuntimeException makeReadException(Exception exc) {
+        if (exc.toString().indexOf("Inconsistent array length read") >= 0) {
+            return new ucar.unidata.data.BadDataException(
+                "Error reading data from server");
+        }
+        return new RuntimeException(exc);
+    }
+
+
     /**
      * Set the read label
      *
@@ -86,6 +86,12 @@ public class GridCoverageFlatField extends CachedFlatField {
     /** a read lock  */
     transient private Object readLock;
 
+    /** reads the data outside of the read lock. May be null. */
+    transient private CoverageReader coverageReader;
+
+    /** Is this a copy of another field */
+    private boolean isCopy = false;
+
     double [] vIntv;
 
     /** the run time  */
@@ -165,6 +171,8 @@ public class GridCoverageFlatField extends CachedFlatField {
         this.domainSet = that.domainSet;
         this.timeIndex = that.timeIndex;
         this.ensIndex = that.ensIndex;
+        this.coverageReader = that.coverageReader;
+        this.isCopy = true;
     }
 
     /**
@@ -224,6 +232,37 @@ public class GridCoverageFlatField extends CachedFlatField {
     public static Object ALLMUTEX = new Object();
 
 
+    /**
+     * Reads the coverage on behalf of this field. This allows the data
+     * to be read through a pool of file handles, outside of the read lock.
+     */
+    public interface CoverageReader {
+
+        /**
+         * Read the data for the subset
+         *
+         * @param params the subset, with the time and level set. This is
+         *               owned by the caller and is not shared.
+         *
+         * @return the data
+         *
+         * @throws Exception on badness
+         */
+        public Array readData(SubsetParams params) throws Exception;
+    }
+
+
+    /**
+     * Set the reader used to read the data. If null then the data is read
+     * from the coverage while holding the read lock.
+     *
+     * @param coverageReader the reader
+     */
+    public void setCoverageReader(CoverageReader coverageReader) {
+        this.coverageReader = coverageReader;
+    }
+
+
     /**
      * Get the read lock
      *
@@ -254,6 +293,24 @@ public class GridCoverageFlatField extends CachedFlatField {
         return coordinateBounds;
     }
 
+    /**
+     * Get the values without keeping them in the data cache. This lets a
+     * caller that goes through the time steps of a grid (e.g., a reduction
+     * over time) let go of each step once it is used. If the values are
+     * already cached, or this field is a copy of another one, then the
+     * cached values are used.
+     *
+     * @return the values. They must not be changed.
+     *
+     * @throws VisADException On badness
+     */
+    public float[][] readValuesUncached() throws VisADException {
+        if (isCopy || (geoGrid == null) || haveData()) {
+            return getFloats(false);
+        }
+        return readData();
+    }
+
     /**
      * Used to provide a hook to derived classes to dynamically read in the data
      *
@@ -271,6 +328,9 @@ public class GridCoverageFlatField extends CachedFlatField {
         Array[] arr;
         int numLevels = 0;
         float[][] fieldArray = new float[1][];
+        //Each read sets its own time and levels on a copy of the subset
+        SubsetParams params = copyParams(subsetParams);
+        double[] ilevels = null;
         try {
             //            System.err.println (myid +" GeoGridFlatField readData");
             msg("readData");
@@ -303,7 +363,6 @@ public class GridCoverageFlatField extends CachedFlatField {
                     //CalendarDate cdate;
 
                     double[] levels = null;
-                    double[] ilevels = null;
                     if (geoGrid.getCoordSys().getZAxis() != null) {
                         Array lst = geoGrid.getCoordSys().getZAxis().getCoordsAsArray();
                         int size = (int) lst.getSize();
@@ -330,49 +389,47 @@ public class GridCoverageFlatField extends CachedFlatField {
 
                     if (coordinateBounds != null) {
                         //System.out.println(cca1.getRefDate() + "  " + timeIndex + " [" + coordinateBounds[0] + " " + coordinateBounds[1] + "]");
-                        subsetParams.setRunTime(cca1.getRefDate());
-                        subsetParams.setTimeOffsetIntv(coordinateBounds);
+                        params.setRunTime(cca1.getRefDate());
+                        params.setTimeOffsetIntv(coordinateBounds);
                     } else {
-                        subsetParams.setTime(cdt.getCalendarDate());
+                        params.setTime(cdt.getCalendarDate());
                     }
                     // subsetParams.setTimeRange(subsettimes);
                     if (vIntv == null) {
-                        subsetParams.setVertCoordIntv(vIntv);
-                        GeoReferencedArray mySubset = geoGrid.readData(subsetParams);
-                        arr[0] = mySubset.getData();
-                    } else {
-                        for (int j = 0; j < numLevels; j++) {
-                            double[] zIntv = {ilevels[j], ilevels[j]};
-                            subsetParams.setVertCoordIntv(zIntv);
-                            GeoReferencedArray mySubset = geoGrid.readData(subsetParams);
-                            arr[j] = mySubset.getData();
-                        }
+                        ilevels = null;
+                    }
+                    if (coverageReader == null) {
+                        readLevels(params, ilevels, arr);
                     }
 
                 } catch (Exception exc) {
-                    if (exc.toString().indexOf("Inconsistent array length read") >= 0) {
-                        throw new ucar.unidata.data.BadDataException("Error reading data from server");
-                    } else {
-                        throw new RuntimeException(exc);
-                    }
+                    throw makeReadException(exc);
                 }
-                LogUtil.message("");
-
-                Trace.call2("GeoGridFlatField.geogrid.readVolumeData");
-                // 3D grid with one level - slice to 2D grid
-                if ((arr[0].getRank() > 2) && (domainSet.getDimension() == 2)) {
-                    int[] lengths = domainSet.getLengths();
-                    int sizeX = lengths[0];
-                    int sizeY = lengths[1];
-                    int levelIndex = 0;  // get the first by default
-                    int[] shape = arr[0].getShape();
-                    for (int i = 0; i <= arr[0].getRank(); i++) {
-                        // find the index whose dimension is not x or y
-                        if ((shape[i] != sizeX) && (shape[i] != sizeY)) {
-                            // extract the correct "z" level data:
-                            arr[0] = arr[0].slice(i, levelIndex);
-                            break;
-                        }
+            }
+            if (coverageReader != null) {
+                //The coverage reader handles its own concurrency
+                try {
+                    readLevels(params, ilevels, arr);
+                } catch (Exception exc) {
+                    throw makeReadException(exc);
+                }
+            }
+            LogUtil.message("");
+
+            Trace.call2("GeoGridFlatField.geogrid.readVolumeData");
+            // 3D grid with one level - slice to 2D grid
+            if ((arr[0].getRank() > 2) && (domainSet.getDimension() == 2)) {
+                int[] lengths = domainSet.getLengths();
+                int sizeX = lengths[0];
+                int sizeY = lengths[1];
+                int levelIndex = 0;  // get the first by default
+                int[] shape = arr[0].getShape();
+                for (int i = 0; i <= arr[0].getRank(); i++) {
+                    // find the index whose dimension is not x or y
+                    if ((shape[i] != sizeX) && (shape[i] != sizeY)) {
+                        // extract the correct "z" level data:
+                        arr[0] = arr[0].slice(i, levelIndex);
+                        break;
                     }
                 }
             }
@@ -453,6 +510,67 @@ public class GridCoverageFlatField extends CachedFlatField {
     }
 
 
+    /**
+     * Read each of the levels (or the whole grid if levels is null)
+     * with our coverage reader or, if we don't have one, the coverage
+     *
+     * @param params the subset to read. Its levels are set here.
+     * @param levels the levels or null
+     * @param arr  the array to put the data in
+     *
+     * @throws Exception on badness
+     */
+    private void readLevels(SubsetParams params, double[] levels,
+                            Array[] arr)
+            throws Exception {
+        for (int j = 0; j < arr.length; j++) {
+            params.setVertCoordIntv((levels == null)
+                                    ? null
+                                    : new double[] { levels[j],
+                    levels[j] });
+            if (coverageReader != null) {
+                arr[j] = coverageReader.readData(params);
+            } else {
+                arr[j] = geoGrid.readData(params).getData();
+            }
+        }
+    }
+
+    /**
+     * Copy the subset. The fields of a grid share one subset and each
+     * read sets its own time and levels, so these are set on a copy.
+     * The time and levels are not copied.
+     *
+     * @param params the subset
+     *
+     * @return the copy
+     */
+    private static SubsetParams copyParams(SubsetParams params) {
+        SubsetParams copy = new SubsetParams();
+        if (params.getLatLonBoundingBox() != null) {
+            copy.setLatLonBoundingBox(params.getLatLonBoundingBox());
+        }
+        if (params.getHorizStride() != null) {
+            copy.setHorizStride(params.getHorizStride());
+        }
+        return copy;
+    }
+
+    /**
+     * Make the exception to throw for an error reading the data
+     *
+     * @param exc the error
+     *
+     * @return the exception to throw
+     */
+    private static RuntimeException makeReadException(Exception exc) {
+        if (exc.toString().indexOf("Inconsistent array length read") >= 0) {
+            return new ucar.unidata.data.BadDataException(
+                "Error reading data from server");
+        }
+        return new RuntimeException(exc);
+    }
+
     /**
      * Set the read label
      *
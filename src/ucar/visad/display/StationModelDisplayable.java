@@ -114,10 +114,15 @@ import java.io.FileOutputStream;
 import java.rmi.RemoteException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -169,43 +174,149 @@ public class StationModelDisplayable extends DisplayableData {
 
 
 
-    /** Keep around for makeShapes */
-    private Point2D workPoint = new Point2D.Double();
+    /** Number of obs a thread makes shapes for at a time */
+    private static final int OBS_PER_TASK = 64;
 
-    /** Keep around for makeShapes */
-    private Rectangle2D workRect = new Rectangle2D.Float();
+    /**
+     * The glyph cache is pruned to the obs of the last build when it grows
+     * past this many times the number of obs in the build
+     */
+    private static final int GLYPH_CACHE_FACTOR = 4;
+
+    /** Marks code that can't be compiled into a StationModelExpression */
+    private static final Object NOT_COMPILED = new Object();
+
+    /** The functions the layout code can use */
+    static final String JYTHON_FUNCTIONS =
+        "from ucar.visad.Util import *\n\n"
+        + "def format(v):\n"
+        + "    if formatter is None:\n"
+        + "        return str(v);\n"
+        + "    return formatter.format(v)\n\n\n"
+        + "def convert(v):\n"
+        + "    if displayUnit is None:\n"
+        + "        return v\n"
+        + "    return v.getValue (displayUnit)\n\n\n"
+        + "def formatDate(v,format):\n"
+        + "    return formatUtcDate(v,format)\n\n\n";
 
-    /** Work object */
-    private Rectangle2D workShapeBounds = new Rectangle2D.Float();
+    /**
+     * Holds the work objects used by makeShapes so that the shapes for
+     * the obs can be made on more than one thread
+     */
+    private static class ShapeWork {
 
+        /** Keep around for makeShapes */
+        Point2D point = new Point2D.Double();
 
+        /** Keep around for makeShapes */
+        Rectangle2D rect = new Rectangle2D.Float();
 
+        /** Work object */
+        Rectangle2D shapeBounds = new Rectangle2D.Float();
 
+        /** Work object */
+        float[] offsetArray = { 0.0f, 0.0f, 0.0f };
 
-    /** Work object */
-    private float[] workOffsetArray = { 0.0f, 0.0f, 0.0f };
+        /** Work object */
+        Data[] dataArray = { null, null };
 
-    /** Work object */
-    private Data[] workDataArray = { null, null };
+        /** Work object */
+        float[] uv = { 0.0f, 0.0f };
 
-    /** Work object */
-    private float[] workUV = { 0.0f, 0.0f };
+        /** Work object */
+        float[][] flowValues = {
+            { 0.0f }, { 0.0f }, { 0.0f }
+        };
 
-    /** Work object */
-    float[][] workFlowValues = {
-        { 0.0f }, { 0.0f }, { 0.0f }
-    };
+        /** Work object */
+        float[][] spatialValues = {
+            { 0.0f }, { 0.0f }, { 0.0f }
+        };
 
-    /** Work object */
-    float[][] workSpatialValues = {
-        { 0.0f }, { 0.0f }, { 0.0f }
-    };
+        /** range select variable */
+        boolean[][] rangeSelect = {
+            { true }, { true }, { true }
+        };
+    }
+
+    /**
+     * Splits a range of obs in half until it is small enough to make
+     * the shapes directly
+     */
+    private abstract static class ObTask extends RecursiveAction {
+
+        /** first ob */
+        private int fromOb;
+
+        /** one past the last ob */
+        private int toOb;
+
+        /**
+         * ctor
+         *
+         * @param fromOb first ob
+         * @param toOb one past the last ob
+         */
+        ObTask(int fromOb, int toOb) {
+            this.fromOb = fromOb;
+            this.toOb   = toOb;
+        }
 
-    /** range select variable */
-    private boolean[][] workRangeSelect = {
-        { true }, { true }, { true }
-    };
+        /**
+         * Do the obs
+         *
+         * @param fromOb first ob
+         * @param toOb one past the last ob
+         */
+        protected abstract void doObs(int fromOb, int toOb);
 
+        /**
+         * Split or do the obs
+         */
+        protected void compute() {
+            if (toOb - fromOb <= OBS_PER_TASK) {
+                doObs(fromOb, toOb);
+                return;
+            }
+            int          mid   = (fromOb + toOb) / 2;
+            final ObTask outer = this;
+            invokeAll(new ObTask(fromOb, mid) {
+                protected void doObs(int from, int to) {
+                    outer.doObs(from, to);
+                }
+            }, new ObTask(mid, toOb) {
+                protected void doObs(int from, int to) {
+                    outer.doObs(from, to);
+                }
+            });
+        }
+    }
+
+    /**
+     * The shapes made for each ob. These only depend on the ob, the
+     * station model and the glyphCacheKey, so a declutter can reuse them.
+     */
+    private Map<PointOb, List<VisADGeometryArray>> glyphCache =
+        new IdentityHashMap<PointOb, List<VisADGeometryArray>>();
+
+    /**
+     * What the glyphs in the glyphCache depend on besides the ob and the
+     * station model
+     */
+    private List glyphCacheKey;
+
+    /** The glyphs used in the build we are in */
+    private Map<PointOb, List<VisADGeometryArray>> glyphsUsed;
+
+    /** mutex for adjusting the flow to the earth */
+    private static final Object FLOW_MUTEX = new Object();
+
+    /** mutex for the interpreters */
+    private static final Object INTERP_MUTEX = new Object();
+
+    /** Code to the compiled StationModelExpression or NOT_COMPILED */
+    private Hashtable codeToExpression = new Hashtable();
 
     /** Mapping between comma separated param names and the parsed list */
     private Hashtable<String, List> namesToList = new Hashtable<String,
@@ -223,9 +334,6 @@ public class StationModelDisplayable extends DisplayableData {
     /** Hashtable for jython codes to operands */
     private Hashtable codeToOperands = new Hashtable();
 
-    /** code for conversion */
-    private String convertCode = null;
-
     /** code for formatting */
     private String fmtCode = null;
 
@@ -465,6 +573,7 @@ public class StationModelDisplayable extends DisplayableData {
     public void setColor(Color c) throws VisADException, RemoteException {
         super.setColor(c);
         myColor = c;
+        clearGlyphCache();
         if (stationData != null) {
             setStationData(stationData);
         }
@@ -614,6 +723,7 @@ public class StationModelDisplayable extends DisplayableData {
             throws VisADException, RemoteException {
         tryMerge     = true;
         stationModel = model;
+        clearGlyphCache();
         if ((stationData != null) && update) {
             makeNewDataWithShapes(stationData);
         }
@@ -627,6 +737,15 @@ public class StationModelDisplayable extends DisplayableData {
         return stationModel;
     }
 
+    /**
+     * Clear the cache of the shapes made for each ob. This needs to be
+     * called when anything besides the ob that the shapes depend on changes.
+     */
+    public void clearGlyphCache() {
+        glyphCache =
+            new IdentityHashMap<PointOb, List<VisADGeometryArray>>();
+    }
+
 
 
     /** ob counter */
@@ -678,8 +797,28 @@ public class StationModelDisplayable extends DisplayableData {
             //                               currentRotation[2]);
         }
 
+        //The glyphs depend on the aspect, the rotation, the projection and
+        //the scale, which the wind barbs are adjusted to the earth with
+        List key = new ArrayList();
+        key.add((displayScaleFactor != null)
+                ? Arrays.toString(displayScaleFactor)
+                : null);
+        key.add((rotateShapes && (currentRotation != null))
+                ? Arrays.toString(currentRotation)
+                : null);
+        key.add((master instanceof ucar.unidata.view.geoloc.NavigatedDisplay)
+                ? ((ucar.unidata.view.geoloc.NavigatedDisplay) master)
+                    .getDisplayCoordinateSystem()
+                : null);
+        key.add(Float.valueOf(getScale()));
+        if ( !key.equals(glyphCacheKey)) {
+            clearGlyphCache();
+            glyphCacheKey = key;
+        }
+        glyphsUsed = new IdentityHashMap<PointOb, List<VisADGeometryArray>>();
 
-        haveNotified   = null;
+        //Set this here since the obs are done on more than one thread
+        haveNotified   = new Hashtable<String, String>();
         isTimeSequence = ucar.unidata.data.grid.GridUtil.isTimeSequence(data);
         int numTimes = 0;
         shapeIndex           = 0;
@@ -719,6 +858,11 @@ public class StationModelDisplayable extends DisplayableData {
             return null;
         }
 
+        if (glyphCache.size() > GLYPH_CACHE_FACTOR * glyphsUsed.size()) {
+            glyphCache = glyphsUsed;
+        }
+        glyphsUsed = null;
+
         try {
             shapes = new VisADGeometryArray[shapeList.size()];
             shapes = (VisADGeometryArray[]) shapeList.toArray(shapes);
@@ -836,7 +980,9 @@ public class StationModelDisplayable extends DisplayableData {
 
 
     /**
-     * create shapes for an individual time step.
+     * create shapes for an individual time step. The shapes for the obs
+     * that aren't in the glyph cache are made in parallel. Calls to a
+     * symbol's own makeShapes are synchronized on the symbol.
      *
      * @param data
      * @return
@@ -897,27 +1043,50 @@ public class StationModelDisplayable extends DisplayableData {
         Trace.call1("SMD.makeShapes loop",
                     " #obs:" + set.getLength() + " #vars:"
                     + ((Tuple) firstOb.getData()).getLength());
-        String[]  typeNames     = null;
+        final String[] typeNames =
+            getTypeNames((TupleType) ((Tuple) firstOb.getData()).getType());
         int       length        = set.getLength();
         TupleType dataTupleType = null;
+        boolean   useCache      = !writingKmz && (glyphsUsed != null);
 
+        //Make the shapes for the obs that aren't in the cache in parallel
+        final PointOb[] obs = new PointOb[length];
+        final List<VisADGeometryArray>[] obShapesArray = new List[length];
+        for (int obIdx = 0; obIdx < length; obIdx++) {
+            obs[obIdx] = (PointOb) data.getSample(obIdx);
+            if (useCache) {
+                obShapesArray[obIdx] = glyphCache.get(obs[obIdx]);
+            }
+        }
+        ForkJoinPool.commonPool().invoke(new ObTask(0, length) {
+            protected void doObs(int fromOb, int toOb) {
+                ShapeWork work = new ShapeWork();
+                try {
+                    for (int obIdx = fromOb; obIdx < toOb; obIdx++) {
+                        if (obShapesArray[obIdx] == null) {
+                            obShapesArray[obIdx] = makeShapes(obs[obIdx],
+                                    typeNames, symbols, pointOnSymbols,
+                                    offsetFlipPoints, work);
+                        }
+                    }
+                } catch (VisADException | RemoteException exc) {
+                    throw new WrapperException(exc);
+                }
+            }
+        });
 
         for (int obIdx = 0; obIdx < length; obIdx++) {
-            PointOb ob = (PointOb) data.getSample(obIdx);
+            PointOb ob = obs[obIdx];
 
             obCounter++;
-            if (typeNames == null) {
-                Tuple     obData = (Tuple) ob.getData();
-                TupleType tType  = (TupleType) obData.getType();
-                typeNames = getTypeNames(tType);
-            }
-
-            List<VisADGeometryArray> obShapes = makeShapes(ob, typeNames,
-                                                    symbols, pointOnSymbols,
-                                                    offsetFlipPoints);
+            List<VisADGeometryArray> obShapes = obShapesArray[obIdx];
             if (obShapes == null) {
                 continue;
             }
+            if (useCache) {
+                glyphCache.put(ob, obShapes);
+                glyphsUsed.put(ob, obShapes);
+            }
             geometryArrayCounter += obShapes.size();
             if (writingKmz) {
                 processKmz(ob, obShapes);
@@ -1084,6 +1253,7 @@ public class StationModelDisplayable extends DisplayableData {
      * @param symbols List of the MetSymbols to use
      * @param pointOnSymbols List of the rectangle point on the symbols
      * @param offsetFlipPoints List of the flipper points
+     * @param work the work objects for the thread we are on
      * @return  corresponding shape
      *
      * @throws VisADException   VisAD failure.
@@ -1091,7 +1261,8 @@ public class StationModelDisplayable extends DisplayableData {
      */
     private List<VisADGeometryArray> makeShapes(PointOb ob,
             String[] typeNames, List<MetSymbol> symbols,
-            List<Point2D> pointOnSymbols, List offsetFlipPoints)
+            List<Point2D> pointOnSymbols, List offsetFlipPoints,
+            ShapeWork work)
             throws VisADException, RemoteException {
 
         List      lineShapes     = null;
@@ -1101,9 +1272,9 @@ public class StationModelDisplayable extends DisplayableData {
         TupleType tType          = (TupleType) data.getType();
 
         MetSymbol metSymbol      = null;
-        workDataArray[0] = null;
-        workDataArray[1] = null;
-        //The workDataArray should never be more than size 2
+        work.dataArray[0] = null;
+        work.dataArray[1] = null;
+        //The work dataArray should never be more than size 2
         try {
             for (int symbolIdx = 0; symbolIdx < symbols.size(); symbolIdx++) {
                 metSymbol = symbols.get(symbolIdx);
@@ -1113,23 +1284,24 @@ public class StationModelDisplayable extends DisplayableData {
                 boolean  ok               = true;
                 if ( !(metSymbol instanceof LabelSymbol)
                         && !metSymbol.doAllObs()) {
-                    int max = Math.min(workDataArray.length, paramIds.length);
+                    int max = Math.min(work.dataArray.length,
+                                       paramIds.length);
                     for (int paramIdx = 0; paramIdx < max; paramIdx++) {
                         String paramId = paramIds[paramIdx];
                         if (paramId.startsWith("=")) {
                             //Is a jython formula
-                            workDataArray[paramIdx] = evaluateCode(ob,
+                            work.dataArray[paramIdx] = evaluateCode(ob,
                                     paramId.substring(1), tType, typeNames,
                                     data, metSymbol,
                                     metSymbol.getDisplayUnit());
                         } else if (paramId.startsWith("value:")) {
                             String tok = paramId.substring(6);
-                            workDataArray[paramIdx] = Util.toReal(tok);
+                            work.dataArray[paramIdx] = Util.toReal(tok);
                         } else {
-                            workDataArray[paramIdx] = getComponent(ob, data,
-                                    tType, typeNames, paramId);
+                            work.dataArray[paramIdx] = getComponent(ob,
+                                    data, tType, typeNames, paramId);
                         }
-                        if (workDataArray[paramIdx] == null) {
+                        if (work.dataArray[paramIdx] == null) {
                             ok = false;
                             break;
                         }
@@ -1145,12 +1317,15 @@ public class StationModelDisplayable extends DisplayableData {
 
 
                 if (metSymbol.doAllObs()) {
-                    shapes = metSymbol.makeShapes(ob);
+                    //The symbol classes may not be thread safe
+                    synchronized (metSymbol) {
+                        shapes = metSymbol.makeShapes(ob);
+                    }
                 } else if (metSymbol instanceof TextSymbol) {
                     TextSymbol textSymbol  = (TextSymbol) metSymbol;
                     Font       font        = textSymbol.getFont();
                     String     stringValue = null;
-                    Scalar     scalar      = (Scalar) workDataArray[0];
+                    Scalar     scalar      = (Scalar) work.dataArray[0];
                     //Perhaps cache on value,font,number format and display unit
                     //              Object theKey = new Object[]{font,scalar};
                     //shape = (VisADGeometryArray) shapeCache.get(key);
@@ -1210,11 +1385,11 @@ public class StationModelDisplayable extends DisplayableData {
                 } else if (metSymbol instanceof WeatherSymbol) {
                     double value = Double.NaN;
                     try {
-                        if (workDataArray[0] instanceof Text) {
+                        if (work.dataArray[0] instanceof Text) {
                             value = Double.parseDouble(
-                                workDataArray[0].toString());
+                                work.dataArray[0].toString());
                         } else {
-                            value = ((Real) workDataArray[0]).getValue();
+                            value = ((Real) work.dataArray[0]).getValue();
                         }
                         // ignore null data
                     } catch (Exception npe) {}
@@ -1234,8 +1409,8 @@ public class StationModelDisplayable extends DisplayableData {
                             CommonUnit.degree) < 0.0);
                     String name = metSymbol.getClass().getName();
                     Object key = "wind_" + pointOnSymbol + "_" + isNorth
-                                 + "_" + workDataArray[0] + "_"
-                                 + workDataArray[1]+"_"+name;
+                                 + "_" + work.dataArray[0] + "_"
+                                 + work.dataArray[1]+"_"+name;
                     //shapes = (VisADGeometryArray[]) shapeCache.get(key);
                     if (shapes != null) {
                         shapes = ShapeUtility.clone(shapes);
@@ -1244,18 +1419,18 @@ public class StationModelDisplayable extends DisplayableData {
                         float direction;
                         try {
                             speed =
-                                (float) ((Real) workDataArray[0]).getValue(
+                                (float) ((Real) work.dataArray[0]).getValue(
                                     CommonUnit.meterPerSecond);
                         } catch (Exception e) {
                             speed =
-                                (float) ((Real) workDataArray[0]).getValue();
+                                (float) ((Real) work.dataArray[0]).getValue();
                         }
                         // could be speed or v component.  default to speed
-                        Real vOrSpeed = (Real) workDataArray[1];
+                        Real vOrSpeed = (Real) work.dataArray[1];
                         if (Unit.canConvert(vOrSpeed.getUnit(),
                                             CommonUnit.meterPerSecond)) {
-                            workUV[0] = speed;
-                            workUV[1] = (float) vOrSpeed.getValue(
+                            work.uv[0] = speed;
+                            work.uv[1] = (float) vOrSpeed.getValue(
                                 CommonUnit.meterPerSecond);
                         } else {
                             try {
@@ -1265,13 +1440,13 @@ public class StationModelDisplayable extends DisplayableData {
                                 direction = (float) vOrSpeed.getValue();
                             }
                             // should be 360 for north
-                            windVector(speed, direction, workUV);
+                            windVector(speed, direction, work.uv);
                         }
-                        workFlowValues[0][0] = workUV[0];
-                        workFlowValues[1][0] = workUV[1];
-                        workFlowValues[2][0] = 0;  // zero out every time
-                        if (Float.isNaN(workUV[0])
-                                || Float.isNaN(workUV[1])) {
+                        work.flowValues[0][0] = work.uv[0];
+                        work.flowValues[1][0] = work.uv[1];
+                        work.flowValues[2][0] = 0;  // zero out every time
+                        if (Float.isNaN(work.uv[0])
+                                || Float.isNaN(work.uv[1])) {
                             continue;
                         }
                         DisplayMaster master = getDisplayMaster();
@@ -1292,38 +1467,43 @@ public class StationModelDisplayable extends DisplayableData {
                             };
 
                             if (renderer != null) {
-                                ShadowType.adjustFlowToEarth(0,
-                                        workFlowValues, spatial_locs,
-                                        getScale(), renderer, true);
+                                //The renderer isn't safe to share
+                                synchronized (FLOW_MUTEX) {
+                                    ShadowType.adjustFlowToEarth(0,
+                                            work.flowValues, spatial_locs,
+                                            getScale(), renderer, true);
+                                }
                             }
                         }
-                        workSpatialValues[0][0] =
+                        work.spatialValues[0][0] =
                             (float) (pointOnSymbol.getX());
-                        workSpatialValues[1][0] =
+                        work.spatialValues[1][0] =
                             (float) (-pointOnSymbol.getY());
                         //float scale = 2.5f * (float) metSymbol.getScale();
                         try {
                         	if (metSymbol instanceof WindVectorSymbol) {
-                               shapes = ((WindVectorSymbol) metSymbol).makeVector(workFlowValues,
-                                    .5f, workSpatialValues, (byte[][]) null,  //color_values, 
-                                    workRangeSelect);
+                               shapes = ((WindVectorSymbol) metSymbol).makeVector(work.flowValues,
+                                    .5f, work.spatialValues, (byte[][]) null,  //color_values, 
+                                    work.rangeSelect);
                         	} else {
-                               shapes = WindBarb.staticMakeFlow(workFlowValues,
-                                       2.5f, workSpatialValues, (byte[][]) null,  //color_values, 
-                                       workRangeSelect, isNorth);
+                               shapes = WindBarb.staticMakeFlow(work.flowValues,
+                                       2.5f, work.spatialValues, (byte[][]) null,  //color_values, 
+                                       work.rangeSelect, isNorth);
                         	}
                             shapeCache.put(key, ShapeUtility.clone(shapes));
 
                         } catch (Exception excp) {
                             //System.out.println("speed = " + speed);
                             //System.out.println("dir = " + speed);
-                            //Misc.printArray("workUV", workUV);
+                            //Misc.printArray("work.uv", work.uv);
                         }  // bad winds
                     }
 
                 } else {
                     //Default is to ask the symbol to make the shapes
-                    shapes = metSymbol.makeShapes(workDataArray, ob);
+                    synchronized (metSymbol) {
+                        shapes = metSymbol.makeShapes(work.dataArray, ob);
+                    }
                 }
 
                 if (shape != null) {
@@ -1431,7 +1611,7 @@ public class StationModelDisplayable extends DisplayableData {
 
 
                     shapeBounds = ShapeUtility.bounds2d(shapes[shapeIndex],
-                            workRect);
+                            work.rect);
                     double tmpScale = shapeScaleFactor;
                     if (metSymbol.shouldScaleShape()) {
                         float size = (metSymbol instanceof TextSymbol)
@@ -1459,14 +1639,14 @@ public class StationModelDisplayable extends DisplayableData {
                                 shapeBounds);
                     }
                     if (shapeIndex == 0) {
-                        workShapeBounds.setRect(shapeBounds);
+                        work.shapeBounds.setRect(shapeBounds);
                     } else {
-                        workShapeBounds =
-                            shapeBounds.createUnion(workShapeBounds);
+                        work.shapeBounds =
+                            shapeBounds.createUnion(work.shapeBounds);
                     }
                 }
 
-                shapeBounds = workShapeBounds;
+                shapeBounds = work.shapeBounds;
                 for (int s = 0; s < shapes.length; s++) {
                     if (shapes[s] == null) {
                         continue;
@@ -1475,12 +1655,12 @@ public class StationModelDisplayable extends DisplayableData {
                         Point2D fromPoint = Glyph.getPointOnRect(
                                                 (String) offsetFlipPoints.get(
                                                     symbolIdx), shapeBounds,
-                                                        workPoint);
-                        workOffsetArray[0] = (float) (pointOnSymbol.getX()
+                                                        work.point);
+                        work.offsetArray[0] = (float) (pointOnSymbol.getX()
                                 * shapeScaleFactor - fromPoint.getX());
-                        workOffsetArray[1] = (float) (-pointOnSymbol.getY()
+                        work.offsetArray[1] = (float) (-pointOnSymbol.getY()
                                 * shapeScaleFactor - fromPoint.getY());
-                        ShapeUtility.offset(shapes[s], workOffsetArray);
+                        ShapeUtility.offset(shapes[s], work.offsetArray);
                     }
 
                     //Bump it a bit up
@@ -1590,7 +1770,7 @@ public class StationModelDisplayable extends DisplayableData {
                     VisADQuadArray bgshape = null;
                     if (metSymbol.getBackground() != null) {
                         Rectangle2D tmp = ShapeUtility.bounds2d(shapes[s],
-                                              workRect);
+                                              work.rect);
                         Rectangle2D.Float bgb =
                             new Rectangle2D.Float((float) tmp.getX(),
                                 (float) tmp.getY(), (float) tmp.getWidth(),
@@ -1950,7 +2130,8 @@ public class StationModelDisplayable extends DisplayableData {
     private long codeTime = 0;
 
     /**
-     * Evaluate some Jython code
+     * Evaluate some layout code. This uses a compiled
+     * {@link StationModelExpression} when it can and Jython otherwise.
      *
      *
      * @param ob           The point ob
@@ -1976,36 +2157,97 @@ public class StationModelDisplayable extends DisplayableData {
             codeToOperands.put(code, operands);
         }
 
+        //Find the operand values
+        Hashtable<String, Data> values = new Hashtable<String, Data>();
+        for (int opIdx = 0; opIdx < operands.size(); opIdx++) {
+            String op     = (String) operands.get(opIdx).toString();
+            Data   opData = getComponent(ob, data, tType, typeNames, op);
+            if (opData == null) {
+                return null;
+            }
+            values.put(op, opData);
+        }
+
+        //Most layout code is simple arithmetic and formatting that we can
+        //do without the interpreter
+        Object expression = codeToExpression.get(code);
+        if (expression == null) {
+            expression = StationModelExpression.compile(code);
+            if (expression == null) {
+                expression = NOT_COMPILED;
+            }
+            codeToExpression.put(code, expression);
+        }
+        if (expression != NOT_COMPILED) {
+            Data result = ((StationModelExpression) expression).evaluate(
+                              values, formatter, displayUnit);
+            if (result != null) {
+                return result;
+            }
+        }
+
+        //The obs are done on more than one thread but there is one interpreter
+        synchronized (INTERP_MUTEX) {
+            return evaluateJython(code, operands, values, formatter,
+                                  displayUnit);
+        }
+    }
+
+    /**
+     * Evaluate some Jython code with the interpreter
+     *
+     * @param code         Jython code
+     * @param operands     the operand names in the code
+     * @param values       operand name to value
+     * @param formatter    formatter for code
+     * @param displayUnit  unit for display
+     * @return the result
+     *
+     * @throws VisADException   VisAD failure.
+     * @throws RemoteException  Java RMI failure.
+     */
+    private Data evaluateJython(String code, List operands,
+                                Hashtable<String, Data> values,
+                                Object formatter, Unit displayUnit)
+            throws VisADException, RemoteException {
         if (interp == null) {
-            interp      = jythonManager.createInterpreter();
-            convertCode = "from ucar.visad.Util import *\n\n";
-            convertCode += "def format(v):\n";
-            convertCode += "    if formatter is None:\n";
-            convertCode += "        return str(v);\n";
-            convertCode += "    return formatter.format(v)\n";
-            convertCode += "\n\n";
-            convertCode += "def convert(v):\n";
-            convertCode += "    if displayUnit is None:\n";
-            convertCode += "        return v\n";
-            convertCode += "    return v.getValue (displayUnit)\n";
-            convertCode += "\n\n";
-            convertCode += "def formatDate(v,format):\n";
-            convertCode += "    return formatUtcDate(v,format)\n";
-            convertCode += "\n\n";
-            interp.exec(convertCode);
+            interp = jythonManager.createInterpreter();
+            interp.exec(JYTHON_FUNCTIONS);
         }
+        long t1     = System.currentTimeMillis();
+        Data result = evaluateJython(interp, code, operands, values,
+                                     formatter, displayUnit);
+        long t2     = System.currentTimeMillis();
+        codeTime += (t2 - t1);
+        return result;
+    }
 
+    /**
+     * Evaluate some Jython code with the given interpreter. The
+     * interpreter needs to have run the {@link #JYTHON_FUNCTIONS}.
+     *
+     * @param interp       the interpreter
+     * @param code         Jython code
+     * @param operands     the operand names in the code
+     * @param values       operand name to value
+     * @param formatter    formatter for code
+     * @param displayUnit  unit for display
+     * @return the result
+     *
+     * @throws VisADException   VisAD failure.
+     * @throws RemoteException  Java RMI failure.
+     */
+    static Data evaluateJython(PythonInterpreter interp, String code,
+                               List operands, Map<String, Data> values,
+                               Object formatter, Unit displayUnit)
+            throws VisADException, RemoteException {
         interp.set("displayUnit", displayUnit);
         interp.set("formatter", formatter);
 
         //Bind the operands
         for (int opIdx = 0; opIdx < operands.size(); opIdx++) {
-            String op     = (String) operands.get(opIdx).toString();
-            Data   opData = getComponent(ob, data, tType, typeNames, op);
-            if (opData == null) {
-                return null;
-            }
-            interp.set(op, opData);
+            String op = (String) operands.get(opIdx).toString();
+            interp.set(op, values.get(op));
         }
 
         /**
@@ -2030,11 +2272,8 @@ public class StationModelDisplayable extends DisplayableData {
          *       }
          */
 
-        long t1 = System.currentTimeMillis();
         //Evaluate the code
         PyObject pyResult = interp.eval(code);
-        long     t2       = System.currentTimeMillis();
-        codeTime += (t2 - t1);
 
 
 
@@ -2423,6 +2662,7 @@ public class StationModelDisplayable extends DisplayableData {
                 }
             }
             if (haveTimeColoredShape) {
+                clearGlyphCache();
                 // see if we can make this more efficient
                 if (stationData != null) {
                     setStationData(stationData);
@@ -2478,6 +2718,7 @@ public class StationModelDisplayable extends DisplayableData {
      */
     public void setRotateShapes(boolean value) {
         rotateShapes = value;
+        clearGlyphCache();
     }
 
     /**
@@ -0,0 +1,790 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.visad.display;
+
+
+import ucar.unidata.ui.symbol.TextSymbol;
+
+import ucar.visad.Util;
+
+import visad.Data;
+import visad.DateTime;
+import visad.Real;
+import visad.Text;
+import visad.Unit;
+import visad.VisADException;
+
+import java.rmi.RemoteException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A station model layout expression (the part after the = in a symbol's
+ * param, e.g., PRESSURE*10%1000 or format(HOUR)+':'+format(MINUTE))
+ * compiled into a small expression tree so it can be evaluated for each
+ * ob without going through a Jython interpreter.
+ * <p>
+ * This handles arithmetic, string literals and the format, convert,
+ * formatDate and str functions that the station model's interpreter
+ * defines. {@link #compile(String)} returns null for any other code and
+ * {@link #evaluate(Map, Object, Unit)} returns null for values it can't
+ * handle, so the caller can fall back to Jython. The arithmetic on the ob
+ * values uses the same VisAD Data methods that Jython uses for the
+ * operators so the values and units come out the same.
+ */
+public class StationModelExpression {
+
+    /** Operator types */
+    private static final int OP_ADD = 0;
+
+    /** Operator types */
+    private static final int OP_SUBTRACT = 1;
+
+    /** Operator types */
+    private static final int OP_MULTIPLY = 2;
+
+    /** Operator types */
+    private static final int OP_DIVIDE = 3;
+
+    /** Operator types */
+    private static final int OP_REMAINDER = 4;
+
+    /** Operator types */
+    private static final int OP_POW = 5;
+
+    /**
+     * Thrown when an ob's values can't be handled here
+     */
+    private static class UnsupportedException extends Exception {
+
+        /**
+         * ctor
+         */
+        UnsupportedException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /** Shared instance */
+    private static final UnsupportedException UNSUPPORTED =
+        new UnsupportedException();
+
+    /**
+     * Holds the operand values and the function arguments
+     */
+    private static class Context {
+
+        /** operand name to value */
+        Map<String, Data> operands;
+
+        /** the formatter for format() */
+        Object formatter;
+
+        /** the unit for convert() */
+        Unit displayUnit;
+    }
+
+    /**
+     * A node in the tree
+     */
+    private abstract static class Node {
+
+        /**
+         * Evaluate the node
+         *
+         * @param context the operands
+         *
+         * @return a Data, String, Long or Double
+         *
+         * @throws RemoteException  Java RMI problem
+         * @throws UnsupportedException  can't evaluate this
+         * @throws VisADException  VisAD problem
+         */
+        abstract Object evaluate(Context context)
+         throws VisADException, RemoteException, UnsupportedException;
+    }
+
+    /**
+     * A number or string literal
+     */
+    private static class Literal extends Node {
+
+        /** the value */
+        Object value;
+
+        /**
+         * ctor
+         *
+         * @param value the value
+         */
+        Literal(Object value) {
+            this.value = value;
+        }
+
+        /**
+         * Get the value
+         *
+         * @param context the operands
+         *
+         * @return the value
+         */
+        Object evaluate(Context context) {
+            return value;
+        }
+    }
+
+    /**
+     * An operand
+     */
+    private static class Operand extends Node {
+
+        /** operand name */
+        String name;
+
+        /**
+         * ctor
+         *
+         * @param name operand name
+         */
+        Operand(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Look up the operand
+         *
+         * @param context the operands
+         *
+         * @return the value
+         *
+         * @throws UnsupportedException  not bound
+         */
+        Object evaluate(Context context) throws UnsupportedException {
+            Data value = context.operands.get(name);
+            if (value == null) {
+                throw UNSUPPORTED;
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Negation
+     */
+    private static class Negate extends Node {
+
+        /** what to negate */
+        Node node;
+
+        /**
+         * ctor
+         *
+         * @param node what to negate
+         */
+        Negate(Node node) {
+            this.node = node;
+        }
+
+        /**
+         * Negate the value
+         *
+         * @param context the operands
+         *
+         * @return the negated value
+         *
+         * @throws RemoteException  Java RMI problem
+         * @throws UnsupportedException  can't evaluate this
+         * @throws VisADException  VisAD problem
+         */
+        Object evaluate(Context context)
+                throws VisADException, RemoteException, UnsupportedException {
+            Object value = node.evaluate(context);
+            if (value instanceof Data) {
+                return ((Data) value).negate();
+            }
+            if (value instanceof Long) {
+                return Long.valueOf(-((Long) value).longValue());
+            }
+            if (value instanceof Double) {
+                return Double.valueOf(-((Double) value).doubleValue());
+            }
+            throw UNSUPPORTED;
+        }
+    }
+
+    /**
+     * A binary operator
+     */
+    private static class Binary extends Node {
+
+        /** operator */
+        int op;
+
+        /** left side */
+        Node left;
+
+        /** right side */
+        Node right;
+
+        /**
+         * ctor
+         *
+         * @param op operator
+         * @param left left side
+         * @param right right side
+         */
+        Binary(int op, Node left, Node right) {
+            this.op    = op;
+            this.left  = left;
+            this.right = right;
+        }
+
+        /**
+         * Apply the operator
+         *
+         * @param context the operands
+         *
+         * @return the result
+         *
+         * @throws RemoteException  Java RMI problem
+         * @throws UnsupportedException  can't evaluate this
+         * @throws VisADException  VisAD problem
+         */
+        Object evaluate(Context context)
+                throws VisADException, RemoteException, UnsupportedException {
+            Object l = left.evaluate(context);
+            Object r = right.evaluate(context);
+            if ((l instanceof String) || (r instanceof String)) {
+                if ((op == OP_ADD) && (l instanceof String)
+                        && (r instanceof String)) {
+                    return (String) l + (String) r;
+                }
+                throw UNSUPPORTED;
+            }
+            if ((l instanceof Data) || (r instanceof Data)) {
+                //Numbers are made into Reals the way the jython operators do
+                Data ld = (l instanceof Data)
+                          ? (Data) l
+                          : new Real(((Number) l).doubleValue());
+                Data rd = (r instanceof Data)
+                          ? (Data) r
+                          : new Real(((Number) r).doubleValue());
+                switch (op) {
+
+                  case OP_ADD :
+                      return ld.add(rd);
+
+                  case OP_SUBTRACT :
+                      return ld.subtract(rd);
+
+                  case OP_MULTIPLY :
+                      return ld.multiply(rd);
+
+                  case OP_DIVIDE :
+                      return ld.divide(rd);
+
+                  case OP_REMAINDER :
+                      return ld.remainder(rd);
+
+                  default :
+                      return ld.pow(rd);
+                }
+            }
+            if ((l instanceof Long) && (r instanceof Long)) {
+                long a = ((Long) l).longValue();
+                long b = ((Long) r).longValue();
+                switch (op) {
+
+                  case OP_ADD :
+                      return Long.valueOf(a + b);
+
+                  case OP_SUBTRACT :
+                      return Long.valueOf(a - b);
+
+                  case OP_MULTIPLY :
+                      return Long.valueOf(a * b);
+
+                  case OP_DIVIDE :
+                      if (b == 0) {
+                          throw UNSUPPORTED;
+                      }
+                      //Python integer division
+                      return Long.valueOf(Math.floorDiv(a, b));
+
+                  case OP_REMAINDER :
+                      if (b == 0) {
+                          throw UNSUPPORTED;
+                      }
+                      return Long.valueOf(Math.floorMod(a, b));
+
+                  default :
+                      if (b < 0) {
+                          return Double.valueOf(Math.pow(a, b));
+                      }
+                      return Long.valueOf((long) Math.pow(a, b));
+                }
+            }
+            double a = ((Number) l).doubleValue();
+            double b = ((Number) r).doubleValue();
+            switch (op) {
+
+              case OP_ADD :
+                  return Double.valueOf(a + b);
+
+              case OP_SUBTRACT :
+                  return Double.valueOf(a - b);
+
+              case OP_MULTIPLY :
+                  return Double.valueOf(a * b);
+
+              case OP_DIVIDE :
+                  if (b == 0) {
+                      throw UNSUPPORTED;
+                  }
+                  return Double.valueOf(a / b);
+
+              case OP_REMAINDER :
+                  if (b == 0) {
+                      throw UNSUPPORTED;
+                  }
+                  //Python takes the sign of the divisor
+                  double mod = a % b;
+                  if ((mod != 0) && ((mod < 0) != (b < 0))) {
+                      mod += b;
+                  }
+                  return Double.valueOf(mod);
+
+              default :
+                  return Double.valueOf(Math.pow(a, b));
+            }
+        }
+    }
+
+    /**
+     * One of the functions the station model interpreter defines
+     */
+    private static class Function extends Node {
+
+        /** function name */
+        String name;
+
+        /** arguments */
+        Node[] args;
+
+        /**
+         * ctor
+         *
+         * @param name function name
+         * @param args arguments
+         */
+        Function(String name, Node[] args) {
+            this.name = name;
+            this.args = args;
+        }
+
+        /**
+         * Call the function
+         *
+         * @param context the operands
+         *
+         * @return the result
+         *
+         * @throws RemoteException  Java RMI problem
+         * @throws UnsupportedException  can't evaluate this
+         * @throws VisADException  VisAD problem
+         */
+        Object evaluate(Context context)
+                throws VisADException, RemoteException, UnsupportedException {
+            Object value = args[0].evaluate(context);
+            if (name.equals("format")) {
+                if ( !(context.formatter instanceof TextSymbol)) {
+                    throw UNSUPPORTED;
+                }
+                TextSymbol formatter = (TextSymbol) context.formatter;
+                if (value instanceof Real) {
+                    return formatter.format((Real) value);
+                }
+                if ((value instanceof Double) || (value instanceof Long)) {
+                    return formatter.format(((Number) value).doubleValue());
+                }
+                throw UNSUPPORTED;
+            }
+            if (name.equals("convert")) {
+                if (context.displayUnit == null) {
+                    return value;
+                }
+                if (value instanceof Real) {
+                    return Double.valueOf(
+                        ((Real) value).getValue(context.displayUnit));
+                }
+                throw UNSUPPORTED;
+            }
+            if (name.equals("str")) {
+                if ((value instanceof Data) || (value instanceof String)
+                        || (value instanceof Long)) {
+                    return value.toString();
+                }
+                throw UNSUPPORTED;
+            }
+            //formatDate
+            Object format = args[1].evaluate(context);
+            if ( !(value instanceof DateTime) || !(format instanceof String)) {
+                throw UNSUPPORTED;
+            }
+            return Util.formatUtcDate((DateTime) value, (String) format);
+        }
+    }
+
+    /** The function names and their number of arguments */
+    private static final String[][] FUNCTIONS = {
+        { "format", "1" }, { "convert", "1" }, { "str", "1" },
+        { "formatDate", "2" }
+    };
+
+    /** the code */
+    private String code;
+
+    /** the tree */
+    private Node root;
+
+    /** The code being parsed */
+    private String text;
+
+    /** Where we are in the text */
+    private int pos;
+
+    /**
+     * ctor
+     *
+     * @param code the code
+     */
+    private StationModelExpression(String code) {
+        this.code = code;
+    }
+
+    /**
+     * Compile the code
+     *
+     * @param code the code without the leading =
+     *
+     * @return the expression or null if the code is more than this handles
+     */
+    public static StationModelExpression compile(String code) {
+        StationModelExpression expression = new StationModelExpression(code);
+        expression.text = code;
+        expression.pos  = 0;
+        try {
+            expression.root = expression.parseSum();
+            expression.skipWhite();
+            if (expression.pos != code.length()) {
+                return null;
+            }
+        } catch (IllegalArgumentException iae) {
+            return null;
+        }
+        expression.text = null;
+        return expression;
+    }
+
+    /**
+     * Evaluate the expression
+     *
+     * @param operands operand name to value
+     * @param formatter the object used by format()
+     * @param displayUnit the unit used by convert(). May be null.
+     *
+     * @return the result, converted to Data the way the jython result is,
+     * or null if the values are ones this can't handle
+     *
+     * @throws RemoteException  Java RMI problem
+     * @throws VisADException  VisAD problem
+     */
+    public Data evaluate(Map<String, Data> operands, Object formatter,
+                         Unit displayUnit)
+            throws VisADException, RemoteException {
+        Context context = new Context();
+        context.operands    = operands;
+        context.formatter   = formatter;
+        context.displayUnit = displayUnit;
+        Object result;
+        try {
+            result = root.evaluate(context);
+        } catch (UnsupportedException ue) {
+            return null;
+        }
+        if (result instanceof Data) {
+            return (Data) result;
+        }
+        return new Text(result.toString());
+    }
+
+    /**
+     * Get the code
+     *
+     * @return the code
+     */
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * to string
+     *
+     * @return to string
+     */
+    public String toString() {
+        return code;
+    }
+
+    /**
+     * Skip over white space
+     */
+    private void skipWhite() {
+        while ((pos < text.length())
+                && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    /**
+     * Look at the next character
+     *
+     * @return next non-white space character or 0 at the end
+     */
+    private char peek() {
+        skipWhite();
+        return (pos < text.length())
+               ? text.charAt(pos)
+               : 0;
+    }
+
+    /**
+     * Parse a sum: product (('+'|'-') product)*
+     *
+     * @return the node
+     */
+    private Node parseSum() {
+        Node node = parseProduct();
+        while (true) {
+            char c = peek();
+            if (c == '+') {
+                pos++;
+                node = new Binary(OP_ADD, node, parseProduct());
+            } else if (c == '-') {
+                pos++;
+                node = new Binary(OP_SUBTRACT, node, parseProduct());
+            } else {
+                return node;
+            }
+        }
+    }
+
+    /**
+     * Parse a product: unary (('*'|'/'|'%') unary)*
+     *
+     * @return the node
+     */
+    private Node parseProduct() {
+        Node node = parseUnary();
+        while (true) {
+            char c = peek();
+            if ((c == '*') && !text.startsWith("**", pos)) {
+                pos++;
+                node = new Binary(OP_MULTIPLY, node, parseUnary());
+            } else if ((c == '/') && !text.startsWith("//", pos)) {
+                pos++;
+                node = new Binary(OP_DIVIDE, node, parseUnary());
+            } else if (c == '%') {
+                pos++;
+                node = new Binary(OP_REMAINDER, node, parseUnary());
+            } else {
+                return node;
+            }
+        }
+    }
+
+    /**
+     * Parse a unary: ('-'|'+') unary | power
+     *
+     * @return the node
+     */
+    private Node parseUnary() {
+        char c = peek();
+        if (c == '-') {
+            pos++;
+            return new Negate(parseUnary());
+        }
+        if (c == '+') {
+            pos++;
+            return parseUnary();
+        }
+        return parsePower();
+    }
+
+    /**
+     * Parse a power: primary ('**' unary)?
+     *
+     * @return the node
+     */
+    private Node parsePower() {
+        Node node = parsePrimary();
+        peek();
+        if (text.startsWith("**", pos)) {
+            pos += 2;
+            return new Binary(OP_POW, node, parseUnary());
+        }
+        return node;
+    }
+
+    /**
+     * Parse a number, string, operand, function call or (sum)
+     *
+     * @return the node
+     */
+    private Node parsePrimary() {
+        char c = peek();
+        if (c == '(') {
+            pos++;
+            Node node = parseSum();
+            expect(')');
+            return node;
+        }
+        if ((c == '\'') || (c == '"')) {
+            int end = text.indexOf(c, pos + 1);
+            if (end < 0) {
+                throw new IllegalArgumentException("No closing quote");
+            }
+            String s = text.substring(pos + 1, end);
+            if (s.indexOf('\\') >= 0) {
+                throw new IllegalArgumentException("Escapes");
+            }
+            pos = end + 1;
+            return new Literal(s);
+        }
+        if (Character.isDigit(c) || (c == '.')) {
+            return parseNumber();
+        }
+        if (Character.isJavaIdentifierStart(c) && (c != '$')) {
+            int start = pos;
+            while ((pos < text.length())
+                    && Character.isJavaIdentifierPart(text.charAt(pos))
+                    && (text.charAt(pos) != '$')) {
+                pos++;
+            }
+            String name = text.substring(start, pos);
+            if (peek() == '.') {
+                //Attributes and methods are left to jython
+                throw new IllegalArgumentException("Attribute");
+            }
+            if (peek() != '(') {
+                return new Operand(name);
+            }
+            pos++;
+            List<Node> args = new ArrayList<Node>();
+            if (peek() != ')') {
+                args.add(parseSum());
+                while (peek() == ',') {
+                    pos++;
+                    args.add(parseSum());
+                }
+            }
+            expect(')');
+            for (String[] function : FUNCTIONS) {
+                if (function[0].equals(name)
+                        && (Integer.parseInt(function[1]) == args.size())) {
+                    return new Function(name,
+                                        args.toArray(new Node[args.size()]));
+                }
+            }
+            throw new IllegalArgumentException("Unknown function:" + name);
+        }
+        throw new IllegalArgumentException("Unexpected:" + c);
+    }
+
+    /**
+     * Parse a number literal. Numbers without a decimal point or exponent
+     * are integers like in Python.
+     *
+     * @return the node
+     */
+    private Node parseNumber() {
+        int     start   = pos;
+        boolean isFloat = false;
+        while ((pos < text.length()) && Character.isDigit(text.charAt(pos))) {
+            pos++;
+        }
+        if ((pos < text.length()) && (text.charAt(pos) == '.')) {
+            isFloat = true;
+            pos++;
+            while ((pos < text.length())
+                    && Character.isDigit(text.charAt(pos))) {
+                pos++;
+            }
+        }
+        if ((pos < text.length())
+                && ((text.charAt(pos) == 'e') || (text.charAt(pos) == 'E'))) {
+            isFloat = true;
+            pos++;
+            if ((pos < text.length())
+                    && ((text.charAt(pos) == '-')
+                        || (text.charAt(pos) == '+'))) {
+                pos++;
+            }
+            while ((pos < text.length())
+                    && Character.isDigit(text.charAt(pos))) {
+                pos++;
+            }
+        }
+        if ((pos < text.length())
+                && Character.isJavaIdentifierPart(text.charAt(pos))) {
+            //e.g., 10L or 0x10
+            throw new IllegalArgumentException("Number suffix");
+        }
+        String s = text.substring(start, pos);
+        try {
+            if ( !isFloat) {
+                if ((s.length() > 1) && s.startsWith("0")) {
+                    //Octal in python 2
+                    throw new IllegalArgumentException("Octal");
+                }
+                return new Literal(Long.valueOf(s));
+            }
+            return new Literal(Double.valueOf(s));
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("Bad number:" + s);
+        }
+    }
+
+    /**
+     * Read the given character
+     *
+     * @param c the character
+     */
+    private void expect(char c) {
+        if (peek() != c) {
+            throw new IllegalArgumentException("Expected:" + c);
+        }
+        pos++;
+    }
+}
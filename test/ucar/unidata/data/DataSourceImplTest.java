@@ -0,0 +1,252 @@
+/*
+ * Copyright 1997-2022 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.data;
+
+
+import org.junit.Test;
+
+import visad.Data;
+import visad.Real;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Tests the concurrent loading in DataSourceImpl.getData
+ */
+public class DataSourceImplTest {
+
+    /** How long each simulated read takes */
+    private static final long READ_TIME = 200;
+
+    /** Number of simulated displays */
+    private static final int NUM_DISPLAYS = 8;
+
+    /**
+     * Different data choices should be read in parallel so the time
+     * to load N displays should be close to the time to load one.
+     *
+     * @throws Exception on badness
+     */
+    @Test
+    public void testDifferentKeysLoadInParallel() throws Exception {
+        SlowDataSource   dataSource = new SlowDataSource(true);
+        List<DataChoice> choices    = new ArrayList<DataChoice>();
+        for (int i = 0; i < NUM_DISPLAYS; i++) {
+            choices.add(new DirectDataChoice(dataSource, "field" + i,
+                                             "field" + i, "field" + i,
+                                             new ArrayList()));
+        }
+        long time = loadAll(dataSource, choices);
+        log("parallel load of " + NUM_DISPLAYS + " displays: " + time
+            + " ms");
+        assertEquals("each data choice should be read once", NUM_DISPLAYS,
+                     dataSource.reads.get());
+        assertTrue("loads should overlap: " + time,
+                   time < READ_TIME * NUM_DISPLAYS / 2);
+    }
+
+    /**
+     * Data sources that don't support concurrent loads still read
+     * one at a time.
+     *
+     * @throws Exception on badness
+     */
+    @Test
+    public void testSerialDataSource() throws Exception {
+        SlowDataSource   dataSource = new SlowDataSource(false);
+        List<DataChoice> choices    = new ArrayList<DataChoice>();
+        for (int i = 0; i < NUM_DISPLAYS; i++) {
+            choices.add(new DirectDataChoice(dataSource, "field" + i,
+                                             "field" + i, "field" + i,
+                                             new ArrayList()));
+        }
+        long time = loadAll(dataSource, choices);
+        log("serial load of " + NUM_DISPLAYS + " displays: " + time
+            + " ms");
+        assertTrue("loads should not overlap: " + time,
+                   time >= READ_TIME * NUM_DISPLAYS);
+    }
+
+    /**
+     * Concurrent requests for the same data choice should share one read.
+     *
+     * @throws Exception on badness
+     */
+    @Test
+    public void testSameKeySharesOneRead() throws Exception {
+        SlowDataSource   dataSource = new SlowDataSource(true);
+        DataChoice       choice     = new DirectDataChoice(dataSource,
+                                          "field", "field", "field",
+                                          new ArrayList());
+        List<DataChoice> choices    = new ArrayList<DataChoice>();
+        for (int i = 0; i < NUM_DISPLAYS; i++) {
+            choices.add(choice);
+        }
+        final Data[] results = loadAll(dataSource, choices, null);
+        assertEquals("only one read should happen", 1,
+                     dataSource.reads.get());
+        for (int i = 1; i < results.length; i++) {
+            assertSame("all requesters should get the same data",
+                       results[0], results[i]);
+        }
+        assertEquals("no outstanding calls", 0,
+                     DataSourceImpl.getOutstandingGetDataCalls());
+    }
+
+    /**
+     * Load the choices each in their own thread
+     *
+     * @param dataSource data source
+     * @param choices the choices
+     *
+     * @return elapsed time in ms
+     *
+     * @throws Exception on badness
+     */
+    private long loadAll(DataSourceImpl dataSource, List<DataChoice> choices)
+            throws Exception {
+        long[] time = { 0 };
+        loadAll(dataSource, choices, time);
+        return time[0];
+    }
+
+    /**
+     * Load the choices each in their own thread
+     *
+     * @param dataSource data source
+     * @param choices the choices
+     * @param time if non-null holds the elapsed time
+     *
+     * @return the data
+     *
+     * @throws Exception on badness
+     */
+    private Data[] loadAll(final DataSourceImpl dataSource,
+                           final List<DataChoice> choices, long[] time)
+            throws Exception {
+        final Data[]      results = new Data[choices.size()];
+        final Exception[] errors  = { null };
+        List<Thread>      threads = new ArrayList<Thread>();
+        for (int i = 0; i < choices.size(); i++) {
+            final int        idx    = i;
+            final DataChoice choice = choices.get(i);
+            threads.add(new Thread() {
+                public void run() {
+                    try {
+                        results[idx] = dataSource.getData(choice, null,
+                                new DataSelection(), null);
+                    } catch (Exception exc) {
+                        errors[0] = exc;
+                    }
+                }
+            });
+        }
+        long t1 = System.currentTimeMillis();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long t2 = System.currentTimeMillis();
+        if (errors[0] != null) {
+            throw errors[0];
+        }
+        if (time != null) {
+            time[0] = t2 - t1;
+        }
+        return results;
+    }
+
+    /**
+     * Log a message
+     *
+     * @param msg the message
+     */
+    private static void log(String msg) {
+        System.err.println(msg);
+    }
+
+    /**
+     * A data source whose reads take a while
+     */
+    private static class SlowDataSource extends DataSourceImpl {
+
+        /** number of reads */
+        AtomicInteger reads = new AtomicInteger(0);
+
+        /** can we load concurrently */
+        boolean concurrent;
+
+        /**
+         * ctor
+         *
+         * @param concurrent can we load concurrently
+         */
+        SlowDataSource(boolean concurrent) {
+            super(null, "slow", "slow", new Hashtable());
+            this.concurrent = concurrent;
+        }
+
+        /**
+         * Can we load concurrently
+         *
+         * @return concurrent
+         */
+        protected boolean canLoadDataConcurrently() {
+            return concurrent;
+        }
+
+        /**
+         * Don't make any choices
+         */
+        protected void doMakeDataChoices() {}
+
+        /**
+         * Simulate a slow read
+         *
+         * @param dataChoice the choice
+         * @param category the category
+         * @param dataSelection the selection
+         * @param requestProperties properties
+         *
+         * @return the data
+         */
+        protected Data getDataInner(DataChoice dataChoice,
+                                    DataCategory category,
+                                    DataSelection dataSelection,
+                                    Hashtable requestProperties) {
+            reads.incrementAndGet();
+            try {
+                Thread.sleep(READ_TIME);
+            } catch (InterruptedException ie) {}
+            return new Real(reads.get());
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.data;
+
+
+import org.junit.Test;
+
+import ucar.unidata.util.Misc;
+import ucar.unidata.util.ObjectPair;
+
+import visad.Data;
+import visad.Real;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+
+
+/**
+ * Tests the caching of the results of a {@link DerivedDataChoice}
+ */
+public class DerivedDataChoiceTest {
+
+    /**
+     * A data source for the operands
+     */
+    private static class OperandDataSource extends DataSourceImpl {
+
+        /**
+         * ctor
+         */
+        OperandDataSource() {
+            super(null, "operands", "operands", new Hashtable());
+        }
+
+        /**
+         * Don't make any choices
+         */
+        protected void doMakeDataChoices() {}
+
+        /**
+         * Get the data
+         *
+         * @param dataChoice the choice
+         * @param category the category
+         * @param dataSelection the selection
+         * @param requestProperties properties
+         *
+         * @return the data
+         */
+        protected Data getDataInner(DataChoice dataChoice,
+                                    DataCategory category,
+                                    DataSelection dataSelection,
+                                    Hashtable requestProperties) {
+            return new Real(1);
+        }
+    }
+
+    /**
+     * Make the operand fetches for a data source
+     *
+     * @param dataSource the data source
+     * @param ops the operands are added to this
+     *
+     * @return the {@link ObjectPair}s of DataChoice and DataOperand
+     */
+    private static List makeFetches(DataSource dataSource, List ops) {
+        DataChoice choice = new DirectDataChoice(dataSource, "T", "T", "T",
+                                new ArrayList());
+        DataOperand op = new DataOperand("T", choice);
+        ops.add(op);
+        return Misc.newList(new ObjectPair(choice, op));
+    }
+
+    /**
+     * Make the request properties of a display
+     *
+     * @param requester the display
+     *
+     * @return the properties
+     */
+    private static Hashtable makeProperties(Object requester) {
+        Hashtable properties = new Hashtable();
+        properties.put(DataChoice.PROP_REQUESTER, requester);
+        properties.put(DerivedDataChoice.PROP_FROMDERIVED, Boolean.TRUE);
+        return properties;
+    }
+
+    /**
+     * A result made for one display is used by another
+     */
+    @Test
+    public void testHitAcrossRequesters() {
+        List          ops       = new ArrayList();
+        List          fetches   = makeFetches(new OperandDataSource(), ops);
+        DataSelection selection = new DataSelection();
+        Object key1 = DerivedDataChoice.makeCacheKey("T*2", ops, fetches,
+                          selection, makeProperties("display1"));
+        Object key2 = DerivedDataChoice.makeCacheKey("T*2", ops, fetches,
+                          selection, makeProperties("display2"));
+        assertEquals(key1, key2);
+        assertFalse(key1.equals(DerivedDataChoice.makeCacheKey("T*3", ops,
+                fetches, selection, makeProperties("display1"))));
+
+        Data result = new Real(2);
+        new DerivedDataChoice().cacheResult(key1, result, fetches);
+        assertSame(result, DerivedDataChoice.getCachedResult(key2));
+    }
+
+    /**
+     * A change to the data of an operand removes the result
+     */
+    @Test
+    public void testDataChangeFlushes() {
+        OperandDataSource dataSource = new OperandDataSource();
+        List              ops        = new ArrayList();
+        List              fetches    = makeFetches(dataSource, ops);
+        Object key = DerivedDataChoice.makeCacheKey("T*4", ops, fetches,
+                         new DataSelection(), makeProperties("display"));
+        Data result = new Real(4);
+        new DerivedDataChoice().cacheResult(key, result, fetches);
+        assertSame(result, DerivedDataChoice.getCachedResult(key));
+        dataSource.notifyDataChange();
+        assertNull(DerivedDataChoice.getCachedResult(key));
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.data.grid;
+
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+
+/**
+ * Tests the {@link EnsembleStatistics} against the way GridMath computed
+ * each statistic over the members. The main method runs a benchmark of
+ * computing all of the statistics one at a time against all at once:
+ * <pre>
+ * java ucar.unidata.data.grid.EnsembleStatisticsTest [numMembers] [numPoints]
+ * </pre>
+ */
+public class EnsembleStatisticsTest {
+
+    /** the statistics */
+    private static final int[] STATS = {
+        EnsembleStatistics.MEAN, EnsembleStatistics.SUM,
+        EnsembleStatistics.STDEV, EnsembleStatistics.MIN,
+        EnsembleStatistics.MAX, EnsembleStatistics.RANGE,
+        EnsembleStatistics.PERCENTILE, EnsembleStatistics.PERCENTILE,
+        EnsembleStatistics.MODE, EnsembleStatistics.UPROB,
+        EnsembleStatistics.FIRST
+    };
+
+    /** the params of the statistics */
+    private static final float[] PARAMS = {
+        0, 0, 0, 0, 0, 0, 10, 90, 0, 281, 0
+    };
+
+    /**
+     * Make the members. The values are rounded so there are repeats for
+     * the mode. Some values are missing and the third member is missing.
+     *
+     * @param numMembers number of members
+     * @param numPoints number of grid points
+     *
+     * @return the members
+     */
+    private static float[][] makeMembers(int numMembers, int numPoints) {
+        Random    random  = new Random(numMembers);
+        float[][] members = new float[numMembers][];
+        for (int k = 0; k < numMembers; k++) {
+            if (k == 2) {
+                continue;
+            }
+            members[k] = new float[numPoints];
+            for (int p = 0; p < numPoints; p++) {
+                members[k][p] = (random.nextInt(97) == 0)
+                                ? Float.NaN
+                                : Math.round(280 + 4 * random.nextGaussian()
+                                             + p % 7);
+            }
+        }
+        return members;
+    }
+
+    /**
+     * Compute the statistic the way GridMath.applyFunctionOverMembers did
+     *
+     * @param members the members
+     * @param stat the statistic
+     * @param param the param
+     *
+     * @return the values
+     */
+    private static float[] reference(float[][] members, int stat,
+                                     float param) {
+        int numMembers = members.length;
+        int numPoints  = 0;
+        for (float[] member : members) {
+            if (member != null) {
+                numPoints = member.length;
+            }
+        }
+        float[] values = null;
+        float[] rangev = null;
+        if (stat == EnsembleStatistics.FIRST) {
+            for (int k = 0; k < numMembers; k++) {
+                if (members[k] != null) {
+                    return (float[]) members[k].clone();
+                }
+            }
+        }
+        if (stat <= EnsembleStatistics.RANGE) {
+            for (int k = 0; k < numMembers; k++) {
+                if (members[k] == null) {
+                    continue;
+                }
+                if (values == null) {
+                    values = (float[]) members[k].clone();
+                    rangev = (float[]) members[k].clone();
+                    continue;
+                }
+                for (int j = 0; j < numPoints; j++) {
+                    float value = members[k][j];
+                    if (value != value) {
+                        continue;
+                    }
+                    if (stat == EnsembleStatistics.MAX) {
+                        values[j] = Math.max(values[j], value);
+                    } else if (stat == EnsembleStatistics.MIN) {
+                        values[j] = Math.min(values[j], value);
+                    } else if (stat == EnsembleStatistics.RANGE) {
+                        values[j] = Math.max(values[j], value);
+                        rangev[j] = Math.min(rangev[j], value);
+                    } else {
+                        values[j] += value;
+                    }
+                }
+            }
+            if (stat == EnsembleStatistics.MEAN) {
+                for (int j = 0; j < numPoints; j++) {
+                    values[j] = values[j] / numMembers;
+                }
+            } else if (stat == EnsembleStatistics.RANGE) {
+                for (int j = 0; j < numPoints; j++) {
+                    values[j] = values[j] - rangev[j];
+                }
+            } else if (stat == EnsembleStatistics.STDEV) {
+                float[] stdevs = new float[numPoints];
+                for (int j = 0; j < numPoints; j++) {
+                    values[j] = values[j] / numMembers;
+                }
+                for (int k = 0; k < numMembers; k++) {
+                    if (members[k] == null) {
+                        continue;
+                    }
+                    for (int j = 0; j < numPoints; j++) {
+                        float value = members[k][j];
+                        if (value != value) {
+                            continue;
+                        }
+                        stdevs[j] += (values[j] - value)
+                                     * (values[j] - value);
+                    }
+                }
+                for (int j = 0; j < numPoints; j++) {
+                    values[j] = (float) Math.sqrt(stdevs[j]
+                            / (numMembers - 1));
+                }
+            }
+            return values;
+        }
+        values = new float[numPoints];
+        for (int j = 0; j < numPoints; j++) {
+            float[] valuesAll = new float[numMembers];
+            for (int k = 0; k < numMembers; k++) {
+                if ((members[k] != null) && (members[k][j] == members[k][j])) {
+                    valuesAll[k] = members[k][j];
+                }
+            }
+            if (stat == EnsembleStatistics.PERCENTILE) {
+                values[j] = evaluatePercentile(valuesAll, (int) param);
+            } else if (stat == EnsembleStatistics.MODE) {
+                values[j] = evaluateMode(valuesAll);
+            } else {
+                values[j] = EnsembleStatistics.evaluateUProbability(
+                    valuesAll, param, numMembers);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * GridMath.evaluatePercentile for values with no missing values
+     *
+     * @param values the values
+     * @param p the percent
+     *
+     * @return the percentile
+     */
+    private static float evaluatePercentile(float[] values, double p) {
+        int     length = values.length;
+        double  n      = length;
+        double  pos    = p * (n + 1) / 100;
+        double  fpos   = Math.floor(pos);
+        int     intPos = (int) fpos;
+        float   dif    = (float) (pos - fpos);
+        float[] sorted = (float[]) values.clone();
+        Arrays.sort(sorted);
+        if (pos < 1) {
+            return sorted[0];
+        }
+        if (pos >= n) {
+            return sorted[length - 1];
+        }
+        float lower = sorted[intPos - 1];
+        float upper = sorted[intPos];
+        return lower + dif * (upper - lower);
+    }
+
+    /**
+     * GridMath.evaluateMode
+     *
+     * @param data the data
+     *
+     * @return the mode
+     */
+    private static float evaluateMode(float[] data) {
+        float oldmd    = 0;
+        int   oldcount = 0;
+        for (int t = 0; t < data.length; t++) {
+            float md    = data[t];
+            int   count = 1;
+            for (int w = t + 1; w < data.length; w++) {
+                if (md == data[w]) {
+                    count++;
+                }
+            }
+            if (count > oldcount) {
+                oldmd    = md;
+                oldcount = count;
+            }
+        }
+        return oldmd;
+    }
+
+    /**
+     * All of the statistics at once are the same as one at a time
+     */
+    @Test
+    public void testStatistics() {
+        float[][] members = makeMembers(21, 3 * EnsembleStatistics.TILE_POINTS
+                                        + 17);
+        float[][] results = new EnsembleStatistics(STATS, PARAMS, -999999,
+                                999999).compute(members);
+        for (int s = 0; s < STATS.length; s++) {
+            float[] expected = reference(members, STATS[s], PARAMS[s]);
+            for (int p = 0; p < expected.length; p++) {
+                assertEquals("stat:" + STATS[s] + " at " + p, expected[p],
+                             results[s][p], 0);
+            }
+        }
+    }
+
+    /**
+     * Members outside of the bounds aren't used for the probability
+     */
+    @Test
+    public void testProbabilityBounds() {
+        float[][] members = {
+            { 1 }, { 2 }, { 50 }, { 3 }, { 4 }
+        };
+        float[][] results = new EnsembleStatistics(new int[] {
+                                EnsembleStatistics.UPROB }, new float[] {
+                                2.5f }, 0, 10).compute(members);
+        assertEquals(EnsembleStatistics.evaluateUProbability(new float[] { 1,
+                2, 3, 4 }, 2.5f, 5), results[0][0], 0);
+    }
+
+    /**
+     * One member gives its own values
+     */
+    @Test
+    public void testOneMember() {
+        float[][] members = {
+            { 1, Float.NaN, 3 }
+        };
+        float[][] results = new EnsembleStatistics(STATS, PARAMS, -999999,
+                                999999).compute(members);
+        for (int s = 0; s < STATS.length; s++) {
+            assertEquals(1, results[s][0], 0);
+            assertEquals(Float.NaN, results[s][1], 0);
+        }
+    }
+
+    /**
+     * Run the benchmark
+     *
+     * @param args number of members and points
+     */
+    public static void main(String[] args) {
+        int numMembers = (args.length > 0)
+                         ? Integer.parseInt(args[0])
+                         : 50;
+        int numPoints  = (args.length > 1)
+                         ? Integer.parseInt(args[1])
+                         : 100000;
+        float[][] members = makeMembers(numMembers, numPoints);
+        System.out.println("members:" + numMembers + " points:" + numPoints
+                           + " statistics:" + STATS.length);
+        for (int loop = 0; loop < 3; loop++) {
+            long t1 = System.currentTimeMillis();
+            for (int s = 0; s < STATS.length; s++) {
+                reference(members, STATS[s], PARAMS[s]);
+            }
+            long t2 = System.currentTimeMillis();
+            new EnsembleStatistics(STATS, PARAMS, -999999,
+                                   999999).compute(members);
+            long t3 = System.currentTimeMillis();
+            System.out.println("one at a time:" + (t2 - t1) + "ms fused:"
+                               + (t3 - t2) + "ms");
+        }
+    }
+}
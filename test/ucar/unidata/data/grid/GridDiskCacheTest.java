@@ -0,0 +1,145 @@
+/*
+ * Copyright 1997-2022 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+
+package ucar.unidata.data.grid;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+
+
+/**
+ * The tests for the GridDiskCache class.
+ */
+public class GridDiskCacheTest {
+
+    /** The cache directory */
+    private File dir;
+
+    /** The cache */
+    private GridDiskCache cache;
+
+    /**
+     * Make a cache in a temporary directory
+     *
+     * @throws Exception on badness
+     */
+    @Before
+    public void setUp() throws Exception {
+        dir   = Files.createTempDirectory("gridcache").toFile();
+        cache = GridDiskCache.getCache(dir, 1000000);
+    }
+
+    /**
+     * Clean up
+     */
+    @After
+    public void tearDown() {
+        delete(dir);
+    }
+
+    /**
+     * Slices should come back the way they were written
+     */
+    @Test
+    public void testRoundTrip() {
+        int[]   shape  = { 2, 3 };
+        float[] values = { 1, 2, Float.NaN, 4, 5, 6 };
+        assertNull(cache.read("key", 100));
+        cache.write("key", 100, shape, values);
+        GridDiskCache.Slice slice = cache.read("key", 100);
+        assertNotNull(slice);
+        assertArrayEquals(shape, slice.shape);
+        assertArrayEquals(values, slice.values, 0f);
+        assertNull("different key", cache.read("other key", 100));
+    }
+
+    /**
+     * Entries are invalid once the source has been modified
+     */
+    @Test
+    public void testSourceModified() {
+        cache.write("key", 100, new int[] { 1 }, new float[] { 1 });
+        assertNull("source was modified", cache.read("key", 200));
+        assertNull("stale entry should be removed", cache.read("key", 100));
+    }
+
+    /**
+     * Scouring leaves the temporary files of writes that are in flight
+     * but deletes old ones
+     *
+     * @throws Exception on badness
+     */
+    @Test
+    public void testScourLeavesTempFiles() throws Exception {
+        GridDiskCache small = GridDiskCache.getCache(dir, 1);
+        small.write("key", 100, new int[] { 4 }, new float[] { 1, 2, 3, 4 });
+        File inFlight = new File(dir, "inflight.grd.1.tmp");
+        File orphan   = new File(dir, "orphan.grd.2.tmp");
+        Files.write(inFlight.toPath(), new byte[100]);
+        Files.write(orphan.toPath(), new byte[100]);
+        orphan.setLastModified(System.currentTimeMillis()
+                               - 2 * 60 * 60 * 1000L);
+        small.scour();
+        assertTrue("in flight temp file was scoured", inFlight.exists());
+        assertFalse("old temp file was not scoured", orphan.exists());
+        assertNull("entry was not scoured", small.read("key", 100));
+    }
+
+    /**
+     * Versions made from the same description are the same
+     */
+    @Test
+    public void testMakeVersion() {
+        String description = "dods://server/data|time=[0.0, 6.0]";
+        assertEquals(GridDiskCache.makeVersion(description),
+                     GridDiskCache.makeVersion(description));
+        assertFalse(GridDiskCache.makeVersion(description)
+                    == GridDiskCache.makeVersion(description + ", 12.0"));
+    }
+
+    /**
+     * Delete the file or directory
+     *
+     * @param f the file
+     */
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        f.delete();
+    }
+}
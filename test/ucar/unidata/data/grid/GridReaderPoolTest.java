@@ -0,0 +1,237 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.data.grid;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Tests the {@link GridReaderPool}. The main method runs a benchmark of
+ * reading the time steps of a local grid sequentially, through one
+ * handle, and in parallel, through a pool of handles:
+ * <pre>
+ * java ucar.unidata.data.grid.GridReaderPoolTest [numSteps] [numReaders] [msPerRead]
+ * </pre>
+ */
+public class GridReaderPoolTest {
+
+    /**
+     * A reader that stands in for a file handle. Its reads are not
+     * thread safe.
+     */
+    private static class FakeReader {
+
+        /** number of threads reading with this reader */
+        private AtomicInteger inUse = new AtomicInteger();
+
+        /** is this reader closed */
+        private boolean closed = false;
+
+        /**
+         * Read a time step
+         *
+         * @param request the request, with the time step set. Each read
+         *                has its own.
+         * @param msPerRead the time the read takes
+         *
+         * @return the time step that was read
+         *
+         * @throws Exception On badness
+         */
+        public int read(int[] request, int msPerRead) throws Exception {
+            if (inUse.incrementAndGet() != 1) {
+                throw new IllegalStateException("Reader is shared");
+            }
+            try {
+                int step = request[0];
+                //Stands in for the I/O of a slice read
+                Thread.sleep(msPerRead);
+                return step;
+            } finally {
+                inUse.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * A pool of fake readers that counts what it opens and closes
+     */
+    private static class FakePool extends GridReaderPool<FakeReader> {
+
+        /** number of readers opened */
+        private AtomicInteger opened = new AtomicInteger();
+
+        /** number of readers closed */
+        private AtomicInteger closed = new AtomicInteger();
+
+        /**
+         * Create the pool
+         *
+         * @param maxReaders max number of readers
+         */
+        public FakePool(int maxReaders) {
+            super(maxReaders);
+        }
+
+        /**
+         * Open a new reader
+         *
+         * @return the reader
+         */
+        protected FakeReader openReader() {
+            opened.incrementAndGet();
+            return new FakeReader();
+        }
+
+        /**
+         * Close the reader
+         *
+         * @param reader the reader
+         */
+        protected void closeReader(FakeReader reader) {
+            reader.closed = true;
+            closed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Each read gets its own reader, no more than the max are opened
+     * and each read sees its own request
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testParallelReads() throws Exception {
+        FakePool pool = new FakePool(4);
+        readAll(pool, 32, 8, 5);
+        assertTrue("opened:" + pool.opened.get(), pool.opened.get() <= 4);
+        assertTrue("opened:" + pool.opened.get(), pool.opened.get() > 1);
+        assertEquals(0, pool.closed.get());
+        pool.close();
+        assertEquals(pool.opened.get(), pool.closed.get());
+    }
+
+    /**
+     * A reader released after the pool is closed is closed
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testReleaseAfterClose() throws Exception {
+        FakePool   pool   = new FakePool(2);
+        FakeReader reader = pool.acquire();
+        pool.close();
+        assertEquals(0, pool.closed.get());
+        pool.release(reader);
+        assertTrue(reader.closed);
+        assertEquals(1, pool.closed.get());
+        try {
+            pool.acquire();
+            assertTrue("Acquired from a closed pool", false);
+        } catch (IllegalStateException ise) {}
+    }
+
+    /**
+     * Read the time steps from the pool, the way the grid adapters read
+     * the time steps of a sequence: one task per time step, each with its
+     * own copy of the request
+     *
+     * @param pool the pool
+     * @param numSteps number of time steps
+     * @param numThreads number of reading threads
+     * @param msPerRead the time each read takes
+     *
+     * @return the time in ms
+     *
+     * @throws Exception On badness
+     */
+    private static long readAll(final GridReaderPool<FakeReader> pool,
+                                int numSteps, int numThreads,
+                                final int msPerRead)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future>    results  = new ArrayList<Future>();
+        long            t1       = System.currentTimeMillis();
+        for (int step = 0; step < numSteps; step++) {
+            final int[] request = { step };
+            results.add(executor.submit(new Callable() {
+                public Object call() throws Exception {
+                    FakeReader reader = pool.acquire();
+                    try {
+                        return Integer.valueOf(reader.read(request,
+                                msPerRead));
+                    } finally {
+                        pool.release(reader);
+                    }
+                }
+            }));
+        }
+        for (int step = 0; step < numSteps; step++) {
+            assertEquals(Integer.valueOf(step), results.get(step).get());
+        }
+        long t2 = System.currentTimeMillis();
+        executor.shutdown();
+        return t2 - t1;
+    }
+
+    /**
+     * Run the benchmark
+     *
+     * @param args number of time steps, readers and ms per read
+     *
+     * @throws Exception On badness
+     */
+    public static void main(String[] args) throws Exception {
+        int numSteps   = (args.length > 0)
+                         ? Integer.parseInt(args[0])
+                         : 48;
+        int numReaders = (args.length > 1)
+                         ? Integer.parseInt(args[1])
+                         : 4;
+        int msPerRead  = (args.length > 2)
+                         ? Integer.parseInt(args[2])
+                         : 20;
+        System.out.println("steps:" + numSteps + " readers:" + numReaders
+                           + " ms per read:" + msPerRead);
+        FakePool sequential = new FakePool(1);
+        System.out.println("sequential:"
+                           + readAll(sequential, numSteps, 1, msPerRead)
+                           + "ms");
+        sequential.close();
+        FakePool parallel = new FakePool(numReaders);
+        System.out.println("parallel:"
+                           + readAll(parallel, numSteps, numReaders,
+                                     msPerRead) + "ms");
+        parallel.close();
+    }
+}
@@ -0,0 +1,420 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.data.grid;
+
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+
+/**
+ * Tests the {@link StencilEngine} against the level at a time versions
+ * of the smoothers and a median filter that sorts every window. The main
+ * method runs a benchmark of each smoother and the median filter:
+ * <pre>
+ * java ucar.unidata.data.grid.StencilEngineTest [nx] [ny] [nz] [numLoops]
+ * </pre>
+ */
+public class StencilEngineTest {
+
+    /** smoother types */
+    private static final String[] TYPES = {
+        "SM5S", "SM9S", "GWFS", "CRES", "MEDIAN"
+    };
+
+    /**
+     * Make a field with some missing values
+     *
+     * @param nx number of x points
+     * @param ny number of y points
+     * @param nz number of levels
+     * @param cyclic make the last column the same as the first
+     *
+     * @return the values
+     */
+    private static float[] makeValues(int nx, int ny, int nz,
+                                      boolean cyclic) {
+        Random  random = new Random(nx * 31 + ny);
+        float[] values = new float[nx * ny * nz];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (random.nextInt(50) == 0)
+                        ? Float.NaN
+                        : random.nextInt(1000) / 10.f;
+        }
+        if (cyclic) {
+            for (int row = 0; row < ny * nz; row++) {
+                values[row * nx + nx - 1] = values[row * nx];
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Pad each row of the cyclic level, the way GridUtil did
+     *
+     * @param data the level
+     * @param ncols number of columns to pad with
+     * @param nx number of x points
+     * @param ny number of y points
+     *
+     * @return the padded level
+     */
+    private static float[] extendGrid(float[] data, int ncols, int nx,
+                                      int ny) {
+        float[] newData = new float[data.length + ny * ncols * 2];
+        int     l       = 0;
+        for (int i = 0; i < ny; i++) {
+            for (int j = ncols; j > 0; j--) {
+                newData[l++] = data[nx - j - 1 + i * nx];
+            }
+            for (int j = 0; j < nx; j++) {
+                newData[l++] = data[j + i * nx];
+            }
+            for (int j = 0; j < ncols; j++) {
+                newData[l++] = data[j + 1 + i * nx];
+            }
+        }
+        return newData;
+    }
+
+    /**
+     * Smooth a level the way GridUtil did, padding a cyclic level
+     *
+     * @param type the smoother
+     * @param level the level
+     * @param nx number of x points
+     * @param ny number of y points
+     * @param cyclic is the level cyclic
+     * @param fprint weights of the weighted smoother
+     *
+     * @return the smoothed level
+     */
+    private static float[] smoothLevel(String type, float[] level, int nx,
+                                       int ny, boolean cyclic,
+                                       float[][] fprint) {
+        int nr = type.equals("SM5S")
+                 ? 5
+                 : type.equals("SM9S")
+                   ? 9
+                   : type.equals("GWFS")
+                     ? StencilEngine.makeGaussianWeights(6).length - 1
+                     : fprint.length / 2;
+        float[] in = level;
+        int     kxd = nx;
+        if (cyclic) {
+            in  = extendGrid(level, nr, nx, ny);
+            kxd = nx + 2 * nr;
+        }
+        float[] out = new float[in.length];
+        for (int j = 0; j < ny; j++) {
+            for (int i = 0; i < kxd; i++) {
+                out[j * kxd + i] = smoothPoint(type, in, i, j, kxd, ny,
+                        fprint);
+            }
+        }
+        if ( !cyclic) {
+            return out;
+        }
+        float[] result = new float[level.length];
+        for (int j = 0; j < ny; j++) {
+            System.arraycopy(out, j * kxd + nr, result, j * nx, nx);
+        }
+        return result;
+    }
+
+    /**
+     * Smooth a point as GridUtil did
+     *
+     * @param type the smoother
+     * @param g the level
+     * @param i x index
+     * @param j y index
+     * @param nx number of x points
+     * @param ny number of y points
+     * @param fprint weights of the weighted smoother
+     *
+     * @return the smoothed value
+     */
+    private static float smoothPoint(String type, float[] g, int i, int j,
+                                     int nx, int ny, float[][] fprint) {
+        float c = g[j * nx + i];
+        if (Float.isNaN(c)) {
+            return Float.NaN;
+        }
+        if (type.equals("SM5S") || type.equals("SM9S")) {
+            boolean nine = type.equals("SM9S");
+            int[][] offsets = {
+                { 1, 0 }, { -1, 0 }, { 0, 1 }, { 0, -1 }, { -1, -1 },
+                { 1, -1 }, { -1, 1 }, { 1, 1 }
+            };
+            float wt   = nine
+                         ? 2.0f
+                         : .125f;
+            float wt4  = nine
+                         ? 4.0f
+                         : .5f;
+            float dsum = c * wt4;
+            float wsum = wt4;
+            for (int k = 0; k < (nine
+                                 ? 8
+                                 : 4); k++) {
+                int   ii = i + offsets[k][0];
+                int   jj = j + offsets[k][1];
+                float w  = (k < 4)
+                           ? wt
+                           : 1.0f;
+                float v  = ((ii >= 0) && (ii < nx) && (jj >= 0)
+                            && (jj < ny))
+                           ? g[jj * nx + ii]
+                           : Float.NaN;
+                if ( !Float.isNaN(v)) {
+                    dsum += v * w;
+                    wsum += w;
+                } else if (nine) {
+                    dsum += c * w;
+                    wsum += w;
+                }
+            }
+            return dsum / wsum;
+        }
+        if (type.equals("GWFS")) {
+            float[][] w    = StencilEngine.makeGaussianWeights(6);
+            int       nr   = w.length - 1;
+            float     sumw = 0;
+            float     sumf = 0;
+            for (int jj = j - nr; jj <= j + nr; jj++) {
+                for (int ii = i - nr; ii <= i + nr; ii++) {
+                    if ((jj >= 0) && (jj < ny) && (ii >= 0) && (ii < nx)
+                            && !Float.isNaN(g[jj * nx + ii])) {
+                        float wt = w[Math.abs(ii - i)][Math.abs(jj - j)];
+                        sumw += wt;
+                        sumf += g[jj * nx + ii] * wt;
+                    }
+                }
+            }
+            return (Math.abs(sumw) < 0.000001f)
+                   ? Float.NaN
+                   : sumf / sumw;
+        }
+        int   idist = fprint.length / 2;
+        float tot   = 0.f;
+        float totwt = 0.f;
+        int   is    = Math.max(0, j - idist);
+        int   ie    = Math.min(ny - 1, j + idist);
+        int   js    = Math.max(0, i - idist);
+        int   je    = Math.min(nx - 1, i + idist);
+        for (int ireg = is; ireg < ie; ireg++) {
+            for (int jreg = js; jreg < je; jreg++) {
+                float v = g[ireg * nx + jreg];
+                if ( !Float.isNaN(v)) {
+                    float wt = fprint[jreg - i + idist][ireg - j + idist];
+                    totwt = totwt + wt;
+                    tot   = tot + wt * v;
+                }
+            }
+        }
+        return tot / totwt;
+    }
+
+    /**
+     * Median filter a level by sorting every window
+     *
+     * @param a the level
+     * @param nx number of x points
+     * @param ny number of y points
+     * @param windowX window length in x
+     * @param windowY window length in y
+     *
+     * @return the filtered level
+     */
+    private static float[] sortedMedian(float[] a, int nx, int ny,
+                                        int windowX, int windowY) {
+        float[] result = new float[a.length];
+        float[] window = new float[windowX * windowY];
+        int     wx     = windowX / 2;
+        int     wy     = windowY / 2;
+        for (int j = 0; j < ny; j++) {
+            for (int i = 0; i < nx; i++) {
+                int cnt = 0;
+                for (int jj = Math.max(0, j - wy);
+                        jj < Math.min(ny, j + wy); jj++) {
+                    for (int ii = Math.max(0, i - wx);
+                            ii < Math.min(nx, i + wx); ii++) {
+                        if ( !Float.isNaN(a[jj * nx + ii])) {
+                            window[cnt++] = a[jj * nx + ii];
+                        }
+                    }
+                }
+                Arrays.sort(window, 0, cnt);
+                result[j * nx + i] = (Float.isNaN(a[j * nx + i])
+                                      || (cnt == 0))
+                                     ? Float.NaN
+                                     : window[cnt / 2];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Make Cressman weights
+     *
+     * @param idist the radius
+     *
+     * @return the weights
+     */
+    private static float[][] makeCressman(int idist) {
+        int       nfp    = 2 * idist;
+        int       npsq   = idist * idist;
+        float[][] fprint = new float[nfp][nfp];
+        for (int i = 0; i < nfp; i++) {
+            for (int j = 0; j < nfp; j++) {
+                float distsq = (i - idist) * (i - idist)
+                               + (j - idist) * (j - idist);
+                fprint[j][i] = Math.max((npsq - distsq) / (npsq + distsq),
+                                        0.f);
+            }
+        }
+        return fprint;
+    }
+
+    /**
+     * Run the engine
+     *
+     * @param type the smoother
+     * @param in the values
+     * @param out the result
+     * @param nx number of x points
+     * @param ny number of y points
+     * @param nz number of levels
+     * @param cyclic is the grid cyclic
+     * @param fprint weights of the weighted smoother
+     */
+    private static void runEngine(String type, float[] in, float[] out,
+                                  int nx, int ny, int nz, boolean cyclic,
+                                  float[][] fprint) {
+        if (type.equals("SM5S")) {
+            StencilEngine.smooth5Point(in, out, nx, ny, nz, cyclic);
+        } else if (type.equals("SM9S")) {
+            StencilEngine.smooth9Point(in, out, nx, ny, nz, cyclic);
+        } else if (type.equals("GWFS")) {
+            StencilEngine.smoothGaussian(in, out, nx, ny, nz, cyclic, 6);
+        } else if (type.equals("CRES")) {
+            StencilEngine.smoothWeighted(in, out, nx, ny, nz, cyclic,
+                                         fprint.length / 2, fprint);
+        } else {
+            StencilEngine.medianFilter(in, out, nx, ny, nz, 10, 6);
+        }
+    }
+
+    /**
+     * Compare the engine to the level at a time versions
+     *
+     * @param nx number of x points
+     * @param ny number of y points
+     * @param nz number of levels
+     * @param cyclic is the grid cyclic
+     */
+    private void compare(int nx, int ny, int nz, boolean cyclic) {
+        float[]   in     = makeValues(nx, ny, nz, cyclic);
+        float[][] fprint = makeCressman(3);
+        for (String type : TYPES) {
+            if (type.equals("MEDIAN") && cyclic) {
+                continue;
+            }
+            float[] out = new float[in.length];
+            runEngine(type, in, out, nx, ny, nz, cyclic, fprint);
+            for (int z = 0; z < nz; z++) {
+                float[] level = Arrays.copyOfRange(in, z * nx * ny,
+                                    (z + 1) * nx * ny);
+                float[] expected = type.equals("MEDIAN")
+                                   ? sortedMedian(level, nx, ny, 10, 6)
+                                   : smoothLevel(type, level, nx, ny,
+                                       cyclic, fprint);
+                assertArrayEquals(type + " level " + z, expected,
+                                  Arrays.copyOfRange(out, z * nx * ny,
+                                      (z + 1) * nx * ny), 0);
+            }
+        }
+    }
+
+    /**
+     * The engine gives the same values as the level at a time versions
+     */
+    @Test
+    public void testSmoothers() {
+        compare(37, 23, 3, false);
+        compare(37, 23, 3, true);
+        //Big enough to be split into tiles
+        compare(400, 300, 2, false);
+        compare(400, 300, 2, true);
+    }
+
+    /**
+     * Run the benchmark
+     *
+     * @param args nx, ny, number of levels and number of loops
+     */
+    public static void main(String[] args) {
+        int nx       = (args.length > 0)
+                       ? Integer.parseInt(args[0])
+                       : 600;
+        int ny       = (args.length > 1)
+                       ? Integer.parseInt(args[1])
+                       : 400;
+        int nz       = (args.length > 2)
+                       ? Integer.parseInt(args[2])
+                       : 10;
+        int numLoops = (args.length > 3)
+                       ? Integer.parseInt(args[3])
+                       : 3;
+        float[]   in     = makeValues(nx, ny, nz, false);
+        float[]   out    = new float[in.length];
+        float[][] fprint = makeCressman(3);
+        System.out.println("grid:" + nx + "x" + ny + "x" + nz
+                           + " threads:"
+                           + TrajectoryEngine.getParallelism());
+        for (String type : TYPES) {
+            for (int loop = 0; loop < numLoops; loop++) {
+                long t1 = System.nanoTime();
+                for (int z = 0; z < nz; z++) {
+                    float[] level = Arrays.copyOfRange(in, z * nx * ny,
+                                        (z + 1) * nx * ny);
+                    if (type.equals("MEDIAN")) {
+                        sortedMedian(level, nx, ny, 10, 6);
+                    } else {
+                        smoothLevel(type, level, nx, ny, false, fprint);
+                    }
+                }
+                long t2 = System.nanoTime();
+                runEngine(type, in, out, nx, ny, nz, false, fprint);
+                long t3 = System.nanoTime();
+                System.out.println(type + " loop " + loop
+                                   + " level at a time:"
+                                   + (t2 - t1) / 1000000 + "ms engine:"
+                                   + (t3 - t2) / 1000000 + "ms");
+            }
+        }
+    }
+}
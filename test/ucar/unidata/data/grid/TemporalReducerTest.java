@@ -0,0 +1,411 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.data.grid;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * Tests the {@link TemporalReducer} against the way GridMath reduced and
+ * averaged the time steps. The main method runs a benchmark of reading
+ * the steps with and without reading ahead, and of the peak heap when
+ * all of the steps are held, the way GridMath used to, against
+ * streaming them:
+ * <pre>
+ * java ucar.unidata.data.grid.TemporalReducerTest [numTimes] [numPoints] [readMillis]
+ * </pre>
+ */
+public class TemporalReducerTest {
+
+    /**
+     * Time steps made on the fly, like steps read from a file
+     */
+    private static class Steps implements TemporalReducer.StepSource {
+
+        /** number of points per step */
+        private int numPoints;
+
+        /** time to read a step */
+        private long readMillis;
+
+        /** steps that are all missing */
+        private int[] missingSteps;
+
+        /** number of steps read */
+        private int numReads = 0;
+
+        /**
+         * Create the steps
+         *
+         * @param numPoints number of points per step
+         * @param readMillis time to read a step
+         * @param missingSteps steps that are all missing
+         */
+        Steps(int numPoints, long readMillis, int... missingSteps) {
+            this.numPoints    = numPoints;
+            this.readMillis   = readMillis;
+            this.missingSteps = missingSteps;
+        }
+
+        /**
+         * Make the values of the step
+         *
+         * @param timeIndex the time index
+         *
+         * @return the values
+         *
+         * @throws Exception On badness
+         */
+        public synchronized float[][] getValues(int timeIndex)
+                throws Exception {
+            numReads++;
+            if (readMillis > 0) {
+                Thread.sleep(readMillis);
+            }
+            float[][] values = new float[1][numPoints];
+            if (Arrays.binarySearch(missingSteps, timeIndex) >= 0) {
+                Arrays.fill(values[0], Float.NaN);
+                return values;
+            }
+            Random random = new Random(timeIndex);
+            for (int j = 0; j < numPoints; j++) {
+                values[0][j] = ((j + timeIndex) % 13 == 0)
+                               ? Float.NaN
+                               : (float) (280 + 5 * random.nextGaussian());
+            }
+            return values;
+        }
+    }
+
+    /**
+     * Reduce the steps the way GridMath.applyFunctionOverTime did
+     *
+     * @param steps the steps
+     * @param timeIndices the steps to use
+     * @param function the function
+     *
+     * @return the values
+     *
+     * @throws Exception On badness
+     */
+    private static float[] reference(Steps steps, int[] timeIndices,
+                                     int function)
+            throws Exception {
+        float[] values  = null;
+        float[] values2 = null;
+        int[]   nums    = null;
+        for (int timeIndex : timeIndices) {
+            float[] step = steps.getValues(timeIndex)[0];
+            if (values == null) {
+                values  = (float[]) step.clone();
+                values2 = new float[step.length];
+                nums    = new int[step.length];
+                for (int j = 0; j < step.length; j++) {
+                    if (step[j] == step[j]) {
+                        nums[j]    = 1;
+                        values2[j] = step[j] * step[j];
+                    }
+                }
+                continue;
+            }
+            for (int j = 0; j < step.length; j++) {
+                float value = step[j];
+                if (value != value) {
+                    continue;
+                }
+                if (function == TemporalReducer.MAX) {
+                    values[j] = Math.max(values[j], value);
+                } else if (function == TemporalReducer.MIN) {
+                    values[j] = Math.min(values[j], value);
+                } else {
+                    values[j]  += value;
+                    values2[j] += value * value;
+                }
+                nums[j]++;
+            }
+        }
+        for (int j = 0; j < values.length; j++) {
+            if (function == TemporalReducer.AVERAGE) {
+                values[j] = (nums[j] > 0)
+                            ? values[j] / nums[j]
+                            : Float.NaN;
+            } else if (function == TemporalReducer.STDEV) {
+                double mean = values[j] / nums[j];
+                values[j] = (nums[j] > 0)
+                            ? (float) Math.sqrt(values2[j] / nums[j]
+                                - mean * mean)
+                            : Float.NaN;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * The running average of a point, done directly. The weights must
+     * add up to at least 1.
+     *
+     * @param steps the steps
+     * @param numTimes number of times
+     * @param wgts the weights
+     * @param opt the end point option
+     * @param point the point
+     *
+     * @return the averages at the point
+     *
+     * @throws Exception On badness
+     */
+    private static float[] reference(Steps steps, int numTimes,
+                                     float[] wgts, int opt, int point)
+            throws Exception {
+        int     nave     = wgts.length;
+        int     nav2     = nave / 2;
+        int     noe      = (nave % 2 == 0)
+                           ? 1
+                           : 0;
+        float[] averages = new float[numTimes];
+        for (int n = 0; n < numTimes; n++) {
+            float sum  = 0;
+            float wsum = 0;
+            for (int k = 0; k < nave; k++) {
+                int t = n + noe - nav2 + k;
+                if ((t < 0) || (t >= numTimes)) {
+                    if (opt == TemporalReducer.OPT_CYCLIC) {
+                        t = (t + numTimes) % numTimes;
+                    } else if (opt == TemporalReducer.OPT_SYMMETRIC) {
+                        t = (t < 0)
+                            ? -t
+                            : 2 * (numTimes - 1) - t;
+                    } else {
+                        continue;
+                    }
+                }
+                if (Arrays.binarySearch(steps.missingSteps, t) >= 0) {
+                    continue;
+                }
+                float[] values = steps.getValues(t)[0];
+                sum  += values[point] * wgts[k];
+                wsum += wgts[k];
+            }
+            averages[n] = sum / wsum;
+        }
+        return averages;
+    }
+
+    /**
+     * The reductions match the old ones
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testReduce() throws Exception {
+        Steps steps       = new Steps(1000, 0);
+        int[] timeIndices = { 1, 3, 5, 7, 9, 11, 13 };
+        for (int function = TemporalReducer.SUM;
+                function <= TemporalReducer.STDEV; function++) {
+            float[] expected = reference(steps, timeIndices, function);
+            for (boolean prefetch : new boolean[] { false, true }) {
+                float[] actual = TemporalReducer.reduce(steps, timeIndices,
+                                     function, prefetch)[0];
+                for (int j = 0; j < expected.length; j++) {
+                    assertEquals("function:" + function + " at " + j,
+                                 expected[j], actual[j],
+                                 (function == TemporalReducer.STDEV)
+                                 ? 0.01f
+                                 : 0);
+                }
+            }
+        }
+        assertEquals(null,
+                     TemporalReducer.reduce(steps, new int[0],
+                                            TemporalReducer.SUM, true));
+    }
+
+    /**
+     * The standard deviation keeps its precision when the mean is large
+     * relative to the spread
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testStdevPrecision() throws Exception {
+        TemporalReducer.StepSource source =
+            new TemporalReducer.StepSource() {
+            public float[][] getValues(int timeIndex) {
+                return new float[][] {
+                    { 100000 + ((timeIndex % 2 == 0)
+                                ? -1
+                                : 1) }
+                };
+            }
+        };
+        int[] timeIndices = new int[100];
+        for (int n = 0; n < timeIndices.length; n++) {
+            timeIndices[n] = n;
+        }
+        assertEquals(1, TemporalReducer.reduce(source, timeIndices,
+                TemporalReducer.STDEV, false)[0][0], 1e-4f);
+    }
+
+    /**
+     * The running averages match averaging each window directly
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testRunningAverage() throws Exception {
+        final int      numTimes = 11;
+        final Steps    steps    = new Steps(40, 0, 4);
+        final float[][] results = new float[numTimes][];
+        TemporalReducer.StepSink sink = new TemporalReducer.StepSink() {
+            public void setValues(int timeIndex, float[][] values) {
+                results[timeIndex] = values[0];
+            }
+        };
+        float[][] allWgts = {
+            { 1, 1, 1 }, { 0.25f, 0.5f, 0.25f }, { 1, 2, 2, 1 }
+        };
+        int[] opts = { TemporalReducer.OPT_CYCLIC, 0,
+                       TemporalReducer.OPT_SYMMETRIC };
+        for (float[] wgts : allWgts) {
+            for (int opt : opts) {
+                steps.numReads = 0;
+                TemporalReducer.runningAverage(steps, numTimes, wgts, opt,
+                        true, true, sink);
+                //Each step is only read once, except for cyclic end points
+                assertTrue(steps.numReads <= numTimes + wgts.length);
+                for (int point = 1; point < 13; point++) {
+                    float[] expected = reference(steps, numTimes, wgts, opt,
+                                           point);
+                    for (int n = 0; n < numTimes; n++) {
+                        assertEquals("opt:" + opt + " time:" + n,
+                                     expected[n], results[n][point], 0.01f);
+                    }
+                }
+            }
+        }
+        //Without skipping, windows with a missing step are missing
+        TemporalReducer.runningAverage(steps, numTimes, allWgts[0],
+                                       TemporalReducer.OPT_CYCLIC, false,
+                                       false, sink);
+        assertTrue(Float.isNaN(results[3][1]));
+        assertTrue(Float.isNaN(results[5][1]));
+        assertTrue( !Float.isNaN(results[6][1]));
+    }
+
+    /**
+     * Collect the garbage and reset the peak usage of the heap
+     */
+    private static void resetPeakHeap() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Get the peak usage of the heap since it was reset. This is the sum
+     * of the peaks of the heap pools.
+     *
+     * @return the peak in MB
+     */
+    private static long getPeakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak / (1024 * 1024);
+    }
+
+    /**
+     * Run the benchmark
+     *
+     * @param args number of times, points and read time
+     *
+     * @throws Exception On badness
+     */
+    public static void main(String[] args) throws Exception {
+        int   numTimes   = (args.length > 0)
+                           ? Integer.parseInt(args[0])
+                           : 48;
+        int   numPoints  = (args.length > 1)
+                           ? Integer.parseInt(args[1])
+                           : 500000;
+        long  readMillis = (args.length > 2)
+                           ? Long.parseLong(args[2])
+                           : 20;
+        Steps steps      = new Steps(numPoints, readMillis);
+        int[] timeIndices = new int[numTimes];
+        for (int n = 0; n < numTimes; n++) {
+            timeIndices[n] = n;
+        }
+        System.out.println("times:" + numTimes + " points:" + numPoints
+                           + " read:" + readMillis + "ms");
+        for (int loop = 0; loop < 3; loop++) {
+            long t1 = System.currentTimeMillis();
+            TemporalReducer.reduce(steps, timeIndices,
+                                   TemporalReducer.STDEV, false);
+            long t2 = System.currentTimeMillis();
+            TemporalReducer.reduce(steps, timeIndices,
+                                   TemporalReducer.STDEV, true);
+            long t3 = System.currentTimeMillis();
+            System.out.println("in turn:" + (t2 - t1) + "ms read ahead:"
+                               + (t3 - t2) + "ms");
+        }
+
+        //Hold on to every step while reducing them
+        resetPeakHeap();
+        final List<float[][]> held = new ArrayList<float[][]>();
+        for (int n = 0; n < numTimes; n++) {
+            held.add(steps.getValues(n));
+        }
+        TemporalReducer.reduce(new TemporalReducer.StepSource() {
+            public float[][] getValues(int timeIndex) {
+                return held.get(timeIndex);
+            }
+        }, timeIndices, TemporalReducer.STDEV, false);
+        long heldPeak = getPeakHeap();
+        held.clear();
+
+        resetPeakHeap();
+        TemporalReducer.reduce(steps, timeIndices, TemporalReducer.STDEV,
+                               true);
+        long streamedPeak = getPeakHeap();
+        System.out.println("peak heap all steps held:" + heldPeak
+                           + "MB streamed:" + streamedPeak + "MB");
+    }
+}
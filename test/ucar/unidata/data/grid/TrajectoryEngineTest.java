@@ -0,0 +1,365 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.data.grid;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ucar.unidata.util.JobManager;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+
+/**
+ * Tests the {@link TrajectoryEngine} with a synthetic wind field. The
+ * main method runs a scaling benchmark:
+ * <pre>
+ * java ucar.unidata.data.grid.TrajectoryEngineTest [numParcels] [numTimes]
+ * </pre>
+ */
+public class TrajectoryEngineTest {
+
+    /** domain south edge */
+    private static final float MIN_LAT = 20;
+
+    /** domain north edge */
+    private static final float MAX_LAT = 60;
+
+    /** domain west edge */
+    private static final float MIN_LON = -130;
+
+    /** domain east edge */
+    private static final float MAX_LON = -60;
+
+    /**
+     * A synthetic wind field: a westerly jet with a wave in it, a weak
+     * vertical motion and the parameter is the temperature like function
+     * of latitude and altitude. The work per sample can be made heavier
+     * to look like the cost of sampling a real grid.
+     */
+    private static class SyntheticWind implements TrajectoryEngine
+        .WindSampler {
+
+        /** extra work to do per sample */
+        int work;
+
+        /**
+         * ctor
+         *
+         * @param work extra work to do per sample
+         */
+        SyntheticWind(int work) {
+            this.work = work;
+        }
+
+        /**
+         * Sample the field
+         *
+         * @param timeIndex time step
+         * @param lat latitude
+         * @param lon longitude
+         * @param alt altitude
+         * @param values the values
+         *
+         * @return false if outside
+         */
+        public boolean sample(int timeIndex, float lat, float lon, float alt,
+                              float[] values) {
+            if ((lat < MIN_LAT) || (lat > MAX_LAT) || (lon < MIN_LON)
+                    || (lon > MAX_LON)) {
+                return false;
+            }
+            double phase = Math.toRadians(lon * 4 + timeIndex);
+            double jet   = Math.cos(Math.toRadians((lat - 40) * 4));
+            double extra = 0;
+            for (int i = 0; i < work; i++) {
+                extra += Math.sin(phase + i) * 1.0e-9;
+            }
+            values[TrajectoryEngine.INDEX_U] = (float) (30 * jet + extra);
+            values[TrajectoryEngine.INDEX_V] = (float) (10 * Math.sin(phase));
+            values[TrajectoryEngine.INDEX_W] = (float) (0.05
+                    * Math.cos(phase));
+            values[TrajectoryEngine.INDEX_S] = (float) (300 - lat
+                    - alt / 100);
+            return true;
+        }
+    }
+
+    /**
+     * Make the times
+     *
+     * @param numTimes number of times
+     *
+     * @return times, 3 hours apart
+     */
+    private static double[] makeTimes(int numTimes) {
+        double[] times = new double[numTimes];
+        for (int i = 0; i < numTimes; i++) {
+            times[i] = i * 3 * 3600;
+        }
+        return times;
+    }
+
+    /**
+     * Make the initial points on a grid in the domain
+     *
+     * @param numParcels number of parcels
+     *
+     * @return lats, lons and alts
+     */
+    private static float[][] makeSeeds(int numParcels) {
+        float[][] seeds = new float[3][numParcels];
+        int       side  = (int) Math.ceil(Math.sqrt(numParcels));
+        for (int i = 0; i < numParcels; i++) {
+            seeds[0][i] = MIN_LAT + 5 + (MAX_LAT - MIN_LAT - 10) * (i / side)
+                          / side;
+            seeds[1][i] = MIN_LON + 5 + (MAX_LON - MIN_LON - 10) * (i % side)
+                          / side;
+            seeds[2][i] = 1000 + i % 5000;
+        }
+        return seeds;
+    }
+
+    /**
+     * Advect with a pool of the given size
+     *
+     * @param threads number of threads
+     * @param sampler the sampler
+     * @param times the times
+     * @param seeds the seeds
+     * @param backward go backward
+     *
+     * @return the tracks
+     */
+    private static List<GridTrajectory.TrajInfo> advect(int threads,
+            TrajectoryEngine.WindSampler sampler, double[] times,
+            float[][] seeds, boolean backward) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return TrajectoryEngine.advect(pool,
+                                           TrajectoryEngine.DEFAULT_BATCHSIZE,
+                                           sampler, times, seeds[0],
+                                           seeds[1], seeds[2], true,
+                                           backward, null);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Advect one parcel the way the per parcel code did
+     *
+     * @param sampler the sampler
+     * @param times the times
+     * @param lat0 initial lat
+     * @param lon0 initial lon
+     * @param alt0 initial alt
+     *
+     * @return the track
+     *
+     * @throws Exception On badness
+     */
+    private static GridTrajectory.TrajInfo advectOne(
+            TrajectoryEngine.WindSampler sampler, double[] times, float lat0,
+            float lon0, float alt0)
+            throws Exception {
+        int                     numTimes = times.length;
+        GridTrajectory.TrajInfo info = new GridTrajectory.TrajInfo(numTimes);
+        float[]                 u        = new float[numTimes];
+        float[]                 v        = new float[numTimes];
+        float[]                 w        = new float[numTimes];
+        float[]                 values   = new float[4];
+        info.lats[0] = lat0;
+        info.lons[0] = lon0;
+        info.alts[0] = alt0;
+        sampler.sample(0, lat0, lon0, alt0, values);
+        u[0]            = values[0];
+        v[0]            = values[1];
+        w[0]            = values[2];
+        info.parcels[0] = values[3];
+        for (int t = 1; t < numTimes; t++) {
+            double delt = times[t] - times[t - 1];
+            float  lat  = info.lats[t - 1];
+            float  lon  = info.lons[t - 1];
+            float  alt  = info.alts[t - 1];
+            float lat1 = (float) (lat
+                                  + TrajectoryEngine.RAD2DEG * (v[t - 1] * delt)
+                                    / (TrajectoryEngine.RADIUS + alt));
+            float lon1 = (float) (lon
+                                  + TrajectoryEngine.RAD2DEG * (u[t - 1] * delt)
+                                    / (TrajectoryEngine.RADIUS + alt));
+            float alt1 = (float) (alt + (w[t - 1] * delt));
+            if (alt1 < 0) {
+                alt1 = 0;
+            }
+            if ( !sampler.sample(t, lat1, lon1, alt1, values)) {
+                info.lats[t]    = info.lats[t - 1];
+                info.lons[t]    = info.lons[t - 1];
+                info.alts[t]    = info.alts[t - 1];
+                info.parcels[t] = info.parcels[t - 1];
+            } else {
+                info.lats[t]    = lat1;
+                info.lons[t]    = lon1;
+                info.alts[t]    = alt1;
+                u[t]            = values[0];
+                v[t]            = values[1];
+                w[t]            = values[2];
+                info.parcels[t] = values[3];
+            }
+        }
+        return info;
+    }
+
+    /**
+     * The engine gives the same tracks as stepping each parcel on its own
+     * and the same tracks for any number of threads
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testMatchesSerial() throws Exception {
+        SyntheticWind                 wind   = new SyntheticWind(0);
+        double[]                      times  = makeTimes(40);
+        float[][]                     seeds  = makeSeeds(500);
+        List<GridTrajectory.TrajInfo> serial = advect(1, wind, times, seeds,
+                                                   false);
+        List<GridTrajectory.TrajInfo> parallel = advect(4, wind, times,
+                                                     seeds, false);
+        assertEquals(seeds[0].length, parallel.size());
+        int numOutside = 0;
+        for (int i = 0; i < seeds[0].length; i++) {
+            GridTrajectory.TrajInfo one = advectOne(wind, times, seeds[0][i],
+                                              seeds[1][i], seeds[2][i]);
+            assertTrack(one, serial.get(i));
+            assertTrack(one, parallel.get(i));
+            if (one.lons[times.length - 1] == one.lons[times.length - 2]) {
+                numOutside++;
+            }
+        }
+        //Some of the parcels should have left the domain
+        assertTrue(numOutside > 0);
+    }
+
+    /**
+     * Backward trajectories end at the seeds
+     */
+    @Test
+    public void testBackward() {
+        SyntheticWind                 wind   = new SyntheticWind(0);
+        double[]                      times  = makeTimes(10);
+        float[][]                     seeds  = makeSeeds(50);
+        List<GridTrajectory.TrajInfo> tracks = advect(2, wind, times, seeds,
+                                                   true);
+        for (int i = 0; i < seeds[0].length; i++) {
+            GridTrajectory.TrajInfo info = tracks.get(i);
+            assertEquals(seeds[0][i], info.lats[times.length - 1], 0);
+            assertEquals(seeds[1][i], info.lons[times.length - 1], 0);
+            //The westerly wind puts the parcels to the west earlier on
+            assertTrue(info.lons[0] < info.lons[times.length - 1]);
+        }
+    }
+
+    /**
+     * A stopped load stops the calculation
+     */
+    @Test
+    public void testCancel() {
+        final Object loadId = JobManager.getManager().startLoad("test");
+        TrajectoryEngine.WindSampler wind = new SyntheticWind(0) {
+            public boolean sample(int timeIndex, float lat, float lon,
+                                  float alt, float[] values) {
+                if (timeIndex == 5) {
+                    JobManager.getManager().stopLoad(loadId);
+                }
+                return super.sample(timeIndex, lat, lon, alt, values);
+            }
+        };
+        double[]  times = makeTimes(20);
+        float[][] seeds = makeSeeds(10);
+        List<GridTrajectory.TrajInfo> tracks = TrajectoryEngine.advect(wind,
+                                                   times, seeds[0], seeds[1],
+                                                   seeds[2], true, false,
+                                                   loadId);
+        for (GridTrajectory.TrajInfo info : tracks) {
+            assertTrue(info.lats[5] != 0);
+            assertEquals(0, info.lats[6], 0);
+        }
+    }
+
+    /**
+     * Check the tracks are the same
+     *
+     * @param expected expected
+     * @param actual actual
+     */
+    private static void assertTrack(GridTrajectory.TrajInfo expected,
+                                    GridTrajectory.TrajInfo actual) {
+        assertArrayEquals(expected.lats, actual.lats, 0);
+        assertArrayEquals(expected.lons, actual.lons, 0);
+        assertArrayEquals(expected.alts, actual.alts, 0);
+        assertArrayEquals(expected.parcels, actual.parcels, 0);
+    }
+
+    /**
+     * Run the scaling benchmark from 1 thread up to the number of cores
+     *
+     * @param args number of parcels and number of times
+     */
+    public static void main(String[] args) {
+        int numParcels = (args.length > 0)
+                         ? Integer.parseInt(args[0])
+                         : 20000;
+        int numTimes   = (args.length > 1)
+                         ? Integer.parseInt(args[1])
+                         : 50;
+        SyntheticWind wind     = new SyntheticWind(200);
+        double[]      times    = makeTimes(numTimes);
+        float[][]     seeds    = makeSeeds(numParcels);
+        int           maxCores = Runtime.getRuntime().availableProcessors();
+        //warm up
+        advect(maxCores, wind, times, seeds, false);
+        long base    = 0;
+        int  threads = 1;
+        while (true) {
+            long t1 = System.currentTimeMillis();
+            advect(threads, wind, times, seeds, false);
+            long t2 = System.currentTimeMillis();
+            if (threads == 1) {
+                base = t2 - t1;
+            }
+            System.out.println("threads:" + threads + " parcels:"
+                               + numParcels + " times:" + numTimes
+                               + " time:" + (t2 - t1) + "ms speedup:"
+                               + ((t2 == t1)
+                                  ? 0
+                                  : (double) base / (t2 - t1)));
+            if (threads == maxCores) {
+                break;
+            }
+            threads = Math.min(threads * 2, maxCores);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.data.imagery;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Tests the {@link ImageFetcher}. The main method runs a benchmark of
+ * showing each time of a loop when every display reads the image itself
+ * and when the reads are shared and prefetched:
+ * <pre>
+ * java ucar.unidata.data.imagery.ImageFetcherTest [numTimes] [numDisplays] [msPerRead]
+ * </pre>
+ */
+public class ImageFetcherTest {
+
+    /**
+     * Make a loader that stands in for an image read
+     *
+     * @param key the key
+     * @param ms how long the read takes
+     * @param reads counts the reads
+     *
+     * @return the loader
+     */
+    private static Callable makeLoader(final String key, final int ms,
+                                       final AtomicInteger reads) {
+        return new Callable() {
+            public Object call() throws Exception {
+                reads.incrementAndGet();
+                Thread.sleep(ms);
+                return new float[][] {
+                    { key.length() }
+                };
+            }
+        };
+    }
+
+    /**
+     * Identical reads that are in flight are made once
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testInFlight() throws Exception {
+        final ImageFetcher  fetcher = new ImageFetcher(1);
+        final AtomicInteger reads   = new AtomicInteger();
+        final CountDownLatch start   = new CountDownLatch(16);
+        ExecutorService      pool    = Executors.newFixedThreadPool(16);
+        List<Future>         results = new ArrayList<Future>();
+        for (int i = 0; i < 16; i++) {
+            final String key = "adde://server/imagedata?band=" + (i % 2);
+            results.add(pool.submit(new Callable() {
+                public Object call() throws Exception {
+                    //Start them all at once so the reads overlap
+                    start.countDown();
+                    start.await();
+                    return fetcher.fetch(key, makeLoader(key, 200, reads));
+                }
+            }));
+        }
+        for (Future result : results) {
+            assertNotNull(result.get());
+        }
+        pool.shutdown();
+        assertEquals(2, reads.get());
+        assertEquals(2, fetcher.getReadCount());
+        assertEquals(14, fetcher.getSharedCount());
+    }
+
+    /**
+     * Prefetched images are read once and are removed from the cache when
+     * they are taken
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testPrefetch() throws Exception {
+        ImageFetcher   fetcher = new ImageFetcher(2);
+        Object         owner   = new Object();
+        AtomicInteger  reads   = new AtomicInteger();
+        List<String>   keys    = new ArrayList<String>();
+        List<Callable> loaders = new ArrayList<Callable>();
+        for (int i = 0; i < 6; i++) {
+            String key = "adde://server/imagedata?pos=" + i;
+            keys.add(key);
+            loaders.add(makeLoader(key, 20, reads));
+            fetcher.prefetch(owner, key, loaders.get(i));
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            //Taking one that is being prefetched waits for it
+            assertNotNull(fetcher.take(owner, keys.get(i), loaders.get(i)));
+            assertNull(fetcher.getCached(owner, keys.get(i)));
+        }
+        Thread.sleep(100);
+        assertEquals(keys.size(), reads.get());
+        assertEquals(keys.size(), fetcher.getReadCount());
+
+        //A prefetched image is held until it is taken
+        fetcher.prefetch(owner, keys.get(0), loaders.get(0));
+        Thread.sleep(100);
+        Object cached = fetcher.getCached(owner, keys.get(0));
+        assertNotNull(cached);
+        assertSame(cached, fetcher.take(owner, keys.get(0), loaders.get(0)));
+        assertEquals(keys.size() + 1, reads.get());
+    }
+
+    /**
+     * Flushing an owner removes its images and the prefetches that have
+     * not started
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testFlush() throws Exception {
+        ImageFetcher  fetcher = new ImageFetcher(1);
+        Object        owner   = new Object();
+        AtomicInteger reads   = new AtomicInteger();
+        String        key     = "adde://server/imagedata?pos=0";
+        fetcher.prefetch(owner, key, makeLoader(key, 20, reads));
+        Thread.sleep(100);
+        assertNotNull(fetcher.getCached(owner, key));
+        fetcher.flush(owner);
+        assertNull(fetcher.getCached(owner, key));
+
+        List<String> keys = new ArrayList<String>();
+        for (int i = 1; i < 6; i++) {
+            keys.add("adde://server/imagedata?pos=" + i);
+            fetcher.prefetch(owner, keys.get(i - 1),
+                             makeLoader(keys.get(i - 1), 100, reads));
+        }
+        Thread.sleep(20);
+        fetcher.flush(owner);
+        Thread.sleep(300);
+        //Only the one that had started was read and it wasn't cached
+        assertEquals(2, reads.get());
+        for (String k : keys) {
+            assertNull(fetcher.getCached(owner, k));
+        }
+    }
+
+    /**
+     * Step through the times of a loop, with each display reading the
+     * image it shows
+     *
+     * @param numTimes number of times
+     * @param numDisplays number of displays showing the loop
+     * @param msPerRead the time a read takes
+     * @param shared share and prefetch the reads
+     *
+     * @return the time in ms
+     *
+     * @throws Exception On badness
+     */
+    private static long animate(int numTimes, int numDisplays,
+                                int msPerRead, final boolean shared)
+            throws Exception {
+        final ImageFetcher  fetcher = new ImageFetcher(4);
+        final Object        owner   = new Object();
+        final AtomicInteger reads   = new AtomicInteger();
+        List<String>        keys    = new ArrayList<String>();
+        List<Callable>      loaders = new ArrayList<Callable>();
+        for (int i = 0; i < numTimes; i++) {
+            String key = "adde://server/imagedata?time=" + i;
+            keys.add(key);
+            loaders.add(makeLoader(key, msPerRead, reads));
+        }
+        ExecutorService displays = Executors.newFixedThreadPool(numDisplays);
+        ExecutorService fields   = Executors.newSingleThreadExecutor();
+        long            t1       = System.currentTimeMillis();
+        if (shared) {
+            for (int i = 0; i < numTimes; i++) {
+                fetcher.prefetch(owner, keys.get(i), loaders.get(i));
+            }
+        }
+        for (int i = 0; i < numTimes; i++) {
+            final String   key    = keys.get(i);
+            final Callable loader = loaders.get(i);
+            //The displays share the field of the time, which takes its
+            //image from the fetcher once
+            final Future image = shared
+                                 ? fields.submit(new Callable() {
+                public Object call() throws Exception {
+                    return fetcher.take(owner, key, loader);
+                }
+            })
+                                 : null;
+            List<Future> steps = new ArrayList<Future>();
+            for (int d = 0; d < numDisplays; d++) {
+                steps.add(displays.submit(new Callable() {
+                    public Object call() throws Exception {
+                        return shared
+                               ? image.get()
+                               : loader.call();
+                    }
+                }));
+            }
+            for (Future step : steps) {
+                step.get();
+            }
+        }
+        long t2 = System.currentTimeMillis();
+        displays.shutdown();
+        fields.shutdown();
+        System.out.println((shared
+                            ? "shared and prefetched"
+                            : "each display reads") + ":" + (t2 - t1)
+                                + "ms reads:" + reads.get());
+        return t2 - t1;
+    }
+
+    /**
+     * Run the benchmark
+     *
+     * @param args number of times, displays and ms per read
+     *
+     * @throws Exception On badness
+     */
+    public static void main(String[] args) throws Exception {
+        int numTimes    = (args.length > 0)
+                          ? Integer.parseInt(args[0])
+                          : 24;
+        int numDisplays = (args.length > 1)
+                          ? Integer.parseInt(args[1])
+                          : 3;
+        int msPerRead   = (args.length > 2)
+                          ? Integer.parseInt(args[2])
+                          : 50;
+        System.out.println("times:" + numTimes + " displays:" + numDisplays
+                           + " ms per read:" + msPerRead);
+        animate(numTimes, numDisplays, msPerRead, false);
+        animate(numTimes, numDisplays, msPerRead, true);
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.data.point;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import au.gov.bom.aifs.osa.analysis.Barnes;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+
+/**
+ * Tests the {@link BarnesEngine} against {@link Barnes}. The main method
+ * runs a benchmark of the two:
+ * <pre>
+ * java ucar.unidata.data.point.BarnesEngineTest [numObs] [numLon] [numLat]
+ * </pre>
+ */
+public class BarnesEngineTest {
+
+    /**
+     * Make random obs of a smooth field over 30 by 20 degrees, with some
+     * missing values
+     *
+     * @param numObs number of obs
+     * @param seed the random seed
+     *
+     * @return the obs
+     */
+    private static float[][] makeObs(int numObs, long seed) {
+        Random    random = new Random(seed);
+        float[][] obs    = new float[3][numObs];
+        for (int k = 0; k < numObs; k++) {
+            obs[0][k] = -110 + 30 * random.nextFloat();
+            obs[1][k] = 30 + 20 * random.nextFloat();
+            obs[2][k] = (float) (280 + 10 * Math.sin(obs[0][k] / 5)
+                                 + 5 * Math.cos(obs[1][k] / 3)
+                                 + random.nextGaussian());
+            if (k % 50 == 7) {
+                obs[2][k] = Float.NaN;
+            }
+        }
+        return obs;
+    }
+
+    /**
+     * Make the grid points
+     *
+     * @param min the first point
+     * @param spacing the spacing
+     * @param num the number of points
+     *
+     * @return the points
+     */
+    private static float[] makeAxis(float min, float spacing, int num) {
+        float[] axis = new float[num];
+        for (int i = 0; i < num; i++) {
+            axis[i] = min + i * spacing;
+        }
+        return axis;
+    }
+
+    /**
+     * Check the grids are the same up to the order of summing
+     *
+     * @param expected the expected grid
+     * @param actual the actual grid
+     */
+    private static void assertGridEquals(float[][] expected,
+                                         float[][] actual) {
+        assertEquals(expected.length, actual.length);
+        int numMissing = 0;
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].length, actual[i].length);
+            for (int j = 0; j < expected[i].length; j++) {
+                if (Float.isNaN(expected[i][j])) {
+                    assertTrue(Float.isNaN(actual[i][j]));
+                    numMissing++;
+                } else {
+                    assertEquals("at " + i + "," + j, expected[i][j],
+                                 actual[i][j], 0.01f);
+                }
+            }
+        }
+        assertTrue(numMissing < expected.length * expected[0].length);
+    }
+
+    /**
+     * The analysis matches Barnes
+     */
+    @Test
+    public void testAnalysis() {
+        float[]   lon = makeAxis(-112, 0.5f, 68);
+        float[]   lat = makeAxis(28, 0.5f, 48);
+        float[][] obs = makeObs(400, 1);
+        for (int passes = 2; passes <= 4; passes++) {
+            assertGridEquals(Barnes.point2grid(lon, lat, obs, 3f, 1f,
+                    passes), BarnesEngine.point2grid(lon, lat, obs, 3f, 1f,
+                        passes));
+        }
+        //A small scale length leaves grid points with no obs
+        assertGridEquals(Barnes.point2grid(lon, lat, obs, 0.3f, 0.5f, 3),
+                         BarnesEngine.point2grid(lon, lat, obs, 0.3f, 0.5f,
+                             3));
+    }
+
+    /**
+     * The analysis with a first guess matches Barnes
+     */
+    @Test
+    public void testFirstGuess() {
+        float[]   lon   = makeAxis(-112, 0.5f, 68);
+        float[]   lat   = makeAxis(28, 0.5f, 48);
+        float[][] obs   = makeObs(400, 2);
+        float[][] guess = new float[lon.length][lat.length];
+        for (int i = 0; i < lon.length; i++) {
+            for (int j = 0; j < lat.length; j++) {
+                guess[i][j] = ((i + j) % 17 == 0)
+                              ? Float.NaN
+                              : 275 + i * 0.1f;
+            }
+        }
+        float[][] copy = new float[lon.length][];
+        for (int i = 0; i < lon.length; i++) {
+            copy[i] = (float[]) guess[i].clone();
+        }
+        float[][] actual = BarnesEngine.point2grid(lon, lat, obs, guess, 4f,
+                               0.5f, 3);
+        //Barnes fills in the missing values of the guess it is given
+        assertGridEquals(Barnes.point2grid(lon, lat, obs, copy, 4f, 0.5f,
+                3), actual);
+        assertTrue(Float.isNaN(guess[0][0]));
+    }
+
+    /**
+     * Run the benchmark
+     *
+     * @param args number of obs, grid points in lon and lat
+     */
+    public static void main(String[] args) {
+        int numObs = (args.length > 0)
+                     ? Integer.parseInt(args[0])
+                     : 5000;
+        int numLon = (args.length > 1)
+                     ? Integer.parseInt(args[1])
+                     : 150;
+        int numLat = (args.length > 2)
+                     ? Integer.parseInt(args[2])
+                     : 100;
+        float[]   lon = makeAxis(-110, 30f / (numLon - 1), numLon);
+        float[]   lat = makeAxis(30, 20f / (numLat - 1), numLat);
+        float[][] obs = makeObs(numObs, 3);
+        //About the average ob spacing
+        float scaleLength = (float) Math.sqrt(numLon * numLat
+                                              / (double) numObs);
+        System.out.println("obs:" + numObs + " grid:" + numLon + "x"
+                           + numLat + " scale length:" + scaleLength);
+        for (int loop = 0; loop < 3; loop++) {
+            long t1 = System.currentTimeMillis();
+            Barnes.point2grid(lon, lat, obs, scaleLength, 1f, 3);
+            long t2 = System.currentTimeMillis();
+            BarnesEngine.point2grid(lon, lat, obs, scaleLength, 1f, 3);
+            long t3 = System.currentTimeMillis();
+            System.out.println("Barnes:" + (t2 - t1) + "ms engine:"
+                               + (t3 - t2) + "ms");
+        }
+    }
+}
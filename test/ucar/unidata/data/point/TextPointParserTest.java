@@ -0,0 +1,211 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.data.point;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import java.util.concurrent.ForkJoinPool;
+
+
+/**
+ * Tests the {@link TextPointParser}
+ */
+public class TextPointParserTest {
+
+    /** map for the tests */
+    private static final String MAP =
+        "(index)->(Time,Latitude,Longitude,ST(Text),T)";
+
+    /**
+     * Make a channel
+     *
+     * @param text the text
+     *
+     * @return channel
+     */
+    private static ReadableByteChannel channel(String text) {
+        return Channels.newChannel(
+            new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Header in the file, comments, skip rows, skip columns, quotes,
+     * missing values and a time format
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testParse() throws Exception {
+        String text =
+            "junk line\n" + MAP + "\n"
+            + "Time[fmt=\"yyyy-MM-dd HH:mm\"],Latitude[unit=\"deg\"],"
+            + "Longitude[unit=\"deg\"],skip,ST(Text),T[unit=\"C\" missing=\"-99\"]\n"
+            + "# a comment\n"
+            + "1970-01-01 00:01,40.5,-105,x,\"BOU, CO\",10.25\r\n"
+            + "\n" + "BAD line to skip\n"
+            + "1970-01-01 01:00, 41 ,-104.5,y,DEN,-99\n"
+            + "1970-01-02 00:00,42,-1e2,z,LAR,";
+        TextPointParser parser = new TextPointParser(",", 1, "^BAD");
+        assertTrue(parser.readHeader(channel(text), null, null));
+        parser.readData();
+        assertEquals(3, parser.getNumRows());
+        assertArrayEquals(new double[] { 60, 3600, 86400 },
+                          parser.getColumn("Time").getValues(), 0);
+        assertArrayEquals(new double[] { 40.5, 41, 42 },
+                          parser.getColumn("Latitude").getValues(), 0);
+        assertArrayEquals(new double[] { -105, -104.5, -100 },
+                          parser.getColumn("Longitude").getValues(), 0);
+        assertArrayEquals(new String[] { "BOU, CO", "DEN", "LAR" },
+                          parser.getColumn("ST").getStrings());
+        double[] t = parser.getColumn("T").getValues();
+        assertEquals(10.25, t[0], 0);
+        assertTrue(Double.isNaN(t[1]));
+        assertTrue(Double.isNaN(t[2]));
+        assertEquals("C", parser.getColumn("T").getUnit());
+        assertNull(parser.getColumn("ST").getValues());
+    }
+
+    /**
+     * White space delimited with the header passed in
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testWhiteSpace() throws Exception {
+        String params =
+            "Time[unit=\"s since 1970-01-01\"] Latitude Longitude ST(Text) T";
+        TextPointParser parser = new TextPointParser(" ", 0, null);
+        assertTrue(parser.readHeader(channel("  10   40  -105 BOU 1.5\n"
+                                             + "20\t41 -106  DEN  2\n"),
+                                     MAP, params));
+        parser.readData();
+        assertEquals(2, parser.getNumRows());
+        assertArrayEquals(new double[] { 10, 20 },
+                          parser.getColumn("Time").getValues(), 0);
+        assertArrayEquals(new String[] { "BOU", "DEN" },
+                          parser.getColumn("ST").getStrings());
+        assertArrayEquals(new double[] { 1.5, 2 },
+                          parser.getColumn("T").getValues(), 0);
+    }
+
+    /**
+     * Headers that are left to the TextAdapter
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testUnsupported() throws Exception {
+        String params = "Time,Latitude,Longitude,ST(Text),T";
+        assertTrue(new TextPointParser(",", 0, null).readHeader(channel(""),
+                MAP, params));
+        assertFalse(new TextPointParser(",", 0, null).readHeader(channel(""),
+                MAP, "Time,Latitude,Longitude,ST(Text),T[scale=\"2\"]"));
+        assertFalse(new TextPointParser(",", 0, null).readHeader(channel(""),
+                MAP, "Time,Latitude,Longitude,ST(Text)"));
+        assertFalse(new TextPointParser(",", 0, null).readHeader(channel(""),
+                MAP, "Time,Lat,Longitude,ST(Text),T"));
+        assertFalse(new TextPointParser(",", 0, null).readHeader(channel(""),
+                "(index)->(Time,(Latitude,Longitude),T)", params));
+        assertFalse(new TextPointParser(",", 0, null).readHeader(channel(""),
+                MAP, "Time,Latitude[unit=\"deg west\"],Longitude,ST(Text),T"));
+        assertFalse(new TextPointParser("::", 0, null).readHeader(channel(""),
+                MAP, params));
+        assertFalse(new TextPointParser(",", 0, null).readHeader(
+            channel("1,2,3,a,4\r5,6,7,b,8\r"), MAP, params));
+    }
+
+    /**
+     * Numbers parse the same as Double.parseDouble
+     */
+    @Test
+    public void testParseDouble() {
+        String[] values = {
+            "0", "-0", "1", "+2.5", "3.", ".25", "-123.456", "1e5", "1.5E-3",
+            "0.1", "0.000001234", "123456789012345", "1234567890123456789",
+            "9007199254740993", "1e-30", "2.2250738585072014E-308", "NaN",
+            "Infinity", "0x10", "1.2.3", "abc", "-", "", "1e"
+        };
+        for (String value : values) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            double expected;
+            try {
+                expected = Double.parseDouble(value);
+            } catch (NumberFormatException nfe) {
+                expected = Double.NaN;
+            }
+            double actual = TextPointParser.parseDouble(bytes, 0,
+                                bytes.length);
+            assertEquals(value, Double.doubleToLongBits(expected),
+                         Double.doubleToLongBits(actual));
+        }
+    }
+
+    /**
+     * Lots of rows in small chunks across threads give the rows in order
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testChunks() throws Exception {
+        StringBuilder sb      = new StringBuilder();
+        int           numRows = 20000;
+        for (int i = 0; i < numRows; i++) {
+            sb.append(i).append(',').append(i % 90).append(',').append(
+                -i % 180).append(",S").append(i).append(',').append(
+                i * 0.5).append('\n');
+            if (i % 1000 == 0) {
+                sb.append("# comment ").append(i).append('\n');
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            TextPointParser parser = new TextPointParser(",", 0, null, 4096);
+            parser.setPool(pool);
+            assertTrue(parser.readHeader(channel(sb.toString()), MAP,
+                                         "Time,Latitude,Longitude,ST(Text),T"));
+            parser.readData();
+            assertEquals(numRows, parser.getNumRows());
+            double[] times = parser.getColumn("Time").getValues();
+            String[] ids   = parser.getColumn("ST").getStrings();
+            double[] t     = parser.getColumn("T").getValues();
+            for (int i = 0; i < numRows; i++) {
+                assertEquals(i, times[i], 0);
+                assertEquals("S" + i, ids[i]);
+                assertEquals(i * 0.5, t[i], 0);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
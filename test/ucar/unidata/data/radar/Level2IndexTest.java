@@ -0,0 +1,249 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.data.radar;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Tests the {@link Level2Index} on made up Level II files. The main method
+ * runs a benchmark of looping over a set of volumes, reparsing each file
+ * record by record on every loop against using the cached index:
+ * <pre>
+ * java ucar.unidata.data.radar.Level2IndexTest [numVolumes] [numLoops]
+ * </pre>
+ */
+public class Level2IndexTest {
+
+    /** number of cuts in a volume */
+    private static final int NUM_CUTS = 14;
+
+    /** number of radials in a cut */
+    private static final int NUM_RADIALS = 360;
+
+    /** a non radar data message is put in after this many records */
+    private static final int OTHER_EVERY = 100;
+
+    /**
+     * Write a volume. Each cut has NUM_RADIALS radials and there is a
+     * message that is not radar data after every OTHER_EVERY records.
+     * The first bin of each radial holds its radial number.
+     *
+     * @param file the file
+     *
+     * @return the number of records
+     *
+     * @throws Exception On badness
+     */
+    private static int writeVolume(File file) throws Exception {
+        DataOutputStream dos = new DataOutputStream(
+                                   new BufferedOutputStream(
+                                       new FileOutputStream(file)));
+        dos.write("AR2V0001.001".getBytes());
+        dos.write(new byte[12]);
+        int record = 0;
+        for (int cut = 1; cut <= NUM_CUTS; cut++) {
+            for (int radial = 0; radial < NUM_RADIALS; radial++) {
+                if ((record > 0) && (record % OTHER_EVERY == 0)) {
+                    dos.write(new byte[Level2Index.RECORD_HEADER_SIZE + 3]);
+                    dos.writeByte(2);
+                    dos.write(new byte[Level2Index.RADAR_DATA_SIZE
+                                       - Level2Index.RECORD_HEADER_SIZE - 4]);
+                    record++;
+                }
+                dos.write(new byte[Level2Index.RECORD_HEADER_SIZE]);
+                dos.write(new byte[3]);
+                dos.writeByte(1);
+                dos.write(new byte[20]);
+                dos.writeShort(radial * 32768 / 180);
+                dos.writeShort(radial);
+                dos.writeShort((radial == NUM_RADIALS - 1)
+                               ? 2
+                               : 1);
+                dos.writeShort(cut * 32768 / 180);
+                dos.writeShort(cut);
+                dos.write(new byte[26]);
+                dos.writeShort(11);
+                dos.write(new byte[Level2Index.DATA_OFFSET - 62]);
+                dos.writeByte(radial % 256);
+                dos.write(new byte[Level2Index.RADAR_DATA_SIZE
+                                   - Level2Index.RECORD_HEADER_SIZE
+                                   - Level2Index.DATA_OFFSET - 1]);
+                record++;
+            }
+        }
+        dos.close();
+        return record;
+    }
+
+    /**
+     * The index has the headers of the records
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testIndex() throws Exception {
+        File file = File.createTempFile("level2", ".ar2v");
+        try {
+            int         numRecords = writeVolume(file);
+            Level2Index index      = Level2Index.getIndex(file);
+            assertSame(index, Level2Index.getIndex(file));
+            assertEquals(numRecords, index.getNumRecords());
+            assertEquals(1, index.getMessageType(0));
+            assertEquals(2, index.getMessageType(OTHER_EVERY));
+            assertEquals(-1, index.getAzimuth(OTHER_EVERY), 0);
+            assertEquals(11, index.getVCP(0));
+            assertEquals(5.0f, index.getAzimuth(5), 0.01f);
+            //The second cut starts after the first cut's data and the
+            //other messages in it
+            int start = NUM_RADIALS + (NUM_RADIALS - 1) / OTHER_EVERY;
+            assertEquals(2, index.getRadialStatus(start - 1));
+            assertEquals(2, index.getElevationNum(start));
+            assertEquals(1, index.getElevationNum(start - 1));
+            assertEquals(2.0f, index.getElevation(start), 0.01f);
+            //The file contents are on the heap and counted by the cache
+            assertTrue(index.getSize() > file.length());
+            assertEquals(file.length(), index.getBuffer().limit());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * A cut is read up to the start of the next cut, skipping the rows of
+     * the other messages
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testReadCut() throws Exception {
+        File file = File.createTempFile("level2", ".ar2v");
+        try {
+            writeVolume(file);
+            Level2Index index  = Level2Index.getIndex(file);
+            ByteBuffer  buffer = index.getBuffer();
+            byte[][]    bins   = new byte[500][2400];
+            int         num    = index.readCut(buffer, 0, bins);
+            assertEquals(NUM_RADIALS + (NUM_RADIALS - 1) / OTHER_EVERY, num);
+            assertEquals(0, bins[0][0]);
+            assertEquals(99, bins[99][0]);
+            assertEquals(0, bins[OTHER_EVERY][0]);
+            assertEquals(100, bins[OTHER_EVERY + 1][0]);
+            //The last cut runs to the end of the file
+            int last = index.getNumRecords() - 10;
+            assertEquals(10, index.readCut(buffer, last, bins));
+            assertEquals((NUM_RADIALS - 10) % 256, bins[0][0] & 0xff);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Read the record headers one by one, the way Level2Data did, and then
+     * the first cut a radial at a time
+     *
+     * @param file the file
+     *
+     * @return a checksum
+     *
+     * @throws Exception On badness
+     */
+    private static long reparse(File file) throws Exception {
+        RandomAccessFile raf    = new RandomAccessFile(file, "r");
+        byte[]           header = new byte[84];
+        long             sum    = 0;
+        int numRecords = (int) ((raf.length() - Level2Index.FILE_HEADER_SIZE)
+                                / Level2Index.RADAR_DATA_SIZE);
+        for (int record = 0; record < numRecords; record++) {
+            raf.seek(Level2Index.getMessageOffset(record));
+            raf.readFully(header);
+            sum += header[3] + header[33];
+        }
+        byte[] bins = new byte[Level2Index.DATA_SIZE];
+        for (int record = 0; record < NUM_RADIALS; record++) {
+            raf.seek(Level2Index.getMessageOffset(record)
+                     + Level2Index.DATA_OFFSET);
+            raf.readFully(bins);
+            sum += bins[0];
+        }
+        raf.close();
+        return sum;
+    }
+
+    /**
+     * Run the benchmark
+     *
+     * @param args number of volumes and loops
+     *
+     * @throws Exception On badness
+     */
+    public static void main(String[] args) throws Exception {
+        int numVolumes = (args.length > 0)
+                         ? Integer.parseInt(args[0])
+                         : 12;
+        int numLoops   = (args.length > 1)
+                         ? Integer.parseInt(args[1])
+                         : 5;
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < numVolumes; i++) {
+            File file = File.createTempFile("level2", ".ar2v");
+            file.deleteOnExit();
+            writeVolume(file);
+            files.add(file);
+        }
+        byte[][] bins = new byte[500][2400];
+        System.out.println("volumes:" + numVolumes + " records per volume:"
+                           + Level2Index.getIndex(files.get(0))
+                               .getNumRecords());
+        for (int loop = 0; loop < numLoops; loop++) {
+            long t1 = System.nanoTime();
+            long sum = 0;
+            for (File file : files) {
+                sum += reparse(file);
+            }
+            long t2 = System.nanoTime();
+            for (File file : files) {
+                Level2Index index = Level2Index.getIndex(file);
+                sum += index.readCut(index.getBuffer(), 0, bins);
+            }
+            long t3 = System.nanoTime();
+            System.out.println("loop " + loop + " reparse:"
+                               + (t2 - t1) / 1000000 + "ms index:"
+                               + (t3 - t2) / 1000000 + "ms");
+        }
+    }
+}
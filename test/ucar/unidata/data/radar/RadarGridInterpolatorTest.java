@@ -0,0 +1,211 @@
+/*
+ * Copyright 1997-2022 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+
+package ucar.unidata.data.radar;
+
+
+import org.junit.Test;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+
+/**
+ * Tests the RadarGridInterpolator
+ */
+public class RadarGridInterpolatorTest {
+
+    /** sweep elevations */
+    private static final double[] ELEVS = {
+        0.5, 1.5, 2.4, 3.4, 4.3, 6.0, 9.9, 14.6, 19.5
+    };
+
+    /** rays per sweep */
+    private static final int NUM_RAYS = 360;
+
+    /** gates per ray */
+    private static final int NUM_GATES = 460;
+
+    /** range to first gate (km) */
+    private static final double RANGE_TO_FIRST_GATE = 2.0;
+
+    /** gate size (km) */
+    private static final double RANGE_STEP = 1.0;
+
+    /**
+     * When the data is linear in range every cell inside the volume
+     * should get its fractional gate index back
+     */
+    @Test
+    public void testLinearInRange() {
+        Random random = new Random(1);
+        RadarGridInterpolator.GridCells cells =
+            new RadarGridInterpolator.GridCells(100, 100, 14);
+        int numCells = cells.getNumCells();
+        for (int i = 0; i < numCells; i++) {
+            cells.setCell(i,
+                          ELEVS[0] + random.nextDouble()
+                          * (ELEVS[ELEVS.length - 1] - ELEVS[0]), 1.0
+                              + random.nextDouble() * 358.0, 10.0
+                                  + random.nextDouble() * 400.0);
+        }
+        float[][] sweepData = new float[ELEVS.length][];
+        int[]     numGates  = new int[ELEVS.length];
+        RadarGridInterpolator.SweepGeometry geometry =
+            makeGeometry(sweepData, numGates, 0, 0);
+
+        RadarGridInterpolator interpolator =
+            RadarGridInterpolator.getInterpolator("test", cells, geometry);
+        assertSame("the table should be cached", interpolator,
+                   RadarGridInterpolator.getInterpolator("test", cells,
+                       makeGeometry(new float[ELEVS.length][],
+                                    new int[ELEVS.length], 0, 0)));
+
+        float[] result = new float[numCells];
+        long    t1     = System.currentTimeMillis();
+        interpolator.interpolate(geometry, sweepData, numGates, result);
+        long t2 = System.currentTimeMillis();
+        System.err.println("interpolated " + numCells + " cells in "
+                           + (t2 - t1) + " ms");
+        for (int i = 0; i < numCells; i++) {
+            double expected = (cells.dists[i] - RANGE_TO_FIRST_GATE)
+                              / RANGE_STEP;
+            assertEquals("cell " + i, expected, result[i], 1.0e-3);
+        }
+    }
+
+    /**
+     * Cells outside of the range of the radar are missing
+     */
+    @Test
+    public void testOutOfRange() {
+        RadarGridInterpolator.GridCells cells =
+            new RadarGridInterpolator.GridCells(1, 1, 1);
+        cells.setCell(0, 1.0, 45.0, 10000.0);
+        float[][] sweepData = new float[ELEVS.length][];
+        int[]     numGates  = new int[ELEVS.length];
+        RadarGridInterpolator.SweepGeometry geometry =
+            makeGeometry(sweepData, numGates, 0, 0);
+        RadarGridInterpolator interpolator =
+            new RadarGridInterpolator(cells, geometry);
+        float[] result = new float[1];
+        interpolator.interpolate(geometry, sweepData, numGates, result);
+        assertTrue(Float.isNaN(result[0]));
+    }
+
+    /**
+     * Volumes whose rays are a little off and start at a different ray
+     * share the table, and it picks the right rays of each volume and
+     * weights them by their exact azimuths
+     */
+    @Test
+    public void testNominalGeometry() {
+        Random random = new Random(2);
+        RadarGridInterpolator.GridCells cells =
+            new RadarGridInterpolator.GridCells(20, 20, 4);
+        int numCells = cells.getNumCells();
+        for (int i = 0; i < numCells; i++) {
+            cells.setCell(i,
+                          ELEVS[0] + random.nextDouble()
+                          * (ELEVS[ELEVS.length - 1] - ELEVS[0]), 10.0
+                              + random.nextDouble() * 340.0, 10.0
+                                  + random.nextDouble() * 400.0);
+        }
+        float[][] sweepData1 = new float[ELEVS.length][];
+        int[]     numGates1  = new int[ELEVS.length];
+        RadarGridInterpolator.SweepGeometry geometry1 =
+            makeGeometry(sweepData1, numGates1, 0, 0);
+        float[][] sweepData2 = new float[ELEVS.length][];
+        int[]     numGates2  = new int[ELEVS.length];
+        RadarGridInterpolator.SweepGeometry geometry2 =
+            makeGeometry(sweepData2, numGates2, 0.04, 17);
+        RadarGridInterpolator interpolator =
+            RadarGridInterpolator.getInterpolator("nominal", cells,
+                geometry1);
+        assertSame("the table should be shared", interpolator,
+                   RadarGridInterpolator.getInterpolator("nominal", cells,
+                       geometry2));
+
+        //Make the values the azimuth of the ray
+        for (int s = 0; s < ELEVS.length; s++) {
+            for (int r = 0; r < NUM_RAYS; r++) {
+                for (int g = 0; g < NUM_GATES; g++) {
+                    sweepData2[s][r * NUM_GATES + g] =
+                        (float) geometry2.rayAzims[s][r];
+                }
+            }
+        }
+        float[] result = new float[numCells];
+        interpolator.interpolate(geometry2, sweepData2, numGates2, result);
+        //The values are linear in azimuth so the weights of the exact
+        //azimuths give back the azimuth of the cell
+        for (int i = 0; i < numCells; i++) {
+            assertEquals("cell " + i, cells.azims[i], result[i], 1.0e-3);
+        }
+    }
+
+    /**
+     * Make a volume whose values are the gate index
+     *
+     * @param sweepData filled in with the data
+     * @param numGates filled in with the number of gates
+     * @param jitter how far (degrees) the rays are off of their nominal
+     *               azimuth
+     * @param startRay the ray the sweeps start at
+     *
+     * @return the geometry
+     */
+    private static RadarGridInterpolator.SweepGeometry makeGeometry(
+            float[][] sweepData, int[] numGates, double jitter,
+            int startRay) {
+        int        numSweeps   = ELEVS.length;
+        double[][] rayAzims    = new double[numSweeps][NUM_RAYS];
+        double[][] rayElevs    = new double[numSweeps][NUM_RAYS];
+        double[][] azims       = new double[numSweeps][];
+        int[][]    azimIndices = new int[numSweeps][];
+        for (int s = 0; s < numSweeps; s++) {
+            numGates[s]  = NUM_GATES;
+            sweepData[s] = new float[NUM_RAYS * NUM_GATES];
+            for (int r = 0; r < NUM_RAYS; r++) {
+                //Start each sweep at a different azimuth
+                rayAzims[s][r] = (r + startRay + 0.5 + 7 * s) % 360
+                                 + ((r % 2 == 0)
+                                    ? jitter
+                                    : -jitter);
+                rayElevs[s][r] = ELEVS[s] + jitter;
+                for (int g = 0; g < NUM_GATES; g++) {
+                    sweepData[s][r * NUM_GATES + g] = g;
+                }
+            }
+            double[] sorted = (double[]) rayAzims[s].clone();
+            azimIndices[s] =
+                CDMRadarAdapter.sortFloatArrayWithNaNAndIndices(sorted);
+            azims[s] = CDMRadarAdapter.removeNaNfromSortedArray(sorted);
+        }
+        return new RadarGridInterpolator.SweepGeometry(ELEVS, azims,
+                azimIndices, rayAzims, rayElevs, RANGE_TO_FIRST_GATE,
+                RANGE_STEP);
+    }
+}
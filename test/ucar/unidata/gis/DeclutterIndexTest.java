@@ -0,0 +1,267 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.gis;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.awt.geom.Rectangle2D;
+
+import java.util.Arrays;
+import java.util.Random;
+
+
+/**
+ * Tests the {@link DeclutterIndex}. The main method runs a zoom step
+ * benchmark against decluttering with a {@link SpatialGrid} on every step:
+ * <pre>
+ * java ucar.unidata.gis.DeclutterIndexTest [numPoints] [numSteps]
+ * </pre>
+ */
+public class DeclutterIndexTest {
+
+    /** glyph width */
+    private static final double WIDTH = 0.04;
+
+    /** glyph height */
+    private static final double HEIGHT = 0.03;
+
+    /**
+     * Make random points in -1 to 1, clumped like a surface network
+     *
+     * @param numPoints number of points
+     * @param seed random seed
+     *
+     * @return x and y
+     */
+    private static double[][] makePoints(int numPoints, long seed) {
+        Random   random = new Random(seed);
+        double[] xs     = new double[numPoints];
+        double[] ys     = new double[numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            if (random.nextBoolean()) {
+                xs[i] = -0.5 + random.nextGaussian() * 0.1;
+                ys[i] = 0.2 + random.nextGaussian() * 0.1;
+            } else {
+                xs[i] = random.nextDouble() * 2 - 1;
+                ys[i] = random.nextDouble() * 2 - 1;
+            }
+        }
+        return new double[][] { xs, ys };
+    }
+
+    /**
+     * Glyphs of the shown points don't overlap
+     */
+    @Test
+    public void testNoOverlap() {
+        double[][]     pts   = makePoints(3000, 1);
+        DeclutterIndex index = new DeclutterIndex(pts[0], pts[1], WIDTH,
+                                   HEIGHT);
+        for (double scale : new double[] { 0.1, 0.5, 1, 2, 7.3, 40 }) {
+            int[] shown = index.select(scale, null);
+            assertTrue(shown.length > 0);
+            for (int a = 0; a < shown.length; a++) {
+                for (int b = a + 1; b < shown.length; b++) {
+                    double dx = Math.abs(pts[0][shown[a]] - pts[0][shown[b]]);
+                    double dy = Math.abs(pts[1][shown[a]] - pts[1][shown[b]]);
+                    assertFalse("overlap at scale " + scale,
+                                (dx < WIDTH * scale) && (dy < HEIGHT * scale));
+                }
+            }
+        }
+    }
+
+    /**
+     * The points shown for bigger glyphs are also shown for smaller ones
+     * and the highest priority point is always shown
+     */
+    @Test
+    public void testNested() {
+        double[][]     pts    = makePoints(5000, 2);
+        DeclutterIndex index  = new DeclutterIndex(pts[0], pts[1], WIDTH,
+                                    HEIGHT);
+        int[]          bigger = index.select(100, null);
+        assertArrayEquals(new int[] { 0 }, bigger);
+        for (double scale = 50; scale > 0.01; scale /= 1.7) {
+            int[] smaller = index.select(scale, null);
+            assertTrue(smaller.length >= bigger.length);
+            for (int point : bigger) {
+                assertTrue(Arrays.binarySearch(smaller, point) >= 0);
+            }
+            bigger = smaller;
+        }
+        //Tiny glyphs show everything
+        assertEquals(5000, index.select(1.0e-6, null).length);
+    }
+
+    /**
+     * Bounds and missing points
+     */
+    @Test
+    public void testBounds() {
+        double[] xs = { 0, 1, 2, 3, Double.NaN, 5, 0.1 };
+        double[] ys = { 0, 0, 0, 0, 0, Double.NaN, 0 };
+        DeclutterIndex index = new DeclutterIndex(xs, ys, 1, 1);
+        assertArrayEquals(new int[] { 0, 1, 2, 3 },
+                          index.select(0.9, null));
+        assertArrayEquals(new int[] { 0, 3 }, index.select(2, null));
+        assertArrayEquals(new int[] { 1, 2 },
+                          index.select(0.9,
+                                       new Rectangle2D.Double(1, -1, 2,
+                                           2)));
+        assertArrayEquals(new int[] { 0, 1, 2, 3, 6 },
+                          index.select(0.01, null));
+        assertEquals(index.getNumLevels(), index.getLevel(4));
+        assertEquals(0, new DeclutterIndex(new double[0], new double[0], 1,
+                                           1).select(1, null).length);
+    }
+
+    /**
+     * A Lambert conformal projection of a lat/lon to display coordinates,
+     * standing in for the display's projection
+     *
+     * @param lat latitude
+     * @param lon longitude
+     * @param xy the x and y
+     */
+    private static void project(double lat, double lon, double[] xy) {
+        double n     = Math.sin(Math.toRadians(40));
+        double f     = Math.cos(Math.toRadians(40))
+                       * Math.pow(Math.tan(Math.PI / 4
+                                           + Math.toRadians(40) / 2), n) / n;
+        double rho   = f / Math.pow(Math.tan(Math.PI / 4
+                                             + Math.toRadians(lat) / 2), n);
+        double rho0  = f / Math.pow(Math.tan(Math.PI / 4
+                                             + Math.toRadians(40) / 2), n);
+        double theta = n * Math.toRadians(lon + 100);
+        xy[0] = 4 * rho * Math.sin(theta);
+        xy[1] = 4 * (rho0 - rho * Math.cos(theta));
+    }
+
+    /**
+     * Declutter a zoom step the way the StationModelControl did it:
+     * project each ob and mark it in a SpatialGrid over the bounds
+     *
+     * @param lats latitudes
+     * @param lons longitudes
+     * @param scale glyph scale
+     * @param bounds view bounds
+     * @param grid the grid
+     *
+     * @return number of points shown
+     */
+    private static int gridDeclutter(double[] lats, double[] lons,
+                                     double scale, Rectangle2D bounds,
+                                     SpatialGrid grid) {
+        Rectangle2D.Double obBounds = new Rectangle2D.Double(0, 0,
+                                          WIDTH * scale, HEIGHT * scale);
+        grid.clear();
+        grid.setGrid(bounds, obBounds);
+        double[] xy    = new double[2];
+        int      count = 0;
+        for (int i = 0; i < lats.length; i++) {
+            project(lats[i], lons[i], xy);
+            obBounds.x = xy[0];
+            obBounds.y = xy[1];
+            if (grid.markIfClear(obBounds, "")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Run the zoom step benchmark. The projection here is cheaper than the
+     * display's, which goes through VisAD objects for each ob, so this
+     * understates the time of each grid step.
+     *
+     * @param args number of points and number of zoom steps
+     */
+    public static void main(String[] args) {
+        int numPoints = (args.length > 0)
+                        ? Integer.parseInt(args[0])
+                        : 50000;
+        int numSteps  = (args.length > 1)
+                        ? Integer.parseInt(args[1])
+                        : 20;
+        double[][] pts  = makePoints(numPoints, 3);
+        double[]   lats = new double[numPoints];
+        double[]   lons = new double[numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            lats[i] = 40 + 15 * pts[1][i];
+            lons[i] = -100 + 30 * pts[0][i];
+        }
+        double[] center = new double[2];
+        project(43, -115, center);
+        for (int pass = 0; pass < 2; pass++) {
+            long     t1 = System.nanoTime();
+            double[] xs = new double[numPoints];
+            double[] ys = new double[numPoints];
+            double[] xy = new double[2];
+            for (int i = 0; i < numPoints; i++) {
+                project(lats[i], lons[i], xy);
+                xs[i] = xy[0];
+                ys[i] = xy[1];
+            }
+            DeclutterIndex index = new DeclutterIndex(xs, ys, WIDTH, HEIGHT);
+            long           t2         = System.nanoTime();
+            SpatialGrid    grid       = new SpatialGrid(200, 200);
+            long           gridTime   = 0;
+            long           indexTime  = 0;
+            int            gridCount  = 0;
+            int            indexCount = 0;
+            for (int step = 0; step < numSteps; step++) {
+                //Zoom in by 1.25 each step, with the glyphs shrinking
+                double zoom  = Math.pow(1.25, step);
+                double half  = 1 / zoom;
+                double scale = 1 / zoom;
+                Rectangle2D bounds = new Rectangle2D.Double(center[0] - half,
+                                         center[1] - half, 2 * half,
+                                         2 * half);
+                long s1 = System.nanoTime();
+                gridCount += gridDeclutter(lats, lons, scale, bounds, grid);
+                long s2 = System.nanoTime();
+                indexCount += index.select(scale, bounds).length;
+                long s3 = System.nanoTime();
+                gridTime  += s2 - s1;
+                indexTime += s3 - s2;
+            }
+            if (pass == 0) {
+                continue;
+            }
+            System.out.println("points:" + numPoints + " levels:"
+                               + index.getNumLevels() + " build:"
+                               + (t2 - t1) / 1000000 + "ms");
+            System.out.println("grid per step:"
+                               + gridTime / numSteps / 1000 + "us shown:"
+                               + gridCount / numSteps);
+            System.out.println("index per step:"
+                               + indexTime / numSteps / 1000 + "us shown:"
+                               + indexCount / numSteps);
+        }
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.gis.shapefile;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ucar.unidata.gis.GisFeature;
+
+import java.awt.geom.Rectangle2D;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+
+/**
+ * Tests the mapped and indexed reading in {@link EsriShapefile}. The
+ * shapefile is a 10x10 grid of short diagonal lines followed by a null
+ * shape.
+ */
+public class EsriShapefileTest {
+
+    /** grid size */
+    private static final int SIDE = 10;
+
+    /** number of records, including the null shape */
+    private static final int NUM_RECORDS = SIDE * SIDE + 1;
+
+    /** temp dir */
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * Make the 100 byte header of the .shp or .shx file
+     *
+     * @param fileBytes file size
+     *
+     * @return the header
+     */
+    private static ByteBuffer header(int fileBytes) {
+        ByteBuffer b = ByteBuffer.allocate(fileBytes);
+        b.putInt(EsriShapefile.SHAPEFILE_CODE);
+        b.position(24);
+        b.putInt(fileBytes / 2);
+        b.order(ByteOrder.LITTLE_ENDIAN);
+        b.putInt(1000);
+        b.putInt(EsriShapefile.POLYLINE);
+        b.putDouble(0).putDouble(0).putDouble(SIDE * 10).putDouble(SIDE
+                * 10);
+        b.position(100);
+        return b;
+    }
+
+    /**
+     * Write the .shp, .shx and .dbf files
+     *
+     * @param dir directory
+     * @param withShx write the .shx file
+     *
+     * @return the .shp file
+     *
+     * @throws Exception On badness
+     */
+    private static File writeShapefile(File dir, boolean withShx)
+            throws Exception {
+        int        recordBytes = 8 + 80;
+        int        shpBytes = 100 + (NUM_RECORDS - 1) * recordBytes + 12;
+        ByteBuffer shp         = header(shpBytes);
+        ByteBuffer shx         = header(100 + 8 * NUM_RECORDS);
+        for (int i = 0; i < NUM_RECORDS; i++) {
+            shx.order(ByteOrder.BIG_ENDIAN);
+            shx.putInt(shp.position() / 2);
+            shp.order(ByteOrder.BIG_ENDIAN);
+            shp.putInt(i + 1);
+            if (i == NUM_RECORDS - 1) {
+                shx.putInt(2);
+                shp.putInt(2);
+                shp.order(ByteOrder.LITTLE_ENDIAN);
+                shp.putInt(EsriShapefile.NULL);
+                break;
+            }
+            shx.putInt(40);
+            shp.putInt(40);
+            shp.order(ByteOrder.LITTLE_ENDIAN);
+            double x = (i % SIDE) * 10;
+            double y = (i / SIDE) * 10;
+            shp.putInt(EsriShapefile.POLYLINE);
+            shp.putDouble(x).putDouble(y).putDouble(x + 5).putDouble(y + 5);
+            shp.putInt(1).putInt(2).putInt(0);
+            shp.putDouble(x).putDouble(y).putDouble(x + 5).putDouble(y + 5);
+        }
+        File file = new File(dir, "grid.shp");
+        Files.write(file.toPath(), shp.array());
+        if (withShx) {
+            Files.write(new File(dir, "grid.shx").toPath(), shx.array());
+        }
+
+        //One numeric and one character column, the second record deleted
+        int        recordSize = 1 + 8 + 4;
+        ByteBuffer dbf = ByteBuffer.allocate(32 + 64 + 1
+                                             + NUM_RECORDS * recordSize);
+        dbf.order(ByteOrder.LITTLE_ENDIAN);
+        dbf.put((byte) 3).put((byte) 126).put((byte) 1).put((byte) 1);
+        dbf.putInt(NUM_RECORDS);
+        dbf.putShort((short) (32 + 64 + 1));
+        dbf.putShort((short) recordSize);
+        dbf.position(32);
+        dbf.put("ID".getBytes());
+        dbf.position(32 + 11);
+        dbf.put((byte) 'N');
+        dbf.position(32 + 16);
+        dbf.put((byte) 8);
+        dbf.position(64);
+        dbf.put("NAME".getBytes());
+        dbf.position(64 + 11);
+        dbf.put((byte) 'C');
+        dbf.position(64 + 16);
+        dbf.put((byte) 4);
+        dbf.position(96);
+        dbf.put((byte) 0x0d);
+        for (int i = 0; i < NUM_RECORDS; i++) {
+            dbf.put((byte) ((i == 1)
+                            ? '*'
+                            : ' '));
+            dbf.put(String.format("%8d", i).getBytes());
+            dbf.put(String.format("f%03d", i).getBytes());
+        }
+        Files.write(new File(dir, "grid.dbf").toPath(), dbf.array());
+        return file;
+    }
+
+    /**
+     * Get the x of the first point of each feature
+     *
+     * @param features the features
+     *
+     * @return the x values
+     */
+    private static double[] getXs(List features) {
+        double[] xs = new double[features.size()];
+        for (int i = 0; i < xs.length; i++) {
+            GisFeature feature = (GisFeature) features.get(i);
+            if (feature.getNumPoints() == 0) {
+                xs[i] = Double.NaN;
+            } else {
+                xs[i] = ((EsriShapefile.EsriPart) feature.getGisParts()
+                    .next()).getX()[0];
+            }
+        }
+        return xs;
+    }
+
+    /**
+     * The mapped reader gives the same features as the stream reader
+     * and the bounding box query finds the right ones
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testMapped() throws Exception {
+        File          file      = writeShapefile(tmp.getRoot(), true);
+        EsriShapefile mapped    = new EsriShapefile(file, null, 0);
+        EsriShapefile streamed  = new EsriShapefile(new ByteArrayInputStream(
+                                      Files.readAllBytes(file.toPath())), null,
+                                          0);
+        assertEquals(NUM_RECORDS, mapped.getNumFeatures());
+        assertEquals(EsriShapefile.POLYLINE, mapped.getFeatureType());
+
+        Rectangle2D box  = new Rectangle2D.Double(12, 12, 10, 10);
+        List        hits = mapped.getFeatures(box);
+        //(10,10), (20,10), (10,20) and (20,20)
+        assertEquals(4, hits.size());
+        assertArrayEquals(new double[] { 10, 20, 10, 20 }, getXs(hits), 0);
+        assertArrayEquals(getXs(streamed.getFeatures(box)), getXs(hits), 0);
+        assertArrayEquals(getXs(streamed.getFeatures()),
+                          getXs(mapped.getFeatures()), 0);
+
+        //Features are only read for the box
+        box = new Rectangle2D.Double(1000, 1000, 10, 10);
+        assertEquals(0, mapped.getFeatures(box).size());
+    }
+
+    /**
+     * The records are found without a .shx file and the constructor
+     * bounding box selects the features
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testNoShx() throws Exception {
+        File file = writeShapefile(tmp.getRoot(), false);
+        EsriShapefile shapefile =
+            new EsriShapefile(file, new Rectangle2D.Double(0, 0, 30, 1), 0);
+        //The first row of 4 plus the null shape
+        assertEquals(4, shapefile.getNumFeatures() - 1);
+        assertArrayEquals(new double[] { 0, 10, 20, 30, Double.NaN },
+                          getXs(shapefile.getFeatures()), 0);
+    }
+
+    /**
+     * A zipped shapefile is read with its dbf file
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testZip() throws Exception {
+        File            dir = tmp.newFolder("src");
+        writeShapefile(dir, true);
+        File            zip = new File(tmp.getRoot(), "grid.zip");
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zip));
+        for (String suffix : new String[] { ".dbf", ".shp", ".shx" }) {
+            zos.putNextEntry(new ZipEntry("grid/grid" + suffix));
+            zos.write(Files.readAllBytes(new File(dir, "grid" + suffix)
+                .toPath()));
+            zos.closeEntry();
+        }
+        zos.close();
+        EsriShapefile shapefile = new EsriShapefile(zip.getPath());
+        assertEquals(NUM_RECORDS, shapefile.getNumFeatures());
+        assertNotNull(shapefile.getDbFile());
+        assertEquals(NUM_RECORDS - 1,
+                     shapefile.getDbFile().getNumRecords());
+    }
+
+    /**
+     * The dbf columns are read when they are asked for and deleted
+     * records are skipped
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testDbase() throws Exception {
+        writeShapefile(tmp.getRoot(), true);
+        DbaseFile dbf = new DbaseFile(new File(tmp.getRoot(), "grid.dbf"));
+        assertEquals(0, dbf.loadHeader());
+        assertEquals(0, dbf.loadData());
+        assertEquals(2, dbf.getNumFields());
+        assertEquals(NUM_RECORDS - 1, dbf.getNumRecords());
+        String[] names = dbf.getStringsByName("NAME");
+        assertEquals("f000", names[0]);
+        assertEquals("f002", names[1]);
+        assertEquals(100.0, dbf.getField("ID").getDouble(99), 0);
+        assertNull(dbf.getField("NONE"));
+    }
+
+    /**
+     * Read a quad tree from a .qix file
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testQix() throws Exception {
+        ByteBuffer qix = ByteBuffer.allocate(200).order(
+                             ByteOrder.LITTLE_ENDIAN);
+        qix.put("SQT".getBytes()).put((byte) 1).put((byte) 1);
+        qix.position(8);
+        qix.putInt(3).putInt(2);
+        //root with shape 2 and one child with shapes 0 and 1
+        qix.putInt(0).putDouble(0).putDouble(0).putDouble(100).putDouble(
+            100);
+        qix.putInt(1).putInt(2).putInt(1);
+        qix.putInt(0).putDouble(0).putDouble(0).putDouble(10).putDouble(10);
+        qix.putInt(2).putInt(1).putInt(0).putInt(0);
+        qix.flip();
+        ShapefileIndex index = ShapefileIndex.readQix(qix);
+        assertEquals(3, index.getNumItems());
+        assertArrayEquals(new int[] { 0, 1, 2 }, index.query(5, 5, 6, 6));
+        assertArrayEquals(new int[] { 2 }, index.query(50, 50, 60, 60));
+        assertArrayEquals(new int[0], index.query(200, 200, 300, 300));
+    }
+
+    /**
+     * The packed R-tree finds the same items as a linear scan
+     */
+    @Test
+    public void testIndex() {
+        int      n      = 5000;
+        double[] bounds = new double[4 * n];
+        java.util.Random random = new java.util.Random(42);
+        for (int i = 0; i < n; i++) {
+            double x = random.nextDouble() * 360 - 180;
+            double y = random.nextDouble() * 180 - 90;
+            bounds[4 * i]     = x;
+            bounds[4 * i + 1] = y;
+            bounds[4 * i + 2] = x + random.nextDouble() * 5;
+            bounds[4 * i + 3] = y + random.nextDouble() * 5;
+        }
+        bounds[0] = Double.NaN;
+        ShapefileIndex index = ShapefileIndex.build(bounds);
+        assertEquals(n - 1, index.getNumItems());
+        for (int q = 0; q < 50; q++) {
+            double minX = random.nextDouble() * 360 - 180;
+            double minY = random.nextDouble() * 180 - 90;
+            double maxX = minX + random.nextDouble() * 40;
+            double maxY = minY + random.nextDouble() * 40;
+            int[]  expected = new int[n];
+            int    cnt      = 0;
+            for (int i = 1; i < n; i++) {
+                if ((bounds[4 * i] <= maxX) && (bounds[4 * i + 2] >= minX)
+                        && (bounds[4 * i + 1] <= maxY)
+                        && (bounds[4 * i + 3] >= minY)) {
+                    expected[cnt++] = i;
+                }
+            }
+            assertArrayEquals(java.util.Arrays.copyOf(expected, cnt),
+                              index.query(minX, minY, maxX, maxY));
+        }
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.idv;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Tests the scheduling of the {@link IdvServerPool}. The pool is run
+ * without any idvs.
+ */
+public class IdvServerPoolTest {
+
+    /**
+     * Make a pool that does not make any idvs
+     *
+     * @param size number of workers
+     * @param maxQueueSize max queue size
+     *
+     * @return the pool
+     *
+     * @throws Exception On badness
+     */
+    private IdvServerPool makePool(int size, int maxQueueSize)
+            throws Exception {
+        return new IdvServerPool(null, size, maxQueueSize, 60000) {
+            protected IdvServer makeServer() {
+                return null;
+            }
+        };
+    }
+
+    /**
+     * A server without an idv that counts its cleanups
+     */
+    private static class FakeServer extends IdvServer {
+
+        /** number of cleanups */
+        AtomicInteger cleanupCnt = new AtomicInteger();
+
+        /**
+         * There is no idv
+         *
+         * @return null
+         */
+        public MyIdv nextIdv() {
+            return null;
+        }
+
+        /**
+         * Count the cleanup
+         */
+        public void cleanup() {
+            cleanupCnt.incrementAndGet();
+        }
+    }
+
+    /**
+     * A job that fails
+     */
+    private static class FailingJob extends IdvServerPool.Job {
+
+        /**
+         * ctor
+         */
+        FailingJob() {
+            super(IdvServerPool.PRIORITY_NORMAL, null);
+        }
+
+        /**
+         * Fail
+         *
+         * @param server the server
+         * @param warm is warm
+         *
+         * @throws Exception always
+         */
+        public void run(IdvServer server, boolean warm) throws Exception {
+            throw new Exception("failed");
+        }
+    }
+
+    /**
+     * A job that waits until it is released
+     */
+    private static class BlockingJob extends IdvServerPool.Job {
+
+        /** released when the job starts */
+        CountDownLatch started = new CountDownLatch(1);
+
+        /** the job waits for this */
+        CountDownLatch release = new CountDownLatch(1);
+
+        /**
+         * ctor
+         */
+        BlockingJob() {
+            super(IdvServerPool.PRIORITY_NORMAL, null);
+        }
+
+        /**
+         * Wait until released
+         *
+         * @param server the server
+         * @param warm is warm
+         *
+         * @throws Exception On badness
+         */
+        public void run(IdvServer server, boolean warm) throws Exception {
+            started.countDown();
+            release.await();
+        }
+    }
+
+    /**
+     * A job that records its name when it is run
+     */
+    private static class NamedJob extends IdvServerPool.Job {
+
+        /** the name */
+        String name;
+
+        /** where we record */
+        List<String> ran;
+
+        /** was it run warm */
+        boolean wasWarm;
+
+        /**
+         * ctor
+         *
+         * @param priority the priority
+         * @param warmKey the warm key
+         * @param name the name
+         * @param ran where we record
+         */
+        NamedJob(int priority, String warmKey, String name,
+                 List<String> ran) {
+            super(priority, warmKey);
+            this.name = name;
+            this.ran  = ran;
+        }
+
+        /**
+         * Record the name
+         *
+         * @param server the server
+         * @param warm is warm
+         */
+        public void run(IdvServer server, boolean warm) {
+            wasWarm = warm;
+            ran.add(name);
+        }
+    }
+
+    /**
+     * Queued jobs run highest priority first
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testPriority() throws Exception {
+        IdvServerPool pool    = makePool(1, 10);
+        BlockingJob   blocker = new BlockingJob();
+        pool.submit(blocker);
+        blocker.started.await();
+        List<String> ran = Collections.synchronizedList(
+                               new ArrayList<String>());
+        NamedJob low = new NamedJob(IdvServerPool.PRIORITY_LOW, null, "low",
+                                    ran);
+        NamedJob normal = new NamedJob(IdvServerPool.PRIORITY_NORMAL, null,
+                                       "normal", ran);
+        NamedJob high = new NamedJob(IdvServerPool.PRIORITY_HIGH, null,
+                                     "high", ran);
+        NamedJob normal2 = new NamedJob(IdvServerPool.PRIORITY_NORMAL, null,
+                                        "normal2", ran);
+        pool.submit(low);
+        pool.submit(normal);
+        pool.submit(high);
+        pool.submit(normal2);
+        assertEquals(4, pool.getQueueDepth());
+        blocker.release.countDown();
+        pool.execute(new NamedJob(IdvServerPool.PRIORITY_LOW, null, "last",
+                                  ran));
+        assertEquals("[high, normal, normal2, low, last]", ran.toString());
+        assertEquals(6, ((Integer) pool.getMetrics().get("completed"))
+            .intValue());
+        pool.shutdown();
+    }
+
+    /**
+     * A full queue rejects new jobs
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testBackPressure() throws Exception {
+        IdvServerPool pool    = makePool(1, 2);
+        BlockingJob   blocker = new BlockingJob();
+        pool.submit(blocker);
+        blocker.started.await();
+        List<String> ran = new ArrayList<String>();
+        pool.submit(new NamedJob(IdvServerPool.PRIORITY_NORMAL, null, "a",
+                                 ran));
+        pool.submit(new NamedJob(IdvServerPool.PRIORITY_NORMAL, null, "b",
+                                 ran));
+        try {
+            pool.submit(new NamedJob(IdvServerPool.PRIORITY_HIGH, null, "c",
+                                     ran));
+            fail("Expected the queue to be full");
+        } catch (IdvServerPool.PoolFullException exc) {}
+        assertEquals(1, ((Integer) pool.getMetrics().get("rejected"))
+            .intValue());
+        assertEquals(2, ((Integer) pool.getMetrics().get("maxqueuedepth"))
+            .intValue());
+        blocker.release.countDown();
+        pool.shutdown();
+    }
+
+    /**
+     * Jobs with the same warm key reuse the server state
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testWarm() throws Exception {
+        IdvServerPool pool = makePool(2, 10);
+        List<String>  ran  = Collections.synchronizedList(
+                                 new ArrayList<String>());
+        NamedJob first = new NamedJob(IdvServerPool.PRIORITY_NORMAL, "key1",
+                                      "first", ran);
+        pool.execute(first);
+        assertFalse(first.wasWarm);
+        for (int i = 0; i < 5; i++) {
+            NamedJob again = new NamedJob(IdvServerPool.PRIORITY_NORMAL,
+                                          "key1", "again", ran);
+            pool.execute(again);
+            assertTrue(again.wasWarm);
+        }
+        NamedJob other = new NamedJob(IdvServerPool.PRIORITY_NORMAL, "key2",
+                                      "other", ran);
+        pool.execute(other);
+        assertFalse(other.wasWarm);
+        assertEquals(5, ((Integer) pool.getMetrics().get("warm"))
+            .intValue());
+        pool.shutdown();
+    }
+
+    /**
+     * A job without a warm key loads its state and the next job with a
+     * key has to load its state again
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testNoWarmKey() throws Exception {
+        IdvServerPool pool = makePool(1, 10);
+        List<String>  ran  = Collections.synchronizedList(
+                                 new ArrayList<String>());
+        pool.execute(new NamedJob(IdvServerPool.PRIORITY_NORMAL, "key1",
+                                  "first", ran));
+        NamedJob noKey = new NamedJob(IdvServerPool.PRIORITY_NORMAL, null,
+                                      "nokey", ran);
+        pool.execute(noKey);
+        assertFalse(noKey.wasWarm);
+        NamedJob again = new NamedJob(IdvServerPool.PRIORITY_NORMAL, "key1",
+                                      "again", ran);
+        pool.execute(again);
+        assertFalse(again.wasWarm);
+        pool.shutdown();
+    }
+
+    /**
+     * The server is cleaned up before a cold job that follows a job
+     * without a warm key or a job that failed
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testCleanup() throws Exception {
+        final FakeServer server = new FakeServer();
+        IdvServerPool pool = new IdvServerPool(null, 1, 10, 60000) {
+            protected IdvServer makeServer() {
+                return server;
+            }
+        };
+        List<String> ran = Collections.synchronizedList(
+                               new ArrayList<String>());
+        pool.execute(new NamedJob(IdvServerPool.PRIORITY_NORMAL, "key1",
+                                  "first", ran));
+        assertEquals(0, server.cleanupCnt.get());
+        pool.execute(new NamedJob(IdvServerPool.PRIORITY_NORMAL, "key1",
+                                  "warm", ran));
+        assertEquals(0, server.cleanupCnt.get());
+        pool.execute(new NamedJob(IdvServerPool.PRIORITY_NORMAL, null,
+                                  "nokey", ran));
+        assertEquals(1, server.cleanupCnt.get());
+        //The job without a key left its state behind
+        pool.execute(new NamedJob(IdvServerPool.PRIORITY_NORMAL, "key1",
+                                  "afternokey", ran));
+        assertEquals(2, server.cleanupCnt.get());
+        try {
+            pool.execute(new FailingJob());
+            fail("Expected the job to fail");
+        } catch (Exception exc) {}
+        assertEquals(3, server.cleanupCnt.get());
+        //The failed job may have left its state behind
+        pool.execute(new NamedJob(IdvServerPool.PRIORITY_NORMAL, "key1",
+                                  "afterfailed", ran));
+        assertEquals(4, server.cleanupCnt.get());
+        assertEquals(1, ((Integer) pool.getMetrics().get("failed"))
+            .intValue());
+        pool.shutdown();
+    }
+}
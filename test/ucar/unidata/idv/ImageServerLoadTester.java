@@ -0,0 +1,229 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.idv;
+
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * A simple load tester for the {@link ImageServer}. It fires isl or
+ * bundle image requests at a running server from a number of threads
+ * and prints the latencies and the server's pool metrics. The isl
+ * requests need the isl.enable server property and a server on the
+ * local host.
+ * <pre>
+ * java ucar.unidata.idv.ImageServerLoadTester -url http://localhost:8080/
+ *      [-isl file.isl | -bundle file.xidv] [-threads 8] [-requests 100]
+ *      [-priority 5]
+ * </pre>
+ */
+public class ImageServerLoadTester {
+
+    /**
+     * Run the load test
+     *
+     * @param args command line args
+     *
+     * @throws Exception On badness
+     */
+    public static void main(String[] args) throws Exception {
+        String url         = "http://localhost:8080/";
+        String islFile     = null;
+        String bundle      = null;
+        int    numThreads  = 8;
+        int    numRequests = 100;
+        int    priority    = IdvServerPool.PRIORITY_NORMAL;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-url")) {
+                url = args[++i];
+            } else if (args[i].equals("-isl")) {
+                islFile = args[++i];
+            } else if (args[i].equals("-bundle")) {
+                bundle = args[++i];
+            } else if (args[i].equals("-threads")) {
+                numThreads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-requests")) {
+                numRequests = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-priority")) {
+                priority = Integer.parseInt(args[++i]);
+            } else {
+                System.err.println("Unknown arg:" + args[i]);
+                System.err.println(
+                    "usage: -url <server url> [-isl file | -bundle file] [-threads n] [-requests n] [-priority n]");
+                System.exit(1);
+            }
+        }
+        if ( !url.endsWith("/")) {
+            url = url + "/";
+        }
+        String isl = ((islFile != null)
+                      ? new String(Files.readAllBytes(Paths.get(islFile)),
+                                   "UTF-8")
+                      : null);
+        final String requestUrl;
+        final String postArgs;
+        if (isl != null) {
+            //Post the isl as a form arg
+            requestUrl = url;
+            postArgs = ImageServer.ARG_REQUEST + "=" + ImageServer.REQ_ISL
+                       + "&" + ImageServer.ARG_PRIORITY + "=" + priority
+                       + "&" + ImageServer.ARG_ISL + "="
+                       + URLEncoder.encode(isl, "UTF-8");
+        } else if (bundle != null) {
+            requestUrl = url + "?" + ImageServer.ARG_REQUEST + "="
+                         + ImageServer.REQ_MAKEIMAGE + "&"
+                         + ImageServer.ARG_BUNDLE + "="
+                         + URLEncoder.encode(bundle, "UTF-8") + "&"
+                         + ImageServer.ARG_PRIORITY + "=" + priority;
+            postArgs = null;
+        } else {
+            requestUrl = url;
+            postArgs   = null;
+        }
+
+        final List<Long>    latencies = Collections.synchronizedList(
+                                            new ArrayList<Long>());
+        final AtomicInteger next      = new AtomicInteger(0);
+        final AtomicInteger errors    = new AtomicInteger(0);
+        final AtomicInteger busy      = new AtomicInteger(0);
+        final int           total     = numRequests;
+        List<Thread>        threads   = new ArrayList<Thread>();
+        long                t1        = System.currentTimeMillis();
+        for (int i = 0; i < numThreads; i++) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    while (next.getAndIncrement() < total) {
+                        long t = System.currentTimeMillis();
+                        try {
+                            int code = fire(requestUrl, postArgs);
+                            if (code == 503) {
+                                busy.incrementAndGet();
+                            } else if (code != 200) {
+                                errors.incrementAndGet();
+                            }
+                        } catch (Exception exc) {
+                            errors.incrementAndGet();
+                            System.err.println("Error:" + exc);
+                        }
+                        latencies.add(Long.valueOf(System.currentTimeMillis()
+                                - t));
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long t2 = System.currentTimeMillis();
+
+        List<Long> sorted = new ArrayList<Long>(latencies);
+        Collections.sort(sorted);
+        int cnt = sorted.size();
+        System.out.println("requests:" + cnt + " threads:" + numThreads
+                           + " errors:" + errors.get() + " busy:"
+                           + busy.get());
+        System.out.println("total time:" + (t2 - t1) + "ms  throughput:"
+                           + ((t2 == t1)
+                              ? 0
+                              : (cnt * 1000.0) / (t2 - t1)) + "/s");
+        if (cnt > 0) {
+            System.out.println("latency ms  min:" + sorted.get(0) + " p50:"
+                               + sorted.get(cnt / 2) + " p95:"
+                               + sorted.get(Math.min(cnt - 1,
+                                   (cnt * 95) / 100)) + " max:"
+                                       + sorted.get(cnt - 1));
+        }
+        System.out.println("server stats:");
+        HttpURLConnection connection =
+            (HttpURLConnection) new URL(url + "?" + ImageServer.ARG_REQUEST
+                                        + "="
+                                        + ImageServer.REQ_STATS)
+                                            .openConnection();
+        System.out.println(new String(readAll(connection.getInputStream()),
+                                      "UTF-8"));
+    }
+
+    /**
+     * Make one request
+     *
+     * @param requestUrl the url
+     * @param postArgs the form args to post. May be null.
+     *
+     * @return the response code
+     *
+     * @throws Exception On badness
+     */
+    private static int fire(String requestUrl, String postArgs)
+            throws Exception {
+        HttpURLConnection connection =
+            (HttpURLConnection) new URL(requestUrl).openConnection();
+        if (postArgs != null) {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type",
+                                          "application/x-www-form-urlencoded");
+            OutputStream os = connection.getOutputStream();
+            os.write(postArgs.getBytes("UTF-8"));
+            os.close();
+        }
+        int code = connection.getResponseCode();
+        InputStream is = ((code == 200)
+                          ? connection.getInputStream()
+                          : connection.getErrorStream());
+        if (is != null) {
+            readAll(is);
+        }
+        return code;
+    }
+
+    /**
+     * Read the stream
+     *
+     * @param is the stream
+     *
+     * @return the bytes
+     *
+     * @throws Exception On badness
+     */
+    private static byte[] readAll(InputStream is) throws Exception {
+        try {
+            return is.readAllBytes();
+        } finally {
+            is.close();
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.idv;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Tests the {@link InterpreterPool} with interpreters that just record the
+ * code they run. The main method runs a benchmark of the time to evaluate
+ * the derived fields of a bundle against the number of interpreters:
+ * <pre>
+ * java ucar.unidata.idv.InterpreterPoolTest [numFields] [msPerField]
+ * </pre>
+ */
+public class InterpreterPoolTest {
+
+    /**
+     * An interpreter that records the code it ran
+     */
+    private static class Interp {
+
+        /** the code run */
+        List<String> code = Collections.synchronizedList(
+                                new ArrayList<String>());
+    }
+
+    /**
+     * A pool of Interps
+     */
+    private static class Pool extends InterpreterPool<Interp> {
+
+        /** the library the interpreters are created with */
+        String library = "lib1";
+
+        /** number of created interpreters */
+        AtomicInteger created = new AtomicInteger();
+
+        /**
+         * Create the pool
+         *
+         * @param size max size
+         */
+        Pool(int size) {
+            super(size);
+        }
+
+        /**
+         * Create an interpreter
+         *
+         * @return interpreter
+         */
+        protected Interp createInterpreter() {
+            created.incrementAndGet();
+            Interp interp = new Interp();
+            interp.code.add(library);
+            return interp;
+        }
+
+        /**
+         * Run the code
+         *
+         * @param interp the interpreter
+         * @param code the code
+         */
+        protected void exec(Interp interp, String code) {
+            interp.code.add(code);
+        }
+    }
+
+    /**
+     * Updates are run in each interpreter when it is next acquired
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testUpdates() throws Exception {
+        final Pool   pool = new Pool(2);
+        final Interp a    = pool.acquire();
+        assertEquals(Collections.singletonList("lib1"), a.code);
+        pool.library = "lib2";
+        pool.addUpdate("lib2");
+        assertEquals(1, a.code.size());
+        //Another thread gets a new interpreter that is created with lib2
+        final Interp[] other = { null };
+        Thread thread = new Thread() {
+            public void run() {
+                try {
+                    other[0] = pool.acquire();
+                    pool.release(other[0]);
+                } catch (Exception exc) {}
+            }
+        };
+        thread.start();
+        thread.join();
+        assertTrue(other[0] != a);
+        assertEquals(Collections.singletonList("lib2"), other[0].code);
+        pool.release(a);
+        Interp again = pool.acquire();
+        assertEquals(2, pool.getSize());
+        pool.release(again);
+        assertTrue(pool.contains(a));
+        assertFalse(pool.contains(new Interp()));
+        //Both pick up the update that came after they were made
+        pool.addUpdate("import foo");
+        Interp b = pool.acquire();
+        assertEquals("import foo", b.code.get(b.code.size() - 1));
+        pool.release(b);
+    }
+
+    /**
+     * A thread gets the interpreter it holds back
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testReentrant() throws Exception {
+        Pool   pool  = new Pool(1);
+        Interp outer = pool.acquire();
+        Interp inner = pool.acquire();
+        assertSame(outer, inner);
+        pool.release(inner);
+        pool.release(outer);
+        assertEquals(1, pool.created.get());
+        try {
+            pool.release(outer);
+            assertTrue("Released twice", false);
+        } catch (IllegalStateException ise) {}
+    }
+
+    /**
+     * The number of interpreters in use at once is bounded by the pool size
+     * and all of them get used
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testBounded() throws Exception {
+        final Pool          pool    = new Pool(3);
+        final AtomicInteger inUse   = new AtomicInteger();
+        final AtomicInteger maxUsed = new AtomicInteger();
+        List<Thread>        threads = new ArrayList<Thread>();
+        for (int i = 0; i < 12; i++) {
+            Thread thread = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < 20; j++) {
+                            Interp interp = pool.acquire();
+                            int    cnt    = inUse.incrementAndGet();
+                            synchronized (maxUsed) {
+                                maxUsed.set(Math.max(cnt, maxUsed.get()));
+                            }
+                            Thread.sleep(1);
+                            inUse.decrementAndGet();
+                            pool.release(interp);
+                        }
+                    } catch (Exception exc) {}
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(3, pool.created.get());
+        assertEquals(3, maxUsed.get());
+    }
+
+    /**
+     * Run the benchmark. Each derived field is evaluated in an interpreter
+     * it borrows from the pool. The evaluation is simulated with computation
+     * that takes about msPerField milliseconds.
+     *
+     * @param args number of derived fields and ms per field
+     *
+     * @throws Exception On badness
+     */
+    public static void main(String[] args) throws Exception {
+        int          numFields  = (args.length > 0)
+                                  ? Integer.parseInt(args[0])
+                                  : 48;
+        final int    msPerField = (args.length > 1)
+                                  ? Integer.parseInt(args[1])
+                                  : 100;
+        int          cores      = Runtime.getRuntime().availableProcessors();
+        List<Integer> sizes     = new ArrayList<Integer>();
+        for (int size = 1; size < cores; size *= 2) {
+            sizes.add(size);
+        }
+        sizes.add(cores);
+        System.out.println("fields:" + numFields + " ms per field:"
+                           + msPerField + " cores:" + cores);
+        for (int size : sizes) {
+            final Pool   pool    = new Pool(size);
+            List<Thread> threads = new ArrayList<Thread>();
+            long         t1      = System.currentTimeMillis();
+            //Each display loads its derived field in its own thread
+            for (int i = 0; i < numFields; i++) {
+                Thread thread = new Thread() {
+                    public void run() {
+                        try {
+                            Interp interp = pool.acquire();
+                            try {
+                                evaluate(msPerField);
+                            } finally {
+                                pool.release(interp);
+                            }
+                        } catch (Exception exc) {
+                            exc.printStackTrace();
+                        }
+                    }
+                };
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            long t2 = System.currentTimeMillis();
+            System.out.println("interpreters:" + size + " load time:"
+                               + (t2 - t1) + "ms");
+        }
+    }
+
+    /**
+     * Compute for about the given time
+     *
+     * @param ms milliseconds
+     *
+     * @return a result so this is not optimized away
+     */
+    private static double evaluate(int ms) {
+        long   end = System.nanoTime() + ms * 1000000L;
+        double sum = 0;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 1000; i++) {
+                sum += Math.sin(i * sum);
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 1997-2022 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.util;
+
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * The tests for the CacheManager class.
+ */
+public class CacheManagerTest {
+
+    /** The max size before the test */
+    private long oldMaxSize;
+
+    /**
+     * Start each test with an empty cache
+     */
+    @Before
+    public void setUp() {
+        oldMaxSize = CacheManager.getMaxMemoryCacheSize();
+        CacheManager.clearCache();
+        CacheManager.resetStats();
+    }
+
+    /**
+     * Put things back the way they were
+     */
+    @After
+    public void tearDown() {
+        CacheManager.setMaxMemoryCacheSize(oldMaxSize);
+        CacheManager.clearCache();
+    }
+
+    /**
+     * Test the CacheManager.estimateSize method.
+     */
+    @Test
+    public void testEstimateSize() {
+        assertEquals(0, CacheManager.estimateSize(null));
+        long floats = CacheManager.estimateSize(new float[1000]);
+        assertTrue("float[1000] should be at least 4000 bytes: " + floats,
+                   floats >= 4000);
+        long doubles = CacheManager.estimateSize(new double[1000]);
+        assertTrue("double[] should be bigger than float[]",
+                   doubles > floats);
+        long nested = CacheManager.estimateSize(new float[3][1000]);
+        assertTrue("float[3][1000] should be at least 3 float[1000]",
+                   nested >= 3 * floats);
+    }
+
+    /**
+     * Test that the least recently used entries are evicted across owners
+     */
+    @Test
+    public void testLruEviction() {
+        Object owner1 = "owner1";
+        Object owner2 = "owner2";
+        long   size   = CacheManager.estimateSize(new byte[1000]);
+        CacheManager.setMaxMemoryCacheSize(size * 3);
+        CacheManager.put(owner1, "a", new byte[1000]);
+        CacheManager.put(owner2, "b", new byte[1000]);
+        CacheManager.put(owner1, "c", new byte[1000]);
+        assertEquals(3 * size, CacheManager.getMemoryCacheSize());
+
+        //Touch a so b is the least recently used
+        assertNotNull(CacheManager.get(owner1, "a"));
+        CacheManager.put(owner2, "d", new byte[1000]);
+
+        assertNull("b should have been evicted",
+                   CacheManager.get(owner2, "b"));
+        assertNotNull(CacheManager.get(owner1, "a"));
+        assertNotNull(CacheManager.get(owner2, "d"));
+        assertTrue(CacheManager.getEvictionCount() >= 1);
+        assertTrue(CacheManager.getMemoryCacheSize()
+                   <= CacheManager.getMaxMemoryCacheSize());
+    }
+
+    /**
+     * Test the hit and miss counts and the size bookkeeping on remove
+     */
+    @Test
+    public void testStats() {
+        Object owner = "owner";
+        CacheManager.put(owner, "a", new byte[100]);
+        CacheManager.get(owner, "a");
+        CacheManager.get(owner, "b");
+        CacheManager.get("nobody", "a");
+        assertEquals(1, CacheManager.getHitCount());
+        assertEquals(2, CacheManager.getMissCount());
+
+        CacheManager.put(owner, "a", new byte[200]);
+        assertEquals(CacheManager.estimateSize(new byte[200]),
+                     CacheManager.getMemoryCacheSize());
+        CacheManager.remove(owner, "a");
+        assertEquals(0, CacheManager.getMemoryCacheSize());
+        CacheManager.put(owner, "a", new byte[100]);
+        CacheManager.remove(owner);
+        assertEquals(0, CacheManager.getMemoryCacheSize());
+    }
+
+    /**
+     * Clearing the cache keeps the size right and tells the listeners.
+     * Trimming the cache also tells the listeners.
+     */
+    @Test
+    public void testClearAndTrim() {
+        final int[] cleared = { 0 };
+        CacheManager.addCacheListener(new ActionListener() {
+            public void actionPerformed(ActionEvent ae) {
+                cleared[0]++;
+            }
+        });
+        CacheManager.put("owner", "a", new byte[100]);
+        CacheManager.put("owner", "b", new byte[100]);
+        CacheManager.clearCache();
+        assertEquals(0, CacheManager.getMemoryCacheSize());
+        assertEquals(1, cleared[0]);
+        //Removing from the cleared cache doesn't change the size
+        CacheManager.remove("owner", "a");
+        assertEquals(0, CacheManager.getMemoryCacheSize());
+
+        CacheManager.put("owner", "a", new byte[100]);
+        CacheManager.put("owner", "b", new byte[100]);
+        CacheManager.get("owner", "b");
+        CacheManager.trimCache(0.5);
+        assertEquals(2, cleared[0]);
+        assertNull(CacheManager.get("owner", "a"));
+        assertNotNull(CacheManager.get("owner", "b"));
+        assertEquals(CacheManager.estimateSize(new byte[100]),
+                     CacheManager.getMemoryCacheSize());
+    }
+
+    /**
+     * Objects bigger than the whole cache are not cached
+     */
+    @Test
+    public void testTooBig() {
+        CacheManager.setMaxMemoryCacheSize(1000);
+        CacheManager.put("owner", "a", new byte[100]);
+        CacheManager.put("owner", "b", new byte[10000]);
+        assertNull(CacheManager.get("owner", "b"));
+        assertNotNull(CacheManager.get("owner", "a"));
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.util;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import java.nio.file.Files;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Tests the {@link DirectoryWatcher} with the watch service and with
+ * scanning
+ */
+public class DirectoryWatcherTest {
+
+    /** the directory */
+    private File dir;
+
+    /**
+     * Make the directory
+     *
+     * @throws Exception On badness
+     */
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("watch").toFile();
+    }
+
+    /**
+     * Remove the directory
+     */
+    @After
+    public void tearDown() {
+        IOUtil.deleteDirectory(dir);
+    }
+
+    /**
+     * A listener that queues the file lists
+     */
+    private static class Queue extends LinkedBlockingQueue<List>
+            implements ActionListener {
+
+        /**
+         * Queue the files
+         *
+         * @param e the event
+         */
+        public void actionPerformed(ActionEvent e) {
+            add((List) e.getSource());
+        }
+
+        /**
+         * Get the names of the next files. The files may come in more
+         * than one event.
+         *
+         * @param count number of files to wait for
+         *
+         * @return sorted names
+         *
+         * @throws Exception On badness
+         */
+        List<String> next(int count) throws Exception {
+            List<String> names = new ArrayList<String>();
+            while (names.size() < count) {
+                List files = poll(10, TimeUnit.SECONDS);
+                if (files == null) {
+                    break;
+                }
+                for (Object file : files) {
+                    names.add(((File) file).getName());
+                }
+            }
+            Collections.sort(names);
+            return names;
+        }
+    }
+
+    /**
+     * Write a file
+     *
+     * @param name the name
+     * @param length the length
+     *
+     * @throws Exception On badness
+     */
+    private void write(String name, int length) throws Exception {
+        FileOutputStream fos = new FileOutputStream(new File(dir, name));
+        fos.write(new byte[length]);
+        fos.close();
+    }
+
+    /**
+     * Run the test with the given watcher
+     *
+     * @param watcher the watcher
+     *
+     * @throws Exception On badness
+     */
+    private void runTest(DirectoryWatcher watcher) throws Exception {
+        write("old.nc", 10);
+        Queue all = new Queue();
+        Queue nc  = new Queue();
+        DirectoryWatcher.Subscription allSub = watcher.subscribe(dir, null,
+                                                   100, all);
+        DirectoryWatcher.Subscription ncSub = watcher.subscribe(dir,
+                                                  new PatternFileFilter(
+                                                      ".*\\.nc$"), 100, nc);
+        Thread.sleep(300);
+        write("a.nc", 10);
+        write("b.txt", 10);
+        //Both are told once about the new files but not the old one
+        assertEquals(Misc.newList("a.nc", "b.txt"), all.next(2));
+        assertEquals(Misc.newList("a.nc"), nc.next(1));
+        //A change to a file
+        write("old.nc", 20);
+        assertEquals(Misc.newList("old.nc"), all.next(1));
+        assertEquals(Misc.newList("old.nc"), nc.next(1));
+        watcher.unsubscribe(ncSub);
+        Thread.sleep(300);
+        write("c.nc", 5);
+        assertEquals(Misc.newList("c.nc"), all.next(1));
+        assertNull(nc.poll(1, TimeUnit.SECONDS));
+        watcher.unsubscribe(allSub);
+    }
+
+    /**
+     * Watch with the watch service
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testWatchService() throws Exception {
+        DirectoryWatcher watcher = new DirectoryWatcher(true, 200);
+        try {
+            runTest(watcher);
+        } finally {
+            watcher.close();
+        }
+    }
+
+    /**
+     * Watch by scanning
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testScan() throws Exception {
+        DirectoryWatcher watcher = new DirectoryWatcher(false, 200);
+        try {
+            assertTrue( !watcher.getUseWatchService());
+            runTest(watcher);
+        } finally {
+            watcher.close();
+        }
+    }
+}
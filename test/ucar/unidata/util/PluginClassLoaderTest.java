@@ -0,0 +1,365 @@
+/*
+ *
+ * Copyright  1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.util;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+
+/**
+ * Tests the {@link PluginClassLoader} with synthetic plugin jars. The main
+ * method runs a startup benchmark of loading every class up front, the
+ * way the loader used to, against indexing the jars in parallel and
+ * loading the classes when they are asked for:
+ * <pre>
+ * java ucar.unidata.util.PluginClassLoaderTest [numJars] [numClasses]
+ * </pre>
+ */
+public class PluginClassLoaderTest {
+
+    /**
+     * An application type that plugin classes extend
+     */
+    public static class Base {}
+
+    /**
+     * A loader that keeps track of the classes it checks
+     */
+    private static class TestLoader extends PluginClassLoader {
+
+        /** the checked class names */
+        private List checked;
+
+        /**
+         * Create the loader
+         *
+         * @param index the jar index
+         *
+         * @throws IOException On badness
+         */
+        TestLoader(JarIndex index) throws IOException {
+            super(index, PluginClassLoaderTest.class.getClassLoader());
+        }
+
+        /**
+         * Keep track of the class
+         *
+         * @param c the class
+         */
+        protected void checkClass(Class c) {
+            //Called from the super ctor
+            if (checked == null) {
+                checked = new ArrayList();
+            }
+            checked.add(c.getName());
+        }
+    }
+
+    /**
+     * A loader that treats the subtypes of DateFormat as extension types
+     */
+    private static class DateFormatLoader extends TestLoader {
+
+        /**
+         * Create the loader
+         *
+         * @param index the jar index
+         *
+         * @throws IOException On badness
+         */
+        DateFormatLoader(JarIndex index) throws IOException {
+            super(index);
+        }
+
+        /**
+         * Add in the DateFormats
+         *
+         * @param className the type
+         *
+         * @return true if it is an extension type
+         */
+        protected boolean isExtensionType(String className) {
+            return super.isExtensionType(className)
+                   || isPlatformSubtype(className,
+                                        new Class[] {
+                                            java.text.DateFormat.class });
+        }
+    }
+
+    /**
+     * Make the bytes of an empty class
+     *
+     * @param name the class name
+     * @param superName the super class name
+     * @param interfaceName an interface name. May be null.
+     *
+     * @return the class file
+     *
+     * @throws IOException On badness
+     */
+    private static byte[] makeClass(String name, String superName,
+                                    String interfaceName)
+            throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream      out = new DataOutputStream(bos);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(50);
+        out.writeShort((interfaceName == null)
+                       ? 5
+                       : 7);
+        String[] names = { name, superName, interfaceName };
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] == null) {
+                continue;
+            }
+            out.writeByte(1);
+            out.writeUTF(names[i].replace('.', '/'));
+            out.writeByte(7);
+            out.writeShort(2 * i + 1);
+        }
+        out.writeShort(0x21);
+        out.writeShort(2);
+        out.writeShort(4);
+        if (interfaceName == null) {
+            out.writeShort(0);
+        } else {
+            out.writeShort(1);
+            out.writeShort(6);
+        }
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.close();
+        return bos.toByteArray();
+    }
+
+    /**
+     * Write a plugin jar. It has a resource, the given number of classes
+     * that are only used by the plugin, a class that implements a java
+     * interface and two classes that extend {@link Base}.
+     *
+     * @param file the jar file
+     * @param pkg the package of the classes
+     * @param numClasses number of plugin only classes
+     *
+     * @throws IOException On badness
+     */
+    private static void writeJar(File file, String pkg, int numClasses)
+            throws IOException {
+        JarOutputStream jos = new JarOutputStream(new FileOutputStream(file));
+        jos.putNextEntry(new JarEntry("data/a.txt"));
+        jos.write("hello".getBytes("UTF-8"));
+        String base = Base.class.getName();
+        for (int i = 0; i < numClasses + 3; i++) {
+            String name = pkg + ".Lazy" + i;
+            byte[] bytes;
+            if (i == numClasses) {
+                name  = pkg + ".Ext";
+                bytes = makeClass(name, base, null);
+            } else if (i == numClasses + 1) {
+                name  = pkg + ".SubExt";
+                bytes = makeClass(name, pkg + ".Ext", null);
+            } else if (i == numClasses + 2) {
+                name  = pkg + ".Runner";
+                bytes = makeClass(name, "java.lang.Object",
+                                  "java.lang.Runnable");
+            } else {
+                bytes = makeClass(name, "java.lang.Object", null);
+            }
+            jos.putNextEntry(new JarEntry(name.replace('.', '/')
+                                          + ".class"));
+            jos.write(bytes);
+        }
+        jos.close();
+    }
+
+    /**
+     * Only the classes that extend the application are loaded up front.
+     * The others are loaded when asked for.
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testLazyClasses() throws Exception {
+        File file = File.createTempFile("plugin", ".jar");
+        file.deleteOnExit();
+        writeJar(file, "lazytest", 20);
+        TestLoader loader =
+            new TestLoader(new PluginClassLoader.JarIndex(file.toString()));
+        assertEquals(2, loader.checked.size());
+        assertTrue(loader.checked.contains("lazytest.Ext"));
+        assertTrue(loader.checked.contains("lazytest.SubExt"));
+
+        Class c = loader.loadClass("lazytest.Lazy7");
+        assertSame(loader, c.getClassLoader());
+        assertSame(c, loader.loadClass("lazytest.Lazy7"));
+        assertSame(c, loader.getClassFromPlugin("lazytest.Lazy7"));
+        assertNotNull(loader.getClassFromPlugin("lazytest.Runner"));
+        assertTrue(Runnable.class.isAssignableFrom(
+            loader.getClassFromPlugin("lazytest.Runner")));
+        assertNull(loader.getClassFromPlugin("lazytest.Missing"));
+        assertEquals(4, loader.checked.size());
+        loader.closeJar();
+    }
+
+    /**
+     * A class that extends a java subtype of an extension type is loaded
+     * up front
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testPlatformSubtype() throws Exception {
+        File file = File.createTempFile("plugin", ".jar");
+        file.deleteOnExit();
+        JarOutputStream jos = new JarOutputStream(new FileOutputStream(file));
+        jos.putNextEntry(new JarEntry("formattest/MyFormat.class"));
+        jos.write(makeClass("formattest.MyFormat",
+                            "java.text.SimpleDateFormat", null));
+        jos.putNextEntry(new JarEntry("formattest/MyList.class"));
+        jos.write(makeClass("formattest.MyList", "java.util.ArrayList",
+                            null));
+        jos.close();
+        TestLoader loader =
+            new DateFormatLoader(new PluginClassLoader.JarIndex(
+                file.toString()));
+        assertEquals(Misc.newList("formattest.MyFormat"), loader.checked);
+        loader.closeJar();
+
+        //An index that no loader is made with can be closed
+        PluginClassLoader.JarIndex index =
+            new PluginClassLoader.JarIndex(file.toString());
+        index.close();
+        assertTrue(file.delete());
+    }
+
+    /**
+     * The resources can be found under all of their names
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testResources() throws Exception {
+        File file = File.createTempFile("plugin", ".jar");
+        file.deleteOnExit();
+        writeJar(file, "resourcetest", 2);
+        String jar = file.toString();
+        List futures =
+            PluginClassLoader.readIndices(Misc.newList(jar, jar));
+        TestLoader loader = new TestLoader(
+                                (PluginClassLoader.JarIndex) ((Future) futures
+                                    .get(0)).get());
+        assertEquals(Misc.newList("data/a.txt"), loader.getEntryNames());
+        String[] names = {
+            "/data/a.txt", jar + "!data/a.txt", jar + "!/data/a.txt",
+            PluginClassLoader.PLUGIN_PROTOCOL + ":" + jar + "!/data/a.txt",
+            PluginClassLoader.PLUGIN_PROTOCOL + ":/data/a.txt"
+        };
+        for (int i = 0; i < names.length; i++) {
+            InputStream is = loader.getResourceAsStream(names[i]);
+            assertNotNull(names[i], is);
+            assertEquals("hello", new String(IOUtil.readBytes(is), "UTF-8"));
+            is.close();
+        }
+        assertNull(loader.getResourceAsStream("data/a.txt"));
+        assertNull(loader.getResourceAsStream("/data/b.txt"));
+        assertNull(loader.getResourceAsStream("/resourcetest/Lazy0.class"));
+        loader.closeJar();
+        assertEquals(5, ((PluginClassLoader.JarIndex) ((Future) futures.get(
+            1)).get()).getClassNames().size());
+    }
+
+    /**
+     * Run the benchmark
+     *
+     * @param args number of jars and classes per jar
+     *
+     * @throws Exception On badness
+     */
+    public static void main(String[] args) throws Exception {
+        int  numJars    = (args.length > 0)
+                          ? Integer.parseInt(args[0])
+                          : 8;
+        int  numClasses = (args.length > 1)
+                          ? Integer.parseInt(args[1])
+                          : 5000;
+        List jars       = new ArrayList();
+        for (int i = 0; i < numJars; i++) {
+            File file = File.createTempFile("plugin", ".jar");
+            file.deleteOnExit();
+            writeJar(file, "bench" + i, numClasses);
+            jars.add(file.toString());
+        }
+        System.out.println("jars:" + numJars + " classes per jar:"
+                           + numClasses);
+        for (int loop = 0; loop < 3; loop++) {
+            long t1 = System.currentTimeMillis();
+            for (int i = 0; i < jars.size(); i++) {
+                PluginClassLoader.JarIndex index =
+                    new PluginClassLoader.JarIndex(jars.get(i).toString());
+                PluginClassLoader loader = new PluginClassLoader(index,
+                                               PluginClassLoaderTest.class
+                                                   .getClassLoader());
+                //Load everything, like the loader used to
+                List classNames = index.getClassNames();
+                for (int j = 0; j < classNames.size(); j++) {
+                    loader.loadClass((String) classNames.get(j));
+                }
+                loader.closeJar();
+            }
+            long t2      = System.currentTimeMillis();
+            List futures = PluginClassLoader.readIndices(jars);
+            for (int i = 0; i < futures.size(); i++) {
+                PluginClassLoader loader = new PluginClassLoader(
+                                               (PluginClassLoader
+                                                   .JarIndex) ((Future) futures
+                                                       .get(i)).get(),
+                                               PluginClassLoaderTest.class
+                                                   .getClassLoader());
+                loader.closeJar();
+            }
+            long t3 = System.currentTimeMillis();
+            System.out.println("load all:" + (t2 - t1) + "ms lazy:"
+                               + (t3 - t2) + "ms");
+        }
+    }
+}
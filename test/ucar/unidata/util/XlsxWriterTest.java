@@ -0,0 +1,155 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.unidata.util;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.Test;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+
+/**
+ * Tests the {@link XlsxWriter}
+ */
+public class XlsxWriterTest {
+
+    /**
+     * Read the entries of the zip file
+     *
+     * @param bytes zip file
+     *
+     * @return entry name to contents
+     *
+     * @throws Exception On badness
+     */
+    private static Map<String, byte[]> unzip(byte[] bytes) throws Exception {
+        Map<String, byte[]> entries = new HashMap<String, byte[]>();
+        ZipInputStream zis =
+            new ZipInputStream(new ByteArrayInputStream(bytes));
+        ZipEntry entry;
+        while ((entry = zis.getNextEntry()) != null) {
+            entries.put(entry.getName(), zis.readAllBytes());
+        }
+        zis.close();
+        return entries;
+    }
+
+    /**
+     * Parse the xml
+     *
+     * @param bytes xml
+     *
+     * @return document
+     *
+     * @throws Exception On badness
+     */
+    private static Document parse(byte[] bytes) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().parse(
+            new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Column names
+     */
+    @Test
+    public void testColumnNames() {
+        assertEquals("A", XlsxWriter.getColumnName(0));
+        assertEquals("Z", XlsxWriter.getColumnName(25));
+        assertEquals("AA", XlsxWriter.getColumnName(26));
+        assertEquals("AZ", XlsxWriter.getColumnName(51));
+        assertEquals("BA", XlsxWriter.getColumnName(52));
+        assertEquals("XFD", XlsxWriter.getColumnName(16383));
+    }
+
+    /**
+     * Write a couple of sheets and read them back
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testWrite() throws Exception {
+        ByteArrayOutputStream bos    = new ByteArrayOutputStream();
+        XlsxWriter            writer = new XlsxWriter(bos);
+        writer.startSheet("Grid <1>");
+        writer.startRow();
+        writer.addCell("Latitude");
+        writer.addCell("a & \"b\"");
+        for (int i = 0; i < 1000; i++) {
+            writer.startRow();
+            writer.addCell((float) i / 4);
+            writer.addCell((double) i);
+            writer.addCell(Float.NaN);
+            writer.addCell(1.5f);
+        }
+        assertEquals(1001, writer.getRowCount());
+        writer.startSheet(null);
+        writer.addCell(2.0);
+        writer.close();
+
+        Map<String, byte[]> entries = unzip(bos.toByteArray());
+        assertNotNull(entries.get("[Content_Types].xml"));
+        assertNotNull(entries.get("_rels/.rels"));
+        assertNotNull(entries.get("xl/_rels/workbook.xml.rels"));
+
+        NodeList sheets =
+            parse(entries.get("xl/workbook.xml")).getElementsByTagName(
+                "sheet");
+        assertEquals(2, sheets.getLength());
+        assertEquals("Grid <1>",
+                     ((Element) sheets.item(0)).getAttribute("name"));
+        assertEquals("Sheet2",
+                     ((Element) sheets.item(1)).getAttribute("name"));
+
+        Document sheet1 = parse(entries.get("xl/worksheets/sheet1.xml"));
+        NodeList rows   = sheet1.getElementsByTagName("row");
+        assertEquals(1001, rows.getLength());
+        NodeList cells = ((Element) rows.item(0)).getElementsByTagName("c");
+        assertEquals("a & \"b\"", cells.item(1).getTextContent());
+        cells = ((Element) rows.item(11)).getElementsByTagName("c");
+        //The NaN cell is left out
+        assertEquals(3, cells.getLength());
+        assertEquals("A12", ((Element) cells.item(0)).getAttribute("r"));
+        assertEquals("2.5", cells.item(0).getTextContent());
+        assertEquals("10", cells.item(1).getTextContent());
+        assertEquals("D12", ((Element) cells.item(2)).getAttribute("r"));
+
+        Document sheet2 = parse(entries.get("xl/worksheets/sheet2.xml"));
+        assertEquals("2", sheet2.getElementsByTagName("v").item(0)
+            .getTextContent());
+    }
+}
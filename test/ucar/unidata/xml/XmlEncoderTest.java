@@ -21,16 +21,28 @@
 package ucar.unidata.xml;
 
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 import org.junit.Test;
 
+import org.w3c.dom.Element;
+
 
 /**
  * Testing the XMLEncoder class.
@@ -94,6 +106,90 @@ public class XmlEncoderTest {
     }
 
 
+    /**
+     * Testing that large primitive arrays round trip through a
+     * {@link ZipArrayStore}.
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testArrayStore() throws Exception {
+        float[]  floats  = new float[500000];
+        double[] doubles = new double[1000];
+        int[]    small   = new int[10];
+        for (int i = 0; i < floats.length; i++) {
+            floats[i] = (i % 7 == 0)
+                        ? Float.NaN
+                        : i * 0.5f;
+        }
+        for (int i = 0; i < doubles.length; i++) {
+            doubles[i] = Math.sqrt(i);
+        }
+        for (int i = 0; i < small.length; i++) {
+            small[i] = i;
+        }
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("floats", floats);
+        data.put("doubles", doubles);
+        data.put("small", small);
+
+        File dir = Files.createTempDirectory("xmlarray").toFile();
+        File zip = new File(dir, "test.zip");
+        long t1  = System.currentTimeMillis();
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zip));
+        XmlEncoder      encoder = new XmlEncoder();
+        encoder.setArrayStore(new ZipArrayStore(zos));
+        String xml = encoder.toXml(data);
+        zos.close();
+        long t2 = System.currentTimeMillis();
+
+        //Unpack the zip file the way a zidv bundle is unpacked
+        ZipFile     zipFile = new ZipFile(zip);
+        Enumeration entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry    ze = (ZipEntry) entries.nextElement();
+            InputStream is = zipFile.getInputStream(ze);
+            Files.copy(is, new File(dir, ze.getName()).toPath());
+            is.close();
+        }
+        zipFile.close();
+        assertEquals(2, dir.list().length - 1);
+
+        long t3 = System.currentTimeMillis();
+        encoder = new XmlEncoder();
+        encoder.setArrayStore(new ZipArrayStore(dir));
+        Map result = (Map) encoder.toObject(xml);
+        long t4 = System.currentTimeMillis();
+        assertArrayEquals(floats, (float[]) result.get("floats"), 0f);
+        assertArrayEquals(doubles, (double[]) result.get("doubles"), 0);
+        assertArrayEquals(small, (int[]) result.get("small"));
+
+        //Inlining the arrays makes xml that can be read without the store
+        Element root = XmlUtil.getRoot(xml);
+        encoder.inlineArrays(root);
+        String inlined = XmlUtil.toString(root);
+        assertTrue(inlined.indexOf(XmlEncoder.ATTR_ENTRY + "=") < 0);
+        result = (Map) new XmlEncoder().toObject(inlined);
+        assertArrayEquals(floats, (float[]) result.get("floats"), 0f);
+        assertArrayEquals(doubles, (double[]) result.get("doubles"), 0);
+
+        //Compare with inlining the arrays in the xml
+        long   t5        = System.currentTimeMillis();
+        String inlineXml = new XmlEncoder().toXml(data);
+        new XmlEncoder().toObject(inlineXml);
+        long t6 = System.currentTimeMillis();
+        Logger.getLogger(Logger.GLOBAL_LOGGER_NAME).info(
+            "array store write:" + (t2 - t1) + "ms read:" + (t4 - t3)
+            + "ms xml size:" + xml.length() + "  inline write+read:"
+            + (t6 - t5) + "ms xml size:" + inlineXml.length());
+
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+
     /**
      * Test class 1.
      */
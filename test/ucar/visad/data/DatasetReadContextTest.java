@@ -0,0 +1,180 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.visad.data;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Tests the {@link DatasetReadContext}. The main method runs a benchmark
+ * of concurrent slice reads from several datasets, serialized on one
+ * global lock and on a lock per dataset:
+ * <pre>
+ * java ucar.visad.data.DatasetReadContextTest [numSources] [numSteps] [msPerRead]
+ * </pre>
+ */
+public class DatasetReadContextTest {
+
+    /**
+     * There is one context per dataset
+     */
+    @Test
+    public void testContexts() {
+        Object             a  = new Object();
+        Object             b  = new Object();
+        DatasetReadContext ca = DatasetReadContext.getContext(a);
+        assertSame(ca, DatasetReadContext.getContext(a));
+        assertSame(ca.getLock(), DatasetReadContext.getContext(a).getLock());
+        assertNotSame(ca, DatasetReadContext.getContext(b));
+        assertNotSame(ca.getLock(),
+                      DatasetReadContext.getContext(b).getLock());
+    }
+
+    /**
+     * Cached objects are made once for each owner and name
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testCache() throws Exception {
+        final DatasetReadContext context = DatasetReadContext.getContext(
+                                               new Object());
+        final Object        axis  = new Object();
+        final AtomicInteger made  = new AtomicInteger();
+        final Callable      maker = new Callable() {
+            public Object call() throws Exception {
+                made.incrementAndGet();
+                Thread.sleep(10);
+                return new ArrayList();
+            }
+        };
+        ExecutorService     pool    = Executors.newFixedThreadPool(8);
+        List<Future>        results = new ArrayList<Future>();
+        for (int i = 0; i < 32; i++) {
+            results.add(pool.submit(new Callable() {
+                public Object call() throws Exception {
+                    return context.getCachedObject(axis, "times", maker);
+                }
+            }));
+        }
+        Object first = results.get(0).get();
+        for (Future result : results) {
+            assertSame(first, result.get());
+        }
+        pool.shutdown();
+        assertEquals(1, made.get());
+        assertNotSame(first, context.getCachedObject(axis, "bounds", maker));
+        assertNotSame(first,
+                      context.getCachedObject(new Object(), "times", maker));
+        assertEquals(3, made.get());
+    }
+
+    /**
+     * Read all of the time steps of all of the sources, with a thread per
+     * core or at least 8 threads since the reads are mostly waiting
+     *
+     * @param numSources number of data sources
+     * @param numSteps number of time steps in each
+     * @param msPerRead the time each read takes
+     * @param global serialize all reads on one lock
+     *
+     * @return the time in ms
+     *
+     * @throws Exception On badness
+     */
+    private static long readAll(int numSources, int numSteps,
+                                final int msPerRead, final boolean global)
+            throws Exception {
+        final Object globalLock = new Object();
+        List<Object> datasets   = new ArrayList<Object>();
+        for (int i = 0; i < numSources; i++) {
+            datasets.add(new Object());
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(8,
+                                   Runtime.getRuntime()
+                                       .availableProcessors()));
+        List<Future> results = new ArrayList<Future>();
+        long         t1      = System.currentTimeMillis();
+        for (int step = 0; step < numSteps; step++) {
+            for (final Object dataset : datasets) {
+                results.add(pool.submit(new Callable() {
+                    public Object call() throws Exception {
+                        DatasetReadContext context =
+                            DatasetReadContext.getContext(dataset);
+                        synchronized (global
+                                      ? globalLock
+                                      : context.getLock()) {
+                            //Stands in for the I/O of a slice read
+                            Thread.sleep(msPerRead);
+                        }
+                        return null;
+                    }
+                }));
+            }
+        }
+        for (Future result : results) {
+            result.get();
+        }
+        long t2 = System.currentTimeMillis();
+        pool.shutdown();
+        return t2 - t1;
+    }
+
+    /**
+     * Run the benchmark
+     *
+     * @param args number of sources, time steps and ms per read
+     *
+     * @throws Exception On badness
+     */
+    public static void main(String[] args) throws Exception {
+        int numSources = (args.length > 0)
+                         ? Integer.parseInt(args[0])
+                         : 4;
+        int numSteps   = (args.length > 1)
+                         ? Integer.parseInt(args[1])
+                         : 24;
+        int msPerRead  = (args.length > 2)
+                         ? Integer.parseInt(args[2])
+                         : 20;
+        System.out.println("sources:" + numSources + " steps:" + numSteps
+                           + " ms per read:" + msPerRead);
+        System.out.println("global lock:"
+                           + readAll(numSources, numSteps, msPerRead, true)
+                           + "ms");
+        System.out.println("per dataset lock:"
+                           + readAll(numSources, numSteps, msPerRead, false)
+                           + "ms");
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 1997-2026 Unidata Program Center/University Corporation for
+ * Atmospheric Research, P.O. Box 3000, Boulder, CO 80307,
+ * support@unidata.ucar.edu.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ucar.visad.display;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import org.python.util.PythonInterpreter;
+
+import ucar.unidata.ui.symbol.TextSymbol;
+
+import ucar.visad.quantities.CommonUnits;
+
+import visad.Data;
+import visad.DateTime;
+import visad.Real;
+import visad.RealType;
+import visad.SI;
+import visad.Text;
+import visad.Unit;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+
+
+/**
+ * Tests that a {@link StationModelExpression} gives the same results as
+ * the Jython evaluation in {@link StationModelDisplayable} that it
+ * replaces.
+ */
+public class StationModelExpressionTest {
+
+    /** Layout code to compare */
+    private static final String[] CODE = {
+        "T", "-T", "T-273.15", "T*2+1", "PRESSURE*10%1000",
+        "(PRESSURE-1000)/2", "PRESSURE**2", "7/2", "-7/2", "7%3", "-7%3",
+        "7.5%-2", "2**3", "2**-1", "1.5*4", "'a'+'b'", "str(T)",
+        "str(NAME)", "convert(T)", "format(PRESSURE)",
+        "format(HOUR)+':'+format(MINUTE)",
+        "formatDate(TIME,'yyyy-MM-dd HH:mm')"
+    };
+
+    /**
+     * Make the ob values
+     *
+     * @return operand name to value
+     *
+     * @throws Exception On badness
+     */
+    private static Hashtable<String, Data> makeValues() throws Exception {
+        Hashtable<String, Data> values = new Hashtable<String, Data>();
+        values.put("T",
+                   new Real(RealType.getRealType("SMET_T", SI.kelvin),
+                            288.35));
+        values.put("PRESSURE",
+                   new Real(RealType.getRealType("SMET_PRESSURE"), 1013.2));
+        values.put("HOUR", new Real(RealType.getRealType("SMET_HOUR"), 7));
+        values.put("MINUTE",
+                   new Real(RealType.getRealType("SMET_MINUTE"), 5));
+        values.put("NAME", new Text("KDEN"));
+        values.put("TIME", new DateTime(1.5e9));
+        return values;
+    }
+
+    /**
+     * The compiled code gives the same values as Jython
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testParity() throws Exception {
+        Hashtable<String, Data> values      = makeValues();
+        List                    operands    =
+            new ArrayList(values.keySet());
+        TextSymbol              formatter   = new TextSymbol();
+        Unit                    displayUnit = CommonUnits.CELSIUS;
+        PythonInterpreter       interp      = new PythonInterpreter();
+        interp.exec(StationModelDisplayable.JYTHON_FUNCTIONS);
+        for (String code : CODE) {
+            StationModelExpression expression =
+                StationModelExpression.compile(code);
+            assertNotNull(code, expression);
+            Data expected = StationModelDisplayable.evaluateJython(interp,
+                                code, operands, values, formatter,
+                                displayUnit);
+            Data actual = expression.evaluate(values, formatter,
+                              displayUnit);
+            assertNotNull(code, actual);
+            assertEquals(code, expected.getClass(), actual.getClass());
+            if (expected instanceof Real) {
+                Real e = (Real) expected;
+                Real a = (Real) actual;
+                assertEquals(code, e.getValue(), a.getValue(), 0);
+                assertEquals(code, e.getUnit(), a.getUnit());
+            } else {
+                assertEquals(code, expected.toString(), actual.toString());
+            }
+        }
+        interp.cleanup();
+    }
+
+    /**
+     * Code that isn't handled is left to Jython
+     *
+     * @throws Exception On badness
+     */
+    @Test
+    public void testNotCompiled() throws Exception {
+        assertNull(StationModelExpression.compile("max(T,1)"));
+        assertNull(StationModelExpression.compile("T if T else 1"));
+        assertNull(StationModelExpression.compile("T.getValue()"));
+        StationModelExpression expression =
+            StationModelExpression.compile("T+X");
+        assertNull(expression.evaluate(makeValues(), null, null));
+    }
+}